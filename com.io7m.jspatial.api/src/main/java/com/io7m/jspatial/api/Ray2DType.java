@@ -78,6 +78,31 @@ public interface Ray2DType
     final double y0,
     final double x1,
     final double y1)
+  {
+    return this.entryDistanceArea(x0, y0, x1, y1) < Double.POSITIVE_INFINITY;
+  }
+
+  /**
+   * Determine the distance along the ray at which the ray enters the given box, using the same
+   * slab test as {@link #intersectsArea(double, double, double, double)}. The distance is
+   * measured in multiples of the length of the ray direction, and is therefore the true distance
+   * when the direction is normalized. The distance is zero if the box contains the origin of the
+   * ray.
+   *
+   * @param x0 The lower X coordinate.
+   * @param y0 The lower Y coordinate.
+   * @param x1 The upper X coordinate.
+   * @param y1 The upper Y coordinate.
+   *
+   * @return The entry distance, or {@link Double#POSITIVE_INFINITY} if the ray does not intersect
+   * the box
+   */
+
+  default double entryDistanceArea(
+    final double x0,
+    final double y0,
+    final double x1,
+    final double y1)
   {
     final Vector2D origin = this.origin();
     final Vector2D direction_inverse = this.directionInverse();
@@ -98,6 +123,9 @@ public interface Ray2DType
     tmin = Math.max(tmin, Math.min(ty0, ty1));
     tmax = Math.min(tmax, Math.max(ty0, ty1));
 
-    return ((tmax >= Math.max(0.0, tmin)) && (tmin < Double.POSITIVE_INFINITY));
+    if ((tmax >= Math.max(0.0, tmin)) && (tmin < Double.POSITIVE_INFINITY)) {
+      return Math.max(0.0, tmin);
+    }
+    return Double.POSITIVE_INFINITY;
   }
 }
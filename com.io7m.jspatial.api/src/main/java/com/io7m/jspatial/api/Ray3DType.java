@@ -83,6 +83,35 @@ public interface Ray3DType
     final double x1,
     final double y1,
     final double z1)
+  {
+    return this.entryDistanceVolume(x0, y0, z0, x1, y1, z1) < Double.POSITIVE_INFINITY;
+  }
+
+  /**
+   * Determine the distance along the ray at which the ray enters the given box, using the same
+   * slab test as {@link #intersectsVolume(double, double, double, double, double, double)}. The
+   * distance is measured in multiples of the length of the ray direction, and is therefore the
+   * true distance when the direction is normalized. The distance is zero if the box contains the
+   * origin of the ray.
+   *
+   * @param x0 The lower X coordinate.
+   * @param y0 The lower Y coordinate.
+   * @param z0 The lower Z coordinate.
+   * @param x1 The upper X coordinate.
+   * @param y1 The upper Y coordinate.
+   * @param z1 The upper Z coordinate.
+   *
+   * @return The entry distance, or {@link Double#POSITIVE_INFINITY} if the ray does not intersect
+   * the box
+   */
+
+  default double entryDistanceVolume(
+    final double x0,
+    final double y0,
+    final double z0,
+    final double x1,
+    final double y1,
+    final double z1)
   {
     final Vector3D origin = this.origin();
     final Vector3D direction_inverse = this.directionInverse();
@@ -113,6 +142,9 @@ public interface Ray3DType
 
     final boolean tmax_ok = tmax >= Math.max(0.0, tmin);
     final boolean tmin_ok = tmin < Double.POSITIVE_INFINITY;
-    return tmax_ok && tmin_ok;
+    if (tmax_ok && tmin_ok) {
+      return Math.max(0.0, tmin);
+    }
+    return Double.POSITIVE_INFINITY;
   }
 }
@@ -17,6 +17,7 @@
 package com.io7m.jspatial.api.octtrees;
 
 import com.io7m.immutables.styles.ImmutablesStyleType;
+import com.io7m.jaffirm.core.Preconditions;
 import com.io7m.jregions.core.unparameterized.volumes.VolumeI;
 import org.immutables.value.Value;
 
@@ -70,6 +71,36 @@ public interface OctTreeConfigurationIType
     return 2;
   }
 
+  /**
+   * The maximum number of items that a leaf octant may hold before it is split.
+   * When an item is inserted into a leaf that already holds this many items,
+   * the leaf is split (if it is large enough to be split) and its items are
+   * redistributed to the new children. A value of {@code 0} means that leaves
+   * are split as soon as an item is inserted into them, driving every item
+   * down to the smallest octant that can contain it.
+   *
+   * @return The maximum number of items per leaf (must be {@code >= 0})
+   */
+
+  @Value.Default
+  default int maximumItemsPerLeaf()
+  {
+    return 0;
+  }
+
+  /**
+   * The maximum depth of the tree. The root octant is at depth {@code 0}, and
+   * octants at the maximum depth are never split.
+   *
+   * @return The maximum depth of octants (must be {@code >= 0})
+   */
+
+  @Value.Default
+  default int maximumDepth()
+  {
+    return Integer.MAX_VALUE;
+  }
+
   /**
    * @return {@code true} iff the implementation should attempt to trim empty leaf nodes when an
    * item is removed
@@ -81,4 +112,21 @@ public interface OctTreeConfigurationIType
   {
     return false;
   }
+
+  /**
+   * Check preconditions for the type.
+   */
+
+  @Value.Check
+  default void checkPreconditions()
+  {
+    Preconditions.checkPreconditionI(
+      this.maximumItemsPerLeaf(),
+      this.maximumItemsPerLeaf() >= 0,
+      i -> "Maximum items per leaf must be non-negative");
+    Preconditions.checkPreconditionI(
+      this.maximumDepth(),
+      this.maximumDepth() >= 0,
+      i -> "Maximum depth must be non-negative");
+  }
 }
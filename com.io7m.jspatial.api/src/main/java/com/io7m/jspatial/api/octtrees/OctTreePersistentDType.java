@@ -0,0 +1,109 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jspatial.api.octtrees;
+
+import com.io7m.jregions.core.unparameterized.volumes.VolumeD;
+
+import java.util.Map;
+import java.util.function.BiFunction;
+
+/**
+ * <p>The type of persistent octtrees with {@code double} precision
+ * coordinates.</p>
+ *
+ * <p>A persistent tree is never modified. Each operation that would modify a
+ * mutable tree instead returns a new version of the tree, and the new
+ * version shares every octant that the operation did not change with the
+ * original version. Versions may therefore be read from any number of
+ * threads without locking, and versions that are no longer referenced are
+ * simply garbage collected.</p>
+ *
+ * @param <A> The precise type of octtree members
+ *
+ * @since 3.0.0
+ */
+
+public interface OctTreePersistentDType<A> extends OctTreeReadableDType<A>
+{
+  /**
+   * <p>Insert the object {@code item} into the octtree.</p>
+   *
+   * <p>The result is the same as that of
+   * {@link OctTreeDType#insert(Object, VolumeD)}: if the object cannot be
+   * inserted, the returned version does not contain the object.</p>
+   *
+   * @param item   The object to insert
+   * @param bounds The object's bounds
+   *
+   * @return A new version of the tree
+   */
+
+  OctTreePersistentDType<A> insert(
+    A item,
+    VolumeD bounds);
+
+  /**
+   * Insert all of the objects in {@code items} into the octtree. The result
+   * is the same as calling {@link #insert(Object, VolumeD)} for each object in
+   * turn.
+   *
+   * @param items The objects to insert, and their bounds
+   *
+   * @return A new version of the tree
+   */
+
+  OctTreePersistentDType<A> insertAll(
+    Map<A, VolumeD> items);
+
+  /**
+   * Remove the object {@code item} from the octtree.
+   *
+   * @param item The object to remove
+   *
+   * @return A new version of the tree, or this version if the object is not
+   * in the tree
+   */
+
+  OctTreePersistentDType<A> remove(
+    A item);
+
+  /**
+   * @return An empty version of the tree
+   */
+
+  OctTreePersistentDType<A> clear();
+
+  /**
+   * Trim all empty octants from the tree.
+   *
+   * @return A new version of the tree
+   */
+
+  OctTreePersistentDType<A> trim();
+
+  /**
+   * Apply {@code f} to each element of the tree.
+   *
+   * @param f   A mapping function
+   * @param <B> The type of result elements
+   *
+   * @return A new tree
+   */
+
+  @Override
+  <B> OctTreePersistentDType<B> map(BiFunction<A, VolumeD, B> f);
+}
@@ -0,0 +1,302 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.jspatial.api.octtrees;
+
+import com.io7m.jregions.core.unparameterized.volumes.VolumeL;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * <p>A reusable buffer of raycast results. Each result consists of an object, the distance at
+ * which the ray entered the bounding volume of the object, and the bounds of that volume, held
+ * in parallel primitive arrays rather than as individual result objects.</p>
+ *
+ * <p>Storage is retained when the buffer is cleared, so a buffer that is reused across raycasts
+ * stops allocating once it has grown large enough to hold the largest number of results seen.
+ * Buffers are not thread-safe.</p>
+ *
+ * @param <A> The precise type of octtree members
+ *
+ * @since 3.0.0
+ */
+
+public final class OctTreeRaycastBufferL<A>
+{
+  private static final int STRIDE = 6;
+  private static final int INITIAL_CAPACITY = 16;
+
+  private double[] distances;
+  private long[] bounds;
+  private Object[] items;
+  private int size;
+
+  private OctTreeRaycastBufferL()
+  {
+    this.distances = new double[INITIAL_CAPACITY];
+    this.bounds = new long[INITIAL_CAPACITY * STRIDE];
+    this.items = new Object[INITIAL_CAPACITY];
+  }
+
+  /**
+   * Create a new empty buffer.
+   *
+   * @param <A> The precise type of octtree members
+   *
+   * @return A new buffer
+   */
+
+  public static <A> OctTreeRaycastBufferL<A> create()
+  {
+    return new OctTreeRaycastBufferL<>();
+  }
+
+  /**
+   * @return The number of results in the buffer
+   */
+
+  public int size()
+  {
+    return this.size;
+  }
+
+  /**
+   * Remove all results from the buffer. The storage used by the buffer is retained.
+   */
+
+  public void clear()
+  {
+    Arrays.fill(this.items, 0, this.size, null);
+    this.size = 0;
+  }
+
+  /**
+   * Add a result to the buffer.
+   *
+   * @param item      The object
+   * @param distance  The distance to the object
+   * @param minimum_x The minimum x coordinate of the bounding volume
+   * @param maximum_x The maximum x coordinate of the bounding volume
+   * @param minimum_y The minimum y coordinate of the bounding volume
+   * @param maximum_y The maximum y coordinate of the bounding volume
+   * @param minimum_z The minimum z coordinate of the bounding volume
+   * @param maximum_z The maximum z coordinate of the bounding volume
+   */
+
+  public void add(
+    final A item,
+    final double distance,
+    final long minimum_x,
+    final long maximum_x,
+    final long minimum_y,
+    final long maximum_y,
+    final long minimum_z,
+    final long maximum_z)
+  {
+    Objects.requireNonNull(item, "Item");
+
+    if (this.size == this.items.length) {
+      final int capacity = this.items.length * 2;
+      this.distances = Arrays.copyOf(this.distances, capacity);
+      this.bounds = Arrays.copyOf(this.bounds, capacity * STRIDE);
+      this.items = Arrays.copyOf(this.items, capacity);
+    }
+
+    final int index = this.size;
+    final int o = index * STRIDE;
+    this.items[index] = item;
+    this.distances[index] = distance;
+    this.bounds[o] = minimum_x;
+    this.bounds[o + 1] = maximum_x;
+    this.bounds[o + 2] = minimum_y;
+    this.bounds[o + 3] = maximum_y;
+    this.bounds[o + 4] = minimum_z;
+    this.bounds[o + 5] = maximum_z;
+    this.size = index + 1;
+  }
+
+  /**
+   * @param index The index of the result
+   *
+   * @return The object at {@code index}
+   */
+
+  @SuppressWarnings("unchecked")
+  public A item(final int index)
+  {
+    return (A) this.items[Objects.checkIndex(index, this.size)];
+  }
+
+  /**
+   * @param index The index of the result
+   *
+   * @return The distance to the object at {@code index}
+   */
+
+  public double distance(final int index)
+  {
+    return this.distances[Objects.checkIndex(index, this.size)];
+  }
+
+  /**
+   * @param index The index of the result
+   *
+   * @return The minimum x coordinate of the bounding volume of the result at {@code index}
+   */
+
+  public long minimumX(final int index)
+  {
+    return this.bounds[Objects.checkIndex(index, this.size) * STRIDE];
+  }
+
+  /**
+   * @param index The index of the result
+   *
+   * @return The maximum x coordinate of the bounding volume of the result at {@code index}
+   */
+
+  public long maximumX(final int index)
+  {
+    return this.bounds[Objects.checkIndex(index, this.size) * STRIDE + 1];
+  }
+
+  /**
+   * @param index The index of the result
+   *
+   * @return The minimum y coordinate of the bounding volume of the result at {@code index}
+   */
+
+  public long minimumY(final int index)
+  {
+    return this.bounds[Objects.checkIndex(index, this.size) * STRIDE + 2];
+  }
+
+  /**
+   * @param index The index of the result
+   *
+   * @return The maximum y coordinate of the bounding volume of the result at {@code index}
+   */
+
+  public long maximumY(final int index)
+  {
+    return this.bounds[Objects.checkIndex(index, this.size) * STRIDE + 3];
+  }
+
+  /**
+   * @param index The index of the result
+   *
+   * @return The minimum z coordinate of the bounding volume of the result at {@code index}
+   */
+
+  public long minimumZ(final int index)
+  {
+    return this.bounds[Objects.checkIndex(index, this.size) * STRIDE + 4];
+  }
+
+  /**
+   * @param index The index of the result
+   *
+   * @return The maximum z coordinate of the bounding volume of the result at {@code index}
+   */
+
+  public long maximumZ(final int index)
+  {
+    return this.bounds[Objects.checkIndex(index, this.size) * STRIDE + 5];
+  }
+
+  /**
+   * Construct the bounding volume of a result. Unlike the other accessors, this allocates a new
+   * volume on each call.
+   *
+   * @param index The index of the result
+   *
+   * @return The bounding volume of the result at {@code index}
+   */
+
+  public VolumeL volume(final int index)
+  {
+    final int o = Objects.checkIndex(index, this.size) * STRIDE;
+    return VolumeL.of(
+      this.bounds[o],
+      this.bounds[o + 1],
+      this.bounds[o + 2],
+      this.bounds[o + 3],
+      this.bounds[o + 4],
+      this.bounds[o + 5]);
+  }
+
+  /**
+   * Sort the results in the buffer in order of increasing distance. Results at equal distances
+   * are placed in an unspecified order. The sort is performed in place and does not allocate.
+   */
+
+  public void sortByDistance()
+  {
+    final int count = this.size;
+    for (int start = (count / 2) - 1; start >= 0; --start) {
+      this.siftDown(start, count);
+    }
+    for (int end = count - 1; end > 0; --end) {
+      this.swap(0, end);
+      this.siftDown(0, end);
+    }
+  }
+
+  private void siftDown(
+    final int start,
+    final int end)
+  {
+    final double[] d = this.distances;
+    int root = start;
+    while (true) {
+      int child = (root * 2) + 1;
+      if (child >= end) {
+        return;
+      }
+      if (child + 1 < end && d[child + 1] > d[child]) {
+        ++child;
+      }
+      if (d[root] >= d[child]) {
+        return;
+      }
+      this.swap(root, child);
+      root = child;
+    }
+  }
+
+  private void swap(
+    final int i,
+    final int j)
+  {
+    final double d = this.distances[i];
+    this.distances[i] = this.distances[j];
+    this.distances[j] = d;
+
+    final Object x = this.items[i];
+    this.items[i] = this.items[j];
+    this.items[j] = x;
+
+    final int oi = i * STRIDE;
+    final int oj = j * STRIDE;
+    for (int k = 0; k < STRIDE; ++k) {
+      final long b = this.bounds[oi + k];
+      this.bounds[oi + k] = this.bounds[oj + k];
+      this.bounds[oj + k] = b;
+    }
+  }
+}
@@ -16,13 +16,24 @@
 
 package com.io7m.jspatial.api.octtrees;
 
+import com.io7m.jaffirm.core.Preconditions;
 import com.io7m.jregions.core.unparameterized.volumes.VolumeD;
 import com.io7m.jspatial.api.Ray3D;
+import com.io7m.jspatial.api.TreeVisitResult;
+import com.io7m.jtensors.core.unparameterized.vectors.Vector3D;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Optional;
 import java.util.Set;
 import java.util.SortedSet;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.BiFunction;
+import java.util.stream.Stream;
 
 /**
  * The type of readable octtrees with {@code double} precision coordinates.
@@ -120,4 +131,340 @@ public interface OctTreeReadableDType<A> extends OctTreeReadableType
   void raycast(
     Ray3D ray,
     SortedSet<OctTreeRaycastResultD<A>> items);
+
+  /**
+   * <p>A parallel version of {@link #containedBy(VolumeD, Set)}. The
+   * search is divided into tasks executed by {@code pool}, and subtrees
+   * that are too small to be worth dividing are searched sequentially.
+   * Each task collects its results in its own buffer, and the buffers are
+   * added to {@code items} on the calling thread once all tasks have
+   * completed, so {@code items} need not be thread-safe.</p>
+   *
+   * <p>The default implementation is sequential.</p>
+   *
+   * @param volume The volume to examine
+   * @param items  The returned items
+   * @param pool   The pool that will execute tasks
+   */
+
+  default void containedByParallel(
+    final VolumeD volume,
+    final Set<A> items,
+    final ForkJoinPool pool)
+  {
+    Objects.requireNonNull(pool, "Pool");
+    this.containedBy(volume, items);
+  }
+
+  /**
+   * A parallel version of {@link #overlappedBy(VolumeD, Set)}, with the
+   * same behaviour as {@link #containedByParallel(VolumeD, Set, ForkJoinPool)}.
+   *
+   * @param volume The volume to examine
+   * @param items  The returned items
+   * @param pool   The pool that will execute tasks
+   */
+
+  default void overlappedByParallel(
+    final VolumeD volume,
+    final Set<A> items,
+    final ForkJoinPool pool)
+  {
+    Objects.requireNonNull(pool, "Pool");
+    this.overlappedBy(volume, items);
+  }
+
+  /**
+   * A parallel version of {@link #raycast(Ray3D, SortedSet)}, with the
+   * same behaviour as {@link #containedByParallel(VolumeD, Set, ForkJoinPool)}.
+   *
+   * @param ray   The ray
+   * @param items The intersected items
+   * @param pool  The pool that will execute tasks
+   */
+
+  default void raycastParallel(
+    final Ray3D ray,
+    final SortedSet<OctTreeRaycastResultD<A>> items,
+    final ForkJoinPool pool)
+  {
+    Objects.requireNonNull(pool, "Pool");
+    this.raycast(ray, items);
+  }
+
+  /**
+   * <p>Returns a stream of all objects in the tree. Implementations that
+   * can divide the traversal of the tree return streams that split at node
+   * boundaries, so that a parallel stream divides the work between threads
+   * without first collecting the objects. The tree must not be modified
+   * while the stream is in use.</p>
+   *
+   * <p>The default implementation streams a copy of the objects collected
+   * by {@link #iterateOctants(Object, OctTreeOctantIterationDType)}.</p>
+   *
+   * @return A stream of objects
+   */
+
+  default Stream<A> streamAll()
+  {
+    final List<A> items = new ArrayList<>();
+    this.iterateOctants(items, (context, octant, depth) -> {
+      context.addAll(octant.objects().keySet());
+      return TreeVisitResult.RESULT_CONTINUE;
+    });
+    return items.stream();
+  }
+
+  /**
+   * <p>Returns a stream of the objects that {@link #overlappedBy(VolumeD, Set)} would
+   * return, with the same behaviour as {@link #streamAll()}.</p>
+   *
+   * <p>The default implementation streams a copy of the objects collected
+   * by {@link #overlappedBy(VolumeD, Set)}.</p>
+   *
+   * @param volume The volume to examine
+   *
+   * @return A stream of objects
+   */
+
+  default Stream<A> streamOverlapping(
+    final VolumeD volume)
+  {
+    final Set<A> items = Collections.newSetFromMap(new IdentityHashMap<>());
+    this.overlappedBy(volume, items);
+    return items.stream();
+  }
+
+  /**
+   * <p>Executes a batch of {@link #overlappedBy(VolumeD, Set)} queries, saving
+   * the objects overlapped by {@code volumes.get(i)} to {@code items.get(i)}.
+   * The lists must be of the same size. Implementations may traverse the
+   * tree once for the whole batch, passing each node only the queries that
+   * overlap it, so that the upper levels of the tree are not visited once
+   * per query.</p>
+   *
+   * <p>The default implementation executes each query in turn.</p>
+   *
+   * @param volumes The volumes to examine
+   * @param items   The returned items, one set per query
+   */
+
+  default void overlappedByBatch(
+    final List<VolumeD> volumes,
+    final List<? extends Set<A>> items)
+  {
+    Objects.requireNonNull(volumes, "Volumes");
+    Objects.requireNonNull(items, "Items");
+    Preconditions.checkPreconditionV(
+      volumes.size() == items.size(),
+      "Number of result collections %d must match number of queries %d",
+      Integer.valueOf(items.size()),
+      Integer.valueOf(volumes.size()));
+
+    for (int index = 0; index < volumes.size(); ++index) {
+      this.overlappedBy(volumes.get(index), items.get(index));
+    }
+  }
+
+  /**
+   * <p>Executes a batch of {@link #raycast(Ray3D, OctTreeRaycastBufferD)} queries, appending
+   * the objects intersected by {@code rays.get(i)} to
+   * {@code results.get(i)}. The lists must be of the same size.
+   * Implementations may traverse the tree once for the whole batch, testing
+   * each node against every ray that reached its parent and passing on only
+   * the rays that intersect the node. This is most effective for coherent
+   * rays, such as rays cast from a single origin in similar directions,
+   * that pass through the same nodes.</p>
+   *
+   * <p>The default implementation executes each query in turn.</p>
+   *
+   * @param rays    The rays
+   * @param results The buffers that will receive results, one per ray
+   */
+
+  default void raycastBatch(
+    final List<Ray3D> rays,
+    final List<OctTreeRaycastBufferD<A>> results)
+  {
+    Objects.requireNonNull(rays, "Rays");
+    Objects.requireNonNull(results, "Results");
+    Preconditions.checkPreconditionV(
+      rays.size() == results.size(),
+      "Number of result collections %d must match number of queries %d",
+      Integer.valueOf(results.size()),
+      Integer.valueOf(rays.size()));
+
+    for (int index = 0; index < rays.size(); ++index) {
+      this.raycast(rays.get(index), results.get(index));
+    }
+  }
+
+  /**
+   * Passes each object in the tree that is completely contained within {@code volume} to
+   * {@code f}. The traversal stops as soon as {@code f} returns {@link
+   * TreeVisitResult#RESULT_TERMINATE}.
+   *
+   * @param volume  The volume to examine
+   * @param context A context value passed to {@code f}
+   * @param f       A visitor function
+   * @param <C>     The type of context values
+   *
+   * @return {@link TreeVisitResult#RESULT_TERMINATE} iff {@code f} terminated the traversal
+   */
+
+  <C> TreeVisitResult containedBy(
+    VolumeD volume,
+    C context,
+    OctTreeItemVisitorDType<A, C> f);
+
+  /**
+   * Passes each object in the tree that is overlapped by {@code volume} to {@code f}. The
+   * traversal stops as soon as {@code f} returns {@link TreeVisitResult#RESULT_TERMINATE}.
+   *
+   * @param volume  The volume to examine
+   * @param context A context value passed to {@code f}
+   * @param f       A visitor function
+   * @param <C>     The type of context values
+   *
+   * @return {@link TreeVisitResult#RESULT_TERMINATE} iff {@code f} terminated the traversal
+   */
+
+  <C> TreeVisitResult overlappedBy(
+    VolumeD volume,
+    C context,
+    OctTreeItemVisitorDType<A, C> f);
+
+  /**
+   * Passes each object that is intersected by the given ray to {@code f}. Unlike {@link
+   * #raycast(Ray3D, SortedSet)}, objects are passed to {@code f} in traversal order rather than
+   * in order of distance. The traversal stops as soon as {@code f} returns {@link
+   * TreeVisitResult#RESULT_TERMINATE}.
+   *
+   * @param ray     The ray
+   * @param context A context value passed to {@code f}
+   * @param f       A visitor function
+   * @param <C>     The type of context values
+   *
+   * @return {@link TreeVisitResult#RESULT_TERMINATE} iff {@code f} terminated the traversal
+   */
+
+  <C> TreeVisitResult raycast(
+    Ray3D ray,
+    C context,
+    OctTreeRaycastVisitorDType<A, C> f);
+
+  /**
+   * Passes the {@code count} objects nearest to {@code point} to {@code f}, in order of
+   * increasing distance. The distance to an object is the distance from {@code point} to the
+   * nearest point of the bounding volume of the object, and is zero if the volume contains {@code
+   * point}. Objects at equal distances are passed in an unspecified order. The search stops as
+   * soon as {@code f} returns {@link TreeVisitResult#RESULT_TERMINATE}.
+   *
+   * @param point   The query point
+   * @param count   The maximum number of objects to pass to {@code f}
+   * @param context A context value passed to {@code f}
+   * @param f       A visitor function
+   * @param <C>     The type of context values
+   *
+   * @return {@link TreeVisitResult#RESULT_TERMINATE} iff {@code f} terminated the search
+   */
+
+  <C> TreeVisitResult nearest(
+    Vector3D point,
+    int count,
+    C context,
+    OctTreeNearestVisitorDType<A, C> f);
+
+  /**
+   * Returns the object nearest to the origin of the ray that is intersected by the ray, if any.
+   * The distance to an object is the distance along the ray at which the ray enters the bounding
+   * volume of the object, in multiples of the length of the ray direction, and is zero if the
+   * volume contains the origin of the ray. Unlike {@link #raycast(Ray3D, SortedSet)}, nodes
+   * are visited in the order in which the ray passes through them, and nodes that the ray enters
+   * beyond the nearest object found so far are not examined.
+   *
+   * @param ray The ray
+   *
+   * @return The nearest intersected object, if any
+   */
+
+  Optional<OctTreeRaycastResultD<A>> raycastFirst(
+    Ray3D ray);
+
+  /**
+   * Passes the {@code count} objects nearest to the origin of the ray that are intersected by
+   * the ray to {@code f}, in order of increasing distance. Distances are defined as for {@link
+   * #raycastFirst(Ray3D)}. Objects at equal distances are passed in an unspecified order.
+   * The search stops as soon as {@code f} returns {@link TreeVisitResult#RESULT_TERMINATE}.
+   *
+   * @param ray     The ray
+   * @param count   The maximum number of objects to pass to {@code f}
+   * @param context A context value passed to {@code f}
+   * @param f       A visitor function
+   * @param <C>     The type of context values
+   *
+   * @return {@link TreeVisitResult#RESULT_TERMINATE} iff {@code f} terminated the search
+   */
+
+  <C> TreeVisitResult raycastFirst(
+    Ray3D ray,
+    int count,
+    C context,
+    OctTreeRaycastVisitorDType<A, C> f);
+
+  /**
+   * Appends all objects that are intersected by the given ray to {@code results}. The buffer is
+   * not cleared first. Objects are appended in traversal order, and the distance recorded for each
+   * object is defined as for {@link #raycastFirst(Ray3D)}; use {@link
+   * OctTreeRaycastBufferD#sortByDistance()} to order the results by distance. Unlike {@link
+   * #raycast(Ray3D, SortedSet)}, this method allocates nothing unless the buffer needs to
+   * grow.
+   *
+   * @param ray     The ray
+   * @param results The buffer that will receive results
+   */
+
+  void raycast(
+    Ray3D ray,
+    OctTreeRaycastBufferD<A> results);
+
+  /**
+   * Counts the objects in the tree that are completely contained within {@code volume}. The
+   * result is the number of objects that {@link #containedBy(VolumeD, Set)} would return, but no
+   * set is constructed, and nodes that lie entirely within {@code volume} contribute the number
+   * of objects they hold without being traversed.
+   *
+   * @param volume The volume to examine
+   *
+   * @return The number of objects contained within {@code volume}
+   */
+
+  long countContainedBy(
+    VolumeD volume);
+
+  /**
+   * Counts the objects in the tree that are overlapped by {@code volume}. The result is the
+   * number of objects that {@link #overlappedBy(VolumeD, Set)} would return, but no set is
+   * constructed, and nodes that lie entirely within {@code volume} contribute the number of
+   * objects they hold without being traversed.
+   *
+   * @param volume The volume to examine
+   *
+   * @return The number of objects overlapped by {@code volume}
+   */
+
+  long countOverlapping(
+    VolumeD volume);
+
+  /**
+   * Determines whether any object in the tree is overlapped by {@code volume}. The search stops
+   * at the first such object.
+   *
+   * @param volume The volume to examine
+   *
+   * @return {@code true} iff {@link #overlappedBy(VolumeD, Set)} would return at least one object
+   */
+
+  boolean anyOverlapping(
+    VolumeD volume);
 }
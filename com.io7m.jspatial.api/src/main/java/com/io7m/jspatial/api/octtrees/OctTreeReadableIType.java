@@ -18,8 +18,11 @@ package com.io7m.jspatial.api.octtrees;
 
 import com.io7m.jregions.core.unparameterized.volumes.VolumeI;
 import com.io7m.jspatial.api.Ray3D;
+import com.io7m.jspatial.api.TreeVisitResult;
+import com.io7m.jtensors.core.unparameterized.vectors.Vector3D;
 
 import java.util.NoSuchElementException;
+import java.util.Optional;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.function.BiFunction;
@@ -120,4 +123,173 @@ public interface OctTreeReadableIType<A> extends OctTreeReadableType
   void raycast(
     Ray3D ray,
     SortedSet<OctTreeRaycastResultI<A>> items);
+
+  /**
+   * Passes each object in the tree that is completely contained within {@code volume} to
+   * {@code f}. The traversal stops as soon as {@code f} returns {@link
+   * TreeVisitResult#RESULT_TERMINATE}.
+   *
+   * @param volume  The volume to examine
+   * @param context A context value passed to {@code f}
+   * @param f       A visitor function
+   * @param <C>     The type of context values
+   *
+   * @return {@link TreeVisitResult#RESULT_TERMINATE} iff {@code f} terminated the traversal
+   */
+
+  <C> TreeVisitResult containedBy(
+    VolumeI volume,
+    C context,
+    OctTreeItemVisitorIType<A, C> f);
+
+  /**
+   * Passes each object in the tree that is overlapped by {@code volume} to {@code f}. The
+   * traversal stops as soon as {@code f} returns {@link TreeVisitResult#RESULT_TERMINATE}.
+   *
+   * @param volume  The volume to examine
+   * @param context A context value passed to {@code f}
+   * @param f       A visitor function
+   * @param <C>     The type of context values
+   *
+   * @return {@link TreeVisitResult#RESULT_TERMINATE} iff {@code f} terminated the traversal
+   */
+
+  <C> TreeVisitResult overlappedBy(
+    VolumeI volume,
+    C context,
+    OctTreeItemVisitorIType<A, C> f);
+
+  /**
+   * Passes each object that is intersected by the given ray to {@code f}. Unlike {@link
+   * #raycast(Ray3D, SortedSet)}, objects are passed to {@code f} in traversal order rather than
+   * in order of distance. The traversal stops as soon as {@code f} returns {@link
+   * TreeVisitResult#RESULT_TERMINATE}.
+   *
+   * @param ray     The ray
+   * @param context A context value passed to {@code f}
+   * @param f       A visitor function
+   * @param <C>     The type of context values
+   *
+   * @return {@link TreeVisitResult#RESULT_TERMINATE} iff {@code f} terminated the traversal
+   */
+
+  <C> TreeVisitResult raycast(
+    Ray3D ray,
+    C context,
+    OctTreeRaycastVisitorIType<A, C> f);
+
+  /**
+   * Passes the {@code count} objects nearest to {@code point} to {@code f}, in order of
+   * increasing distance. The distance to an object is the distance from {@code point} to the
+   * nearest point of the bounding volume of the object, and is zero if the volume contains {@code
+   * point}. Objects at equal distances are passed in an unspecified order. The search stops as
+   * soon as {@code f} returns {@link TreeVisitResult#RESULT_TERMINATE}.
+   *
+   * @param point   The query point
+   * @param count   The maximum number of objects to pass to {@code f}
+   * @param context A context value passed to {@code f}
+   * @param f       A visitor function
+   * @param <C>     The type of context values
+   *
+   * @return {@link TreeVisitResult#RESULT_TERMINATE} iff {@code f} terminated the search
+   */
+
+  <C> TreeVisitResult nearest(
+    Vector3D point,
+    int count,
+    C context,
+    OctTreeNearestVisitorIType<A, C> f);
+
+  /**
+   * Returns the object nearest to the origin of the ray that is intersected by the ray, if any.
+   * The distance to an object is the distance along the ray at which the ray enters the bounding
+   * volume of the object, in multiples of the length of the ray direction, and is zero if the
+   * volume contains the origin of the ray. Unlike {@link #raycast(Ray3D, SortedSet)}, nodes
+   * are visited in the order in which the ray passes through them, and nodes that the ray enters
+   * beyond the nearest object found so far are not examined.
+   *
+   * @param ray The ray
+   *
+   * @return The nearest intersected object, if any
+   */
+
+  Optional<OctTreeRaycastResultI<A>> raycastFirst(
+    Ray3D ray);
+
+  /**
+   * Passes the {@code count} objects nearest to the origin of the ray that are intersected by
+   * the ray to {@code f}, in order of increasing distance. Distances are defined as for {@link
+   * #raycastFirst(Ray3D)}. Objects at equal distances are passed in an unspecified order.
+   * The search stops as soon as {@code f} returns {@link TreeVisitResult#RESULT_TERMINATE}.
+   *
+   * @param ray     The ray
+   * @param count   The maximum number of objects to pass to {@code f}
+   * @param context A context value passed to {@code f}
+   * @param f       A visitor function
+   * @param <C>     The type of context values
+   *
+   * @return {@link TreeVisitResult#RESULT_TERMINATE} iff {@code f} terminated the search
+   */
+
+  <C> TreeVisitResult raycastFirst(
+    Ray3D ray,
+    int count,
+    C context,
+    OctTreeRaycastVisitorIType<A, C> f);
+
+  /**
+   * Appends all objects that are intersected by the given ray to {@code results}. The buffer is
+   * not cleared first. Objects are appended in traversal order, and the distance recorded for each
+   * object is defined as for {@link #raycastFirst(Ray3D)}; use {@link
+   * OctTreeRaycastBufferI#sortByDistance()} to order the results by distance. Unlike {@link
+   * #raycast(Ray3D, SortedSet)}, this method allocates nothing unless the buffer needs to
+   * grow.
+   *
+   * @param ray     The ray
+   * @param results The buffer that will receive results
+   */
+
+  void raycast(
+    Ray3D ray,
+    OctTreeRaycastBufferI<A> results);
+
+  /**
+   * Counts the objects in the tree that are completely contained within {@code volume}. The
+   * result is the number of objects that {@link #containedBy(VolumeI, Set)} would return, but no
+   * set is constructed, and nodes that lie entirely within {@code volume} contribute the number
+   * of objects they hold without being traversed.
+   *
+   * @param volume The volume to examine
+   *
+   * @return The number of objects contained within {@code volume}
+   */
+
+  long countContainedBy(
+    VolumeI volume);
+
+  /**
+   * Counts the objects in the tree that are overlapped by {@code volume}. The result is the
+   * number of objects that {@link #overlappedBy(VolumeI, Set)} would return, but no set is
+   * constructed, and nodes that lie entirely within {@code volume} contribute the number of
+   * objects they hold without being traversed.
+   *
+   * @param volume The volume to examine
+   *
+   * @return The number of objects overlapped by {@code volume}
+   */
+
+  long countOverlapping(
+    VolumeI volume);
+
+  /**
+   * Determines whether any object in the tree is overlapped by {@code volume}. The search stops
+   * at the first such object.
+   *
+   * @param volume The volume to examine
+   *
+   * @return {@code true} iff {@link #overlappedBy(VolumeI, Set)} would return at least one object
+   */
+
+  boolean anyOverlapping(
+    VolumeI volume);
 }
@@ -16,6 +16,10 @@
 
 package com.io7m.jspatial.api.octtrees;
 
+import com.io7m.jregions.core.unparameterized.volumes.VolumeD;
+
+import java.util.Map;
+
 /**
  * The type of constructors for trees.
  *
@@ -36,4 +40,24 @@ public interface OctTreeSupplierDType
 
   <A> OctTreeDType<A> create(
     OctTreeConfigurationD config);
+
+  /**
+   * Create a new tree based on the given configuration, containing the given objects. The tree
+   * is populated with {@link OctTreeDType#insertAll(Map)}.
+   *
+   * @param config The configuration
+   * @param items  The objects to insert, and their bounds
+   * @param <A>    The type of objects in the tree
+   *
+   * @return A new tree
+   */
+
+  default <A> OctTreeDType<A> build(
+    final OctTreeConfigurationD config,
+    final Map<A, VolumeD> items)
+  {
+    final OctTreeDType<A> tree = this.create(config);
+    tree.insertAll(items);
+    return tree;
+  }
 }
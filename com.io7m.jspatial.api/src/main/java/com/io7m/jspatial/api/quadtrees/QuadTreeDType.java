@@ -18,6 +18,7 @@ package com.io7m.jspatial.api.quadtrees;
 
 import com.io7m.jregions.core.unparameterized.areas.AreaD;
 
+import java.util.Map;
 import java.util.function.BiFunction;
 
 /**
@@ -46,6 +47,24 @@ public interface QuadTreeDType<A> extends QuadTreeReadableDType<A>
     A item,
     AreaD bounds);
 
+  /**
+   * <p>Insert all of the objects in {@code items} into the quadtree. The result is the same as
+   * calling {@link #insert(Object, AreaD)} for each object in turn, and the function returns the
+   * number of objects for which {@code insert} would have returned {@code true}.</p>
+   *
+   * <p>The objects are first sorted by the Morton (Z-order) code of the centres of their bounds.
+   * If the tree is empty, it is then built in a single pass over the sorted objects, without
+   * repeatedly splitting nodes and redistributing objects as they arrive. Objects that are close
+   * in space are also held close together in memory.</p>
+   *
+   * @param items The objects to insert, and their bounds
+   *
+   * @return The number of objects inserted
+   */
+
+  long insertAll(
+    Map<A, AreaD> items);
+
   /**
    * <p>Remove the object {@code item} from the quadtree.</p>
    *
@@ -83,4 +102,23 @@ public interface QuadTreeDType<A> extends QuadTreeReadableDType<A>
 
   @Override
   <B> QuadTreeDType<B> map(BiFunction<A, AreaD, B> f);
+
+  /**
+   * <p>Take a snapshot of the tree. The snapshot holds the objects that are
+   * in the tree at the time of the call, and is not affected by any later
+   * changes to the tree.</p>
+   *
+   * <p>The default implementation copies the tree with
+   * {@link #map(BiFunction)}, and so takes time and space linear in the
+   * number of objects in the tree. Implementations backed by a
+   * {@link QuadTreePersistentDType} return the current version of that tree, and
+   * do not copy anything.</p>
+   *
+   * @return A snapshot of the tree
+   */
+
+  default QuadTreeReadableDType<A> snapshot()
+  {
+    return this.map((item, area) -> item);
+  }
 }
@@ -18,6 +18,7 @@ package com.io7m.jspatial.api.quadtrees;
 
 import com.io7m.jregions.core.unparameterized.areas.AreaI;
 
+import java.util.Map;
 import java.util.function.BiFunction;
 
 /**
@@ -49,6 +50,24 @@ public interface QuadTreeIType<A> extends QuadTreeReadableIType<A>
     A item,
     AreaI bounds);
 
+  /**
+   * <p>Insert all of the objects in {@code items} into the quadtree. The result is the same as
+   * calling {@link #insert(Object, AreaI)} for each object in turn, and the function returns the
+   * number of objects for which {@code insert} would have returned {@code true}.</p>
+   *
+   * <p>The objects are first sorted by the Morton (Z-order) code of the centres of their bounds.
+   * If the tree is empty, it is then built in a single pass over the sorted objects, without
+   * repeatedly splitting nodes and redistributing objects as they arrive. Objects that are close
+   * in space are also held close together in memory.</p>
+   *
+   * @param items The objects to insert, and their bounds
+   *
+   * @return The number of objects inserted
+   */
+
+  long insertAll(
+    Map<A, AreaI> items);
+
   /**
    * <p>Remove the object {@code item} from the quadtree.</p>
    *
@@ -18,8 +18,11 @@ package com.io7m.jspatial.api.quadtrees;
 
 import com.io7m.jregions.core.unparameterized.areas.AreaI;
 import com.io7m.jspatial.api.Ray2D;
+import com.io7m.jspatial.api.TreeVisitResult;
+import com.io7m.jtensors.core.unparameterized.vectors.Vector2D;
 
 import java.util.NoSuchElementException;
+import java.util.Optional;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.function.BiFunction;
@@ -120,4 +123,173 @@ public interface QuadTreeReadableIType<A> extends QuadTreeReadableType
   void raycast(
     Ray2D ray,
     SortedSet<QuadTreeRaycastResultI<A>> items);
+
+  /**
+   * Passes each object in the tree that is completely contained within {@code area} to
+   * {@code f}. The traversal stops as soon as {@code f} returns {@link
+   * TreeVisitResult#RESULT_TERMINATE}.
+   *
+   * @param area    The area to examine
+   * @param context A context value passed to {@code f}
+   * @param f       A visitor function
+   * @param <C>     The type of context values
+   *
+   * @return {@link TreeVisitResult#RESULT_TERMINATE} iff {@code f} terminated the traversal
+   */
+
+  <C> TreeVisitResult containedBy(
+    AreaI area,
+    C context,
+    QuadTreeItemVisitorIType<A, C> f);
+
+  /**
+   * Passes each object in the tree that is overlapped by {@code area} to {@code f}. The
+   * traversal stops as soon as {@code f} returns {@link TreeVisitResult#RESULT_TERMINATE}.
+   *
+   * @param area    The area to examine
+   * @param context A context value passed to {@code f}
+   * @param f       A visitor function
+   * @param <C>     The type of context values
+   *
+   * @return {@link TreeVisitResult#RESULT_TERMINATE} iff {@code f} terminated the traversal
+   */
+
+  <C> TreeVisitResult overlappedBy(
+    AreaI area,
+    C context,
+    QuadTreeItemVisitorIType<A, C> f);
+
+  /**
+   * Passes each object that is intersected by the given ray to {@code f}. Unlike {@link
+   * #raycast(Ray2D, SortedSet)}, objects are passed to {@code f} in traversal order rather than
+   * in order of distance. The traversal stops as soon as {@code f} returns {@link
+   * TreeVisitResult#RESULT_TERMINATE}.
+   *
+   * @param ray     The ray
+   * @param context A context value passed to {@code f}
+   * @param f       A visitor function
+   * @param <C>     The type of context values
+   *
+   * @return {@link TreeVisitResult#RESULT_TERMINATE} iff {@code f} terminated the traversal
+   */
+
+  <C> TreeVisitResult raycast(
+    Ray2D ray,
+    C context,
+    QuadTreeRaycastVisitorIType<A, C> f);
+
+  /**
+   * Passes the {@code count} objects nearest to {@code point} to {@code f}, in order of
+   * increasing distance. The distance to an object is the distance from {@code point} to the
+   * nearest point of the bounding area of the object, and is zero if the area contains {@code
+   * point}. Objects at equal distances are passed in an unspecified order. The search stops as
+   * soon as {@code f} returns {@link TreeVisitResult#RESULT_TERMINATE}.
+   *
+   * @param point   The query point
+   * @param count   The maximum number of objects to pass to {@code f}
+   * @param context A context value passed to {@code f}
+   * @param f       A visitor function
+   * @param <C>     The type of context values
+   *
+   * @return {@link TreeVisitResult#RESULT_TERMINATE} iff {@code f} terminated the search
+   */
+
+  <C> TreeVisitResult nearest(
+    Vector2D point,
+    int count,
+    C context,
+    QuadTreeNearestVisitorIType<A, C> f);
+
+  /**
+   * Returns the object nearest to the origin of the ray that is intersected by the ray, if any.
+   * The distance to an object is the distance along the ray at which the ray enters the bounding
+   * area of the object, in multiples of the length of the ray direction, and is zero if the
+   * area contains the origin of the ray. Unlike {@link #raycast(Ray2D, SortedSet)}, nodes
+   * are visited in the order in which the ray passes through them, and nodes that the ray enters
+   * beyond the nearest object found so far are not examined.
+   *
+   * @param ray The ray
+   *
+   * @return The nearest intersected object, if any
+   */
+
+  Optional<QuadTreeRaycastResultI<A>> raycastFirst(
+    Ray2D ray);
+
+  /**
+   * Passes the {@code count} objects nearest to the origin of the ray that are intersected by
+   * the ray to {@code f}, in order of increasing distance. Distances are defined as for {@link
+   * #raycastFirst(Ray2D)}. Objects at equal distances are passed in an unspecified order.
+   * The search stops as soon as {@code f} returns {@link TreeVisitResult#RESULT_TERMINATE}.
+   *
+   * @param ray     The ray
+   * @param count   The maximum number of objects to pass to {@code f}
+   * @param context A context value passed to {@code f}
+   * @param f       A visitor function
+   * @param <C>     The type of context values
+   *
+   * @return {@link TreeVisitResult#RESULT_TERMINATE} iff {@code f} terminated the search
+   */
+
+  <C> TreeVisitResult raycastFirst(
+    Ray2D ray,
+    int count,
+    C context,
+    QuadTreeRaycastVisitorIType<A, C> f);
+
+  /**
+   * Appends all objects that are intersected by the given ray to {@code results}. The buffer is
+   * not cleared first. Objects are appended in traversal order, and the distance recorded for each
+   * object is defined as for {@link #raycastFirst(Ray2D)}; use {@link
+   * QuadTreeRaycastBufferI#sortByDistance()} to order the results by distance. Unlike {@link
+   * #raycast(Ray2D, SortedSet)}, this method allocates nothing unless the buffer needs to
+   * grow.
+   *
+   * @param ray     The ray
+   * @param results The buffer that will receive results
+   */
+
+  void raycast(
+    Ray2D ray,
+    QuadTreeRaycastBufferI<A> results);
+
+  /**
+   * Counts the objects in the tree that are completely contained within {@code area}. The
+   * result is the number of objects that {@link #containedBy(AreaI, Set)} would return, but no
+   * set is constructed, and nodes that lie entirely within {@code area} contribute the number
+   * of objects they hold without being traversed.
+   *
+   * @param area The area to examine
+   *
+   * @return The number of objects contained within {@code area}
+   */
+
+  long countContainedBy(
+    AreaI area);
+
+  /**
+   * Counts the objects in the tree that are overlapped by {@code area}. The result is the
+   * number of objects that {@link #overlappedBy(AreaI, Set)} would return, but no set is
+   * constructed, and nodes that lie entirely within {@code area} contribute the number of
+   * objects they hold without being traversed.
+   *
+   * @param area The area to examine
+   *
+   * @return The number of objects overlapped by {@code area}
+   */
+
+  long countOverlapping(
+    AreaI area);
+
+  /**
+   * Determines whether any object in the tree is overlapped by {@code area}. The search stops
+   * at the first such object.
+   *
+   * @param area The area to examine
+   *
+   * @return {@code true} iff {@link #overlappedBy(AreaI, Set)} would return at least one object
+   */
+
+  boolean anyOverlapping(
+    AreaI area);
 }
@@ -16,6 +16,10 @@
 
 package com.io7m.jspatial.api.quadtrees;
 
+import com.io7m.jregions.core.unparameterized.areas.AreaD;
+
+import java.util.Map;
+
 /**
  * The type of constructors for trees.
  *
@@ -36,4 +40,24 @@ public interface QuadTreeSupplierDType
 
   <A> QuadTreeDType<A> create(
     QuadTreeConfigurationD config);
+
+  /**
+   * Create a new tree based on the given configuration, containing the given objects. The tree
+   * is populated with {@link QuadTreeDType#insertAll(Map)}.
+   *
+   * @param config The configuration
+   * @param items  The objects to insert, and their bounds
+   * @param <A>    The type of objects in the tree
+   *
+   * @return A new tree
+   */
+
+  default <A> QuadTreeDType<A> build(
+    final QuadTreeConfigurationD config,
+    final Map<A, AreaD> items)
+  {
+    final QuadTreeDType<A> tree = this.create(config);
+    tree.insertAll(items);
+    return tree;
+  }
 }
@@ -16,6 +16,10 @@
 
 package com.io7m.jspatial.api.quadtrees;
 
+import com.io7m.jregions.core.unparameterized.areas.AreaI;
+
+import java.util.Map;
+
 /**
  * The type of constructors for trees.
  *
@@ -36,4 +40,24 @@ public interface QuadTreeSupplierIType
 
   <A> QuadTreeIType<A> create(
     QuadTreeConfigurationI config);
+
+  /**
+   * Create a new tree based on the given configuration, containing the given objects. The tree
+   * is populated with {@link QuadTreeIType#insertAll(Map)}.
+   *
+   * @param config The configuration
+   * @param items  The objects to insert, and their bounds
+   * @param <A>    The type of objects in the tree
+   *
+   * @return A new tree
+   */
+
+  default <A> QuadTreeIType<A> build(
+    final QuadTreeConfigurationI config,
+    final Map<A, AreaI> items)
+  {
+    final QuadTreeIType<A> tree = this.create(config);
+    tree.insertAll(items);
+    return tree;
+  }
 }
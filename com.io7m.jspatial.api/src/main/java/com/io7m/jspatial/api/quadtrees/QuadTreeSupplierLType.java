@@ -16,6 +16,10 @@
 
 package com.io7m.jspatial.api.quadtrees;
 
+import com.io7m.jregions.core.unparameterized.areas.AreaL;
+
+import java.util.Map;
+
 /**
  * The type of constructors for trees.
  *
@@ -36,4 +40,24 @@ public interface QuadTreeSupplierLType
 
   <A> QuadTreeLType<A> create(
     QuadTreeConfigurationL config);
+
+  /**
+   * Create a new tree based on the given configuration, containing the given objects. The tree
+   * is populated with {@link QuadTreeLType#insertAll(Map)}.
+   *
+   * @param config The configuration
+   * @param items  The objects to insert, and their bounds
+   * @param <A>    The type of objects in the tree
+   *
+   * @return A new tree
+   */
+
+  default <A> QuadTreeLType<A> build(
+    final QuadTreeConfigurationL config,
+    final Map<A, AreaL> items)
+  {
+    final QuadTreeLType<A> tree = this.create(config);
+    tree.insertAll(items);
+    return tree;
+  }
 }
@@ -25,6 +25,7 @@ module com.io7m.jspatial.api
   requires static org.osgi.annotation.bundle;
   requires static org.osgi.annotation.versioning;
 
+  requires com.io7m.jaffirm.core;
   requires com.io7m.jregions.core;
   requires com.io7m.jtensors.core;
 
@@ -0,0 +1,184 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.jspatial.benchmarks;
+
+import java.util.SplittableRandom;
+
+/**
+ * Deterministic benchmark data. All trees of a given dimensionality are fed
+ * exactly the same items, queries and rays, regardless of coordinate type, so
+ * that results are directly comparable across implementations.
+ */
+
+public final class BenchmarkData
+{
+  /**
+   * The size of the world on each axis for quadtree benchmarks.
+   */
+
+  public static final long QUADTREE_WORLD_SIZE = 65536L;
+
+  /**
+   * The size of the world on each axis for octtree benchmarks.
+   */
+
+  public static final long OCTTREE_WORLD_SIZE = 4096L;
+
+  /**
+   * The number of distinct queries and rays cycled through by query
+   * benchmarks.
+   */
+
+  public static final int QUERY_COUNT = 1024;
+
+  /**
+   * The number of items requested by nearest neighbour benchmarks.
+   */
+
+  public static final int NEAREST_COUNT = 16;
+
+  private BenchmarkData()
+  {
+    throw new AssertionError("Unreachable code");
+  }
+
+  /**
+   * Generate {@code count} axis-aligned boxes within a world of size
+   * {@code world} on each axis. The boxes are packed into the returned array
+   * as {@code [min_0 .. min_(d-1), max_0 .. max_(d-1)]} where {@code d} is
+   * {@code dimensions}. All coordinates are integral so that the same data can
+   * be used for integer and floating point trees.
+   *
+   * @param count        The number of boxes
+   * @param dimensions   The number of dimensions (2 or 3)
+   * @param world        The world size
+   * @param distribution The item size distribution
+   * @param seed         The random seed
+   *
+   * @return The packed boxes
+   */
+
+  public static double[] boxes(
+    final int count,
+    final int dimensions,
+    final long world,
+    final BenchmarkSizeDistribution distribution,
+    final long seed)
+  {
+    final SplittableRandom random = new SplittableRandom(seed);
+    final double world_d = (double) world;
+    final int stride = dimensions * 2;
+    final double[] boxes = new double[count * stride];
+
+    for (int index = 0; index < count; ++index) {
+      final int base = index * stride;
+      for (int axis = 0; axis < dimensions; ++axis) {
+        final double extent =
+          Math.min(world_d - 1.0, Math.ceil(distribution.extent(random, world_d)));
+        final double min =
+          Math.floor(random.nextDouble() * (world_d - extent));
+        boxes[base + axis] = min;
+        boxes[base + dimensions + axis] = min + extent;
+      }
+    }
+    return boxes;
+  }
+
+  /**
+   * Generate {@code count} query boxes with extents between {@code 1/64} and
+   * {@code 1/8} of the world size.
+   *
+   * @param count      The number of boxes
+   * @param dimensions The number of dimensions (2 or 3)
+   * @param world      The world size
+   * @param seed       The random seed
+   *
+   * @return The packed boxes, in the same layout as {@link #boxes(int, int, long, BenchmarkSizeDistribution, long)}
+   */
+
+  public static double[] queries(
+    final int count,
+    final int dimensions,
+    final long world,
+    final long seed)
+  {
+    final SplittableRandom random = new SplittableRandom(seed);
+    final double world_d = (double) world;
+    final int stride = dimensions * 2;
+    final double[] boxes = new double[count * stride];
+
+    for (int index = 0; index < count; ++index) {
+      final int base = index * stride;
+      for (int axis = 0; axis < dimensions; ++axis) {
+        final double extent =
+          Math.floor(world_d / 64.0 + random.nextDouble() * (world_d / 8.0 - world_d / 64.0));
+        final double min =
+          Math.floor(random.nextDouble() * (world_d - extent));
+        boxes[base + axis] = min;
+        boxes[base + dimensions + axis] = min + extent;
+      }
+    }
+    return boxes;
+  }
+
+  /**
+   * Generate {@code count} rays with origins inside the world and uniformly
+   * distributed unit length directions. The rays are packed into the returned
+   * array as {@code [origin_0 .. origin_(d-1), direction_0 .. direction_(d-1)]}.
+   *
+   * @param count      The number of rays
+   * @param dimensions The number of dimensions (2 or 3)
+   * @param world      The world size
+   * @param seed       The random seed
+   *
+   * @return The packed rays
+   */
+
+  public static double[] rays(
+    final int count,
+    final int dimensions,
+    final long world,
+    final long seed)
+  {
+    final SplittableRandom random = new SplittableRandom(seed);
+    final double world_d = (double) world;
+    final int stride = dimensions * 2;
+    final double[] rays = new double[count * stride];
+
+    for (int index = 0; index < count; ++index) {
+      final int base = index * stride;
+
+      double length = 0.0;
+      while (length < 1.0e-6) {
+        length = 0.0;
+        for (int axis = 0; axis < dimensions; ++axis) {
+          final double d = random.nextDouble(-1.0, 1.0);
+          rays[base + dimensions + axis] = d;
+          length += d * d;
+        }
+        length = Math.sqrt(length);
+      }
+
+      for (int axis = 0; axis < dimensions; ++axis) {
+        rays[base + axis] = random.nextDouble() * world_d;
+        rays[base + dimensions + axis] /= length;
+      }
+    }
+    return rays;
+  }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.jspatial.benchmarks;
+
+import java.util.SplittableRandom;
+
+/**
+ * The distributions of item sizes used in benchmarks.
+ */
+
+public enum BenchmarkSizeDistribution
+{
+  /**
+   * All items are small relative to the world: Extents are uniformly
+   * distributed in {@code [1, world / 1024]}.
+   */
+
+  SMALL {
+    @Override
+    double extent(
+      final SplittableRandom random,
+      final double world)
+    {
+      return 1.0 + random.nextDouble() * Math.max(0.0, (world / 1024.0) - 1.0);
+    }
+  },
+
+  /**
+   * All items are moderately sized relative to the world: Extents are
+   * uniformly distributed in {@code [1, world / 64]}.
+   */
+
+  MEDIUM {
+    @Override
+    double extent(
+      final SplittableRandom random,
+      final double world)
+    {
+      return 1.0 + random.nextDouble() * Math.max(0.0, (world / 64.0) - 1.0);
+    }
+  },
+
+  /**
+   * Item sizes vary wildly: Extents are log-uniformly distributed in
+   * {@code [1, world / 8]}, so most items are small but a few cover large
+   * parts of the world.
+   */
+
+  MIXED {
+    @Override
+    double extent(
+      final SplittableRandom random,
+      final double world)
+    {
+      final double max = Math.log(Math.max(1.0, world / 8.0));
+      return Math.exp(random.nextDouble() * max);
+    }
+  };
+
+  abstract double extent(
+    SplittableRandom random,
+    double world);
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jspatial.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * <p>Run the leaf kernel benchmarks and the tree queries that use the leaf
+ * kernels under the JMH {@code gc} profiler, and fail if any of them
+ * allocates more per operation than the scalar kernel does.</p>
+ *
+ * <p>The same figures can be obtained from the benchmark jar by passing
+ * {@code -prof gc} and reading {@code gc.alloc.rate.norm}.</p>
+ */
+
+public final class LeafKernelDAllocationCheck
+{
+  private static final String ALLOCATION = "gc.alloc.rate.norm";
+
+  /*
+   * The permitted bytes per operation for each benchmark. The count query
+   * allocates the query area itself, regardless of the kernel.
+   */
+
+  private static final Map<String, Double> LIMITS = Map.of(
+    "LeafKernelDBenchmark.overlappingVolumes", Double.valueOf(1.0),
+    "LeafKernelDBenchmark.intersectingVolumes", Double.valueOf(1.0),
+    "OctTreeDBenchmark.raycastBuffer", Double.valueOf(1.0),
+    "OctTreeDBenchmark.countOverlapping", Double.valueOf(65.0)
+  );
+
+  private LeafKernelDAllocationCheck()
+  {
+
+  }
+
+  /**
+   * Run the check.
+   *
+   * @param args Command-line arguments (ignored)
+   *
+   * @throws RunnerException On benchmark errors
+   */
+
+  public static void main(
+    final String[] args)
+    throws RunnerException
+  {
+    final Options options =
+      new OptionsBuilder()
+        .include("LeafKernelDBenchmark\\.(overlappingVolumes|intersectingVolumes)$")
+        .include("OctTreeDBenchmark\\.(raycastBuffer|countOverlapping)$")
+        .param("kernel", "VECTOR")
+        .param("objectCount", "256")
+        .param("itemCount", "10000")
+        .param("itemSizes", "MEDIUM")
+        .param("minimumOctantWidth", "2")
+        .param("maximumItemsPerLeaf", "256")
+        .param("implementation", "DEFAULT")
+        .warmupIterations(3)
+        .warmupTime(TimeValue.seconds(1L))
+        .measurementIterations(3)
+        .measurementTime(TimeValue.seconds(1L))
+        .addProfiler(GCProfiler.class)
+        .build();
+
+    final Collection<RunResult> results = new Runner(options).run();
+
+    int failures = 0;
+    for (final RunResult result : results) {
+      final String label = result.getParams().getBenchmark();
+      final int method = label.lastIndexOf('.');
+      final String name = label.substring(label.lastIndexOf('.', method - 1) + 1);
+      final Result<?> allocation = result.getSecondaryResults().get(ALLOCATION);
+      if (allocation == null) {
+        throw new IllegalStateException(
+          "No allocation rate reported for " + name + "; is the gc profiler supported?");
+      }
+
+      final double bytes = allocation.getScore();
+      final double limit = LIMITS.get(name).doubleValue();
+      System.out.printf("%s: %.1f B/op (limit %.1f)%n", name, bytes, limit);
+      if (bytes > limit) {
+        ++failures;
+      }
+    }
+
+    if (failures > 0) {
+      throw new IllegalStateException(
+        failures + " benchmark(s) allocated more than the permitted bytes per operation");
+    }
+  }
+}
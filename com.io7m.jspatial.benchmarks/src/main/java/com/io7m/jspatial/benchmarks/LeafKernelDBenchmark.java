@@ -0,0 +1,192 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jspatial.benchmarks;
+
+import com.io7m.jspatial.implementation.LeafKernelDType;
+import com.io7m.jspatial.implementation.LeafKernelsD;
+import com.io7m.jspatial.vector.LeafKernelVectorD;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for the {@link LeafKernelDType} implementations, testing every
+ * object held by a single large leaf against a query.
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class LeafKernelDBenchmark
+{
+  private static final long WORLD = 256L;
+
+  /**
+   * The number of objects held by the leaf.
+   */
+
+  @Param({"16", "64", "256"})
+  public int objectCount;
+
+  /**
+   * The kernel: {@code SCALAR} or {@code VECTOR}.
+   */
+
+  @Param({"SCALAR", "VECTOR"})
+  public String kernel;
+
+  private LeafKernelDType leaf_kernel;
+  private double[] volumes;
+  private double[][] queries;
+  private double[] rays;
+  private int query_index;
+
+  /**
+   * Construct a benchmark.
+   */
+
+  public LeafKernelDBenchmark()
+  {
+
+  }
+
+  /*
+   * Convert boxes from the benchmark data layout to the layout used by the
+   * trees.
+   */
+
+  private static double[] interleave(
+    final double[] boxes)
+  {
+    final double[] out = new double[boxes.length];
+    for (int base = 0; base < boxes.length; base += 6) {
+      for (int axis = 0; axis < 3; ++axis) {
+        out[base + axis * 2] = boxes[base + axis];
+        out[base + axis * 2 + 1] = boxes[base + 3 + axis];
+      }
+    }
+    return out;
+  }
+
+  /**
+   * Create the leaf and the queries.
+   */
+
+  @Setup(Level.Trial)
+  public void setup()
+  {
+    switch (this.kernel) {
+      case "SCALAR" -> this.leaf_kernel = LeafKernelsD.scalar();
+      case "VECTOR" -> this.leaf_kernel = new LeafKernelVectorD();
+      default -> throw new IllegalArgumentException("Unknown kernel: " + this.kernel);
+    }
+
+    this.volumes = interleave(BenchmarkData.boxes(
+      this.objectCount, 3, WORLD, BenchmarkSizeDistribution.MEDIUM, 0x2545f491L));
+
+    /*
+     * Each query is held in its own array, packed in the same way as the
+     * trees pack query volumes.
+     */
+
+    final double[] query_volumes = interleave(
+      BenchmarkData.queries(BenchmarkData.QUERY_COUNT, 3, WORLD, 0x9e3779b9L));
+    this.queries = new double[BenchmarkData.QUERY_COUNT][];
+    for (int index = 0; index < BenchmarkData.QUERY_COUNT; ++index) {
+      this.queries[index] =
+        Arrays.copyOfRange(query_volumes, index * 6, index * 6 + 6);
+    }
+    this.rays = BenchmarkData.rays(BenchmarkData.QUERY_COUNT, 3, WORLD, 0x7f4a7c15L);
+    for (int base = 0; base < this.rays.length; base += 6) {
+      for (int axis = 3; axis < 6; ++axis) {
+        this.rays[base + axis] = 1.0 / this.rays[base + axis];
+      }
+    }
+  }
+
+  private int nextQuery()
+  {
+    final int index = this.query_index;
+    this.query_index = (index + 1) % BenchmarkData.QUERY_COUNT;
+    return index;
+  }
+
+  /**
+   * Count the objects overlapped by a query volume.
+   *
+   * @return The number of objects found
+   */
+
+  @Benchmark
+  public int overlappingVolumes()
+  {
+    final double[] query = this.queries[this.nextQuery()];
+
+    int count = 0;
+    for (int base = 0; base < this.objectCount; base += LeafKernelDType.MAXIMUM_COUNT) {
+      count += Long.bitCount(this.leaf_kernel.overlappingVolumes(
+        query,
+        this.volumes,
+        base,
+        Math.min(this.objectCount - base, LeafKernelDType.MAXIMUM_COUNT)));
+    }
+    return count;
+  }
+
+  /**
+   * Count the objects intersected by a ray.
+   *
+   * @return The number of objects found
+   */
+
+  @Benchmark
+  public int intersectingVolumes()
+  {
+    final double[] r = this.rays;
+    final int o = this.nextQuery() * 6;
+
+    int count = 0;
+    for (int base = 0; base < this.objectCount; base += LeafKernelDType.MAXIMUM_COUNT) {
+      count += Long.bitCount(this.leaf_kernel.intersectingVolumes(
+        r[o],
+        r[o + 1],
+        r[o + 2],
+        r[o + 3],
+        r[o + 4],
+        r[o + 5],
+        this.volumes,
+        base,
+        Math.min(this.objectCount - base, LeafKernelDType.MAXIMUM_COUNT)));
+    }
+    return count;
+  }
+}
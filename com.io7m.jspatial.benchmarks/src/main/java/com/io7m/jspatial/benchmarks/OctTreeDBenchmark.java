@@ -0,0 +1,603 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.jspatial.benchmarks;
+
+import com.io7m.jregions.core.unparameterized.volumes.VolumeD;
+import com.io7m.jspatial.api.Ray3D;
+import com.io7m.jspatial.api.TreeVisitResult;
+import com.io7m.jspatial.api.octtrees.OctTreeConfigurationD;
+import com.io7m.jspatial.api.octtrees.OctTreeDType;
+import com.io7m.jspatial.api.octtrees.OctTreeRaycastBufferD;
+import com.io7m.jspatial.api.octtrees.OctTreeRaycastResultD;
+import com.io7m.jspatial.api.octtrees.OctTreeSupplierDType;
+import com.io7m.jspatial.implementation.BoundingVolumeHierarchySupplierD;
+import com.io7m.jspatial.implementation.OctTreeSupplierD;
+import com.io7m.jtensors.core.unparameterized.vectors.Vector3D;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for {@link com.io7m.jspatial.implementation.OctTreeD}.
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class OctTreeDBenchmark
+{
+  /**
+   * The number of items in the tree.
+   */
+
+  @Param({"1000", "10000", "100000"})
+  public int itemCount;
+
+  /**
+   * The distribution of item sizes.
+   */
+
+  @Param({"SMALL", "MEDIUM", "MIXED"})
+  public BenchmarkSizeDistribution itemSizes;
+
+  /**
+   * The minimum octant width, height and depth.
+   */
+
+  @Param({"2", "64"})
+  public double minimumOctantWidth;
+
+  /**
+   * The maximum number of items per leaf (0 splits leaves eagerly).
+   */
+
+  @Param({"0", "16", "256"})
+  public int maximumItemsPerLeaf;
+
+  /**
+   * The tree implementation: {@code DEFAULT} for the node-per-object tree,
+   * {@code BVH} for the surface area heuristic bounding volume hierarchy.
+   */
+
+  @Param({"DEFAULT", "BVH"})
+  public String implementation;
+
+  private OctTreeSupplierDType supplier;
+  private OctTreeConfigurationD config;
+  private Integer[] items;
+  private VolumeD[] bounds;
+  private Map<Integer, VolumeD> item_map;
+  private VolumeD[] queries;
+  private List<VolumeD> query_list;
+  private List<Set<Integer>> batch_results;
+  private Ray3D[] rays;
+  private List<Ray3D> ray_list;
+  private List<OctTreeRaycastBufferD<Integer>> ray_batch_results;
+  private OctTreeDType<Integer> tree;
+  private Set<Integer> results;
+  private SortedSet<OctTreeRaycastResultD<Integer>> raycast_results;
+  private OctTreeRaycastBufferD<Integer> raycast_buffer;
+  private List<Integer> nearest_results;
+  private int item_index;
+  private int query_index;
+
+  /**
+   * Construct a benchmark.
+   */
+
+  public OctTreeDBenchmark()
+  {
+
+  }
+
+  private static VolumeD volume(
+    final double[] boxes,
+    final int index)
+  {
+    final int base = index * 6;
+    return VolumeD.of(
+      boxes[base],
+      boxes[base + 3],
+      boxes[base + 1],
+      boxes[base + 4],
+      boxes[base + 2],
+      boxes[base + 5]);
+  }
+
+  /**
+   * Create the items, queries and a populated tree.
+   */
+
+  @Setup(Level.Trial)
+  public void setup()
+  {
+    final long world = BenchmarkData.OCTTREE_WORLD_SIZE;
+
+    switch (this.implementation) {
+      case "DEFAULT":
+        this.supplier = new OctTreeSupplierD();
+        break;
+      case "BVH":
+        this.supplier = new BoundingVolumeHierarchySupplierD();
+        break;
+      default:
+        throw new IllegalArgumentException(this.implementation);
+    }
+
+    this.config =
+      OctTreeConfigurationD.builder()
+        .setVolume(VolumeD.of(0.0, (double) world, 0.0, (double) world, 0.0, (double) world))
+        .setMinimumOctantWidth(this.minimumOctantWidth)
+        .setMinimumOctantHeight(this.minimumOctantWidth)
+        .setMinimumOctantDepth(this.minimumOctantWidth)
+        .setMaximumItemsPerLeaf(this.maximumItemsPerLeaf)
+        .build();
+
+    final double[] item_boxes =
+      BenchmarkData.boxes(this.itemCount, 3, world, this.itemSizes, 0x5eedL);
+    this.items = new Integer[this.itemCount];
+    this.bounds = new VolumeD[this.itemCount];
+    this.item_map = new HashMap<>(this.itemCount * 2);
+    for (int index = 0; index < this.itemCount; ++index) {
+      this.items[index] = Integer.valueOf(index);
+      this.bounds[index] = volume(item_boxes, index);
+      this.item_map.put(this.items[index], this.bounds[index]);
+    }
+
+    final double[] query_boxes =
+      BenchmarkData.queries(BenchmarkData.QUERY_COUNT, 3, world, 0x9e3779b9L);
+    final double[] ray_data =
+      BenchmarkData.rays(BenchmarkData.QUERY_COUNT, 3, world, 0x7f4a7c15L);
+    this.queries = new VolumeD[BenchmarkData.QUERY_COUNT];
+    this.rays = new Ray3D[BenchmarkData.QUERY_COUNT];
+    for (int index = 0; index < BenchmarkData.QUERY_COUNT; ++index) {
+      this.queries[index] = volume(query_boxes, index);
+      final int base = index * 6;
+      this.rays[index] = Ray3D.of(
+        Vector3D.of(ray_data[base], ray_data[base + 1], ray_data[base + 2]),
+        Vector3D.of(ray_data[base + 3], ray_data[base + 4], ray_data[base + 5]));
+    }
+
+    this.query_list = Arrays.asList(this.queries);
+    this.batch_results = new ArrayList<>(BenchmarkData.QUERY_COUNT);
+    for (int index = 0; index < BenchmarkData.QUERY_COUNT; ++index) {
+      this.batch_results.add(new HashSet<>());
+    }
+
+    this.ray_list = Arrays.asList(this.rays);
+    this.ray_batch_results = new ArrayList<>(BenchmarkData.QUERY_COUNT);
+    for (int index = 0; index < BenchmarkData.QUERY_COUNT; ++index) {
+      this.ray_batch_results.add(OctTreeRaycastBufferD.create());
+    }
+
+    this.tree = this.populate();
+    this.results = new HashSet<>(this.itemCount);
+    this.raycast_results = new TreeSet<>();
+    this.raycast_buffer = OctTreeRaycastBufferD.create();
+    this.nearest_results = new ArrayList<>(BenchmarkData.NEAREST_COUNT);
+  }
+
+  OctTreeDType<Integer> populate()
+  {
+    final OctTreeDType<Integer> new_tree = this.supplier.create(this.config);
+    for (int index = 0; index < this.itemCount; ++index) {
+      new_tree.insert(this.items[index], this.bounds[index]);
+    }
+    return new_tree;
+  }
+
+  private int nextQuery()
+  {
+    final int index = this.query_index;
+    this.query_index = (index + 1) % BenchmarkData.QUERY_COUNT;
+    return index;
+  }
+
+  /**
+   * Insert all items into a new tree.
+   *
+   * @return The tree
+   */
+
+  @Benchmark
+  public OctTreeDType<Integer> insert()
+  {
+    return this.populate();
+  }
+
+  /**
+   * Build a new tree containing all items with a single bulk insertion.
+   *
+   * @return The tree
+   */
+
+  @Benchmark
+  public OctTreeDType<Integer> insertAll()
+  {
+    return this.supplier.build(this.config, this.item_map);
+  }
+
+  /**
+   * Remove an item from the populated tree and then insert it again, keeping
+   * the size of the tree constant across invocations.
+   *
+   * @return {@code true} if the item was reinserted
+   */
+
+  @Benchmark
+  public boolean removeReinsert()
+  {
+    final int index = this.item_index;
+    this.item_index = (index + 1) % this.itemCount;
+
+    final Integer item = this.items[index];
+    this.tree.remove(item);
+    return this.tree.insert(item, this.bounds[index]);
+  }
+
+  /**
+   * Find all items overlapped by a query volume.
+   *
+   * @return The number of items found
+   */
+
+  @Benchmark
+  public int overlappedBy()
+  {
+    this.results.clear();
+    this.tree.overlappedBy(this.queries[this.nextQuery()], this.results);
+    return this.results.size();
+  }
+
+  /**
+   * Find all items overlapped by a query volume, dividing the search between
+   * the threads of the common pool.
+   *
+   * @return The number of items found
+   */
+
+  @Benchmark
+  public int overlappedByParallel()
+  {
+    this.results.clear();
+    this.tree.overlappedByParallel(
+      this.queries[this.nextQuery()], this.results, ForkJoinPool.commonPool());
+    return this.results.size();
+  }
+
+  /**
+   * Execute every query volume in turn.
+   *
+   * @return The number of items found by the last query
+   */
+
+  @Benchmark
+  public int overlappedByEach()
+  {
+    int size = 0;
+    for (int index = 0; index < BenchmarkData.QUERY_COUNT; ++index) {
+      final Set<Integer> batch_result = this.batch_results.get(index);
+      batch_result.clear();
+      this.tree.overlappedBy(this.queries[index], batch_result);
+      size = batch_result.size();
+    }
+    return size;
+  }
+
+  /**
+   * Execute every query volume as a single batch.
+   *
+   * @return The number of items found by the last query
+   */
+
+  @Benchmark
+  public int overlappedByBatch()
+  {
+    for (final Set<Integer> batch_result : this.batch_results) {
+      batch_result.clear();
+    }
+    this.tree.overlappedByBatch(this.query_list, this.batch_results);
+    return this.batch_results.get(BenchmarkData.QUERY_COUNT - 1).size();
+  }
+
+  /**
+   * Count the items overlapped by a query volume using a sequential stream.
+   *
+   * @return The number of items found
+   */
+
+  @Benchmark
+  public long streamOverlapping()
+  {
+    return this.tree.streamOverlapping(this.queries[this.nextQuery()]).count();
+  }
+
+  /**
+   * Count the items overlapped by a query volume using a parallel stream.
+   *
+   * @return The number of items found
+   */
+
+  @Benchmark
+  public long streamOverlappingParallel()
+  {
+    return this.tree.streamOverlapping(this.queries[this.nextQuery()]).parallel().count();
+  }
+
+  /**
+   * Find all items contained by a query volume.
+   *
+   * @return The number of items found
+   */
+
+  @Benchmark
+  public int containedBy()
+  {
+    this.results.clear();
+    this.tree.containedBy(this.queries[this.nextQuery()], this.results);
+    return this.results.size();
+  }
+
+  /**
+   * Find all items contained by a query volume, dividing the search between
+   * the threads of the common pool.
+   *
+   * @return The number of items found
+   */
+
+  @Benchmark
+  public int containedByParallel()
+  {
+    this.results.clear();
+    this.tree.containedByParallel(
+      this.queries[this.nextQuery()], this.results, ForkJoinPool.commonPool());
+    return this.results.size();
+  }
+
+  /**
+   * Count the items overlapped by a query volume.
+   *
+   * @return The number of items found
+   */
+
+  @Benchmark
+  public long countOverlapping()
+  {
+    return this.tree.countOverlapping(this.queries[this.nextQuery()]);
+  }
+
+  /**
+   * Count the items contained by a query volume.
+   *
+   * @return The number of items found
+   */
+
+  @Benchmark
+  public long countContainedBy()
+  {
+    return this.tree.countContainedBy(this.queries[this.nextQuery()]);
+  }
+
+  /**
+   * Determine whether any item is overlapped by a query volume.
+   *
+   * @return {@code true} if any item was found
+   */
+
+  @Benchmark
+  public boolean anyOverlapping()
+  {
+    return this.tree.anyOverlapping(this.queries[this.nextQuery()]);
+  }
+
+  /**
+   * Find all items intersected by a ray.
+   *
+   * @return The number of items found
+   */
+
+  @Benchmark
+  public int raycast()
+  {
+    this.raycast_results.clear();
+    this.tree.raycast(this.rays[this.nextQuery()], this.raycast_results);
+    return this.raycast_results.size();
+  }
+
+  /**
+   * Find all items intersected by a ray, dividing the search between the
+   * threads of the common pool.
+   *
+   * @return The number of items found
+   */
+
+  @Benchmark
+  public int raycastParallel()
+  {
+    this.raycast_results.clear();
+    this.tree.raycastParallel(
+      this.rays[this.nextQuery()], this.raycast_results, ForkJoinPool.commonPool());
+    return this.raycast_results.size();
+  }
+
+  /**
+   * Find all items intersected by a ray, collecting them into a reusable buffer.
+   *
+   * @return The number of items found
+   */
+
+  @Benchmark
+  public int raycastBuffer()
+  {
+    this.raycast_buffer.clear();
+    this.tree.raycast(this.rays[this.nextQuery()], this.raycast_buffer);
+    return this.raycast_buffer.size();
+  }
+
+  /**
+   * Cast every ray in turn.
+   *
+   * @return The number of items found by the last ray
+   */
+
+  @Benchmark
+  public int raycastEach()
+  {
+    int size = 0;
+    for (int index = 0; index < BenchmarkData.QUERY_COUNT; ++index) {
+      final OctTreeRaycastBufferD<Integer> batch_result =
+        this.ray_batch_results.get(index);
+      batch_result.clear();
+      this.tree.raycast(this.rays[index], batch_result);
+      size = batch_result.size();
+    }
+    return size;
+  }
+
+  /**
+   * Cast every ray as a single batch.
+   *
+   * @return The number of items found by the last ray
+   */
+
+  @Benchmark
+  public int raycastBatch()
+  {
+    for (final OctTreeRaycastBufferD<Integer> batch_result : this.ray_batch_results) {
+      batch_result.clear();
+    }
+    this.tree.raycastBatch(this.ray_list, this.ray_batch_results);
+    return this.ray_batch_results.get(BenchmarkData.QUERY_COUNT - 1).size();
+  }
+
+  /**
+   * Find the item nearest to the origin of a ray that is intersected by the ray.
+   *
+   * @return The item found, if any
+   */
+
+  @Benchmark
+  public Optional<OctTreeRaycastResultD<Integer>> raycastFirst()
+  {
+    return this.tree.raycastFirst(this.rays[this.nextQuery()]);
+  }
+
+  /**
+   * Find the items nearest to the origin of a ray.
+   *
+   * @return The number of items found
+   */
+
+  @Benchmark
+  public int nearest()
+  {
+    this.nearest_results.clear();
+    this.tree.nearest(
+      this.rays[this.nextQuery()].origin(),
+      BenchmarkData.NEAREST_COUNT,
+      this.nearest_results,
+      (context, item, bounds, distance) -> {
+        context.add(item);
+        return TreeVisitResult.RESULT_CONTINUE;
+      });
+    return this.nearest_results.size();
+  }
+
+  /**
+   * Map all items of the populated tree into a new tree.
+   *
+   * @return The new tree
+   */
+
+  @Benchmark
+  public OctTreeDType<Integer> map()
+  {
+    return this.tree.map((item, volume) -> item);
+  }
+
+  /**
+   * Trim a tree from which half of the items have been removed.
+   *
+   * @param state The per-invocation tree
+   */
+
+  @Benchmark
+  public void trim(final TrimState state)
+  {
+    state.trimmed.trim();
+  }
+
+  /**
+   * A freshly populated tree from which half of the items have been removed.
+   */
+
+  @State(Scope.Thread)
+  public static class TrimState
+  {
+    OctTreeDType<Integer> trimmed;
+
+    /**
+     * Construct a state.
+     */
+
+    public TrimState()
+    {
+
+    }
+
+    /**
+     * Populate the tree and remove every second item.
+     *
+     * @param benchmark The owning benchmark
+     */
+
+    @Setup(Level.Invocation)
+    public void setup(final OctTreeDBenchmark benchmark)
+    {
+      this.trimmed = benchmark.populate();
+      for (int index = 0; index < benchmark.itemCount; index += 2) {
+        this.trimmed.remove(benchmark.items[index]);
+      }
+    }
+  }
+}
@@ -0,0 +1,423 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.jspatial.benchmarks;
+
+import com.io7m.jregions.core.unparameterized.volumes.VolumeI;
+import com.io7m.jspatial.api.Ray3D;
+import com.io7m.jspatial.api.TreeVisitResult;
+import com.io7m.jspatial.api.octtrees.OctTreeConfigurationI;
+import com.io7m.jspatial.api.octtrees.OctTreeIType;
+import com.io7m.jspatial.api.octtrees.OctTreeRaycastBufferI;
+import com.io7m.jspatial.api.octtrees.OctTreeRaycastResultI;
+import com.io7m.jspatial.implementation.OctTreeSupplierI;
+import com.io7m.jtensors.core.unparameterized.vectors.Vector3D;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for {@link com.io7m.jspatial.implementation.OctTreeI}.
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OctTreeIBenchmark
+{
+  /**
+   * The number of items in the tree.
+   */
+
+  @Param({"1000", "10000", "100000"})
+  public int itemCount;
+
+  /**
+   * The distribution of item sizes.
+   */
+
+  @Param({"SMALL", "MEDIUM", "MIXED"})
+  public BenchmarkSizeDistribution itemSizes;
+
+  /**
+   * The minimum octant width, height and depth.
+   */
+
+  @Param({"2", "64"})
+  public int minimumOctantWidth;
+
+  /**
+   * The maximum number of items per leaf (0 splits leaves eagerly).
+   */
+
+  @Param({"0", "16"})
+  public int maximumItemsPerLeaf;
+
+  private OctTreeSupplierI supplier;
+  private OctTreeConfigurationI config;
+  private Integer[] items;
+  private VolumeI[] bounds;
+  private Map<Integer, VolumeI> item_map;
+  private VolumeI[] queries;
+  private Ray3D[] rays;
+  private OctTreeIType<Integer> tree;
+  private Set<Integer> results;
+  private SortedSet<OctTreeRaycastResultI<Integer>> raycast_results;
+  private OctTreeRaycastBufferI<Integer> raycast_buffer;
+  private List<Integer> nearest_results;
+  private int item_index;
+  private int query_index;
+
+  /**
+   * Construct a benchmark.
+   */
+
+  public OctTreeIBenchmark()
+  {
+
+  }
+
+  private static VolumeI volume(
+    final double[] boxes,
+    final int index)
+  {
+    final int base = index * 6;
+    return VolumeI.of(
+      (int) boxes[base],
+      (int) boxes[base + 3],
+      (int) boxes[base + 1],
+      (int) boxes[base + 4],
+      (int) boxes[base + 2],
+      (int) boxes[base + 5]);
+  }
+
+  /**
+   * Create the items, queries and a populated tree.
+   */
+
+  @Setup(Level.Trial)
+  public void setup()
+  {
+    final long world = BenchmarkData.OCTTREE_WORLD_SIZE;
+    final int world_i = Math.toIntExact(world);
+
+    this.supplier = new OctTreeSupplierI();
+    this.config =
+      OctTreeConfigurationI.builder()
+        .setVolume(VolumeI.of(0, world_i, 0, world_i, 0, world_i))
+        .setMinimumOctantWidth(this.minimumOctantWidth)
+        .setMinimumOctantHeight(this.minimumOctantWidth)
+        .setMinimumOctantDepth(this.minimumOctantWidth)
+        .setMaximumItemsPerLeaf(this.maximumItemsPerLeaf)
+        .build();
+
+    final double[] item_boxes =
+      BenchmarkData.boxes(this.itemCount, 3, world, this.itemSizes, 0x5eedL);
+    this.items = new Integer[this.itemCount];
+    this.bounds = new VolumeI[this.itemCount];
+    this.item_map = new HashMap<>(this.itemCount * 2);
+    for (int index = 0; index < this.itemCount; ++index) {
+      this.items[index] = Integer.valueOf(index);
+      this.bounds[index] = volume(item_boxes, index);
+      this.item_map.put(this.items[index], this.bounds[index]);
+    }
+
+    final double[] query_boxes =
+      BenchmarkData.queries(BenchmarkData.QUERY_COUNT, 3, world, 0x9e3779b9L);
+    final double[] ray_data =
+      BenchmarkData.rays(BenchmarkData.QUERY_COUNT, 3, world, 0x7f4a7c15L);
+    this.queries = new VolumeI[BenchmarkData.QUERY_COUNT];
+    this.rays = new Ray3D[BenchmarkData.QUERY_COUNT];
+    for (int index = 0; index < BenchmarkData.QUERY_COUNT; ++index) {
+      this.queries[index] = volume(query_boxes, index);
+      final int base = index * 6;
+      this.rays[index] = Ray3D.of(
+        Vector3D.of(ray_data[base], ray_data[base + 1], ray_data[base + 2]),
+        Vector3D.of(ray_data[base + 3], ray_data[base + 4], ray_data[base + 5]));
+    }
+
+    this.tree = this.populate();
+    this.results = new HashSet<>(this.itemCount);
+    this.raycast_results = new TreeSet<>();
+    this.raycast_buffer = OctTreeRaycastBufferI.create();
+    this.nearest_results = new ArrayList<>(BenchmarkData.NEAREST_COUNT);
+  }
+
+  OctTreeIType<Integer> populate()
+  {
+    final OctTreeIType<Integer> new_tree = this.supplier.create(this.config);
+    for (int index = 0; index < this.itemCount; ++index) {
+      new_tree.insert(this.items[index], this.bounds[index]);
+    }
+    return new_tree;
+  }
+
+  private int nextQuery()
+  {
+    final int index = this.query_index;
+    this.query_index = (index + 1) % BenchmarkData.QUERY_COUNT;
+    return index;
+  }
+
+  /**
+   * Insert all items into a new tree.
+   *
+   * @return The tree
+   */
+
+  @Benchmark
+  public OctTreeIType<Integer> insert()
+  {
+    return this.populate();
+  }
+
+  /**
+   * Build a new tree containing all items with a single bulk insertion.
+   *
+   * @return The tree
+   */
+
+  @Benchmark
+  public OctTreeIType<Integer> insertAll()
+  {
+    return this.supplier.build(this.config, this.item_map);
+  }
+
+  /**
+   * Remove an item from the populated tree and then insert it again, keeping
+   * the size of the tree constant across invocations.
+   *
+   * @return {@code true} if the item was reinserted
+   */
+
+  @Benchmark
+  public boolean removeReinsert()
+  {
+    final int index = this.item_index;
+    this.item_index = (index + 1) % this.itemCount;
+
+    final Integer item = this.items[index];
+    this.tree.remove(item);
+    return this.tree.insert(item, this.bounds[index]);
+  }
+
+  /**
+   * Find all items overlapped by a query volume.
+   *
+   * @return The number of items found
+   */
+
+  @Benchmark
+  public int overlappedBy()
+  {
+    this.results.clear();
+    this.tree.overlappedBy(this.queries[this.nextQuery()], this.results);
+    return this.results.size();
+  }
+
+  /**
+   * Find all items contained by a query volume.
+   *
+   * @return The number of items found
+   */
+
+  @Benchmark
+  public int containedBy()
+  {
+    this.results.clear();
+    this.tree.containedBy(this.queries[this.nextQuery()], this.results);
+    return this.results.size();
+  }
+
+  /**
+   * Count the items overlapped by a query volume.
+   *
+   * @return The number of items found
+   */
+
+  @Benchmark
+  public long countOverlapping()
+  {
+    return this.tree.countOverlapping(this.queries[this.nextQuery()]);
+  }
+
+  /**
+   * Count the items contained by a query volume.
+   *
+   * @return The number of items found
+   */
+
+  @Benchmark
+  public long countContainedBy()
+  {
+    return this.tree.countContainedBy(this.queries[this.nextQuery()]);
+  }
+
+  /**
+   * Determine whether any item is overlapped by a query volume.
+   *
+   * @return {@code true} if any item was found
+   */
+
+  @Benchmark
+  public boolean anyOverlapping()
+  {
+    return this.tree.anyOverlapping(this.queries[this.nextQuery()]);
+  }
+
+  /**
+   * Find all items intersected by a ray.
+   *
+   * @return The number of items found
+   */
+
+  @Benchmark
+  public int raycast()
+  {
+    this.raycast_results.clear();
+    this.tree.raycast(this.rays[this.nextQuery()], this.raycast_results);
+    return this.raycast_results.size();
+  }
+
+  /**
+   * Find all items intersected by a ray, collecting them into a reusable buffer.
+   *
+   * @return The number of items found
+   */
+
+  @Benchmark
+  public int raycastBuffer()
+  {
+    this.raycast_buffer.clear();
+    this.tree.raycast(this.rays[this.nextQuery()], this.raycast_buffer);
+    return this.raycast_buffer.size();
+  }
+
+  /**
+   * Find the item nearest to the origin of a ray that is intersected by the ray.
+   *
+   * @return The item found, if any
+   */
+
+  @Benchmark
+  public Optional<OctTreeRaycastResultI<Integer>> raycastFirst()
+  {
+    return this.tree.raycastFirst(this.rays[this.nextQuery()]);
+  }
+
+  /**
+   * Find the items nearest to the origin of a ray.
+   *
+   * @return The number of items found
+   */
+
+  @Benchmark
+  public int nearest()
+  {
+    this.nearest_results.clear();
+    this.tree.nearest(
+      this.rays[this.nextQuery()].origin(),
+      BenchmarkData.NEAREST_COUNT,
+      this.nearest_results,
+      (context, item, bounds, distance) -> {
+        context.add(item);
+        return TreeVisitResult.RESULT_CONTINUE;
+      });
+    return this.nearest_results.size();
+  }
+
+  /**
+   * Map all items of the populated tree into a new tree.
+   *
+   * @return The new tree
+   */
+
+  @Benchmark
+  public OctTreeIType<Integer> map()
+  {
+    return this.tree.map((item, volume) -> item);
+  }
+
+  /**
+   * Trim a tree from which half of the items have been removed.
+   *
+   * @param state The per-invocation tree
+   */
+
+  @Benchmark
+  public void trim(final TrimState state)
+  {
+    state.trimmed.trim();
+  }
+
+  /**
+   * A freshly populated tree from which half of the items have been removed.
+   */
+
+  @State(Scope.Thread)
+  public static class TrimState
+  {
+    OctTreeIType<Integer> trimmed;
+
+    /**
+     * Construct a state.
+     */
+
+    public TrimState()
+    {
+
+    }
+
+    /**
+     * Populate the tree and remove every second item.
+     *
+     * @param benchmark The owning benchmark
+     */
+
+    @Setup(Level.Invocation)
+    public void setup(final OctTreeIBenchmark benchmark)
+    {
+      this.trimmed = benchmark.populate();
+      for (int index = 0; index < benchmark.itemCount; index += 2) {
+        this.trimmed.remove(benchmark.items[index]);
+      }
+    }
+  }
+}
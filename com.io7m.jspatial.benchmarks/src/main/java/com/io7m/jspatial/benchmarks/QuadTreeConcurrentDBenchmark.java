@@ -0,0 +1,394 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.jspatial.benchmarks;
+
+import com.io7m.jregions.core.unparameterized.areas.AreaD;
+import com.io7m.jspatial.api.TreeVisitResult;
+import com.io7m.jspatial.api.quadtrees.QuadTreeConfigurationD;
+import com.io7m.jspatial.api.quadtrees.QuadTreeDType;
+import com.io7m.jspatial.api.quadtrees.QuadTreeSupplierDType;
+import com.io7m.jspatial.implementation.QuadTreeConcurrentSupplierD;
+import com.io7m.jspatial.implementation.QuadTreeSupplierD;
+import com.io7m.jtensors.core.unparameterized.vectors.Vector2D;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>Contention benchmarks for
+ * {@link com.io7m.jspatial.implementation.QuadTreeConcurrentD}.</p>
+ *
+ * <p>All threads share a single tree. The {@code SYNCHRONIZED}
+ * implementation guards a {@link com.io7m.jspatial.implementation.QuadTreeD}
+ * tree with a single monitor, the {@code LOCKED} implementation uses the
+ * concurrent tree over a {@link com.io7m.jspatial.implementation.QuadTreeD}
+ * tree, where queries take the read lock, and the {@code CONCURRENT}
+ * implementation uses the default concurrent tree, where queries read the
+ * published version of the tree without locking. Throughput is reported per
+ * operation, and scaling across cores is measured by running the benchmarks
+ * with different thread counts using the JMH {@code -t} option (or
+ * {@code -tg} for the {@code mixed} and {@code latency} groups).</p>
+ *
+ * <p>The {@code latency} group samples the time taken by each query while a
+ * writer is continually modifying the tree, and so reports the latency
+ * percentiles seen by readers when writers are active.</p>
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(Threads.MAX)
+@Fork(1)
+public class QuadTreeConcurrentDBenchmark
+{
+  /**
+   * The number of items in the tree.
+   */
+
+  @Param({"10000", "100000"})
+  public int itemCount;
+
+  /**
+   * The distribution of item sizes.
+   */
+
+  @Param({"SMALL", "MIXED"})
+  public BenchmarkSizeDistribution itemSizes;
+
+  /**
+   * The tree implementation: {@code SYNCHRONIZED} for the default tree
+   * guarded by a single monitor, {@code LOCKED} for the concurrent tree with
+   * locked queries, {@code CONCURRENT} for the default concurrent tree.
+   */
+
+  @Param({"SYNCHRONIZED", "LOCKED", "CONCURRENT"})
+  public String implementation;
+
+  private boolean synchronize;
+  private Integer[] items;
+  private AreaD[] bounds;
+  private AreaD[] queries;
+  private Vector2D[] points;
+  private QuadTreeDType<Integer> tree;
+  private AtomicInteger item_index;
+
+  /**
+   * Construct a benchmark.
+   */
+
+  public QuadTreeConcurrentDBenchmark()
+  {
+
+  }
+
+  private static AreaD area(
+    final double[] boxes,
+    final int index)
+  {
+    final int base = index * 4;
+    return AreaD.of(
+      boxes[base],
+      boxes[base + 2],
+      boxes[base + 1],
+      boxes[base + 3]);
+  }
+
+  /**
+   * Create the items, queries and a populated tree.
+   */
+
+  @Setup(Level.Trial)
+  public void setup()
+  {
+    final long world = BenchmarkData.QUADTREE_WORLD_SIZE;
+
+    final QuadTreeSupplierDType supplier;
+    switch (this.implementation) {
+      case "SYNCHRONIZED":
+        supplier = new QuadTreeSupplierD();
+        this.synchronize = true;
+        break;
+      case "LOCKED":
+        supplier = new QuadTreeConcurrentSupplierD(new QuadTreeSupplierD());
+        this.synchronize = false;
+        break;
+      case "CONCURRENT":
+        supplier = new QuadTreeConcurrentSupplierD();
+        this.synchronize = false;
+        break;
+      default:
+        throw new IllegalArgumentException(this.implementation);
+    }
+
+    final QuadTreeConfigurationD config =
+      QuadTreeConfigurationD.builder()
+        .setArea(AreaD.of(0.0, (double) world, 0.0, (double) world))
+        .setMinimumQuadrantWidth(2.0)
+        .setMinimumQuadrantHeight(2.0)
+        .setMaximumItemsPerLeaf(16)
+        .build();
+
+    final double[] item_boxes =
+      BenchmarkData.boxes(this.itemCount, 2, world, this.itemSizes, 0x5eedL);
+    this.items = new Integer[this.itemCount];
+    this.bounds = new AreaD[this.itemCount];
+    this.tree = supplier.create(config);
+    for (int index = 0; index < this.itemCount; ++index) {
+      this.items[index] = Integer.valueOf(index);
+      this.bounds[index] = area(item_boxes, index);
+      this.tree.insert(this.items[index], this.bounds[index]);
+    }
+
+    final double[] query_boxes =
+      BenchmarkData.queries(BenchmarkData.QUERY_COUNT, 2, world, 0x9e3779b9L);
+    this.queries = new AreaD[BenchmarkData.QUERY_COUNT];
+    this.points = new Vector2D[BenchmarkData.QUERY_COUNT];
+    for (int index = 0; index < BenchmarkData.QUERY_COUNT; ++index) {
+      this.queries[index] = area(query_boxes, index);
+      this.points[index] = Vector2D.of(
+        this.queries[index].minimumX(),
+        this.queries[index].minimumY());
+    }
+
+    this.item_index = new AtomicInteger(0);
+  }
+
+  private int overlappedByQuery(final Local local)
+  {
+    local.results.clear();
+    this.tree.overlappedBy(this.queries[local.nextQuery()], local.results);
+    return local.results.size();
+  }
+
+  private int nearestQuery(final Local local)
+  {
+    local.nearest_results.clear();
+    this.tree.nearest(
+      this.points[local.nextQuery()],
+      BenchmarkData.NEAREST_COUNT,
+      local.nearest_results,
+      (context, item, area, distance) -> {
+        context.add(item);
+        return TreeVisitResult.RESULT_CONTINUE;
+      });
+    return local.nearest_results.size();
+  }
+
+  private boolean removeReinsertItem()
+  {
+    final int index =
+      Math.floorMod(this.item_index.getAndIncrement(), this.itemCount);
+    final Integer item = this.items[index];
+    this.tree.remove(item);
+    return this.tree.insert(item, this.bounds[index]);
+  }
+
+  /**
+   * Find all items overlapped by a query area, with every thread querying.
+   *
+   * @param local The per-thread state
+   *
+   * @return The number of items found
+   */
+
+  @Benchmark
+  public int overlappedBy(final Local local)
+  {
+    if (this.synchronize) {
+      synchronized (this.tree) {
+        return this.overlappedByQuery(local);
+      }
+    }
+    return this.overlappedByQuery(local);
+  }
+
+  /**
+   * Find the items nearest to a point, with every thread querying.
+   *
+   * @param local The per-thread state
+   *
+   * @return The number of items found
+   */
+
+  @Benchmark
+  public int nearest(final Local local)
+  {
+    if (this.synchronize) {
+      synchronized (this.tree) {
+        return this.nearestQuery(local);
+      }
+    }
+    return this.nearestQuery(local);
+  }
+
+  /**
+   * Determine whether the tree contains an item, with every thread querying.
+   *
+   * @param local The per-thread state
+   *
+   * @return {@code true} if the item is present
+   */
+
+  @Benchmark
+  public boolean contains(final Local local)
+  {
+    final Integer item = this.items[local.nextQuery() % this.itemCount];
+    if (this.synchronize) {
+      synchronized (this.tree) {
+        return this.tree.contains(item);
+      }
+    }
+    return this.tree.contains(item);
+  }
+
+  /**
+   * Find all items overlapped by a query area, concurrently with
+   * modifications made by {@link #mixedWrite()}.
+   *
+   * @param local The per-thread state
+   *
+   * @return The number of items found
+   */
+
+  @Benchmark
+  @Group("mixed")
+  @GroupThreads(3)
+  public int mixedQuery(final Local local)
+  {
+    return this.overlappedBy(local);
+  }
+
+  /**
+   * Remove an item and then insert it again, concurrently with the queries
+   * made by {@link #mixedQuery(Local)}.
+   *
+   * @return {@code true} if the item was reinserted
+   */
+
+  @Benchmark
+  @Group("mixed")
+  @GroupThreads(1)
+  public boolean mixedWrite()
+  {
+    if (this.synchronize) {
+      synchronized (this.tree) {
+        return this.removeReinsertItem();
+      }
+    }
+    return this.removeReinsertItem();
+  }
+
+  /**
+   * Find all items overlapped by a query area, concurrently with
+   * modifications made by {@link #latencyWrite()}, sampling the time taken
+   * by each query.
+   *
+   * @param local The per-thread state
+   *
+   * @return The number of items found
+   */
+
+  @Benchmark
+  @Group("latency")
+  @GroupThreads(3)
+  @BenchmarkMode(Mode.SampleTime)
+  @OutputTimeUnit(TimeUnit.MICROSECONDS)
+  public int latencyQuery(final Local local)
+  {
+    return this.overlappedBy(local);
+  }
+
+  /**
+   * Remove an item and then insert it again, concurrently with the queries
+   * made by {@link #latencyQuery(Local)}.
+   *
+   * @return {@code true} if the item was reinserted
+   */
+
+  @Benchmark
+  @Group("latency")
+  @GroupThreads(1)
+  @BenchmarkMode(Mode.SampleTime)
+  @OutputTimeUnit(TimeUnit.MICROSECONDS)
+  public boolean latencyWrite()
+  {
+    return this.mixedWrite();
+  }
+
+  /**
+   * The state held by each benchmark thread.
+   */
+
+  @State(Scope.Thread)
+  public static class Local
+  {
+    private final Set<Integer> results;
+    private final List<Integer> nearest_results;
+    private int query_index;
+
+    /**
+     * Construct per-thread state.
+     */
+
+    public Local()
+    {
+      this.results = new HashSet<>();
+      this.nearest_results = new ArrayList<>(BenchmarkData.NEAREST_COUNT);
+    }
+
+    /**
+     * Start each thread at a different query.
+     */
+
+    @Setup(Level.Trial)
+    public void setup()
+    {
+      this.query_index =
+        ThreadLocalRandom.current().nextInt(BenchmarkData.QUERY_COUNT);
+    }
+
+    private int nextQuery()
+    {
+      final int index = this.query_index;
+      this.query_index = (index + 1) % BenchmarkData.QUERY_COUNT;
+      return index;
+    }
+  }
+}
@@ -0,0 +1,663 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.jspatial.implementation;
+
+import com.io7m.jregions.core.unparameterized.areas.AreaD;
+import com.io7m.jspatial.api.Ray2D;
+import com.io7m.jtensors.core.unparameterized.vectors.Vector2D;
+import com.io7m.junreachable.UnreachableCodeException;
+
+/**
+ * Functions over areas packed into {@code double} arrays as
+ * (minimum x, maximum x, minimum y, maximum y). The overlap and containment
+ * tests match those of {@code AreasD}, but do not allocate.
+ */
+
+final class AreaBoundsD
+{
+  /**
+   * The number of array elements used by a single area.
+   */
+
+  static final int STRIDE = 4;
+
+  /**
+   * The number of array elements used by a single packed ray.
+   */
+
+  static final int RAY_STRIDE = 4;
+
+  private AreaBoundsD()
+  {
+    throw new UnreachableCodeException();
+  }
+
+  /**
+   * Pack a area into a new array.
+   *
+   * @param v The area
+   *
+   * @return A new array
+   */
+
+  static double[] pack(final AreaD v)
+  {
+    final double[] out = new double[STRIDE];
+    store(v, out, 0);
+    return out;
+  }
+
+  /**
+   * Pack a area into an existing array.
+   *
+   * @param v   The area
+   * @param out The output array
+   * @param o   The offset of the area within {@code out}
+   */
+
+  static void store(
+    final AreaD v,
+    final double[] out,
+    final int o)
+  {
+    out[o] = v.minimumX();
+    out[o + 1] = v.maximumX();
+    out[o + 2] = v.minimumY();
+    out[o + 3] = v.maximumY();
+  }
+
+  /**
+   * Unpack a area.
+   *
+   * @param b The array
+   * @param o The offset of the area within {@code b}
+   *
+   * @return A area
+   */
+
+  static AreaD unpack(
+    final double[] b,
+    final int o)
+  {
+    return AreaD.of(
+      b[o],
+      b[o + 1],
+      b[o + 2],
+      b[o + 3]);
+  }
+
+  /**
+   * @param outer The outer array
+   * @param o     The offset of the outer area
+   * @param inner The inner array
+   * @param i     The offset of the inner area
+   *
+   * @return {@code true} iff the outer area contains the inner area
+   */
+
+  static boolean contains(
+    final double[] outer,
+    final int o,
+    final double[] inner,
+    final int i)
+  {
+    final boolean cx =
+      inner[i] >= outer[o] && inner[i + 1] <= outer[o + 1];
+    final boolean cy =
+      inner[i + 2] >= outer[o + 2] && inner[i + 3] <= outer[o + 3];
+    return cx && cy;
+  }
+
+  /**
+   * @param outer The outer array
+   * @param o     The offset of the outer area
+   * @param inner The inner area
+   *
+   * @return {@code true} iff the outer area contains {@code inner}
+   */
+
+  static boolean contains(
+    final double[] outer,
+    final int o,
+    final AreaD inner)
+  {
+    final boolean cx =
+      inner.minimumX() >= outer[o]
+        && inner.maximumX() <= outer[o + 1];
+    final boolean cy =
+      inner.minimumY() >= outer[o + 2]
+        && inner.maximumY() <= outer[o + 3];
+    return cx && cy;
+  }
+
+  /**
+   * Empty extents are treated as having a size of one.
+   *
+   * @param a  The first array
+   * @param ai The offset of the first area
+   * @param b  The second array
+   * @param bi The offset of the second area
+   *
+   * @return {@code true} iff the areas overlap
+   */
+
+  static boolean overlaps(
+    final double[] a,
+    final int ai,
+    final double[] b,
+    final int bi)
+  {
+    final double a_x0 = a[ai];
+    final double a_x1 = a_x0 + Math.max(1.0, a[ai + 1] - a_x0);
+    final double a_y0 = a[ai + 2];
+    final double a_y1 = a_y0 + Math.max(1.0, a[ai + 3] - a_y0);
+    final double b_x0 = b[bi];
+    final double b_x1 = b_x0 + Math.max(1.0, b[bi + 1] - b_x0);
+    final double b_y0 = b[bi + 2];
+    final double b_y1 = b_y0 + Math.max(1.0, b[bi + 3] - b_y0);
+
+    final boolean ox = a_x0 < b_x1 && a_x1 > b_x0;
+    final boolean oy = a_y0 < b_y1 && a_y1 > b_y0;
+    return ox && oy;
+  }
+
+  /**
+   * Unlike {@link #overlaps(double[], int, double[], int)}, areas that share only an edge or
+   * a corner are considered to touch.
+   *
+   * @param a  The first array
+   * @param ai The offset of the first area
+   * @param b  The second array
+   * @param bi The offset of the second area
+   *
+   * @return {@code true} iff the areas have at least one point in common
+   */
+
+  static boolean touches(
+    final double[] a,
+    final int ai,
+    final double[] b,
+    final int bi)
+  {
+    final boolean tx =
+      a[ai] <= b[bi + 1] && a[ai + 1] >= b[bi];
+    final boolean ty =
+      a[ai + 2] <= b[bi + 3] && a[ai + 3] >= b[bi + 2];
+    return tx && ty;
+  }
+
+  /**
+   * Determine whether every area contained within the second area overlaps the first
+   * area, in the sense of {@link #overlaps(double[], int, double[], int)}. This is slightly
+   * stronger than containment: A area of size zero lying on the upper boundary of the first
+   * area does not overlap it.
+   *
+   * @param a  The first array
+   * @param ai The offset of the first area
+   * @param b  The second array
+   * @param bi The offset of the second area
+   *
+   * @return {@code true} iff every area within the second area overlaps the first
+   */
+
+  static boolean overlapsAllWithin(
+    final double[] a,
+    final int ai,
+    final double[] b,
+    final int bi)
+  {
+    final double a_x0 = a[ai];
+    final double a_x1 = a_x0 + Math.max(1.0, a[ai + 1] - a_x0);
+    final boolean wx = b[bi] >= a_x0 && b[bi + 1] < a_x1;
+    final double a_y0 = a[ai + 2];
+    final double a_y1 = a_y0 + Math.max(1.0, a[ai + 3] - a_y0);
+    final boolean wy = b[bi + 2] >= a_y0 && b[bi + 3] < a_y1;
+    return wx && wy;
+  }
+
+  /**
+   * Determine whether some area contained within the second area can overlap the first area,
+   * in the sense of {@link #overlaps(double[], int, double[], int)}. Because empty extents are
+   * treated as having a size of one, an area within the second area can overlap areas that lie
+   * up to one unit beyond the upper boundary of the second area, so this is slightly weaker
+   * than {@link #overlaps(double[], int, double[], int)}.
+   *
+   * @param a  The first array
+   * @param ai The offset of the first area
+   * @param b  The second array
+   * @param bi The offset of the second area
+   *
+   * @return {@code false} if no area within the second area overlaps the first
+   */
+
+  static boolean overlapsAnyWithin(
+    final double[] a,
+    final int ai,
+    final double[] b,
+    final int bi)
+  {
+    final double a_x0 = a[ai];
+    final double a_x1 = a_x0 + Math.max(1.0, a[ai + 1] - a_x0);
+    final boolean ox = a_x0 < b[bi + 1] + 1.0 && a_x1 > b[bi];
+    final double a_y0 = a[ai + 2];
+    final double a_y1 = a_y0 + Math.max(1.0, a[ai + 3] - a_y0);
+    final boolean oy = a_y0 < b[bi + 3] + 1.0 && a_y1 > b[bi + 2];
+    return ox && oy;
+  }
+
+  /**
+   * @param ray The ray
+   * @param b   The array
+   * @param o   The offset of the area within {@code b}
+   *
+   * @return {@code true} iff the ray intersects the area
+   */
+
+  static boolean intersects(
+    final Ray2D ray,
+    final double[] b,
+    final int o)
+  {
+    return ray.intersectsArea(
+      b[o],
+      b[o + 2],
+      b[o + 1],
+      b[o + 3]);
+  }
+
+  /**
+   * @param ray The ray
+   * @param b   The array
+   * @param o   The offset of the area within {@code b}
+   *
+   * @return The distance along the ray at which it enters the area, or
+   * {@link Double#POSITIVE_INFINITY} if the ray misses the area
+   */
+
+  static double entryDistance(
+    final Ray2D ray,
+    final double[] b,
+    final int o)
+  {
+    return ray.entryDistanceArea(
+      b[o],
+      b[o + 2],
+      b[o + 1],
+      b[o + 3]);
+  }
+
+  /**
+   * Pack a ray into an existing array as (origin x, origin y, inverse
+   * direction x, inverse direction y).
+   *
+   * @param ray The ray
+   * @param out The output array
+   * @param o   The offset of the ray within {@code out}
+   */
+
+  static void storeRay(
+    final Ray2D ray,
+    final double[] out,
+    final int o)
+  {
+    final Vector2D origin = ray.origin();
+    final Vector2D direction_inverse = ray.directionInverse();
+    out[o] = origin.x();
+    out[o + 1] = origin.y();
+    out[o + 2] = direction_inverse.x();
+    out[o + 3] = direction_inverse.y();
+  }
+
+  /**
+   * The same test as {@link #entryDistance(Ray2D, double[], int)}, for a
+   * ray packed by {@link #storeRay(Ray2D, double[], int)}.
+   *
+   * @param r  The array of rays
+   * @param ro The offset of the ray within {@code r}
+   * @param b  The array of areas
+   * @param o  The offset of the area within {@code b}
+   *
+   * @return The distance along the ray at which it enters the area, or
+   * {@link Double#POSITIVE_INFINITY} if the ray misses the area
+   */
+
+  static double entryDistance(
+    final double[] r,
+    final int ro,
+    final double[] b,
+    final int o)
+  {
+    final double ox = r[ro];
+    final double oy = r[ro + 1];
+    final double dix = r[ro + 2];
+    final double diy = r[ro + 3];
+
+    final double tx0 = (b[o] - ox) * dix;
+    final double tx1 = (b[o + 1] - ox) * dix;
+    double tmin = Math.min(tx0, tx1);
+    double tmax = Math.max(tx0, tx1);
+
+    final double ty0 = (b[o + 2] - oy) * diy;
+    final double ty1 = (b[o + 3] - oy) * diy;
+    tmin = Math.max(tmin, Math.min(ty0, ty1));
+    tmax = Math.min(tmax, Math.max(ty0, ty1));
+
+    if (tmax >= Math.max(0.0, tmin) && tmin < Double.POSITIVE_INFINITY) {
+      return Math.max(0.0, tmin);
+    }
+    return Double.POSITIVE_INFINITY;
+  }
+
+  /**
+   * Test up to {@link LeafKernelDType#MAXIMUM_COUNT} of the areas in
+   * {@code b} against the query area in {@code a}, as with
+   * {@link #overlaps(double[], int, double[], int)}.
+   *
+   * @param a     The array holding the query area at offset 0
+   * @param b     The array of areas
+   * @param index The index of the first area to test
+   * @param end   The number of areas in {@code b}
+   *
+   * @return A mask in which bit {@code i} is set iff the area at
+   * {@code index + i} overlaps the query area
+   */
+
+  static long overlapping(
+    final double[] a,
+    final double[] b,
+    final int index,
+    final int end)
+  {
+    return LeafKernelsD.current().overlappingAreas(
+      a, b, index, Math.min(end - index, LeafKernelDType.MAXIMUM_COUNT));
+  }
+
+  /**
+   * Test up to {@link LeafKernelDType#MAXIMUM_COUNT} of the areas in
+   * {@code b} against a ray, as with {@link #intersects(Ray2D, double[], int)}.
+   *
+   * @param ray   The ray
+   * @param b     The array of areas
+   * @param index The index of the first area to test
+   * @param end   The number of areas in {@code b}
+   *
+   * @return A mask in which bit {@code i} is set iff the ray intersects the
+   * area at {@code index + i}
+   */
+
+  static long intersecting(
+    final Ray2D ray,
+    final double[] b,
+    final int index,
+    final int end)
+  {
+    final Vector2D origin = ray.origin();
+    final Vector2D direction_inverse = ray.directionInverse();
+    return LeafKernelsD.current().intersectingAreas(
+      origin.x(),
+      origin.y(),
+      direction_inverse.x(),
+      direction_inverse.y(),
+      b,
+      index,
+      Math.min(end - index, LeafKernelDType.MAXIMUM_COUNT));
+  }
+
+  /**
+   * Select up to {@link LeafKernelDType#MAXIMUM_COUNT} of the areas in
+   * {@code b} as candidates for {@link #entryDistance(Ray2D, double[], int)}.
+   * Calculating the entry distance is itself a slab test, so with the
+   * scalar kernel every area is a candidate and each area is tested exactly
+   * once. With any other kernel, the candidates are the areas that the
+   * kernel finds to be intersected by the ray, as with
+   * {@link #intersecting(Ray2D, double[], int, int)}.
+   *
+   * @param ray   The ray
+   * @param b     The array of areas
+   * @param index The index of the first area, which must be less than
+   *              {@code end}
+   * @param end   The number of areas in {@code b}
+   *
+   * @return A mask in which bit {@code i} is set iff the area at
+   * {@code index + i} is a candidate
+   */
+
+  static long raycastCandidates(
+    final Ray2D ray,
+    final double[] b,
+    final int index,
+    final int end)
+  {
+    if (LeafKernelsD.current() == LeafKernelsD.scalar()) {
+      final int count = Math.min(end - index, LeafKernelDType.MAXIMUM_COUNT);
+      return -1L >>> (Long.SIZE - count);
+    }
+    return intersecting(ray, b, index, end);
+  }
+
+  /**
+   * @param x The x coordinate of the point
+   * @param y The y coordinate of the point
+   * @param b The array
+   * @param o The offset of the area within {@code b}
+   *
+   * @return The squared distance from the point to the nearest point of the area
+   */
+
+  static double distanceSquared(
+    final double x,
+    final double y,
+    final double[] b,
+    final int o)
+  {
+    final double dx =
+      axisDistance(x, b[o], b[o + 1]);
+    final double dy =
+      axisDistance(y, b[o + 2], b[o + 3]);
+    return dx * dx + dy * dy;
+  }
+
+  /**
+   * @param r The packed bounds of the tree
+   * @param b The array
+   * @param o The offset of the area within {@code b}
+   *
+   * @return The Morton code of the centre of the area, relative to {@code r}
+   */
+
+  static long mortonCode(
+    final double[] r,
+    final double[] b,
+    final int o)
+  {
+    return MortonCodes.interleave2(
+      MortonCodes.quantize(
+        b[o], b[o + 1], r[0], r[1], MortonCodes.BITS_2D),
+      MortonCodes.quantize(
+        b[o + 2], b[o + 3], r[2], r[3], MortonCodes.BITS_2D));
+  }
+
+  /**
+   * Find the child of the area at offset {@code o} of {@code outer} that can contain the
+   * area at offset {@code i} of {@code inner}, where the children are formed by halving the
+   * outer area on each axis. Children share their boundaries, so a area lying exactly on a
+   * split plane is assigned to the lower child on that axis.
+   *
+   * @param outer The outer array
+   * @param o     The offset of the outer area
+   * @param inner The inner array
+   * @param i     The offset of the inner area
+   *
+   * @return The index ({@code x | y << 1}) of the child, or {@code -1} if the inner area
+   * straddles the children
+   */
+
+  static int childIndexContaining(
+    final double[] outer,
+    final int o,
+    final double[] inner,
+    final int i)
+  {
+    int index = 0;
+    for (int axis = 0; axis < 2; ++axis) {
+      final int a = axis * 2;
+      final double min = outer[o + a];
+      final double mid = min + ((outer[o + a + 1] - min) / 2.0);
+      if (inner[i + a + 1] <= mid) {
+        continue;
+      }
+      if (inner[i + a] >= mid) {
+        index |= 1 << axis;
+        continue;
+      }
+      return -1;
+    }
+    return index;
+  }
+
+  /**
+   * Pack the bounds of a child of the area at offset {@code o} of {@code b} into an existing
+   * array. The children are formed by halving the area on each axis.
+   *
+   * @param b     The array
+   * @param o     The offset of the area within {@code b}
+   * @param index The index ({@code x | y << 1}) of the child
+   * @param out   The output array
+   * @param c     The offset of the child within {@code out}
+   */
+
+  static void storeChild(
+    final double[] b,
+    final int o,
+    final int index,
+    final double[] out,
+    final int c)
+  {
+    for (int axis = 0; axis < 2; ++axis) {
+      final int a = axis * 2;
+      final double min = b[o + a];
+      final double max = b[o + a + 1];
+      final double mid = min + ((max - min) / 2.0);
+      final boolean upper = (index & (1 << axis)) != 0;
+      out[c + a] = upper ? mid : min;
+      out[c + a + 1] = upper ? max : mid;
+    }
+  }
+
+  /**
+   * Find the child of the area at offset {@code o} of {@code outer} whose half of the
+   * area contains the centre of the area at offset {@code i} of {@code inner}. A centre
+   * lying exactly on a split plane is assigned to the lower child on that axis, so for any
+   * area that {@link #childIndexContaining} assigns to a child, this method yields the same
+   * child.
+   *
+   * @param outer The outer array
+   * @param o     The offset of the outer area
+   * @param inner The inner array
+   * @param i     The offset of the inner area
+   *
+   * @return The index ({@code x | y << 1}) of the child
+   */
+
+  static int childIndexOfCentre(
+    final double[] outer,
+    final int o,
+    final double[] inner,
+    final int i)
+  {
+    int index = 0;
+    for (int axis = 0; axis < 2; ++axis) {
+      final int a = axis * 2;
+      final double min = outer[o + a];
+      final double mid = min + ((outer[o + a + 1] - min) / 2.0);
+      if ((inner[i + a] - mid) + (inner[i + a + 1] - mid) > 0.0) {
+        index |= 1 << axis;
+      }
+    }
+    return index;
+  }
+
+  /**
+   * Pack the loose bounds of the area at offset {@code o} of {@code b} into an existing
+   * array. The loose bounds have the same centre as the area, are {@code looseness} times
+   * as large on each axis, and are clipped to the area at offset {@code p} of
+   * {@code limit}.
+   *
+   * @param b         The array
+   * @param o         The offset of the area within {@code b}
+   * @param looseness The looseness factor
+   * @param limit     The array holding the limiting area
+   * @param p         The offset of the limiting area within {@code limit}
+   * @param out       The output array
+   * @param c         The offset of the loose bounds within {@code out}
+   */
+
+  static void storeLoose(
+    final double[] b,
+    final int o,
+    final double looseness,
+    final double[] limit,
+    final int p,
+    final double[] out,
+    final int c)
+  {
+    for (int axis = 0; axis < 2; ++axis) {
+      final int a = axis * 2;
+      final double min = b[o + a];
+      final double max = b[o + a + 1];
+      final double extent = (max - min) * ((looseness - 1.0) / 2.0);
+      out[c + a] = Math.max(min - extent, limit[p + a]);
+      out[c + a + 1] = Math.min(max + extent, limit[p + a + 1]);
+    }
+  }
+
+  /**
+   * @param ray The ray
+   *
+   * @return A value that, when combined with a child index using exclusive-or, yields the children
+   * of a node in an order in which the ray can pass through them
+   */
+
+  static int raycastOrder(
+    final Ray2D ray)
+  {
+    final Vector2D direction = ray.direction();
+    int order = 0;
+    if (direction.x() < 0.0) {
+      order |= 1;
+    }
+    if (direction.y() < 0.0) {
+      order |= 2;
+    }
+    return order;
+  }
+
+  private static double axisDistance(
+    final double p,
+    final double minimum,
+    final double maximum)
+  {
+    if (p < minimum) {
+      return minimum - p;
+    }
+    if (p > maximum) {
+      return p - maximum;
+    }
+    return 0.0;
+  }
+}
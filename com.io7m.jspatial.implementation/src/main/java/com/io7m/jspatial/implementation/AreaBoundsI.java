@@ -0,0 +1,432 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.jspatial.implementation;
+
+import com.io7m.jregions.core.unparameterized.areas.AreaI;
+import com.io7m.jspatial.api.Ray2D;
+import com.io7m.jtensors.core.unparameterized.vectors.Vector2D;
+import com.io7m.junreachable.UnreachableCodeException;
+
+/**
+ * Functions over areas packed into {@code int} arrays as
+ * (minimum x, maximum x, minimum y, maximum y). The overlap and containment
+ * tests match those of {@code AreasI}, but do not allocate.
+ */
+
+final class AreaBoundsI
+{
+  /**
+   * The number of array elements used by a single area.
+   */
+
+  static final int STRIDE = 4;
+
+  private AreaBoundsI()
+  {
+    throw new UnreachableCodeException();
+  }
+
+  /**
+   * Pack a area into a new array.
+   *
+   * @param v The area
+   *
+   * @return A new array
+   */
+
+  static int[] pack(final AreaI v)
+  {
+    final int[] out = new int[STRIDE];
+    store(v, out, 0);
+    return out;
+  }
+
+  /**
+   * Pack a area into an existing array.
+   *
+   * @param v   The area
+   * @param out The output array
+   * @param o   The offset of the area within {@code out}
+   */
+
+  static void store(
+    final AreaI v,
+    final int[] out,
+    final int o)
+  {
+    out[o] = v.minimumX();
+    out[o + 1] = v.maximumX();
+    out[o + 2] = v.minimumY();
+    out[o + 3] = v.maximumY();
+  }
+
+  /**
+   * Copy a packed area into an array of {@code double} values, so that
+   * rays can be tested against the copy without converting coordinates.
+   *
+   * @param b   The array
+   * @param o   The offset of the area within {@code b}
+   * @param out The output array
+   * @param oo  The offset of the area within {@code out}
+   */
+
+  static void storeDouble(
+    final int[] b,
+    final int o,
+    final double[] out,
+    final int oo)
+  {
+    for (int index = 0; index < STRIDE; ++index) {
+      out[oo + index] = (double) b[o + index];
+    }
+  }
+
+  /**
+   * Unpack a area.
+   *
+   * @param b The array
+   * @param o The offset of the area within {@code b}
+   *
+   * @return A area
+   */
+
+  static AreaI unpack(
+    final int[] b,
+    final int o)
+  {
+    return AreaI.of(
+      b[o],
+      b[o + 1],
+      b[o + 2],
+      b[o + 3]);
+  }
+
+  /**
+   * @param outer The outer array
+   * @param o     The offset of the outer area
+   * @param inner The inner array
+   * @param i     The offset of the inner area
+   *
+   * @return {@code true} iff the outer area contains the inner area
+   */
+
+  static boolean contains(
+    final int[] outer,
+    final int o,
+    final int[] inner,
+    final int i)
+  {
+    final boolean cx =
+      inner[i] >= outer[o] && inner[i + 1] <= outer[o + 1];
+    final boolean cy =
+      inner[i + 2] >= outer[o + 2] && inner[i + 3] <= outer[o + 3];
+    return cx && cy;
+  }
+
+  /**
+   * @param outer The outer array
+   * @param o     The offset of the outer area
+   * @param inner The inner area
+   *
+   * @return {@code true} iff the outer area contains {@code inner}
+   */
+
+  static boolean contains(
+    final int[] outer,
+    final int o,
+    final AreaI inner)
+  {
+    final boolean cx =
+      inner.minimumX() >= outer[o]
+        && inner.maximumX() <= outer[o + 1];
+    final boolean cy =
+      inner.minimumY() >= outer[o + 2]
+        && inner.maximumY() <= outer[o + 3];
+    return cx && cy;
+  }
+
+  /**
+   * Empty extents are treated as having a size of one.
+   *
+   * @param a  The first array
+   * @param ai The offset of the first area
+   * @param b  The second array
+   * @param bi The offset of the second area
+   *
+   * @return {@code true} iff the areas overlap
+   */
+
+  static boolean overlaps(
+    final int[] a,
+    final int ai,
+    final int[] b,
+    final int bi)
+  {
+    final int a_x0 = a[ai];
+    final int a_x1 = a_x0 + Math.max(1, a[ai + 1] - a_x0);
+    final int a_y0 = a[ai + 2];
+    final int a_y1 = a_y0 + Math.max(1, a[ai + 3] - a_y0);
+    final int b_x0 = b[bi];
+    final int b_x1 = b_x0 + Math.max(1, b[bi + 1] - b_x0);
+    final int b_y0 = b[bi + 2];
+    final int b_y1 = b_y0 + Math.max(1, b[bi + 3] - b_y0);
+
+    final boolean ox = a_x0 < b_x1 && a_x1 > b_x0;
+    final boolean oy = a_y0 < b_y1 && a_y1 > b_y0;
+    return ox && oy;
+  }
+
+  /**
+   * Unlike {@link #overlaps(int[], int, int[], int)}, areas that share only an edge or
+   * a corner are considered to touch.
+   *
+   * @param a  The first array
+   * @param ai The offset of the first area
+   * @param b  The second array
+   * @param bi The offset of the second area
+   *
+   * @return {@code true} iff the areas have at least one point in common
+   */
+
+  static boolean touches(
+    final int[] a,
+    final int ai,
+    final int[] b,
+    final int bi)
+  {
+    final boolean tx =
+      a[ai] <= b[bi + 1] && a[ai + 1] >= b[bi];
+    final boolean ty =
+      a[ai + 2] <= b[bi + 3] && a[ai + 3] >= b[bi + 2];
+    return tx && ty;
+  }
+
+  /**
+   * Determine whether every area contained within the second area overlaps the first
+   * area, in the sense of {@link #overlaps(int[], int, int[], int)}. This is slightly
+   * stronger than containment: A area of size zero lying on the upper boundary of the first
+   * area does not overlap it.
+   *
+   * @param a  The first array
+   * @param ai The offset of the first area
+   * @param b  The second array
+   * @param bi The offset of the second area
+   *
+   * @return {@code true} iff every area within the second area overlaps the first
+   */
+
+  static boolean overlapsAllWithin(
+    final int[] a,
+    final int ai,
+    final int[] b,
+    final int bi)
+  {
+    final int a_x0 = a[ai];
+    final int a_x1 = a_x0 + Math.max(1, a[ai + 1] - a_x0);
+    final boolean wx = b[bi] >= a_x0 && b[bi + 1] < a_x1;
+    final int a_y0 = a[ai + 2];
+    final int a_y1 = a_y0 + Math.max(1, a[ai + 3] - a_y0);
+    final boolean wy = b[bi + 2] >= a_y0 && b[bi + 3] < a_y1;
+    return wx && wy;
+  }
+
+  /**
+   * @param ray The ray
+   * @param b   The array
+   * @param o   The offset of the area within {@code b}
+   *
+   * @return {@code true} iff the ray intersects the area
+   */
+
+  static boolean intersects(
+    final Ray2D ray,
+    final int[] b,
+    final int o)
+  {
+    return ray.intersectsArea(
+      (double) b[o],
+      (double) b[o + 2],
+      (double) b[o + 1],
+      (double) b[o + 3]);
+  }
+
+  /**
+   * @param ray The ray
+   * @param b   The array
+   * @param o   The offset of the area within {@code b}
+   *
+   * @return The distance along the ray at which it enters the area, or
+   * {@link Double#POSITIVE_INFINITY} if the ray misses the area
+   */
+
+  static double entryDistance(
+    final Ray2D ray,
+    final int[] b,
+    final int o)
+  {
+    return ray.entryDistanceArea(
+      (double) b[o],
+      (double) b[o + 2],
+      (double) b[o + 1],
+      (double) b[o + 3]);
+  }
+
+  /**
+   * @param x The x coordinate of the point
+   * @param y The y coordinate of the point
+   * @param b The array
+   * @param o The offset of the area within {@code b}
+   *
+   * @return The squared distance from the point to the nearest point of the area
+   */
+
+  static double distanceSquared(
+    final double x,
+    final double y,
+    final int[] b,
+    final int o)
+  {
+    final double dx =
+      axisDistance(x, (double) b[o], (double) b[o + 1]);
+    final double dy =
+      axisDistance(y, (double) b[o + 2], (double) b[o + 3]);
+    return dx * dx + dy * dy;
+  }
+
+  /**
+   * @param r The packed bounds of the tree
+   * @param b The array
+   * @param o The offset of the area within {@code b}
+   *
+   * @return The Morton code of the centre of the area, relative to {@code r}
+   */
+
+  static long mortonCode(
+    final int[] r,
+    final int[] b,
+    final int o)
+  {
+    return MortonCodes.interleave2(
+      MortonCodes.quantize(
+        (double) b[o], (double) b[o + 1], (double) r[0], (double) r[1], MortonCodes.BITS_2D),
+      MortonCodes.quantize(
+        (double) b[o + 2], (double) b[o + 3], (double) r[2], (double) r[3], MortonCodes.BITS_2D));
+  }
+
+  /**
+   * Find the child of the area at offset {@code o} of {@code outer} that can contain the
+   * area at offset {@code i} of {@code inner}, where the children are formed by halving the
+   * outer area on each axis. Children share their boundaries, so an area lying exactly on a
+   * split plane is assigned to the lower child on that axis.
+   *
+   * @param outer The outer array
+   * @param o     The offset of the outer area
+   * @param inner The inner array
+   * @param i     The offset of the inner area
+   *
+   * @return The index ({@code x | y << 1}) of the child, or {@code -1} if the inner area
+   * straddles the children
+   */
+
+  static int childIndexContaining(
+    final int[] outer,
+    final int o,
+    final int[] inner,
+    final int i)
+  {
+    int index = 0;
+    for (int axis = 0; axis < 2; ++axis) {
+      final int a = axis * 2;
+      final int min = outer[o + a];
+      final int mid = min + ((outer[o + a + 1] - min) / 2);
+      if (inner[i + a + 1] <= mid) {
+        continue;
+      }
+      if (inner[i + a] >= mid) {
+        index |= 1 << axis;
+        continue;
+      }
+      return -1;
+    }
+    return index;
+  }
+
+  /**
+   * Pack the bounds of a child of the area at offset {@code o} of {@code b} into an existing
+   * array. The children are formed by halving the area on each axis.
+   *
+   * @param b     The array
+   * @param o     The offset of the area within {@code b}
+   * @param index The index ({@code x | y << 1}) of the child
+   * @param out   The output array
+   * @param c     The offset of the child within {@code out}
+   */
+
+  static void storeChild(
+    final int[] b,
+    final int o,
+    final int index,
+    final int[] out,
+    final int c)
+  {
+    for (int axis = 0; axis < 2; ++axis) {
+      final int a = axis * 2;
+      final int min = b[o + a];
+      final int max = b[o + a + 1];
+      final int mid = min + ((max - min) / 2);
+      final boolean upper = (index & (1 << axis)) != 0;
+      out[c + a] = upper ? mid : min;
+      out[c + a + 1] = upper ? max : mid;
+    }
+  }
+
+  /**
+   * @param ray The ray
+   *
+   * @return A value that, when combined with a child index using exclusive-or, yields the children
+   * of a node in an order in which the ray can pass through them
+   */
+
+  static int raycastOrder(
+    final Ray2D ray)
+  {
+    final Vector2D direction = ray.direction();
+    int order = 0;
+    if (direction.x() < 0.0) {
+      order |= 1;
+    }
+    if (direction.y() < 0.0) {
+      order |= 2;
+    }
+    return order;
+  }
+
+  private static double axisDistance(
+    final double p,
+    final double minimum,
+    final double maximum)
+  {
+    if (p < minimum) {
+      return minimum - p;
+    }
+    if (p > maximum) {
+      return p - maximum;
+    }
+    return 0.0;
+  }
+}
@@ -0,0 +1,445 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jspatial.implementation;
+
+import com.io7m.jaffirm.core.Preconditions;
+import com.io7m.jregions.core.unparameterized.areas.AreaD;
+import com.io7m.jregions.core.unparameterized.volumes.VolumeD;
+import com.io7m.jspatial.api.Ray2D;
+import com.io7m.jspatial.api.Ray3D;
+import com.io7m.jspatial.api.octtrees.OctTreeRaycastBufferD;
+import com.io7m.jspatial.api.quadtrees.QuadTreeRaycastBufferD;
+import com.io7m.junreachable.UnreachableCodeException;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * <p>Functions for executing many queries over a tree in a single
+ * traversal.</p>
+ *
+ * <p>The targets of a batch (areas, volumes, or rays) are packed into a
+ * single array, and each node is passed the indices of the queries that are
+ * still relevant to its parent. A node keeps only the queries whose targets
+ * reach the node itself, tests its own objects against those queries, and
+ * passes them on to its children. The indices live in a single array for
+ * the whole batch: each node moves the queries that it keeps to the front
+ * of the range that it was passed, and passes that prefix to its
+ * children, so a traversal allocates nothing per node. The upper levels of the tree are
+ * therefore visited once for the whole batch rather than once per query,
+ * and queries are dropped from the batch as soon as they miss a node.</p>
+ */
+
+final class BatchQuery
+{
+  private BatchQuery()
+  {
+    throw new UnreachableCodeException();
+  }
+
+  /**
+   * A batch of queries.
+   *
+   * @param <T> The type of tree objects
+   */
+
+  interface BatchType<T>
+  {
+    /**
+     * @return The number of queries in the batch
+     */
+
+    int size();
+
+    /**
+     * Select the queries that may have results within a node, by moving
+     * them to the front of the candidates. The candidates are only
+     * reordered, so the first {@code count} elements of {@code candidates}
+     * hold the same indices afterwards.
+     *
+     * @param candidates The indices of the candidate queries
+     * @param count      The number of candidate queries
+     * @param bounds     The packed bounds of the node
+     *
+     * @return The number of selected queries
+     */
+
+    int select(
+      int[] candidates,
+      int count,
+      double[] bounds);
+
+    /**
+     * Test an object against a query, saving it to the results of the
+     * query if it matches.
+     *
+     * @param query  The query index
+     * @param b      The array of packed object bounds
+     * @param offset The offset of the object bounds within {@code b}
+     * @param value  The object
+     */
+
+    void test(
+      int query,
+      double[] b,
+      int offset,
+      T value);
+  }
+
+  /**
+   * @param batch The batch
+   *
+   * @return The indices of every query in {@code batch}
+   */
+
+  static int[] all(final BatchType<?> batch)
+  {
+    final int[] queries = new int[batch.size()];
+    for (int index = 0; index < queries.length; ++index) {
+      queries[index] = index;
+    }
+    return queries;
+  }
+
+  private static void checkSizes(
+    final List<?> targets,
+    final List<?> results)
+  {
+    Objects.requireNonNull(targets, "Targets");
+    Objects.requireNonNull(results, "Results");
+    Preconditions.checkPreconditionV(
+      targets.size() == results.size(),
+      "Number of result collections %d must match number of queries %d",
+      Integer.valueOf(results.size()),
+      Integer.valueOf(targets.size()));
+  }
+
+  /**
+   * @param areas The query areas
+   * @param items The result sets, one per query
+   * @param <T>   The type of tree objects
+   *
+   * @return A batch of overlap queries
+   */
+
+  static <T> BatchType<T> overlappingAreas(
+    final List<AreaD> areas,
+    final List<? extends Set<T>> items)
+  {
+    checkSizes(areas, items);
+    final double[] targets = new double[areas.size() * AreaBoundsD.STRIDE];
+    for (int index = 0; index < areas.size(); ++index) {
+      AreaBoundsD.store(
+        Objects.requireNonNull(areas.get(index), "Area"),
+        targets,
+        index * AreaBoundsD.STRIDE);
+    }
+    return new AreaOverlapping<>(targets, items);
+  }
+
+  /**
+   * @param volumes The query volumes
+   * @param items   The result sets, one per query
+   * @param <T>     The type of tree objects
+   *
+   * @return A batch of overlap queries
+   */
+
+  static <T> BatchType<T> overlappingVolumes(
+    final List<VolumeD> volumes,
+    final List<? extends Set<T>> items)
+  {
+    checkSizes(volumes, items);
+    final double[] targets = new double[volumes.size() * VolumeBoundsD.STRIDE];
+    for (int index = 0; index < volumes.size(); ++index) {
+      VolumeBoundsD.store(
+        Objects.requireNonNull(volumes.get(index), "Volume"),
+        targets,
+        index * VolumeBoundsD.STRIDE);
+    }
+    return new VolumeOverlapping<>(targets, items);
+  }
+
+  /**
+   * @param rays    The rays
+   * @param results The result buffers, one per ray
+   * @param <T>     The type of tree objects
+   *
+   * @return A batch of raycast queries
+   */
+
+  static <T> BatchType<T> raycastAreas(
+    final List<Ray2D> rays,
+    final List<QuadTreeRaycastBufferD<T>> results)
+  {
+    checkSizes(rays, results);
+    final double[] packed = new double[rays.size() * AreaBoundsD.RAY_STRIDE];
+    for (int index = 0; index < rays.size(); ++index) {
+      AreaBoundsD.storeRay(
+        Objects.requireNonNull(rays.get(index), "Ray"),
+        packed,
+        index * AreaBoundsD.RAY_STRIDE);
+      Objects.requireNonNull(results.get(index), "Results");
+    }
+    return new AreaRaycast<>(packed, results);
+  }
+
+  /**
+   * @param rays    The rays
+   * @param results The result buffers, one per ray
+   * @param <T>     The type of tree objects
+   *
+   * @return A batch of raycast queries
+   */
+
+  static <T> BatchType<T> raycastVolumes(
+    final List<Ray3D> rays,
+    final List<OctTreeRaycastBufferD<T>> results)
+  {
+    checkSizes(rays, results);
+    final double[] packed = new double[rays.size() * VolumeBoundsD.RAY_STRIDE];
+    for (int index = 0; index < rays.size(); ++index) {
+      VolumeBoundsD.storeRay(
+        Objects.requireNonNull(rays.get(index), "Ray"),
+        packed,
+        index * VolumeBoundsD.RAY_STRIDE);
+      Objects.requireNonNull(results.get(index), "Results");
+    }
+    return new VolumeRaycast<>(packed, results);
+  }
+
+  private static final class AreaOverlapping<T> implements BatchType<T>
+  {
+    private final double[] targets;
+    private final List<? extends Set<T>> items;
+
+    private AreaOverlapping(
+      final double[] in_targets,
+      final List<? extends Set<T>> in_items)
+    {
+      this.targets = in_targets;
+      this.items = in_items;
+    }
+
+    @Override
+    public int size()
+    {
+      return this.items.size();
+    }
+
+    @Override
+    public int select(
+      final int[] candidates,
+      final int count,
+      final double[] bounds)
+    {
+      int selected_count = 0;
+      for (int index = 0; index < count; ++index) {
+        final int query = candidates[index];
+        if (AreaBoundsD.overlaps(this.targets, query * AreaBoundsD.STRIDE, bounds, 0)) {
+          candidates[index] = candidates[selected_count];
+          candidates[selected_count] = query;
+          ++selected_count;
+        }
+      }
+      return selected_count;
+    }
+
+    @Override
+    public void test(
+      final int query,
+      final double[] b,
+      final int offset,
+      final T value)
+    {
+      if (AreaBoundsD.overlaps(this.targets, query * AreaBoundsD.STRIDE, b, offset)) {
+        this.items.get(query).add(value);
+      }
+    }
+  }
+
+  private static final class VolumeOverlapping<T> implements BatchType<T>
+  {
+    private final double[] targets;
+    private final List<? extends Set<T>> items;
+
+    private VolumeOverlapping(
+      final double[] in_targets,
+      final List<? extends Set<T>> in_items)
+    {
+      this.targets = in_targets;
+      this.items = in_items;
+    }
+
+    @Override
+    public int size()
+    {
+      return this.items.size();
+    }
+
+    @Override
+    public int select(
+      final int[] candidates,
+      final int count,
+      final double[] bounds)
+    {
+      int selected_count = 0;
+      for (int index = 0; index < count; ++index) {
+        final int query = candidates[index];
+        if (VolumeBoundsD.overlaps(this.targets, query * VolumeBoundsD.STRIDE, bounds, 0)) {
+          candidates[index] = candidates[selected_count];
+          candidates[selected_count] = query;
+          ++selected_count;
+        }
+      }
+      return selected_count;
+    }
+
+    @Override
+    public void test(
+      final int query,
+      final double[] b,
+      final int offset,
+      final T value)
+    {
+      if (VolumeBoundsD.overlaps(this.targets, query * VolumeBoundsD.STRIDE, b, offset)) {
+        this.items.get(query).add(value);
+      }
+    }
+  }
+
+  private static final class AreaRaycast<T> implements BatchType<T>
+  {
+    private final double[] rays;
+    private final List<QuadTreeRaycastBufferD<T>> results;
+
+    private AreaRaycast(
+      final double[] in_rays,
+      final List<QuadTreeRaycastBufferD<T>> in_results)
+    {
+      this.rays = in_rays;
+      this.results = in_results;
+    }
+
+    @Override
+    public int size()
+    {
+      return this.results.size();
+    }
+
+    @Override
+    public int select(
+      final int[] candidates,
+      final int count,
+      final double[] bounds)
+    {
+      int selected_count = 0;
+      for (int index = 0; index < count; ++index) {
+        final int ray = candidates[index];
+        if (AreaBoundsD.entryDistance(this.rays, ray * AreaBoundsD.RAY_STRIDE, bounds, 0)
+          < Double.POSITIVE_INFINITY) {
+          candidates[index] = candidates[selected_count];
+          candidates[selected_count] = ray;
+          ++selected_count;
+        }
+      }
+      return selected_count;
+    }
+
+    @Override
+    public void test(
+      final int query,
+      final double[] b,
+      final int offset,
+      final T value)
+    {
+      final double distance =
+        AreaBoundsD.entryDistance(this.rays, query * AreaBoundsD.RAY_STRIDE, b, offset);
+      if (distance < Double.POSITIVE_INFINITY) {
+        this.results.get(query).add(
+          value,
+          distance,
+          b[offset],
+          b[offset + 1],
+          b[offset + 2],
+          b[offset + 3]);
+      }
+    }
+  }
+
+  private static final class VolumeRaycast<T> implements BatchType<T>
+  {
+    private final double[] rays;
+    private final List<OctTreeRaycastBufferD<T>> results;
+
+    private VolumeRaycast(
+      final double[] in_rays,
+      final List<OctTreeRaycastBufferD<T>> in_results)
+    {
+      this.rays = in_rays;
+      this.results = in_results;
+    }
+
+    @Override
+    public int size()
+    {
+      return this.results.size();
+    }
+
+    @Override
+    public int select(
+      final int[] candidates,
+      final int count,
+      final double[] bounds)
+    {
+      int selected_count = 0;
+      for (int index = 0; index < count; ++index) {
+        final int ray = candidates[index];
+        if (VolumeBoundsD.entryDistance(this.rays, ray * VolumeBoundsD.RAY_STRIDE, bounds, 0)
+          < Double.POSITIVE_INFINITY) {
+          candidates[index] = candidates[selected_count];
+          candidates[selected_count] = ray;
+          ++selected_count;
+        }
+      }
+      return selected_count;
+    }
+
+    @Override
+    public void test(
+      final int query,
+      final double[] b,
+      final int offset,
+      final T value)
+    {
+      final double distance =
+        VolumeBoundsD.entryDistance(this.rays, query * VolumeBoundsD.RAY_STRIDE, b, offset);
+      if (distance < Double.POSITIVE_INFINITY) {
+        this.results.get(query).add(
+          value,
+          distance,
+          b[offset],
+          b[offset + 1],
+          b[offset + 2],
+          b[offset + 3],
+          b[offset + 4],
+          b[offset + 5]);
+      }
+    }
+  }
+}
@@ -0,0 +1,1217 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jspatial.implementation;
+
+import com.io7m.jaffirm.core.Preconditions;
+import com.io7m.jregions.core.unparameterized.volumes.VolumeD;
+import com.io7m.jspatial.api.Ray3D;
+import com.io7m.jspatial.api.TreeVisitResult;
+import com.io7m.jspatial.api.octtrees.OctTreeConfigurationD;
+import com.io7m.jspatial.api.octtrees.OctTreeDType;
+import com.io7m.jspatial.api.octtrees.OctTreeItemVisitorDType;
+import com.io7m.jspatial.api.octtrees.OctTreeNearestVisitorDType;
+import com.io7m.jspatial.api.octtrees.OctTreeOctantDType;
+import com.io7m.jspatial.api.octtrees.OctTreeOctantIterationDType;
+import com.io7m.jspatial.api.octtrees.OctTreeRaycastBufferD;
+import com.io7m.jspatial.api.octtrees.OctTreeRaycastResultD;
+import com.io7m.jspatial.api.octtrees.OctTreeRaycastVisitorDType;
+import com.io7m.jtensors.core.unparameterized.vectors.Vector3D;
+import com.io7m.jtensors.core.unparameterized.vectors.Vectors3D;
+import com.io7m.junreachable.UnreachableCodeException;
+import it.unimi.dsi.fastutil.ints.IntIterator;
+import it.unimi.dsi.fastutil.objects.Reference2IntMap;
+import it.unimi.dsi.fastutil.objects.Reference2IntOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Reference2ReferenceMaps;
+import it.unimi.dsi.fastutil.objects.Reference2ReferenceOpenHashMap;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BiFunction;
+import java.util.function.Supplier;
+
+/**
+ * <p>An implementation of the {@link OctTreeDType} interface backed by a
+ * binary bounding volume hierarchy (BVH), intended for workloads dominated
+ * by raycasts.</p>
+ *
+ * <p>Rather than subdividing the volume of the tree at fixed midpoints, the
+ * hierarchy partitions the objects themselves: each node is bounded by the
+ * exact bounds of the objects below it, and the objects are split between
+ * the two children of a node using the binned surface area heuristic (SAH),
+ * which places the splits where they minimize the expected number of nodes
+ * and objects that a ray must be tested against. Rays are tested against
+ * nodes with the slab test of {@link Ray3D}, and a first-hit raycast visits
+ * the children of each node nearest first so that the nearest hit found so
+ * far rules out the rest of the hierarchy. {@link #insertAll(Map)} on an
+ * empty tree, and {@link #trim()}, build the hierarchy from scratch.</p>
+ *
+ * <p>Updates do not restructure the hierarchy. Moving an object refits the
+ * bounds of the leaf that holds it and of the ancestors of that leaf,
+ * inserting an object adds it to the leaf whose bounds grow the least, and
+ * removing an object shrinks its leaf. Each update also maintains the SAH
+ * cost of the hierarchy, and once the cost relative to the surface area of
+ * the root is more than half as large again as it was after the last build,
+ * a new hierarchy is built from a snapshot of the objects on the executor
+ * given at creation. Queries continue to use the old hierarchy in the
+ * meantime. The new hierarchy is installed by the first insertion or
+ * removal after the build completes, at which point it is refitted to the
+ * current objects, objects removed since the snapshot are dropped from it,
+ * and objects inserted since the snapshot are added to it. Queries never
+ * modify the tree, so any number of them may run concurrently as long as
+ * no update runs at the same time.</p>
+ *
+ * <p>The volume of the configuration bounds the objects that the tree
+ * accepts, exactly as with the other implementations, but the subdivision
+ * parameters of the configuration do not apply. The octants exposed by
+ * {@link #iterateOctants(Object, OctTreeOctantIterationDType)} are the
+ * non-empty nodes of the hierarchy (along with the root, even if empty),
+ * and the volume of each octant is the bounding volume of its objects. Only
+ * leaves hold objects. Like the other implementations, the tree is not
+ * thread-safe for updates; only the background builds run on other threads,
+ * and these never touch the tree.</p>
+ *
+ * @param <T> The precise type of tree objects
+ */
+
+public final class BoundingVolumeHierarchyD<T> implements OctTreeDType<T>
+{
+  private static final int NONE = BoundingVolumeNodesD.NONE;
+  private static final int BOUNDS_STRIDE = VolumeBoundsD.STRIDE;
+  private static final int INITIAL_ITEMS = 16;
+  private static final int INITIAL_STACK = 64;
+  private static final int REBUILD_MINIMUM = 32;
+  private static final double REBUILD_RATIO = 1.5;
+
+  private final OctTreeConfigurationD config;
+  private final double[] tree_bounds;
+  private final Executor executor;
+  private final Reference2IntOpenHashMap<T> item_slots;
+
+  /*
+   * Per-item storage. Each slot has a generation that is incremented when
+   * the slot is freed, so that a hierarchy built from a snapshot can tell
+   * which of its slots have since been reused. Free slots are chained
+   * through the free array.
+   */
+
+  private Object[] item_values;
+  private double[] item_bounds;
+  private int[] item_generation;
+  private int[] item_free_next;
+  private int item_top;
+  private int item_free;
+
+  private BoundingVolumeNodesD nodes;
+  private double built_quality;
+  private CompletableFuture<BoundingVolumeNodesD> rebuild;
+
+  private BoundingVolumeHierarchyD(
+    final OctTreeConfigurationD in_config,
+    final Executor in_executor)
+  {
+    this.config = Objects.requireNonNull(in_config, "Configuration");
+    this.executor = Objects.requireNonNull(in_executor, "Executor");
+    this.tree_bounds = VolumeBoundsD.pack(in_config.volume());
+    this.item_slots = new Reference2IntOpenHashMap<>();
+    this.item_slots.defaultReturnValue(NONE);
+    this.reset();
+  }
+
+  /**
+   * Create a new empty tree with the given bounds. Rebuilds run on the
+   * common fork/join pool.
+   *
+   * @param config The tree configuration
+   * @param <T>    The type of objects contained within the tree
+   *
+   * @return A new tree
+   */
+
+  public static <T> OctTreeDType<T> create(
+    final OctTreeConfigurationD config)
+  {
+    return new BoundingVolumeHierarchyD<>(config, ForkJoinPool.commonPool());
+  }
+
+  /**
+   * Create a new empty tree with the given bounds. Rebuilds run on the
+   * given executor. An executor that runs tasks immediately on the calling
+   * thread makes rebuilds synchronous.
+   *
+   * @param config   The tree configuration
+   * @param executor The executor used to rebuild the hierarchy
+   * @param <T>      The type of objects contained within the tree
+   *
+   * @return A new tree
+   */
+
+  public static <T> OctTreeDType<T> createWithExecutor(
+    final OctTreeConfigurationD config,
+    final Executor executor)
+  {
+    return new BoundingVolumeHierarchyD<>(config, executor);
+  }
+
+  private void reset()
+  {
+    this.item_values = new Object[INITIAL_ITEMS];
+    this.item_bounds = new double[INITIAL_ITEMS * BOUNDS_STRIDE];
+    this.item_generation = new int[INITIAL_ITEMS];
+    this.item_free_next = new int[INITIAL_ITEMS];
+    this.item_top = 0;
+    this.item_free = NONE;
+    this.item_slots.clear();
+
+    this.nodes = BoundingVolumeNodesD.empty();
+    this.nodes.ensureItems(INITIAL_ITEMS);
+    this.built_quality = 0.0;
+    this.rebuildCancel();
+  }
+
+  /**
+   * Build the hierarchy again from scratch, discarding any rebuild that is
+   * in progress.
+   */
+
+  @Override
+  public void trim()
+  {
+    this.rebuildCancel();
+    this.install(this.rebuildTask().get());
+  }
+
+  @Override
+  public long size()
+  {
+    return (long) this.item_slots.size();
+  }
+
+  @Override
+  public boolean equals(final Object o)
+  {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || this.getClass() != o.getClass()) {
+      return false;
+    }
+
+    final BoundingVolumeHierarchyD<?> that = (BoundingVolumeHierarchyD<?>) o;
+    if (this.item_slots.size() != that.item_slots.size()) {
+      return false;
+    }
+
+    for (final Reference2IntMap.Entry<T> e : this.item_slots.reference2IntEntrySet()) {
+      final int slot = e.getIntValue();
+      final int that_slot = that.item_slots.getInt(e.getKey());
+      if (that_slot == NONE) {
+        return false;
+      }
+      if (!Arrays.equals(
+        this.item_bounds,
+        slot * BOUNDS_STRIDE,
+        (slot + 1) * BOUNDS_STRIDE,
+        that.item_bounds,
+        that_slot * BOUNDS_STRIDE,
+        (that_slot + 1) * BOUNDS_STRIDE)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public int hashCode()
+  {
+    int hash = 0;
+    for (final Reference2IntMap.Entry<T> e : this.item_slots.reference2IntEntrySet()) {
+      final int b = e.getIntValue() * BOUNDS_STRIDE;
+      int item_hash = 0;
+      for (int index = 0; index < BOUNDS_STRIDE; ++index) {
+        item_hash = 31 * item_hash + Double.hashCode(this.item_bounds[b + index]);
+      }
+      hash += System.identityHashCode(e.getKey()) ^ item_hash;
+    }
+    return hash;
+  }
+
+  @Override
+  public VolumeD bounds()
+  {
+    return this.config.volume();
+  }
+
+  @Override
+  public boolean insert(
+    final T item,
+    final VolumeD volume)
+  {
+    Objects.requireNonNull(item, "Item");
+    Objects.requireNonNull(volume, "Volume");
+    this.rebuildInstall();
+
+    final double[] bounds = VolumeBoundsD.pack(volume);
+    final int existing = this.item_slots.getInt(item);
+
+    /*
+     * As with the other implementations, an object whose new bounds do not
+     * fit in the tree is removed.
+     */
+
+    if (!VolumeBoundsD.contains(this.tree_bounds, 0, bounds, 0)) {
+      if (existing != NONE) {
+        this.removeSlot(item, existing);
+      }
+      return false;
+    }
+
+    if (existing != NONE) {
+      System.arraycopy(bounds, 0, this.item_bounds, existing * BOUNDS_STRIDE, BOUNDS_STRIDE);
+      this.nodes.refit(this.nodes.leafOf(existing), this.item_bounds);
+    } else {
+      final int slot = this.itemAllocate(item, bounds, 0);
+      this.item_slots.put(item, slot);
+      this.insertSlot(slot);
+    }
+
+    this.rebuildCheck();
+    return true;
+  }
+
+  @Override
+  public long insertAll(
+    final Map<T, VolumeD> items)
+  {
+    Objects.requireNonNull(items, "Items");
+
+    /*
+     * A tree that already holds objects is updated one object at a time.
+     */
+
+    if (!this.item_slots.isEmpty()) {
+      long inserted = 0L;
+      for (final Map.Entry<T, VolumeD> entry : items.entrySet()) {
+        if (this.insert(entry.getKey(), entry.getValue())) {
+          ++inserted;
+        }
+      }
+      return inserted;
+    }
+
+    /*
+     * Otherwise, discard the objects that cannot fit in the tree and build
+     * a hierarchy over the remaining objects.
+     */
+
+    this.reset();
+    final double[] bounds = new double[BOUNDS_STRIDE];
+    for (final Map.Entry<T, VolumeD> entry : items.entrySet()) {
+      final T item = Objects.requireNonNull(entry.getKey(), "Item");
+      VolumeBoundsD.store(Objects.requireNonNull(entry.getValue(), "Volume"), bounds, 0);
+      if (VolumeBoundsD.contains(this.tree_bounds, 0, bounds, 0)) {
+        this.item_slots.put(item, this.itemAllocate(item, bounds, 0));
+      }
+    }
+
+    this.install(this.rebuildTask().get());
+    return (long) this.item_slots.size();
+  }
+
+  @Override
+  public boolean contains(final T item)
+  {
+    return this.item_slots.containsKey(item);
+  }
+
+  @Override
+  public boolean remove(final T item)
+  {
+    Objects.requireNonNull(item, "Item");
+    this.rebuildInstall();
+
+    final int slot = this.item_slots.getInt(item);
+    if (slot == NONE) {
+      return false;
+    }
+
+    this.removeSlot(item, slot);
+    this.rebuildCheck();
+    return true;
+  }
+
+  @Override
+  public void clear()
+  {
+    this.reset();
+  }
+
+  @Override
+  public <U> OctTreeDType<U> map(final BiFunction<T, VolumeD, U> f)
+  {
+    Objects.requireNonNull(f, "Function");
+
+    final Reference2ReferenceOpenHashMap<U, VolumeD> mapped =
+      new Reference2ReferenceOpenHashMap<>(this.item_slots.size());
+    for (final Reference2IntMap.Entry<T> e : this.item_slots.reference2IntEntrySet()) {
+      final T item = e.getKey();
+      final VolumeD item_volume =
+        VolumeBoundsD.unpack(this.item_bounds, e.getIntValue() * BOUNDS_STRIDE);
+      mapped.put(f.apply(item, item_volume), item_volume);
+    }
+
+    final OctTreeDType<U> qt = new BoundingVolumeHierarchyD<>(this.config, this.executor);
+    qt.insertAll(mapped);
+    return qt;
+  }
+
+  @Override
+  public <C> void iterateOctants(
+    final C context,
+    final OctTreeOctantIterationDType<T, C> f)
+  {
+    Objects.requireNonNull(context, "Context");
+    Objects.requireNonNull(f, "Function");
+    this.iterateOctantsNode(context, f, 0, 0L);
+  }
+
+  @Override
+  public VolumeD volumeFor(final T item)
+  {
+    Objects.requireNonNull(item, "Item");
+
+    final int slot = this.item_slots.getInt(item);
+    if (slot == NONE) {
+      throw new NoSuchElementException(item.toString());
+    }
+    return VolumeBoundsD.unpack(this.item_bounds, slot * BOUNDS_STRIDE);
+  }
+
+  private static <T> TreeVisitResult collectItem(
+    final Set<T> items,
+    final T item,
+    final VolumeD bounds)
+  {
+    items.add(item);
+    return TreeVisitResult.RESULT_CONTINUE;
+  }
+
+  private static <T> TreeVisitResult collectRaycastResult(
+    final SortedSet<OctTreeRaycastResultD<T>> items,
+    final T item,
+    final VolumeD bounds,
+    final double distance)
+  {
+    items.add(OctTreeRaycastResultD.of(distance, bounds, item));
+    return TreeVisitResult.RESULT_CONTINUE;
+  }
+
+  @Override
+  public void containedBy(
+    final VolumeD volume,
+    final Set<T> items)
+  {
+    Objects.requireNonNull(volume, "Volume");
+    Objects.requireNonNull(items, "Items");
+    this.containedBy(volume, items, BoundingVolumeHierarchyD::collectItem);
+  }
+
+  @Override
+  public void overlappedBy(
+    final VolumeD volume,
+    final Set<T> items)
+  {
+    Objects.requireNonNull(volume, "Volume");
+    Objects.requireNonNull(items, "Items");
+    this.overlappedBy(volume, items, BoundingVolumeHierarchyD::collectItem);
+  }
+
+  @Override
+  public void raycast(
+    final Ray3D ray,
+    final SortedSet<OctTreeRaycastResultD<T>> items)
+  {
+    Objects.requireNonNull(ray, "Ray");
+    Objects.requireNonNull(items, "Items");
+    this.raycast(ray, items, BoundingVolumeHierarchyD::collectRaycastResult);
+  }
+
+  @Override
+  public <C> TreeVisitResult containedBy(
+    final VolumeD volume,
+    final C context,
+    final OctTreeItemVisitorDType<T, C> f)
+  {
+    Objects.requireNonNull(volume, "Volume");
+    Objects.requireNonNull(context, "Context");
+    Objects.requireNonNull(f, "Function");
+
+    final BoundingVolumeNodesD n = this.nodes;
+    final double[] target = VolumeBoundsD.pack(volume);
+    int[] stack = new int[INITIAL_STACK];
+    int top = push(stack, 0, 0);
+    while (top > 0) {
+      final int node = stack[--top];
+      if (n.count(node) == 0
+        || !VolumeBoundsD.touches(target, 0, n.bounds(), node * BOUNDS_STRIDE)) {
+        continue;
+      }
+
+      if (n.isLeaf(node)) {
+        for (int slot = n.head(node); slot != NONE; slot = n.next(slot)) {
+          if (VolumeBoundsD.contains(target, 0, this.item_bounds, slot * BOUNDS_STRIDE)) {
+            if (this.visitItem(slot, context, f) == TreeVisitResult.RESULT_TERMINATE) {
+              return TreeVisitResult.RESULT_TERMINATE;
+            }
+          }
+        }
+      } else {
+        stack = ensureStack(stack, top);
+        top = pushChildren(stack, top, n.left(node));
+      }
+    }
+    return TreeVisitResult.RESULT_CONTINUE;
+  }
+
+  @Override
+  public <C> TreeVisitResult overlappedBy(
+    final VolumeD volume,
+    final C context,
+    final OctTreeItemVisitorDType<T, C> f)
+  {
+    Objects.requireNonNull(volume, "Volume");
+    Objects.requireNonNull(context, "Context");
+    Objects.requireNonNull(f, "Function");
+
+    final BoundingVolumeNodesD n = this.nodes;
+    final double[] target = VolumeBoundsD.pack(volume);
+    int[] stack = new int[INITIAL_STACK];
+    int top = push(stack, 0, 0);
+    while (top > 0) {
+      final int node = stack[--top];
+      if (n.count(node) == 0
+        || !VolumeBoundsD.overlapsAnyWithin(target, 0, n.bounds(), node * BOUNDS_STRIDE)) {
+        continue;
+      }
+
+      if (n.isLeaf(node)) {
+        for (int slot = n.head(node); slot != NONE; slot = n.next(slot)) {
+          if (VolumeBoundsD.overlaps(target, 0, this.item_bounds, slot * BOUNDS_STRIDE)) {
+            if (this.visitItem(slot, context, f) == TreeVisitResult.RESULT_TERMINATE) {
+              return TreeVisitResult.RESULT_TERMINATE;
+            }
+          }
+        }
+      } else {
+        stack = ensureStack(stack, top);
+        top = pushChildren(stack, top, n.left(node));
+      }
+    }
+    return TreeVisitResult.RESULT_CONTINUE;
+  }
+
+  @Override
+  public <C> TreeVisitResult raycast(
+    final Ray3D ray,
+    final C context,
+    final OctTreeRaycastVisitorDType<T, C> f)
+  {
+    Objects.requireNonNull(ray, "Ray");
+    Objects.requireNonNull(context, "Context");
+    Objects.requireNonNull(f, "Function");
+
+    final BoundingVolumeNodesD n = this.nodes;
+    final double[] b = this.item_bounds;
+    int[] stack = new int[INITIAL_STACK];
+    int top = push(stack, 0, 0);
+    while (top > 0) {
+      final int node = stack[--top];
+      if (n.count(node) == 0
+        || !VolumeBoundsD.intersects(ray, n.bounds(), node * BOUNDS_STRIDE)) {
+        continue;
+      }
+
+      if (n.isLeaf(node)) {
+        for (int slot = n.head(node); slot != NONE; slot = n.next(slot)) {
+          final int offset = slot * BOUNDS_STRIDE;
+          if (VolumeBoundsD.intersects(ray, b, offset)) {
+            final double distance = Vectors3D.distance(
+              Vector3D.of(b[offset], b[offset + 2], b[offset + 4]),
+              ray.origin());
+            if (f.apply(context, this.itemValue(slot), VolumeBoundsD.unpack(b, offset), distance)
+              == TreeVisitResult.RESULT_TERMINATE) {
+              return TreeVisitResult.RESULT_TERMINATE;
+            }
+          }
+        }
+      } else {
+        stack = ensureStack(stack, top);
+        top = pushChildren(stack, top, n.left(node));
+      }
+    }
+    return TreeVisitResult.RESULT_CONTINUE;
+  }
+
+  @Override
+  public <C> TreeVisitResult nearest(
+    final Vector3D point,
+    final int count,
+    final C context,
+    final OctTreeNearestVisitorDType<T, C> f)
+  {
+    Objects.requireNonNull(point, "Point");
+    Objects.requireNonNull(context, "Context");
+    Objects.requireNonNull(f, "Function");
+    Preconditions.checkPreconditionI(
+      count, count >= 0, c -> "Count must be non-negative");
+
+    /*
+     * Best-first search over a single queue of nodes and items ordered by
+     * distance from the point. Item slots are queued as -(slot + 1).
+     */
+
+    final BoundingVolumeNodesD n = this.nodes;
+    final double x = point.x();
+    final double y = point.y();
+    final double z = point.z();
+    final DistanceHeap heap = new DistanceHeap();
+    if (n.count(0) > 0) {
+      heap.add(0.0, null, 0);
+    }
+
+    int found = 0;
+    while (found < count && !heap.isEmpty()) {
+      final double key = heap.topKey();
+      final int top = heap.topInt();
+      heap.removeTop();
+
+      if (top < 0) {
+        ++found;
+        if (this.visitNearest(-(top + 1), Math.sqrt(key), context, f)
+          == TreeVisitResult.RESULT_TERMINATE) {
+          return TreeVisitResult.RESULT_TERMINATE;
+        }
+      } else if (n.isLeaf(top)) {
+        for (int slot = n.head(top); slot != NONE; slot = n.next(slot)) {
+          heap.add(
+            VolumeBoundsD.distanceSquared(x, y, z, this.item_bounds, slot * BOUNDS_STRIDE),
+            null,
+            -(slot + 1));
+        }
+      } else {
+        final int left = n.left(top);
+        for (int child = left; child <= left + 1; ++child) {
+          if (n.count(child) > 0) {
+            heap.add(
+              VolumeBoundsD.distanceSquared(x, y, z, n.bounds(), child * BOUNDS_STRIDE),
+              null,
+              child);
+          }
+        }
+      }
+    }
+    return TreeVisitResult.RESULT_CONTINUE;
+  }
+
+  @Override
+  public Optional<OctTreeRaycastResultD<T>> raycastFirst(
+    final Ray3D ray)
+  {
+    Objects.requireNonNull(ray, "Ray");
+
+    /*
+     * Depth-first search that visits the nearer child of each node first,
+     * pruning every node that the ray enters beyond the nearest hit so far.
+     * The distance at which the ray enters each node is stacked alongside
+     * the node.
+     */
+
+    final BoundingVolumeNodesD n = this.nodes;
+    final RaycastStack stack = new RaycastStack();
+    double best = Double.POSITIVE_INFINITY;
+    int best_slot = NONE;
+    stack.push(0, this.nodeEntryDistance(ray, 0), best);
+
+    while (stack.top > 0) {
+      --stack.top;
+      final int node = stack.nodes[stack.top];
+      if (stack.distances[stack.top] >= best) {
+        continue;
+      }
+
+      if (n.isLeaf(node)) {
+        for (int slot = n.head(node); slot != NONE; slot = n.next(slot)) {
+          final double distance =
+            VolumeBoundsD.entryDistance(ray, this.item_bounds, slot * BOUNDS_STRIDE);
+          if (distance < best) {
+            best = distance;
+            best_slot = slot;
+          }
+        }
+      } else {
+        final int left = n.left(node);
+        final double distance_left = this.nodeEntryDistance(ray, left);
+        final double distance_right = this.nodeEntryDistance(ray, left + 1);
+        if (distance_left <= distance_right) {
+          stack.push(left + 1, distance_right, best);
+          stack.push(left, distance_left, best);
+        } else {
+          stack.push(left, distance_left, best);
+          stack.push(left + 1, distance_right, best);
+        }
+      }
+    }
+
+    if (best_slot == NONE) {
+      return Optional.empty();
+    }
+    return Optional.of(OctTreeRaycastResultD.of(
+      best,
+      VolumeBoundsD.unpack(this.item_bounds, best_slot * BOUNDS_STRIDE),
+      this.itemValue(best_slot)));
+  }
+
+  @Override
+  public <C> TreeVisitResult raycastFirst(
+    final Ray3D ray,
+    final int count,
+    final C context,
+    final OctTreeRaycastVisitorDType<T, C> f)
+  {
+    Objects.requireNonNull(ray, "Ray");
+    Objects.requireNonNull(context, "Context");
+    Objects.requireNonNull(f, "Function");
+    Preconditions.checkPreconditionI(
+      count, count >= 0, c -> "Count must be non-negative");
+
+    /*
+     * Best-first search, as with nearest(), ordered by the distance at
+     * which the ray enters each node and item.
+     */
+
+    final BoundingVolumeNodesD n = this.nodes;
+    final DistanceHeap heap = new DistanceHeap();
+    final double root_distance = this.nodeEntryDistance(ray, 0);
+    if (root_distance < Double.POSITIVE_INFINITY) {
+      heap.add(root_distance, null, 0);
+    }
+
+    int found = 0;
+    while (found < count && !heap.isEmpty()) {
+      final double key = heap.topKey();
+      final int top = heap.topInt();
+      heap.removeTop();
+
+      if (top < 0) {
+        ++found;
+        final int slot = -(top + 1);
+        if (f.apply(
+          context,
+          this.itemValue(slot),
+          VolumeBoundsD.unpack(this.item_bounds, slot * BOUNDS_STRIDE),
+          key) == TreeVisitResult.RESULT_TERMINATE) {
+          return TreeVisitResult.RESULT_TERMINATE;
+        }
+      } else if (n.isLeaf(top)) {
+        for (int slot = n.head(top); slot != NONE; slot = n.next(slot)) {
+          final double distance =
+            VolumeBoundsD.entryDistance(ray, this.item_bounds, slot * BOUNDS_STRIDE);
+          if (distance < Double.POSITIVE_INFINITY) {
+            heap.add(distance, null, -(slot + 1));
+          }
+        }
+      } else {
+        final int left = n.left(top);
+        for (int child = left; child <= left + 1; ++child) {
+          final double distance = this.nodeEntryDistance(ray, child);
+          if (distance < Double.POSITIVE_INFINITY) {
+            heap.add(distance, null, child);
+          }
+        }
+      }
+    }
+    return TreeVisitResult.RESULT_CONTINUE;
+  }
+
+  @Override
+  public void raycast(
+    final Ray3D ray,
+    final OctTreeRaycastBufferD<T> results)
+  {
+    Objects.requireNonNull(ray, "Ray");
+    Objects.requireNonNull(results, "Results");
+
+    final BoundingVolumeNodesD n = this.nodes;
+    final double[] b = this.item_bounds;
+    int[] stack = new int[INITIAL_STACK];
+    int top = push(stack, 0, 0);
+    while (top > 0) {
+      final int node = stack[--top];
+      if (n.count(node) == 0
+        || !VolumeBoundsD.intersects(ray, n.bounds(), node * BOUNDS_STRIDE)) {
+        continue;
+      }
+
+      if (n.isLeaf(node)) {
+        for (int slot = n.head(node); slot != NONE; slot = n.next(slot)) {
+          final int o = slot * BOUNDS_STRIDE;
+          final double distance = VolumeBoundsD.entryDistance(ray, b, o);
+          if (distance < Double.POSITIVE_INFINITY) {
+            results.add(
+              this.itemValue(slot), distance, b[o], b[o + 1], b[o + 2], b[o + 3], b[o + 4], b[o + 5]);
+          }
+        }
+      } else {
+        stack = ensureStack(stack, top);
+        top = pushChildren(stack, top, n.left(node));
+      }
+    }
+  }
+
+  @Override
+  public long countContainedBy(
+    final VolumeD volume)
+  {
+    Objects.requireNonNull(volume, "Volume");
+
+    final BoundingVolumeNodesD n = this.nodes;
+    final double[] target = VolumeBoundsD.pack(volume);
+    long count = 0L;
+    int[] stack = new int[INITIAL_STACK];
+    int top = push(stack, 0, 0);
+    while (top > 0) {
+      final int node = stack[--top];
+      final int o = node * BOUNDS_STRIDE;
+      if (n.count(node) == 0 || !VolumeBoundsD.touches(target, 0, n.bounds(), o)) {
+        continue;
+      }
+
+      if (VolumeBoundsD.contains(target, 0, n.bounds(), o)) {
+        count += (long) n.count(node);
+      } else if (n.isLeaf(node)) {
+        for (int slot = n.head(node); slot != NONE; slot = n.next(slot)) {
+          if (VolumeBoundsD.contains(target, 0, this.item_bounds, slot * BOUNDS_STRIDE)) {
+            ++count;
+          }
+        }
+      } else {
+        stack = ensureStack(stack, top);
+        top = pushChildren(stack, top, n.left(node));
+      }
+    }
+    return count;
+  }
+
+  @Override
+  public long countOverlapping(
+    final VolumeD volume)
+  {
+    Objects.requireNonNull(volume, "Volume");
+
+    final BoundingVolumeNodesD n = this.nodes;
+    final double[] target = VolumeBoundsD.pack(volume);
+    long count = 0L;
+    int[] stack = new int[INITIAL_STACK];
+    int top = push(stack, 0, 0);
+    while (top > 0) {
+      final int node = stack[--top];
+      final int o = node * BOUNDS_STRIDE;
+      if (n.count(node) == 0
+        || !VolumeBoundsD.overlapsAnyWithin(target, 0, n.bounds(), o)) {
+        continue;
+      }
+
+      if (VolumeBoundsD.overlapsAllWithin(target, 0, n.bounds(), o)) {
+        count += (long) n.count(node);
+      } else if (n.isLeaf(node)) {
+        for (int slot = n.head(node); slot != NONE; slot = n.next(slot)) {
+          if (VolumeBoundsD.overlaps(target, 0, this.item_bounds, slot * BOUNDS_STRIDE)) {
+            ++count;
+          }
+        }
+      } else {
+        stack = ensureStack(stack, top);
+        top = pushChildren(stack, top, n.left(node));
+      }
+    }
+    return count;
+  }
+
+  @Override
+  public boolean anyOverlapping(
+    final VolumeD volume)
+  {
+    Objects.requireNonNull(volume, "Volume");
+
+    final BoundingVolumeNodesD n = this.nodes;
+    final double[] target = VolumeBoundsD.pack(volume);
+    int[] stack = new int[INITIAL_STACK];
+    int top = push(stack, 0, 0);
+    while (top > 0) {
+      final int node = stack[--top];
+      final int o = node * BOUNDS_STRIDE;
+      if (n.count(node) == 0
+        || !VolumeBoundsD.overlapsAnyWithin(target, 0, n.bounds(), o)) {
+        continue;
+      }
+
+      if (VolumeBoundsD.overlapsAllWithin(target, 0, n.bounds(), o)) {
+        return true;
+      }
+      if (n.isLeaf(node)) {
+        for (int slot = n.head(node); slot != NONE; slot = n.next(slot)) {
+          if (VolumeBoundsD.overlaps(target, 0, this.item_bounds, slot * BOUNDS_STRIDE)) {
+            return true;
+          }
+        }
+      } else {
+        stack = ensureStack(stack, top);
+        top = pushChildren(stack, top, n.left(node));
+      }
+    }
+    return false;
+  }
+
+  private static int push(
+    final int[] stack,
+    final int top,
+    final int node)
+  {
+    stack[top] = node;
+    return top + 1;
+  }
+
+  /**
+   * Push both children of a node, so that the left child is popped first.
+   */
+
+  private static int pushChildren(
+    final int[] stack,
+    final int top,
+    final int left)
+  {
+    stack[top] = left + 1;
+    stack[top + 1] = left;
+    return top + 2;
+  }
+
+  private static int[] ensureStack(
+    final int[] stack,
+    final int top)
+  {
+    if (top + 2 > stack.length) {
+      return Arrays.copyOf(stack, stack.length * 2);
+    }
+    return stack;
+  }
+
+  private double nodeEntryDistance(
+    final Ray3D ray,
+    final int node)
+  {
+    if (this.nodes.count(node) == 0) {
+      return Double.POSITIVE_INFINITY;
+    }
+    return VolumeBoundsD.entryDistance(ray, this.nodes.bounds(), node * BOUNDS_STRIDE);
+  }
+
+  @SuppressWarnings("unchecked")
+  private T itemValue(final int slot)
+  {
+    return (T) this.item_values[slot];
+  }
+
+  private <C> TreeVisitResult visitItem(
+    final int slot,
+    final C context,
+    final OctTreeItemVisitorDType<T, C> f)
+  {
+    return f.apply(
+      context,
+      this.itemValue(slot),
+      VolumeBoundsD.unpack(this.item_bounds, slot * BOUNDS_STRIDE));
+  }
+
+  private <C> TreeVisitResult visitNearest(
+    final int slot,
+    final double distance,
+    final C context,
+    final OctTreeNearestVisitorDType<T, C> f)
+  {
+    return f.apply(
+      context,
+      this.itemValue(slot),
+      VolumeBoundsD.unpack(this.item_bounds, slot * BOUNDS_STRIDE),
+      distance);
+  }
+
+  private int itemAllocate(
+    final T item,
+    final double[] bounds,
+    final int offset)
+  {
+    final int slot;
+    if (this.item_free != NONE) {
+      slot = this.item_free;
+      this.item_free = this.item_free_next[slot];
+    } else {
+      if (this.item_top == this.item_values.length) {
+        final int capacity = this.item_values.length * 2;
+        this.item_values = Arrays.copyOf(this.item_values, capacity);
+        this.item_bounds = Arrays.copyOf(this.item_bounds, capacity * BOUNDS_STRIDE);
+        this.item_generation = Arrays.copyOf(this.item_generation, capacity);
+        this.item_free_next = Arrays.copyOf(this.item_free_next, capacity);
+        this.nodes.ensureItems(capacity);
+      }
+      slot = this.item_top;
+      ++this.item_top;
+    }
+
+    this.item_values[slot] = item;
+    this.item_free_next[slot] = NONE;
+    System.arraycopy(bounds, offset, this.item_bounds, slot * BOUNDS_STRIDE, BOUNDS_STRIDE);
+    return slot;
+  }
+
+  private void itemFree(final int slot)
+  {
+    this.item_values[slot] = null;
+    ++this.item_generation[slot];
+    this.item_free_next[slot] = this.item_free;
+    this.item_free = slot;
+  }
+
+  private void insertSlot(final int slot)
+  {
+    final BoundingVolumeNodesD n = this.nodes;
+    final int leaf = n.chooseLeaf(this.item_bounds, slot * BOUNDS_STRIDE);
+    n.link(slot, leaf);
+    n.refit(leaf, this.item_bounds);
+  }
+
+  private void removeSlot(
+    final T item,
+    final int slot)
+  {
+    final BoundingVolumeNodesD n = this.nodes;
+    n.refit(n.unlink(slot), this.item_bounds);
+    this.item_slots.removeInt(item);
+    this.itemFree(slot);
+  }
+
+  /**
+   * @return A task that builds a new hierarchy from a snapshot of the
+   * current objects
+   */
+
+  private Supplier<BoundingVolumeNodesD> rebuildTask()
+  {
+    final int count = this.item_slots.size();
+    final int[] slots = this.item_slots.values().toIntArray();
+    final double[] bounds = Arrays.copyOf(this.item_bounds, this.item_top * BOUNDS_STRIDE);
+    final int[] generation = Arrays.copyOf(this.item_generation, this.item_top);
+    return () -> BoundingVolumeNodesD.build(slots, count, bounds, generation);
+  }
+
+  /**
+   * Start a rebuild if the quality of the hierarchy has degraded far enough
+   * since the last build, and no rebuild is already in progress.
+   */
+
+  private void rebuildCheck()
+  {
+    if (this.rebuild == null
+      && this.item_slots.size() >= REBUILD_MINIMUM
+      && this.nodes.quality() > this.built_quality * REBUILD_RATIO) {
+      this.rebuild = CompletableFuture.supplyAsync(this.rebuildTask(), this.executor);
+    }
+  }
+
+  /**
+   * Install the result of a rebuild, if one has completed. Only updates call
+   * this, so that queries never write to the tree.
+   */
+
+  private void rebuildInstall()
+  {
+    final CompletableFuture<BoundingVolumeNodesD> future = this.rebuild;
+    if (future != null && future.isDone()) {
+      this.rebuild = null;
+      if (!future.isCompletedExceptionally()) {
+        this.install(future.join());
+      }
+    }
+  }
+
+  private void rebuildCancel()
+  {
+    final CompletableFuture<BoundingVolumeNodesD> future = this.rebuild;
+    if (future != null) {
+      future.cancel(false);
+      this.rebuild = null;
+    }
+  }
+
+  /**
+   * Replace the current hierarchy with one built from a snapshot of the
+   * objects, bringing it up to date with the objects as they are now.
+   */
+
+  private void install(final BoundingVolumeNodesD built)
+  {
+    final int snapshot_top = built.itemCapacity();
+    built.ensureItems(this.item_values.length);
+
+    for (int slot = 0; slot < snapshot_top; ++slot) {
+      if (built.leafOf(slot) != NONE
+        && built.generationOf(slot) != this.item_generation[slot]) {
+        built.unlink(slot);
+      }
+    }
+
+    built.refitAll(this.item_bounds);
+    this.nodes = built;
+    this.built_quality = built.quality();
+
+    final IntIterator iter = this.item_slots.values().iterator();
+    while (iter.hasNext()) {
+      final int slot = iter.nextInt();
+      if (built.leafOf(slot) == NONE) {
+        this.insertSlot(slot);
+      }
+    }
+  }
+
+  private <C> TreeVisitResult iterateOctantsNode(
+    final C context,
+    final OctTreeOctantIterationDType<T, C> f,
+    final int node,
+    final long depth)
+  {
+    switch (f.apply(context, new Octant(node), depth)) {
+      case RESULT_CONTINUE: {
+        final BoundingVolumeNodesD n = this.nodes;
+        if (!n.isLeaf(node)) {
+          final int left = n.left(node);
+          for (int child = left; child <= left + 1; ++child) {
+            if (n.count(child) > 0) {
+              final TreeVisitResult r = this.iterateOctantsNode(
+                context, f, child, Math.addExact(depth, 1L));
+              if (r == TreeVisitResult.RESULT_TERMINATE) {
+                return TreeVisitResult.RESULT_TERMINATE;
+              }
+            }
+          }
+        }
+        return TreeVisitResult.RESULT_CONTINUE;
+      }
+      case RESULT_TERMINATE:
+        return TreeVisitResult.RESULT_TERMINATE;
+    }
+
+    throw new UnreachableCodeException();
+  }
+
+  /**
+   * The stack of nodes awaiting a visit by a first-hit raycast, along with
+   * the distance at which the ray enters each node.
+   */
+
+  private static final class RaycastStack
+  {
+    private int[] nodes;
+    private double[] distances;
+    private int top;
+
+    RaycastStack()
+    {
+      this.nodes = new int[INITIAL_STACK];
+      this.distances = new double[INITIAL_STACK];
+      this.top = 0;
+    }
+
+    /**
+     * Push a node, unless the ray enters it no nearer than the nearest hit
+     * so far.
+     */
+
+    void push(
+      final int node,
+      final double distance,
+      final double best)
+    {
+      if (distance < best) {
+        if (this.top == this.nodes.length) {
+          this.nodes = Arrays.copyOf(this.nodes, this.top * 2);
+          this.distances = Arrays.copyOf(this.distances, this.top * 2);
+        }
+        this.nodes[this.top] = node;
+        this.distances[this.top] = distance;
+        ++this.top;
+      }
+    }
+  }
+
+  /**
+   * A view of a single node, created when nodes are exposed through
+   * {@link #iterateOctants(Object, OctTreeOctantIterationDType)}.
+   */
+
+  private final class Octant implements OctTreeOctantDType<T>
+  {
+    private final int node;
+
+    Octant(final int in_node)
+    {
+      this.node = in_node;
+    }
+
+    @Override
+    public Map<T, VolumeD> objects()
+    {
+      final BoundingVolumeHierarchyD<T> tree = BoundingVolumeHierarchyD.this;
+      final BoundingVolumeNodesD n = tree.nodes;
+      final Reference2ReferenceOpenHashMap<T, VolumeD> objects =
+        new Reference2ReferenceOpenHashMap<>();
+      if (n.isLeaf(this.node)) {
+        for (int slot = n.head(this.node); slot != NONE; slot = n.next(slot)) {
+          objects.put(
+            tree.itemValue(slot),
+            VolumeBoundsD.unpack(tree.item_bounds, slot * BOUNDS_STRIDE));
+        }
+      }
+      return Reference2ReferenceMaps.unmodifiable(objects);
+    }
+
+    @Override
+    public VolumeD volume()
+    {
+      final BoundingVolumeHierarchyD<T> tree = BoundingVolumeHierarchyD.this;
+      if (tree.nodes.count(this.node) == 0) {
+        return tree.config.volume();
+      }
+      return VolumeBoundsD.unpack(tree.nodes.bounds(), this.node * BOUNDS_STRIDE);
+    }
+  }
+}
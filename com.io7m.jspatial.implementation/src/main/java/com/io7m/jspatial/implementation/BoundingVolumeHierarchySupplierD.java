@@ -0,0 +1,66 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jspatial.implementation;
+
+import com.io7m.jspatial.api.octtrees.OctTreeConfigurationD;
+import com.io7m.jspatial.api.octtrees.OctTreeDType;
+import com.io7m.jspatial.api.octtrees.OctTreeSupplierDType;
+import org.osgi.service.component.annotations.Component;
+
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * An implementation of the {@link OctTreeSupplierDType} interface that
+ * supplies {@link BoundingVolumeHierarchyD} trees.
+ */
+
+@Component
+public final class BoundingVolumeHierarchySupplierD implements OctTreeSupplierDType
+{
+  private final Executor executor;
+
+  /**
+   * Construct a new supplier. Rebuilds run on the common fork/join pool.
+   */
+
+  public BoundingVolumeHierarchySupplierD()
+  {
+    this(ForkJoinPool.commonPool());
+  }
+
+  /**
+   * Construct a new supplier.
+   *
+   * @param in_executor The executor used to rebuild hierarchies
+   *
+   * @see BoundingVolumeHierarchyD#createWithExecutor(OctTreeConfigurationD, Executor)
+   */
+
+  public BoundingVolumeHierarchySupplierD(
+    final Executor in_executor)
+  {
+    this.executor = Objects.requireNonNull(in_executor, "Executor");
+  }
+
+  @Override
+  public <A> OctTreeDType<A> create(final OctTreeConfigurationD config)
+  {
+    return BoundingVolumeHierarchyD.createWithExecutor(config, this.executor);
+  }
+}
@@ -0,0 +1,783 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jspatial.implementation;
+
+import java.util.Arrays;
+
+/**
+ * <p>The nodes of a bounding volume hierarchy, as used by
+ * {@link BoundingVolumeHierarchyD}.</p>
+ *
+ * <p>Nodes are identified by {@code int} indices, with the root at index
+ * zero. The two children of an internal node are allocated as a
+ * consecutive pair, always after their parent, so visiting nodes in
+ * descending order visits every child before its parent. Each leaf holds a
+ * doubly linked list of item slots. The bounds of the items themselves are
+ * owned by the hierarchy and passed in whenever nodes are refitted, so that
+ * a set of nodes can be built from a snapshot of the items on another
+ * thread and then fitted to the current items.</p>
+ *
+ * <p>The nodes also track their surface area heuristic (SAH) cost: the
+ * expected cost of a query, given as the sum of the surface areas of the
+ * internal nodes weighted by the cost of a traversal step, and of the leaves
+ * weighted by the cost of testing their items. Dividing by the surface area
+ * of the root yields the quality of the hierarchy; lower is better.</p>
+ */
+
+final class BoundingVolumeNodesD
+{
+  static final int NONE = -1;
+
+  private static final int BOUNDS_STRIDE = VolumeBoundsD.STRIDE;
+  private static final int BIN_COUNT = 16;
+  private static final int LEAF_MINIMUM = 2;
+  private static final int LEAF_MAXIMUM = 8;
+  private static final double TRAVERSAL_COST = 1.0;
+  private static final double INTERSECTION_COST = 1.0;
+
+  /*
+   * Per-node storage. Bounds are stored as (min x, max x, min y, max y,
+   * min z, max z), and the bounds of a node with no items are empty
+   * (infinite minimums and negative infinite maximums). A leaf has a left
+   * child of NONE.
+   */
+
+  private double[] node_bounds;
+  private int[] node_left;
+  private int[] node_parent;
+  private int[] node_head;
+  private int[] node_count;
+  private int node_top;
+
+  /*
+   * Per-slot storage. A slot that is not held by any leaf has a leaf of
+   * NONE. The generations are those of the slots at the time that the
+   * nodes were built.
+   */
+
+  private int[] item_leaf;
+  private int[] item_next;
+  private int[] item_prev;
+  private int[] item_generation;
+
+  private double cost;
+
+  private BoundingVolumeNodesD(
+    final int node_capacity,
+    final int item_capacity)
+  {
+    this.node_bounds = new double[node_capacity * BOUNDS_STRIDE];
+    this.node_left = new int[node_capacity];
+    this.node_parent = new int[node_capacity];
+    this.node_head = new int[node_capacity];
+    this.node_count = new int[node_capacity];
+    this.node_top = 0;
+
+    this.item_leaf = new int[item_capacity];
+    this.item_next = new int[item_capacity];
+    this.item_prev = new int[item_capacity];
+    this.item_generation = new int[item_capacity];
+    Arrays.fill(this.item_leaf, NONE);
+
+    this.cost = 0.0;
+    this.nodeAllocate(NONE);
+  }
+
+  /**
+   * @return A hierarchy consisting of a single empty leaf
+   */
+
+  static BoundingVolumeNodesD empty()
+  {
+    return new BoundingVolumeNodesD(1, 0);
+  }
+
+  /**
+   * Build a hierarchy over the given item slots by top-down partitioning
+   * with the binned surface area heuristic. At each node, the centres of
+   * the items are sorted into bins along each axis, and the items are split
+   * at the bin boundary with the lowest estimated cost. A node becomes a
+   * leaf if splitting it would cost more than testing its items, unless it
+   * holds more than a fixed maximum number of items.
+   *
+   * @param slots      The occupied item slots; reordered by the build
+   * @param count      The number of occupied slots
+   * @param bounds     The bounds of all item slots
+   * @param generation The generations of all item slots
+   *
+   * @return A new hierarchy
+   */
+
+  static BoundingVolumeNodesD build(
+    final int[] slots,
+    final int count,
+    final double[] bounds,
+    final int[] generation)
+  {
+    final BoundingVolumeNodesD nodes =
+      new BoundingVolumeNodesD(Math.max(1, 2 * count - 1), generation.length);
+    System.arraycopy(generation, 0, nodes.item_generation, 0, generation.length);
+
+    /*
+     * Partition iteratively, as a poorly distributed set of items can
+     * produce a hierarchy far deeper than the call stack allows.
+     */
+
+    final Partition partition = new Partition(slots, count, bounds);
+    int[] work = new int[3 * 64];
+    int work_top = 0;
+    if (count > 0) {
+      work[0] = 0;
+      work[1] = 0;
+      work[2] = count;
+      work_top = 3;
+    }
+
+    while (work_top > 0) {
+      work_top -= 3;
+      final int node = work[work_top];
+      final int start = work[work_top + 1];
+      final int end = work[work_top + 2];
+
+      final int split = partition.split(start, end);
+      if (split == NONE) {
+        for (int index = start; index < end; ++index) {
+          nodes.link(slots[index], node);
+        }
+        continue;
+      }
+
+      final int left = nodes.nodeAllocatePair(node);
+      if (work_top + 6 > work.length) {
+        work = Arrays.copyOf(work, work.length * 2);
+      }
+      work[work_top] = left;
+      work[work_top + 1] = start;
+      work[work_top + 2] = split;
+      work[work_top + 3] = left + 1;
+      work[work_top + 4] = split;
+      work[work_top + 5] = end;
+      work_top += 6;
+    }
+
+    nodes.refitAll(bounds);
+    return nodes;
+  }
+
+  /**
+   * Make room for at least the given number of item slots.
+   *
+   * @param capacity The number of slots
+   */
+
+  void ensureItems(final int capacity)
+  {
+    final int old = this.item_leaf.length;
+    if (capacity > old) {
+      this.item_leaf = Arrays.copyOf(this.item_leaf, capacity);
+      this.item_next = Arrays.copyOf(this.item_next, capacity);
+      this.item_prev = Arrays.copyOf(this.item_prev, capacity);
+      this.item_generation = Arrays.copyOf(this.item_generation, capacity);
+      Arrays.fill(this.item_leaf, old, capacity, NONE);
+    }
+  }
+
+  /**
+   * @return The bounds of all nodes
+   */
+
+  double[] bounds()
+  {
+    return this.node_bounds;
+  }
+
+  /**
+   * @param node The node
+   *
+   * @return The number of items held by the node and its descendants
+   */
+
+  int count(final int node)
+  {
+    return this.node_count[node];
+  }
+
+  /**
+   * @param node An internal node
+   *
+   * @return The left child of the node; the right child follows it
+   */
+
+  int left(final int node)
+  {
+    return this.node_left[node];
+  }
+
+  /**
+   * @param node A leaf
+   *
+   * @return The first item slot held by the leaf, or {@link #NONE}
+   */
+
+  int head(final int node)
+  {
+    return this.node_head[node];
+  }
+
+  /**
+   * @param slot An item slot held by a leaf
+   *
+   * @return The next item slot held by the same leaf, or {@link #NONE}
+   */
+
+  int next(final int slot)
+  {
+    return this.item_next[slot];
+  }
+
+  /**
+   * @param slot An item slot
+   *
+   * @return The leaf that holds the slot, or {@link #NONE}
+   */
+
+  int leafOf(final int slot)
+  {
+    return this.item_leaf[slot];
+  }
+
+  /**
+   * @param slot An item slot
+   *
+   * @return The generation of the slot when the hierarchy was built
+   */
+
+  int generationOf(final int slot)
+  {
+    return this.item_generation[slot];
+  }
+
+  /**
+   * @return The number of item slots for which there is room
+   */
+
+  int itemCapacity()
+  {
+    return this.item_leaf.length;
+  }
+
+  /**
+   * @param node The node
+   *
+   * @return {@code true} iff the node is a leaf
+   */
+
+  boolean isLeaf(final int node)
+  {
+    return this.node_left[node] == NONE;
+  }
+
+  /**
+   * Add an item slot to a leaf, without refitting the leaf.
+   *
+   * @param slot The item slot
+   * @param leaf The leaf
+   */
+
+  void link(
+    final int slot,
+    final int leaf)
+  {
+    final int head = this.node_head[leaf];
+    this.item_leaf[slot] = leaf;
+    this.item_prev[slot] = NONE;
+    this.item_next[slot] = head;
+    if (head != NONE) {
+      this.item_prev[head] = slot;
+    }
+    this.node_head[leaf] = slot;
+  }
+
+  /**
+   * Remove an item slot from the leaf that holds it, without refitting the
+   * leaf.
+   *
+   * @param slot The item slot
+   *
+   * @return The leaf that held the slot
+   */
+
+  int unlink(final int slot)
+  {
+    final int leaf = this.item_leaf[slot];
+    final int prev = this.item_prev[slot];
+    final int next = this.item_next[slot];
+    if (prev != NONE) {
+      this.item_next[prev] = next;
+    } else {
+      this.node_head[leaf] = next;
+    }
+    if (next != NONE) {
+      this.item_prev[next] = prev;
+    }
+    this.item_leaf[slot] = NONE;
+    return leaf;
+  }
+
+  /**
+   * Choose the leaf into which to insert an item, by descending from the
+   * root into whichever child would have its surface area increased the
+   * least.
+   *
+   * @param b The array
+   * @param o The offset of the item bounds within {@code b}
+   *
+   * @return A leaf
+   */
+
+  int chooseLeaf(
+    final double[] b,
+    final int o)
+  {
+    int node = 0;
+    while (!this.isLeaf(node)) {
+      final int left = this.node_left[node];
+      final double cost_left = this.enlargement(left, b, o);
+      final double cost_right = this.enlargement(left + 1, b, o);
+      if (cost_left < cost_right) {
+        node = left;
+      } else if (cost_right < cost_left) {
+        node = left + 1;
+      } else {
+        node = this.node_count[left] <= this.node_count[left + 1] ? left : left + 1;
+      }
+    }
+    return node;
+  }
+
+  /**
+   * Recalculate the bounds, item counts, and cost of a node and all of its
+   * ancestors.
+   *
+   * @param start       The node
+   * @param item_bounds The bounds of all item slots
+   */
+
+  void refit(
+    final int start,
+    final double[] item_bounds)
+  {
+    for (int node = start; node != NONE; node = this.node_parent[node]) {
+      this.cost -= this.contribution(node);
+      this.fit(node, item_bounds);
+      this.cost += this.contribution(node);
+    }
+  }
+
+  /**
+   * Recalculate the bounds, item counts, and cost of every node.
+   *
+   * @param item_bounds The bounds of all item slots
+   */
+
+  void refitAll(final double[] item_bounds)
+  {
+    double total = 0.0;
+    for (int node = this.node_top - 1; node >= 0; --node) {
+      this.fit(node, item_bounds);
+      total += this.contribution(node);
+    }
+    this.cost = total;
+  }
+
+  /**
+   * @return The SAH cost of the hierarchy relative to the surface area of
+   * its root, or zero if the root has no area
+   */
+
+  double quality()
+  {
+    final double root_area = surfaceArea(this.node_bounds, 0);
+    if (this.node_count[0] == 0 || root_area <= 0.0) {
+      return 0.0;
+    }
+    return this.cost / root_area;
+  }
+
+  private static double surfaceArea(
+    final double[] b,
+    final int o)
+  {
+    final double dx = b[o + 1] - b[o];
+    final double dy = b[o + 3] - b[o + 2];
+    final double dz = b[o + 5] - b[o + 4];
+    return 2.0 * (dx * dy + dy * dz + dz * dx);
+  }
+
+  private double enlargement(
+    final int node,
+    final double[] b,
+    final int o)
+  {
+    if (this.node_count[node] == 0) {
+      return surfaceArea(b, o);
+    }
+
+    final double[] nb = this.node_bounds;
+    final int n = node * BOUNDS_STRIDE;
+    final double dx = Math.max(nb[n + 1], b[o + 1]) - Math.min(nb[n], b[o]);
+    final double dy = Math.max(nb[n + 3], b[o + 3]) - Math.min(nb[n + 2], b[o + 2]);
+    final double dz = Math.max(nb[n + 5], b[o + 5]) - Math.min(nb[n + 4], b[o + 4]);
+    return 2.0 * (dx * dy + dy * dz + dz * dx) - surfaceArea(nb, n);
+  }
+
+  private double contribution(final int node)
+  {
+    final int count = this.node_count[node];
+    if (count == 0) {
+      return 0.0;
+    }
+
+    final double area = surfaceArea(this.node_bounds, node * BOUNDS_STRIDE);
+    if (this.isLeaf(node)) {
+      return area * (double) count * INTERSECTION_COST;
+    }
+    return area * TRAVERSAL_COST;
+  }
+
+  private void fit(
+    final int node,
+    final double[] item_bounds)
+  {
+    double x0 = Double.POSITIVE_INFINITY;
+    double x1 = Double.NEGATIVE_INFINITY;
+    double y0 = Double.POSITIVE_INFINITY;
+    double y1 = Double.NEGATIVE_INFINITY;
+    double z0 = Double.POSITIVE_INFINITY;
+    double z1 = Double.NEGATIVE_INFINITY;
+    int count = 0;
+
+    final int left = this.node_left[node];
+    if (left == NONE) {
+      for (int slot = this.node_head[node]; slot != NONE; slot = this.item_next[slot]) {
+        final int b = slot * BOUNDS_STRIDE;
+        x0 = Math.min(x0, item_bounds[b]);
+        x1 = Math.max(x1, item_bounds[b + 1]);
+        y0 = Math.min(y0, item_bounds[b + 2]);
+        y1 = Math.max(y1, item_bounds[b + 3]);
+        z0 = Math.min(z0, item_bounds[b + 4]);
+        z1 = Math.max(z1, item_bounds[b + 5]);
+        ++count;
+      }
+    } else {
+      final double[] nb = this.node_bounds;
+      for (int child = left; child <= left + 1; ++child) {
+        final int b = child * BOUNDS_STRIDE;
+        x0 = Math.min(x0, nb[b]);
+        x1 = Math.max(x1, nb[b + 1]);
+        y0 = Math.min(y0, nb[b + 2]);
+        y1 = Math.max(y1, nb[b + 3]);
+        z0 = Math.min(z0, nb[b + 4]);
+        z1 = Math.max(z1, nb[b + 5]);
+        count += this.node_count[child];
+      }
+    }
+
+    final int o = node * BOUNDS_STRIDE;
+    this.node_bounds[o] = x0;
+    this.node_bounds[o + 1] = x1;
+    this.node_bounds[o + 2] = y0;
+    this.node_bounds[o + 3] = y1;
+    this.node_bounds[o + 4] = z0;
+    this.node_bounds[o + 5] = z1;
+    this.node_count[node] = count;
+  }
+
+  private int nodeAllocate(final int parent)
+  {
+    final int node = this.node_top;
+    if (node == this.node_left.length) {
+      final int capacity = node * 2;
+      this.node_bounds = Arrays.copyOf(this.node_bounds, capacity * BOUNDS_STRIDE);
+      this.node_left = Arrays.copyOf(this.node_left, capacity);
+      this.node_parent = Arrays.copyOf(this.node_parent, capacity);
+      this.node_head = Arrays.copyOf(this.node_head, capacity);
+      this.node_count = Arrays.copyOf(this.node_count, capacity);
+    }
+
+    this.node_top = node + 1;
+    this.node_left[node] = NONE;
+    this.node_parent[node] = parent;
+    this.node_head[node] = NONE;
+    this.node_count[node] = 0;
+    final int o = node * BOUNDS_STRIDE;
+    for (int axis = 0; axis < BOUNDS_STRIDE; axis += 2) {
+      this.node_bounds[o + axis] = Double.POSITIVE_INFINITY;
+      this.node_bounds[o + axis + 1] = Double.NEGATIVE_INFINITY;
+    }
+    return node;
+  }
+
+  private int nodeAllocatePair(final int parent)
+  {
+    final int left = this.nodeAllocate(parent);
+    this.nodeAllocate(parent);
+    this.node_left[parent] = left;
+    return left;
+  }
+
+  /**
+   * The scratch space used to choose the split of each node during a
+   * build. The bounds of the items are copied into a single array in the
+   * same order as the slots, and are reordered along with the slots, so
+   * that each pass over a range of items reads memory sequentially.
+   */
+
+  private static final class Partition
+  {
+    private final int[] slots;
+    private final double[] bounds;
+    private final double[] bin_bounds;
+    private final int[] bin_counts;
+    private final double[] right_areas;
+    private final int[] right_counts;
+    private final double[] centre_min;
+    private final double[] centre_max;
+    private double best_cost;
+    private int best_axis;
+    private int best_bin;
+
+    Partition(
+      final int[] in_slots,
+      final int count,
+      final double[] in_bounds)
+    {
+      this.slots = in_slots;
+      this.bounds = new double[count * BOUNDS_STRIDE];
+      for (int index = 0; index < count; ++index) {
+        System.arraycopy(
+          in_bounds,
+          in_slots[index] * BOUNDS_STRIDE,
+          this.bounds,
+          index * BOUNDS_STRIDE,
+          BOUNDS_STRIDE);
+      }
+      this.bin_bounds = new double[BIN_COUNT * BOUNDS_STRIDE];
+      this.bin_counts = new int[BIN_COUNT];
+      this.right_areas = new double[BIN_COUNT];
+      this.right_counts = new int[BIN_COUNT];
+      this.centre_min = new double[3];
+      this.centre_max = new double[3];
+      this.best_cost = Double.POSITIVE_INFINITY;
+      this.best_axis = NONE;
+      this.best_bin = NONE;
+    }
+
+    private double centre(
+      final int index,
+      final int axis)
+    {
+      final int b = index * BOUNDS_STRIDE + axis * 2;
+      return this.bounds[b] + this.bounds[b + 1];
+    }
+
+    private static int bin(
+      final double centre,
+      final double minimum,
+      final double scale)
+    {
+      return Math.min(BIN_COUNT - 1, (int) ((centre - minimum) * scale));
+    }
+
+    /**
+     * Choose a split for the items in the given range, and partition the
+     * range accordingly.
+     *
+     * @return The start of the upper half of the range, or {@link #NONE}
+     * if the range should become a leaf
+     */
+
+    int split(
+      final int start,
+      final int end)
+    {
+      final int count = end - start;
+      if (count <= LEAF_MINIMUM) {
+        return NONE;
+      }
+
+      final double[] node = new double[BOUNDS_STRIDE];
+      resetBounds(node);
+      Arrays.fill(this.centre_min, Double.POSITIVE_INFINITY);
+      Arrays.fill(this.centre_max, Double.NEGATIVE_INFINITY);
+
+      for (int index = start; index < end; ++index) {
+        accumulate(node, 0, this.bounds, index * BOUNDS_STRIDE);
+        for (int axis = 0; axis < 3; ++axis) {
+          final double c = this.centre(index, axis);
+          this.centre_min[axis] = Math.min(this.centre_min[axis], c);
+          this.centre_max[axis] = Math.max(this.centre_max[axis], c);
+        }
+      }
+
+      final double node_area = Math.max(surfaceArea(node, 0), Double.MIN_NORMAL);
+      this.best_cost = Double.POSITIVE_INFINITY;
+      this.best_axis = NONE;
+      this.best_bin = NONE;
+      for (int axis = 0; axis < 3; ++axis) {
+        final double extent = this.centre_max[axis] - this.centre_min[axis];
+        if (extent > 0.0) {
+          this.binItems(start, end, axis, (double) BIN_COUNT / extent);
+          this.evaluateSplits(axis, node_area);
+        }
+      }
+
+      if (this.best_axis == NONE) {
+        return count <= LEAF_MAXIMUM ? NONE : start + count / 2;
+      }
+      if (this.best_cost >= (double) count * INTERSECTION_COST && count <= LEAF_MAXIMUM) {
+        return NONE;
+      }
+      return this.partition(start, end);
+    }
+
+    /**
+     * Evaluate the cost of splitting at each bin boundary on the given
+     * axis, by sweeping from the right to accumulate the bounds of every
+     * upper half and then from the left to evaluate each split.
+     */
+
+    private void evaluateSplits(
+      final int axis,
+      final double node_area)
+    {
+      final double[] sweep = new double[BOUNDS_STRIDE];
+      resetBounds(sweep);
+      int right_count = 0;
+      for (int bin = BIN_COUNT - 1; bin > 0; --bin) {
+        accumulate(sweep, 0, this.bin_bounds, bin * BOUNDS_STRIDE);
+        right_count += this.bin_counts[bin];
+        this.right_counts[bin] = right_count;
+        this.right_areas[bin] = right_count > 0 ? surfaceArea(sweep, 0) : 0.0;
+      }
+
+      resetBounds(sweep);
+      int left_count = 0;
+      for (int bin = 0; bin < BIN_COUNT - 1; ++bin) {
+        accumulate(sweep, 0, this.bin_bounds, bin * BOUNDS_STRIDE);
+        left_count += this.bin_counts[bin];
+        final int upper_count = this.right_counts[bin + 1];
+        if (left_count > 0 && upper_count > 0) {
+          final double split_cost = TRAVERSAL_COST
+            + INTERSECTION_COST
+            * (surfaceArea(sweep, 0) * (double) left_count
+            + this.right_areas[bin + 1] * (double) upper_count)
+            / node_area;
+          if (split_cost < this.best_cost) {
+            this.best_cost = split_cost;
+            this.best_axis = axis;
+            this.best_bin = bin;
+          }
+        }
+      }
+    }
+
+    /**
+     * Partition the range so that the items in the bins up to and including
+     * the best bin come first.
+     *
+     * @return The start of the upper half of the range
+     */
+
+    private int partition(
+      final int start,
+      final int end)
+    {
+      final int axis = this.best_axis;
+      final double minimum = this.centre_min[axis];
+      final double scale = (double) BIN_COUNT / (this.centre_max[axis] - minimum);
+      int lower = start;
+      int upper = end - 1;
+      while (lower <= upper) {
+        if (bin(this.centre(lower, axis), minimum, scale) <= this.best_bin) {
+          ++lower;
+        } else {
+          this.swap(lower, upper);
+          --upper;
+        }
+      }
+      return lower;
+    }
+
+    private void swap(
+      final int a,
+      final int b)
+    {
+      final int slot = this.slots[a];
+      this.slots[a] = this.slots[b];
+      this.slots[b] = slot;
+
+      final int ao = a * BOUNDS_STRIDE;
+      final int bo = b * BOUNDS_STRIDE;
+      for (int index = 0; index < BOUNDS_STRIDE; ++index) {
+        final double value = this.bounds[ao + index];
+        this.bounds[ao + index] = this.bounds[bo + index];
+        this.bounds[bo + index] = value;
+      }
+    }
+
+    private void binItems(
+      final int start,
+      final int end,
+      final int axis,
+      final double scale)
+    {
+      Arrays.fill(this.bin_counts, 0);
+      for (int index = 0; index < this.bin_bounds.length; index += 2) {
+        this.bin_bounds[index] = Double.POSITIVE_INFINITY;
+        this.bin_bounds[index + 1] = Double.NEGATIVE_INFINITY;
+      }
+
+      final double minimum = this.centre_min[axis];
+      for (int index = start; index < end; ++index) {
+        final int bin = bin(this.centre(index, axis), minimum, scale);
+        ++this.bin_counts[bin];
+        accumulate(this.bin_bounds, bin * BOUNDS_STRIDE, this.bounds, index * BOUNDS_STRIDE);
+      }
+    }
+
+    private static void resetBounds(final double[] b)
+    {
+      for (int index = 0; index < BOUNDS_STRIDE; index += 2) {
+        b[index] = Double.POSITIVE_INFINITY;
+        b[index + 1] = Double.NEGATIVE_INFINITY;
+      }
+    }
+
+    private static void accumulate(
+      final double[] out,
+      final int o,
+      final double[] b,
+      final int i)
+    {
+      for (int index = 0; index < BOUNDS_STRIDE; index += 2) {
+        out[o + index] = Math.min(out[o + index], b[i + index]);
+        out[o + index + 1] = Math.max(out[o + index + 1], b[i + index + 1]);
+      }
+    }
+  }
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.jspatial.implementation;
+
+import com.io7m.junreachable.UnreachableCodeException;
+
+import java.util.function.IntPredicate;
+
+/**
+ * Functions for building trees from a complete set of objects at once.
+ * Objects are identified by integer indices supplied by the tree being
+ * built, and are expected to be in Morton order so that objects that are
+ * held by the same node are close together.
+ */
+
+final class BulkLoader
+{
+  private BulkLoader()
+  {
+    throw new UnreachableCodeException();
+  }
+
+  /**
+   * The nodes of a tree under construction.
+   *
+   * @param <N> The type of nodes
+   */
+
+  interface NodesType<N>
+  {
+    /**
+     * Split {@code node} if it cannot hold {@code count} objects as a leaf
+     * and is permitted to split.
+     *
+     * @param node  The node, which must be an empty leaf
+     * @param count The number of objects that fit within the node
+     *
+     * @return {@code true} if the node was split
+     */
+
+    boolean splitFor(
+      N node,
+      int count);
+
+    /**
+     * @param node   The node
+     * @param source The object
+     *
+     * @return The index of the child of {@code node} that can contain the
+     * object, or {@code -1} if the object straddles the children
+     */
+
+    int childIndexContaining(
+      N node,
+      int source);
+
+    /**
+     * @param node  The node
+     * @param index The child index
+     *
+     * @return The child of {@code node} at {@code index}
+     */
+
+    N child(
+      N node,
+      int index);
+
+    /**
+     * Make {@code node} hold the given object directly.
+     *
+     * @param node   The node
+     * @param source The object
+     */
+
+    void hold(
+      N node,
+      int source);
+  }
+
+  /**
+   * Remove the objects that do not satisfy {@code keep} from the start of
+   * {@code sources}, preserving the order of the remaining objects.
+   *
+   * @param sources The objects
+   * @param keep    The objects to keep
+   *
+   * @return The number of objects kept
+   */
+
+  static int retain(
+    final int[] sources,
+    final IntPredicate keep)
+  {
+    int count = 0;
+    for (final int source : sources) {
+      if (keep.test(source)) {
+        sources[count] = source;
+        ++count;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Build the subtree rooted at {@code node} from the first {@code count}
+   * objects in {@code sources}, all of which must fit within the node.
+   *
+   * @param nodes    The tree nodes
+   * @param children The number of children of each split node
+   * @param node     The root of the subtree, which must be an empty leaf
+   * @param sources  The objects, in Morton order
+   * @param count    The number of objects
+   * @param <N>      The type of nodes
+   */
+
+  static <N> void load(
+    final NodesType<N> nodes,
+    final int children,
+    final N node,
+    final int[] sources,
+    final int count)
+  {
+    final int[] scratch = new int[count];
+    final int[] partitions = new int[count];
+    loadRange(nodes, children, node, sources, scratch, partitions, 0, count);
+  }
+
+  private static <N> void loadRange(
+    final NodesType<N> nodes,
+    final int children,
+    final N node,
+    final int[] sources,
+    final int[] scratch,
+    final int[] partitions,
+    final int start,
+    final int end)
+  {
+    if (!nodes.splitFor(node, end - start)) {
+      for (int index = start; index < end; ++index) {
+        nodes.hold(node, sources[index]);
+      }
+      return;
+    }
+
+    /*
+     * Partition the objects into those held by this node, followed by
+     * those held by each child in order. The partitioning is stable, so each
+     * child receives its objects in Morton order. After the final pass,
+     * {@code offsets[k]} is the start of partition {@code k}.
+     */
+
+    final int[] offsets = new int[children + 2];
+    for (int index = start; index < end; ++index) {
+      final int partition = nodes.childIndexContaining(node, sources[index]) + 1;
+      partitions[index] = partition;
+      ++offsets[partition + 1];
+    }
+    for (int index = 2; index < offsets.length; ++index) {
+      offsets[index] += offsets[index - 1];
+    }
+    for (int index = start; index < end; ++index) {
+      final int partition = partitions[index];
+      scratch[start + offsets[partition]] = sources[index];
+      ++offsets[partition];
+    }
+    System.arraycopy(scratch, start, sources, start, end - start);
+
+    for (int index = start; index < start + offsets[0]; ++index) {
+      nodes.hold(node, sources[index]);
+    }
+    for (int index = 0; index < children; ++index) {
+      loadRange(
+        nodes,
+        children,
+        nodes.child(node, index),
+        sources,
+        scratch,
+        partitions,
+        start + offsets[index],
+        start + offsets[index + 1]);
+    }
+  }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jspatial.implementation;
+
+import com.io7m.junreachable.UnreachableCodeException;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Functions for reading and writing fixed-size values through a buffer
+ * placed in front of a blocking channel.
+ */
+
+final class ChannelBuffers
+{
+  /**
+   * The size of buffers, in bytes.
+   */
+
+  static final int SIZE = 65536;
+
+  private ChannelBuffers()
+  {
+    throw new UnreachableCodeException();
+  }
+
+  /**
+   * @return An empty buffer ready to be filled with values to write
+   */
+
+  static ByteBuffer forWriting()
+  {
+    return ByteBuffer.allocateDirect(SIZE);
+  }
+
+  /**
+   * @return An empty buffer ready to be filled by {@link #require}
+   */
+
+  static ByteBuffer forReading()
+  {
+    final ByteBuffer buffer = ByteBuffer.allocateDirect(SIZE);
+    buffer.limit(0);
+    return buffer;
+  }
+
+  /**
+   * Ensure that {@code buffer} has room for {@code size} more bytes,
+   * writing the contents of the buffer to {@code channel} if necessary.
+   *
+   * @param channel The channel
+   * @param buffer  The buffer
+   * @param size    The number of bytes required, at most {@link #SIZE}
+   *
+   * @throws IOException On I/O errors
+   */
+
+  static void reserve(
+    final WritableByteChannel channel,
+    final ByteBuffer buffer,
+    final int size)
+    throws IOException
+  {
+    if (buffer.remaining() < size) {
+      flush(channel, buffer);
+    }
+  }
+
+  /**
+   * Write the contents of {@code buffer} to {@code channel}, and clear the
+   * buffer.
+   *
+   * @param channel The channel
+   * @param buffer  The buffer
+   *
+   * @throws IOException On I/O errors
+   */
+
+  static void flush(
+    final WritableByteChannel channel,
+    final ByteBuffer buffer)
+    throws IOException
+  {
+    buffer.flip();
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+    buffer.clear();
+  }
+
+  /**
+   * Ensure that {@code buffer} holds at least {@code size} unread bytes,
+   * reading more bytes from {@code channel} if necessary.
+   *
+   * @param channel The channel
+   * @param buffer  The buffer
+   * @param size    The number of bytes required, at most {@link #SIZE}
+   *
+   * @throws IOException On I/O errors, or if the channel ends first
+   */
+
+  static void require(
+    final ReadableByteChannel channel,
+    final ByteBuffer buffer,
+    final int size)
+    throws IOException
+  {
+    if (buffer.remaining() >= size) {
+      return;
+    }
+
+    buffer.compact();
+    while (buffer.position() < size) {
+      if (channel.read(buffer) < 0) {
+        throw new EOFException("Unexpected end of channel");
+      }
+    }
+    buffer.flip();
+  }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.jspatial.implementation;
+
+import java.util.Arrays;
+
+/**
+ * A binary min-heap of entries ordered by distance, used to drive
+ * best-first searches. Each entry carries either an object or an integer
+ * (such as a node index), so that array-backed trees can use the heap
+ * without allocating an object per entry.
+ */
+
+final class DistanceHeap
+{
+  private static final int INITIAL_CAPACITY = 64;
+
+  private double[] keys;
+  private Object[] objects;
+  private int[] ints;
+  private int size;
+
+  DistanceHeap()
+  {
+    this.keys = new double[INITIAL_CAPACITY];
+    this.objects = new Object[INITIAL_CAPACITY];
+    this.ints = new int[INITIAL_CAPACITY];
+    this.size = 0;
+  }
+
+  /**
+   * @return {@code true} iff the heap is empty
+   */
+
+  boolean isEmpty()
+  {
+    return this.size == 0;
+  }
+
+  /**
+   * Add an entry to the heap.
+   *
+   * @param key    The distance
+   * @param object The object, if any
+   * @param value  The integer value, if any
+   */
+
+  void add(
+    final double key,
+    final Object object,
+    final int value)
+  {
+    if (this.size == this.keys.length) {
+      final int capacity = this.keys.length * 2;
+      this.keys = Arrays.copyOf(this.keys, capacity);
+      this.objects = Arrays.copyOf(this.objects, capacity);
+      this.ints = Arrays.copyOf(this.ints, capacity);
+    }
+
+    int index = this.size;
+    ++this.size;
+
+    while (index > 0) {
+      final int parent = (index - 1) >>> 1;
+      if (this.keys[parent] <= key) {
+        break;
+      }
+      this.move(parent, index);
+      index = parent;
+    }
+
+    this.keys[index] = key;
+    this.objects[index] = object;
+    this.ints[index] = value;
+  }
+
+  /**
+   * @return The distance of the nearest entry
+   */
+
+  double topKey()
+  {
+    return this.keys[0];
+  }
+
+  /**
+   * @return The object of the nearest entry
+   */
+
+  Object topObject()
+  {
+    return this.objects[0];
+  }
+
+  /**
+   * @return The integer value of the nearest entry
+   */
+
+  int topInt()
+  {
+    return this.ints[0];
+  }
+
+  /**
+   * Remove the nearest entry.
+   */
+
+  void removeTop()
+  {
+    final int last = this.size - 1;
+    this.size = last;
+
+    final double key = this.keys[last];
+    final Object object = this.objects[last];
+    final int value = this.ints[last];
+    this.objects[last] = null;
+
+    if (last == 0) {
+      return;
+    }
+
+    int index = 0;
+    while (true) {
+      int child = (index << 1) + 1;
+      if (child >= last) {
+        break;
+      }
+      if (child + 1 < last && this.keys[child + 1] < this.keys[child]) {
+        ++child;
+      }
+      if (key <= this.keys[child]) {
+        break;
+      }
+      this.move(child, index);
+      index = child;
+    }
+
+    this.keys[index] = key;
+    this.objects[index] = object;
+    this.ints[index] = value;
+  }
+
+  private void move(
+    final int source,
+    final int target)
+  {
+    this.keys[target] = this.keys[source];
+    this.objects[target] = this.objects[source];
+    this.ints[target] = this.ints[source];
+  }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.jspatial.implementation;
+
+/**
+ * <p>The storage for the objects held directly by a tree node.</p>
+ *
+ * <p>The bounds of object {@code i} are packed into {@code item_bounds} at
+ * offset {@code i * STRIDE}, where {@code STRIDE} is that of
+ * {@link AreaBoundsD} or {@link VolumeBoundsD} as appropriate, so that
+ * queries can test objects without touching the objects themselves. The
+ * arrays are allocated on the first insertion, as most nodes in a tree are
+ * empty.</p>
+ *
+ * @param <N> The precise type of nodes
+ */
+
+abstract class ItemNode<N extends ItemNode<N>>
+  implements ParallelQuery.NodeType<N>
+{
+  protected Object[] item_values;
+  protected double[] item_bounds;
+  protected int item_count;
+
+  @Override
+  public final int itemCount()
+  {
+    return this.item_count;
+  }
+
+  @Override
+  public final double[] itemBounds()
+  {
+    return this.item_bounds;
+  }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jspatial.implementation;
+
+/**
+ * <p>A kernel that tests a run of objects held by a single tree node
+ * against a query in one call.</p>
+ *
+ * <p>The objects are packed into an array of bounds in the layout used by
+ * the trees: areas occupy four consecutive elements (minimum x, maximum x,
+ * minimum y, maximum y), and volumes occupy six consecutive elements
+ * (minimum x, maximum x, minimum y, maximum y, minimum z, maximum z). Each
+ * function tests at most {@link #MAXIMUM_COUNT} objects, beginning with the
+ * object at {@code index}, and returns a mask in which bit {@code i} is set
+ * iff the object at {@code index + i} satisfies the test.</p>
+ *
+ * <p>Implementations are selected by {@link LeafKernelsD#current()}, and
+ * must produce exactly the same results as {@link LeafKernelsD#scalar()}.
+ * Implementations must be safe to use from multiple threads.</p>
+ */
+
+public interface LeafKernelDType
+{
+  /**
+   * The maximum number of objects that can be tested in a single call.
+   */
+
+  int MAXIMUM_COUNT = 64;
+
+  /**
+   * Test objects against a query area. Empty extents are treated as having
+   * a size of one, as with the overlap tests of the quadtrees.
+   *
+   * @param area   The query area, packed at offset 0
+   * @param bounds The packed areas of the objects
+   * @param index  The index of the first object
+   * @param count  The number of objects, in the range
+   *               {@code [0, MAXIMUM_COUNT]}
+   *
+   * @return A mask of the objects that overlap {@code area}
+   */
+
+  long overlappingAreas(
+    double[] area,
+    double[] bounds,
+    int index,
+    int count);
+
+  /**
+   * Test objects against a query volume. Empty extents are treated as
+   * having a size of one, as with the overlap tests of the octtrees.
+   *
+   * @param volume The query volume, packed at offset 0
+   * @param bounds The packed volumes of the objects
+   * @param index  The index of the first object
+   * @param count  The number of objects, in the range
+   *               {@code [0, MAXIMUM_COUNT]}
+   *
+   * @return A mask of the objects that overlap {@code volume}
+   */
+
+  long overlappingVolumes(
+    double[] volume,
+    double[] bounds,
+    int index,
+    int count);
+
+  /**
+   * Test objects against a ray, using the same slab test as
+   * {@link com.io7m.jspatial.api.Ray2DType#entryDistanceArea}.
+   *
+   * @param ox     The x component of the ray origin
+   * @param oy     The y component of the ray origin
+   * @param dix    The x component of the inverse ray direction
+   * @param diy    The y component of the inverse ray direction
+   * @param bounds The packed areas of the objects
+   * @param index  The index of the first object
+   * @param count  The number of objects, in the range
+   *               {@code [0, MAXIMUM_COUNT]}
+   *
+   * @return A mask of the objects intersected by the ray
+   */
+
+  long intersectingAreas(
+    double ox,
+    double oy,
+    double dix,
+    double diy,
+    double[] bounds,
+    int index,
+    int count);
+
+  /**
+   * Test objects against a ray, using the same slab test as
+   * {@link com.io7m.jspatial.api.Ray3DType#entryDistanceVolume}.
+   *
+   * @param ox     The x component of the ray origin
+   * @param oy     The y component of the ray origin
+   * @param oz     The z component of the ray origin
+   * @param dix    The x component of the inverse ray direction
+   * @param diy    The y component of the inverse ray direction
+   * @param diz    The z component of the inverse ray direction
+   * @param bounds The packed volumes of the objects
+   * @param index  The index of the first object
+   * @param count  The number of objects, in the range
+   *               {@code [0, MAXIMUM_COUNT]}
+   *
+   * @return A mask of the objects intersected by the ray
+   */
+
+  long intersectingVolumes(
+    double ox,
+    double oy,
+    double oz,
+    double dix,
+    double diy,
+    double diz,
+    double[] bounds,
+    int index,
+    int count);
+}
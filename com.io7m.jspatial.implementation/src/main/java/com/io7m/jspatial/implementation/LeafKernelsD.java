@@ -0,0 +1,189 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jspatial.implementation;
+
+import com.io7m.junreachable.UnreachableCodeException;
+
+import java.util.Iterator;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+
+/**
+ * <p>Access to the {@link LeafKernelDType} used by the {@code double}
+ * trees.</p>
+ *
+ * <p>The kernel is located once, using {@link ServiceLoader}. If no kernel
+ * is provided, or the provided kernel cannot be loaded (for example,
+ * because it depends on a JDK module that has not been added to the
+ * running VM), the trees use a scalar kernel that tests one object at a
+ * time.</p>
+ */
+
+public final class LeafKernelsD
+{
+  private static final LeafKernelDType SCALAR = new Scalar();
+  private static final LeafKernelDType CURRENT = load();
+
+  private LeafKernelsD()
+  {
+    throw new UnreachableCodeException();
+  }
+
+  private static LeafKernelDType load()
+  {
+    try {
+      final Iterator<LeafKernelDType> kernels =
+        ServiceLoader.load(LeafKernelDType.class, LeafKernelsD.class.getClassLoader())
+          .iterator();
+      if (kernels.hasNext()) {
+        return kernels.next();
+      }
+    } catch (final ServiceConfigurationError | LinkageError e) {
+      return SCALAR;
+    }
+    return SCALAR;
+  }
+
+  /**
+   * @return The kernel used by the trees
+   */
+
+  public static LeafKernelDType current()
+  {
+    return CURRENT;
+  }
+
+  /**
+   * @return The scalar kernel
+   */
+
+  public static LeafKernelDType scalar()
+  {
+    return SCALAR;
+  }
+
+  private static final class Scalar implements LeafKernelDType
+  {
+    private Scalar()
+    {
+
+    }
+
+    @Override
+    public long overlappingAreas(
+      final double[] area,
+      final double[] bounds,
+      final int index,
+      final int count)
+    {
+      long mask = 0L;
+      for (int item = 0; item < count; ++item) {
+        final int o = (index + item) * AreaBoundsD.STRIDE;
+        if (AreaBoundsD.overlaps(area, 0, bounds, o)) {
+          mask |= 1L << item;
+        }
+      }
+      return mask;
+    }
+
+    @Override
+    public long overlappingVolumes(
+      final double[] volume,
+      final double[] bounds,
+      final int index,
+      final int count)
+    {
+      long mask = 0L;
+      for (int item = 0; item < count; ++item) {
+        final int o = (index + item) * VolumeBoundsD.STRIDE;
+        if (VolumeBoundsD.overlaps(volume, 0, bounds, o)) {
+          mask |= 1L << item;
+        }
+      }
+      return mask;
+    }
+
+    @Override
+    public long intersectingAreas(
+      final double ox,
+      final double oy,
+      final double dix,
+      final double diy,
+      final double[] bounds,
+      final int index,
+      final int count)
+    {
+      long mask = 0L;
+      for (int item = 0; item < count; ++item) {
+        final int o = (index + item) * AreaBoundsD.STRIDE;
+
+        final double tx0 = (bounds[o] - ox) * dix;
+        final double tx1 = (bounds[o + 1] - ox) * dix;
+        double tmin = Math.min(tx0, tx1);
+        double tmax = Math.max(tx0, tx1);
+
+        final double ty0 = (bounds[o + 2] - oy) * diy;
+        final double ty1 = (bounds[o + 3] - oy) * diy;
+        tmin = Math.max(tmin, Math.min(ty0, ty1));
+        tmax = Math.min(tmax, Math.max(ty0, ty1));
+
+        if (tmax >= Math.max(0.0, tmin) && tmin < Double.POSITIVE_INFINITY) {
+          mask |= 1L << item;
+        }
+      }
+      return mask;
+    }
+
+    @Override
+    public long intersectingVolumes(
+      final double ox,
+      final double oy,
+      final double oz,
+      final double dix,
+      final double diy,
+      final double diz,
+      final double[] bounds,
+      final int index,
+      final int count)
+    {
+      long mask = 0L;
+      for (int item = 0; item < count; ++item) {
+        final int o = (index + item) * VolumeBoundsD.STRIDE;
+
+        final double tx0 = (bounds[o] - ox) * dix;
+        final double tx1 = (bounds[o + 1] - ox) * dix;
+        double tmin = Math.min(tx0, tx1);
+        double tmax = Math.max(tx0, tx1);
+
+        final double ty0 = (bounds[o + 2] - oy) * diy;
+        final double ty1 = (bounds[o + 3] - oy) * diy;
+        tmin = Math.max(tmin, Math.min(ty0, ty1));
+        tmax = Math.min(tmax, Math.max(ty0, ty1));
+
+        final double tz0 = (bounds[o + 4] - oz) * diz;
+        final double tz1 = (bounds[o + 5] - oz) * diz;
+        tmin = Math.max(tmin, Math.min(tz0, tz1));
+        tmax = Math.min(tmax, Math.max(tz0, tz1));
+
+        if (tmax >= Math.max(0.0, tmin) && tmin < Double.POSITIVE_INFINITY) {
+          mask |= 1L << item;
+        }
+      }
+      return mask;
+    }
+  }
+}
@@ -0,0 +1,375 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.jspatial.implementation;
+
+import java.util.Arrays;
+
+/**
+ * <p>The storage of a linear tree: the sorted codes of the cells that
+ * exist, and an index that associates the code of the cell holding each
+ * object with the slot at which the tree stores the object.</p>
+ *
+ * <p>The index is sorted by code, and so the objects held by a cell and its
+ * descendants occupy the interval {@code [lowerBound(code),
+ * lowerBound(end(code)))}. Within that interval, the objects held by the
+ * cell itself come first, followed by the objects of each child in
+ * order.</p>
+ *
+ * @see LocationalCodes
+ */
+
+final class LinearIndex
+{
+  private final int dimensions;
+  private final int children;
+  private long[] cell_codes;
+  private int cell_count;
+  private long[] index_codes;
+  private int[] index_slots;
+  private int index_count;
+
+  /**
+   * Construct an index containing only the root cell.
+   *
+   * @param in_dimensions The number of dimensions
+   * @param item_capacity The initial item capacity
+   */
+
+  LinearIndex(
+    final int in_dimensions,
+    final int item_capacity)
+  {
+    this.dimensions = in_dimensions;
+    this.children = 1 << in_dimensions;
+    this.reset(item_capacity);
+  }
+
+  /**
+   * Remove all objects and every cell other than the root cell.
+   *
+   * @param item_capacity The new item capacity
+   */
+
+  void reset(
+    final int item_capacity)
+  {
+    this.cell_codes = new long[1 + this.children];
+    this.cell_codes[0] = LocationalCodes.ROOT;
+    this.cell_count = 1;
+    this.index_codes = new long[item_capacity];
+    this.index_slots = new int[item_capacity];
+    this.index_count = 0;
+  }
+
+  /**
+   * @param code The code of a cell
+   *
+   * @return The code of the child of the cell at {@code index}
+   */
+
+  long child(
+    final long code,
+    final int index)
+  {
+    return LocationalCodes.child(code, index, this.dimensions);
+  }
+
+  /**
+   * @param code The code of a cell
+   *
+   * @return The smallest code greater than the codes of the cell and all of its descendants
+   */
+
+  long end(
+    final long code)
+  {
+    return LocationalCodes.end(code, this.dimensions);
+  }
+
+  /**
+   * @param position The position of a cell
+   *
+   * @return The code of the cell at {@code position} in code order
+   */
+
+  long cellCode(
+    final int position)
+  {
+    return this.cell_codes[position];
+  }
+
+  /**
+   * @param from The position at which to start searching
+   * @param code The code
+   *
+   * @return The position of the first cell at or after {@code from} with a code not less than
+   * {@code code}
+   */
+
+  int cellLowerBound(
+    final int from,
+    final long code)
+  {
+    return LocationalCodes.lowerBound(this.cell_codes, from, this.cell_count, code);
+  }
+
+  /**
+   * @param code The code of a cell
+   *
+   * @return {@code true} if the cell has no children, or does not exist
+   */
+
+  boolean isLeaf(
+    final long code)
+  {
+    final int position = Arrays.binarySearch(this.cell_codes, 0, this.cell_count, code);
+    if (position < 0) {
+      return true;
+    }
+    final int next = position + 1;
+    return next == this.cell_count || this.cell_codes[next] >= this.end(code);
+  }
+
+  /**
+   * Create the children of a leaf cell. The children immediately follow the
+   * cell in code order.
+   *
+   * @param code The code of the cell
+   */
+
+  void split(
+    final long code)
+  {
+    final int position = Arrays.binarySearch(this.cell_codes, 0, this.cell_count, code) + 1;
+    this.cellReserve();
+    System.arraycopy(
+      this.cell_codes,
+      position,
+      this.cell_codes,
+      position + this.children,
+      this.cell_count - position);
+    for (int index = 0; index < this.children; ++index) {
+      this.cell_codes[position + index] = this.child(code, index);
+    }
+    this.cell_count += this.children;
+  }
+
+  /**
+   * Create the children of a leaf cell, without preserving the order of
+   * cells. {@link #sortCells()} must be called before the cells are next
+   * searched.
+   *
+   * @param code The code of the cell
+   */
+
+  void splitUnordered(
+    final long code)
+  {
+    this.cellReserve();
+    for (int index = 0; index < this.children; ++index) {
+      this.cell_codes[this.cell_count] = this.child(code, index);
+      ++this.cell_count;
+    }
+  }
+
+  /**
+   * Sort the cells created by {@link #splitUnordered(long)}.
+   */
+
+  void sortCells()
+  {
+    Arrays.sort(this.cell_codes, 0, this.cell_count);
+  }
+
+  private void cellReserve()
+  {
+    final int required = this.cell_count + this.children;
+    if (required > this.cell_codes.length) {
+      this.cell_codes =
+        Arrays.copyOf(this.cell_codes, Math.max(required, this.cell_codes.length * 2));
+    }
+  }
+
+  /**
+   * Attempt to turn a cell back into a leaf. This succeeds if the only
+   * descendants of the cell are its children, and none of them hold objects.
+   *
+   * @param code The code of the cell
+   */
+
+  void unsplit(
+    final long code)
+  {
+    final int position = Arrays.binarySearch(this.cell_codes, 0, this.cell_count, code);
+    if (position < 0) {
+      return;
+    }
+
+    final long end = this.end(code);
+    final int cells_end = this.cellLowerBound(position + 1, end);
+    if (cells_end - position != 1 + this.children) {
+      return;
+    }
+
+    final int from = this.lowerBound(0, this.index_count, code + 1L);
+    if (from < this.index_count && this.index_codes[from] < end) {
+      return;
+    }
+
+    System.arraycopy(
+      this.cell_codes, cells_end, this.cell_codes, position + 1, this.cell_count - cells_end);
+    this.cell_count -= this.children;
+  }
+
+  /**
+   * @return The number of objects in the index
+   */
+
+  int size()
+  {
+    return this.index_count;
+  }
+
+  /**
+   * @param position The position of an entry
+   *
+   * @return The slot of the object at {@code position} in the index
+   */
+
+  int slot(
+    final int position)
+  {
+    return this.index_slots[position];
+  }
+
+  /**
+   * @param from The start of the interval to search (inclusive)
+   * @param to   The end of the interval to search (exclusive)
+   * @param code The code
+   *
+   * @return The position of the first entry in {@code [from, to)} with a code not less than
+   * {@code code}
+   */
+
+  int lowerBound(
+    final int from,
+    final int to,
+    final long code)
+  {
+    return LocationalCodes.lowerBound(this.index_codes, from, to, code);
+  }
+
+  /**
+   * @param from The start of the interval of a cell (inclusive)
+   * @param to   The end of the interval of a cell (exclusive)
+   * @param code The code of the cell
+   *
+   * @return The end of the entries in {@code [from, to)} that are held by the cell itself
+   */
+
+  int heldEnd(
+    final int from,
+    final int to,
+    final long code)
+  {
+    return LocationalCodes.lowerBound(this.index_codes, from, to, code + 1L);
+  }
+
+  /**
+   * @param code The code of a cell
+   *
+   * @return The number of objects held directly by the cell
+   */
+
+  int heldCount(
+    final long code)
+  {
+    final int from = this.lowerBound(0, this.index_count, code);
+    return this.heldEnd(from, this.index_count, code) - from;
+  }
+
+  /**
+   * Add an object to the objects held by a cell.
+   *
+   * @param code The code of the cell
+   * @param slot The slot of the object
+   */
+
+  void link(
+    final long code,
+    final int slot)
+  {
+    this.insertAt(this.heldEnd(0, this.index_count, code), code, slot);
+  }
+
+  /**
+   * Add an object to the end of the index. The code must not be less than
+   * the code of any object already in the index.
+   *
+   * @param code The code of the cell
+   * @param slot The slot of the object
+   */
+
+  void append(
+    final long code,
+    final int slot)
+  {
+    this.insertAt(this.index_count, code, slot);
+  }
+
+  private void insertAt(
+    final int position,
+    final long code,
+    final int slot)
+  {
+    if (this.index_count == this.index_codes.length) {
+      final int capacity = Math.max(1, this.index_codes.length * 2);
+      this.index_codes = Arrays.copyOf(this.index_codes, capacity);
+      this.index_slots = Arrays.copyOf(this.index_slots, capacity);
+    }
+
+    final int moved = this.index_count - position;
+    System.arraycopy(this.index_codes, position, this.index_codes, position + 1, moved);
+    System.arraycopy(this.index_slots, position, this.index_slots, position + 1, moved);
+    this.index_codes[position] = code;
+    this.index_slots[position] = slot;
+    ++this.index_count;
+  }
+
+  /**
+   * Remove an object from the objects held by a cell.
+   *
+   * @param code The code of the cell
+   * @param slot The slot of the object
+   */
+
+  void unlink(
+    final long code,
+    final int slot)
+  {
+    int position = this.lowerBound(0, this.index_count, code);
+    while (this.index_slots[position] != slot) {
+      ++position;
+    }
+
+    final int moved = this.index_count - position - 1;
+    System.arraycopy(this.index_codes, position + 1, this.index_codes, position, moved);
+    System.arraycopy(this.index_slots, position + 1, this.index_slots, position, moved);
+    --this.index_count;
+  }
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.jspatial.implementation;
+
+import com.io7m.junreachable.UnreachableCodeException;
+
+/**
+ * <p>Functions for computing the locational codes of cells in linear trees.</p>
+ *
+ * <p>A cell at depth {@code d} is identified by the child indices on the
+ * path from the root to the cell, one digit of {@code dimensions} bits per
+ * level, padded to a fixed number of levels and followed by the depth of the
+ * cell. The path is therefore the Morton code of the cell's minimum corner,
+ * and sorting cells by code visits them in depth-first order: a cell is
+ * followed immediately by its descendants, and the descendants of a cell
+ * occupy the interval {@code [code, end(code))}.</p>
+ */
+
+final class LocationalCodes
+{
+  /**
+   * The code of the root cell.
+   */
+
+  static final long ROOT = 0L;
+
+  /**
+   * The value used to indicate the absence of a cell.
+   */
+
+  static final long NONE = -1L;
+
+  private static final int DEPTH_BITS = 5;
+  private static final long DEPTH_MASK = (1L << DEPTH_BITS) - 1L;
+  private static final int PATH_BITS = Long.SIZE - 2 - DEPTH_BITS;
+
+  private LocationalCodes()
+  {
+    throw new UnreachableCodeException();
+  }
+
+  /**
+   * @param dimensions The number of dimensions
+   *
+   * @return The maximum depth of cells that can be represented
+   */
+
+  static int levels(
+    final int dimensions)
+  {
+    return PATH_BITS / dimensions;
+  }
+
+  /**
+   * @param code The code of a cell
+   *
+   * @return The depth of the cell
+   */
+
+  static int depth(
+    final long code)
+  {
+    return (int) (code & DEPTH_MASK);
+  }
+
+  /**
+   * @param code       The code of a cell
+   * @param index      The index of the child
+   * @param dimensions The number of dimensions
+   *
+   * @return The code of the child of the cell at {@code index}
+   */
+
+  static long child(
+    final long code,
+    final int index,
+    final int dimensions)
+  {
+    final int depth = depth(code) + 1;
+    final long path = (code >>> DEPTH_BITS) | ((long) index << shift(dimensions, depth));
+    return (path << DEPTH_BITS) | (long) depth;
+  }
+
+  /**
+   * @param code       The code of a cell
+   * @param level      The depth of the cell or of one of its ancestors, {@code >= 1}
+   * @param dimensions The number of dimensions
+   *
+   * @return The index of the ancestor of the cell at depth {@code level} within its parent
+   */
+
+  static int childIndex(
+    final long code,
+    final int level,
+    final int dimensions)
+  {
+    final long digit = (code >>> DEPTH_BITS) >>> shift(dimensions, level);
+    return (int) (digit & ((1L << dimensions) - 1L));
+  }
+
+  /**
+   * @param code       The code of a cell
+   * @param dimensions The number of dimensions
+   *
+   * @return The code of the parent of the cell, or {@link #NONE} for the root cell
+   */
+
+  static long parent(
+    final long code,
+    final int dimensions)
+  {
+    final int depth = depth(code);
+    if (depth == 0) {
+      return NONE;
+    }
+
+    final long digit = ((1L << dimensions) - 1L) << shift(dimensions, depth);
+    final long path = (code >>> DEPTH_BITS) & ~digit;
+    return (path << DEPTH_BITS) | (long) (depth - 1);
+  }
+
+  /**
+   * @param code       The code of a cell
+   * @param dimensions The number of dimensions
+   *
+   * @return The smallest code greater than the codes of the cell and all of its descendants
+   */
+
+  static long end(
+    final long code,
+    final int dimensions)
+  {
+    final long path = code >>> DEPTH_BITS;
+    return (path + (1L << shift(dimensions, depth(code)))) << DEPTH_BITS;
+  }
+
+  /**
+   * Search a sorted range of codes. The search gallops forward from
+   * {@code from} before bisecting, as the codes sought are usually near the
+   * start of the range.
+   *
+   * @param codes The sorted codes
+   * @param from  The start of the range to search (inclusive)
+   * @param to    The end of the range to search (exclusive)
+   * @param code  The code
+   *
+   * @return The index of the first code in {@code [from, to)} that is not less than {@code code}
+   */
+
+  static int lowerBound(
+    final long[] codes,
+    final int from,
+    final int to,
+    final long code)
+  {
+    int low = from;
+    int step = 1;
+    while (low < to && codes[low] < code) {
+      final int next = low + step;
+      if (next >= to || codes[next] >= code) {
+        return bisect(codes, low + 1, Math.min(next, to), code);
+      }
+      low = next + 1;
+      step <<= 1;
+    }
+    return low;
+  }
+
+  private static int bisect(
+    final long[] codes,
+    final int from,
+    final int to,
+    final long code)
+  {
+    int low = from;
+    int high = to;
+    while (low < high) {
+      final int middle = (low + high) >>> 1;
+      if (codes[middle] < code) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+  private static int shift(
+    final int dimensions,
+    final int level)
+  {
+    return dimensions * (levels(dimensions) - level);
+  }
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.jspatial.implementation;
+
+import com.io7m.junreachable.UnreachableCodeException;
+
+import java.util.Arrays;
+
+/**
+ * Functions for computing and sorting Morton (Z-order) codes. Sorting objects
+ * by the Morton code of their centres places objects that are close in space
+ * close together in the sorted order.
+ */
+
+final class MortonCodes
+{
+  /**
+   * The number of bits used per axis for three-dimensional codes.
+   */
+
+  static final int BITS_3D = 21;
+
+  /**
+   * The number of bits used per axis for two-dimensional codes.
+   */
+
+  static final int BITS_2D = 31;
+
+  private static final int RADIX_BITS = 8;
+  private static final int RADIX = 1 << RADIX_BITS;
+  private static final int RADIX_MASK = RADIX - 1;
+
+  private MortonCodes()
+  {
+    throw new UnreachableCodeException();
+  }
+
+  /**
+   * Quantize the centre of the range {@code [minimum, maximum]} relative to
+   * the range {@code [low, high]}. Centres outside of {@code [low, high]} are
+   * clamped.
+   *
+   * @param minimum The minimum value of the range
+   * @param maximum The maximum value of the range
+   * @param low     The minimum value of the enclosing range
+   * @param high    The maximum value of the enclosing range
+   * @param bits    The number of bits in the result
+   *
+   * @return A value in {@code [0, 2 ^ bits)}
+   */
+
+  static long quantize(
+    final double minimum,
+    final double maximum,
+    final double low,
+    final double high,
+    final int bits)
+  {
+    final long limit = (1L << bits) - 1L;
+    final double position = ((minimum + maximum) * 0.5 - low) / (high - low);
+    if (!(position > 0.0)) {
+      return 0L;
+    }
+    if (position >= 1.0) {
+      return limit;
+    }
+    return Math.min(limit, (long) (position * (double) (limit + 1L)));
+  }
+
+  /**
+   * @param x The x value, using at most {@link #BITS_3D} bits
+   * @param y The y value, using at most {@link #BITS_3D} bits
+   * @param z The z value, using at most {@link #BITS_3D} bits
+   *
+   * @return The bits of the given values interleaved as {@code ...zyxzyx}
+   */
+
+  static long interleave3(
+    final long x,
+    final long y,
+    final long z)
+  {
+    return spread3(x) | (spread3(y) << 1) | (spread3(z) << 2);
+  }
+
+  /**
+   * @param x The x value, using at most {@link #BITS_2D} bits
+   * @param y The y value, using at most {@link #BITS_2D} bits
+   *
+   * @return The bits of the given values interleaved as {@code ...yxyx}
+   */
+
+  static long interleave2(
+    final long x,
+    final long y)
+  {
+    return spread2(x) | (spread2(y) << 1);
+  }
+
+  private static long spread3(
+    final long value)
+  {
+    long x = value & 0x1fffffL;
+    x = (x | (x << 32)) & 0x1f00000000ffffL;
+    x = (x | (x << 16)) & 0x1f0000ff0000ffL;
+    x = (x | (x << 8)) & 0x100f00f00f00f00fL;
+    x = (x | (x << 4)) & 0x10c30c30c30c30c3L;
+    x = (x | (x << 2)) & 0x1249249249249249L;
+    return x;
+  }
+
+  private static long spread2(
+    final long value)
+  {
+    long x = value & 0x7fffffffL;
+    x = (x | (x << 16)) & 0x0000ffff0000ffffL;
+    x = (x | (x << 8)) & 0x00ff00ff00ff00ffL;
+    x = (x | (x << 4)) & 0x0f0f0f0f0f0f0f0fL;
+    x = (x | (x << 2)) & 0x3333333333333333L;
+    x = (x | (x << 1)) & 0x5555555555555555L;
+    return x;
+  }
+
+  /**
+   * Sort the given non-negative codes using a stable least-significant-digit
+   * radix sort. Passes in which every code has the same digit are skipped,
+   * so codes that use only the low bits of a {@code long} are cheap to sort.
+   *
+   * @param codes The codes
+   *
+   * @return The indices of {@code codes} in ascending order of code
+   */
+
+  static int[] sort(
+    final long[] codes)
+  {
+    final int count = codes.length;
+    int[] order = new int[count];
+    for (int index = 0; index < count; ++index) {
+      order[index] = index;
+    }
+    if (count < 2) {
+      return order;
+    }
+
+    int[] buffer = new int[count];
+    final int[] offsets = new int[RADIX];
+    for (int shift = 0; shift < Long.SIZE; shift += RADIX_BITS) {
+      Arrays.fill(offsets, 0);
+      for (int index = 0; index < count; ++index) {
+        ++offsets[digit(codes[index], shift)];
+      }
+      if (offsets[digit(codes[0], shift)] == count) {
+        continue;
+      }
+
+      int total = 0;
+      for (int index = 0; index < RADIX; ++index) {
+        final int size = offsets[index];
+        offsets[index] = total;
+        total += size;
+      }
+
+      for (int index = 0; index < count; ++index) {
+        final int source = order[index];
+        final int bucket = digit(codes[source], shift);
+        buffer[offsets[bucket]] = source;
+        ++offsets[bucket];
+      }
+
+      final int[] swap = order;
+      order = buffer;
+      buffer = swap;
+    }
+    return order;
+  }
+
+  private static int digit(
+    final long code,
+    final int shift)
+  {
+    return (int) ((code >>> shift) & (long) RADIX_MASK);
+  }
+}
@@ -0,0 +1,475 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jspatial.implementation;
+
+import com.io7m.jaffirm.core.Preconditions;
+import com.io7m.jregions.core.unparameterized.volumes.VolumeD;
+import com.io7m.jspatial.api.octtrees.OctTreeConfigurationD;
+import com.io7m.jspatial.api.octtrees.OctTreeDType;
+import com.io7m.junreachable.UnreachableCodeException;
+
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongArrays;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.LongFunction;
+import java.util.function.ToLongFunction;
+
+/**
+ * <p>Functions to write {@link OctTreeD} trees to channels, and to read
+ * them back, in a compact binary format.</p>
+ *
+ * <p>The format records the configuration of a tree, the shape of the
+ * tree, and the bounds of each object along with an identifier that the
+ * caller assigns to the object. Reading a tree rebuilds the octants in
+ * the recorded shape and places each object directly into the octant
+ * that held it, so no object is inserted by descending from the root, and
+ * no octant redistributes objects when it is split.</p>
+ *
+ * <p>All values are big-endian. A tree is written as:</p>
+ *
+ * <ul>
+ * <li>The magic number {@code 0x4A534F44} and the format version
+ * {@code 2}, as 32-bit integers.</li>
+ * <li>The volume of the tree, and the minimum octant width, height, and
+ * depth, as 64-bit floating point values.</li>
+ * <li>The maximum number of objects per leaf and the maximum depth, as
+ * 32-bit integers.</li>
+ * <li>{@code 1} if the tree trims empty leaves on removal and {@code 0}
+ * otherwise, as a byte.</li>
+ * <li>The number of objects in the tree, as a 64-bit integer.</li>
+ * <li>The root octant.</li>
+ * <li>The index of objects.</li>
+ * </ul>
+ *
+ * <p>An octant is written as {@code 1} if the octant has children and
+ * {@code 0} otherwise, as a byte, followed by the number of objects held
+ * directly by the octant and the number of objects held by the octant and
+ * all of its descendants, as 32-bit integers, the number of bytes occupied
+ * by the octant and all of its descendants, as a 64-bit integer, and the
+ * volume of the octant. Each object follows as its identifier, as a 64-bit
+ * integer, and its bounds as six 64-bit floating point values. The eight
+ * children of the octant, if any, follow the objects in the order used by
+ * {@link OctTreeD}. Volumes are written in the order minimum X, maximum X,
+ * minimum Y, maximum Y, minimum Z, maximum Z.</p>
+ *
+ * <p>The index holds an entry for each object in the tree, in ascending
+ * order of identifier. An entry is the identifier of the object and the
+ * offset of the object from the start of the tree, as 64-bit integers.
+ * The sizes of octants and the index are not needed to rebuild a tree,
+ * but allow {@link OctTreeMappedD} to query a tree without reading it.</p>
+ *
+ * <p>Channels are expected to be in blocking mode.</p>
+ *
+ * @since 3.0.0
+ */
+
+public final class OctTreeBinaryD
+{
+  /**
+   * The size of the header, in bytes.
+   */
+
+  static final int HEADER_SIZE = 8 + 9 * 8 + 8 + 1 + 8;
+
+  /**
+   * The size of an octant, excluding its objects and children, in bytes.
+   */
+
+  static final int OCTANT_SIZE = 1 + 4 + 4 + 8 + VolumeBoundsD.STRIDE * 8;
+
+  /**
+   * The size of an object, in bytes.
+   */
+
+  static final int OBJECT_SIZE = 8 + VolumeBoundsD.STRIDE * 8;
+
+  /**
+   * The size of an index entry, in bytes.
+   */
+
+  static final int INDEX_ENTRY_SIZE = 8 + 8;
+
+  private static final int MAGIC = 0x4A534F44;
+  private static final int VERSION = 2;
+
+  private OctTreeBinaryD()
+  {
+    throw new UnreachableCodeException();
+  }
+
+  /**
+   * Write a tree to a channel.
+   *
+   * @param tree    The tree, which must have been created by
+   *                {@link OctTreeD#create(OctTreeConfigurationD)}
+   * @param ids     A function that yields the identifier of each object
+   * @param channel The channel
+   * @param <T>     The precise type of tree objects
+   *
+   * @throws IOException On I/O errors
+   */
+
+  @SuppressWarnings("unchecked")
+  public static <T> void write(
+    final OctTreeDType<T> tree,
+    final ToLongFunction<T> ids,
+    final WritableByteChannel channel)
+    throws IOException
+  {
+    Objects.requireNonNull(tree, "Tree");
+    Objects.requireNonNull(ids, "IDs");
+    Objects.requireNonNull(channel, "Channel");
+    Preconditions.checkPrecondition(
+      tree,
+      tree instanceof OctTreeD,
+      t -> "Tree must be an instance of " + OctTreeD.class.getName());
+
+    final OctTreeD<T> octtree = (OctTreeD<T>) tree;
+    final OctTreeConfigurationD config = octtree.configuration();
+    final VolumeD volume = config.volume();
+
+    final ByteBuffer buffer = ChannelBuffers.forWriting();
+    buffer.putInt(MAGIC);
+    buffer.putInt(VERSION);
+    buffer.putDouble(volume.minimumX());
+    buffer.putDouble(volume.maximumX());
+    buffer.putDouble(volume.minimumY());
+    buffer.putDouble(volume.maximumY());
+    buffer.putDouble(volume.minimumZ());
+    buffer.putDouble(volume.maximumZ());
+    buffer.putDouble(config.minimumOctantWidth());
+    buffer.putDouble(config.minimumOctantHeight());
+    buffer.putDouble(config.minimumOctantDepth());
+    buffer.putInt(config.maximumItemsPerLeaf());
+    buffer.putInt(config.maximumDepth());
+    buffer.put(config.trimOnRemove() ? (byte) 1 : (byte) 0);
+    buffer.putLong(octtree.size());
+
+    final LongArrayList sizes = new LongArrayList();
+    measureOctant(octtree.rootNode(), sizes);
+
+    final Writer<T> writer =
+      new Writer<>(channel, buffer, ids, sizes, Math.toIntExact(octtree.size()));
+    writer.writeOctant(octtree.rootNode());
+    writer.writeIndex();
+    ChannelBuffers.flush(channel, buffer);
+  }
+
+  /**
+   * Calculate the number of bytes occupied by each octant and all of its
+   * descendants, in the order in which the octants are written.
+   */
+
+  private static <T> long measureOctant(
+    final OctTreeD<T>.Octant octant,
+    final LongArrayList sizes)
+  {
+    final int slot = sizes.size();
+    sizes.add(0L);
+
+    long size = (long) OCTANT_SIZE
+      + (long) octant.objects().size() * (long) OBJECT_SIZE;
+    if (!octant.isLeaf()) {
+      for (int index = 0; index < 8; ++index) {
+        size += measureOctant(octant.child(index), sizes);
+      }
+    }
+    sizes.set(slot, size);
+    return size;
+  }
+
+  /**
+   * Read a tree from a channel.
+   *
+   * @param channel The channel
+   * @param items   A function that yields the object with each identifier
+   * @param <T>     The precise type of tree objects
+   *
+   * @return A new tree
+   *
+   * @throws IOException On I/O errors, or if the channel does not contain a
+   *                     tree in the expected format
+   */
+
+  @SuppressWarnings("unchecked")
+  public static <T> OctTreeDType<T> read(
+    final ReadableByteChannel channel,
+    final LongFunction<T> items)
+    throws IOException
+  {
+    Objects.requireNonNull(channel, "Channel");
+    Objects.requireNonNull(items, "Items");
+
+    final ByteBuffer buffer = ChannelBuffers.forReading();
+    ChannelBuffers.require(channel, buffer, HEADER_SIZE);
+    final OctTreeConfigurationD config = readConfiguration(buffer);
+    final long size = buffer.getLong();
+
+    final OctTreeD<T> tree = (OctTreeD<T>) OctTreeD.<T>create(config);
+    readOctant(channel, buffer, items, tree, tree.rootNode());
+    if (tree.size() != size) {
+      throw new IOException(String.format(
+        "Object count mismatch: expected %d, received %d",
+        Long.valueOf(size),
+        Long.valueOf(tree.size())));
+    }
+
+    /*
+     * The index is not needed to rebuild the tree, but is consumed so that
+     * the channel is left positioned after the tree.
+     */
+
+    for (long index = 0L; index < size; ++index) {
+      ChannelBuffers.require(channel, buffer, INDEX_ENTRY_SIZE);
+      buffer.position(buffer.position() + INDEX_ENTRY_SIZE);
+    }
+    return tree;
+  }
+
+  /**
+   * Read the header of a tree, up to but not including the number of
+   * objects in the tree.
+   *
+   * @param buffer The buffer
+   *
+   * @return The configuration of the tree
+   *
+   * @throws IOException If the buffer does not contain a tree in the
+   *                     expected format
+   */
+
+  static OctTreeConfigurationD readConfiguration(
+    final ByteBuffer buffer)
+    throws IOException
+  {
+    final int magic = buffer.getInt();
+    if (magic != MAGIC) {
+      throw new IOException(String.format(
+        "Unrecognized magic number: expected 0x%08x, received 0x%08x",
+        Integer.valueOf(MAGIC),
+        Integer.valueOf(magic)));
+    }
+    final int version = buffer.getInt();
+    if (version == 1) {
+      throw new IOException(
+        "Format version 1 is no longer supported, as it lacks the sizes and "
+          + "index used by mapped trees; write the tree again with this version");
+    }
+    if (version != VERSION) {
+      throw new IOException(String.format(
+        "Unsupported format version: expected %d, received %d",
+        Integer.valueOf(VERSION),
+        Integer.valueOf(version)));
+    }
+
+    final OctTreeConfigurationD.Builder cb = OctTreeConfigurationD.builder();
+    cb.setVolume(VolumeD.of(
+      buffer.getDouble(),
+      buffer.getDouble(),
+      buffer.getDouble(),
+      buffer.getDouble(),
+      buffer.getDouble(),
+      buffer.getDouble()));
+    cb.setMinimumOctantWidth(buffer.getDouble());
+    cb.setMinimumOctantHeight(buffer.getDouble());
+    cb.setMinimumOctantDepth(buffer.getDouble());
+    cb.setMaximumItemsPerLeaf(buffer.getInt());
+    cb.setMaximumDepth(buffer.getInt());
+    cb.setTrimOnRemove(buffer.get() != 0);
+    final OctTreeConfigurationD config = cb.build();
+
+    final VolumeD volume = config.volume();
+    if (!Double.isFinite(volume.sizeX())
+      || !Double.isFinite(volume.sizeY())
+      || !Double.isFinite(volume.sizeZ())) {
+      throw new IOException("The volume of the tree is not finite: " + volume);
+    }
+    return config;
+  }
+
+  private static <T> void readOctant(
+    final ReadableByteChannel channel,
+    final ByteBuffer buffer,
+    final LongFunction<T> items,
+    final OctTreeD<T> tree,
+    final OctTreeD<T>.Octant octant)
+    throws IOException
+  {
+    ChannelBuffers.require(channel, buffer, OCTANT_SIZE);
+    final byte split = buffer.get();
+    final int count = buffer.getInt();
+    if (split < 0 || split > 1 || count < 0) {
+      throw new IOException("Malformed octant at " + octant.volume());
+    }
+
+    /*
+     * The sizes and volume of the octant are only used by mapped trees.
+     */
+
+    buffer.position(buffer.position() + OCTANT_SIZE - (1 + 4));
+
+    /*
+     * The octant is split before it receives any objects, so that the
+     * objects stay in the octant rather than being redistributed to the
+     * children.
+     */
+
+    if (split == 1) {
+      if (!octant.canSplit()) {
+        throw new IOException("Octant cannot be split: " + octant.volume());
+      }
+      octant.split();
+    }
+
+    final double[] octant_bounds = VolumeBoundsD.pack(octant.volume());
+    final double[] bounds = new double[VolumeBoundsD.STRIDE];
+    for (int index = 0; index < count; ++index) {
+      readObject(channel, buffer, items, tree, octant, octant_bounds, bounds);
+    }
+
+    if (split == 1) {
+      for (int index = 0; index < 8; ++index) {
+        readOctant(channel, buffer, items, tree, octant.child(index));
+      }
+    }
+  }
+
+  private static <T> void readObject(
+    final ReadableByteChannel channel,
+    final ByteBuffer buffer,
+    final LongFunction<T> items,
+    final OctTreeD<T> tree,
+    final OctTreeD<T>.Octant octant,
+    final double[] octant_bounds,
+    final double[] bounds)
+    throws IOException
+  {
+    ChannelBuffers.require(channel, buffer, OBJECT_SIZE);
+    final long id = buffer.getLong();
+    for (int axis = 0; axis < VolumeBoundsD.STRIDE; ++axis) {
+      bounds[axis] = buffer.getDouble();
+    }
+
+    if (!VolumeBoundsD.contains(octant_bounds, 0, bounds, 0)) {
+      throw new IOException(
+        "Object " + id + " is not contained within " + octant.volume());
+    }
+    final T item = Objects.requireNonNull(items.apply(id), "Item");
+    final long size = tree.size();
+    octant.insertObject(new OctTreeD.Item<>(item, VolumeBoundsD.unpack(bounds, 0)));
+    if (tree.size() == size) {
+      throw new IOException("Object " + id + " appears more than once");
+    }
+  }
+
+  /**
+   * The state of a tree being written.
+   */
+
+  private static final class Writer<T>
+  {
+    private final WritableByteChannel channel;
+    private final ByteBuffer buffer;
+    private final ToLongFunction<T> ids;
+    private final LongArrayList sizes;
+    private final long[] index_ids;
+    private final long[] index_offsets;
+    private int index_count;
+    private int octant_count;
+    private long position;
+
+    private Writer(
+      final WritableByteChannel in_channel,
+      final ByteBuffer in_buffer,
+      final ToLongFunction<T> in_ids,
+      final LongArrayList in_sizes,
+      final int size)
+    {
+      this.channel = in_channel;
+      this.buffer = in_buffer;
+      this.ids = in_ids;
+      this.sizes = in_sizes;
+      this.index_ids = new long[size];
+      this.index_offsets = new long[size];
+      this.index_count = 0;
+      this.octant_count = 0;
+      this.position = (long) HEADER_SIZE;
+    }
+
+    private void writeOctant(
+      final OctTreeD<T>.Octant octant)
+      throws IOException
+    {
+      final Map<T, VolumeD> objects = octant.objects();
+      final VolumeD volume = octant.volume();
+      ChannelBuffers.reserve(this.channel, this.buffer, OCTANT_SIZE);
+      this.buffer.put(octant.isLeaf() ? (byte) 0 : (byte) 1);
+      this.buffer.putInt(objects.size());
+      this.buffer.putInt(octant.subtreeSize());
+      this.buffer.putLong(this.sizes.getLong(this.octant_count));
+      this.buffer.putDouble(volume.minimumX());
+      this.buffer.putDouble(volume.maximumX());
+      this.buffer.putDouble(volume.minimumY());
+      this.buffer.putDouble(volume.maximumY());
+      this.buffer.putDouble(volume.minimumZ());
+      this.buffer.putDouble(volume.maximumZ());
+      this.position += (long) OCTANT_SIZE;
+      ++this.octant_count;
+
+      for (final Map.Entry<T, VolumeD> e : objects.entrySet()) {
+        final long id = this.ids.applyAsLong(e.getKey());
+        this.index_ids[this.index_count] = id;
+        this.index_offsets[this.index_count] = this.position;
+        ++this.index_count;
+
+        final VolumeD bounds = e.getValue();
+        ChannelBuffers.reserve(this.channel, this.buffer, OBJECT_SIZE);
+        this.buffer.putLong(id);
+        this.buffer.putDouble(bounds.minimumX());
+        this.buffer.putDouble(bounds.maximumX());
+        this.buffer.putDouble(bounds.minimumY());
+        this.buffer.putDouble(bounds.maximumY());
+        this.buffer.putDouble(bounds.minimumZ());
+        this.buffer.putDouble(bounds.maximumZ());
+        this.position += (long) OBJECT_SIZE;
+      }
+
+      if (!octant.isLeaf()) {
+        for (int index = 0; index < 8; ++index) {
+          this.writeOctant(octant.child(index));
+        }
+      }
+    }
+
+    private void writeIndex()
+      throws IOException
+    {
+      LongArrays.quickSort(this.index_ids, this.index_offsets);
+      for (int index = 0; index < this.index_count; ++index) {
+        ChannelBuffers.reserve(this.channel, this.buffer, INDEX_ENTRY_SIZE);
+        this.buffer.putLong(this.index_ids[index]);
+        this.buffer.putLong(this.index_offsets[index]);
+      }
+    }
+  }
+}
@@ -0,0 +1,475 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.jspatial.implementation;
+
+import com.io7m.jregions.core.unparameterized.volumes.VolumeD;
+import com.io7m.jspatial.api.Ray3D;
+import com.io7m.jspatial.api.TreeVisitResult;
+import com.io7m.jspatial.api.octtrees.OctTreeConfigurationD;
+import com.io7m.jspatial.api.octtrees.OctTreeDType;
+import com.io7m.jspatial.api.octtrees.OctTreeItemVisitorDType;
+import com.io7m.jspatial.api.octtrees.OctTreeNearestVisitorDType;
+import com.io7m.jspatial.api.octtrees.OctTreeOctantIterationDType;
+import com.io7m.jspatial.api.octtrees.OctTreeRaycastBufferD;
+import com.io7m.jspatial.api.octtrees.OctTreeRaycastResultD;
+import com.io7m.jspatial.api.octtrees.OctTreeRaycastVisitorDType;
+import com.io7m.jspatial.api.octtrees.OctTreeReadableDType;
+import com.io7m.jspatial.api.octtrees.OctTreeSupplierDType;
+import com.io7m.jtensors.core.unparameterized.vectors.Vector3D;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.BiFunction;
+import java.util.function.Supplier;
+
+/**
+ * <p>An implementation of the {@link OctTreeDType} interface that is safe
+ * for use from multiple threads.</p>
+ *
+ * <p>By default, the tree is backed by a {@link OctTreeVersionedD} tree.
+ * Modifications copy the path from the root to the nodes that they change
+ * and then publish the new version, and queries read whichever version was
+ * current when they started. Queries therefore never take a lock, and
+ * neither block nor are blocked by modifications.</p>
+ *
+ * <p>A tree backed by any other kind of tree guards it with a
+ * {@link ReentrantReadWriteLock}. Modifications take the write lock. Queries
+ * take the read lock, so any number of queries may run concurrently and a
+ * query only waits while a modification is waiting or in progress. Modifications
+ * additionally hold a {@link StampedLock} that is used as a sequence lock:
+ * small lookups that do not call user code ({@link #size()}, {@link #bounds()},
+ * {@link #contains(Object)}, {@link #volumeFor(Object)}) first attempt an
+ * optimistic read, and only take the read lock if a modification raced with
+ * them.</p>
+ *
+ * <p>Visitor functions passed to queries may query the tree that is calling
+ * them, but must not modify it: in a tree that takes locks, they are
+ * evaluated with the read lock held.</p>
+ *
+ * @param <T> The precise type of tree objects
+ */
+
+public final class OctTreeConcurrentD<T> implements OctTreeDType<T>
+{
+  private final OctTreeDType<T> tree;
+  private final ReentrantReadWriteLock lock;
+  private final StampedLock sequence;
+
+  /*
+   * Whether the underlying tree publishes immutable versions to queries, in
+   * which case queries do not need to take the lock.
+   */
+
+  private final boolean versioned;
+
+  private OctTreeConcurrentD(final OctTreeDType<T> in_tree)
+  {
+    this.tree = Objects.requireNonNull(in_tree, "Tree");
+    this.lock = new ReentrantReadWriteLock();
+    this.sequence = new StampedLock();
+    this.versioned = in_tree instanceof OctTreeVersionedD;
+  }
+
+  /**
+   * Create a new empty tree with the given bounds, backed by a
+   * {@link OctTreeVersionedD} tree.
+   *
+   * @param config The tree configuration
+   * @param <T>    The type of objects contained within the tree
+   *
+   * @return A new tree
+   */
+
+  public static <T> OctTreeDType<T> create(
+    final OctTreeConfigurationD config)
+  {
+    return create(new OctTreeVersionedSupplierD(), config);
+  }
+
+  /**
+   * Create a new empty tree with the given bounds, backed by a tree created
+   * by the given supplier. The underlying tree is never exposed, and so
+   * cannot be accessed without holding the lock. Queries only avoid the
+   * lock if the supplier creates {@link OctTreeVersionedD} trees.
+   *
+   * @param supplier The supplier of underlying trees
+   * @param config   The tree configuration
+   * @param <T>      The type of objects contained within the tree
+   *
+   * @return A new tree
+   */
+
+  public static <T> OctTreeDType<T> create(
+    final OctTreeSupplierDType supplier,
+    final OctTreeConfigurationD config)
+  {
+    Objects.requireNonNull(supplier, "Supplier");
+    return new OctTreeConcurrentD<>(supplier.create(config));
+  }
+
+  private <R> R read(final Supplier<R> f)
+  {
+    if (this.versioned) {
+      return f.get();
+    }
+
+    this.lock.readLock().lock();
+    try {
+      return f.get();
+    } finally {
+      this.lock.readLock().unlock();
+    }
+  }
+
+  private <R> R readOptimistic(final Supplier<R> f)
+  {
+    /*
+     * A racing modification can leave the underlying tree in a state that
+     * causes a lookup to fail. Such failures are only reported if the
+     * lookup was not racing, and the lookup is otherwise retried with the
+     * read lock held.
+     */
+
+    if (this.versioned) {
+      return f.get();
+    }
+
+    final long stamp = this.sequence.tryOptimisticRead();
+    if (stamp != 0L) {
+      try {
+        final R result = f.get();
+        if (this.sequence.validate(stamp)) {
+          return result;
+        }
+      } catch (final RuntimeException e) {
+        if (this.sequence.validate(stamp)) {
+          throw e;
+        }
+      }
+    }
+    return this.read(f);
+  }
+
+  private <R> R write(final Supplier<R> f)
+  {
+    this.lock.writeLock().lock();
+    final long stamp = this.sequence.writeLock();
+    try {
+      return f.get();
+    } finally {
+      this.sequence.unlockWrite(stamp);
+      this.lock.writeLock().unlock();
+    }
+  }
+
+  @Override
+  public boolean equals(final Object o)
+  {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || this.getClass() != o.getClass()) {
+      return false;
+    }
+
+    /*
+     * Take a copy of the other tree rather than holding both locks at once,
+     * so that two threads comparing the same pair of trees cannot deadlock.
+     */
+
+    final OctTreeConcurrentD<?> that = (OctTreeConcurrentD<?>) o;
+    final OctTreeDType<?> other = that.read(() -> that.tree.map((item, volume) -> item));
+    return this.read(() -> Boolean.valueOf(this.tree.equals(other))).booleanValue();
+  }
+
+  @Override
+  public int hashCode()
+  {
+    return this.read(() -> Integer.valueOf(this.tree.hashCode())).intValue();
+  }
+
+  @Override
+  public OctTreeReadableDType<T> snapshot()
+  {
+    return this.read(this.tree::snapshot);
+  }
+
+  @Override
+  public long size()
+  {
+    return this.readOptimistic(() -> Long.valueOf(this.tree.size())).longValue();
+  }
+
+  @Override
+  public VolumeD bounds()
+  {
+    return this.readOptimistic(this.tree::bounds);
+  }
+
+  @Override
+  public boolean contains(final T item)
+  {
+    return this.readOptimistic(() -> Boolean.valueOf(this.tree.contains(item))).booleanValue();
+  }
+
+  @Override
+  public boolean insert(
+    final T item,
+    final VolumeD bounds)
+  {
+    return this.write(() -> Boolean.valueOf(this.tree.insert(item, bounds))).booleanValue();
+  }
+
+  @Override
+  public long insertAll(
+    final Map<T, VolumeD> items)
+  {
+    return this.write(() -> Long.valueOf(this.tree.insertAll(items))).longValue();
+  }
+
+  @Override
+  public boolean remove(final T item)
+  {
+    return this.write(() -> Boolean.valueOf(this.tree.remove(item))).booleanValue();
+  }
+
+  @Override
+  public void clear()
+  {
+    this.write(() -> {
+      this.tree.clear();
+      return null;
+    });
+  }
+
+  @Override
+  public void trim()
+  {
+    this.write(() -> {
+      this.tree.trim();
+      return null;
+    });
+  }
+
+  @Override
+  public <U> OctTreeDType<U> map(final BiFunction<T, VolumeD, U> f)
+  {
+    return new OctTreeConcurrentD<>(this.read(() -> this.tree.map(f)));
+  }
+
+  @Override
+  public <C> void iterateOctants(
+    final C context,
+    final OctTreeOctantIterationDType<T, C> f)
+  {
+    this.read(() -> {
+      this.tree.iterateOctants(context, f);
+      return null;
+    });
+  }
+
+  @Override
+  public VolumeD volumeFor(final T item)
+  {
+    return this.readOptimistic(() -> this.tree.volumeFor(item));
+  }
+
+  @Override
+  public void containedBy(
+    final VolumeD volume,
+    final Set<T> items)
+  {
+    this.read(() -> {
+      this.tree.containedBy(volume, items);
+      return null;
+    });
+  }
+
+  @Override
+  public void overlappedBy(
+    final VolumeD volume,
+    final Set<T> items)
+  {
+    this.read(() -> {
+      this.tree.overlappedBy(volume, items);
+      return null;
+    });
+  }
+
+  @Override
+  public void raycast(
+    final Ray3D ray,
+    final SortedSet<OctTreeRaycastResultD<T>> items)
+  {
+    this.read(() -> {
+      this.tree.raycast(ray, items);
+      return null;
+    });
+  }
+
+  @Override
+  public void containedByParallel(
+    final VolumeD volume,
+    final Set<T> items,
+    final ForkJoinPool pool)
+  {
+    this.read(() -> {
+      this.tree.containedByParallel(volume, items, pool);
+      return null;
+    });
+  }
+
+  @Override
+  public void overlappedByParallel(
+    final VolumeD volume,
+    final Set<T> items,
+    final ForkJoinPool pool)
+  {
+    this.read(() -> {
+      this.tree.overlappedByParallel(volume, items, pool);
+      return null;
+    });
+  }
+
+  @Override
+  public void raycastParallel(
+    final Ray3D ray,
+    final SortedSet<OctTreeRaycastResultD<T>> items,
+    final ForkJoinPool pool)
+  {
+    this.read(() -> {
+      this.tree.raycastParallel(ray, items, pool);
+      return null;
+    });
+  }
+
+  @Override
+  public void overlappedByBatch(
+    final List<VolumeD> volumes,
+    final List<? extends Set<T>> items)
+  {
+    this.read(() -> {
+      this.tree.overlappedByBatch(volumes, items);
+      return null;
+    });
+  }
+
+  @Override
+  public void raycastBatch(
+    final List<Ray3D> rays,
+    final List<OctTreeRaycastBufferD<T>> results)
+  {
+    this.read(() -> {
+      this.tree.raycastBatch(rays, results);
+      return null;
+    });
+  }
+
+  @Override
+  public <C> TreeVisitResult containedBy(
+    final VolumeD volume,
+    final C context,
+    final OctTreeItemVisitorDType<T, C> f)
+  {
+    return this.read(() -> this.tree.containedBy(volume, context, f));
+  }
+
+  @Override
+  public <C> TreeVisitResult overlappedBy(
+    final VolumeD volume,
+    final C context,
+    final OctTreeItemVisitorDType<T, C> f)
+  {
+    return this.read(() -> this.tree.overlappedBy(volume, context, f));
+  }
+
+  @Override
+  public <C> TreeVisitResult raycast(
+    final Ray3D ray,
+    final C context,
+    final OctTreeRaycastVisitorDType<T, C> f)
+  {
+    return this.read(() -> this.tree.raycast(ray, context, f));
+  }
+
+  @Override
+  public <C> TreeVisitResult nearest(
+    final Vector3D point,
+    final int count,
+    final C context,
+    final OctTreeNearestVisitorDType<T, C> f)
+  {
+    return this.read(() -> this.tree.nearest(point, count, context, f));
+  }
+
+  @Override
+  public Optional<OctTreeRaycastResultD<T>> raycastFirst(
+    final Ray3D ray)
+  {
+    return this.read(() -> this.tree.raycastFirst(ray));
+  }
+
+  @Override
+  public <C> TreeVisitResult raycastFirst(
+    final Ray3D ray,
+    final int count,
+    final C context,
+    final OctTreeRaycastVisitorDType<T, C> f)
+  {
+    return this.read(() -> this.tree.raycastFirst(ray, count, context, f));
+  }
+
+  @Override
+  public void raycast(
+    final Ray3D ray,
+    final OctTreeRaycastBufferD<T> results)
+  {
+    this.read(() -> {
+      this.tree.raycast(ray, results);
+      return null;
+    });
+  }
+
+  @Override
+  public long countContainedBy(
+    final VolumeD volume)
+  {
+    return this.read(() -> Long.valueOf(this.tree.countContainedBy(volume))).longValue();
+  }
+
+  @Override
+  public long countOverlapping(
+    final VolumeD volume)
+  {
+    return this.read(() -> Long.valueOf(this.tree.countOverlapping(volume))).longValue();
+  }
+
+  @Override
+  public boolean anyOverlapping(
+    final VolumeD volume)
+  {
+    return this.read(() -> Boolean.valueOf(this.tree.anyOverlapping(volume))).booleanValue();
+  }
+}
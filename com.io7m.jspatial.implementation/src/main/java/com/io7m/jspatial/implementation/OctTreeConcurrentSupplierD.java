@@ -0,0 +1,66 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.jspatial.implementation;
+
+import com.io7m.jspatial.api.octtrees.OctTreeConfigurationD;
+import com.io7m.jspatial.api.octtrees.OctTreeDType;
+import com.io7m.jspatial.api.octtrees.OctTreeSupplierDType;
+import org.osgi.service.component.annotations.Component;
+
+import java.util.Objects;
+
+/**
+ * An implementation of the {@link OctTreeSupplierDType} interface that
+ * supplies {@link OctTreeConcurrentD} trees.
+ */
+
+@Component
+public final class OctTreeConcurrentSupplierD implements OctTreeSupplierDType
+{
+  private final OctTreeSupplierDType supplier;
+
+  /**
+   * Construct a new supplier of trees backed by {@link OctTreeVersionedD} trees.
+   */
+
+  public OctTreeConcurrentSupplierD()
+  {
+    this(new OctTreeVersionedSupplierD());
+  }
+
+  /**
+   * Construct a new supplier of trees backed by trees from the given
+   * supplier.
+   *
+   * @param in_supplier The supplier of underlying trees
+   *
+   * @see OctTreeConcurrentD#create(OctTreeSupplierDType, OctTreeConfigurationD)
+   */
+
+  public OctTreeConcurrentSupplierD(
+    final OctTreeSupplierDType in_supplier)
+  {
+    this.supplier = Objects.requireNonNull(in_supplier, "Supplier");
+  }
+
+  @Override
+  public <A> OctTreeDType<A> create(final OctTreeConfigurationD config)
+  {
+    return OctTreeConcurrentD.create(this.supplier, config);
+  }
+}
@@ -20,28 +20,35 @@ import com.io7m.jaffirm.core.Invariants;
 import com.io7m.jaffirm.core.Preconditions;
 import com.io7m.jregions.core.unparameterized.volumes.VolumeD;
 import com.io7m.jregions.core.unparameterized.volumes.VolumeXYZSplitD;
-import com.io7m.jregions.core.unparameterized.volumes.VolumesD;
 import com.io7m.jspatial.api.Ray3D;
 import com.io7m.jspatial.api.TreeVisitResult;
 import com.io7m.jspatial.api.octtrees.OctTreeConfigurationD;
 import com.io7m.jspatial.api.octtrees.OctTreeDType;
+import com.io7m.jspatial.api.octtrees.OctTreeItemVisitorDType;
+import com.io7m.jspatial.api.octtrees.OctTreeNearestVisitorDType;
 import com.io7m.jspatial.api.octtrees.OctTreeOctantDType;
 import com.io7m.jspatial.api.octtrees.OctTreeOctantIterationDType;
+import com.io7m.jspatial.api.octtrees.OctTreeRaycastBufferD;
 import com.io7m.jspatial.api.octtrees.OctTreeRaycastResultD;
+import com.io7m.jspatial.api.octtrees.OctTreeRaycastVisitorDType;
 import com.io7m.jtensors.core.unparameterized.vectors.Vector3D;
 import com.io7m.jtensors.core.unparameterized.vectors.Vectors3D;
 import com.io7m.junreachable.UnreachableCodeException;
-import it.unimi.dsi.fastutil.objects.ObjectIterator;
-import it.unimi.dsi.fastutil.objects.ObjectSet;
 import it.unimi.dsi.fastutil.objects.Reference2ReferenceMaps;
 import it.unimi.dsi.fastutil.objects.Reference2ReferenceOpenHashMap;
 
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.Set;
 import java.util.SortedSet;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.BiFunction;
+import java.util.stream.Stream;
 
 /**
  * Default implementation of the {@link OctTreeDType} interface.
@@ -51,14 +58,16 @@ import java.util.function.BiFunction;
 
 public final class OctTreeD<T> implements OctTreeDType<T>
 {
-  private final Reference2ReferenceOpenHashMap<T, VolumeD> objects;
+  private static final int INITIAL_ITEMS = 4;
+
+  private final Reference2ReferenceOpenHashMap<T, Item<T>> objects;
   private final OctTreeConfigurationD config;
   private Octant root;
 
   private OctTreeD(final OctTreeConfigurationD in_config)
   {
     this.config = Objects.requireNonNull(in_config, "Configuration");
-    this.root = new Octant(null, in_config.volume());
+    this.root = new Octant(null, in_config.volume(), 0);
     this.objects = new Reference2ReferenceOpenHashMap<>();
   }
 
@@ -77,6 +86,24 @@ public final class OctTreeD<T> implements OctTreeDType<T>
     return new OctTreeD<>(config);
   }
 
+  /**
+   * @return The configuration of this tree
+   */
+
+  OctTreeConfigurationD configuration()
+  {
+    return this.config;
+  }
+
+  /**
+   * @return The root node of this tree
+   */
+
+  Octant rootNode()
+  {
+    return this.root;
+  }
+
   @Override
   public void trim()
   {
@@ -100,13 +127,27 @@ public final class OctTreeD<T> implements OctTreeDType<T>
     }
 
     final OctTreeD<?> that = (OctTreeD<?>) o;
-    return this.objects.equals(that.objects);
+    if (this.objects.size() != that.objects.size()) {
+      return false;
+    }
+
+    for (final Item<T> e : this.objects.values()) {
+      final Item<?> other = that.objects.get(e.value);
+      if (other == null || !Objects.equals(e.volume, other.volume)) {
+        return false;
+      }
+    }
+    return true;
   }
 
   @Override
   public int hashCode()
   {
-    return this.objects.hashCode();
+    int hash = 0;
+    for (final Item<T> e : this.objects.values()) {
+      hash += System.identityHashCode(e.value) ^ e.volume.hashCode();
+    }
+    return hash;
   }
 
   @Override
@@ -123,15 +164,68 @@ public final class OctTreeD<T> implements OctTreeDType<T>
     Objects.requireNonNull(item, "Item");
     Objects.requireNonNull(item_bounds, "Bounds");
 
-    if (this.objects.containsKey(item)) {
-      this.remove(item);
-      Invariants.checkInvariant(
-        item,
-        !this.objects.containsKey(item),
-        x -> "Item must not be in tree");
+    /*
+     * If the object is already in the tree, start from the node that
+     * currently holds it rather than descending from the root.
+     */
+
+    final Item<T> existing = this.objects.get(item);
+    if (existing != null) {
+      return existing.owner.reinsert(existing, new Item<>(item, item_bounds));
+    }
+
+    return this.root.insert(new Item<>(item, item_bounds));
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public long insertAll(
+    final Map<T, VolumeD> items)
+  {
+    Objects.requireNonNull(items, "Items");
+
+    final double[] root_bounds = this.root.bounds;
+    final Item<T>[] entries = (Item<T>[]) new Item<?>[items.size()];
+    final long[] codes = new long[entries.length];
+    int count = 0;
+    for (final Map.Entry<T, VolumeD> entry : items.entrySet()) {
+      final Item<T> item = new Item<>(
+        Objects.requireNonNull(entry.getKey(), "Item"),
+        Objects.requireNonNull(entry.getValue(), "Bounds"));
+      entries[count] = item;
+      codes[count] = VolumeBoundsD.mortonCode(root_bounds, item.bounds, 0);
+      ++count;
+    }
+
+    final int[] order = MortonCodes.sort(codes);
+
+    /*
+     * A tree that already holds objects is updated one object at a time,
+     * in Morton order so that consecutive insertions visit nearby nodes.
+     */
+
+    if (!this.objects.isEmpty()) {
+      long inserted = 0L;
+      for (final int index : order) {
+        final Item<T> item = entries[index];
+        if (this.insert(item.value, item.volume)) {
+          ++inserted;
+        }
+      }
+      return inserted;
     }
 
-    return this.root.insert(item, item_bounds);
+    /*
+     * Otherwise, discard the objects that cannot fit in the tree and build
+     * the tree from the remaining objects in a single pass.
+     */
+
+    final int fitting = BulkLoader.retain(
+      order, index -> VolumeBoundsD.contains(root_bounds, 0, entries[index].bounds, 0));
+    this.objects.ensureCapacity(fitting);
+    this.root = new Octant(null, this.root.volume, 0);
+    BulkLoader.load(new BulkNodes(entries), 8, this.root, order, fitting);
+    return (long) fitting;
   }
 
   @Override
@@ -144,13 +238,19 @@ public final class OctTreeD<T> implements OctTreeDType<T>
   public boolean remove(final T item)
   {
     Objects.requireNonNull(item, "Item");
-    return this.root.remove(item);
+
+    final Item<T> existing = this.objects.get(item);
+    if (existing != null) {
+      existing.owner.removeObject(existing);
+      return true;
+    }
+    return false;
   }
 
   @Override
   public void clear()
   {
-    this.root = new Octant(null, this.root.volume);
+    this.root = new Octant(null, this.root.volume, 0);
     this.objects.clear();
   }
 
@@ -160,10 +260,8 @@ public final class OctTreeD<T> implements OctTreeDType<T>
     Objects.requireNonNull(f, "Function");
 
     final OctTreeDType<U> qt = new OctTreeD<>(this.config);
-    for (final Map.Entry<T, VolumeD> es : this.objects.entrySet()) {
-      final T item = es.getKey();
-      final VolumeD item_volume = es.getValue();
-      qt.insert(f.apply(item, item_volume), es.getValue());
+    for (final Item<T> e : this.objects.values()) {
+      qt.insert(f.apply(e.value, e.volume), e.volume);
     }
     return qt;
   }
@@ -183,9 +281,30 @@ public final class OctTreeD<T> implements OctTreeDType<T>
   {
     Objects.requireNonNull(item, "Item");
 
-    return this.objects.computeIfAbsent(item, i -> {
-      throw new NoSuchElementException(i.toString());
-    });
+    final Item<T> existing = this.objects.get(item);
+    if (existing == null) {
+      throw new NoSuchElementException(item.toString());
+    }
+    return existing.volume;
+  }
+
+  private static <T> TreeVisitResult collectItem(
+    final Collection<T> items,
+    final T item,
+    final VolumeD bounds)
+  {
+    items.add(item);
+    return TreeVisitResult.RESULT_CONTINUE;
+  }
+
+  private static <T> TreeVisitResult collectRaycastResult(
+    final Collection<OctTreeRaycastResultD<T>> items,
+    final T item,
+    final VolumeD bounds,
+    final double distance)
+  {
+    items.add(OctTreeRaycastResultD.of(distance, bounds, item));
+    return TreeVisitResult.RESULT_CONTINUE;
   }
 
   @Override
@@ -195,7 +314,7 @@ public final class OctTreeD<T> implements OctTreeDType<T>
   {
     Objects.requireNonNull(volume, "Volume");
     Objects.requireNonNull(items, "Items");
-    this.root.volumeContaining(volume, items);
+    this.root.volumeContainingVisit(VolumeBoundsD.pack(volume), items, OctTreeD::collectItem);
   }
 
   @Override
@@ -205,7 +324,7 @@ public final class OctTreeD<T> implements OctTreeDType<T>
   {
     Objects.requireNonNull(volume, "Volume");
     Objects.requireNonNull(items, "Items");
-    this.root.volumeOverlapping(volume, items);
+    this.root.volumeOverlappingVisit(VolumeBoundsD.pack(volume), items, OctTreeD::collectItem);
   }
 
   @Override
@@ -215,51 +334,433 @@ public final class OctTreeD<T> implements OctTreeDType<T>
   {
     Objects.requireNonNull(ray, "Ray");
     Objects.requireNonNull(items, "Items");
-    this.root.raycast(ray, items);
+    this.root.raycastVisit(ray, items, OctTreeD::collectRaycastResult);
+  }
+
+  @Override
+  public void containedByParallel(
+    final VolumeD volume,
+    final Set<T> items,
+    final ForkJoinPool pool)
+  {
+    Objects.requireNonNull(volume, "Volume");
+    Objects.requireNonNull(items, "Items");
+    Objects.requireNonNull(pool, "Pool");
+    ParallelQuery.run(pool, this.containingQuery(VolumeBoundsD.pack(volume)), items);
+  }
+
+  @Override
+  public void overlappedByParallel(
+    final VolumeD volume,
+    final Set<T> items,
+    final ForkJoinPool pool)
+  {
+    Objects.requireNonNull(volume, "Volume");
+    Objects.requireNonNull(items, "Items");
+    Objects.requireNonNull(pool, "Pool");
+    ParallelQuery.run(pool, this.overlappingQuery(VolumeBoundsD.pack(volume)), items);
+  }
+
+  @Override
+  public void raycastParallel(
+    final Ray3D ray,
+    final SortedSet<OctTreeRaycastResultD<T>> items,
+    final ForkJoinPool pool)
+  {
+    Objects.requireNonNull(ray, "Ray");
+    Objects.requireNonNull(items, "Items");
+    Objects.requireNonNull(pool, "Pool");
+
+    ParallelQuery.run(
+      pool,
+      new ParallelQuery.Query<>(
+        8,
+        this.root,
+        node -> VolumeBoundsD.intersects(ray, node.bounds, 0),
+        (node, out) -> ParallelQuery.volumeRaycast(ray, node, (index, distance) -> {
+          final Item<T> item = node.itemAt(index);
+          out.accept(OctTreeRaycastResultD.of(distance, item.volume, item.value));
+        }),
+        (node, out) -> node.raycastVisit(ray, out, ParallelQuery::acceptVolumeRaycast)),
+      items);
+  }
+
+  @Override
+  public Stream<T> streamAll()
+  {
+    return TreeSpliterator.stream(this.containingQuery(this.root.bounds), true);
+  }
+
+  @Override
+  public Stream<T> streamOverlapping(
+    final VolumeD volume)
+  {
+    Objects.requireNonNull(volume, "Volume");
+    return TreeSpliterator.stream(this.overlappingQuery(VolumeBoundsD.pack(volume)), false);
+  }
+
+  @Override
+  public void overlappedByBatch(
+    final List<VolumeD> volumes,
+    final List<? extends Set<T>> items)
+  {
+    final BatchQuery.BatchType<T> batch = BatchQuery.overlappingVolumes(volumes, items);
+    this.root.batch(batch, BatchQuery.all(batch), batch.size());
+  }
+
+  @Override
+  public void raycastBatch(
+    final List<Ray3D> rays,
+    final List<OctTreeRaycastBufferD<T>> results)
+  {
+    final BatchQuery.BatchType<T> batch = BatchQuery.raycastVolumes(rays, results);
+    this.root.batch(batch, BatchQuery.all(batch), batch.size());
+  }
+
+  private ParallelQuery.Query<Octant, T> containingQuery(
+    final double[] target)
+  {
+    return new ParallelQuery.Query<>(
+      8,
+      this.root,
+      node -> VolumeBoundsD.touches(target, 0, node.bounds, 0),
+      (node, out) -> ParallelQuery.volumeContaining(
+        target, node, index -> out.accept(node.itemAt(index).value)),
+      (node, out) -> node.volumeContainingVisit(target, out, ParallelQuery::acceptItem));
+  }
+
+  private ParallelQuery.Query<Octant, T> overlappingQuery(
+    final double[] target)
+  {
+    return new ParallelQuery.Query<>(
+      8,
+      this.root,
+      node -> VolumeBoundsD.overlaps(target, 0, node.bounds, 0),
+      (node, out) -> ParallelQuery.volumeOverlapping(
+        target, node, index -> out.accept(node.itemAt(index).value)),
+      (node, out) -> node.volumeOverlappingVisit(target, out, ParallelQuery::acceptItem));
+  }
+
+  @Override
+  public <C> TreeVisitResult containedBy(
+    final VolumeD volume,
+    final C context,
+    final OctTreeItemVisitorDType<T, C> f)
+  {
+    Objects.requireNonNull(volume, "Volume");
+    Objects.requireNonNull(context, "Context");
+    Objects.requireNonNull(f, "Function");
+    return this.root.volumeContainingVisit(VolumeBoundsD.pack(volume), context, f);
   }
 
-  protected final class Octant implements OctTreeOctantDType<T>
+  @Override
+  public <C> TreeVisitResult overlappedBy(
+    final VolumeD volume,
+    final C context,
+    final OctTreeItemVisitorDType<T, C> f)
+  {
+    Objects.requireNonNull(volume, "Volume");
+    Objects.requireNonNull(context, "Context");
+    Objects.requireNonNull(f, "Function");
+    return this.root.volumeOverlappingVisit(VolumeBoundsD.pack(volume), context, f);
+  }
+
+  @Override
+  public <C> TreeVisitResult raycast(
+    final Ray3D ray,
+    final C context,
+    final OctTreeRaycastVisitorDType<T, C> f)
+  {
+    Objects.requireNonNull(ray, "Ray");
+    Objects.requireNonNull(context, "Context");
+    Objects.requireNonNull(f, "Function");
+    return this.root.raycastVisit(ray, context, f);
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public <C> TreeVisitResult nearest(
+    final Vector3D point,
+    final int count,
+    final C context,
+    final OctTreeNearestVisitorDType<T, C> f)
   {
+    Objects.requireNonNull(point, "Point");
+    Objects.requireNonNull(context, "Context");
+    Objects.requireNonNull(f, "Function");
+    Preconditions.checkPreconditionI(
+      count, count >= 0, c -> "Count must be non-negative");
+
+    /*
+     * Best-first search: nodes and items share a single queue ordered by
+     * their distance from the point. An item can only reach the front of
+     * the queue once every node that could contain something nearer has
+     * been expanded, so items leave the queue in order of distance.
+     */
+
+    final double x = point.x();
+    final double y = point.y();
+    final double z = point.z();
+    final DistanceHeap heap = new DistanceHeap();
+    heap.add(VolumeBoundsD.distanceSquared(x, y, z, this.root.bounds, 0), this.root, 0);
+
+    int found = 0;
+    while (found < count && !heap.isEmpty()) {
+      final double key = heap.topKey();
+      final Object top = heap.topObject();
+      heap.removeTop();
+
+      if (top instanceof Item) {
+        final Item<T> item = (Item<T>) top;
+        ++found;
+        if (f.apply(context, item.value, item.volume, Math.sqrt(key))
+          == TreeVisitResult.RESULT_TERMINATE) {
+          return TreeVisitResult.RESULT_TERMINATE;
+        }
+      } else {
+        ((Octant) top).nearestExpand(x, y, z, heap);
+      }
+    }
+    return TreeVisitResult.RESULT_CONTINUE;
+  }
+
+  @Override
+  public Optional<OctTreeRaycastResultD<T>> raycastFirst(
+    final Ray3D ray)
+  {
+    Objects.requireNonNull(ray, "Ray");
+
+    final RaycastHit<T> hit = new RaycastHit<>();
+    if (VolumeBoundsD.entryDistance(ray, this.root.bounds, 0) < hit.distance) {
+      this.root.raycastFirst(ray, VolumeBoundsD.raycastOrder(ray), hit);
+    }
+
+    final Item<T> item = hit.item;
+    if (item != null) {
+      return Optional.of(OctTreeRaycastResultD.of(hit.distance, item.volume, item.value));
+    }
+    return Optional.empty();
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public <C> TreeVisitResult raycastFirst(
+    final Ray3D ray,
+    final int count,
+    final C context,
+    final OctTreeRaycastVisitorDType<T, C> f)
+  {
+    Objects.requireNonNull(ray, "Ray");
+    Objects.requireNonNull(context, "Context");
+    Objects.requireNonNull(f, "Function");
+    Preconditions.checkPreconditionI(
+      count, count >= 0, c -> "Count must be non-negative");
+
+    /*
+     * Best-first search, as with nearest(), ordered by the distance at
+     * which the ray enters each node and item. Nodes that the ray enters
+     * beyond the last object passed to the visitor are never expanded.
+     */
+
+    final DistanceHeap heap = new DistanceHeap();
+    final double root_distance = VolumeBoundsD.entryDistance(ray, this.root.bounds, 0);
+    if (root_distance < Double.POSITIVE_INFINITY) {
+      heap.add(root_distance, this.root, 0);
+    }
+
+    int found = 0;
+    while (found < count && !heap.isEmpty()) {
+      final double key = heap.topKey();
+      final Object top = heap.topObject();
+      heap.removeTop();
+
+      if (top instanceof Item) {
+        final Item<T> item = (Item<T>) top;
+        ++found;
+        if (f.apply(context, item.value, item.volume, key)
+          == TreeVisitResult.RESULT_TERMINATE) {
+          return TreeVisitResult.RESULT_TERMINATE;
+        }
+      } else {
+        ((Octant) top).raycastExpand(ray, heap);
+      }
+    }
+    return TreeVisitResult.RESULT_CONTINUE;
+  }
+
+  @Override
+  public void raycast(
+    final Ray3D ray,
+    final OctTreeRaycastBufferD<T> results)
+  {
+    Objects.requireNonNull(ray, "Ray");
+    Objects.requireNonNull(results, "Results");
+    this.root.raycastBuffer(ray, results);
+  }
+
+  @Override
+  public long countContainedBy(
+    final VolumeD volume)
+  {
+    Objects.requireNonNull(volume, "Volume");
+    return this.root.countContaining(VolumeBoundsD.pack(volume));
+  }
+
+  @Override
+  public long countOverlapping(
+    final VolumeD volume)
+  {
+    Objects.requireNonNull(volume, "Volume");
+    return this.root.countOverlapping(VolumeBoundsD.pack(volume));
+  }
+
+  @Override
+  public boolean anyOverlapping(
+    final VolumeD volume)
+  {
+    Objects.requireNonNull(volume, "Volume");
+    return this.root.anyOverlapping(VolumeBoundsD.pack(volume));
+  }
+
+  /**
+   * The nodes of a tree being built by {@link #insertAll(Map)}.
+   */
+
+  private final class BulkNodes implements BulkLoader.NodesType<Octant>
+  {
+    private final Item<T>[] entries;
+
+    private BulkNodes(
+      final Item<T>[] in_entries)
+    {
+      this.entries = in_entries;
+    }
+
+    @Override
+    public boolean splitFor(
+      final Octant node,
+      final int count)
+    {
+      if (count > OctTreeD.this.config.maximumItemsPerLeaf()
+        && node.canSplit()) {
+        node.split();
+        return true;
+      }
+      return false;
+    }
+
+    @Override
+    public int childIndexContaining(
+      final Octant node,
+      final int source)
+    {
+      return node.childIndexContaining(this.entries[source].bounds);
+    }
+
+    @Override
+    public Octant child(
+      final Octant node,
+      final int index)
+    {
+      return node.child(index);
+    }
+
+    @Override
+    public void hold(
+      final Octant node,
+      final int source)
+    {
+      node.insertObject(this.entries[source]);
+    }
+  }
+
+  /**
+   * An object held by the tree, along with its bounds and the node that
+   * currently holds it.
+   */
+
+  static final class Item<T>
+  {
+    private final T value;
     private final VolumeD volume;
-    private final Reference2ReferenceOpenHashMap<T, VolumeD> octant_objects;
+    private final double[] bounds;
+    private OctTreeD<T>.Octant owner;
+    private int index;
+
+    Item(
+      final T in_value,
+      final VolumeD in_volume)
+    {
+      this.value = in_value;
+      this.volume = in_volume;
+      this.bounds = VolumeBoundsD.pack(in_volume);
+      this.index = -1;
+    }
+  }
+
+  /**
+   * The nearest object found so far by a first-hit raycast.
+   */
+
+  private static final class RaycastHit<T>
+  {
+    private double distance;
+    private Item<T> item;
+
+    private RaycastHit()
+    {
+      this.distance = Double.POSITIVE_INFINITY;
+    }
+  }
+
+  protected final class Octant
+    extends ItemNode<Octant> implements OctTreeOctantDType<T>
+  {
+    private final VolumeD volume;
+    private final double[] bounds;
     private final Octant parent;
-    private final Map<T, VolumeD> octant_objects_view;
-    private Octant x0y0z0;
-    private Octant x0y1z0;
-    private Octant x1y0z0;
-    private Octant x1y1z0;
-    private Octant x0y0z1;
-    private Octant x0y1z1;
-    private Octant x1y0z1;
-    private Octant x1y1z1;
+    private final int node_depth;
+
+    /*
+     * The number of objects held by this node and all of its descendants.
+     */
+
+    private int subtree_count;
+
+    /*
+     * The children of this node, or {@code null} if this node is a leaf.
+     * Bit 0 of the index of a child selects the upper half of the node on
+     * the X axis, bit 1 the upper half on the Y axis, and bit 2 the upper
+     * half on the Z axis.
+     */
+
+    private Object[] children;
 
     private Octant(
       final Octant in_parent,
-      final VolumeD in_volume)
+      final VolumeD in_volume,
+      final int in_depth)
     {
       this.parent = in_parent;
+      this.node_depth = in_depth;
       this.volume = Objects.requireNonNull(in_volume, "Volume");
-      this.octant_objects = new Reference2ReferenceOpenHashMap<>();
-      this.octant_objects_view =
-        Reference2ReferenceMaps.unmodifiable(this.octant_objects);
+      this.bounds = VolumeBoundsD.pack(in_volume);
     }
 
     private boolean insert(
-      final T item,
-      final VolumeD item_bounds)
+      final Item<T> item)
     {
       Preconditions.checkPrecondition(
-        item,
-        !OctTreeD.this.objects.containsKey(item),
+        item.value,
+        !OctTreeD.this.objects.containsKey(item.value),
         x -> "Object must not be in tree");
 
-      return VolumesD.contains(this.volume, item_bounds)
-        && this.insertStep(item, item_bounds);
+      return VolumeBoundsD.contains(this.bounds, 0, item.bounds, 0)
+        && this.insertStep(item);
     }
 
     private boolean insertStep(
-      final T item,
-      final VolumeD item_bounds)
+      final Item<T> item)
     {
       /*
        * The object can fit in this node, but perhaps it is possible to fit it
@@ -267,20 +768,16 @@ public final class OctTreeD<T> implements OctTreeDType<T>
        */
 
       /*
-       * If this node is a leaf, and is large enough to split, do so.
+       * If this node is a leaf, and either has room for the object or cannot
+       * be split further, insert the object directly. Otherwise, split the
+       * node and redistribute the objects it holds to the new children.
        */
 
       if (this.isLeaf()) {
-        if (this.canSplit()) {
-          this.split();
-        } else {
-
-          /*
-           * The node is a leaf, but cannot be split further. Insert directly.
-           */
-
-          return this.insertObject(item, item_bounds);
+        if (this.hasCapacity() || !this.canSplit()) {
+          return this.insertObject(item);
         }
+        this.split();
       }
 
       /*
@@ -289,383 +786,588 @@ public final class OctTreeD<T> implements OctTreeDType<T>
 
       Invariants.checkInvariant(!this.isLeaf(), "Node is not a leaf");
 
-      if (this.insertStepTryZ0(item, item_bounds)) {
-        return true;
-      }
-
-      if (this.insertStepTryZ1(item, item_bounds)) {
-        return true;
+      final Octant child = this.childContaining(item.bounds);
+      if (child != null) {
+        return child.insertStep(item);
       }
 
       /*
        * Otherwise, insert the object into this node.
        */
 
-      return this.insertObject(item, item_bounds);
+      return this.insertObject(item);
     }
 
-    private boolean insertStepTryZ0(
-      final T item,
-      final VolumeD item_bounds)
+    private Octant childContaining(
+      final double[] target)
     {
-      if (VolumesD.contains(this.x0y0z0.volume, item_bounds)) {
-        return this.x0y0z0.insertStep(item, item_bounds);
-      }
-      if (VolumesD.contains(this.x1y0z0.volume, item_bounds)) {
-        return this.x1y0z0.insertStep(item, item_bounds);
-      }
-      if (VolumesD.contains(this.x0y1z0.volume, item_bounds)) {
-        return this.x0y1z0.insertStep(item, item_bounds);
-      }
-      if (VolumesD.contains(this.x1y1z0.volume, item_bounds)) {
-        return this.x1y1z0.insertStep(item, item_bounds);
-      }
-      return false;
+      final int index = this.childIndexContaining(target);
+      return index < 0 ? null : this.child(index);
     }
 
-    private boolean insertStepTryZ1(
-      final T item,
-      final VolumeD item_bounds)
+    /**
+     * @return The index of the first child that can contain {@code target},
+     * or {@code -1} if no child can contain it
+     */
+
+    private int childIndexContaining(
+      final double[] target)
     {
-      if (VolumesD.contains(this.x0y0z1.volume, item_bounds)) {
-        return this.x0y0z1.insertStep(item, item_bounds);
-      }
-      if (VolumesD.contains(this.x1y0z1.volume, item_bounds)) {
-        return this.x1y0z1.insertStep(item, item_bounds);
+      for (int index = 0; index < 8; ++index) {
+        if (VolumeBoundsD.contains(this.child(index).bounds, 0, target, 0)) {
+          return index;
+        }
       }
-      if (VolumesD.contains(this.x0y1z1.volume, item_bounds)) {
-        return this.x0y1z1.insertStep(item, item_bounds);
+      return -1;
+    }
+
+    boolean insertObject(
+      final Item<T> item)
+    {
+      if (this.item_values == null) {
+        this.item_values = new Item<?>[INITIAL_ITEMS];
+        this.item_bounds = new double[INITIAL_ITEMS * VolumeBoundsD.STRIDE];
+      } else if (this.item_count == this.item_values.length) {
+        final int capacity = this.item_values.length * 2;
+        this.item_values = Arrays.copyOf(this.item_values, capacity);
+        this.item_bounds =
+          Arrays.copyOf(this.item_bounds, capacity * VolumeBoundsD.STRIDE);
       }
-      if (VolumesD.contains(this.x1y1z1.volume, item_bounds)) {
-        return this.x1y1z1.insertStep(item, item_bounds);
+
+      final int index = this.item_count;
+      this.item_values[index] = item;
+      System.arraycopy(
+        item.bounds,
+        0,
+        this.item_bounds,
+        index * VolumeBoundsD.STRIDE,
+        VolumeBoundsD.STRIDE);
+      this.item_count = index + 1;
+      for (Octant node = this; node != null; node = node.parent) {
+        ++node.subtree_count;
       }
-      return false;
+
+      item.owner = this;
+      item.index = index;
+      OctTreeD.this.objects.put(item.value, item);
+      return true;
     }
 
-    private boolean insertObject(
-      final T item,
-      final VolumeD item_bounds)
+    @SuppressWarnings("unchecked")
+    private Item<T> itemAt(final int index)
     {
-      OctTreeD.this.objects.put(item, item_bounds);
-      this.octant_objects.put(item, item_bounds);
-      return true;
+      return (Item<T>) this.item_values[index];
     }
 
-    private void split()
+    /**
+     * Remove the object at {@code index} from this node, moving the last
+     * object held by this node into the vacated slot.
+     */
+
+    private void removeIndex(final int index)
+    {
+      final int last = this.item_count - 1;
+      if (index != last) {
+        final Item<T> moved = this.itemAt(last);
+        this.item_values[index] = moved;
+        System.arraycopy(
+          this.item_bounds,
+          last * VolumeBoundsD.STRIDE,
+          this.item_bounds,
+          index * VolumeBoundsD.STRIDE,
+          VolumeBoundsD.STRIDE);
+        moved.index = index;
+      }
+      this.item_values[last] = null;
+      this.item_count = last;
+      for (Octant node = this; node != null; node = node.parent) {
+        --node.subtree_count;
+      }
+    }
+
+    void split()
     {
       Preconditions.checkPrecondition(this.canSplit(), "Octant can split");
 
       final VolumeXYZSplitD<VolumeD> q = OctantsD.subdivide(this.volume);
-      this.x0y0z0 = new Octant(this, q.x0y0z0());
-      this.x0y1z0 = new Octant(this, q.x0y1z0());
-      this.x1y0z0 = new Octant(this, q.x1y0z0());
-      this.x1y1z0 = new Octant(this, q.x1y1z0());
+      final int depth = this.node_depth + 1;
+      this.children = new Object[]{
+        new Octant(this, q.x0y0z0(), depth),
+        new Octant(this, q.x1y0z0(), depth),
+        new Octant(this, q.x0y1z0(), depth),
+        new Octant(this, q.x1y1z0(), depth),
+        new Octant(this, q.x0y0z1(), depth),
+        new Octant(this, q.x1y0z1(), depth),
+        new Octant(this, q.x0y1z1(), depth),
+        new Octant(this, q.x1y1z1(), depth),
+      };
+
+      this.redistribute();
+    }
 
-      this.x0y0z1 = new Octant(this, q.x0y0z1());
-      this.x0y1z1 = new Octant(this, q.x0y1z1());
-      this.x1y0z1 = new Octant(this, q.x1y0z1());
-      this.x1y1z1 = new Octant(this, q.x1y1z1());
+    /**
+     * Move every object held by this (newly split) node into the child nodes
+     * that can contain them. Objects that straddle child boundaries remain in
+     * this node.
+     */
+
+    private void redistribute()
+    {
+      for (int index = this.item_count - 1; index >= 0; --index) {
+        final Item<T> item = this.itemAt(index);
+        final Octant child = this.childContaining(item.bounds);
+        if (child != null) {
+          this.removeIndex(index);
+          child.insertStep(item);
+        }
+      }
     }
 
-    private boolean canSplit()
+    private boolean hasCapacity()
     {
-      final double width = this.volume.sizeX();
-      final double height = this.volume.sizeY();
-      final double depth = this.volume.sizeZ();
+      return this.item_count
+        < OctTreeD.this.config.maximumItemsPerLeaf();
+    }
 
-      final double min_width =
-        Math.max(0.0001, OctTreeD.this.config.minimumOctantWidth());
-      final double min_height =
-        Math.max(0.0001, OctTreeD.this.config.minimumOctantHeight());
-      final double min_depth =
-        Math.max(0.0001, OctTreeD.this.config.minimumOctantDepth());
+    boolean canSplit()
+    {
+      return OctantsD.canSplit(OctTreeD.this.config, this.volume, this.node_depth);
+    }
 
-      final double half_width = width / 2.0;
-      final double half_height = height / 2.0;
-      final double half_depth = depth / 2.0;
+    @Override
+    public int subtreeSize()
+    {
+      return this.subtree_count;
+    }
 
-      return half_width >= min_width
-        && half_height >= min_height
-        && half_depth >= min_depth;
+    @Override
+    public boolean isLeaf()
+    {
+      return this.children == null;
     }
 
-    private boolean isLeaf()
+    private void removeObject(final Item<T> item)
     {
-      return this.x0y0z0 == null;
+      this.removeIndex(item.index);
+      OctTreeD.this.objects.remove(item.value);
+      if (OctTreeD.this.config.trimOnRemove()) {
+        this.unsplitAttemptRecursive();
+      }
     }
 
-    private boolean remove(final T item)
+    /**
+     * Move an object held by this node to new bounds. The object is inserted
+     * starting from the nearest ancestor of this node that can contain the
+     * new bounds, so objects that move only a short distance avoid a full
+     * descent from the root.
+     */
+
+    private boolean reinsert(
+      final Item<T> existing,
+      final Item<T> item)
     {
-      if (!OctTreeD.this.objects.containsKey(item)) {
-        return false;
+      Octant start = this;
+      while (start != null
+        && !VolumeBoundsD.contains(start.bounds, 0, item.bounds, 0)) {
+        start = start.parent;
       }
 
-      final VolumeD bounds = OctTreeD.this.objects.get(item);
-      return this.removeStep(item, bounds);
+      this.removeIndex(existing.index);
+      OctTreeD.this.objects.remove(existing.value);
+
+      final boolean inserted = start != null && start.insertStep(item);
+      if (OctTreeD.this.config.trimOnRemove()) {
+        this.unsplitAttemptRecursive();
+      }
+      return inserted;
     }
 
-    private boolean removeStep(
-      final T item,
-      final VolumeD item_bounds)
+    /**
+     * @return The child at {@code index}, in the same order used when
+     * inserting objects
+     */
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Octant child(final int index)
     {
-      if (this.octant_objects.containsKey(item)) {
-        this.octant_objects.remove(item);
-        OctTreeD.this.objects.remove(item);
-        if (OctTreeD.this.config.trimOnRemove()) {
-          this.unsplitAttemptRecursive();
-        }
-        return true;
-      }
+      return (Octant) this.children[index];
+    }
 
-      /*
-       * Try removing the item from the child nodes.
-       */
+    private <C> TreeVisitResult volumeContainingVisit(
+      final double[] target_volume,
+      final C context,
+      final OctTreeItemVisitorDType<T, C> f)
+    {
+      if (this.isLeaf() && this.item_count == 0) {
+        return TreeVisitResult.RESULT_CONTINUE;
+      }
 
-      Invariants.checkInvariant(!this.isLeaf(), "Node cannot be a leaf");
+      if (VolumeBoundsD.contains(target_volume, 0, this.bounds, 0)) {
+        return this.visitRecursive(context, f);
+      }
 
-      if (this.removeStepTryZ0(item, item_bounds)) {
-        return true;
+      final double[] b = this.item_bounds;
+      for (int index = 0; index < this.item_count; ++index) {
+        if (VolumeBoundsD.contains(
+          target_volume, 0, b, index * VolumeBoundsD.STRIDE)) {
+          final Item<T> item = this.itemAt(index);
+          if (f.apply(context, item.value, item.volume)
+            == TreeVisitResult.RESULT_TERMINATE) {
+            return TreeVisitResult.RESULT_TERMINATE;
+          }
+        }
       }
 
-      if (this.removeStepTryZ1(item, item_bounds)) {
-        return true;
+      if (!this.isLeaf()) {
+        for (int index = 0; index < 8; ++index) {
+          if (this.child(index).volumeContainingVisit(target_volume, context, f)
+            == TreeVisitResult.RESULT_TERMINATE) {
+            return TreeVisitResult.RESULT_TERMINATE;
+          }
+        }
       }
+      return TreeVisitResult.RESULT_CONTINUE;
+    }
 
-      /*
-       * The object must be in the tree, according to remove(). Therefore it
-       * must be in this node, or one of the child octants.
-       */
+    private <C> TreeVisitResult visitRecursive(
+      final C context,
+      final OctTreeItemVisitorDType<T, C> f)
+    {
+      for (int index = 0; index < this.item_count; ++index) {
+        final Item<T> item = this.itemAt(index);
+        if (f.apply(context, item.value, item.volume)
+          == TreeVisitResult.RESULT_TERMINATE) {
+          return TreeVisitResult.RESULT_TERMINATE;
+        }
+      }
 
-      throw new UnreachableCodeException();
+      if (!this.isLeaf()) {
+        for (int index = 0; index < 8; ++index) {
+          if (this.child(index).visitRecursive(context, f)
+            == TreeVisitResult.RESULT_TERMINATE) {
+            return TreeVisitResult.RESULT_TERMINATE;
+          }
+        }
+      }
+      return TreeVisitResult.RESULT_CONTINUE;
     }
 
-    private boolean removeStepTryZ0(
-      final T item,
-      final VolumeD item_bounds)
+    private <C> TreeVisitResult volumeOverlappingVisit(
+      final double[] target_volume,
+      final C context,
+      final OctTreeItemVisitorDType<T, C> f)
     {
-      if (VolumesD.contains(this.x0y0z0.volume, item_bounds)) {
-        return this.x0y0z0.removeStep(item, item_bounds);
+      if (this.isLeaf() && this.item_count == 0) {
+        return TreeVisitResult.RESULT_CONTINUE;
       }
-      if (VolumesD.contains(this.x1y0z0.volume, item_bounds)) {
-        return this.x1y0z0.removeStep(item, item_bounds);
+
+      if (!VolumeBoundsD.overlaps(target_volume, 0, this.bounds, 0)) {
+        return TreeVisitResult.RESULT_CONTINUE;
       }
-      if (VolumesD.contains(this.x0y1z0.volume, item_bounds)) {
-        return this.x0y1z0.removeStep(item, item_bounds);
+
+      final double[] b = this.item_bounds;
+      for (int base = 0; base < this.item_count; base += LeafKernelDType.MAXIMUM_COUNT) {
+        long hits = VolumeBoundsD.overlapping(target_volume, b, base, this.item_count);
+        for (; hits != 0L; hits &= hits - 1L) {
+          final Item<T> item = this.itemAt(base + Long.numberOfTrailingZeros(hits));
+          if (f.apply(context, item.value, item.volume)
+            == TreeVisitResult.RESULT_TERMINATE) {
+            return TreeVisitResult.RESULT_TERMINATE;
+          }
+        }
       }
-      if (VolumesD.contains(this.x1y1z0.volume, item_bounds)) {
-        return this.x1y1z0.removeStep(item, item_bounds);
+
+      if (!this.isLeaf()) {
+        for (int index = 0; index < 8; ++index) {
+          if (this.child(index).volumeOverlappingVisit(target_volume, context, f)
+            == TreeVisitResult.RESULT_TERMINATE) {
+            return TreeVisitResult.RESULT_TERMINATE;
+          }
+        }
       }
-      return false;
+      return TreeVisitResult.RESULT_CONTINUE;
     }
 
-    private boolean removeStepTryZ1(
-      final T item,
-      final VolumeD item_bounds)
+    private <C> TreeVisitResult raycastVisit(
+      final Ray3D ray,
+      final C context,
+      final OctTreeRaycastVisitorDType<T, C> f)
     {
-      if (VolumesD.contains(this.x0y0z1.volume, item_bounds)) {
-        return this.x0y0z1.removeStep(item, item_bounds);
+      if (this.isLeaf() && this.item_count == 0) {
+        return TreeVisitResult.RESULT_CONTINUE;
       }
-      if (VolumesD.contains(this.x1y0z1.volume, item_bounds)) {
-        return this.x1y0z1.removeStep(item, item_bounds);
+
+      if (!VolumeBoundsD.intersects(ray, this.bounds, 0)) {
+        return TreeVisitResult.RESULT_CONTINUE;
       }
-      if (VolumesD.contains(this.x0y1z1.volume, item_bounds)) {
-        return this.x0y1z1.removeStep(item, item_bounds);
+
+      final double[] b = this.item_bounds;
+      for (int base = 0; base < this.item_count; base += LeafKernelDType.MAXIMUM_COUNT) {
+        long hits = VolumeBoundsD.intersecting(ray, b, base, this.item_count);
+        for (; hits != 0L; hits &= hits - 1L) {
+          final int index = base + Long.numberOfTrailingZeros(hits);
+          final int offset = index * VolumeBoundsD.STRIDE;
+          final Item<T> item = this.itemAt(index);
+          final double distance = Vectors3D.distance(
+            Vector3D.of(
+              b[offset],
+              b[offset + 2],
+              b[offset + 4]),
+            ray.origin());
+          if (f.apply(context, item.value, item.volume, distance)
+            == TreeVisitResult.RESULT_TERMINATE) {
+            return TreeVisitResult.RESULT_TERMINATE;
+          }
+        }
       }
-      if (VolumesD.contains(this.x1y1z1.volume, item_bounds)) {
-        return this.x1y1z1.removeStep(item, item_bounds);
+
+      if (!this.isLeaf()) {
+        for (int index = 0; index < 8; ++index) {
+          if (this.child(index).raycastVisit(ray, context, f)
+            == TreeVisitResult.RESULT_TERMINATE) {
+            return TreeVisitResult.RESULT_TERMINATE;
+          }
+        }
       }
-      return false;
+      return TreeVisitResult.RESULT_CONTINUE;
     }
 
-    private void volumeContaining(
-      final VolumeD target_volume,
-      final Set<T> items)
+    private void nearestExpand(
+      final double x,
+      final double y,
+      final double z,
+      final DistanceHeap heap)
     {
-      /*
-       * Avoid performing pointless containment checks.
-       */
-
-      if (this.isLeaf() && this.octant_objects.isEmpty()) {
-        return;
+      final double[] b = this.item_bounds;
+      for (int index = 0; index < this.item_count; ++index) {
+        heap.add(
+          VolumeBoundsD.distanceSquared(x, y, z, b, index * VolumeBoundsD.STRIDE),
+          this.item_values[index],
+          0);
       }
 
-      /*
-       * If {@code target_volume} completely contains this octant, collect
-       * everything in this octant and all children of this octant.
-       */
+      if (!this.isLeaf()) {
+        for (int index = 0; index < 8; ++index) {
+          final Octant c = this.child(index);
+          if (!c.isLeaf() || c.item_count > 0) {
+            heap.add(VolumeBoundsD.distanceSquared(x, y, z, c.bounds, 0), c, 0);
+          }
+        }
+      }
+    }
 
-      if (VolumesD.contains(target_volume, this.volume)) {
-        this.collectRecursive(items);
+    private void raycastFirst(
+      final Ray3D ray,
+      final int order,
+      final RaycastHit<T> hit)
+    {
+      final double[] b = this.item_bounds;
+      for (int index = 0; index < this.item_count; ++index) {
+        final double distance =
+          VolumeBoundsD.entryDistance(ray, b, index * VolumeBoundsD.STRIDE);
+        if (distance < hit.distance) {
+          hit.distance = distance;
+          hit.item = this.itemAt(index);
+        }
       }
 
       /*
-       * Otherwise, {@code target_volume} may be overlapping this octant and
-       * therefore some items may still be contained within {@code target_volume}.
+       * Visit the children nearest the ray origin first, so that the hits
+       * found there can rule out the children further along the ray.
        */
 
-      final ObjectSet<Map.Entry<T, VolumeD>> entries =
-        this.octant_objects.entrySet();
-      final ObjectIterator<Map.Entry<T, VolumeD>> iter =
-        entries.iterator();
-
-      while (iter.hasNext()) {
-        final Map.Entry<T, VolumeD> entry = iter.next();
-        final T item = entry.getKey();
-        final VolumeD item_volume = entry.getValue();
+      if (!this.isLeaf()) {
+        for (int index = 0; index < 8; ++index) {
+          final Octant c = this.child(index ^ order);
+          if (!c.isLeaf() || c.item_count > 0) {
+            if (VolumeBoundsD.entryDistance(ray, c.bounds, 0) < hit.distance) {
+              c.raycastFirst(ray, order, hit);
+            }
+          }
+        }
+      }
+    }
 
-        if (VolumesD.contains(target_volume, item_volume)) {
-          items.add(item);
+    private void raycastExpand(
+      final Ray3D ray,
+      final DistanceHeap heap)
+    {
+      final double[] b = this.item_bounds;
+      for (int index = 0; index < this.item_count; ++index) {
+        final double distance =
+          VolumeBoundsD.entryDistance(ray, b, index * VolumeBoundsD.STRIDE);
+        if (distance < Double.POSITIVE_INFINITY) {
+          heap.add(distance, this.item_values[index], 0);
         }
       }
 
       if (!this.isLeaf()) {
-        this.x0y0z0.volumeContaining(target_volume, items);
-        this.x0y1z0.volumeContaining(target_volume, items);
-        this.x1y0z0.volumeContaining(target_volume, items);
-        this.x1y1z0.volumeContaining(target_volume, items);
-
-        this.x0y0z1.volumeContaining(target_volume, items);
-        this.x0y1z1.volumeContaining(target_volume, items);
-        this.x1y0z1.volumeContaining(target_volume, items);
-        this.x1y1z1.volumeContaining(target_volume, items);
+        for (int index = 0; index < 8; ++index) {
+          final Octant c = this.child(index);
+          if (!c.isLeaf() || c.item_count > 0) {
+            final double distance = VolumeBoundsD.entryDistance(ray, c.bounds, 0);
+            if (distance < Double.POSITIVE_INFINITY) {
+              heap.add(distance, c, 0);
+            }
+          }
+        }
       }
     }
 
-    private void collectRecursive(final Set<T> items)
+    private void raycastBuffer(
+      final Ray3D ray,
+      final OctTreeRaycastBufferD<T> results)
     {
-      items.addAll(this.octant_objects.keySet());
-      if (!this.isLeaf()) {
-        this.x0y0z0.collectRecursive(items);
-        this.x0y1z0.collectRecursive(items);
-        this.x1y0z0.collectRecursive(items);
-        this.x1y1z0.collectRecursive(items);
+      if (this.isLeaf() && this.item_count == 0) {
+        return;
+      }
 
-        this.x0y0z1.collectRecursive(items);
-        this.x0y1z1.collectRecursive(items);
-        this.x1y0z1.collectRecursive(items);
-        this.x1y1z1.collectRecursive(items);
+      if (!VolumeBoundsD.intersects(ray, this.bounds, 0)) {
+        return;
+      }
+
+      final double[] b = this.item_bounds;
+      for (int base = 0; base < this.item_count; base += LeafKernelDType.MAXIMUM_COUNT) {
+        long hits = VolumeBoundsD.raycastCandidates(ray, b, base, this.item_count);
+        for (; hits != 0L; hits &= hits - 1L) {
+          final int index = base + Long.numberOfTrailingZeros(hits);
+          final int offset = index * VolumeBoundsD.STRIDE;
+          final double distance = VolumeBoundsD.entryDistance(ray, b, offset);
+          if (distance < Double.POSITIVE_INFINITY) {
+            results.add(
+              this.itemAt(index).value,
+              distance,
+              b[offset],
+              b[offset + 1],
+              b[offset + 2],
+              b[offset + 3],
+              b[offset + 4],
+              b[offset + 5]);
+          }
+        }
+      }
+
+      if (!this.isLeaf()) {
+        for (int index = 0; index < 8; ++index) {
+          this.child(index).raycastBuffer(ray, results);
+        }
       }
     }
 
-    private void volumeOverlapping(
-      final VolumeD target_volume,
-      final Set<T> items)
+    private long countContaining(
+      final double[] target_volume)
     {
-      /*
-       * Avoid performing pointless overlap checks.
-       */
-
-      if (this.isLeaf() && this.octant_objects.isEmpty()) {
-        return;
+      if (this.subtree_count == 0) {
+        return 0L;
       }
 
       /*
-       * If {@code target_volume} overlaps this octant, test each object
-       * against {@code target_volume}.
+       * If the target volume completely contains this node, then it contains
+       * every object held by this node and its descendants.
        */
 
-      if (VolumesD.overlaps(target_volume, this.volume)) {
-        final ObjectSet<Map.Entry<T, VolumeD>> entries =
-          this.octant_objects.entrySet();
-        final ObjectIterator<Map.Entry<T, VolumeD>> iter =
-          entries.iterator();
-
-        while (iter.hasNext()) {
-          final Map.Entry<T, VolumeD> entry = iter.next();
-          final T item = entry.getKey();
-          final VolumeD item_volume = entry.getValue();
+      if (VolumeBoundsD.contains(target_volume, 0, this.bounds, 0)) {
+        return (long) this.subtree_count;
+      }
+      if (!VolumeBoundsD.touches(target_volume, 0, this.bounds, 0)) {
+        return 0L;
+      }
 
-          if (VolumesD.overlaps(target_volume, item_volume)) {
-            items.add(item);
-          }
+      long count = 0L;
+      final double[] b = this.item_bounds;
+      for (int index = 0; index < this.item_count; ++index) {
+        if (VolumeBoundsD.contains(target_volume, 0, b, index * VolumeBoundsD.STRIDE)) {
+          ++count;
         }
+      }
 
-        if (!this.isLeaf()) {
-          this.x0y0z0.volumeOverlapping(target_volume, items);
-          this.x1y0z0.volumeOverlapping(target_volume, items);
-          this.x0y1z0.volumeOverlapping(target_volume, items);
-          this.x1y1z0.volumeOverlapping(target_volume, items);
-
-          this.x0y0z1.volumeOverlapping(target_volume, items);
-          this.x1y0z1.volumeOverlapping(target_volume, items);
-          this.x0y1z1.volumeOverlapping(target_volume, items);
-          this.x1y1z1.volumeOverlapping(target_volume, items);
+      if (!this.isLeaf()) {
+        for (int index = 0; index < 8; ++index) {
+          count += this.child(index).countContaining(target_volume);
         }
       }
+      return count;
     }
 
-    private void raycast(
-      final Ray3D ray,
-      final SortedSet<OctTreeRaycastResultD<T>> items)
+    private long countOverlapping(
+      final double[] target_volume)
     {
-      /*
-       * Avoid performing pointless ray checks.
-       */
+      if (this.subtree_count == 0) {
+        return 0L;
+      }
+      if (!VolumeBoundsD.overlaps(target_volume, 0, this.bounds, 0)) {
+        return 0L;
+      }
+      if (VolumeBoundsD.overlapsAllWithin(target_volume, 0, this.bounds, 0)) {
+        return (long) this.subtree_count;
+      }
 
-      if (this.isLeaf() && this.octant_objects.isEmpty()) {
-        return;
+      long count = 0L;
+      final double[] b = this.item_bounds;
+      for (int base = 0; base < this.item_count; base += LeafKernelDType.MAXIMUM_COUNT) {
+        count += Long.bitCount(VolumeBoundsD.overlapping(target_volume, b, base, this.item_count));
       }
 
-      /*
-       * Check whether or not the ray intersects the octant.
-       */
+      if (!this.isLeaf()) {
+        for (int index = 0; index < 8; ++index) {
+          count += this.child(index).countOverlapping(target_volume);
+        }
+      }
+      return count;
+    }
 
-      final double x0 = this.volume.minimumX();
-      final double x1 = this.volume.maximumX();
-      final double y0 = this.volume.minimumY();
-      final double y1 = this.volume.maximumY();
-      final double z0 = this.volume.minimumZ();
-      final double z1 = this.volume.maximumZ();
+    private boolean anyOverlapping(
+      final double[] target_volume)
+    {
+      if (this.subtree_count == 0) {
+        return false;
+      }
+      if (!VolumeBoundsD.overlaps(target_volume, 0, this.bounds, 0)) {
+        return false;
+      }
+      if (VolumeBoundsD.overlapsAllWithin(target_volume, 0, this.bounds, 0)) {
+        return true;
+      }
 
-      /*
-       * If the ray intersects the octant, check each item in the octant
-       * against the ray.
-       */
+      final double[] b = this.item_bounds;
+      for (int base = 0; base < this.item_count; base += LeafKernelDType.MAXIMUM_COUNT) {
+        if (VolumeBoundsD.overlapping(target_volume, b, base, this.item_count) != 0L) {
+          return true;
+        }
+      }
 
-      if (ray.intersectsVolume(x0, y0, z0, x1, y1, z1)) {
-        final ObjectSet<Map.Entry<T, VolumeD>> entries =
-          this.octant_objects.entrySet();
-        final ObjectIterator<Map.Entry<T, VolumeD>> iter =
-          entries.iterator();
-
-        while (iter.hasNext()) {
-          final Map.Entry<T, VolumeD> entry = iter.next();
-          final T item = entry.getKey();
-          final VolumeD item_volume = entry.getValue();
-
-          final double item_x0 = item_volume.minimumX();
-          final double item_x1 = item_volume.maximumX();
-          final double item_y0 = item_volume.minimumY();
-          final double item_y1 = item_volume.maximumY();
-          final double item_z0 = item_volume.minimumZ();
-          final double item_z1 = item_volume.maximumZ();
-
-          if (ray.intersectsVolume(
-            item_x0,
-            item_y0,
-            item_z0,
-            item_x1,
-            item_y1,
-            item_z1)) {
-            final double distance = Vectors3D.distance(
-              Vector3D.of(item_x0, item_y0, item_z0),
-              ray.origin());
-            final OctTreeRaycastResultD<T> result =
-              OctTreeRaycastResultD.of(distance, item_volume, item);
-            items.add(result);
+      if (!this.isLeaf()) {
+        for (int index = 0; index < 8; ++index) {
+          if (this.child(index).anyOverlapping(target_volume)) {
+            return true;
           }
         }
+      }
+      return false;
+    }
+
+    private void batch(
+      final BatchQuery.BatchType<T> batch,
+      final int[] candidates,
+      final int candidate_count)
+    {
+      final int count = batch.select(candidates, candidate_count, this.bounds);
 
-        if (!this.isLeaf()) {
-          this.x0y0z0.raycast(ray, items);
-          this.x0y1z0.raycast(ray, items);
-          this.x1y0z0.raycast(ray, items);
-          this.x1y1z0.raycast(ray, items);
+      final double[] b = this.item_bounds;
+      for (int index = 0; index < this.item_count; ++index) {
+        final int offset = index * VolumeBoundsD.STRIDE;
+        for (int query = 0; query < count; ++query) {
+          batch.test(candidates[query], b, offset, this.itemAt(index).value);
+        }
+      }
 
-          this.x0y0z1.raycast(ray, items);
-          this.x0y1z1.raycast(ray, items);
-          this.x1y0z1.raycast(ray, items);
-          this.x1y1z1.raycast(ray, items);
+      if (count > 0 && !this.isLeaf()) {
+        for (int index = 0; index < 8; ++index) {
+          final Octant c = this.child(index);
+          if (c.subtree_count > 0) {
+            c.batch(batch, candidates, count);
+          }
         }
       }
     }
@@ -678,17 +1380,14 @@ public final class OctTreeD<T> implements OctTreeDType<T>
       switch (f.apply(context, this, depth)) {
         case RESULT_CONTINUE: {
           if (!this.isLeaf()) {
-            switch (this.iterateOctantsZ0(context, f, depth)) {
-              case RESULT_CONTINUE:
-                break;
-              case RESULT_TERMINATE:
-                return TreeVisitResult.RESULT_TERMINATE;
-            }
-            switch (this.iterateOctantsZ1(context, f, depth)) {
-              case RESULT_CONTINUE:
-                break;
-              case RESULT_TERMINATE:
-                return TreeVisitResult.RESULT_TERMINATE;
+            for (int index = 0; index < 8; ++index) {
+              switch (this.child(index).iterateOctants(
+                context, f, Math.addExact(depth, 1L))) {
+                case RESULT_CONTINUE:
+                  break;
+                case RESULT_TERMINATE:
+                  return TreeVisitResult.RESULT_TERMINATE;
+              }
             }
           }
           return TreeVisitResult.RESULT_CONTINUE;
@@ -700,74 +1399,16 @@ public final class OctTreeD<T> implements OctTreeDType<T>
       throw new UnreachableCodeException();
     }
 
-    private <C> TreeVisitResult iterateOctantsZ0(
-      final C c,
-      final OctTreeOctantIterationDType<T, C> f,
-      final long depth)
-    {
-      switch (this.x0y0z0.iterateOctants(c, f, Math.addExact(depth, 1L))) {
-        case RESULT_CONTINUE:
-          break;
-        case RESULT_TERMINATE:
-          return TreeVisitResult.RESULT_TERMINATE;
-      }
-      switch (this.x1y0z0.iterateOctants(c, f, Math.addExact(depth, 1L))) {
-        case RESULT_CONTINUE:
-          break;
-        case RESULT_TERMINATE:
-          return TreeVisitResult.RESULT_TERMINATE;
-      }
-      switch (this.x0y1z0.iterateOctants(c, f, Math.addExact(depth, 1L))) {
-        case RESULT_CONTINUE:
-          break;
-        case RESULT_TERMINATE:
-          return TreeVisitResult.RESULT_TERMINATE;
-      }
-      switch (this.x1y1z0.iterateOctants(c, f, Math.addExact(depth, 1L))) {
-        case RESULT_CONTINUE:
-          break;
-        case RESULT_TERMINATE:
-          return TreeVisitResult.RESULT_TERMINATE;
-      }
-      return TreeVisitResult.RESULT_CONTINUE;
-    }
-
-    private <C> TreeVisitResult iterateOctantsZ1(
-      final C c,
-      final OctTreeOctantIterationDType<T, C> f,
-      final long depth)
-    {
-      switch (this.x0y0z1.iterateOctants(c, f, Math.addExact(depth, 1L))) {
-        case RESULT_CONTINUE:
-          break;
-        case RESULT_TERMINATE:
-          return TreeVisitResult.RESULT_TERMINATE;
-      }
-      switch (this.x1y0z1.iterateOctants(c, f, Math.addExact(depth, 1L))) {
-        case RESULT_CONTINUE:
-          break;
-        case RESULT_TERMINATE:
-          return TreeVisitResult.RESULT_TERMINATE;
-      }
-      switch (this.x0y1z1.iterateOctants(c, f, Math.addExact(depth, 1L))) {
-        case RESULT_CONTINUE:
-          break;
-        case RESULT_TERMINATE:
-          return TreeVisitResult.RESULT_TERMINATE;
-      }
-      switch (this.x1y1z1.iterateOctants(c, f, Math.addExact(depth, 1L))) {
-        case RESULT_CONTINUE:
-          break;
-        case RESULT_TERMINATE:
-          return TreeVisitResult.RESULT_TERMINATE;
-      }
-      return TreeVisitResult.RESULT_CONTINUE;
-    }
-
     @Override
     public Map<T, VolumeD> objects()
     {
-      return this.octant_objects_view;
+      final Reference2ReferenceOpenHashMap<T, VolumeD> m =
+        new Reference2ReferenceOpenHashMap<>(this.item_count);
+      for (int index = 0; index < this.item_count; ++index) {
+        final Item<T> item = this.itemAt(index);
+        m.put(item.value, item.volume);
+      }
+      return Reference2ReferenceMaps.unmodifiable(m);
     }
 
     @Override
@@ -784,26 +1425,12 @@ public final class OctTreeD<T> implements OctTreeDType<T>
     {
       if (!this.isLeaf()) {
         boolean prune = true;
-
-        prune &= this.x0y0z0.unsplitCanPrune();
-        prune &= this.x1y0z0.unsplitCanPrune();
-        prune &= this.x0y1z0.unsplitCanPrune();
-        prune &= this.x1y1z0.unsplitCanPrune();
-
-        prune &= this.x0y0z1.unsplitCanPrune();
-        prune &= this.x1y0z1.unsplitCanPrune();
-        prune &= this.x0y1z1.unsplitCanPrune();
-        prune &= this.x1y1z1.unsplitCanPrune();
+        for (int index = 0; index < 8; ++index) {
+          prune &= this.child(index).unsplitCanPrune();
+        }
 
         if (prune) {
-          this.x0y0z0 = null;
-          this.x0y1z0 = null;
-          this.x1y0z0 = null;
-          this.x1y1z0 = null;
-          this.x0y0z1 = null;
-          this.x0y1z1 = null;
-          this.x1y0z1 = null;
-          this.x1y1z1 = null;
+          this.children = null;
         }
       }
     }
@@ -822,44 +1449,23 @@ public final class OctTreeD<T> implements OctTreeDType<T>
 
     private boolean unsplitCanPrune()
     {
-      return this.isLeaf() && this.octant_objects.isEmpty();
+      return this.isLeaf() && this.item_count == 0;
     }
 
     private void trim()
     {
       if (this.isLeaf()) {
         this.unsplitAttemptRecursive();
-      } else {
-        this.x0y0z0.trim();
-        if (this.isLeaf()) {
-          return;
-        }
-        this.x0y1z0.trim();
-        if (this.isLeaf()) {
-          return;
-        }
-        this.x1y0z0.trim();
-        if (this.isLeaf()) {
-          return;
-        }
-        this.x1y1z0.trim();
-        if (this.isLeaf()) {
-          return;
-        }
+        return;
+      }
 
-        this.x0y0z1.trim();
-        if (this.isLeaf()) {
-          return;
-        }
-        this.x0y1z1.trim();
-        if (this.isLeaf()) {
-          return;
-        }
-        this.x1y0z1.trim();
-        if (this.isLeaf()) {
-          return;
-        }
-        this.x1y1z1.trim();
+      /*
+       * Trimming a child may turn this node back into a leaf, at which point
+       * there are no further children to trim.
+       */
+
+      for (int index = 0; index < 8 && !this.isLeaf(); ++index) {
+        this.child(index).trim();
       }
     }
   }
@@ -0,0 +1,62 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jspatial.implementation;
+
+import com.io7m.jspatial.api.octtrees.OctTreeConfigurationL;
+import com.io7m.jspatial.api.octtrees.OctTreeLType;
+import com.io7m.jspatial.api.octtrees.OctTreeSupplierLType;
+import org.osgi.service.component.annotations.Component;
+
+/**
+ * An implementation of the {@link OctTreeSupplierLType} interface that
+ * supplies {@link OctTreeFlatL} trees.
+ */
+
+@Component
+public final class OctTreeFlatSupplierL implements OctTreeSupplierLType
+{
+  private final double looseness;
+
+  /**
+   * Construct a new supplier.
+   */
+
+  public OctTreeFlatSupplierL()
+  {
+    this(1.0);
+  }
+
+  /**
+   * Construct a new supplier of loose trees.
+   *
+   * @param in_looseness The looseness factor
+   *
+   * @see OctTreeFlatL#createLoose(OctTreeConfigurationL, double)
+   */
+
+  public OctTreeFlatSupplierL(
+    final double in_looseness)
+  {
+    this.looseness = in_looseness;
+  }
+
+  @Override
+  public <A> OctTreeLType<A> create(final OctTreeConfigurationL config)
+  {
+    return OctTreeFlatL.createLoose(config, this.looseness);
+  }
+}
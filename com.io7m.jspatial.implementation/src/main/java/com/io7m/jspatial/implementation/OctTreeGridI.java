@@ -0,0 +1,902 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jspatial.implementation;
+
+import com.io7m.jaffirm.core.Preconditions;
+import com.io7m.jregions.core.unparameterized.volumes.VolumeI;
+import com.io7m.jspatial.api.Ray3D;
+import com.io7m.jspatial.api.TreeVisitResult;
+import com.io7m.jspatial.api.octtrees.OctTreeConfigurationI;
+import com.io7m.jspatial.api.octtrees.OctTreeItemVisitorIType;
+import com.io7m.jspatial.api.octtrees.OctTreeIType;
+import com.io7m.jspatial.api.octtrees.OctTreeNearestVisitorIType;
+import com.io7m.jspatial.api.octtrees.OctTreeOctantIterationIType;
+import com.io7m.jspatial.api.octtrees.OctTreeOctantIType;
+import com.io7m.jspatial.api.octtrees.OctTreeRaycastBufferI;
+import com.io7m.jspatial.api.octtrees.OctTreeRaycastResultI;
+import com.io7m.jspatial.api.octtrees.OctTreeRaycastVisitorIType;
+import com.io7m.jtensors.core.unparameterized.vectors.Vector3D;
+import com.io7m.jtensors.core.unparameterized.vectors.Vectors3D;
+import com.io7m.junreachable.UnreachableCodeException;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.objects.Reference2IntMap;
+import it.unimi.dsi.fastutil.objects.Reference2IntOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Reference2ReferenceMaps;
+import it.unimi.dsi.fastutil.objects.Reference2ReferenceOpenHashMap;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.function.BiFunction;
+
+/**
+ * <p>An implementation of the {@link OctTreeIType} interface that divides
+ * the volume of the tree into a uniform grid of cells rather than a
+ * hierarchy of octants.</p>
+ *
+ * <p>The cells have the minimum octant width, height and depth given by the
+ * tree configuration; the other subdivision parameters of the configuration
+ * do not apply. Only the cells that hold objects are stored, in a hash map
+ * keyed by cell index (see {@link UniformGrid}). An object is held by every
+ * cell that it touches, and so inserting, moving or removing an object costs
+ * time proportional to the number of cells it touches rather than to the
+ * depth of a tree. Objects that touch very many cells are held separately,
+ * and are examined by every query.</p>
+ *
+ * <p>The grid performs best when objects are small relative to the cells
+ * and evenly distributed. Iteration exposes the bounds of the tree as an
+ * octant of depth {@code 0} holding the objects that touch more than one
+ * cell, followed by each occupied cell as an octant of depth {@code 1}
+ * holding the objects that touch only that cell.</p>
+ *
+ * @param <T> The precise type of tree objects
+ */
+
+public final class OctTreeGridI<T> implements OctTreeIType<T>
+{
+  private static final int NONE = -1;
+  private static final int BOUNDS_STRIDE = VolumeBoundsI.STRIDE;
+  private static final int INITIAL_ITEMS = 16;
+
+  private final OctTreeConfigurationI config;
+  private final int[] root_bounds;
+  private final Reference2IntOpenHashMap<T> item_slots;
+  private final IntArrayList item_free;
+  private final UniformGrid grid;
+
+  /*
+   * Per-item storage, addressed by slot.
+   */
+
+  private Object[] item_values;
+  private int[] item_bounds;
+  private int item_top;
+
+  private OctTreeGridI(final OctTreeConfigurationI in_config)
+  {
+    this.config = Objects.requireNonNull(in_config, "Configuration");
+    this.root_bounds = VolumeBoundsI.pack(this.config.volume());
+    this.item_slots = new Reference2IntOpenHashMap<>();
+    this.item_slots.defaultReturnValue(NONE);
+    this.item_free = new IntArrayList();
+
+    final int[] b = this.root_bounds;
+    this.grid = new UniformGrid(
+      new long[]{b[0], b[2], b[4]},
+      new long[]{b[1], b[3], b[5]},
+      new long[]{
+        this.config.minimumOctantWidth(),
+        this.config.minimumOctantHeight(),
+        this.config.minimumOctantDepth(),
+      },
+      INITIAL_ITEMS);
+    this.reset(INITIAL_ITEMS);
+  }
+
+  /**
+   * Create a new empty tree with the given bounds.
+   *
+   * @param config The tree configuration
+   * @param <T>    The type of objects contained within the tree
+   *
+   * @return A new tree
+   */
+
+  public static <T> OctTreeIType<T> create(
+    final OctTreeConfigurationI config)
+  {
+    return new OctTreeGridI<>(config);
+  }
+
+  private void reset(
+    final int item_capacity)
+  {
+    this.item_values = new Object[item_capacity];
+    this.item_bounds = new int[item_capacity * BOUNDS_STRIDE];
+    this.item_top = 0;
+    this.item_free.clear();
+    this.grid.reset(item_capacity);
+  }
+
+  @Override
+  public void trim()
+  {
+    this.grid.trim();
+  }
+
+  @Override
+  public long size()
+  {
+    return (long) this.item_slots.size();
+  }
+
+  @Override
+  public boolean equals(final Object o)
+  {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || this.getClass() != o.getClass()) {
+      return false;
+    }
+
+    final OctTreeGridI<?> that = (OctTreeGridI<?>) o;
+    if (this.item_slots.size() != that.item_slots.size()) {
+      return false;
+    }
+
+    for (final Reference2IntMap.Entry<T> e : this.item_slots.reference2IntEntrySet()) {
+      final int slot = e.getIntValue();
+      final int that_slot = that.item_slots.getInt(e.getKey());
+      if (that_slot == NONE) {
+        return false;
+      }
+      if (!Arrays.equals(
+        this.item_bounds,
+        slot * BOUNDS_STRIDE,
+        (slot + 1) * BOUNDS_STRIDE,
+        that.item_bounds,
+        that_slot * BOUNDS_STRIDE,
+        (that_slot + 1) * BOUNDS_STRIDE)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public int hashCode()
+  {
+    int hash = 0;
+    for (final Reference2IntMap.Entry<T> e : this.item_slots.reference2IntEntrySet()) {
+      final int b = e.getIntValue() * BOUNDS_STRIDE;
+      int item_hash = 0;
+      for (int index = 0; index < BOUNDS_STRIDE; ++index) {
+        item_hash = 31 * item_hash + Integer.hashCode(this.item_bounds[b + index]);
+      }
+      hash += System.identityHashCode(e.getKey()) ^ item_hash;
+    }
+    return hash;
+  }
+
+  @Override
+  public VolumeI bounds()
+  {
+    return this.config.volume();
+  }
+
+  @Override
+  public boolean insert(
+    final T item,
+    final VolumeI volume)
+  {
+    Objects.requireNonNull(item, "Item");
+    Objects.requireNonNull(volume, "Bounds");
+
+    final int[] bounds = VolumeBoundsI.pack(volume);
+    final boolean fits = VolumeBoundsI.contains(this.root_bounds, 0, bounds, 0);
+
+    /*
+     * An object that is already in the tree is unlinked from its cells and
+     * linked into the cells of its new bounds, or removed if it no longer
+     * fits.
+     */
+
+    final int existing = this.item_slots.getInt(item);
+    if (existing != NONE) {
+      this.grid.remove(existing);
+      if (!fits) {
+        this.item_slots.removeInt(item);
+        this.itemFree(existing);
+        return false;
+      }
+      System.arraycopy(bounds, 0, this.item_bounds, existing * BOUNDS_STRIDE, BOUNDS_STRIDE);
+      this.itemLink(existing);
+      return true;
+    }
+
+    if (!fits) {
+      return false;
+    }
+
+    final int slot = this.itemAllocate(item, bounds);
+    this.item_slots.put(item, slot);
+    this.itemLink(slot);
+    return true;
+  }
+
+  @Override
+  public long insertAll(
+    final Map<T, VolumeI> items)
+  {
+    Objects.requireNonNull(items, "Items");
+
+    final int capacity = this.item_top + items.size();
+    if (capacity > this.item_values.length) {
+      this.itemsResize(capacity);
+    }
+    this.item_slots.ensureCapacity(this.item_slots.size() + items.size());
+
+    long inserted = 0L;
+    for (final Map.Entry<T, VolumeI> entry : items.entrySet()) {
+      if (this.insert(entry.getKey(), entry.getValue())) {
+        ++inserted;
+      }
+    }
+    return inserted;
+  }
+
+  @Override
+  public boolean contains(final T item)
+  {
+    return this.item_slots.containsKey(item);
+  }
+
+  @Override
+  public boolean remove(final T item)
+  {
+    Objects.requireNonNull(item, "Item");
+
+    final int slot = this.item_slots.removeInt(item);
+    if (slot == NONE) {
+      return false;
+    }
+
+    this.grid.remove(slot);
+    this.itemFree(slot);
+    return true;
+  }
+
+  @Override
+  public void clear()
+  {
+    this.item_slots.clear();
+    this.reset(INITIAL_ITEMS);
+  }
+
+  @Override
+  public <U> OctTreeIType<U> map(final BiFunction<T, VolumeI, U> f)
+  {
+    Objects.requireNonNull(f, "Function");
+
+    final OctTreeIType<U> qt = new OctTreeGridI<>(this.config);
+    for (final Reference2IntMap.Entry<T> e : this.item_slots.reference2IntEntrySet()) {
+      final T item = e.getKey();
+      final VolumeI item_volume =
+        VolumeBoundsI.unpack(this.item_bounds, e.getIntValue() * BOUNDS_STRIDE);
+      qt.insert(f.apply(item, item_volume), item_volume);
+    }
+    return qt;
+  }
+
+  @Override
+  public <C> void iterateOctants(
+    final C context,
+    final OctTreeOctantIterationIType<T, C> f)
+  {
+    Objects.requireNonNull(context, "Context");
+    Objects.requireNonNull(f, "Function");
+
+    switch (f.apply(context, new Octant(NONE), 0L)) {
+      case RESULT_CONTINUE: {
+        for (final long key : this.grid.occupiedKeys()) {
+          if (f.apply(context, new Octant(key), 1L) == TreeVisitResult.RESULT_TERMINATE) {
+            return;
+          }
+        }
+        return;
+      }
+      case RESULT_TERMINATE:
+        return;
+    }
+
+    throw new UnreachableCodeException();
+  }
+
+  @Override
+  public VolumeI volumeFor(final T item)
+  {
+    Objects.requireNonNull(item, "Item");
+
+    final int slot = this.item_slots.getInt(item);
+    if (slot == NONE) {
+      throw new NoSuchElementException(item.toString());
+    }
+    return VolumeBoundsI.unpack(this.item_bounds, slot * BOUNDS_STRIDE);
+  }
+
+  private static <T> TreeVisitResult collectItem(
+    final Set<T> items,
+    final T item,
+    final VolumeI bounds)
+  {
+    items.add(item);
+    return TreeVisitResult.RESULT_CONTINUE;
+  }
+
+  private static <T> TreeVisitResult collectRaycastResult(
+    final SortedSet<OctTreeRaycastResultI<T>> items,
+    final T item,
+    final VolumeI bounds,
+    final double distance)
+  {
+    items.add(OctTreeRaycastResultI.of(distance, bounds, item));
+    return TreeVisitResult.RESULT_CONTINUE;
+  }
+
+  /**
+   * @return The cells that may hold objects contained within {@code target}
+   */
+
+  private long[] containingRange(final int[] target)
+  {
+    return this.grid.range(target[0], target[1], target[2], target[3], target[4], target[5]);
+  }
+
+  /**
+   * @return The cells that may hold objects overlapping {@code target}
+   */
+
+  private long[] overlappingRange(final int[] target)
+  {
+    return this.grid.range(
+      target[0],
+      Math.max(target[0], target[1] - 1),
+      target[2],
+      Math.max(target[2], target[3] - 1),
+      target[4],
+      Math.max(target[4], target[5] - 1));
+  }
+
+  @Override
+  public void containedBy(
+    final VolumeI volume,
+    final Set<T> items)
+  {
+    Objects.requireNonNull(volume, "Volume");
+    Objects.requireNonNull(items, "Items");
+    this.containedBy(volume, items, OctTreeGridI::collectItem);
+  }
+
+  @Override
+  public void overlappedBy(
+    final VolumeI volume,
+    final Set<T> items)
+  {
+    Objects.requireNonNull(volume, "Volume");
+    Objects.requireNonNull(items, "Items");
+    this.overlappedBy(volume, items, OctTreeGridI::collectItem);
+  }
+
+  @Override
+  public void raycast(
+    final Ray3D ray,
+    final SortedSet<OctTreeRaycastResultI<T>> items)
+  {
+    Objects.requireNonNull(ray, "Ray");
+    Objects.requireNonNull(items, "Items");
+    this.raycast(ray, items, OctTreeGridI::collectRaycastResult);
+  }
+
+  @Override
+  public <C> TreeVisitResult containedBy(
+    final VolumeI volume,
+    final C context,
+    final OctTreeItemVisitorIType<T, C> f)
+  {
+    Objects.requireNonNull(volume, "Volume");
+    Objects.requireNonNull(context, "Context");
+    Objects.requireNonNull(f, "Function");
+
+    final int[] target = VolumeBoundsI.pack(volume);
+    if (!VolumeBoundsI.touches(target, 0, this.root_bounds, 0)) {
+      return TreeVisitResult.RESULT_CONTINUE;
+    }
+
+    final int[] ib = this.item_bounds;
+    final boolean completed = this.grid.visitRange(this.containingRange(target), slot -> {
+      final int i = slot * BOUNDS_STRIDE;
+      return !VolumeBoundsI.contains(target, 0, ib, i)
+        || f.apply(context, this.itemValue(slot), VolumeBoundsI.unpack(ib, i))
+        != TreeVisitResult.RESULT_TERMINATE;
+    });
+    return completed ? TreeVisitResult.RESULT_CONTINUE : TreeVisitResult.RESULT_TERMINATE;
+  }
+
+  @Override
+  public <C> TreeVisitResult overlappedBy(
+    final VolumeI volume,
+    final C context,
+    final OctTreeItemVisitorIType<T, C> f)
+  {
+    Objects.requireNonNull(volume, "Volume");
+    Objects.requireNonNull(context, "Context");
+    Objects.requireNonNull(f, "Function");
+
+    final int[] target = VolumeBoundsI.pack(volume);
+    if (!VolumeBoundsI.overlaps(target, 0, this.root_bounds, 0)) {
+      return TreeVisitResult.RESULT_CONTINUE;
+    }
+
+    final int[] ib = this.item_bounds;
+    final boolean completed = this.grid.visitRange(this.overlappingRange(target), slot -> {
+      final int i = slot * BOUNDS_STRIDE;
+      return !VolumeBoundsI.overlaps(target, 0, ib, i)
+        || f.apply(context, this.itemValue(slot), VolumeBoundsI.unpack(ib, i))
+        != TreeVisitResult.RESULT_TERMINATE;
+    });
+    return completed ? TreeVisitResult.RESULT_CONTINUE : TreeVisitResult.RESULT_TERMINATE;
+  }
+
+  private static double[] rayOrigin(final Ray3D ray)
+  {
+    final Vector3D origin = ray.origin();
+    return new double[]{origin.x(), origin.y(), origin.z()};
+  }
+
+  private static double[] rayDirection(final Ray3D ray)
+  {
+    final Vector3D direction = ray.direction();
+    return new double[]{direction.x(), direction.y(), direction.z()};
+  }
+
+  /**
+   * Visit the objects that touch the cells through which a ray passes.
+   */
+
+  private boolean raycastCells(
+    final Ray3D ray,
+    final UniformGrid.SearchVisitorType visitor)
+  {
+    return this.grid.raycast(
+      rayOrigin(ray),
+      rayDirection(ray),
+      VolumeBoundsI.entryDistance(ray, this.root_bounds, 0),
+      visitor);
+  }
+
+  @Override
+  public <C> TreeVisitResult raycast(
+    final Ray3D ray,
+    final C context,
+    final OctTreeRaycastVisitorIType<T, C> f)
+  {
+    Objects.requireNonNull(ray, "Ray");
+    Objects.requireNonNull(context, "Context");
+    Objects.requireNonNull(f, "Function");
+
+    final int[] ib = this.item_bounds;
+    final boolean completed = this.raycastCells(ray, slot -> {
+      final int i = slot * BOUNDS_STRIDE;
+      if (!VolumeBoundsI.intersects(ray, ib, i)) {
+        return true;
+      }
+      final double distance = Vectors3D.distance(
+        Vector3D.of((double) ib[i], (double) ib[i + 2], (double) ib[i + 4]),
+        ray.origin());
+      return f.apply(context, this.itemValue(slot), VolumeBoundsI.unpack(ib, i), distance)
+        != TreeVisitResult.RESULT_TERMINATE;
+    });
+    return completed ? TreeVisitResult.RESULT_CONTINUE : TreeVisitResult.RESULT_TERMINATE;
+  }
+
+  @Override
+  public <C> TreeVisitResult nearest(
+    final Vector3D point,
+    final int count,
+    final C context,
+    final OctTreeNearestVisitorIType<T, C> f)
+  {
+    Objects.requireNonNull(point, "Point");
+    Objects.requireNonNull(context, "Context");
+    Objects.requireNonNull(f, "Function");
+    Preconditions.checkPreconditionI(
+      count, count >= 0, c -> "Count must be non-negative");
+
+    if (count == 0) {
+      return TreeVisitResult.RESULT_CONTINUE;
+    }
+
+    final Search<C> search = new Search<>(point, null, count, context, f);
+    final boolean completed =
+      this.grid.nearest(new double[]{point.x(), point.y(), point.z()}, search);
+    return completed || !search.terminated
+      ? TreeVisitResult.RESULT_CONTINUE : TreeVisitResult.RESULT_TERMINATE;
+  }
+
+  @Override
+  public Optional<OctTreeRaycastResultI<T>> raycastFirst(
+    final Ray3D ray)
+  {
+    Objects.requireNonNull(ray, "Ray");
+
+    final RaycastHit hit = new RaycastHit(ray);
+    this.raycastCells(ray, hit);
+
+    final int slot = hit.slot;
+    if (slot != NONE) {
+      return Optional.of(OctTreeRaycastResultI.of(
+        hit.distance,
+        VolumeBoundsI.unpack(this.item_bounds, slot * BOUNDS_STRIDE),
+        this.itemValue(slot)));
+    }
+    return Optional.empty();
+  }
+
+  @Override
+  public <C> TreeVisitResult raycastFirst(
+    final Ray3D ray,
+    final int count,
+    final C context,
+    final OctTreeRaycastVisitorIType<T, C> f)
+  {
+    Objects.requireNonNull(ray, "Ray");
+    Objects.requireNonNull(context, "Context");
+    Objects.requireNonNull(f, "Function");
+    Preconditions.checkPreconditionI(
+      count, count >= 0, c -> "Count must be non-negative");
+
+    if (count == 0) {
+      return TreeVisitResult.RESULT_CONTINUE;
+    }
+
+    final Search<C> search = new Search<>(null, ray, count, context, f::apply);
+    final boolean completed = this.raycastCells(ray, search);
+    return completed || !search.terminated
+      ? TreeVisitResult.RESULT_CONTINUE : TreeVisitResult.RESULT_TERMINATE;
+  }
+
+  @Override
+  public void raycast(
+    final Ray3D ray,
+    final OctTreeRaycastBufferI<T> results)
+  {
+    Objects.requireNonNull(ray, "Ray");
+    Objects.requireNonNull(results, "Results");
+
+    final int[] ib = this.item_bounds;
+    this.raycastCells(ray, slot -> {
+      final int i = slot * BOUNDS_STRIDE;
+      final double distance = VolumeBoundsI.entryDistance(ray, ib, i);
+      if (distance < Double.POSITIVE_INFINITY) {
+        results.add(
+          this.itemValue(slot),
+          distance,
+          ib[i],
+          ib[i + 1],
+          ib[i + 2],
+          ib[i + 3],
+          ib[i + 4],
+          ib[i + 5]);
+      }
+      return true;
+    });
+  }
+
+  @Override
+  public long countContainedBy(
+    final VolumeI volume)
+  {
+    Objects.requireNonNull(volume, "Volume");
+
+    final int[] target = VolumeBoundsI.pack(volume);
+    if (!VolumeBoundsI.touches(target, 0, this.root_bounds, 0)) {
+      return 0L;
+    }
+
+    final int[] ib = this.item_bounds;
+    final long[] count = new long[1];
+    this.grid.visitRange(this.containingRange(target), slot -> {
+      if (VolumeBoundsI.contains(target, 0, ib, slot * BOUNDS_STRIDE)) {
+        ++count[0];
+      }
+      return true;
+    });
+    return count[0];
+  }
+
+  @Override
+  public long countOverlapping(
+    final VolumeI volume)
+  {
+    Objects.requireNonNull(volume, "Volume");
+
+    final int[] target = VolumeBoundsI.pack(volume);
+    if (!VolumeBoundsI.overlaps(target, 0, this.root_bounds, 0)) {
+      return 0L;
+    }
+
+    final int[] ib = this.item_bounds;
+    final long[] count = new long[1];
+    this.grid.visitRange(this.overlappingRange(target), slot -> {
+      if (VolumeBoundsI.overlaps(target, 0, ib, slot * BOUNDS_STRIDE)) {
+        ++count[0];
+      }
+      return true;
+    });
+    return count[0];
+  }
+
+  @Override
+  public boolean anyOverlapping(
+    final VolumeI volume)
+  {
+    Objects.requireNonNull(volume, "Volume");
+
+    final int[] target = VolumeBoundsI.pack(volume);
+    if (!VolumeBoundsI.overlaps(target, 0, this.root_bounds, 0)) {
+      return false;
+    }
+
+    final int[] ib = this.item_bounds;
+    return !this.grid.visitRange(
+      this.overlappingRange(target),
+      slot -> !VolumeBoundsI.overlaps(target, 0, ib, slot * BOUNDS_STRIDE));
+  }
+
+  @SuppressWarnings("unchecked")
+  private T itemValue(final int slot)
+  {
+    return (T) this.item_values[slot];
+  }
+
+  private void itemsResize(final int capacity)
+  {
+    this.item_values = Arrays.copyOf(this.item_values, capacity);
+    this.item_bounds = Arrays.copyOf(this.item_bounds, capacity * BOUNDS_STRIDE);
+    this.grid.ensureSlots(capacity);
+  }
+
+  private int itemAllocate(
+    final T item,
+    final int[] bounds)
+  {
+    final int slot;
+    if (!this.item_free.isEmpty()) {
+      slot = this.item_free.popInt();
+    } else {
+      if (this.item_top == this.item_values.length) {
+        this.itemsResize(this.item_values.length * 2);
+      }
+      slot = this.item_top;
+      ++this.item_top;
+    }
+
+    this.item_values[slot] = item;
+    System.arraycopy(bounds, 0, this.item_bounds, slot * BOUNDS_STRIDE, BOUNDS_STRIDE);
+    return slot;
+  }
+
+  private void itemFree(final int slot)
+  {
+    this.item_values[slot] = null;
+    this.item_free.push(slot);
+  }
+
+  private void itemLink(final int slot)
+  {
+    final int[] ib = this.item_bounds;
+    final int i = slot * BOUNDS_STRIDE;
+    this.grid.insert(slot, ib[i], ib[i + 1], ib[i + 2], ib[i + 3], ib[i + 4], ib[i + 5]);
+  }
+
+  /**
+   * A best-first search over the objects found by the grid, ordered by the
+   * squared distance from {@code point} if {@code point} is non-null, or the
+   * distance at which {@code ray} enters each object otherwise. Objects are
+   * passed to the function once the grid guarantees that no object it has
+   * not yet found can be closer.
+   */
+
+  private final class Search<C> implements UniformGrid.SearchVisitorType
+  {
+    private final Vector3D point;
+    private final Ray3D ray;
+    private final int count;
+    private final C context;
+    private final OctTreeNearestVisitorIType<T, C> f;
+    private final DistanceHeap heap;
+    private int found;
+    private boolean terminated;
+
+    Search(
+      final Vector3D in_point,
+      final Ray3D in_ray,
+      final int in_count,
+      final C in_context,
+      final OctTreeNearestVisitorIType<T, C> in_f)
+    {
+      this.point = in_point;
+      this.ray = in_ray;
+      this.count = in_count;
+      this.context = in_context;
+      this.f = in_f;
+      this.heap = new DistanceHeap();
+    }
+
+    @Override
+    public boolean visit(final int slot)
+    {
+      final int[] ib = OctTreeGridI.this.item_bounds;
+      final int i = slot * BOUNDS_STRIDE;
+      final double key;
+      if (this.point != null) {
+        key = VolumeBoundsI.distanceSquared(
+          this.point.x(), this.point.y(), this.point.z(), ib, i);
+      } else {
+        key = VolumeBoundsI.entryDistance(this.ray, ib, i);
+      }
+      if (key < Double.POSITIVE_INFINITY) {
+        this.heap.add(key, null, slot);
+      }
+      return true;
+    }
+
+    @Override
+    public boolean bound(final double distance)
+    {
+      final double limit = this.point != null ? distance * distance : distance;
+      while (!this.heap.isEmpty() && this.heap.topKey() <= limit) {
+        final double key = this.heap.topKey();
+        final int slot = this.heap.topInt();
+        this.heap.removeTop();
+
+        ++this.found;
+        final OctTreeGridI<T> tree = OctTreeGridI.this;
+        final TreeVisitResult result = this.f.apply(
+          this.context,
+          tree.itemValue(slot),
+          VolumeBoundsI.unpack(tree.item_bounds, slot * BOUNDS_STRIDE),
+          this.point != null ? Math.sqrt(key) : key);
+        if (result == TreeVisitResult.RESULT_TERMINATE) {
+          this.terminated = true;
+          return false;
+        }
+        if (this.found == this.count) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+  /**
+   * The nearest object found so far by a first-hit raycast.
+   */
+
+  private final class RaycastHit implements UniformGrid.SearchVisitorType
+  {
+    private final Ray3D ray;
+    private double distance;
+    private int slot;
+
+    RaycastHit(final Ray3D in_ray)
+    {
+      this.ray = in_ray;
+      this.distance = Double.POSITIVE_INFINITY;
+      this.slot = NONE;
+    }
+
+    @Override
+    public boolean visit(final int candidate)
+    {
+      final double candidate_distance = VolumeBoundsI.entryDistance(
+        this.ray, OctTreeGridI.this.item_bounds, candidate * BOUNDS_STRIDE);
+      if (candidate_distance < this.distance) {
+        this.distance = candidate_distance;
+        this.slot = candidate;
+      }
+      return true;
+    }
+
+    @Override
+    public boolean bound(final double exit)
+    {
+      return this.distance > exit;
+    }
+  }
+
+  /**
+   * A view of a single octant, created when octants are exposed through
+   * {@link #iterateOctants(Object, OctTreeOctantIterationIType)}. The
+   * octant with key {@code -1} is the bounds of the tree.
+   */
+
+  private final class Octant implements OctTreeOctantIType<T>
+  {
+    private final long key;
+
+    Octant(final long in_key)
+    {
+      this.key = in_key;
+    }
+
+    @Override
+    public Map<T, VolumeI> objects()
+    {
+      final OctTreeGridI<T> tree = OctTreeGridI.this;
+      final Reference2ReferenceOpenHashMap<T, VolumeI> objects =
+        new Reference2ReferenceOpenHashMap<>();
+
+      if (this.key == (long) NONE) {
+        for (final Reference2IntMap.Entry<T> e : tree.item_slots.reference2IntEntrySet()) {
+          final int slot = e.getIntValue();
+          if (!tree.grid.isSingleCell(slot)) {
+            objects.put(
+              e.getKey(),
+              VolumeBoundsI.unpack(tree.item_bounds, slot * BOUNDS_STRIDE));
+          }
+        }
+      } else {
+        for (int e = tree.grid.head(this.key); e != NONE; e = tree.grid.next(e)) {
+          final int slot = tree.grid.slot(e);
+          if (tree.grid.isSingleCell(slot)) {
+            objects.put(
+              tree.itemValue(slot),
+              VolumeBoundsI.unpack(tree.item_bounds, slot * BOUNDS_STRIDE));
+          }
+        }
+      }
+      return Reference2ReferenceMaps.unmodifiable(objects);
+    }
+
+    @Override
+    public VolumeI volume()
+    {
+      final OctTreeGridI<T> tree = OctTreeGridI.this;
+      if (this.key == (long) NONE) {
+        return tree.config.volume();
+      }
+
+      final UniformGrid g = tree.grid;
+      final long x = g.keyIndex(this.key, 0);
+      final long y = g.keyIndex(this.key, 1);
+      final long z = g.keyIndex(this.key, 2);
+      return VolumeI.of(
+        Math.toIntExact(g.cellMinimum(0, x)),
+        Math.toIntExact(g.cellMaximum(0, x)),
+        Math.toIntExact(g.cellMinimum(1, y)),
+        Math.toIntExact(g.cellMaximum(1, y)),
+        Math.toIntExact(g.cellMinimum(2, z)),
+        Math.toIntExact(g.cellMaximum(2, z)));
+    }
+  }
+}
@@ -20,22 +20,24 @@ import com.io7m.jaffirm.core.Invariants;
 import com.io7m.jaffirm.core.Preconditions;
 import com.io7m.jregions.core.unparameterized.volumes.VolumeI;
 import com.io7m.jregions.core.unparameterized.volumes.VolumeXYZSplitI;
-import com.io7m.jregions.core.unparameterized.volumes.VolumesI;
 import com.io7m.jspatial.api.Ray3D;
 import com.io7m.jspatial.api.TreeVisitResult;
 import com.io7m.jspatial.api.octtrees.OctTreeConfigurationI;
 import com.io7m.jspatial.api.octtrees.OctTreeIType;
+import com.io7m.jspatial.api.octtrees.OctTreeItemVisitorIType;
+import com.io7m.jspatial.api.octtrees.OctTreeNearestVisitorIType;
 import com.io7m.jspatial.api.octtrees.OctTreeOctantIType;
 import com.io7m.jspatial.api.octtrees.OctTreeOctantIterationIType;
+import com.io7m.jspatial.api.octtrees.OctTreeRaycastBufferI;
 import com.io7m.jspatial.api.octtrees.OctTreeRaycastResultI;
+import com.io7m.jspatial.api.octtrees.OctTreeRaycastVisitorIType;
 import com.io7m.jtensors.core.unparameterized.vectors.Vector3D;
 import com.io7m.jtensors.core.unparameterized.vectors.Vectors3D;
 import com.io7m.junreachable.UnreachableCodeException;
-import it.unimi.dsi.fastutil.objects.ObjectIterator;
-import it.unimi.dsi.fastutil.objects.ObjectSet;
 import it.unimi.dsi.fastutil.objects.Reference2ReferenceMaps;
 import it.unimi.dsi.fastutil.objects.Reference2ReferenceOpenHashMap;
 
+import java.util.Arrays;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Objects;
@@ -52,14 +54,16 @@ import java.util.function.BiFunction;
 
 public final class OctTreeI<T> implements OctTreeIType<T>
 {
-  private final Reference2ReferenceOpenHashMap<T, VolumeI> objects;
+  private static final int INITIAL_ITEMS = 4;
+
+  private final Reference2ReferenceOpenHashMap<T, Item<T>> objects;
   private final OctTreeConfigurationI config;
   private Octant root;
 
   private OctTreeI(final OctTreeConfigurationI in_config)
   {
     this.config = Objects.requireNonNull(in_config, "Configuration");
-    this.root = new Octant(null, in_config.volume());
+    this.root = new Octant(null, in_config.volume(), 0);
     this.objects = new Reference2ReferenceOpenHashMap<>();
   }
 
@@ -101,13 +105,35 @@ public final class OctTreeI<T> implements OctTreeIType<T>
     }
 
     final OctTreeI<?> that = (OctTreeI<?>) o;
-    return this.objects.equals(that.objects);
+    if (this.objects.size() != that.objects.size()) {
+      return false;
+    }
+
+    for (final Item<T> e : this.objects.values()) {
+      if (!Objects.equals(e.volume(), that.boundsOf(e.value))) {
+        return false;
+      }
+    }
+    return true;
   }
 
   @Override
   public int hashCode()
   {
-    return this.objects.hashCode();
+    int hash = 0;
+    for (final Item<T> e : this.objects.values()) {
+      hash += System.identityHashCode(e.value) ^ e.volume().hashCode();
+    }
+    return hash;
+  }
+
+  private VolumeI boundsOf(final Object item)
+  {
+    final Item<T> existing = this.objects.get(item);
+    if (existing != null) {
+      return existing.volume();
+    }
+    return null;
   }
 
   @Override
@@ -124,15 +150,68 @@ public final class OctTreeI<T> implements OctTreeIType<T>
     Objects.requireNonNull(item, "Item");
     Objects.requireNonNull(item_bounds, "Bounds");
 
-    if (this.objects.containsKey(item)) {
-      this.remove(item);
-      Invariants.checkInvariant(
-        item,
-        !this.objects.containsKey(item),
-        x -> "Item must not be in tree");
+    /*
+     * If the object is already in the tree, start from the node that
+     * currently holds it rather than descending from the root.
+     */
+
+    final Item<T> existing = this.objects.get(item);
+    if (existing != null) {
+      return existing.owner.reinsert(existing, new Item<>(item, item_bounds));
     }
 
-    return this.root.insert(item, item_bounds);
+    return this.root.insert(new Item<>(item, item_bounds));
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public long insertAll(
+    final Map<T, VolumeI> items)
+  {
+    Objects.requireNonNull(items, "Items");
+
+    final int[] root_bounds = this.root.bounds;
+    final Item<T>[] entries = (Item<T>[]) new Item<?>[items.size()];
+    final long[] codes = new long[entries.length];
+    int count = 0;
+    for (final Map.Entry<T, VolumeI> entry : items.entrySet()) {
+      final Item<T> item = new Item<>(
+        Objects.requireNonNull(entry.getKey(), "Item"),
+        Objects.requireNonNull(entry.getValue(), "Bounds"));
+      entries[count] = item;
+      codes[count] = VolumeBoundsI.mortonCode(root_bounds, item.bounds, 0);
+      ++count;
+    }
+
+    final int[] order = MortonCodes.sort(codes);
+
+    /*
+     * A tree that already holds objects is updated one object at a time,
+     * in Morton order so that consecutive insertions visit nearby nodes.
+     */
+
+    if (!this.objects.isEmpty()) {
+      long inserted = 0L;
+      for (final int index : order) {
+        final Item<T> item = entries[index];
+        if (this.insert(item.value, item.volume())) {
+          ++inserted;
+        }
+      }
+      return inserted;
+    }
+
+    /*
+     * Otherwise, discard the objects that cannot fit in the tree and build
+     * the tree from the remaining objects in a single pass.
+     */
+
+    final int fitting = BulkLoader.retain(
+      order, index -> VolumeBoundsI.contains(root_bounds, 0, entries[index].bounds, 0));
+    this.objects.ensureCapacity(fitting);
+    this.root = new Octant(null, this.root.volume, 0);
+    BulkLoader.load(new BulkNodes(entries), 8, this.root, order, fitting);
+    return (long) fitting;
   }
 
   @Override
@@ -145,13 +224,19 @@ public final class OctTreeI<T> implements OctTreeIType<T>
   public boolean remove(final T item)
   {
     Objects.requireNonNull(item, "Item");
-    return this.root.remove(item);
+
+    final Item<T> existing = this.objects.get(item);
+    if (existing != null) {
+      existing.owner.removeObject(existing);
+      return true;
+    }
+    return false;
   }
 
   @Override
   public void clear()
   {
-    this.root = new Octant(null, this.root.volume);
+    this.root = new Octant(null, this.root.volume, 0);
     this.objects.clear();
   }
 
@@ -161,10 +246,8 @@ public final class OctTreeI<T> implements OctTreeIType<T>
     Objects.requireNonNull(f, "Function");
 
     final OctTreeIType<U> qt = new OctTreeI<>(this.config);
-    for (final Map.Entry<T, VolumeI> es : this.objects.entrySet()) {
-      final T item = es.getKey();
-      final VolumeI item_volume = es.getValue();
-      qt.insert(f.apply(item, item_volume), es.getValue());
+    for (final Item<T> e : this.objects.values()) {
+      qt.insert(f.apply(e.value, e.volume()), e.volume());
     }
     return qt;
   }
@@ -184,9 +267,30 @@ public final class OctTreeI<T> implements OctTreeIType<T>
   {
     Objects.requireNonNull(item, "Item");
 
-    return this.objects.computeIfAbsent(item, i -> {
-      throw new NoSuchElementException(i.toString());
-    });
+    final Item<T> existing = this.objects.get(item);
+    if (existing == null) {
+      throw new NoSuchElementException(item.toString());
+    }
+    return existing.volume();
+  }
+
+  private static <T> TreeVisitResult collectItem(
+    final Set<T> items,
+    final T item,
+    final VolumeI bounds)
+  {
+    items.add(item);
+    return TreeVisitResult.RESULT_CONTINUE;
+  }
+
+  private static <T> TreeVisitResult collectRaycastResult(
+    final SortedSet<OctTreeRaycastResultI<T>> items,
+    final T item,
+    final VolumeI bounds,
+    final double distance)
+  {
+    items.add(OctTreeRaycastResultI.of(distance, bounds, item));
+    return TreeVisitResult.RESULT_CONTINUE;
   }
 
   @Override
@@ -196,7 +300,7 @@ public final class OctTreeI<T> implements OctTreeIType<T>
   {
     Objects.requireNonNull(volume, "Volume");
     Objects.requireNonNull(items, "Items");
-    this.root.volumeContaining(volume, items);
+    this.root.volumeContainingVisit(VolumeBoundsI.pack(volume), items, OctTreeI::collectItem);
   }
 
   @Override
@@ -206,7 +310,7 @@ public final class OctTreeI<T> implements OctTreeIType<T>
   {
     Objects.requireNonNull(volume, "Volume");
     Objects.requireNonNull(items, "Items");
-    this.root.volumeOverlapping(volume, items);
+    this.root.volumeOverlappingVisit(VolumeBoundsI.pack(volume), items, OctTreeI::collectItem);
   }
 
   @Override
@@ -216,15 +320,313 @@ public final class OctTreeI<T> implements OctTreeIType<T>
   {
     Objects.requireNonNull(ray, "Ray");
     Objects.requireNonNull(items, "Items");
-    this.root.raycast(ray, items);
+    this.root.raycastVisit(ray, items, OctTreeI::collectRaycastResult);
+  }
+
+  @Override
+  public <C> TreeVisitResult containedBy(
+    final VolumeI volume,
+    final C context,
+    final OctTreeItemVisitorIType<T, C> f)
+  {
+    Objects.requireNonNull(volume, "Volume");
+    Objects.requireNonNull(context, "Context");
+    Objects.requireNonNull(f, "Function");
+    return this.root.volumeContainingVisit(VolumeBoundsI.pack(volume), context, f);
+  }
+
+  @Override
+  public <C> TreeVisitResult overlappedBy(
+    final VolumeI volume,
+    final C context,
+    final OctTreeItemVisitorIType<T, C> f)
+  {
+    Objects.requireNonNull(volume, "Volume");
+    Objects.requireNonNull(context, "Context");
+    Objects.requireNonNull(f, "Function");
+    return this.root.volumeOverlappingVisit(VolumeBoundsI.pack(volume), context, f);
+  }
+
+  @Override
+  public <C> TreeVisitResult raycast(
+    final Ray3D ray,
+    final C context,
+    final OctTreeRaycastVisitorIType<T, C> f)
+  {
+    Objects.requireNonNull(ray, "Ray");
+    Objects.requireNonNull(context, "Context");
+    Objects.requireNonNull(f, "Function");
+    return this.root.raycastVisit(ray, context, f);
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public <C> TreeVisitResult nearest(
+    final Vector3D point,
+    final int count,
+    final C context,
+    final OctTreeNearestVisitorIType<T, C> f)
+  {
+    Objects.requireNonNull(point, "Point");
+    Objects.requireNonNull(context, "Context");
+    Objects.requireNonNull(f, "Function");
+    Preconditions.checkPreconditionI(
+      count, count >= 0, c -> "Count must be non-negative");
+
+    /*
+     * Best-first search: nodes and items share a single queue ordered by
+     * their distance from the point. An item can only reach the front of
+     * the queue once every node that could contain something nearer has
+     * been expanded, so items leave the queue in order of distance.
+     */
+
+    final double x = point.x();
+    final double y = point.y();
+    final double z = point.z();
+    final DistanceHeap heap = new DistanceHeap();
+    heap.add(VolumeBoundsI.distanceSquared(x, y, z, this.root.bounds, 0), this.root, 0);
+
+    int found = 0;
+    while (found < count && !heap.isEmpty()) {
+      final double key = heap.topKey();
+      final Object top = heap.topObject();
+      heap.removeTop();
+
+      if (top instanceof Item) {
+        final Item<T> item = (Item<T>) top;
+        ++found;
+        if (f.apply(context, item.value, item.volume(), Math.sqrt(key))
+          == TreeVisitResult.RESULT_TERMINATE) {
+          return TreeVisitResult.RESULT_TERMINATE;
+        }
+      } else {
+        ((Octant) top).nearestExpand(x, y, z, heap);
+      }
+    }
+    return TreeVisitResult.RESULT_CONTINUE;
+  }
+
+  @Override
+  public Optional<OctTreeRaycastResultI<T>> raycastFirst(
+    final Ray3D ray)
+  {
+    Objects.requireNonNull(ray, "Ray");
+
+    final RaycastHit<T> hit = new RaycastHit<>();
+    if (VolumeBoundsD.entryDistance(ray, this.root.ray_bounds, 0) < hit.distance) {
+      this.root.raycastFirst(ray, VolumeBoundsI.raycastOrder(ray), hit);
+    }
+
+    final Item<T> item = hit.item;
+    if (item != null) {
+      return Optional.of(OctTreeRaycastResultI.of(hit.distance, item.volume(), item.value));
+    }
+    return Optional.empty();
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public <C> TreeVisitResult raycastFirst(
+    final Ray3D ray,
+    final int count,
+    final C context,
+    final OctTreeRaycastVisitorIType<T, C> f)
+  {
+    Objects.requireNonNull(ray, "Ray");
+    Objects.requireNonNull(context, "Context");
+    Objects.requireNonNull(f, "Function");
+    Preconditions.checkPreconditionI(
+      count, count >= 0, c -> "Count must be non-negative");
+
+    /*
+     * Best-first search, as with nearest(), ordered by the distance at
+     * which the ray enters each node and item. Nodes that the ray enters
+     * beyond the last object passed to the visitor are never expanded.
+     */
+
+    final DistanceHeap heap = new DistanceHeap();
+    final double root_distance = VolumeBoundsD.entryDistance(ray, this.root.ray_bounds, 0);
+    if (root_distance < Double.POSITIVE_INFINITY) {
+      heap.add(root_distance, this.root, 0);
+    }
+
+    int found = 0;
+    while (found < count && !heap.isEmpty()) {
+      final double key = heap.topKey();
+      final Object top = heap.topObject();
+      heap.removeTop();
+
+      if (top instanceof Item) {
+        final Item<T> item = (Item<T>) top;
+        ++found;
+        if (f.apply(context, item.value, item.volume(), key)
+          == TreeVisitResult.RESULT_TERMINATE) {
+          return TreeVisitResult.RESULT_TERMINATE;
+        }
+      } else {
+        ((Octant) top).raycastExpand(ray, heap);
+      }
+    }
+    return TreeVisitResult.RESULT_CONTINUE;
+  }
+
+  @Override
+  public void raycast(
+    final Ray3D ray,
+    final OctTreeRaycastBufferI<T> results)
+  {
+    Objects.requireNonNull(ray, "Ray");
+    Objects.requireNonNull(results, "Results");
+    this.root.raycastBuffer(ray, results);
+  }
+
+  @Override
+  public long countContainedBy(
+    final VolumeI volume)
+  {
+    Objects.requireNonNull(volume, "Volume");
+    return this.root.countContaining(VolumeBoundsI.pack(volume));
+  }
+
+  @Override
+  public long countOverlapping(
+    final VolumeI volume)
+  {
+    Objects.requireNonNull(volume, "Volume");
+    return this.root.countOverlapping(VolumeBoundsI.pack(volume));
+  }
+
+  @Override
+  public boolean anyOverlapping(
+    final VolumeI volume)
+  {
+    Objects.requireNonNull(volume, "Volume");
+    return this.root.anyOverlapping(VolumeBoundsI.pack(volume));
+  }
+
+  /**
+   * The nodes of a tree being built by {@link #insertAll(Map)}.
+   */
+
+  private final class BulkNodes implements BulkLoader.NodesType<Octant>
+  {
+    private final Item<T>[] entries;
+
+    private BulkNodes(
+      final Item<T>[] in_entries)
+    {
+      this.entries = in_entries;
+    }
+
+    @Override
+    public boolean splitFor(
+      final Octant node,
+      final int count)
+    {
+      if (count > OctTreeI.this.config.maximumItemsPerLeaf()
+        && node.canSplit()) {
+        node.split();
+        return true;
+      }
+      return false;
+    }
+
+    @Override
+    public int childIndexContaining(
+      final Octant node,
+      final int source)
+    {
+      return node.childIndexContaining(this.entries[source].bounds);
+    }
+
+    @Override
+    public Octant child(
+      final Octant node,
+      final int index)
+    {
+      return node.child(index);
+    }
+
+    @Override
+    public void hold(
+      final Octant node,
+      final int source)
+    {
+      node.insertObject(this.entries[source]);
+    }
+  }
+
+  /**
+   * An object held by the tree, along with its bounds and the node that
+   * currently holds it.
+   */
+
+  private static final class Item<T>
+  {
+    private final T value;
+    private final int[] bounds;
+    private OctTreeI<T>.Octant owner;
+    private int index;
+
+    private Item(
+      final T in_value,
+      final VolumeI in_volume)
+    {
+      this.value = in_value;
+      this.bounds = VolumeBoundsI.pack(in_volume);
+      this.index = -1;
+    }
+
+    private VolumeI volume()
+    {
+      return VolumeBoundsI.unpack(this.bounds, 0);
+    }
+  }
+
+  /**
+   * The nearest object found so far by a first-hit raycast.
+   */
+
+  private static final class RaycastHit<T>
+  {
+    private double distance;
+    private Item<T> item;
+
+    private RaycastHit()
+    {
+      this.distance = Double.POSITIVE_INFINITY;
+    }
   }
 
   protected final class Octant implements OctTreeOctantIType<T>
   {
     private final VolumeI volume;
-    private final Reference2ReferenceOpenHashMap<T, VolumeI> octant_objects;
+    private final int[] bounds;
+    private final double[] ray_bounds;
     private final Octant parent;
-    private final Map<T, VolumeI> octant_objects_view;
+    private final int node_depth;
+
+    /*
+     * The objects held directly by this node. The bounds of object {@code i}
+     * are packed into {@code item_bounds} at offset
+     * {@code i * VolumeBoundsI.STRIDE} so that queries can test objects
+     * without touching the objects themselves. The same bounds are held
+     * as {@code double} values in {@code item_ray_bounds}, so that rays
+     * can be tested without converting each coordinate on every test. The
+     * arrays are allocated on the first insertion, as most nodes in a tree
+     * are empty.
+     */
+
+    private Item<?>[] item_values;
+    private int[] item_bounds;
+    private double[] item_ray_bounds;
+    private int item_count;
+
+    /*
+     * The number of objects held by this node and all of its descendants.
+     */
+
+    private int subtree_count;
     private Octant x0y0z0;
     private Octant x0y1z0;
     private Octant x1y0z0;
@@ -236,31 +638,31 @@ public final class OctTreeI<T> implements OctTreeIType<T>
 
     private Octant(
       final Octant in_parent,
-      final VolumeI in_volume)
+      final VolumeI in_volume,
+      final int in_depth)
     {
       this.parent = in_parent;
+      this.node_depth = in_depth;
       this.volume = Objects.requireNonNull(in_volume, "Volume");
-      this.octant_objects = new Reference2ReferenceOpenHashMap<>();
-      this.octant_objects_view =
-        Reference2ReferenceMaps.unmodifiable(this.octant_objects);
+      this.bounds = VolumeBoundsI.pack(in_volume);
+      this.ray_bounds = new double[VolumeBoundsI.STRIDE];
+      VolumeBoundsI.storeDouble(this.bounds, 0, this.ray_bounds, 0);
     }
 
     private boolean insert(
-      final T item,
-      final VolumeI item_bounds)
+      final Item<T> item)
     {
       Preconditions.checkPrecondition(
-        item,
-        !OctTreeI.this.objects.containsKey(item),
+        item.value,
+        !OctTreeI.this.objects.containsKey(item.value),
         x -> "Object must not be in tree");
 
-      return VolumesI.contains(this.volume, item_bounds)
-        && this.insertStep(item, item_bounds);
+      return VolumeBoundsI.contains(this.bounds, 0, item.bounds, 0)
+        && this.insertStep(item);
     }
 
     private boolean insertStep(
-      final T item,
-      final VolumeI item_bounds)
+      final Item<T> item)
     {
       /*
        * The object can fit in this node, but perhaps it is possible to fit it
@@ -268,20 +670,16 @@ public final class OctTreeI<T> implements OctTreeIType<T>
        */
 
       /*
-       * If this node is a leaf, and is large enough to split, do so.
+       * If this node is a leaf, and either has room for the object or cannot
+       * be split further, insert the object directly. Otherwise, split the
+       * node and redistribute the objects it holds to the new children.
        */
 
       if (this.isLeaf()) {
-        if (this.canSplit()) {
-          this.split();
-        } else {
-
-          /*
-           * The node is a leaf, but cannot be split further. Insert directly.
-           */
-
-          return this.insertObject(item, item_bounds);
+        if (this.hasCapacity() || !this.canSplit()) {
+          return this.insertObject(item);
         }
+        this.split();
       }
 
       /*
@@ -290,68 +688,116 @@ public final class OctTreeI<T> implements OctTreeIType<T>
 
       Invariants.checkInvariant(!this.isLeaf(), "Node is not a leaf");
 
-      if (this.insertStepTryZ0(item, item_bounds)) {
-        return true;
-      }
-
-      if (this.insertStepTryZ1(item, item_bounds)) {
-        return true;
+      final Octant child = this.childContaining(item.bounds);
+      if (child != null) {
+        return child.insertStep(item);
       }
 
       /*
        * Otherwise, insert the object into this node.
        */
 
-      return this.insertObject(item, item_bounds);
+      return this.insertObject(item);
     }
 
-    private boolean insertStepTryZ0(
-      final T item,
-      final VolumeI item_bounds)
+    private Octant childContaining(
+      final int[] target)
     {
-      if (VolumesI.contains(this.x0y0z0.volume, item_bounds)) {
-        return this.x0y0z0.insertStep(item, item_bounds);
-      }
-      if (VolumesI.contains(this.x1y0z0.volume, item_bounds)) {
-        return this.x1y0z0.insertStep(item, item_bounds);
-      }
-      if (VolumesI.contains(this.x0y1z0.volume, item_bounds)) {
-        return this.x0y1z0.insertStep(item, item_bounds);
-      }
-      if (VolumesI.contains(this.x1y1z0.volume, item_bounds)) {
-        return this.x1y1z0.insertStep(item, item_bounds);
-      }
-      return false;
+      final int index = this.childIndexContaining(target);
+      return index < 0 ? null : this.child(index);
     }
 
-    private boolean insertStepTryZ1(
-      final T item,
-      final VolumeI item_bounds)
+    /**
+     * @return The index of the first child that can contain {@code target},
+     * or {@code -1} if no child can contain it
+     */
+
+    private int childIndexContaining(
+      final int[] target)
     {
-      if (VolumesI.contains(this.x0y0z1.volume, item_bounds)) {
-        return this.x0y0z1.insertStep(item, item_bounds);
-      }
-      if (VolumesI.contains(this.x1y0z1.volume, item_bounds)) {
-        return this.x1y0z1.insertStep(item, item_bounds);
-      }
-      if (VolumesI.contains(this.x0y1z1.volume, item_bounds)) {
-        return this.x0y1z1.insertStep(item, item_bounds);
-      }
-      if (VolumesI.contains(this.x1y1z1.volume, item_bounds)) {
-        return this.x1y1z1.insertStep(item, item_bounds);
+      for (int index = 0; index < 8; ++index) {
+        if (VolumeBoundsI.contains(this.child(index).bounds, 0, target, 0)) {
+          return index;
+        }
       }
-      return false;
+      return -1;
     }
 
     private boolean insertObject(
-      final T item,
-      final VolumeI item_bounds)
+      final Item<T> item)
     {
-      OctTreeI.this.objects.put(item, item_bounds);
-      this.octant_objects.put(item, item_bounds);
+      if (this.item_values == null) {
+        this.item_values = new Item<?>[INITIAL_ITEMS];
+        this.item_bounds = new int[INITIAL_ITEMS * VolumeBoundsI.STRIDE];
+        this.item_ray_bounds = new double[INITIAL_ITEMS * VolumeBoundsI.STRIDE];
+      } else if (this.item_count == this.item_values.length) {
+        final int capacity = this.item_values.length * 2;
+        this.item_values = Arrays.copyOf(this.item_values, capacity);
+        this.item_bounds =
+          Arrays.copyOf(this.item_bounds, capacity * VolumeBoundsI.STRIDE);
+        this.item_ray_bounds =
+          Arrays.copyOf(this.item_ray_bounds, capacity * VolumeBoundsI.STRIDE);
+      }
+
+      final int index = this.item_count;
+      this.item_values[index] = item;
+      System.arraycopy(
+        item.bounds,
+        0,
+        this.item_bounds,
+        index * VolumeBoundsI.STRIDE,
+        VolumeBoundsI.STRIDE);
+      VolumeBoundsI.storeDouble(
+        item.bounds, 0, this.item_ray_bounds, index * VolumeBoundsI.STRIDE);
+      this.item_count = index + 1;
+      for (Octant node = this; node != null; node = node.parent) {
+        ++node.subtree_count;
+      }
+
+      item.owner = this;
+      item.index = index;
+      OctTreeI.this.objects.put(item.value, item);
       return true;
     }
 
+    @SuppressWarnings("unchecked")
+    private Item<T> itemAt(final int index)
+    {
+      return (Item<T>) this.item_values[index];
+    }
+
+    /**
+     * Remove the object at {@code index} from this node, moving the last
+     * object held by this node into the vacated slot.
+     */
+
+    private void removeIndex(final int index)
+    {
+      final int last = this.item_count - 1;
+      if (index != last) {
+        final Item<T> moved = this.itemAt(last);
+        this.item_values[index] = moved;
+        System.arraycopy(
+          this.item_bounds,
+          last * VolumeBoundsI.STRIDE,
+          this.item_bounds,
+          index * VolumeBoundsI.STRIDE,
+          VolumeBoundsI.STRIDE);
+        System.arraycopy(
+          this.item_ray_bounds,
+          last * VolumeBoundsI.STRIDE,
+          this.item_ray_bounds,
+          index * VolumeBoundsI.STRIDE,
+          VolumeBoundsI.STRIDE);
+        moved.index = index;
+      }
+      this.item_values[last] = null;
+      this.item_count = last;
+      for (Octant node = this; node != null; node = node.parent) {
+        --node.subtree_count;
+      }
+    }
+
     private void split()
     {
       Preconditions.checkPrecondition(this.canSplit(), "Octant can split");
@@ -360,20 +806,50 @@ public final class OctTreeI<T> implements OctTreeIType<T>
       Invariants.checkInvariant(q_opt.isPresent(), "Octant must be splittable");
 
       q_opt.ifPresent(q -> {
-        this.x0y0z0 = new Octant(this, q.x0y0z0());
-        this.x0y1z0 = new Octant(this, q.x0y1z0());
-        this.x1y0z0 = new Octant(this, q.x1y0z0());
-        this.x1y1z0 = new Octant(this, q.x1y1z0());
-
-        this.x0y0z1 = new Octant(this, q.x0y0z1());
-        this.x0y1z1 = new Octant(this, q.x0y1z1());
-        this.x1y0z1 = new Octant(this, q.x1y0z1());
-        this.x1y1z1 = new Octant(this, q.x1y1z1());
+        this.x0y0z0 = new Octant(this, q.x0y0z0(), this.node_depth + 1);
+        this.x0y1z0 = new Octant(this, q.x0y1z0(), this.node_depth + 1);
+        this.x1y0z0 = new Octant(this, q.x1y0z0(), this.node_depth + 1);
+        this.x1y1z0 = new Octant(this, q.x1y1z0(), this.node_depth + 1);
+
+        this.x0y0z1 = new Octant(this, q.x0y0z1(), this.node_depth + 1);
+        this.x0y1z1 = new Octant(this, q.x0y1z1(), this.node_depth + 1);
+        this.x1y0z1 = new Octant(this, q.x1y0z1(), this.node_depth + 1);
+        this.x1y1z1 = new Octant(this, q.x1y1z1(), this.node_depth + 1);
       });
+
+      this.redistribute();
+    }
+
+    /**
+     * Move every object held by this (newly split) node into the child nodes
+     * that can contain them. Objects that straddle child boundaries remain in
+     * this node.
+     */
+
+    private void redistribute()
+    {
+      for (int index = this.item_count - 1; index >= 0; --index) {
+        final Item<T> item = this.itemAt(index);
+        final Octant child = this.childContaining(item.bounds);
+        if (child != null) {
+          this.removeIndex(index);
+          child.insertStep(item);
+        }
+      }
+    }
+
+    private boolean hasCapacity()
+    {
+      return this.item_count
+        < OctTreeI.this.config.maximumItemsPerLeaf();
     }
 
     private boolean canSplit()
     {
+      if (this.node_depth >= OctTreeI.this.config.maximumDepth()) {
+        return false;
+      }
+
       final int width = this.volume.sizeX();
       final int height = this.volume.sizeY();
       final int depth = this.volume.sizeZ();
@@ -399,380 +875,458 @@ public final class OctTreeI<T> implements OctTreeIType<T>
       return this.x0y0z0 == null;
     }
 
-    private boolean remove(final T item)
+    private void removeObject(final Item<T> item)
     {
-      if (!OctTreeI.this.objects.containsKey(item)) {
-        return false;
+      this.removeIndex(item.index);
+      OctTreeI.this.objects.remove(item.value);
+      if (OctTreeI.this.config.trimOnRemove()) {
+        this.unsplitAttemptRecursive();
       }
-
-      final VolumeI bounds = OctTreeI.this.objects.get(item);
-      return this.removeStep(item, bounds);
     }
 
-    private boolean removeStep(
-      final T item,
-      final VolumeI item_bounds)
+    /**
+     * Move an object held by this node to new bounds. The object is inserted
+     * starting from the nearest ancestor of this node that can contain the
+     * new bounds, so objects that move only a short distance avoid a full
+     * descent from the root.
+     */
+
+    private boolean reinsert(
+      final Item<T> existing,
+      final Item<T> item)
     {
-      if (this.octant_objects.containsKey(item)) {
-        this.octant_objects.remove(item);
-        OctTreeI.this.objects.remove(item);
-        if (OctTreeI.this.config.trimOnRemove()) {
-          this.unsplitAttemptRecursive();
-        }
-        return true;
+      Octant start = this;
+      while (start != null
+        && !VolumeBoundsI.contains(start.bounds, 0, item.bounds, 0)) {
+        start = start.parent;
       }
 
-      /*
-       * Try removing the item from the child nodes.
-       */
-
-      Invariants.checkInvariant(!this.isLeaf(), "Node cannot be a leaf");
-
-      if (this.removeStepTryZ0(item, item_bounds)) {
-        return true;
-      }
+      this.removeIndex(existing.index);
+      OctTreeI.this.objects.remove(existing.value);
 
-      if (this.removeStepTryZ1(item, item_bounds)) {
-        return true;
+      final boolean inserted = start != null && start.insertStep(item);
+      if (OctTreeI.this.config.trimOnRemove()) {
+        this.unsplitAttemptRecursive();
       }
+      return inserted;
+    }
 
-      /*
-       * The object must be in the tree, according to remove(). Therefore it
-       * must be in this node, or one of the child octants.
-       */
+    /**
+     * @return The child at {@code index}, in the same order used when
+     * inserting objects
+     */
 
-      throw new UnreachableCodeException();
+    private Octant child(final int index)
+    {
+      switch (index) {
+        case 0:
+          return this.x0y0z0;
+        case 1:
+          return this.x1y0z0;
+        case 2:
+          return this.x0y1z0;
+        case 3:
+          return this.x1y1z0;
+        case 4:
+          return this.x0y0z1;
+        case 5:
+          return this.x1y0z1;
+        case 6:
+          return this.x0y1z1;
+        case 7:
+          return this.x1y1z1;
+        default:
+          throw new UnreachableCodeException();
+      }
     }
 
-    private boolean removeStepTryZ0(
-      final T item,
-      final VolumeI item_bounds)
+    private <C> TreeVisitResult volumeContainingVisit(
+      final int[] target_volume,
+      final C context,
+      final OctTreeItemVisitorIType<T, C> f)
     {
-      if (VolumesI.contains(this.x0y0z0.volume, item_bounds)) {
-        return this.x0y0z0.removeStep(item, item_bounds);
+      if (this.isLeaf() && this.item_count == 0) {
+        return TreeVisitResult.RESULT_CONTINUE;
       }
-      if (VolumesI.contains(this.x1y0z0.volume, item_bounds)) {
-        return this.x1y0z0.removeStep(item, item_bounds);
+
+      if (VolumeBoundsI.contains(target_volume, 0, this.bounds, 0)) {
+        return this.visitRecursive(context, f);
       }
-      if (VolumesI.contains(this.x0y1z0.volume, item_bounds)) {
-        return this.x0y1z0.removeStep(item, item_bounds);
+
+      final int[] b = this.item_bounds;
+      for (int index = 0; index < this.item_count; ++index) {
+        if (VolumeBoundsI.contains(
+          target_volume, 0, b, index * VolumeBoundsI.STRIDE)) {
+          final Item<T> item = this.itemAt(index);
+          if (f.apply(context, item.value, item.volume())
+            == TreeVisitResult.RESULT_TERMINATE) {
+            return TreeVisitResult.RESULT_TERMINATE;
+          }
+        }
       }
-      if (VolumesI.contains(this.x1y1z0.volume, item_bounds)) {
-        return this.x1y1z0.removeStep(item, item_bounds);
+
+      if (!this.isLeaf()) {
+        for (int index = 0; index < 8; ++index) {
+          if (this.child(index).volumeContainingVisit(target_volume, context, f)
+            == TreeVisitResult.RESULT_TERMINATE) {
+            return TreeVisitResult.RESULT_TERMINATE;
+          }
+        }
       }
-      return false;
+      return TreeVisitResult.RESULT_CONTINUE;
     }
 
-    private boolean removeStepTryZ1(
-      final T item,
-      final VolumeI item_bounds)
+    private <C> TreeVisitResult visitRecursive(
+      final C context,
+      final OctTreeItemVisitorIType<T, C> f)
     {
-      if (VolumesI.contains(this.x0y0z1.volume, item_bounds)) {
-        return this.x0y0z1.removeStep(item, item_bounds);
-      }
-      if (VolumesI.contains(this.x1y0z1.volume, item_bounds)) {
-        return this.x1y0z1.removeStep(item, item_bounds);
-      }
-      if (VolumesI.contains(this.x0y1z1.volume, item_bounds)) {
-        return this.x0y1z1.removeStep(item, item_bounds);
+      for (int index = 0; index < this.item_count; ++index) {
+        final Item<T> item = this.itemAt(index);
+        if (f.apply(context, item.value, item.volume())
+          == TreeVisitResult.RESULT_TERMINATE) {
+          return TreeVisitResult.RESULT_TERMINATE;
+        }
       }
-      if (VolumesI.contains(this.x1y1z1.volume, item_bounds)) {
-        return this.x1y1z1.removeStep(item, item_bounds);
+
+      if (!this.isLeaf()) {
+        for (int index = 0; index < 8; ++index) {
+          if (this.child(index).visitRecursive(context, f)
+            == TreeVisitResult.RESULT_TERMINATE) {
+            return TreeVisitResult.RESULT_TERMINATE;
+          }
+        }
       }
-      return false;
+      return TreeVisitResult.RESULT_CONTINUE;
     }
 
-    private void volumeContaining(
-      final VolumeI target_volume,
-      final Set<T> items)
+    private <C> TreeVisitResult volumeOverlappingVisit(
+      final int[] target_volume,
+      final C context,
+      final OctTreeItemVisitorIType<T, C> f)
     {
-      /*
-       * Avoid performing pointless containment checks.
-       */
-
-      if (this.isLeaf() && this.octant_objects.isEmpty()) {
-        return;
+      if (this.isLeaf() && this.item_count == 0) {
+        return TreeVisitResult.RESULT_CONTINUE;
       }
 
-      /*
-       * If {@code target_volume} completely contains this octant, collect
-       * everything in this octant and all children of this octant.
-       */
+      if (!VolumeBoundsI.overlaps(target_volume, 0, this.bounds, 0)) {
+        return TreeVisitResult.RESULT_CONTINUE;
+      }
 
-      if (VolumesI.contains(target_volume, this.volume)) {
-        this.collectRecursive(items);
+      final int[] b = this.item_bounds;
+      for (int index = 0; index < this.item_count; ++index) {
+        if (VolumeBoundsI.overlaps(
+          target_volume, 0, b, index * VolumeBoundsI.STRIDE)) {
+          final Item<T> item = this.itemAt(index);
+          if (f.apply(context, item.value, item.volume())
+            == TreeVisitResult.RESULT_TERMINATE) {
+            return TreeVisitResult.RESULT_TERMINATE;
+          }
+        }
       }
 
-      /*
-       * Otherwise, {@code target_volume} may be overlapping this octant and
-       * therefore some items may still be contained within {@code target_volume}.
-       */
+      if (!this.isLeaf()) {
+        for (int index = 0; index < 8; ++index) {
+          if (this.child(index).volumeOverlappingVisit(target_volume, context, f)
+            == TreeVisitResult.RESULT_TERMINATE) {
+            return TreeVisitResult.RESULT_TERMINATE;
+          }
+        }
+      }
+      return TreeVisitResult.RESULT_CONTINUE;
+    }
 
-      final ObjectSet<Map.Entry<T, VolumeI>> entries =
-        this.octant_objects.entrySet();
-      final ObjectIterator<Map.Entry<T, VolumeI>> iter =
-        entries.iterator();
+    private <C> TreeVisitResult raycastVisit(
+      final Ray3D ray,
+      final C context,
+      final OctTreeRaycastVisitorIType<T, C> f)
+    {
+      if (this.isLeaf() && this.item_count == 0) {
+        return TreeVisitResult.RESULT_CONTINUE;
+      }
 
-      while (iter.hasNext()) {
-        final Map.Entry<T, VolumeI> entry = iter.next();
-        final T item = entry.getKey();
-        final VolumeI item_volume = entry.getValue();
+      if (!VolumeBoundsD.intersects(ray, this.ray_bounds, 0)) {
+        return TreeVisitResult.RESULT_CONTINUE;
+      }
 
-        if (VolumesI.contains(target_volume, item_volume)) {
-          items.add(item);
+      final double[] b = this.item_ray_bounds;
+      for (int index = 0; index < this.item_count; ++index) {
+        final int offset = index * VolumeBoundsI.STRIDE;
+        if (VolumeBoundsD.intersects(ray, b, offset)) {
+          final Item<T> item = this.itemAt(index);
+          final double distance = Vectors3D.distance(
+            Vector3D.of(
+              b[offset],
+              b[offset + 2],
+              b[offset + 4]),
+            ray.origin());
+          if (f.apply(context, item.value, item.volume(), distance)
+            == TreeVisitResult.RESULT_TERMINATE) {
+            return TreeVisitResult.RESULT_TERMINATE;
+          }
         }
       }
 
       if (!this.isLeaf()) {
-        this.x0y0z0.volumeContaining(target_volume, items);
-        this.x0y1z0.volumeContaining(target_volume, items);
-        this.x1y0z0.volumeContaining(target_volume, items);
-        this.x1y1z0.volumeContaining(target_volume, items);
-
-        this.x0y0z1.volumeContaining(target_volume, items);
-        this.x0y1z1.volumeContaining(target_volume, items);
-        this.x1y0z1.volumeContaining(target_volume, items);
-        this.x1y1z1.volumeContaining(target_volume, items);
+        for (int index = 0; index < 8; ++index) {
+          if (this.child(index).raycastVisit(ray, context, f)
+            == TreeVisitResult.RESULT_TERMINATE) {
+            return TreeVisitResult.RESULT_TERMINATE;
+          }
+        }
       }
+      return TreeVisitResult.RESULT_CONTINUE;
     }
 
-    private void collectRecursive(final Set<T> items)
+    private void nearestExpand(
+      final double x,
+      final double y,
+      final double z,
+      final DistanceHeap heap)
     {
-      items.addAll(this.octant_objects.keySet());
-      if (!this.isLeaf()) {
-        this.x0y0z0.collectRecursive(items);
-        this.x0y1z0.collectRecursive(items);
-        this.x1y0z0.collectRecursive(items);
-        this.x1y1z0.collectRecursive(items);
+      final int[] b = this.item_bounds;
+      for (int index = 0; index < this.item_count; ++index) {
+        heap.add(
+          VolumeBoundsI.distanceSquared(x, y, z, b, index * VolumeBoundsI.STRIDE),
+          this.item_values[index],
+          0);
+      }
 
-        this.x0y0z1.collectRecursive(items);
-        this.x0y1z1.collectRecursive(items);
-        this.x1y0z1.collectRecursive(items);
-        this.x1y1z1.collectRecursive(items);
+      if (!this.isLeaf()) {
+        for (int index = 0; index < 8; ++index) {
+          final Octant c = this.child(index);
+          if (!c.isLeaf() || c.item_count > 0) {
+            heap.add(VolumeBoundsI.distanceSquared(x, y, z, c.bounds, 0), c, 0);
+          }
+        }
       }
     }
 
-    private void volumeOverlapping(
-      final VolumeI target_volume,
-      final Set<T> items)
+    private void raycastFirst(
+      final Ray3D ray,
+      final int order,
+      final RaycastHit<T> hit)
     {
-      /*
-       * Avoid performing pointless overlap checks.
-       */
-
-      if (this.isLeaf() && this.octant_objects.isEmpty()) {
-        return;
+      final double[] b = this.item_ray_bounds;
+      for (int index = 0; index < this.item_count; ++index) {
+        final double distance =
+          VolumeBoundsD.entryDistance(ray, b, index * VolumeBoundsI.STRIDE);
+        if (distance < hit.distance) {
+          hit.distance = distance;
+          hit.item = this.itemAt(index);
+        }
       }
 
       /*
-       * If {@code target_volume} overlaps this octant, test each object
-       * against {@code target_volume}.
+       * Visit the children nearest the ray origin first, so that the hits
+       * found there can rule out the children further along the ray.
        */
 
-      if (VolumesI.overlaps(target_volume, this.volume)) {
-        final ObjectSet<Map.Entry<T, VolumeI>> entries =
-          this.octant_objects.entrySet();
-        final ObjectIterator<Map.Entry<T, VolumeI>> iter =
-          entries.iterator();
-
-        while (iter.hasNext()) {
-          final Map.Entry<T, VolumeI> entry = iter.next();
-          final T item = entry.getKey();
-          final VolumeI item_volume = entry.getValue();
-
-          if (VolumesI.overlaps(target_volume, item_volume)) {
-            items.add(item);
+      if (!this.isLeaf()) {
+        for (int index = 0; index < 8; ++index) {
+          final Octant c = this.child(index ^ order);
+          if (!c.isLeaf() || c.item_count > 0) {
+            if (VolumeBoundsD.entryDistance(ray, c.ray_bounds, 0) < hit.distance) {
+              c.raycastFirst(ray, order, hit);
+            }
           }
         }
+      }
+    }
 
-        if (!this.isLeaf()) {
-          this.x0y0z0.volumeOverlapping(target_volume, items);
-          this.x1y0z0.volumeOverlapping(target_volume, items);
-          this.x0y1z0.volumeOverlapping(target_volume, items);
-          this.x1y1z0.volumeOverlapping(target_volume, items);
+    private void raycastExpand(
+      final Ray3D ray,
+      final DistanceHeap heap)
+    {
+      final double[] b = this.item_ray_bounds;
+      for (int index = 0; index < this.item_count; ++index) {
+        final double distance =
+          VolumeBoundsD.entryDistance(ray, b, index * VolumeBoundsI.STRIDE);
+        if (distance < Double.POSITIVE_INFINITY) {
+          heap.add(distance, this.item_values[index], 0);
+        }
+      }
 
-          this.x0y0z1.volumeOverlapping(target_volume, items);
-          this.x1y0z1.volumeOverlapping(target_volume, items);
-          this.x0y1z1.volumeOverlapping(target_volume, items);
-          this.x1y1z1.volumeOverlapping(target_volume, items);
+      if (!this.isLeaf()) {
+        for (int index = 0; index < 8; ++index) {
+          final Octant c = this.child(index);
+          if (!c.isLeaf() || c.item_count > 0) {
+            final double distance = VolumeBoundsD.entryDistance(ray, c.ray_bounds, 0);
+            if (distance < Double.POSITIVE_INFINITY) {
+              heap.add(distance, c, 0);
+            }
+          }
         }
       }
     }
 
-    private void raycast(
+    private void raycastBuffer(
       final Ray3D ray,
-      final SortedSet<OctTreeRaycastResultI<T>> items)
+      final OctTreeRaycastBufferI<T> results)
     {
-      /*
-       * Avoid performing pointless ray checks.
-       */
+      if (this.isLeaf() && this.item_count == 0) {
+        return;
+      }
 
-      if (this.isLeaf() && this.octant_objects.isEmpty()) {
+      if (!VolumeBoundsD.intersects(ray, this.ray_bounds, 0)) {
         return;
       }
 
-      /*
-       * Check whether or not the ray intersects the octant.
-       */
+      final int[] b = this.item_bounds;
+      final double[] rb = this.item_ray_bounds;
+      for (int index = 0; index < this.item_count; ++index) {
+        final int offset = index * VolumeBoundsI.STRIDE;
+        final double distance = VolumeBoundsD.entryDistance(ray, rb, offset);
+        if (distance < Double.POSITIVE_INFINITY) {
+          results.add(
+            this.itemAt(index).value,
+            distance,
+            b[offset],
+            b[offset + 1],
+            b[offset + 2],
+            b[offset + 3],
+            b[offset + 4],
+            b[offset + 5]);
+        }
+      }
 
-      final double x0 = (double) this.volume.minimumX();
-      final double x1 = (double) this.volume.maximumX();
-      final double y0 = (double) this.volume.minimumY();
-      final double y1 = (double) this.volume.maximumY();
-      final double z0 = (double) this.volume.minimumZ();
-      final double z1 = (double) this.volume.maximumZ();
+      if (!this.isLeaf()) {
+        for (int index = 0; index < 8; ++index) {
+          this.child(index).raycastBuffer(ray, results);
+        }
+      }
+    }
+
+    private long countContaining(
+      final int[] target_volume)
+    {
+      if (this.subtree_count == 0) {
+        return 0L;
+      }
 
       /*
-       * If the ray intersects the octant, check each item in the octant
-       * against the ray.
+       * If the target volume completely contains this node, then it contains
+       * every object held by this node and its descendants.
        */
 
-      if (ray.intersectsVolume(x0, y0, z0, x1, y1, z1)) {
-        final ObjectSet<Map.Entry<T, VolumeI>> entries =
-          this.octant_objects.entrySet();
-        final ObjectIterator<Map.Entry<T, VolumeI>> iter =
-          entries.iterator();
-
-        while (iter.hasNext()) {
-          final Map.Entry<T, VolumeI> entry = iter.next();
-          final T item = entry.getKey();
-          final VolumeI item_volume = entry.getValue();
-
-          final double item_x0 = (double) item_volume.minimumX();
-          final double item_x1 = (double) item_volume.maximumX();
-          final double item_y0 = (double) item_volume.minimumY();
-          final double item_y1 = (double) item_volume.maximumY();
-          final double item_z0 = (double) item_volume.minimumZ();
-          final double item_z1 = (double) item_volume.maximumZ();
-
-          if (ray.intersectsVolume(
-            item_x0,
-            item_y0,
-            item_z0,
-            item_x1,
-            item_y1,
-            item_z1)) {
-            final double distance = Vectors3D.distance(
-              Vector3D.of(item_x0, item_y0, item_z0),
-              ray.origin());
-            final OctTreeRaycastResultI<T> result =
-              OctTreeRaycastResultI.of(distance, item_volume, item);
-            items.add(result);
-          }
-        }
+      if (VolumeBoundsI.contains(target_volume, 0, this.bounds, 0)) {
+        return (long) this.subtree_count;
+      }
+      if (!VolumeBoundsI.touches(target_volume, 0, this.bounds, 0)) {
+        return 0L;
+      }
 
-        if (!this.isLeaf()) {
-          this.x0y0z0.raycast(ray, items);
-          this.x0y1z0.raycast(ray, items);
-          this.x1y0z0.raycast(ray, items);
-          this.x1y1z0.raycast(ray, items);
+      long count = 0L;
+      final int[] b = this.item_bounds;
+      for (int index = 0; index < this.item_count; ++index) {
+        if (VolumeBoundsI.contains(target_volume, 0, b, index * VolumeBoundsI.STRIDE)) {
+          ++count;
+        }
+      }
 
-          this.x0y0z1.raycast(ray, items);
-          this.x0y1z1.raycast(ray, items);
-          this.x1y0z1.raycast(ray, items);
-          this.x1y1z1.raycast(ray, items);
+      if (!this.isLeaf()) {
+        for (int index = 0; index < 8; ++index) {
+          count += this.child(index).countContaining(target_volume);
         }
       }
+      return count;
     }
 
-    private <C> TreeVisitResult iterateOctants(
-      final C context,
-      final OctTreeOctantIterationIType<T, C> f,
-      final long depth)
+    private long countOverlapping(
+      final int[] target_volume)
     {
-      switch (f.apply(context, this, depth)) {
-        case RESULT_CONTINUE: {
-          if (!this.isLeaf()) {
-            switch (this.iterateOctantsZ0(context, f, depth)) {
-              case RESULT_CONTINUE:
-                break;
-              case RESULT_TERMINATE:
-                return TreeVisitResult.RESULT_TERMINATE;
-            }
-            switch (this.iterateOctantsZ1(context, f, depth)) {
-              case RESULT_CONTINUE:
-                break;
-              case RESULT_TERMINATE:
-                return TreeVisitResult.RESULT_TERMINATE;
-            }
-          }
-          return TreeVisitResult.RESULT_CONTINUE;
+      if (this.subtree_count == 0) {
+        return 0L;
+      }
+      if (!VolumeBoundsI.overlaps(target_volume, 0, this.bounds, 0)) {
+        return 0L;
+      }
+      if (VolumeBoundsI.overlapsAllWithin(target_volume, 0, this.bounds, 0)) {
+        return (long) this.subtree_count;
+      }
+
+      long count = 0L;
+      final int[] b = this.item_bounds;
+      for (int index = 0; index < this.item_count; ++index) {
+        if (VolumeBoundsI.overlaps(target_volume, 0, b, index * VolumeBoundsI.STRIDE)) {
+          ++count;
         }
-        case RESULT_TERMINATE:
-          return TreeVisitResult.RESULT_TERMINATE;
       }
 
-      throw new UnreachableCodeException();
+      if (!this.isLeaf()) {
+        for (int index = 0; index < 8; ++index) {
+          count += this.child(index).countOverlapping(target_volume);
+        }
+      }
+      return count;
     }
 
-    private <C> TreeVisitResult iterateOctantsZ0(
-      final C c,
-      final OctTreeOctantIterationIType<T, C> f,
-      final long depth)
+    private boolean anyOverlapping(
+      final int[] target_volume)
     {
-      switch (this.x0y0z0.iterateOctants(c, f, Math.addExact(depth, 1L))) {
-        case RESULT_CONTINUE:
-          break;
-        case RESULT_TERMINATE:
-          return TreeVisitResult.RESULT_TERMINATE;
+      if (this.subtree_count == 0) {
+        return false;
       }
-      switch (this.x1y0z0.iterateOctants(c, f, Math.addExact(depth, 1L))) {
-        case RESULT_CONTINUE:
-          break;
-        case RESULT_TERMINATE:
-          return TreeVisitResult.RESULT_TERMINATE;
+      if (!VolumeBoundsI.overlaps(target_volume, 0, this.bounds, 0)) {
+        return false;
       }
-      switch (this.x0y1z0.iterateOctants(c, f, Math.addExact(depth, 1L))) {
-        case RESULT_CONTINUE:
-          break;
-        case RESULT_TERMINATE:
-          return TreeVisitResult.RESULT_TERMINATE;
+      if (VolumeBoundsI.overlapsAllWithin(target_volume, 0, this.bounds, 0)) {
+        return true;
       }
-      switch (this.x1y1z0.iterateOctants(c, f, Math.addExact(depth, 1L))) {
-        case RESULT_CONTINUE:
-          break;
-        case RESULT_TERMINATE:
-          return TreeVisitResult.RESULT_TERMINATE;
+
+      final int[] b = this.item_bounds;
+      for (int index = 0; index < this.item_count; ++index) {
+        if (VolumeBoundsI.overlaps(target_volume, 0, b, index * VolumeBoundsI.STRIDE)) {
+          return true;
+        }
       }
-      return TreeVisitResult.RESULT_CONTINUE;
+
+      if (!this.isLeaf()) {
+        for (int index = 0; index < 8; ++index) {
+          if (this.child(index).anyOverlapping(target_volume)) {
+            return true;
+          }
+        }
+      }
+      return false;
     }
 
-    private <C> TreeVisitResult iterateOctantsZ1(
-      final C c,
+    private <C> TreeVisitResult iterateOctants(
+      final C context,
       final OctTreeOctantIterationIType<T, C> f,
       final long depth)
     {
-      switch (this.x0y0z1.iterateOctants(c, f, Math.addExact(depth, 1L))) {
-        case RESULT_CONTINUE:
-          break;
-        case RESULT_TERMINATE:
-          return TreeVisitResult.RESULT_TERMINATE;
-      }
-      switch (this.x1y0z1.iterateOctants(c, f, Math.addExact(depth, 1L))) {
-        case RESULT_CONTINUE:
-          break;
-        case RESULT_TERMINATE:
-          return TreeVisitResult.RESULT_TERMINATE;
-      }
-      switch (this.x0y1z1.iterateOctants(c, f, Math.addExact(depth, 1L))) {
-        case RESULT_CONTINUE:
-          break;
-        case RESULT_TERMINATE:
-          return TreeVisitResult.RESULT_TERMINATE;
-      }
-      switch (this.x1y1z1.iterateOctants(c, f, Math.addExact(depth, 1L))) {
-        case RESULT_CONTINUE:
-          break;
+      switch (f.apply(context, this, depth)) {
+        case RESULT_CONTINUE: {
+          if (!this.isLeaf()) {
+            for (int index = 0; index < 8; ++index) {
+              switch (this.child(index).iterateOctants(
+                context, f, Math.addExact(depth, 1L))) {
+                case RESULT_CONTINUE:
+                  break;
+                case RESULT_TERMINATE:
+                  return TreeVisitResult.RESULT_TERMINATE;
+              }
+            }
+          }
+          return TreeVisitResult.RESULT_CONTINUE;
+        }
         case RESULT_TERMINATE:
           return TreeVisitResult.RESULT_TERMINATE;
       }
-      return TreeVisitResult.RESULT_CONTINUE;
+
+      throw new UnreachableCodeException();
     }
 
     @Override
     public Map<T, VolumeI> objects()
     {
-      return this.octant_objects_view;
+      final Reference2ReferenceOpenHashMap<T, VolumeI> m =
+        new Reference2ReferenceOpenHashMap<>(this.item_count);
+      for (int index = 0; index < this.item_count; ++index) {
+        final Item<T> item = this.itemAt(index);
+        m.put(item.value, item.volume());
+      }
+      return Reference2ReferenceMaps.unmodifiable(m);
     }
 
     @Override
@@ -827,7 +1381,7 @@ public final class OctTreeI<T> implements OctTreeIType<T>
 
     private boolean unsplitCanPrune()
     {
-      return this.isLeaf() && this.octant_objects.isEmpty();
+      return this.isLeaf() && this.item_count == 0;
     }
 
     private void trim()
@@ -0,0 +1,1452 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.jspatial.implementation;
+
+import com.io7m.jaffirm.core.Preconditions;
+import com.io7m.jregions.core.unparameterized.volumes.VolumeL;
+import com.io7m.jspatial.api.Ray3D;
+import com.io7m.jspatial.api.TreeVisitResult;
+import com.io7m.jspatial.api.octtrees.OctTreeConfigurationL;
+import com.io7m.jspatial.api.octtrees.OctTreeItemVisitorLType;
+import com.io7m.jspatial.api.octtrees.OctTreeLType;
+import com.io7m.jspatial.api.octtrees.OctTreeNearestVisitorLType;
+import com.io7m.jspatial.api.octtrees.OctTreeOctantIterationLType;
+import com.io7m.jspatial.api.octtrees.OctTreeOctantLType;
+import com.io7m.jspatial.api.octtrees.OctTreeRaycastBufferL;
+import com.io7m.jspatial.api.octtrees.OctTreeRaycastResultL;
+import com.io7m.jspatial.api.octtrees.OctTreeRaycastVisitorLType;
+import com.io7m.jtensors.core.unparameterized.vectors.Vector3D;
+import com.io7m.jtensors.core.unparameterized.vectors.Vectors3D;
+import com.io7m.junreachable.UnreachableCodeException;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.objects.Reference2IntMap;
+import it.unimi.dsi.fastutil.objects.Reference2IntOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Reference2ReferenceMaps;
+import it.unimi.dsi.fastutil.objects.Reference2ReferenceOpenHashMap;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.function.BiFunction;
+
+/**
+ * <p>An implementation of the {@link OctTreeLType} interface that stores no
+ * linked nodes.</p>
+ *
+ * <p>Each octant is identified by its locational code: the Morton code of
+ * the octant's position within the tree, followed by its depth (see
+ * {@link LocationalCodes}). The tree consists of a sorted array of the
+ * codes of the octants that exist, and a sorted index that associates the
+ * code of the octant holding each object with the object. Because the
+ * objects held by an octant and all of its descendants occupy a contiguous
+ * interval of the index, queries scan intervals of the index rather than
+ * following pointers, and octant bounds are computed from codes as the
+ * intervals are subdivided.</p>
+ *
+ * <p>Inserting or removing a single object shifts the part of the index
+ * that follows it, and so is linear in the size of the tree. Trees that are
+ * populated once with {@link #insertAll(Map)} and then queried benefit the
+ * most from this representation.</p>
+ *
+ * <p>The structure of the tree is identical to that of {@link OctTreeL}
+ * for the same configuration and sequence of operations, except that the
+ * depth of the tree is limited to {@code 19}.</p>
+ *
+ * @param <T> The precise type of tree objects
+ */
+
+public final class OctTreeLinearL<T> implements OctTreeLType<T>
+{
+  private static final int NONE = -1;
+  private static final int BOUNDS_STRIDE = VolumeBoundsL.STRIDE;
+  private static final int DIMENSIONS = 3;
+  private static final int CHILD_COUNT = 8;
+  private static final int LEVELS = LocationalCodes.levels(DIMENSIONS);
+  private static final int INITIAL_ITEMS = 16;
+
+  private final OctTreeConfigurationL config;
+  private final long[] root_bounds;
+  private final int maximum_depth;
+  private final Reference2IntOpenHashMap<T> item_slots;
+  private final IntArrayList item_free;
+  private final LinearIndex cells;
+
+  /*
+   * Per-item storage, addressed by slot. The code of the octant that holds
+   * each item is duplicated here so that the item can be found in the index.
+   */
+
+  private Object[] item_values;
+  private long[] item_bounds;
+  private long[] item_codes;
+  private int item_top;
+
+  private OctTreeLinearL(final OctTreeConfigurationL in_config)
+  {
+    this.config = Objects.requireNonNull(in_config, "Configuration");
+    this.root_bounds = VolumeBoundsL.pack(this.config.volume());
+    this.maximum_depth = Math.min(this.config.maximumDepth(), LEVELS);
+    this.item_slots = new Reference2IntOpenHashMap<>();
+    this.item_slots.defaultReturnValue(NONE);
+    this.item_free = new IntArrayList();
+    this.cells = new LinearIndex(DIMENSIONS, INITIAL_ITEMS);
+    this.reset(INITIAL_ITEMS);
+  }
+
+  /**
+   * Create a new empty tree with the given bounds.
+   *
+   * @param config The tree configuration
+   * @param <T>    The type of objects contained within the tree
+   *
+   * @return A new tree
+   */
+
+  public static <T> OctTreeLType<T> create(
+    final OctTreeConfigurationL config)
+  {
+    return new OctTreeLinearL<>(config);
+  }
+
+  private void reset(
+    final int item_capacity)
+  {
+    this.item_values = new Object[item_capacity];
+    this.item_bounds = new long[item_capacity * BOUNDS_STRIDE];
+    this.item_codes = new long[item_capacity];
+    this.item_top = 0;
+    this.item_free.clear();
+    this.cells.reset(item_capacity);
+  }
+
+  @Override
+  public void trim()
+  {
+    this.trimCell(LocationalCodes.ROOT);
+  }
+
+  @Override
+  public long size()
+  {
+    return (long) this.item_slots.size();
+  }
+
+  @Override
+  public boolean equals(final Object o)
+  {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || this.getClass() != o.getClass()) {
+      return false;
+    }
+
+    final OctTreeLinearL<?> that = (OctTreeLinearL<?>) o;
+    if (this.item_slots.size() != that.item_slots.size()) {
+      return false;
+    }
+
+    for (final Reference2IntMap.Entry<T> e : this.item_slots.reference2IntEntrySet()) {
+      final int slot = e.getIntValue();
+      final int that_slot = that.item_slots.getInt(e.getKey());
+      if (that_slot == NONE) {
+        return false;
+      }
+      if (!Arrays.equals(
+        this.item_bounds,
+        slot * BOUNDS_STRIDE,
+        (slot + 1) * BOUNDS_STRIDE,
+        that.item_bounds,
+        that_slot * BOUNDS_STRIDE,
+        (that_slot + 1) * BOUNDS_STRIDE)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public int hashCode()
+  {
+    int hash = 0;
+    for (final Reference2IntMap.Entry<T> e : this.item_slots.reference2IntEntrySet()) {
+      final int b = e.getIntValue() * BOUNDS_STRIDE;
+      int item_hash = 0;
+      for (int index = 0; index < BOUNDS_STRIDE; ++index) {
+        item_hash = 31 * item_hash + Long.hashCode(this.item_bounds[b + index]);
+      }
+      hash += System.identityHashCode(e.getKey()) ^ item_hash;
+    }
+    return hash;
+  }
+
+  @Override
+  public VolumeL bounds()
+  {
+    return this.config.volume();
+  }
+
+  @Override
+  public boolean insert(
+    final T item,
+    final VolumeL volume)
+  {
+    Objects.requireNonNull(item, "Item");
+    Objects.requireNonNull(volume, "Bounds");
+
+    final long[] bounds = VolumeBoundsL.pack(volume);
+
+    /*
+     * If the object is already in the tree, start from the octant that
+     * currently holds it rather than descending from the root.
+     */
+
+    final int existing = this.item_slots.getInt(item);
+    if (existing != NONE) {
+      return this.reinsert(existing, bounds);
+    }
+
+    if (!VolumeBoundsL.contains(this.root_bounds, 0, bounds, 0)) {
+      return false;
+    }
+
+    final int slot = this.itemAllocate(item, bounds, 0);
+    this.item_slots.put(item, slot);
+    this.insertStep(LocationalCodes.ROOT, this.root_bounds.clone(), slot);
+    return true;
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public long insertAll(
+    final Map<T, VolumeL> items)
+  {
+    Objects.requireNonNull(items, "Items");
+
+    final Object[] values = new Object[items.size()];
+    final long[] bounds = new long[values.length * BOUNDS_STRIDE];
+    final long[] codes = new long[values.length];
+    int index = 0;
+    for (final Map.Entry<T, VolumeL> entry : items.entrySet()) {
+      final int offset = index * BOUNDS_STRIDE;
+      values[index] = Objects.requireNonNull(entry.getKey(), "Item");
+      VolumeBoundsL.store(Objects.requireNonNull(entry.getValue(), "Bounds"), bounds, offset);
+      codes[index] = VolumeBoundsL.mortonCode(this.root_bounds, bounds, offset);
+      ++index;
+    }
+
+    final int[] order = MortonCodes.sort(codes);
+
+    /*
+     * A tree that already holds objects is updated one object at a time,
+     * in Morton order so that consecutive insertions touch nearby parts of
+     * the index.
+     */
+
+    if (!this.item_slots.isEmpty()) {
+      long inserted = 0L;
+      for (final int source : order) {
+        final VolumeL region = VolumeBoundsL.unpack(bounds, source * BOUNDS_STRIDE);
+        if (this.insert((T) values[source], region)) {
+          ++inserted;
+        }
+      }
+      return inserted;
+    }
+
+    /*
+     * Otherwise, discard the objects that cannot fit in the tree and build
+     * the tree from the remaining objects in a single pass. The objects are
+     * placed in depth-first order, and so the index is built in sorted order;
+     * only the octant codes need to be sorted afterwards.
+     */
+
+    final int fitting = BulkLoader.retain(
+      order,
+      source -> VolumeBoundsL.contains(this.root_bounds, 0, bounds, source * BOUNDS_STRIDE));
+    this.reset(Math.max(INITIAL_ITEMS, fitting));
+    this.item_slots.ensureCapacity(fitting);
+    BulkLoader.load(
+      new BulkNodes(values, bounds),
+      CHILD_COUNT,
+      Long.valueOf(LocationalCodes.ROOT),
+      order,
+      fitting);
+    this.cells.sortCells();
+    return (long) fitting;
+  }
+
+  private boolean reinsert(
+    final int slot,
+    final long[] bounds)
+  {
+    final long owner = this.item_codes[slot];
+
+    long start = owner;
+    while (start != LocationalCodes.NONE
+      && !VolumeBoundsL.contains(this.cellBounds(start), 0, bounds, 0)) {
+      start = LocationalCodes.parent(start, DIMENSIONS);
+    }
+
+    this.itemUnlink(slot);
+    if (start == LocationalCodes.NONE) {
+      this.item_slots.removeInt(this.item_values[slot]);
+      this.itemFree(slot);
+    } else {
+      System.arraycopy(bounds, 0, this.item_bounds, slot * BOUNDS_STRIDE, BOUNDS_STRIDE);
+      this.insertStep(start, this.cellBounds(start), slot);
+    }
+
+    if (this.config.trimOnRemove()) {
+      this.unsplitAttemptRecursive(owner);
+    }
+    return start != LocationalCodes.NONE;
+  }
+
+  @Override
+  public boolean contains(final T item)
+  {
+    return this.item_slots.containsKey(item);
+  }
+
+  @Override
+  public boolean remove(final T item)
+  {
+    Objects.requireNonNull(item, "Item");
+
+    final int slot = this.item_slots.removeInt(item);
+    if (slot == NONE) {
+      return false;
+    }
+
+    final long owner = this.item_codes[slot];
+    this.itemUnlink(slot);
+    this.itemFree(slot);
+    if (this.config.trimOnRemove()) {
+      this.unsplitAttemptRecursive(owner);
+    }
+    return true;
+  }
+
+  @Override
+  public void clear()
+  {
+    this.item_slots.clear();
+    this.reset(INITIAL_ITEMS);
+  }
+
+  @Override
+  public <U> OctTreeLType<U> map(final BiFunction<T, VolumeL, U> f)
+  {
+    Objects.requireNonNull(f, "Function");
+
+    final OctTreeLType<U> qt = new OctTreeLinearL<>(this.config);
+    for (final Reference2IntMap.Entry<T> e : this.item_slots.reference2IntEntrySet()) {
+      final T item = e.getKey();
+      final VolumeL item_volume =
+        VolumeBoundsL.unpack(this.item_bounds, e.getIntValue() * BOUNDS_STRIDE);
+      qt.insert(f.apply(item, item_volume), item_volume);
+    }
+    return qt;
+  }
+
+  @Override
+  public <C> void iterateOctants(
+    final C context,
+    final OctTreeOctantIterationLType<T, C> f)
+  {
+    Objects.requireNonNull(context, "Context");
+    Objects.requireNonNull(f, "Function");
+    this.iterateOctantsCell(context, f, LocationalCodes.ROOT, 0L);
+  }
+
+  @Override
+  public VolumeL volumeFor(final T item)
+  {
+    Objects.requireNonNull(item, "Item");
+
+    final int slot = this.item_slots.getInt(item);
+    if (slot == NONE) {
+      throw new NoSuchElementException(item.toString());
+    }
+    return VolumeBoundsL.unpack(this.item_bounds, slot * BOUNDS_STRIDE);
+  }
+
+  private static <T> TreeVisitResult collectItem(
+    final Set<T> items,
+    final T item,
+    final VolumeL bounds)
+  {
+    items.add(item);
+    return TreeVisitResult.RESULT_CONTINUE;
+  }
+
+  private static <T> TreeVisitResult collectRaycastResult(
+    final SortedSet<OctTreeRaycastResultL<T>> items,
+    final T item,
+    final VolumeL bounds,
+    final double distance)
+  {
+    items.add(OctTreeRaycastResultL.of(distance, bounds, item));
+    return TreeVisitResult.RESULT_CONTINUE;
+  }
+
+  /**
+   * @return Storage for the bounds of one octant at each depth of the tree,
+   * with the bounds of the root octant at depth {@code 0}
+   */
+
+  private long[] levelBounds()
+  {
+    final long[] levels = new long[(LEVELS + 1) * BOUNDS_STRIDE];
+    System.arraycopy(this.root_bounds, 0, levels, 0, BOUNDS_STRIDE);
+    return levels;
+  }
+
+  @Override
+  public void containedBy(
+    final VolumeL volume,
+    final Set<T> items)
+  {
+    Objects.requireNonNull(volume, "Volume");
+    Objects.requireNonNull(items, "Items");
+    this.containedBy(volume, items, OctTreeLinearL::collectItem);
+  }
+
+  @Override
+  public void overlappedBy(
+    final VolumeL volume,
+    final Set<T> items)
+  {
+    Objects.requireNonNull(volume, "Volume");
+    Objects.requireNonNull(items, "Items");
+    this.overlappedBy(volume, items, OctTreeLinearL::collectItem);
+  }
+
+  @Override
+  public void raycast(
+    final Ray3D ray,
+    final SortedSet<OctTreeRaycastResultL<T>> items)
+  {
+    Objects.requireNonNull(ray, "Ray");
+    Objects.requireNonNull(items, "Items");
+    this.raycast(ray, items, OctTreeLinearL::collectRaycastResult);
+  }
+
+  @Override
+  public <C> TreeVisitResult containedBy(
+    final VolumeL volume,
+    final C context,
+    final OctTreeItemVisitorLType<T, C> f)
+  {
+    Objects.requireNonNull(volume, "Volume");
+    Objects.requireNonNull(context, "Context");
+    Objects.requireNonNull(f, "Function");
+    return this.volumeContainingVisit(
+      LocationalCodes.ROOT,
+      this.levelBounds(),
+      0,
+      this.cells.size(),
+      VolumeBoundsL.pack(volume),
+      context,
+      f);
+  }
+
+  @Override
+  public <C> TreeVisitResult overlappedBy(
+    final VolumeL volume,
+    final C context,
+    final OctTreeItemVisitorLType<T, C> f)
+  {
+    Objects.requireNonNull(volume, "Volume");
+    Objects.requireNonNull(context, "Context");
+    Objects.requireNonNull(f, "Function");
+    return this.volumeOverlappingVisit(
+      LocationalCodes.ROOT,
+      this.levelBounds(),
+      0,
+      this.cells.size(),
+      VolumeBoundsL.pack(volume),
+      context,
+      f);
+  }
+
+  @Override
+  public <C> TreeVisitResult raycast(
+    final Ray3D ray,
+    final C context,
+    final OctTreeRaycastVisitorLType<T, C> f)
+  {
+    Objects.requireNonNull(ray, "Ray");
+    Objects.requireNonNull(context, "Context");
+    Objects.requireNonNull(f, "Function");
+    return this.raycastVisit(
+      LocationalCodes.ROOT, this.levelBounds(), 0, this.cells.size(), ray, context, f);
+  }
+
+  @Override
+  public <C> TreeVisitResult nearest(
+    final Vector3D point,
+    final int count,
+    final C context,
+    final OctTreeNearestVisitorLType<T, C> f)
+  {
+    Objects.requireNonNull(point, "Point");
+    Objects.requireNonNull(context, "Context");
+    Objects.requireNonNull(f, "Function");
+    Preconditions.checkPreconditionI(
+      count, count >= 0, c -> "Count must be non-negative");
+
+    /*
+     * Best-first search over a single queue of octants and items ordered by
+     * distance from the point. Octants are queued by their position in the
+     * array of octant codes, and items by the negated position of their
+     * index entry minus one.
+     */
+
+    final DistanceHeap heap = new DistanceHeap();
+    heap.add(distance(point, null, this.root_bounds, 0), null, 0);
+
+    int found = 0;
+    while (found < count && !heap.isEmpty()) {
+      final double key = heap.topKey();
+      final int top = heap.topInt();
+      heap.removeTop();
+
+      if (top < 0) {
+        final int slot = this.cells.slot(-(top + 1));
+        ++found;
+        final TreeVisitResult result = f.apply(
+          context,
+          this.itemValue(slot),
+          VolumeBoundsL.unpack(this.item_bounds, slot * BOUNDS_STRIDE),
+          Math.sqrt(key));
+        if (result == TreeVisitResult.RESULT_TERMINATE) {
+          return TreeVisitResult.RESULT_TERMINATE;
+        }
+      } else {
+        this.expand(top, heap, point, null);
+      }
+    }
+    return TreeVisitResult.RESULT_CONTINUE;
+  }
+
+  @Override
+  public Optional<OctTreeRaycastResultL<T>> raycastFirst(
+    final Ray3D ray)
+  {
+    Objects.requireNonNull(ray, "Ray");
+
+    final RaycastHit hit = new RaycastHit();
+    if (VolumeBoundsL.entryDistance(ray, this.root_bounds, 0) < hit.distance) {
+      this.raycastFirst(
+        LocationalCodes.ROOT,
+        this.levelBounds(),
+        0,
+        this.cells.size(),
+        ray,
+        VolumeBoundsL.raycastOrder(ray),
+        hit);
+    }
+
+    final int slot = hit.slot;
+    if (slot != NONE) {
+      return Optional.of(OctTreeRaycastResultL.of(
+        hit.distance,
+        VolumeBoundsL.unpack(this.item_bounds, slot * BOUNDS_STRIDE),
+        this.itemValue(slot)));
+    }
+    return Optional.empty();
+  }
+
+  @Override
+  public <C> TreeVisitResult raycastFirst(
+    final Ray3D ray,
+    final int count,
+    final C context,
+    final OctTreeRaycastVisitorLType<T, C> f)
+  {
+    Objects.requireNonNull(ray, "Ray");
+    Objects.requireNonNull(context, "Context");
+    Objects.requireNonNull(f, "Function");
+    Preconditions.checkPreconditionI(
+      count, count >= 0, c -> "Count must be non-negative");
+
+    /*
+     * Best-first search, as with nearest(), ordered by the distance at
+     * which the ray enters each octant and item.
+     */
+
+    final DistanceHeap heap = new DistanceHeap();
+    final double root_distance = VolumeBoundsL.entryDistance(ray, this.root_bounds, 0);
+    if (root_distance < Double.POSITIVE_INFINITY) {
+      heap.add(root_distance, null, 0);
+    }
+
+    int found = 0;
+    while (found < count && !heap.isEmpty()) {
+      final double key = heap.topKey();
+      final int top = heap.topInt();
+      heap.removeTop();
+
+      if (top < 0) {
+        final int slot = this.cells.slot(-(top + 1));
+        ++found;
+        final TreeVisitResult result = f.apply(
+          context,
+          this.itemValue(slot),
+          VolumeBoundsL.unpack(this.item_bounds, slot * BOUNDS_STRIDE),
+          key);
+        if (result == TreeVisitResult.RESULT_TERMINATE) {
+          return TreeVisitResult.RESULT_TERMINATE;
+        }
+      } else {
+        this.expand(top, heap, null, ray);
+      }
+    }
+    return TreeVisitResult.RESULT_CONTINUE;
+  }
+
+  /**
+   * @return The squared distance from {@code point} to a volume, if {@code point} is non-null, or
+   * the distance at which {@code ray} enters the volume otherwise
+   */
+
+  private static double distance(
+    final Vector3D point,
+    final Ray3D ray,
+    final long[] b,
+    final int o)
+  {
+    if (point != null) {
+      return VolumeBoundsL.distanceSquared(point.x(), point.y(), point.z(), b, o);
+    }
+    return VolumeBoundsL.entryDistance(ray, b, o);
+  }
+
+  /**
+   * Add the objects held by the octant at {@code cell} in the array of octant
+   * codes, and the children of the octant that are not empty, to a
+   * best-first search queue.
+   */
+
+  private void expand(
+    final int cell,
+    final DistanceHeap heap,
+    final Vector3D point,
+    final Ray3D ray)
+  {
+    final long code = this.cells.cellCode(cell);
+    final int size = this.cells.size();
+    final int from = this.cells.lowerBound(0, size, code);
+    final int held = this.cells.heldEnd(from, size, code);
+    for (int position = from; position < held; ++position) {
+      final double distance = distance(
+        point, ray, this.item_bounds, this.cells.slot(position) * BOUNDS_STRIDE);
+      if (distance < Double.POSITIVE_INFINITY) {
+        heap.add(distance, null, -(position + 1));
+      }
+    }
+
+    final long[] bounds = this.cellBounds(code);
+    final long[] child_bounds = new long[BOUNDS_STRIDE];
+    int child_cell = cell + 1;
+    int child_from = held;
+    for (int index = 0; index < CHILD_COUNT && child_from < size; ++index) {
+      final long child_end = this.cells.end(this.cells.child(code, index));
+      final int child_to = this.cells.lowerBound(child_from, size, child_end);
+      if (child_from < child_to) {
+        VolumeBoundsL.storeChild(bounds, 0, index, child_bounds, 0);
+        final double distance = distance(point, ray, child_bounds, 0);
+        if (distance < Double.POSITIVE_INFINITY) {
+          heap.add(distance, null, child_cell);
+        }
+      }
+      child_cell = this.cells.cellLowerBound(child_cell, child_end);
+      child_from = child_to;
+    }
+  }
+
+  @Override
+  public void raycast(
+    final Ray3D ray,
+    final OctTreeRaycastBufferL<T> results)
+  {
+    Objects.requireNonNull(ray, "Ray");
+    Objects.requireNonNull(results, "Results");
+    this.raycastBuffer(
+      LocationalCodes.ROOT, this.levelBounds(), 0, this.cells.size(), ray, results);
+  }
+
+  @Override
+  public long countContainedBy(
+    final VolumeL volume)
+  {
+    Objects.requireNonNull(volume, "Volume");
+    return this.countContaining(
+      LocationalCodes.ROOT,
+      this.levelBounds(),
+      0,
+      this.cells.size(),
+      VolumeBoundsL.pack(volume));
+  }
+
+  @Override
+  public long countOverlapping(
+    final VolumeL volume)
+  {
+    Objects.requireNonNull(volume, "Volume");
+    return this.countOverlapping(
+      LocationalCodes.ROOT,
+      this.levelBounds(),
+      0,
+      this.cells.size(),
+      VolumeBoundsL.pack(volume));
+  }
+
+  @Override
+  public boolean anyOverlapping(
+    final VolumeL volume)
+  {
+    Objects.requireNonNull(volume, "Volume");
+    return this.anyOverlapping(
+      LocationalCodes.ROOT,
+      this.levelBounds(),
+      0,
+      this.cells.size(),
+      VolumeBoundsL.pack(volume));
+  }
+
+  @SuppressWarnings("unchecked")
+  private T itemValue(final int slot)
+  {
+    return (T) this.item_values[slot];
+  }
+
+  /**
+   * @return The bounds of the octant with the given code
+   */
+
+  private long[] cellBounds(final long code)
+  {
+    final long[] bounds = this.root_bounds.clone();
+    final int depth = LocationalCodes.depth(code);
+    for (int level = 1; level <= depth; ++level) {
+      VolumeBoundsL.storeChild(
+        bounds, 0, LocationalCodes.childIndex(code, level, DIMENSIONS), bounds, 0);
+    }
+    return bounds;
+  }
+
+  private int itemAllocate(
+    final T item,
+    final long[] bounds,
+    final int offset)
+  {
+    final int slot;
+    if (!this.item_free.isEmpty()) {
+      slot = this.item_free.popInt();
+    } else {
+      if (this.item_top == this.item_values.length) {
+        final int capacity = this.item_values.length * 2;
+        this.item_values = Arrays.copyOf(this.item_values, capacity);
+        this.item_bounds = Arrays.copyOf(this.item_bounds, capacity * BOUNDS_STRIDE);
+        this.item_codes = Arrays.copyOf(this.item_codes, capacity);
+      }
+      slot = this.item_top;
+      ++this.item_top;
+    }
+
+    this.item_values[slot] = item;
+    System.arraycopy(bounds, offset, this.item_bounds, slot * BOUNDS_STRIDE, BOUNDS_STRIDE);
+    this.item_codes[slot] = LocationalCodes.NONE;
+    return slot;
+  }
+
+  private void itemFree(final int slot)
+  {
+    this.item_values[slot] = null;
+    this.item_codes[slot] = LocationalCodes.NONE;
+    this.item_free.push(slot);
+  }
+
+  private void itemLink(
+    final long code,
+    final int slot)
+  {
+    this.cells.link(code, slot);
+    this.item_codes[slot] = code;
+  }
+
+  private void itemUnlink(final int slot)
+  {
+    this.cells.unlink(this.item_codes[slot], slot);
+    this.item_codes[slot] = LocationalCodes.NONE;
+  }
+
+  /**
+   * Insert the item in {@code slot} into the subtree rooted at the octant
+   * with the given code and bounds. The bounds are modified.
+   */
+
+  private void insertStep(
+    final long start,
+    final long[] bounds,
+    final int slot)
+  {
+    long code = start;
+    while (true) {
+
+      /*
+       * If this octant is a leaf, and either has room for the object or
+       * cannot be split further, insert the object directly. Otherwise, split
+       * the octant and redistribute the objects it holds to the new children.
+       */
+
+      if (this.cells.isLeaf(code)) {
+        if (this.hasCapacity(code) || !this.canSplit(code, bounds)) {
+          this.itemLink(code, slot);
+          return;
+        }
+        this.split(code, bounds);
+      }
+
+      final int index = VolumeBoundsL.childIndexContaining(
+        bounds, 0, this.item_bounds, slot * BOUNDS_STRIDE);
+      if (index == NONE) {
+        this.itemLink(code, slot);
+        return;
+      }
+
+      VolumeBoundsL.storeChild(bounds, 0, index, bounds, 0);
+      code = LocationalCodes.child(code, index, DIMENSIONS);
+    }
+  }
+
+  private boolean hasCapacity(final long code)
+  {
+    return this.cells.heldCount(code) < this.config.maximumItemsPerLeaf();
+  }
+
+  private boolean canSplit(
+    final long code,
+    final long[] bounds)
+  {
+    if (LocationalCodes.depth(code) >= this.maximum_depth) {
+      return false;
+    }
+
+    final long width = bounds[1] - bounds[0];
+    final long height = bounds[3] - bounds[2];
+    final long depth = bounds[5] - bounds[4];
+
+    final long min_width =
+      Math.max(2L, this.config.minimumOctantWidth());
+    final long min_height =
+      Math.max(2L, this.config.minimumOctantHeight());
+    final long min_depth =
+      Math.max(2L, this.config.minimumOctantDepth());
+
+    return width / 2L >= min_width
+      && height / 2L >= min_height
+      && depth / 2L >= min_depth;
+  }
+
+  private void split(
+    final long code,
+    final long[] bounds)
+  {
+    Preconditions.checkPrecondition(this.canSplit(code, bounds), "Octant can split");
+    this.cells.split(code);
+    this.redistribute(code, bounds);
+  }
+
+  /**
+   * Move every object held by a (newly split) octant into the child octants
+   * that can contain them. Objects that straddle child boundaries remain in
+   * the octant.
+   */
+
+  private void redistribute(
+    final long code,
+    final long[] bounds)
+  {
+    final int from = this.cells.lowerBound(0, this.cells.size(), code);
+    final int to = this.cells.heldEnd(from, this.cells.size(), code);
+    final int[] slots = new int[to - from];
+    for (int position = from; position < to; ++position) {
+      slots[position - from] = this.cells.slot(position);
+    }
+
+    for (final int slot : slots) {
+      final int index = VolumeBoundsL.childIndexContaining(
+        bounds, 0, this.item_bounds, slot * BOUNDS_STRIDE);
+      if (index != NONE) {
+        final long[] child_bounds = new long[BOUNDS_STRIDE];
+        VolumeBoundsL.storeChild(bounds, 0, index, child_bounds, 0);
+        this.itemUnlink(slot);
+        this.insertStep(LocationalCodes.child(code, index, DIMENSIONS), child_bounds, slot);
+      }
+    }
+  }
+
+  /**
+   * Attempt to turn an octant and as many ancestors of the octant back into leaves as possible.
+   */
+
+  private void unsplitAttemptRecursive(final long code)
+  {
+    long current = code;
+    while (current != LocationalCodes.NONE) {
+      this.cells.unsplit(current);
+      current = LocationalCodes.parent(current, DIMENSIONS);
+    }
+  }
+
+  private void trimCell(final long code)
+  {
+    if (this.cells.isLeaf(code)) {
+      this.unsplitAttemptRecursive(code);
+    } else {
+      for (int index = 0; index < CHILD_COUNT; ++index) {
+        this.trimCell(LocationalCodes.child(code, index, DIMENSIONS));
+        if (this.cells.isLeaf(code)) {
+          return;
+        }
+      }
+    }
+  }
+
+  private <C> TreeVisitResult visitItem(
+    final int position,
+    final C context,
+    final OctTreeItemVisitorLType<T, C> f)
+  {
+    final int slot = this.cells.slot(position);
+    return f.apply(
+      context,
+      this.itemValue(slot),
+      VolumeBoundsL.unpack(this.item_bounds, slot * BOUNDS_STRIDE));
+  }
+
+  private <C> TreeVisitResult visitInterval(
+    final int from,
+    final int to,
+    final C context,
+    final OctTreeItemVisitorLType<T, C> f)
+  {
+    for (int position = from; position < to; ++position) {
+      if (this.visitItem(position, context, f) == TreeVisitResult.RESULT_TERMINATE) {
+        return TreeVisitResult.RESULT_TERMINATE;
+      }
+    }
+    return TreeVisitResult.RESULT_CONTINUE;
+  }
+
+  /*
+   * The recursive queries below are given the code of an octant, storage
+   * for the bounds of the octants at each level with the bounds of the
+   * octant at the level of its depth, and an interval [from, to) of the
+   * index that includes the interval of the octant. The interval of the
+   * octant is only searched for if the octant's bounds cannot rule it out.
+   * Within the interval of the octant, the objects held by the octant itself
+   * come first, and the rest of the interval is divided between the children
+   * in order.
+   */
+
+  private <C> TreeVisitResult volumeContainingVisit(
+    final long code,
+    final long[] levels,
+    final int from,
+    final int to,
+    final long[] target,
+    final C context,
+    final OctTreeItemVisitorLType<T, C> f)
+  {
+    final int o = LocationalCodes.depth(code) * BOUNDS_STRIDE;
+    if (!VolumeBoundsL.touches(target, 0, levels, o)) {
+      return TreeVisitResult.RESULT_CONTINUE;
+    }
+
+    final int start = this.cells.lowerBound(from, to, code);
+    final int end = this.cells.lowerBound(start, to, this.cells.end(code));
+    if (VolumeBoundsL.contains(target, 0, levels, o)) {
+      return this.visitInterval(start, end, context, f);
+    }
+
+    final int held = this.cells.heldEnd(start, end, code);
+    for (int position = start; position < held; ++position) {
+      final int slot = this.cells.slot(position);
+      if (VolumeBoundsL.contains(target, 0, this.item_bounds, slot * BOUNDS_STRIDE)
+        && this.visitItem(position, context, f) == TreeVisitResult.RESULT_TERMINATE) {
+        return TreeVisitResult.RESULT_TERMINATE;
+      }
+    }
+
+    for (int index = 0; index < CHILD_COUNT && held < end; ++index) {
+      VolumeBoundsL.storeChild(levels, o, index, levels, o + BOUNDS_STRIDE);
+      final long child = this.cells.child(code, index);
+      if (this.volumeContainingVisit(child, levels, held, end, target, context, f)
+        == TreeVisitResult.RESULT_TERMINATE) {
+        return TreeVisitResult.RESULT_TERMINATE;
+      }
+    }
+    return TreeVisitResult.RESULT_CONTINUE;
+  }
+
+  private <C> TreeVisitResult volumeOverlappingVisit(
+    final long code,
+    final long[] levels,
+    final int from,
+    final int to,
+    final long[] target,
+    final C context,
+    final OctTreeItemVisitorLType<T, C> f)
+  {
+    final int o = LocationalCodes.depth(code) * BOUNDS_STRIDE;
+    if (!VolumeBoundsL.overlaps(target, 0, levels, o)) {
+      return TreeVisitResult.RESULT_CONTINUE;
+    }
+
+    final int start = this.cells.lowerBound(from, to, code);
+    final int end = this.cells.lowerBound(start, to, this.cells.end(code));
+    if (VolumeBoundsL.overlapsAllWithin(target, 0, levels, o)) {
+      return this.visitInterval(start, end, context, f);
+    }
+
+    final int held = this.cells.heldEnd(start, end, code);
+    for (int position = start; position < held; ++position) {
+      final int slot = this.cells.slot(position);
+      if (VolumeBoundsL.overlaps(target, 0, this.item_bounds, slot * BOUNDS_STRIDE)
+        && this.visitItem(position, context, f) == TreeVisitResult.RESULT_TERMINATE) {
+        return TreeVisitResult.RESULT_TERMINATE;
+      }
+    }
+
+    for (int index = 0; index < CHILD_COUNT && held < end; ++index) {
+      VolumeBoundsL.storeChild(levels, o, index, levels, o + BOUNDS_STRIDE);
+      final long child = this.cells.child(code, index);
+      if (this.volumeOverlappingVisit(child, levels, held, end, target, context, f)
+        == TreeVisitResult.RESULT_TERMINATE) {
+        return TreeVisitResult.RESULT_TERMINATE;
+      }
+    }
+    return TreeVisitResult.RESULT_CONTINUE;
+  }
+
+  private <C> TreeVisitResult raycastVisit(
+    final long code,
+    final long[] levels,
+    final int from,
+    final int to,
+    final Ray3D ray,
+    final C context,
+    final OctTreeRaycastVisitorLType<T, C> f)
+  {
+    final int o = LocationalCodes.depth(code) * BOUNDS_STRIDE;
+    if (!VolumeBoundsL.intersects(ray, levels, o)) {
+      return TreeVisitResult.RESULT_CONTINUE;
+    }
+
+    final long[] ib = this.item_bounds;
+    final int start = this.cells.lowerBound(from, to, code);
+    final int end = this.cells.lowerBound(start, to, this.cells.end(code));
+    final int held = this.cells.heldEnd(start, end, code);
+    for (int position = start; position < held; ++position) {
+      final int slot = this.cells.slot(position);
+      final int i = slot * BOUNDS_STRIDE;
+      if (VolumeBoundsL.intersects(ray, ib, i)) {
+        final double distance = Vectors3D.distance(
+          Vector3D.of(
+            (double) ib[i],
+            (double) ib[i + 2],
+            (double) ib[i + 4]),
+          ray.origin());
+        final TreeVisitResult result =
+          f.apply(context, this.itemValue(slot), VolumeBoundsL.unpack(ib, i), distance);
+        if (result == TreeVisitResult.RESULT_TERMINATE) {
+          return TreeVisitResult.RESULT_TERMINATE;
+        }
+      }
+    }
+
+    for (int index = 0; index < CHILD_COUNT && held < end; ++index) {
+      VolumeBoundsL.storeChild(levels, o, index, levels, o + BOUNDS_STRIDE);
+      final long child = this.cells.child(code, index);
+      if (this.raycastVisit(child, levels, held, end, ray, context, f)
+        == TreeVisitResult.RESULT_TERMINATE) {
+        return TreeVisitResult.RESULT_TERMINATE;
+      }
+    }
+    return TreeVisitResult.RESULT_CONTINUE;
+  }
+
+  private void raycastFirst(
+    final long code,
+    final long[] levels,
+    final int from,
+    final int to,
+    final Ray3D ray,
+    final int order,
+    final RaycastHit hit)
+  {
+    final int start = this.cells.lowerBound(from, to, code);
+    final int end = this.cells.lowerBound(start, to, this.cells.end(code));
+    final int held = this.cells.heldEnd(start, end, code);
+    for (int position = start; position < held; ++position) {
+      final int slot = this.cells.slot(position);
+      final double distance =
+        VolumeBoundsL.entryDistance(ray, this.item_bounds, slot * BOUNDS_STRIDE);
+      if (distance < hit.distance) {
+        hit.distance = distance;
+        hit.slot = slot;
+      }
+    }
+
+    /*
+     * Visit the children nearest the ray origin first, so that the hits
+     * found there can rule out the children further along the ray.
+     */
+
+    final int o = LocationalCodes.depth(code) * BOUNDS_STRIDE;
+    for (int index = 0; index < CHILD_COUNT && held < end; ++index) {
+      VolumeBoundsL.storeChild(levels, o, index ^ order, levels, o + BOUNDS_STRIDE);
+      if (VolumeBoundsL.entryDistance(ray, levels, o + BOUNDS_STRIDE) < hit.distance) {
+        final long child = this.cells.child(code, index ^ order);
+        this.raycastFirst(child, levels, held, end, ray, order, hit);
+      }
+    }
+  }
+
+  private void raycastBuffer(
+    final long code,
+    final long[] levels,
+    final int from,
+    final int to,
+    final Ray3D ray,
+    final OctTreeRaycastBufferL<T> results)
+  {
+    final int o = LocationalCodes.depth(code) * BOUNDS_STRIDE;
+    if (!VolumeBoundsL.intersects(ray, levels, o)) {
+      return;
+    }
+
+    final long[] ib = this.item_bounds;
+    final int start = this.cells.lowerBound(from, to, code);
+    final int end = this.cells.lowerBound(start, to, this.cells.end(code));
+    final int held = this.cells.heldEnd(start, end, code);
+    for (int position = start; position < held; ++position) {
+      final int slot = this.cells.slot(position);
+      final int i = slot * BOUNDS_STRIDE;
+      final double distance = VolumeBoundsL.entryDistance(ray, ib, i);
+      if (distance < Double.POSITIVE_INFINITY) {
+        results.add(
+          this.itemValue(slot),
+          distance,
+          ib[i],
+          ib[i + 1],
+          ib[i + 2],
+          ib[i + 3],
+          ib[i + 4],
+          ib[i + 5]);
+      }
+    }
+
+    for (int index = 0; index < CHILD_COUNT && held < end; ++index) {
+      VolumeBoundsL.storeChild(levels, o, index, levels, o + BOUNDS_STRIDE);
+      this.raycastBuffer(this.cells.child(code, index), levels, held, end, ray, results);
+    }
+  }
+
+  private long countContaining(
+    final long code,
+    final long[] levels,
+    final int from,
+    final int to,
+    final long[] target)
+  {
+    final int o = LocationalCodes.depth(code) * BOUNDS_STRIDE;
+    if (!VolumeBoundsL.touches(target, 0, levels, o)) {
+      return 0L;
+    }
+
+    /*
+     * If the target volume completely contains this octant, then it contains
+     * every object in the octant's interval of the index.
+     */
+
+    final int start = this.cells.lowerBound(from, to, code);
+    final int end = this.cells.lowerBound(start, to, this.cells.end(code));
+    if (VolumeBoundsL.contains(target, 0, levels, o)) {
+      return (long) (end - start);
+    }
+
+    long count = 0L;
+    final int held = this.cells.heldEnd(start, end, code);
+    for (int position = start; position < held; ++position) {
+      final int slot = this.cells.slot(position);
+      if (VolumeBoundsL.contains(target, 0, this.item_bounds, slot * BOUNDS_STRIDE)) {
+        ++count;
+      }
+    }
+
+    for (int index = 0; index < CHILD_COUNT && held < end; ++index) {
+      VolumeBoundsL.storeChild(levels, o, index, levels, o + BOUNDS_STRIDE);
+      count += this.countContaining(this.cells.child(code, index), levels, held, end, target);
+    }
+    return count;
+  }
+
+  private long countOverlapping(
+    final long code,
+    final long[] levels,
+    final int from,
+    final int to,
+    final long[] target)
+  {
+    final int o = LocationalCodes.depth(code) * BOUNDS_STRIDE;
+    if (!VolumeBoundsL.overlaps(target, 0, levels, o)) {
+      return 0L;
+    }
+
+    final int start = this.cells.lowerBound(from, to, code);
+    final int end = this.cells.lowerBound(start, to, this.cells.end(code));
+    if (VolumeBoundsL.overlapsAllWithin(target, 0, levels, o)) {
+      return (long) (end - start);
+    }
+
+    long count = 0L;
+    final int held = this.cells.heldEnd(start, end, code);
+    for (int position = start; position < held; ++position) {
+      final int slot = this.cells.slot(position);
+      if (VolumeBoundsL.overlaps(target, 0, this.item_bounds, slot * BOUNDS_STRIDE)) {
+        ++count;
+      }
+    }
+
+    for (int index = 0; index < CHILD_COUNT && held < end; ++index) {
+      VolumeBoundsL.storeChild(levels, o, index, levels, o + BOUNDS_STRIDE);
+      count += this.countOverlapping(this.cells.child(code, index), levels, held, end, target);
+    }
+    return count;
+  }
+
+  private boolean anyOverlapping(
+    final long code,
+    final long[] levels,
+    final int from,
+    final int to,
+    final long[] target)
+  {
+    final int o = LocationalCodes.depth(code) * BOUNDS_STRIDE;
+    if (!VolumeBoundsL.overlaps(target, 0, levels, o)) {
+      return false;
+    }
+
+    final int start = this.cells.lowerBound(from, to, code);
+    final int end = this.cells.lowerBound(start, to, this.cells.end(code));
+    if (start == end) {
+      return false;
+    }
+    if (VolumeBoundsL.overlapsAllWithin(target, 0, levels, o)) {
+      return true;
+    }
+
+    final int held = this.cells.heldEnd(start, end, code);
+    for (int position = start; position < held; ++position) {
+      final int slot = this.cells.slot(position);
+      if (VolumeBoundsL.overlaps(target, 0, this.item_bounds, slot * BOUNDS_STRIDE)) {
+        return true;
+      }
+    }
+
+    for (int index = 0; index < CHILD_COUNT && held < end; ++index) {
+      VolumeBoundsL.storeChild(levels, o, index, levels, o + BOUNDS_STRIDE);
+      if (this.anyOverlapping(this.cells.child(code, index), levels, held, end, target)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private <C> TreeVisitResult iterateOctantsCell(
+    final C context,
+    final OctTreeOctantIterationLType<T, C> f,
+    final long code,
+    final long depth)
+  {
+    switch (f.apply(context, new Octant(code), depth)) {
+      case RESULT_CONTINUE: {
+        if (!this.cells.isLeaf(code)) {
+          for (int index = 0; index < CHILD_COUNT; ++index) {
+            final TreeVisitResult r = this.iterateOctantsCell(
+              context,
+              f,
+              LocationalCodes.child(code, index, DIMENSIONS),
+              Math.addExact(depth, 1L));
+            if (r == TreeVisitResult.RESULT_TERMINATE) {
+              return TreeVisitResult.RESULT_TERMINATE;
+            }
+          }
+        }
+        return TreeVisitResult.RESULT_CONTINUE;
+      }
+      case RESULT_TERMINATE:
+        return TreeVisitResult.RESULT_TERMINATE;
+    }
+
+    throw new UnreachableCodeException();
+  }
+
+  /**
+   * The octants of a tree being built by {@link #insertAll(Map)}. Octants
+   * and objects are appended in depth-first order, and so the index remains
+   * sorted. The bounds of the most recently used octant are cached, as all
+   * of the objects of an octant are partitioned in turn.
+   */
+
+  private final class BulkNodes implements BulkLoader.NodesType<Long>
+  {
+    private final Object[] values;
+    private final long[] bounds;
+    private long cached_code;
+    private long[] cached_bounds;
+
+    private BulkNodes(
+      final Object[] in_values,
+      final long[] in_bounds)
+    {
+      this.values = in_values;
+      this.bounds = in_bounds;
+      this.cached_code = LocationalCodes.NONE;
+    }
+
+    private long[] boundsOf(final long code)
+    {
+      if (code != this.cached_code) {
+        this.cached_code = code;
+        this.cached_bounds = OctTreeLinearL.this.cellBounds(code);
+      }
+      return this.cached_bounds;
+    }
+
+    @Override
+    public boolean splitFor(
+      final Long node,
+      final int count)
+    {
+      final OctTreeLinearL<T> tree = OctTreeLinearL.this;
+      final long code = node.longValue();
+      if (count > tree.config.maximumItemsPerLeaf()
+        && tree.canSplit(code, this.boundsOf(code))) {
+        tree.cells.splitUnordered(code);
+        return true;
+      }
+      return false;
+    }
+
+    @Override
+    public int childIndexContaining(
+      final Long node,
+      final int source)
+    {
+      return VolumeBoundsL.childIndexContaining(
+        this.boundsOf(node.longValue()), 0, this.bounds, source * BOUNDS_STRIDE);
+    }
+
+    @Override
+    public Long child(
+      final Long node,
+      final int index)
+    {
+      return Long.valueOf(LocationalCodes.child(node.longValue(), index, DIMENSIONS));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public void hold(
+      final Long node,
+      final int source)
+    {
+      final OctTreeLinearL<T> tree = OctTreeLinearL.this;
+      final T item = (T) this.values[source];
+      final int slot = tree.itemAllocate(item, this.bounds, source * BOUNDS_STRIDE);
+      tree.cells.append(node.longValue(), slot);
+      tree.item_codes[slot] = node.longValue();
+      tree.item_slots.put(item, slot);
+    }
+  }
+
+  /**
+   * The nearest item slot found so far by a first-hit raycast.
+   */
+
+  private static final class RaycastHit
+  {
+    private double distance;
+    private int slot;
+
+    RaycastHit()
+    {
+      this.distance = Double.POSITIVE_INFINITY;
+      this.slot = NONE;
+    }
+  }
+
+  /**
+   * A view of a single octant, created when octants are exposed through
+   * {@link #iterateOctants(Object, OctTreeOctantIterationLType)}.
+   */
+
+  private final class Octant implements OctTreeOctantLType<T>
+  {
+    private final long code;
+
+    Octant(final long in_code)
+    {
+      this.code = in_code;
+    }
+
+    @Override
+    public Map<T, VolumeL> objects()
+    {
+      final OctTreeLinearL<T> tree = OctTreeLinearL.this;
+      final int from = tree.cells.lowerBound(0, tree.cells.size(), this.code);
+      final int to = tree.cells.heldEnd(from, tree.cells.size(), this.code);
+      final Reference2ReferenceOpenHashMap<T, VolumeL> objects =
+        new Reference2ReferenceOpenHashMap<>(to - from);
+      for (int position = from; position < to; ++position) {
+        final int slot = tree.cells.slot(position);
+        objects.put(
+          tree.itemValue(slot),
+          VolumeBoundsL.unpack(tree.item_bounds, slot * BOUNDS_STRIDE));
+      }
+      return Reference2ReferenceMaps.unmodifiable(objects);
+    }
+
+    @Override
+    public VolumeL volume()
+    {
+      return VolumeBoundsL.unpack(OctTreeLinearL.this.cellBounds(this.code), 0);
+    }
+  }
+}
@@ -0,0 +1,1235 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.jspatial.implementation;
+
+import com.io7m.jaffirm.core.Preconditions;
+import com.io7m.jregions.core.unparameterized.volumes.VolumeD;
+import com.io7m.jregions.core.unparameterized.volumes.VolumeXYZSplitD;
+import com.io7m.jspatial.api.Ray3D;
+import com.io7m.jspatial.api.TreeVisitResult;
+import com.io7m.jspatial.api.octtrees.OctTreeConfigurationD;
+import com.io7m.jspatial.api.octtrees.OctTreeItemVisitorDType;
+import com.io7m.jspatial.api.octtrees.OctTreeNearestVisitorDType;
+import com.io7m.jspatial.api.octtrees.OctTreeOctantDType;
+import com.io7m.jspatial.api.octtrees.OctTreeOctantIterationDType;
+import com.io7m.jspatial.api.octtrees.OctTreeRaycastBufferD;
+import com.io7m.jspatial.api.octtrees.OctTreeRaycastResultD;
+import com.io7m.jspatial.api.octtrees.OctTreeRaycastVisitorDType;
+import com.io7m.jspatial.api.octtrees.OctTreeReadableDType;
+import com.io7m.jtensors.core.unparameterized.vectors.Vector3D;
+import com.io7m.jtensors.core.unparameterized.vectors.Vectors3D;
+import com.io7m.junreachable.UnreachableCodeException;
+import it.unimi.dsi.fastutil.objects.Reference2ReferenceMaps;
+import it.unimi.dsi.fastutil.objects.Reference2ReferenceOpenHashMap;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.function.BiFunction;
+import java.util.function.LongFunction;
+import java.util.function.ToLongFunction;
+
+/**
+ * <p>A read-only implementation of the {@link OctTreeReadableDType}
+ * interface that queries a tree written by {@link OctTreeBinaryD} in
+ * place, through a memory-mapped file.</p>
+ *
+ * <p>Opening a tree maps the file and checks the shape of the tree, but
+ * does not read the objects. Queries navigate the octants directly in
+ * the mapped file, and the tree holds no objects in memory: each object
+ * visited by a query is obtained from its identifier with a function
+ * given by the caller. An object is held by the tree if its identifier is
+ * held by the tree. As a tree is never modified, any number of threads may
+ * query a tree concurrently, provided that the functions given to
+ * {@link #open(FileChannel, ToLongFunction, LongFunction)} are safe to call
+ * from those threads.</p>
+ *
+ * <p>A file is mapped as a single region, and so trees in files larger
+ * than {@link Integer#MAX_VALUE} bytes cannot be opened.</p>
+ *
+ * @param <T> The precise type of tree objects
+ *
+ * @since 3.0.0
+ */
+
+public final class OctTreeMappedD<T> implements OctTreeReadableDType<T>
+{
+  private static final int CHILDREN = 8;
+
+  /*
+   * The offsets of the fields of an octant, as written by OctTreeBinaryD.
+   */
+
+  private static final int OCTANT_COUNT = 1;
+  private static final int OCTANT_SUBTREE_COUNT = 5;
+  private static final int OCTANT_SIZE = 9;
+  private static final int OCTANT_VOLUME = 17;
+
+  /*
+   * The markers that distinguish octants and objects in distance heaps.
+   * The integer value of a heap entry is the offset of the octant or
+   * object.
+   */
+
+  private static final Object HEAP_OCTANT = new Object();
+  private static final Object HEAP_OBJECT = new Object();
+
+  private final OctTreeConfigurationD config;
+  private final ByteBuffer data;
+  private final ToLongFunction<T> ids;
+  private final LongFunction<T> objects;
+  private final int size;
+  private final int index_offset;
+
+  private OctTreeMappedD(
+    final OctTreeConfigurationD in_config,
+    final ByteBuffer in_data,
+    final ToLongFunction<T> in_ids,
+    final LongFunction<T> in_items,
+    final int in_size,
+    final int in_index)
+  {
+    this.config = in_config;
+    this.data = in_data;
+    this.ids = in_ids;
+    this.objects = in_items;
+    this.size = in_size;
+    this.index_offset = in_index;
+  }
+
+  /**
+   * Open a tree written by {@link OctTreeBinaryD} to a file. The channel
+   * may be closed once the tree is opened; the mapping remains valid until
+   * the tree is garbage collected.
+   *
+   * @param channel The channel
+   * @param ids     A function that yields the identifier of each object
+   * @param items   A function that yields the object with each identifier
+   * @param <T>     The precise type of tree objects
+   *
+   * @return A new tree
+   *
+   * @throws IOException On I/O errors, or if the file does not contain a
+   *                     tree in the expected format
+   */
+
+  public static <T> OctTreeReadableDType<T> open(
+    final FileChannel channel,
+    final ToLongFunction<T> ids,
+    final LongFunction<T> items)
+    throws IOException
+  {
+    Objects.requireNonNull(channel, "Channel");
+    Objects.requireNonNull(ids, "IDs");
+    Objects.requireNonNull(items, "Items");
+
+    final long file_size = channel.size();
+    if (file_size > (long) Integer.MAX_VALUE) {
+      throw new IOException("File is too large to be mapped: " + file_size);
+    }
+    if (file_size < (long) OctTreeBinaryD.HEADER_SIZE) {
+      throw new IOException("File is too small to contain a tree: " + file_size);
+    }
+
+    final ByteBuffer data =
+      channel.map(FileChannel.MapMode.READ_ONLY, 0L, file_size);
+    final OctTreeConfigurationD config = OctTreeBinaryD.readConfiguration(data);
+    final long size = data.getLong();
+
+    final int root = OctTreeBinaryD.HEADER_SIZE;
+    final long objects = checkOctant(data, config, root, config.volume(), 0);
+    if (objects != size) {
+      throw new IOException(String.format(
+        "Object count mismatch: expected %d, received %d",
+        Long.valueOf(size),
+        Long.valueOf(objects)));
+    }
+
+    final int index = root + (int) data.getLong(root + OCTANT_SIZE);
+    checkIndex(data, index, (int) size);
+    return new OctTreeMappedD<>(config, data, ids, items, (int) size, index);
+  }
+
+  private static IOException malformed(
+    final long offset)
+  {
+    return new IOException("Malformed octant at offset " + offset);
+  }
+
+  /**
+   * Check that the octant at {@code offset} and all of its descendants
+   * lie within the file, have consistent sizes, and have the volumes and
+   * splits that {@link OctTreeBinaryD} would accept. Children must follow
+   * their parent strictly in order. As an octant is only split if
+   * {@link OctantsD#canSplit(OctTreeConfigurationD, VolumeD, int)} allows it,
+   * the depth of the recursion is bounded by the maximum depth and the
+   * minimum octant sizes of the configuration.
+   *
+   * @return The number of objects in the octant and its descendants
+   */
+
+  private static long checkOctant(
+    final ByteBuffer data,
+    final OctTreeConfigurationD config,
+    final int offset,
+    final VolumeD volume,
+    final int depth)
+    throws IOException
+  {
+    final long own_size = checkOctantFields(data, offset);
+    checkOctantVolume(data, offset, volume);
+    final long end = (long) offset + data.getLong(offset + OCTANT_SIZE);
+
+    long objects = (long) data.getInt(offset + OCTANT_COUNT);
+    long child = (long) offset + own_size;
+    if (data.get(offset) == 1) {
+      if (!OctantsD.canSplit(config, volume, depth)) {
+        throw new IOException("Octant cannot be split at offset " + offset);
+      }
+
+      final VolumeXYZSplitD<VolumeD> q = OctantsD.subdivide(volume);
+      final VolumeD[] children = {
+        q.x0y0z0(), q.x1y0z0(), q.x0y1z0(), q.x1y1z0(),
+        q.x0y0z1(), q.x1y0z1(), q.x0y1z1(), q.x1y1z1(),
+      };
+      for (int index = 0; index < CHILDREN; ++index) {
+        objects += checkOctant(data, config, (int) child, children[index], depth + 1);
+        final long next = child + data.getLong((int) child + OCTANT_SIZE);
+        if (next <= child || next > end) {
+          throw malformed(child);
+        }
+        child = next;
+      }
+    }
+
+    if (child != end
+      || objects != (long) data.getInt(offset + OCTANT_SUBTREE_COUNT)) {
+      throw malformed((long) offset);
+    }
+    return objects;
+  }
+
+  /**
+   * Check that the octant at {@code offset} records the volume that
+   * the octant has in the tree.
+   */
+
+  private static void checkOctantVolume(
+    final ByteBuffer data,
+    final int offset,
+    final VolumeD volume)
+    throws IOException
+  {
+    final double[] expected = VolumeBoundsD.pack(volume);
+    final int base = offset + OCTANT_VOLUME;
+    for (int axis = 0; axis < VolumeBoundsD.STRIDE; ++axis) {
+      if (Double.compare(data.getDouble(base + axis * 8), expected[axis]) != 0) {
+        throw malformed((long) offset);
+      }
+    }
+  }
+
+  /**
+   * Check the fields of the octant at {@code offset}, excluding its
+   * descendants.
+   *
+   * @return The number of bytes occupied by the octant and its objects
+   */
+
+  private static long checkOctantFields(
+    final ByteBuffer data,
+    final int offset)
+    throws IOException
+  {
+    if ((long) offset + (long) OctTreeBinaryD.OCTANT_SIZE > (long) data.limit()) {
+      throw malformed((long) offset);
+    }
+
+    final byte split = data.get(offset);
+    final int count = data.getInt(offset + OCTANT_COUNT);
+    if (split < 0 || split > 1 || count < 0) {
+      throw malformed((long) offset);
+    }
+
+    final long size = data.getLong(offset + OCTANT_SIZE);
+    final long own_size = (long) OctTreeBinaryD.OCTANT_SIZE
+      + (long) count * (long) OctTreeBinaryD.OBJECT_SIZE;
+    if (size < own_size || (long) offset + size > (long) data.limit()) {
+      throw malformed((long) offset);
+    }
+    return own_size;
+  }
+
+  /**
+   * Check that the index lies at the end of the file, that its identifiers
+   * are unique and ascending, and that its objects lie within the tree.
+   */
+
+  private static void checkIndex(
+    final ByteBuffer data,
+    final int index,
+    final int size)
+    throws IOException
+  {
+    final long end = (long) index + (long) size * (long) OctTreeBinaryD.INDEX_ENTRY_SIZE;
+    if (end != (long) data.limit()) {
+      throw new IOException("Malformed index at offset " + index);
+    }
+
+    for (int entry = 0; entry < size; ++entry) {
+      final int offset = index + entry * OctTreeBinaryD.INDEX_ENTRY_SIZE;
+      final long id = data.getLong(offset);
+      final long object = data.getLong(offset + 8);
+      if (entry > 0 && data.getLong(offset - OctTreeBinaryD.INDEX_ENTRY_SIZE) >= id) {
+        throw new IOException("Object " + id + " appears more than once, or out of order");
+      }
+      if (object < (long) OctTreeBinaryD.HEADER_SIZE
+        || object + (long) OctTreeBinaryD.OBJECT_SIZE > (long) index
+        || data.getLong((int) object) != id) {
+        throw new IOException("Object " + id + " has a malformed offset " + object);
+      }
+    }
+  }
+
+  private int objectCount(
+    final int octant)
+  {
+    return this.data.getInt(octant + OCTANT_COUNT);
+  }
+
+  private int subtreeCount(
+    final int octant)
+  {
+    return this.data.getInt(octant + OCTANT_SUBTREE_COUNT);
+  }
+
+  private boolean isLeaf(
+    final int octant)
+  {
+    return this.data.get(octant) == 0;
+  }
+
+  private int next(
+    final int octant)
+  {
+    return octant + (int) this.data.getLong(octant + OCTANT_SIZE);
+  }
+
+  private void octantBounds(
+    final int octant,
+    final double[] bounds)
+  {
+    final int base = octant + OCTANT_VOLUME;
+    for (int axis = 0; axis < VolumeBoundsD.STRIDE; ++axis) {
+      bounds[axis] = this.data.getDouble(base + axis * 8);
+    }
+  }
+
+  private void objectBounds(
+    final int object,
+    final double[] bounds)
+  {
+    final int base = object + 8;
+    for (int axis = 0; axis < VolumeBoundsD.STRIDE; ++axis) {
+      bounds[axis] = this.data.getDouble(base + axis * 8);
+    }
+  }
+
+  private T objectValue(
+    final int object)
+  {
+    return Objects.requireNonNull(this.objects.apply(this.data.getLong(object)), "Item");
+  }
+
+  private VolumeD objectVolume(
+    final int object)
+  {
+    final double[] bounds = new double[VolumeBoundsD.STRIDE];
+    this.objectBounds(object, bounds);
+    return VolumeBoundsD.unpack(bounds, 0);
+  }
+
+  /**
+   * @return The offset of the object with the given identifier, or
+   * {@code -1} if there is no such object
+   */
+
+  private int find(
+    final long id)
+  {
+    int low = 0;
+    int high = this.size - 1;
+    while (low <= high) {
+      final int middle = (low + high) >>> 1;
+      final int entry = this.index_offset + middle * OctTreeBinaryD.INDEX_ENTRY_SIZE;
+      final long middle_id = this.data.getLong(entry);
+      if (middle_id < id) {
+        low = middle + 1;
+      } else if (middle_id > id) {
+        high = middle - 1;
+      } else {
+        return (int) this.data.getLong(entry + 8);
+      }
+    }
+    return -1;
+  }
+
+  @Override
+  public long size()
+  {
+    return (long) this.size;
+  }
+
+  @Override
+  public VolumeD bounds()
+  {
+    return this.config.volume();
+  }
+
+  @Override
+  public boolean contains(final T item)
+  {
+    Objects.requireNonNull(item, "Item");
+    return this.find(this.ids.applyAsLong(item)) >= 0;
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>The result is a {@link OctTreeD} tree with the same shape as this
+   * tree.</p>
+   */
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public <U> OctTreeReadableDType<U> map(final BiFunction<T, VolumeD, U> f)
+  {
+    Objects.requireNonNull(f, "Function");
+
+    final OctTreeD<U> tree = (OctTreeD<U>) OctTreeD.<U>create(this.config);
+    this.mapOctant(OctTreeBinaryD.HEADER_SIZE, tree.rootNode(), f);
+    return tree;
+  }
+
+  private <U> void mapOctant(
+    final int octant,
+    final OctTreeD<U>.Octant target,
+    final BiFunction<T, VolumeD, U> f)
+  {
+    /*
+     * As with OctTreeBinaryD, the octant is split before it receives any
+     * objects, so that the objects stay in the octant.
+     */
+
+    if (!this.isLeaf(octant)) {
+      target.split();
+    }
+
+    int object = octant + OctTreeBinaryD.OCTANT_SIZE;
+    final int count = this.objectCount(octant);
+    for (int index = 0; index < count; ++index) {
+      final VolumeD volume = this.objectVolume(object);
+      final U value = Objects.requireNonNull(
+        f.apply(this.objectValue(object), volume), "Value");
+      target.insertObject(new OctTreeD.Item<>(value, volume));
+      object += OctTreeBinaryD.OBJECT_SIZE;
+    }
+
+    if (!this.isLeaf(octant)) {
+      int child = object;
+      for (int index = 0; index < CHILDREN; ++index) {
+        this.mapOctant(child, target.child(index), f);
+        child = this.next(child);
+      }
+    }
+  }
+
+  @Override
+  public <C> void iterateOctants(
+    final C context,
+    final OctTreeOctantIterationDType<T, C> f)
+  {
+    Objects.requireNonNull(context, "Context");
+    Objects.requireNonNull(f, "Function");
+    this.iterateOctantsFrom(OctTreeBinaryD.HEADER_SIZE, context, f, 0L);
+  }
+
+  private <C> TreeVisitResult iterateOctantsFrom(
+    final int octant,
+    final C context,
+    final OctTreeOctantIterationDType<T, C> f,
+    final long depth)
+  {
+    switch (f.apply(context, new Octant(octant), depth)) {
+      case RESULT_CONTINUE: {
+        if (!this.isLeaf(octant)) {
+          int child = octant + OctTreeBinaryD.OCTANT_SIZE
+            + this.objectCount(octant) * OctTreeBinaryD.OBJECT_SIZE;
+          for (int index = 0; index < CHILDREN; ++index) {
+            if (this.iterateOctantsFrom(child, context, f, Math.addExact(depth, 1L))
+              == TreeVisitResult.RESULT_TERMINATE) {
+              return TreeVisitResult.RESULT_TERMINATE;
+            }
+            child = this.next(child);
+          }
+        }
+        return TreeVisitResult.RESULT_CONTINUE;
+      }
+      case RESULT_TERMINATE:
+        return TreeVisitResult.RESULT_TERMINATE;
+    }
+
+    throw new UnreachableCodeException();
+  }
+
+  @Override
+  public VolumeD volumeFor(final T item)
+  {
+    Objects.requireNonNull(item, "Item");
+
+    final int object = this.find(this.ids.applyAsLong(item));
+    if (object < 0) {
+      throw new NoSuchElementException(item.toString());
+    }
+    return this.objectVolume(object);
+  }
+
+  private static <T> TreeVisitResult collectItem(
+    final Set<T> items,
+    final T item,
+    final VolumeD bounds)
+  {
+    items.add(item);
+    return TreeVisitResult.RESULT_CONTINUE;
+  }
+
+  private static <T> TreeVisitResult collectRaycastResult(
+    final SortedSet<OctTreeRaycastResultD<T>> items,
+    final T item,
+    final VolumeD bounds,
+    final double distance)
+  {
+    items.add(OctTreeRaycastResultD.of(distance, bounds, item));
+    return TreeVisitResult.RESULT_CONTINUE;
+  }
+
+  @Override
+  public void containedBy(
+    final VolumeD volume,
+    final Set<T> items)
+  {
+    Objects.requireNonNull(volume, "Volume");
+    Objects.requireNonNull(items, "Items");
+    this.containedBy(volume, items, OctTreeMappedD::collectItem);
+  }
+
+  @Override
+  public void overlappedBy(
+    final VolumeD volume,
+    final Set<T> items)
+  {
+    Objects.requireNonNull(volume, "Volume");
+    Objects.requireNonNull(items, "Items");
+    this.overlappedBy(volume, items, OctTreeMappedD::collectItem);
+  }
+
+  @Override
+  public void raycast(
+    final Ray3D ray,
+    final SortedSet<OctTreeRaycastResultD<T>> items)
+  {
+    Objects.requireNonNull(ray, "Ray");
+    Objects.requireNonNull(items, "Items");
+    this.raycast(ray, items, OctTreeMappedD::collectRaycastResult);
+  }
+
+  @Override
+  public <C> TreeVisitResult containedBy(
+    final VolumeD volume,
+    final C context,
+    final OctTreeItemVisitorDType<T, C> f)
+  {
+    Objects.requireNonNull(volume, "Volume");
+    Objects.requireNonNull(context, "Context");
+    Objects.requireNonNull(f, "Function");
+    return this.areaContainingVisit(
+      OctTreeBinaryD.HEADER_SIZE,
+      VolumeBoundsD.pack(volume),
+      new double[VolumeBoundsD.STRIDE],
+      context,
+      f);
+  }
+
+  private <C> TreeVisitResult areaContainingVisit(
+    final int octant,
+    final double[] target_volume,
+    final double[] bounds,
+    final C context,
+    final OctTreeItemVisitorDType<T, C> f)
+  {
+    if (this.subtreeCount(octant) == 0) {
+      return TreeVisitResult.RESULT_CONTINUE;
+    }
+
+    this.octantBounds(octant, bounds);
+    if (VolumeBoundsD.contains(target_volume, 0, bounds, 0)) {
+      return this.visitRecursive(octant, bounds, context, f);
+    }
+
+    int object = octant + OctTreeBinaryD.OCTANT_SIZE;
+    final int count = this.objectCount(octant);
+    for (int index = 0; index < count; ++index) {
+      this.objectBounds(object, bounds);
+      if (VolumeBoundsD.contains(target_volume, 0, bounds, 0)) {
+        if (f.apply(context, this.objectValue(object), VolumeBoundsD.unpack(bounds, 0))
+          == TreeVisitResult.RESULT_TERMINATE) {
+          return TreeVisitResult.RESULT_TERMINATE;
+        }
+      }
+      object += OctTreeBinaryD.OBJECT_SIZE;
+    }
+
+    if (!this.isLeaf(octant)) {
+      int child = object;
+      for (int index = 0; index < CHILDREN; ++index) {
+        if (this.areaContainingVisit(child, target_volume, bounds, context, f)
+          == TreeVisitResult.RESULT_TERMINATE) {
+          return TreeVisitResult.RESULT_TERMINATE;
+        }
+        child = this.next(child);
+      }
+    }
+    return TreeVisitResult.RESULT_CONTINUE;
+  }
+
+  /**
+   * Visit every object in an octant and its descendants. The descendants
+   * of an octant immediately follow the octant in the file, so the
+   * octants are visited in a single pass over the bytes that they
+   * occupy.
+   */
+
+  private <C> TreeVisitResult visitRecursive(
+    final int octant,
+    final double[] bounds,
+    final C context,
+    final OctTreeItemVisitorDType<T, C> f)
+  {
+    final int end = this.next(octant);
+    int position = octant;
+    while (position < end) {
+      final int count = this.objectCount(position);
+      position += OctTreeBinaryD.OCTANT_SIZE;
+      for (int index = 0; index < count; ++index) {
+        this.objectBounds(position, bounds);
+        if (f.apply(context, this.objectValue(position), VolumeBoundsD.unpack(bounds, 0))
+          == TreeVisitResult.RESULT_TERMINATE) {
+          return TreeVisitResult.RESULT_TERMINATE;
+        }
+        position += OctTreeBinaryD.OBJECT_SIZE;
+      }
+    }
+    return TreeVisitResult.RESULT_CONTINUE;
+  }
+
+  @Override
+  public <C> TreeVisitResult overlappedBy(
+    final VolumeD volume,
+    final C context,
+    final OctTreeItemVisitorDType<T, C> f)
+  {
+    Objects.requireNonNull(volume, "Volume");
+    Objects.requireNonNull(context, "Context");
+    Objects.requireNonNull(f, "Function");
+    return this.areaOverlappingVisit(
+      OctTreeBinaryD.HEADER_SIZE,
+      VolumeBoundsD.pack(volume),
+      new double[VolumeBoundsD.STRIDE],
+      context,
+      f);
+  }
+
+  private <C> TreeVisitResult areaOverlappingVisit(
+    final int octant,
+    final double[] target_volume,
+    final double[] bounds,
+    final C context,
+    final OctTreeItemVisitorDType<T, C> f)
+  {
+    if (this.subtreeCount(octant) == 0) {
+      return TreeVisitResult.RESULT_CONTINUE;
+    }
+
+    this.octantBounds(octant, bounds);
+    if (!VolumeBoundsD.overlaps(target_volume, 0, bounds, 0)) {
+      return TreeVisitResult.RESULT_CONTINUE;
+    }
+
+    int object = octant + OctTreeBinaryD.OCTANT_SIZE;
+    final int count = this.objectCount(octant);
+    for (int index = 0; index < count; ++index) {
+      this.objectBounds(object, bounds);
+      if (VolumeBoundsD.overlaps(target_volume, 0, bounds, 0)) {
+        if (f.apply(context, this.objectValue(object), VolumeBoundsD.unpack(bounds, 0))
+          == TreeVisitResult.RESULT_TERMINATE) {
+          return TreeVisitResult.RESULT_TERMINATE;
+        }
+      }
+      object += OctTreeBinaryD.OBJECT_SIZE;
+    }
+
+    if (!this.isLeaf(octant)) {
+      int child = object;
+      for (int index = 0; index < CHILDREN; ++index) {
+        if (this.areaOverlappingVisit(child, target_volume, bounds, context, f)
+          == TreeVisitResult.RESULT_TERMINATE) {
+          return TreeVisitResult.RESULT_TERMINATE;
+        }
+        child = this.next(child);
+      }
+    }
+    return TreeVisitResult.RESULT_CONTINUE;
+  }
+
+  @Override
+  public <C> TreeVisitResult raycast(
+    final Ray3D ray,
+    final C context,
+    final OctTreeRaycastVisitorDType<T, C> f)
+  {
+    Objects.requireNonNull(ray, "Ray");
+    Objects.requireNonNull(context, "Context");
+    Objects.requireNonNull(f, "Function");
+    return this.raycastVisit(
+      OctTreeBinaryD.HEADER_SIZE, ray, new double[VolumeBoundsD.STRIDE], context, f);
+  }
+
+  private <C> TreeVisitResult raycastVisit(
+    final int octant,
+    final Ray3D ray,
+    final double[] bounds,
+    final C context,
+    final OctTreeRaycastVisitorDType<T, C> f)
+  {
+    if (this.subtreeCount(octant) == 0) {
+      return TreeVisitResult.RESULT_CONTINUE;
+    }
+
+    this.octantBounds(octant, bounds);
+    if (!VolumeBoundsD.intersects(ray, bounds, 0)) {
+      return TreeVisitResult.RESULT_CONTINUE;
+    }
+
+    int object = octant + OctTreeBinaryD.OCTANT_SIZE;
+    final int count = this.objectCount(octant);
+    for (int index = 0; index < count; ++index) {
+      this.objectBounds(object, bounds);
+      if (VolumeBoundsD.intersects(ray, bounds, 0)) {
+        final double distance =
+          Vectors3D.distance(Vector3D.of(bounds[0], bounds[2], bounds[4]), ray.origin());
+        if (f.apply(context, this.objectValue(object), VolumeBoundsD.unpack(bounds, 0), distance)
+          == TreeVisitResult.RESULT_TERMINATE) {
+          return TreeVisitResult.RESULT_TERMINATE;
+        }
+      }
+      object += OctTreeBinaryD.OBJECT_SIZE;
+    }
+
+    if (!this.isLeaf(octant)) {
+      int child = object;
+      for (int index = 0; index < CHILDREN; ++index) {
+        if (this.raycastVisit(child, ray, bounds, context, f)
+          == TreeVisitResult.RESULT_TERMINATE) {
+          return TreeVisitResult.RESULT_TERMINATE;
+        }
+        child = this.next(child);
+      }
+    }
+    return TreeVisitResult.RESULT_CONTINUE;
+  }
+
+  @Override
+  public <C> TreeVisitResult nearest(
+    final Vector3D point,
+    final int count,
+    final C context,
+    final OctTreeNearestVisitorDType<T, C> f)
+  {
+    Objects.requireNonNull(point, "Point");
+    Objects.requireNonNull(context, "Context");
+    Objects.requireNonNull(f, "Function");
+    Preconditions.checkPreconditionI(
+      count, count >= 0, c -> "Count must be non-negative");
+
+    /*
+     * Best-first search, as with OctTreeD.
+     */
+
+    final double x = point.x();
+    final double y = point.y();
+    final double z = point.z();
+    final double[] bounds = new double[VolumeBoundsD.STRIDE];
+    final DistanceHeap heap = new DistanceHeap();
+    final int root = OctTreeBinaryD.HEADER_SIZE;
+    this.octantBounds(root, bounds);
+    heap.add(VolumeBoundsD.distanceSquared(x, y, z, bounds, 0), HEAP_OCTANT, root);
+
+    int found = 0;
+    while (found < count && !heap.isEmpty()) {
+      final double key = heap.topKey();
+      final Object top = heap.topObject();
+      final int offset = heap.topInt();
+      heap.removeTop();
+
+      if (top == HEAP_OBJECT) {
+        ++found;
+        this.objectBounds(offset, bounds);
+        if (f.apply(context, this.objectValue(offset), VolumeBoundsD.unpack(bounds, 0), Math.sqrt(key))
+          == TreeVisitResult.RESULT_TERMINATE) {
+          return TreeVisitResult.RESULT_TERMINATE;
+        }
+      } else {
+        this.nearestExpand(offset, x, y, z, bounds, heap);
+      }
+    }
+    return TreeVisitResult.RESULT_CONTINUE;
+  }
+
+  private void nearestExpand(
+    final int octant,
+    final double x,
+    final double y,
+    final double z,
+    final double[] bounds,
+    final DistanceHeap heap)
+  {
+    int object = octant + OctTreeBinaryD.OCTANT_SIZE;
+    final int count = this.objectCount(octant);
+    for (int index = 0; index < count; ++index) {
+      this.objectBounds(object, bounds);
+      heap.add(VolumeBoundsD.distanceSquared(x, y, z, bounds, 0), HEAP_OBJECT, object);
+      object += OctTreeBinaryD.OBJECT_SIZE;
+    }
+
+    if (!this.isLeaf(octant)) {
+      int child = object;
+      for (int index = 0; index < CHILDREN; ++index) {
+        if (this.subtreeCount(child) > 0) {
+          this.octantBounds(child, bounds);
+          heap.add(VolumeBoundsD.distanceSquared(x, y, z, bounds, 0), HEAP_OCTANT, child);
+        }
+        child = this.next(child);
+      }
+    }
+  }
+
+  @Override
+  public Optional<OctTreeRaycastResultD<T>> raycastFirst(
+    final Ray3D ray)
+  {
+    Objects.requireNonNull(ray, "Ray");
+
+    final int root = OctTreeBinaryD.HEADER_SIZE;
+    final double[] bounds = new double[VolumeBoundsD.STRIDE];
+    final RaycastHit hit = new RaycastHit();
+    this.octantBounds(root, bounds);
+    if (VolumeBoundsD.entryDistance(ray, bounds, 0) < hit.distance) {
+      this.raycastFirst(root, ray, VolumeBoundsD.raycastOrder(ray), bounds, hit);
+    }
+
+    if (hit.object >= 0) {
+      return Optional.of(OctTreeRaycastResultD.of(
+        hit.distance, this.objectVolume(hit.object), this.objectValue(hit.object)));
+    }
+    return Optional.empty();
+  }
+
+  private void raycastFirst(
+    final int octant,
+    final Ray3D ray,
+    final int order,
+    final double[] bounds,
+    final RaycastHit hit)
+  {
+    int object = octant + OctTreeBinaryD.OCTANT_SIZE;
+    final int count = this.objectCount(octant);
+    for (int index = 0; index < count; ++index) {
+      this.objectBounds(object, bounds);
+      final double distance = VolumeBoundsD.entryDistance(ray, bounds, 0);
+      if (distance < hit.distance) {
+        hit.distance = distance;
+        hit.object = object;
+      }
+      object += OctTreeBinaryD.OBJECT_SIZE;
+    }
+
+    if (!this.isLeaf(octant)) {
+      final int[] children = new int[CHILDREN];
+      int child = object;
+      for (int index = 0; index < CHILDREN; ++index) {
+        children[index] = child;
+        child = this.next(child);
+      }
+
+      for (int index = 0; index < CHILDREN; ++index) {
+        final int next = children[index ^ order];
+        if (this.subtreeCount(next) > 0) {
+          this.octantBounds(next, bounds);
+          if (VolumeBoundsD.entryDistance(ray, bounds, 0) < hit.distance) {
+            this.raycastFirst(next, ray, order, bounds, hit);
+          }
+        }
+      }
+    }
+  }
+
+  @Override
+  public <C> TreeVisitResult raycastFirst(
+    final Ray3D ray,
+    final int count,
+    final C context,
+    final OctTreeRaycastVisitorDType<T, C> f)
+  {
+    Objects.requireNonNull(ray, "Ray");
+    Objects.requireNonNull(context, "Context");
+    Objects.requireNonNull(f, "Function");
+    Preconditions.checkPreconditionI(
+      count, count >= 0, c -> "Count must be non-negative");
+
+    final int root = OctTreeBinaryD.HEADER_SIZE;
+    final double[] bounds = new double[VolumeBoundsD.STRIDE];
+    final DistanceHeap heap = new DistanceHeap();
+    this.octantBounds(root, bounds);
+    final double root_distance = VolumeBoundsD.entryDistance(ray, bounds, 0);
+    if (root_distance < Double.POSITIVE_INFINITY) {
+      heap.add(root_distance, HEAP_OCTANT, root);
+    }
+
+    int found = 0;
+    while (found < count && !heap.isEmpty()) {
+      final double key = heap.topKey();
+      final Object top = heap.topObject();
+      final int offset = heap.topInt();
+      heap.removeTop();
+
+      if (top == HEAP_OBJECT) {
+        ++found;
+        this.objectBounds(offset, bounds);
+        if (f.apply(context, this.objectValue(offset), VolumeBoundsD.unpack(bounds, 0), key)
+          == TreeVisitResult.RESULT_TERMINATE) {
+          return TreeVisitResult.RESULT_TERMINATE;
+        }
+      } else {
+        this.raycastExpand(offset, ray, bounds, heap);
+      }
+    }
+    return TreeVisitResult.RESULT_CONTINUE;
+  }
+
+  private void raycastExpand(
+    final int octant,
+    final Ray3D ray,
+    final double[] bounds,
+    final DistanceHeap heap)
+  {
+    int object = octant + OctTreeBinaryD.OCTANT_SIZE;
+    final int count = this.objectCount(octant);
+    for (int index = 0; index < count; ++index) {
+      this.objectBounds(object, bounds);
+      final double distance = VolumeBoundsD.entryDistance(ray, bounds, 0);
+      if (distance < Double.POSITIVE_INFINITY) {
+        heap.add(distance, HEAP_OBJECT, object);
+      }
+      object += OctTreeBinaryD.OBJECT_SIZE;
+    }
+
+    if (!this.isLeaf(octant)) {
+      int child = object;
+      for (int index = 0; index < CHILDREN; ++index) {
+        if (this.subtreeCount(child) > 0) {
+          this.octantBounds(child, bounds);
+          final double distance = VolumeBoundsD.entryDistance(ray, bounds, 0);
+          if (distance < Double.POSITIVE_INFINITY) {
+            heap.add(distance, HEAP_OCTANT, child);
+          }
+        }
+        child = this.next(child);
+      }
+    }
+  }
+
+  @Override
+  public void raycast(
+    final Ray3D ray,
+    final OctTreeRaycastBufferD<T> results)
+  {
+    Objects.requireNonNull(ray, "Ray");
+    Objects.requireNonNull(results, "Results");
+    this.raycastBuffer(
+      OctTreeBinaryD.HEADER_SIZE, ray, new double[VolumeBoundsD.STRIDE], results);
+  }
+
+  private void raycastBuffer(
+    final int octant,
+    final Ray3D ray,
+    final double[] bounds,
+    final OctTreeRaycastBufferD<T> results)
+  {
+    if (this.subtreeCount(octant) == 0) {
+      return;
+    }
+
+    this.octantBounds(octant, bounds);
+    if (!VolumeBoundsD.intersects(ray, bounds, 0)) {
+      return;
+    }
+
+    int object = octant + OctTreeBinaryD.OCTANT_SIZE;
+    final int count = this.objectCount(octant);
+    for (int index = 0; index < count; ++index) {
+      this.objectBounds(object, bounds);
+      final double distance = VolumeBoundsD.entryDistance(ray, bounds, 0);
+      if (distance < Double.POSITIVE_INFINITY) {
+        results.add(
+          this.objectValue(object),
+          distance,
+          bounds[0],
+          bounds[1],
+          bounds[2],
+          bounds[3],
+          bounds[4],
+          bounds[5]);
+      }
+      object += OctTreeBinaryD.OBJECT_SIZE;
+    }
+
+    if (!this.isLeaf(octant)) {
+      int child = object;
+      for (int index = 0; index < CHILDREN; ++index) {
+        this.raycastBuffer(child, ray, bounds, results);
+        child = this.next(child);
+      }
+    }
+  }
+
+  @Override
+  public long countContainedBy(
+    final VolumeD volume)
+  {
+    Objects.requireNonNull(volume, "Volume");
+    return this.countContaining(
+      OctTreeBinaryD.HEADER_SIZE, VolumeBoundsD.pack(volume), new double[VolumeBoundsD.STRIDE]);
+  }
+
+  private long countContaining(
+    final int octant,
+    final double[] target_volume,
+    final double[] bounds)
+  {
+    final int subtree_count = this.subtreeCount(octant);
+    if (subtree_count == 0) {
+      return 0L;
+    }
+
+    this.octantBounds(octant, bounds);
+    if (VolumeBoundsD.contains(target_volume, 0, bounds, 0)) {
+      return (long) subtree_count;
+    }
+    if (!VolumeBoundsD.touches(target_volume, 0, bounds, 0)) {
+      return 0L;
+    }
+
+    long count = 0L;
+    int object = octant + OctTreeBinaryD.OCTANT_SIZE;
+    final int object_count = this.objectCount(octant);
+    for (int index = 0; index < object_count; ++index) {
+      this.objectBounds(object, bounds);
+      if (VolumeBoundsD.contains(target_volume, 0, bounds, 0)) {
+        ++count;
+      }
+      object += OctTreeBinaryD.OBJECT_SIZE;
+    }
+
+    if (!this.isLeaf(octant)) {
+      int child = object;
+      for (int index = 0; index < CHILDREN; ++index) {
+        count += this.countContaining(child, target_volume, bounds);
+        child = this.next(child);
+      }
+    }
+    return count;
+  }
+
+  @Override
+  public long countOverlapping(
+    final VolumeD volume)
+  {
+    Objects.requireNonNull(volume, "Volume");
+    return this.countOverlapping(
+      OctTreeBinaryD.HEADER_SIZE, VolumeBoundsD.pack(volume), new double[VolumeBoundsD.STRIDE]);
+  }
+
+  private long countOverlapping(
+    final int octant,
+    final double[] target_volume,
+    final double[] bounds)
+  {
+    final int subtree_count = this.subtreeCount(octant);
+    if (subtree_count == 0) {
+      return 0L;
+    }
+
+    this.octantBounds(octant, bounds);
+    if (!VolumeBoundsD.overlaps(target_volume, 0, bounds, 0)) {
+      return 0L;
+    }
+    if (VolumeBoundsD.overlapsAllWithin(target_volume, 0, bounds, 0)) {
+      return (long) subtree_count;
+    }
+
+    long count = 0L;
+    int object = octant + OctTreeBinaryD.OCTANT_SIZE;
+    final int object_count = this.objectCount(octant);
+    for (int index = 0; index < object_count; ++index) {
+      this.objectBounds(object, bounds);
+      if (VolumeBoundsD.overlaps(target_volume, 0, bounds, 0)) {
+        ++count;
+      }
+      object += OctTreeBinaryD.OBJECT_SIZE;
+    }
+
+    if (!this.isLeaf(octant)) {
+      int child = object;
+      for (int index = 0; index < CHILDREN; ++index) {
+        count += this.countOverlapping(child, target_volume, bounds);
+        child = this.next(child);
+      }
+    }
+    return count;
+  }
+
+  @Override
+  public boolean anyOverlapping(
+    final VolumeD volume)
+  {
+    Objects.requireNonNull(volume, "Volume");
+    return this.anyOverlapping(
+      OctTreeBinaryD.HEADER_SIZE, VolumeBoundsD.pack(volume), new double[VolumeBoundsD.STRIDE]);
+  }
+
+  private boolean anyOverlapping(
+    final int octant,
+    final double[] target_volume,
+    final double[] bounds)
+  {
+    if (this.subtreeCount(octant) == 0) {
+      return false;
+    }
+
+    this.octantBounds(octant, bounds);
+    if (!VolumeBoundsD.overlaps(target_volume, 0, bounds, 0)) {
+      return false;
+    }
+    if (VolumeBoundsD.overlapsAllWithin(target_volume, 0, bounds, 0)) {
+      return true;
+    }
+
+    int object = octant + OctTreeBinaryD.OCTANT_SIZE;
+    final int count = this.objectCount(octant);
+    for (int index = 0; index < count; ++index) {
+      this.objectBounds(object, bounds);
+      if (VolumeBoundsD.overlaps(target_volume, 0, bounds, 0)) {
+        return true;
+      }
+      object += OctTreeBinaryD.OBJECT_SIZE;
+    }
+
+    if (!this.isLeaf(octant)) {
+      int child = object;
+      for (int index = 0; index < CHILDREN; ++index) {
+        if (this.anyOverlapping(child, target_volume, bounds)) {
+          return true;
+        }
+        child = this.next(child);
+      }
+    }
+    return false;
+  }
+
+  /**
+   * The nearest object found so far by a first-hit raycast.
+   */
+
+  private static final class RaycastHit
+  {
+    private double distance;
+    private int object;
+
+    private RaycastHit()
+    {
+      this.distance = Double.POSITIVE_INFINITY;
+      this.object = -1;
+    }
+  }
+
+  /**
+   * A view of an octant in the mapped file.
+   */
+
+  private final class Octant implements OctTreeOctantDType<T>
+  {
+    private final int offset;
+
+    private Octant(
+      final int in_offset)
+    {
+      this.offset = in_offset;
+    }
+
+    @Override
+    public Map<T, VolumeD> objects()
+    {
+      final int count = OctTreeMappedD.this.objectCount(this.offset);
+      final Reference2ReferenceOpenHashMap<T, VolumeD> m =
+        new Reference2ReferenceOpenHashMap<>(count);
+
+      int object = this.offset + OctTreeBinaryD.OCTANT_SIZE;
+      for (int index = 0; index < count; ++index) {
+        m.put(
+          OctTreeMappedD.this.objectValue(object),
+          OctTreeMappedD.this.objectVolume(object));
+        object += OctTreeBinaryD.OBJECT_SIZE;
+      }
+      return Reference2ReferenceMaps.unmodifiable(m);
+    }
+
+    @Override
+    public VolumeD volume()
+    {
+      final double[] bounds = new double[VolumeBoundsD.STRIDE];
+      OctTreeMappedD.this.octantBounds(this.offset, bounds);
+      return VolumeBoundsD.unpack(bounds, 0);
+    }
+  }
+}
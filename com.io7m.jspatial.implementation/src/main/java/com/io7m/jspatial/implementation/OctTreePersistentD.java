@@ -0,0 +1,1160 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jspatial.implementation;
+
+import com.io7m.jaffirm.core.Invariants;
+import com.io7m.jaffirm.core.Preconditions;
+import com.io7m.jregions.core.unparameterized.volumes.VolumeD;
+import com.io7m.jregions.core.unparameterized.volumes.VolumeXYZSplitD;
+import com.io7m.jspatial.api.Ray3D;
+import com.io7m.jspatial.api.TreeVisitResult;
+import com.io7m.jspatial.api.octtrees.OctTreeConfigurationD;
+import com.io7m.jspatial.api.octtrees.OctTreeItemVisitorDType;
+import com.io7m.jspatial.api.octtrees.OctTreeNearestVisitorDType;
+import com.io7m.jspatial.api.octtrees.OctTreePersistentDType;
+import com.io7m.jspatial.api.octtrees.OctTreeOctantDType;
+import com.io7m.jspatial.api.octtrees.OctTreeOctantIterationDType;
+import com.io7m.jspatial.api.octtrees.OctTreeRaycastBufferD;
+import com.io7m.jspatial.api.octtrees.OctTreeRaycastResultD;
+import com.io7m.jspatial.api.octtrees.OctTreeRaycastVisitorDType;
+import com.io7m.jtensors.core.unparameterized.vectors.Vector3D;
+import com.io7m.jtensors.core.unparameterized.vectors.Vectors3D;
+import com.io7m.junreachable.UnreachableCodeException;
+import it.unimi.dsi.fastutil.objects.Reference2ReferenceMaps;
+import it.unimi.dsi.fastutil.objects.Reference2ReferenceOpenHashMap;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.function.BiFunction;
+
+/**
+ * <p>An implementation of the {@link OctTreePersistentDType} interface.</p>
+ *
+ * <p>The tree has the same structure as a {@link OctTreeD} tree that has
+ * been given the same sequence of operations, but its octants are never
+ * modified. An operation copies the octants on the path from the root to
+ * the octants that it changes, and the new version shares every other
+ * octant with the original version. The bounds of the objects in the tree
+ * are held in a {@link PersistentIdentityMap}, which is updated in the same
+ * way.</p>
+ *
+ * @param <T> The precise type of tree objects
+ */
+
+public final class OctTreePersistentD<T> implements OctTreePersistentDType<T>
+{
+  private static final int CHILDREN = 8;
+  private static final Item<?>[] NO_ITEMS = new Item<?>[0];
+
+  private final OctTreeConfigurationD config;
+  private final Octant<T> root;
+  private final PersistentIdentityMap<T, Item<T>> objects;
+
+  private OctTreePersistentD(
+    final OctTreeConfigurationD in_config,
+    final Octant<T> in_root,
+    final PersistentIdentityMap<T, Item<T>> in_objects)
+  {
+    this.config = in_config;
+    this.root = in_root;
+    this.objects = in_objects;
+  }
+
+  /**
+   * Create a new empty tree with the given bounds.
+   *
+   * @param config The tree configuration
+   * @param <T>    The type of objects contained within the tree
+   *
+   * @return A new tree
+   */
+
+  public static <T> OctTreePersistentDType<T> create(
+    final OctTreeConfigurationD config)
+  {
+    Objects.requireNonNull(config, "Configuration");
+    return new OctTreePersistentD<>(
+      config,
+      Octant.empty(config.volume(), 0),
+      PersistentIdentityMap.empty());
+  }
+
+  private OctTreePersistentD<T> withRoot(
+    final Octant<T> new_root,
+    final PersistentIdentityMap<T, Item<T>> new_objects)
+  {
+    return new OctTreePersistentD<>(this.config, new_root, new_objects);
+  }
+
+  @Override
+  public long size()
+  {
+    return (long) this.objects.size();
+  }
+
+  @Override
+  public boolean equals(final Object o)
+  {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || this.getClass() != o.getClass()) {
+      return false;
+    }
+
+    final OctTreePersistentD<?> that = (OctTreePersistentD<?>) o;
+    if (this.objects.size() != that.objects.size()) {
+      return false;
+    }
+
+    final boolean[] equal = {true};
+    this.objects.forEach((value, item) -> {
+      final Item<?> other = that.objects.get(value);
+      if (other == null || !Objects.equals(item.volume, other.volume)) {
+        equal[0] = false;
+      }
+    });
+    return equal[0];
+  }
+
+  @Override
+  public int hashCode()
+  {
+    final int[] hash = {0};
+    this.objects.forEach((value, item) -> {
+      hash[0] += System.identityHashCode(value) ^ item.volume.hashCode();
+    });
+    return hash[0];
+  }
+
+  @Override
+  public VolumeD bounds()
+  {
+    return this.root.volume;
+  }
+
+  @Override
+  public boolean contains(final T item)
+  {
+    return this.objects.get(item) != null;
+  }
+
+  @Override
+  public OctTreePersistentDType<T> insert(
+    final T item,
+    final VolumeD item_bounds)
+  {
+    Objects.requireNonNull(item, "Item");
+    Objects.requireNonNull(item_bounds, "Bounds");
+
+    final Item<T> inserted = new Item<>(item, item_bounds);
+    final boolean fits =
+      VolumeBoundsD.contains(this.root.bounds, 0, inserted.bounds, 0);
+
+    /*
+     * An object that is already in the tree is removed without trimming,
+     * inserted again, and then the path to its old position is trimmed.
+     * This is the order in which a mutable tree moves an object, and so
+     * the two trees have the same structure afterwards.
+     */
+
+    final Item<T> existing = this.objects.get(item);
+    if (existing != null) {
+      Octant<T> new_root = this.root.remove(existing, false);
+      PersistentIdentityMap<T, Item<T>> new_objects = this.objects.remove(item);
+      if (fits) {
+        new_root = new_root.insertStep(this.config, inserted);
+        new_objects = new_objects.put(item, inserted);
+      }
+      if (this.config.trimOnRemove()) {
+        new_root = new_root.trimPath(existing.bounds);
+      }
+      return this.withRoot(new_root, new_objects);
+    }
+
+    if (!fits) {
+      return this;
+    }
+    return this.withRoot(
+      this.root.insertStep(this.config, inserted),
+      this.objects.put(item, inserted));
+  }
+
+  @Override
+  public OctTreePersistentDType<T> insertAll(
+    final Map<T, VolumeD> items)
+  {
+    Objects.requireNonNull(items, "Items");
+
+    OctTreePersistentDType<T> result = this;
+    for (final Map.Entry<T, VolumeD> entry : items.entrySet()) {
+      result = result.insert(entry.getKey(), entry.getValue());
+    }
+    return result;
+  }
+
+  @Override
+  public OctTreePersistentDType<T> remove(final T item)
+  {
+    Objects.requireNonNull(item, "Item");
+
+    final Item<T> existing = this.objects.get(item);
+    if (existing == null) {
+      return this;
+    }
+    return this.withRoot(
+      this.root.remove(existing, this.config.trimOnRemove()),
+      this.objects.remove(item));
+  }
+
+  @Override
+  public OctTreePersistentDType<T> clear()
+  {
+    if (this.objects.size() == 0) {
+      return this;
+    }
+    return this.withRoot(
+      Octant.empty(this.root.volume, 0), PersistentIdentityMap.empty());
+  }
+
+  @Override
+  public OctTreePersistentDType<T> trim()
+  {
+    return this.withRoot(this.root.trim(), this.objects);
+  }
+
+  @Override
+  public <U> OctTreePersistentDType<U> map(final BiFunction<T, VolumeD, U> f)
+  {
+    Objects.requireNonNull(f, "Function");
+
+    @SuppressWarnings("unchecked")
+    final OctTreePersistentDType<U>[] result =
+      new OctTreePersistentDType[]{create(this.config)};
+    this.objects.forEach((value, item) -> {
+      result[0] = result[0].insert(f.apply(value, item.volume), item.volume);
+    });
+    return result[0];
+  }
+
+  @Override
+  public <C> void iterateOctants(
+    final C context,
+    final OctTreeOctantIterationDType<T, C> f)
+  {
+    Objects.requireNonNull(context, "Context");
+    Objects.requireNonNull(f, "Function");
+    this.root.iterateOctants(context, f, 0L);
+  }
+
+  @Override
+  public VolumeD volumeFor(final T item)
+  {
+    Objects.requireNonNull(item, "Item");
+
+    final Item<T> existing = this.objects.get(item);
+    if (existing == null) {
+      throw new NoSuchElementException(item.toString());
+    }
+    return existing.volume;
+  }
+
+  private static <T> TreeVisitResult collectItem(
+    final Set<T> items,
+    final T item,
+    final VolumeD bounds)
+  {
+    items.add(item);
+    return TreeVisitResult.RESULT_CONTINUE;
+  }
+
+  private static <T> TreeVisitResult collectRaycastResult(
+    final SortedSet<OctTreeRaycastResultD<T>> items,
+    final T item,
+    final VolumeD bounds,
+    final double distance)
+  {
+    items.add(OctTreeRaycastResultD.of(distance, bounds, item));
+    return TreeVisitResult.RESULT_CONTINUE;
+  }
+
+  @Override
+  public void containedBy(
+    final VolumeD volume,
+    final Set<T> items)
+  {
+    Objects.requireNonNull(volume, "Volume");
+    Objects.requireNonNull(items, "Items");
+    this.root.volumeContainingVisit(
+      VolumeBoundsD.pack(volume), items, OctTreePersistentD::collectItem);
+  }
+
+  @Override
+  public void overlappedBy(
+    final VolumeD volume,
+    final Set<T> items)
+  {
+    Objects.requireNonNull(volume, "Volume");
+    Objects.requireNonNull(items, "Items");
+    this.root.volumeOverlappingVisit(
+      VolumeBoundsD.pack(volume), items, OctTreePersistentD::collectItem);
+  }
+
+  @Override
+  public void raycast(
+    final Ray3D ray,
+    final SortedSet<OctTreeRaycastResultD<T>> items)
+  {
+    Objects.requireNonNull(ray, "Ray");
+    Objects.requireNonNull(items, "Items");
+    this.root.raycastVisit(ray, items, OctTreePersistentD::collectRaycastResult);
+  }
+
+  @Override
+  public <C> TreeVisitResult containedBy(
+    final VolumeD volume,
+    final C context,
+    final OctTreeItemVisitorDType<T, C> f)
+  {
+    Objects.requireNonNull(volume, "Volume");
+    Objects.requireNonNull(context, "Context");
+    Objects.requireNonNull(f, "Function");
+    return this.root.volumeContainingVisit(VolumeBoundsD.pack(volume), context, f);
+  }
+
+  @Override
+  public <C> TreeVisitResult overlappedBy(
+    final VolumeD volume,
+    final C context,
+    final OctTreeItemVisitorDType<T, C> f)
+  {
+    Objects.requireNonNull(volume, "Volume");
+    Objects.requireNonNull(context, "Context");
+    Objects.requireNonNull(f, "Function");
+    return this.root.volumeOverlappingVisit(VolumeBoundsD.pack(volume), context, f);
+  }
+
+  @Override
+  public <C> TreeVisitResult raycast(
+    final Ray3D ray,
+    final C context,
+    final OctTreeRaycastVisitorDType<T, C> f)
+  {
+    Objects.requireNonNull(ray, "Ray");
+    Objects.requireNonNull(context, "Context");
+    Objects.requireNonNull(f, "Function");
+    return this.root.raycastVisit(ray, context, f);
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public <C> TreeVisitResult nearest(
+    final Vector3D point,
+    final int count,
+    final C context,
+    final OctTreeNearestVisitorDType<T, C> f)
+  {
+    Objects.requireNonNull(point, "Point");
+    Objects.requireNonNull(context, "Context");
+    Objects.requireNonNull(f, "Function");
+    Preconditions.checkPreconditionI(
+      count, count >= 0, c -> "Count must be non-negative");
+
+    /*
+     * Best-first search, as with OctTreeD.
+     */
+
+    final double x = point.x();
+    final double y = point.y();
+    final double z = point.z();
+    final DistanceHeap heap = new DistanceHeap();
+    heap.add(VolumeBoundsD.distanceSquared(x, y, z, this.root.bounds, 0), this.root, 0);
+
+    int found = 0;
+    while (found < count && !heap.isEmpty()) {
+      final double key = heap.topKey();
+      final Object top = heap.topObject();
+      heap.removeTop();
+
+      if (top instanceof Item) {
+        final Item<T> item = (Item<T>) top;
+        ++found;
+        if (f.apply(context, item.value, item.volume, Math.sqrt(key))
+          == TreeVisitResult.RESULT_TERMINATE) {
+          return TreeVisitResult.RESULT_TERMINATE;
+        }
+      } else {
+        ((Octant<T>) top).nearestExpand(x, y, z, heap);
+      }
+    }
+    return TreeVisitResult.RESULT_CONTINUE;
+  }
+
+  @Override
+  public Optional<OctTreeRaycastResultD<T>> raycastFirst(
+    final Ray3D ray)
+  {
+    Objects.requireNonNull(ray, "Ray");
+
+    final RaycastHit<T> hit = new RaycastHit<>();
+    if (VolumeBoundsD.entryDistance(ray, this.root.bounds, 0) < hit.distance) {
+      this.root.raycastFirst(ray, VolumeBoundsD.raycastOrder(ray), hit);
+    }
+
+    final Item<T> item = hit.item;
+    if (item != null) {
+      return Optional.of(OctTreeRaycastResultD.of(hit.distance, item.volume, item.value));
+    }
+    return Optional.empty();
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public <C> TreeVisitResult raycastFirst(
+    final Ray3D ray,
+    final int count,
+    final C context,
+    final OctTreeRaycastVisitorDType<T, C> f)
+  {
+    Objects.requireNonNull(ray, "Ray");
+    Objects.requireNonNull(context, "Context");
+    Objects.requireNonNull(f, "Function");
+    Preconditions.checkPreconditionI(
+      count, count >= 0, c -> "Count must be non-negative");
+
+    final DistanceHeap heap = new DistanceHeap();
+    final double root_distance = VolumeBoundsD.entryDistance(ray, this.root.bounds, 0);
+    if (root_distance < Double.POSITIVE_INFINITY) {
+      heap.add(root_distance, this.root, 0);
+    }
+
+    int found = 0;
+    while (found < count && !heap.isEmpty()) {
+      final double key = heap.topKey();
+      final Object top = heap.topObject();
+      heap.removeTop();
+
+      if (top instanceof Item) {
+        final Item<T> item = (Item<T>) top;
+        ++found;
+        if (f.apply(context, item.value, item.volume, key)
+          == TreeVisitResult.RESULT_TERMINATE) {
+          return TreeVisitResult.RESULT_TERMINATE;
+        }
+      } else {
+        ((Octant<T>) top).raycastExpand(ray, heap);
+      }
+    }
+    return TreeVisitResult.RESULT_CONTINUE;
+  }
+
+  @Override
+  public void raycast(
+    final Ray3D ray,
+    final OctTreeRaycastBufferD<T> results)
+  {
+    Objects.requireNonNull(ray, "Ray");
+    Objects.requireNonNull(results, "Results");
+    this.root.raycastBuffer(ray, results);
+  }
+
+  @Override
+  public long countContainedBy(
+    final VolumeD volume)
+  {
+    Objects.requireNonNull(volume, "Volume");
+    return this.root.countContaining(VolumeBoundsD.pack(volume));
+  }
+
+  @Override
+  public long countOverlapping(
+    final VolumeD volume)
+  {
+    Objects.requireNonNull(volume, "Volume");
+    return this.root.countOverlapping(VolumeBoundsD.pack(volume));
+  }
+
+  @Override
+  public boolean anyOverlapping(
+    final VolumeD volume)
+  {
+    Objects.requireNonNull(volume, "Volume");
+    return this.root.anyOverlapping(VolumeBoundsD.pack(volume));
+  }
+
+  /**
+   * An object held by the tree, along with its bounds.
+   */
+
+  private static final class Item<T>
+  {
+    private final T value;
+    private final VolumeD volume;
+    private final double[] bounds;
+
+    private Item(
+      final T in_value,
+      final VolumeD in_area)
+    {
+      this.value = in_value;
+      this.volume = in_area;
+      this.bounds = VolumeBoundsD.pack(in_area);
+    }
+  }
+
+  /**
+   * The nearest object found so far by a first-hit raycast.
+   */
+
+  private static final class RaycastHit<T>
+  {
+    private double distance;
+    private Item<T> item;
+
+    private RaycastHit()
+    {
+      this.distance = Double.POSITIVE_INFINITY;
+    }
+  }
+
+  /**
+   * An immutable octant. An octant is either a leaf, or has exactly eight
+   * children, in the same order as the children of {@link OctTreeD}
+   * octants.
+   */
+
+  private static final class Octant<T> implements OctTreeOctantDType<T>
+  {
+    private final VolumeD volume;
+    private final double[] bounds;
+    private final int node_depth;
+    private final Item<T>[] items;
+    private final Octant<T>[] children;
+    private final int subtree_count;
+
+    private Octant(
+      final VolumeD in_area,
+      final double[] in_bounds,
+      final int in_depth,
+      final Item<T>[] in_items,
+      final Octant<T>[] in_children,
+      final int in_subtree_count)
+    {
+      this.volume = in_area;
+      this.bounds = in_bounds;
+      this.node_depth = in_depth;
+      this.items = in_items;
+      this.children = in_children;
+      this.subtree_count = in_subtree_count;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> Octant<T> empty(
+      final VolumeD volume,
+      final int depth)
+    {
+      return new Octant<>(
+        volume, VolumeBoundsD.pack(volume), depth, (Item<T>[]) NO_ITEMS, null, 0);
+    }
+
+    private boolean isLeaf()
+    {
+      return this.children == null;
+    }
+
+    private boolean isEmptyLeaf()
+    {
+      return this.children == null && this.items.length == 0;
+    }
+
+    private Octant<T> withItems(
+      final Item<T>[] new_items,
+      final Octant<T>[] new_children,
+      final int new_subtree_count)
+    {
+      return new Octant<>(
+        this.volume,
+        this.bounds,
+        this.node_depth,
+        new_items,
+        new_children,
+        new_subtree_count);
+    }
+
+    private Octant<T> withItem(final Item<T> item)
+    {
+      final Item<T>[] new_items =
+        Arrays.copyOf(this.items, this.items.length + 1);
+      new_items[this.items.length] = item;
+      return this.withItems(new_items, this.children, this.subtree_count + 1);
+    }
+
+    private Octant<T> withoutItem(final int index)
+    {
+      final Item<T>[] new_items =
+        Arrays.copyOf(this.items, this.items.length - 1);
+      System.arraycopy(
+        this.items, index + 1, new_items, index, this.items.length - index - 1);
+      return this.withItems(new_items, this.children, this.subtree_count - 1);
+    }
+
+    private Octant<T> withChild(
+      final int index,
+      final Octant<T> child)
+    {
+      final Octant<T> existing = this.children[index];
+      if (existing == child) {
+        return this;
+      }
+
+      final Octant<T>[] new_children = this.children.clone();
+      new_children[index] = child;
+      return this.withItems(
+        this.items,
+        new_children,
+        this.subtree_count - existing.subtree_count + child.subtree_count);
+    }
+
+    private int indexOf(final Item<T> item)
+    {
+      for (int index = 0; index < this.items.length; ++index) {
+        if (this.items[index] == item) {
+          return index;
+        }
+      }
+      return -1;
+    }
+
+    /**
+     * @return The index of the first child that can contain {@code target},
+     * or {@code -1} if no child can contain it
+     */
+
+    private int childIndexContaining(
+      final double[] target)
+    {
+      for (int index = 0; index < CHILDREN; ++index) {
+        if (VolumeBoundsD.contains(this.children[index].bounds, 0, target, 0)) {
+          return index;
+        }
+      }
+      return -1;
+    }
+
+    private boolean hasCapacity(
+      final OctTreeConfigurationD config)
+    {
+      return this.items.length < config.maximumItemsPerLeaf();
+    }
+
+    private boolean canSplit(
+      final OctTreeConfigurationD config)
+    {
+      if (this.node_depth >= config.maximumDepth()) {
+        return false;
+      }
+
+      final double min_width = Math.max(0.0001, config.minimumOctantWidth());
+      final double min_height = Math.max(0.0001, config.minimumOctantHeight());
+      final double min_depth = Math.max(0.0001, config.minimumOctantDepth());
+      return this.volume.sizeX() / 2.0 >= min_width
+        && this.volume.sizeY() / 2.0 >= min_height
+        && this.volume.sizeZ() / 2.0 >= min_depth;
+    }
+
+    /**
+     * Insert an object that this octant can contain, returning the new
+     * version of this octant.
+     */
+
+    private Octant<T> insertStep(
+      final OctTreeConfigurationD config,
+      final Item<T> item)
+    {
+      Octant<T> node = this;
+      if (node.isLeaf()) {
+        if (node.hasCapacity(config) || !node.canSplit(config)) {
+          return node.withItem(item);
+        }
+        node = node.split(config);
+      }
+
+      final int index = node.childIndexContaining(item.bounds);
+      if (index >= 0) {
+        return node.withChild(index, node.children[index].insertStep(config, item));
+      }
+      return node.withItem(item);
+    }
+
+    /**
+     * Split this leaf, and move every object that fits in a child into that
+     * child, in the same order as {@link OctTreeD}.
+     */
+
+    @SuppressWarnings("unchecked")
+    private Octant<T> split(
+      final OctTreeConfigurationD config)
+    {
+      final VolumeXYZSplitD<VolumeD> q = OctantsD.subdivide(this.volume);
+      final int depth = this.node_depth + 1;
+      final Octant<T>[] new_children = (Octant<T>[]) new Octant<?>[]{
+        empty(q.x0y0z0(), depth),
+        empty(q.x1y0z0(), depth),
+        empty(q.x0y1z0(), depth),
+        empty(q.x1y1z0(), depth),
+        empty(q.x0y0z1(), depth),
+        empty(q.x1y0z1(), depth),
+        empty(q.x0y1z1(), depth),
+        empty(q.x1y1z1(), depth),
+      };
+
+      Octant<T> node =
+        this.withItems((Item<T>[]) NO_ITEMS, new_children, 0);
+      for (int index = this.items.length - 1; index >= 0; --index) {
+        final Item<T> item = this.items[index];
+        final int child = node.childIndexContaining(item.bounds);
+        if (child < 0) {
+          node = node.withItem(item);
+        } else {
+          node = node.withChild(
+            child, node.children[child].insertStep(config, item));
+        }
+      }
+      return node;
+    }
+
+    /**
+     * Remove an object from the octant that holds it. An object is held by
+     * the first octant on the path from the root that is either a leaf or
+     * has no child that can contain the object.
+     */
+
+    private Octant<T> remove(
+      final Item<T> item,
+      final boolean trim)
+    {
+      if (!this.isLeaf()) {
+        final int child = this.childIndexContaining(item.bounds);
+        if (child >= 0) {
+          final Octant<T> result =
+            this.withChild(child, this.children[child].remove(item, trim));
+          return trim ? result.unsplitAttempt() : result;
+        }
+      }
+
+      final int index = this.indexOf(item);
+      Invariants.checkInvariantI(
+        index, index >= 0, i -> "Object must be held by octant");
+      final Octant<T> result = this.withoutItem(index);
+      return trim ? result.unsplitAttempt() : result;
+    }
+
+    /**
+     * Attempt to turn each octant on the path to {@code target} back into
+     * a leaf, starting from the bottom of the path.
+     */
+
+    private Octant<T> trimPath(
+      final double[] target)
+    {
+      if (this.isLeaf()) {
+        return this;
+      }
+
+      Octant<T> node = this;
+      final int child = this.childIndexContaining(target);
+      if (child >= 0) {
+        node = this.withChild(child, this.children[child].trimPath(target));
+      }
+      return node.unsplitAttempt();
+    }
+
+    private Octant<T> unsplitAttempt()
+    {
+      if (this.isLeaf()) {
+        return this;
+      }
+      for (int index = 0; index < CHILDREN; ++index) {
+        if (!this.children[index].isEmptyLeaf()) {
+          return this;
+        }
+      }
+      return this.withItems(this.items, null, this.subtree_count);
+    }
+
+    private Octant<T> trim()
+    {
+      if (this.isLeaf()) {
+        return this;
+      }
+
+      Octant<T> node = this;
+      for (int index = 0; index < CHILDREN; ++index) {
+        node = node.withChild(index, this.children[index].trim());
+      }
+      return node.unsplitAttempt();
+    }
+
+    private <C> TreeVisitResult volumeContainingVisit(
+      final double[] target_volume,
+      final C context,
+      final OctTreeItemVisitorDType<T, C> f)
+    {
+      if (this.subtree_count == 0) {
+        return TreeVisitResult.RESULT_CONTINUE;
+      }
+
+      if (VolumeBoundsD.contains(target_volume, 0, this.bounds, 0)) {
+        return this.visitRecursive(context, f);
+      }
+
+      for (final Item<T> item : this.items) {
+        if (VolumeBoundsD.contains(target_volume, 0, item.bounds, 0)) {
+          if (f.apply(context, item.value, item.volume)
+            == TreeVisitResult.RESULT_TERMINATE) {
+            return TreeVisitResult.RESULT_TERMINATE;
+          }
+        }
+      }
+
+      if (!this.isLeaf()) {
+        for (final Octant<T> child : this.children) {
+          if (child.volumeContainingVisit(target_volume, context, f)
+            == TreeVisitResult.RESULT_TERMINATE) {
+            return TreeVisitResult.RESULT_TERMINATE;
+          }
+        }
+      }
+      return TreeVisitResult.RESULT_CONTINUE;
+    }
+
+    private <C> TreeVisitResult visitRecursive(
+      final C context,
+      final OctTreeItemVisitorDType<T, C> f)
+    {
+      for (final Item<T> item : this.items) {
+        if (f.apply(context, item.value, item.volume)
+          == TreeVisitResult.RESULT_TERMINATE) {
+          return TreeVisitResult.RESULT_TERMINATE;
+        }
+      }
+
+      if (!this.isLeaf()) {
+        for (final Octant<T> child : this.children) {
+          if (child.visitRecursive(context, f) == TreeVisitResult.RESULT_TERMINATE) {
+            return TreeVisitResult.RESULT_TERMINATE;
+          }
+        }
+      }
+      return TreeVisitResult.RESULT_CONTINUE;
+    }
+
+    private <C> TreeVisitResult volumeOverlappingVisit(
+      final double[] target_volume,
+      final C context,
+      final OctTreeItemVisitorDType<T, C> f)
+    {
+      if (this.subtree_count == 0) {
+        return TreeVisitResult.RESULT_CONTINUE;
+      }
+
+      if (!VolumeBoundsD.overlaps(target_volume, 0, this.bounds, 0)) {
+        return TreeVisitResult.RESULT_CONTINUE;
+      }
+
+      for (final Item<T> item : this.items) {
+        if (VolumeBoundsD.overlaps(target_volume, 0, item.bounds, 0)) {
+          if (f.apply(context, item.value, item.volume)
+            == TreeVisitResult.RESULT_TERMINATE) {
+            return TreeVisitResult.RESULT_TERMINATE;
+          }
+        }
+      }
+
+      if (!this.isLeaf()) {
+        for (final Octant<T> child : this.children) {
+          if (child.volumeOverlappingVisit(target_volume, context, f)
+            == TreeVisitResult.RESULT_TERMINATE) {
+            return TreeVisitResult.RESULT_TERMINATE;
+          }
+        }
+      }
+      return TreeVisitResult.RESULT_CONTINUE;
+    }
+
+    private <C> TreeVisitResult raycastVisit(
+      final Ray3D ray,
+      final C context,
+      final OctTreeRaycastVisitorDType<T, C> f)
+    {
+      if (this.subtree_count == 0) {
+        return TreeVisitResult.RESULT_CONTINUE;
+      }
+
+      if (!VolumeBoundsD.intersects(ray, this.bounds, 0)) {
+        return TreeVisitResult.RESULT_CONTINUE;
+      }
+
+      for (final Item<T> item : this.items) {
+        final double[] b = item.bounds;
+        if (VolumeBoundsD.intersects(ray, b, 0)) {
+          final double distance =
+            Vectors3D.distance(
+            Vector3D.of(b[0], b[2], b[4]),
+            ray.origin());
+          if (f.apply(context, item.value, item.volume, distance)
+            == TreeVisitResult.RESULT_TERMINATE) {
+            return TreeVisitResult.RESULT_TERMINATE;
+          }
+        }
+      }
+
+      if (!this.isLeaf()) {
+        for (final Octant<T> child : this.children) {
+          if (child.raycastVisit(ray, context, f) == TreeVisitResult.RESULT_TERMINATE) {
+            return TreeVisitResult.RESULT_TERMINATE;
+          }
+        }
+      }
+      return TreeVisitResult.RESULT_CONTINUE;
+    }
+
+    private void nearestExpand(
+      final double x,
+      final double y,
+      final double z,
+      final DistanceHeap heap)
+    {
+      for (final Item<T> item : this.items) {
+        heap.add(VolumeBoundsD.distanceSquared(x, y, z, item.bounds, 0), item, 0);
+      }
+
+      if (!this.isLeaf()) {
+        for (final Octant<T> child : this.children) {
+          if (child.subtree_count > 0) {
+            heap.add(VolumeBoundsD.distanceSquared(x, y, z, child.bounds, 0), child, 0);
+          }
+        }
+      }
+    }
+
+    private void raycastFirst(
+      final Ray3D ray,
+      final int order,
+      final RaycastHit<T> hit)
+    {
+      for (final Item<T> item : this.items) {
+        final double distance = VolumeBoundsD.entryDistance(ray, item.bounds, 0);
+        if (distance < hit.distance) {
+          hit.distance = distance;
+          hit.item = item;
+        }
+      }
+
+      if (!this.isLeaf()) {
+        for (int index = 0; index < CHILDREN; ++index) {
+          final Octant<T> child = this.children[index ^ order];
+          if (child.subtree_count > 0
+            && VolumeBoundsD.entryDistance(ray, child.bounds, 0) < hit.distance) {
+            child.raycastFirst(ray, order, hit);
+          }
+        }
+      }
+    }
+
+    private void raycastExpand(
+      final Ray3D ray,
+      final DistanceHeap heap)
+    {
+      for (final Item<T> item : this.items) {
+        final double distance = VolumeBoundsD.entryDistance(ray, item.bounds, 0);
+        if (distance < Double.POSITIVE_INFINITY) {
+          heap.add(distance, item, 0);
+        }
+      }
+
+      if (!this.isLeaf()) {
+        for (final Octant<T> child : this.children) {
+          if (child.subtree_count > 0) {
+            final double distance = VolumeBoundsD.entryDistance(ray, child.bounds, 0);
+            if (distance < Double.POSITIVE_INFINITY) {
+              heap.add(distance, child, 0);
+            }
+          }
+        }
+      }
+    }
+
+    private void raycastBuffer(
+      final Ray3D ray,
+      final OctTreeRaycastBufferD<T> results)
+    {
+      if (this.subtree_count == 0) {
+        return;
+      }
+
+      if (!VolumeBoundsD.intersects(ray, this.bounds, 0)) {
+        return;
+      }
+
+      for (final Item<T> item : this.items) {
+        final double[] b = item.bounds;
+        final double distance = VolumeBoundsD.entryDistance(ray, b, 0);
+        if (distance < Double.POSITIVE_INFINITY) {
+          results.add(item.value, distance, b[0], b[1], b[2], b[3], b[4], b[5]);
+        }
+      }
+
+      if (!this.isLeaf()) {
+        for (final Octant<T> child : this.children) {
+          child.raycastBuffer(ray, results);
+        }
+      }
+    }
+
+    private long countContaining(
+      final double[] target_volume)
+    {
+      if (this.subtree_count == 0) {
+        return 0L;
+      }
+      if (VolumeBoundsD.contains(target_volume, 0, this.bounds, 0)) {
+        return (long) this.subtree_count;
+      }
+      if (!VolumeBoundsD.touches(target_volume, 0, this.bounds, 0)) {
+        return 0L;
+      }
+
+      long count = 0L;
+      for (final Item<T> item : this.items) {
+        if (VolumeBoundsD.contains(target_volume, 0, item.bounds, 0)) {
+          ++count;
+        }
+      }
+
+      if (!this.isLeaf()) {
+        for (final Octant<T> child : this.children) {
+          count += child.countContaining(target_volume);
+        }
+      }
+      return count;
+    }
+
+    private long countOverlapping(
+      final double[] target_volume)
+    {
+      if (this.subtree_count == 0) {
+        return 0L;
+      }
+      if (!VolumeBoundsD.overlaps(target_volume, 0, this.bounds, 0)) {
+        return 0L;
+      }
+      if (VolumeBoundsD.overlapsAllWithin(target_volume, 0, this.bounds, 0)) {
+        return (long) this.subtree_count;
+      }
+
+      long count = 0L;
+      for (final Item<T> item : this.items) {
+        if (VolumeBoundsD.overlaps(target_volume, 0, item.bounds, 0)) {
+          ++count;
+        }
+      }
+
+      if (!this.isLeaf()) {
+        for (final Octant<T> child : this.children) {
+          count += child.countOverlapping(target_volume);
+        }
+      }
+      return count;
+    }
+
+    private boolean anyOverlapping(
+      final double[] target_volume)
+    {
+      if (this.subtree_count == 0) {
+        return false;
+      }
+      if (!VolumeBoundsD.overlaps(target_volume, 0, this.bounds, 0)) {
+        return false;
+      }
+      if (VolumeBoundsD.overlapsAllWithin(target_volume, 0, this.bounds, 0)) {
+        return true;
+      }
+
+      for (final Item<T> item : this.items) {
+        if (VolumeBoundsD.overlaps(target_volume, 0, item.bounds, 0)) {
+          return true;
+        }
+      }
+
+      if (!this.isLeaf()) {
+        for (final Octant<T> child : this.children) {
+          if (child.anyOverlapping(target_volume)) {
+            return true;
+          }
+        }
+      }
+      return false;
+    }
+
+    private <C> TreeVisitResult iterateOctants(
+      final C context,
+      final OctTreeOctantIterationDType<T, C> f,
+      final long depth)
+    {
+      switch (f.apply(context, this, depth)) {
+        case RESULT_CONTINUE: {
+          if (!this.isLeaf()) {
+            for (final Octant<T> child : this.children) {
+              if (child.iterateOctants(context, f, Math.addExact(depth, 1L))
+                == TreeVisitResult.RESULT_TERMINATE) {
+                return TreeVisitResult.RESULT_TERMINATE;
+              }
+            }
+          }
+          return TreeVisitResult.RESULT_CONTINUE;
+        }
+        case RESULT_TERMINATE:
+          return TreeVisitResult.RESULT_TERMINATE;
+      }
+
+      throw new UnreachableCodeException();
+    }
+
+    @Override
+    public Map<T, VolumeD> objects()
+    {
+      final Reference2ReferenceOpenHashMap<T, VolumeD> m =
+        new Reference2ReferenceOpenHashMap<>(this.items.length);
+      for (final Item<T> item : this.items) {
+        m.put(item.value, item.volume);
+      }
+      return Reference2ReferenceMaps.unmodifiable(m);
+    }
+
+    @Override
+    public VolumeD volume()
+    {
+      return this.volume;
+    }
+  }
+}
@@ -0,0 +1,350 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jspatial.implementation;
+
+import com.io7m.jregions.core.unparameterized.volumes.VolumeD;
+import com.io7m.jspatial.api.Ray3D;
+import com.io7m.jspatial.api.TreeVisitResult;
+import com.io7m.jspatial.api.octtrees.OctTreeConfigurationD;
+import com.io7m.jspatial.api.octtrees.OctTreeDType;
+import com.io7m.jspatial.api.octtrees.OctTreeItemVisitorDType;
+import com.io7m.jspatial.api.octtrees.OctTreeNearestVisitorDType;
+import com.io7m.jspatial.api.octtrees.OctTreePersistentDType;
+import com.io7m.jspatial.api.octtrees.OctTreeOctantIterationDType;
+import com.io7m.jspatial.api.octtrees.OctTreeRaycastBufferD;
+import com.io7m.jspatial.api.octtrees.OctTreeRaycastResultD;
+import com.io7m.jspatial.api.octtrees.OctTreeRaycastVisitorDType;
+import com.io7m.jspatial.api.octtrees.OctTreeReadableDType;
+import com.io7m.jtensors.core.unparameterized.vectors.Vector3D;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BiFunction;
+
+/**
+ * <p>An implementation of the {@link OctTreeDType} interface backed by a
+ * {@link OctTreePersistentD} tree.</p>
+ *
+ * <p>The tree holds the current version of a persistent tree. Each
+ * modification produces a new version and publishes it, and modifications
+ * are serialized by the tree's monitor. Queries never lock: each query reads
+ * the version that was current when it started, and is unaffected by
+ * modifications made while it runs. {@link #snapshot()} returns the current
+ * version without copying it, so readers on other threads may hold a
+ * consistent view of the tree for as long as they require.</p>
+ *
+ * @param <T> The precise type of tree objects
+ */
+
+public final class OctTreeVersionedD<T> implements OctTreeDType<T>
+{
+  private volatile OctTreePersistentDType<T> current;
+
+  private OctTreeVersionedD(final OctTreePersistentDType<T> in_current)
+  {
+    this.current = Objects.requireNonNull(in_current, "Current");
+  }
+
+  /**
+   * Create a new empty tree with the given bounds.
+   *
+   * @param config The tree configuration
+   * @param <T>    The type of objects contained within the tree
+   *
+   * @return A new tree
+   */
+
+  public static <T> OctTreeDType<T> create(
+    final OctTreeConfigurationD config)
+  {
+    return new OctTreeVersionedD<>(OctTreePersistentD.create(config));
+  }
+
+  @Override
+  public boolean equals(final Object o)
+  {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || this.getClass() != o.getClass()) {
+      return false;
+    }
+
+    final OctTreeVersionedD<?> that = (OctTreeVersionedD<?>) o;
+    return this.current.equals(that.current);
+  }
+
+  @Override
+  public int hashCode()
+  {
+    return this.current.hashCode();
+  }
+
+  @Override
+  public OctTreeReadableDType<T> snapshot()
+  {
+    return this.current;
+  }
+
+  @Override
+  public long size()
+  {
+    return this.current.size();
+  }
+
+  @Override
+  public VolumeD bounds()
+  {
+    return this.current.bounds();
+  }
+
+  @Override
+  public boolean contains(final T item)
+  {
+    return this.current.contains(item);
+  }
+
+  @Override
+  public synchronized boolean insert(
+    final T item,
+    final VolumeD bounds)
+  {
+    final OctTreePersistentDType<T> next = this.current.insert(item, bounds);
+    this.current = next;
+    return next.contains(item);
+  }
+
+  @Override
+  public synchronized long insertAll(
+    final Map<T, VolumeD> items)
+  {
+    Objects.requireNonNull(items, "Items");
+
+    /*
+     * The new version is only published once every object has been
+     * inserted, so queries see either none or all of the objects.
+     */
+
+    OctTreePersistentDType<T> next = this.current;
+    long count = 0L;
+    for (final Map.Entry<T, VolumeD> entry : items.entrySet()) {
+      final T item = entry.getKey();
+      next = next.insert(item, entry.getValue());
+      if (next.contains(item)) {
+        ++count;
+      }
+    }
+    this.current = next;
+    return count;
+  }
+
+  @Override
+  public synchronized boolean remove(final T item)
+  {
+    final OctTreePersistentDType<T> previous = this.current;
+    final OctTreePersistentDType<T> next = previous.remove(item);
+    this.current = next;
+    return next != previous;
+  }
+
+  @Override
+  public synchronized void clear()
+  {
+    this.current = this.current.clear();
+  }
+
+  @Override
+  public synchronized void trim()
+  {
+    this.current = this.current.trim();
+  }
+
+  @Override
+  public <U> OctTreeDType<U> map(final BiFunction<T, VolumeD, U> f)
+  {
+    return new OctTreeVersionedD<>(this.current.map(f));
+  }
+
+  @Override
+  public <C> void iterateOctants(
+    final C context,
+    final OctTreeOctantIterationDType<T, C> f)
+  {
+    this.current.iterateOctants(context, f);
+  }
+
+  @Override
+  public VolumeD volumeFor(final T item)
+  {
+    return this.current.volumeFor(item);
+  }
+
+  @Override
+  public void containedBy(
+    final VolumeD volume,
+    final Set<T> items)
+  {
+    this.current.containedBy(volume, items);
+  }
+
+  @Override
+  public void overlappedBy(
+    final VolumeD volume,
+    final Set<T> items)
+  {
+    this.current.overlappedBy(volume, items);
+  }
+
+  @Override
+  public void raycast(
+    final Ray3D ray,
+    final SortedSet<OctTreeRaycastResultD<T>> items)
+  {
+    this.current.raycast(ray, items);
+  }
+
+  @Override
+  public void containedByParallel(
+    final VolumeD volume,
+    final Set<T> items,
+    final ForkJoinPool pool)
+  {
+    this.current.containedByParallel(volume, items, pool);
+  }
+
+  @Override
+  public void overlappedByParallel(
+    final VolumeD volume,
+    final Set<T> items,
+    final ForkJoinPool pool)
+  {
+    this.current.overlappedByParallel(volume, items, pool);
+  }
+
+  @Override
+  public void raycastParallel(
+    final Ray3D ray,
+    final SortedSet<OctTreeRaycastResultD<T>> items,
+    final ForkJoinPool pool)
+  {
+    this.current.raycastParallel(ray, items, pool);
+  }
+
+  @Override
+  public void overlappedByBatch(
+    final List<VolumeD> volumes,
+    final List<? extends Set<T>> items)
+  {
+    this.current.overlappedByBatch(volumes, items);
+  }
+
+  @Override
+  public void raycastBatch(
+    final List<Ray3D> rays,
+    final List<OctTreeRaycastBufferD<T>> results)
+  {
+    this.current.raycastBatch(rays, results);
+  }
+
+  @Override
+  public <C> TreeVisitResult containedBy(
+    final VolumeD volume,
+    final C context,
+    final OctTreeItemVisitorDType<T, C> f)
+  {
+    return this.current.containedBy(volume, context, f);
+  }
+
+  @Override
+  public <C> TreeVisitResult overlappedBy(
+    final VolumeD volume,
+    final C context,
+    final OctTreeItemVisitorDType<T, C> f)
+  {
+    return this.current.overlappedBy(volume, context, f);
+  }
+
+  @Override
+  public <C> TreeVisitResult raycast(
+    final Ray3D ray,
+    final C context,
+    final OctTreeRaycastVisitorDType<T, C> f)
+  {
+    return this.current.raycast(ray, context, f);
+  }
+
+  @Override
+  public <C> TreeVisitResult nearest(
+    final Vector3D point,
+    final int count,
+    final C context,
+    final OctTreeNearestVisitorDType<T, C> f)
+  {
+    return this.current.nearest(point, count, context, f);
+  }
+
+  @Override
+  public Optional<OctTreeRaycastResultD<T>> raycastFirst(
+    final Ray3D ray)
+  {
+    return this.current.raycastFirst(ray);
+  }
+
+  @Override
+  public <C> TreeVisitResult raycastFirst(
+    final Ray3D ray,
+    final int count,
+    final C context,
+    final OctTreeRaycastVisitorDType<T, C> f)
+  {
+    return this.current.raycastFirst(ray, count, context, f);
+  }
+
+  @Override
+  public void raycast(
+    final Ray3D ray,
+    final OctTreeRaycastBufferD<T> results)
+  {
+    this.current.raycast(ray, results);
+  }
+
+  @Override
+  public long countContainedBy(
+    final VolumeD volume)
+  {
+    return this.current.countContainedBy(volume);
+  }
+
+  @Override
+  public long countOverlapping(
+    final VolumeD volume)
+  {
+    return this.current.countOverlapping(volume);
+  }
+
+  @Override
+  public boolean anyOverlapping(
+    final VolumeD volume)
+  {
+    return this.current.anyOverlapping(volume);
+  }
+}
@@ -19,6 +19,7 @@ package com.io7m.jspatial.implementation;
 import com.io7m.jregions.core.unparameterized.volumes.VolumeD;
 import com.io7m.jregions.core.unparameterized.volumes.VolumeXYZSplitD;
 import com.io7m.jregions.core.unparameterized.volumes.VolumesD;
+import com.io7m.jspatial.api.octtrees.OctTreeConfigurationD;
 import com.io7m.junreachable.UnreachableCodeException;
 
 import java.util.Objects;
@@ -53,4 +54,47 @@ public final class OctantsD
       area.sizeY() / 2.0,
       area.sizeZ() / 2.0);
   }
+
+  /**
+   * Determine whether an octant of an {@link OctTreeD} can be split.
+   *
+   * @param config The configuration of the tree
+   * @param volume The volume of the octant
+   * @param depth  The depth of the octant
+   *
+   * @return {@code true} iff the octant is above the maximum depth and
+   * each of its children would be at least the minimum octant size
+   */
+
+  public static boolean canSplit(
+    final OctTreeConfigurationD config,
+    final VolumeD volume,
+    final int depth)
+  {
+    Objects.requireNonNull(config, "Configuration");
+    Objects.requireNonNull(volume, "Volume");
+
+    if (depth >= config.maximumDepth()) {
+      return false;
+    }
+
+    final double width = volume.sizeX();
+    final double height = volume.sizeY();
+    final double depth_size = volume.sizeZ();
+
+    final double min_width =
+      Math.max(0.0001, config.minimumOctantWidth());
+    final double min_height =
+      Math.max(0.0001, config.minimumOctantHeight());
+    final double min_depth =
+      Math.max(0.0001, config.minimumOctantDepth());
+
+    final double half_width = width / 2.0;
+    final double half_height = height / 2.0;
+    final double half_depth = depth_size / 2.0;
+
+    return half_width >= min_width
+      && half_height >= min_height
+      && half_depth >= min_depth;
+  }
 }
@@ -0,0 +1,499 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jspatial.implementation;
+
+import com.io7m.jregions.core.unparameterized.areas.AreaD;
+import com.io7m.jregions.core.unparameterized.volumes.VolumeD;
+import com.io7m.jspatial.api.Ray2D;
+import com.io7m.jspatial.api.Ray3D;
+import com.io7m.jspatial.api.TreeVisitResult;
+import com.io7m.jspatial.api.octtrees.OctTreeRaycastResultD;
+import com.io7m.jspatial.api.quadtrees.QuadTreeRaycastResultD;
+import com.io7m.jtensors.core.unparameterized.vectors.Vector2D;
+import com.io7m.jtensors.core.unparameterized.vectors.Vector3D;
+import com.io7m.jtensors.core.unparameterized.vectors.Vectors2D;
+import com.io7m.jtensors.core.unparameterized.vectors.Vectors3D;
+import com.io7m.junreachable.UnreachableCodeException;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.function.Predicate;
+
+/**
+ * <p>Functions for executing queries over trees in parallel.</p>
+ *
+ * <p>A query starts with a task for the root node. A task for a node whose
+ * subtree holds more than {@link #SEQUENTIAL_THRESHOLD} objects tests the
+ * objects held directly by the node, and then forks a task for each child.
+ * A task for any smaller subtree searches the subtree sequentially using the
+ * tree's own query functions. Each task collects its results in its own
+ * buffer, so tasks never share mutable state, and the buffers are added to
+ * the caller's collection on the calling thread once every task has
+ * completed.</p>
+ */
+
+final class ParallelQuery
+{
+  /**
+   * The number of objects at or below which a subtree is searched
+   * sequentially. Smaller subtrees do not contain enough work to pay for
+   * the cost of forking a task.
+   */
+
+  static final int SEQUENTIAL_THRESHOLD = 4096;
+
+  private ParallelQuery()
+  {
+    throw new UnreachableCodeException();
+  }
+
+  /**
+   * The type of tree nodes that can be queried.
+   *
+   * @param <N> The precise type of nodes
+   */
+
+  interface NodeType<N extends NodeType<N>>
+  {
+    /**
+     * @return The number of objects held by this node and its descendants
+     */
+
+    int subtreeSize();
+
+    /**
+     * @return {@code true} iff this node has no children
+     */
+
+    boolean isLeaf();
+
+    /**
+     * @param index The child index
+     *
+     * @return The child of this node at {@code index}
+     */
+
+    N child(int index);
+
+    /**
+     * @return The number of objects held directly by this node
+     */
+
+    int itemCount();
+
+    /**
+     * @return The packed bounds of the objects held directly by this node,
+     * with the bounds of object {@code i} at offset {@code i * STRIDE}
+     */
+
+    double[] itemBounds();
+  }
+
+  /**
+   * A receiver of the objects intersected by a ray.
+   */
+
+  interface RayHitType
+  {
+    /**
+     * Receive an object.
+     *
+     * @param index    The index of the object within its node
+     * @param distance The distance to the object
+     */
+
+    void hit(
+      int index,
+      double distance);
+  }
+
+  /**
+   * Execute a query.
+   *
+   * @param pool  The pool that will execute tasks
+   * @param query The query
+   * @param out   The collection that will receive the results
+   * @param <N>   The type of nodes
+   * @param <R>   The type of results
+   */
+
+  static <N extends NodeType<N>, R> void run(
+    final ForkJoinPool pool,
+    final Query<N, R> query,
+    final Collection<? super R> out)
+  {
+    for (final List<R> buffer : pool.invoke(new Task<>(query, query.root))) {
+      out.addAll(buffer);
+    }
+  }
+
+  /**
+   * Pass the index of each object held directly by {@code node} that
+   * overlaps {@code target}, in the sense of {@link AreaBoundsD#overlaps},
+   * to {@code hit}.
+   *
+   * @param target The packed query area
+   * @param node   The node
+   * @param hit    The receiver of object indices
+   */
+
+  static void areaOverlapping(
+    final double[] target,
+    final NodeType<?> node,
+    final IntConsumer hit)
+  {
+    final double[] b = node.itemBounds();
+    final int count = node.itemCount();
+    for (int base = 0; base < count; base += LeafKernelDType.MAXIMUM_COUNT) {
+      long hits = AreaBoundsD.overlapping(target, b, base, count);
+      for (; hits != 0L; hits &= hits - 1L) {
+        hit.accept(base + Long.numberOfTrailingZeros(hits));
+      }
+    }
+  }
+
+  /**
+   * Pass the index of each object held directly by {@code node} that is
+   * contained within {@code target} to {@code hit}.
+   *
+   * @param target The packed query area
+   * @param node   The node
+   * @param hit    The receiver of object indices
+   */
+
+  static void areaContaining(
+    final double[] target,
+    final NodeType<?> node,
+    final IntConsumer hit)
+  {
+    final double[] b = node.itemBounds();
+    final int count = node.itemCount();
+    for (int index = 0; index < count; ++index) {
+      if (AreaBoundsD.contains(target, 0, b, index * AreaBoundsD.STRIDE)) {
+        hit.accept(index);
+      }
+    }
+  }
+
+  /**
+   * Pass each object held directly by {@code node} that is intersected by
+   * {@code ray} to {@code hit}. Distances are measured to the minimum corner
+   * of each object, as in the sequential raycast functions.
+   *
+   * @param ray  The ray
+   * @param node The node
+   * @param hit  The receiver of objects
+   */
+
+  static void areaRaycast(
+    final Ray2D ray,
+    final NodeType<?> node,
+    final RayHitType hit)
+  {
+    final double[] b = node.itemBounds();
+    final int count = node.itemCount();
+    for (int base = 0; base < count; base += LeafKernelDType.MAXIMUM_COUNT) {
+      long hits = AreaBoundsD.intersecting(ray, b, base, count);
+      for (; hits != 0L; hits &= hits - 1L) {
+        final int index = base + Long.numberOfTrailingZeros(hits);
+        final int offset = index * AreaBoundsD.STRIDE;
+        hit.hit(index, Vectors2D.distance(
+          Vector2D.of(b[offset], b[offset + 2]),
+          ray.origin()));
+      }
+    }
+  }
+
+  /**
+   * Pass the index of each object held directly by {@code node} that
+   * overlaps {@code target}, in the sense of {@link VolumeBoundsD#overlaps},
+   * to {@code hit}.
+   *
+   * @param target The packed query volume
+   * @param node   The node
+   * @param hit    The receiver of object indices
+   */
+
+  static void volumeOverlapping(
+    final double[] target,
+    final NodeType<?> node,
+    final IntConsumer hit)
+  {
+    final double[] b = node.itemBounds();
+    final int count = node.itemCount();
+    for (int base = 0; base < count; base += LeafKernelDType.MAXIMUM_COUNT) {
+      long hits = VolumeBoundsD.overlapping(target, b, base, count);
+      for (; hits != 0L; hits &= hits - 1L) {
+        hit.accept(base + Long.numberOfTrailingZeros(hits));
+      }
+    }
+  }
+
+  /**
+   * Pass the index of each object held directly by {@code node} that is
+   * contained within {@code target} to {@code hit}.
+   *
+   * @param target The packed query volume
+   * @param node   The node
+   * @param hit    The receiver of object indices
+   */
+
+  static void volumeContaining(
+    final double[] target,
+    final NodeType<?> node,
+    final IntConsumer hit)
+  {
+    final double[] b = node.itemBounds();
+    final int count = node.itemCount();
+    for (int index = 0; index < count; ++index) {
+      if (VolumeBoundsD.contains(target, 0, b, index * VolumeBoundsD.STRIDE)) {
+        hit.accept(index);
+      }
+    }
+  }
+
+  /**
+   * Pass each object held directly by {@code node} that is intersected by
+   * {@code ray} to {@code hit}. Distances are measured to the minimum corner
+   * of each object, as in the sequential raycast functions.
+   *
+   * @param ray  The ray
+   * @param node The node
+   * @param hit  The receiver of objects
+   */
+
+  static void volumeRaycast(
+    final Ray3D ray,
+    final NodeType<?> node,
+    final RayHitType hit)
+  {
+    final double[] b = node.itemBounds();
+    final int count = node.itemCount();
+    for (int base = 0; base < count; base += LeafKernelDType.MAXIMUM_COUNT) {
+      long hits = VolumeBoundsD.intersecting(ray, b, base, count);
+      for (; hits != 0L; hits &= hits - 1L) {
+        final int index = base + Long.numberOfTrailingZeros(hits);
+        final int offset = index * VolumeBoundsD.STRIDE;
+        hit.hit(index, Vectors3D.distance(
+          Vector3D.of(b[offset], b[offset + 2], b[offset + 4]),
+          ray.origin()));
+      }
+    }
+  }
+
+  /**
+   * A visitor that passes each object to {@code out}.
+   *
+   * @param out    The consumer of objects
+   * @param item   The object
+   * @param bounds The bounds of the object
+   * @param <T>    The type of objects
+   * @param <B>    The type of bounds
+   *
+   * @return {@link TreeVisitResult#RESULT_CONTINUE}
+   */
+
+  static <T, B> TreeVisitResult acceptItem(
+    final Consumer<? super T> out,
+    final T item,
+    final B bounds)
+  {
+    out.accept(item);
+    return TreeVisitResult.RESULT_CONTINUE;
+  }
+
+  /**
+   * A visitor that passes a raycast result for each object to {@code out}.
+   *
+   * @param out      The consumer of results
+   * @param item     The object
+   * @param area     The area of the object
+   * @param distance The distance to the object
+   * @param <T>      The type of objects
+   *
+   * @return {@link TreeVisitResult#RESULT_CONTINUE}
+   */
+
+  static <T> TreeVisitResult acceptAreaRaycast(
+    final Consumer<? super QuadTreeRaycastResultD<T>> out,
+    final T item,
+    final AreaD area,
+    final double distance)
+  {
+    out.accept(QuadTreeRaycastResultD.of(distance, area, item));
+    return TreeVisitResult.RESULT_CONTINUE;
+  }
+
+  /**
+   * A visitor that passes a raycast result for each object to {@code out}.
+   *
+   * @param out      The consumer of results
+   * @param item     The object
+   * @param volume   The volume of the object
+   * @param distance The distance to the object
+   * @param <T>      The type of objects
+   *
+   * @return {@link TreeVisitResult#RESULT_CONTINUE}
+   */
+
+  static <T> TreeVisitResult acceptVolumeRaycast(
+    final Consumer<? super OctTreeRaycastResultD<T>> out,
+    final T item,
+    final VolumeD volume,
+    final double distance)
+  {
+    out.accept(OctTreeRaycastResultD.of(distance, volume, item));
+    return TreeVisitResult.RESULT_CONTINUE;
+  }
+
+  /**
+   * A query over a tree.
+   *
+   * @param <N> The type of nodes
+   * @param <R> The type of results
+   */
+
+  static final class Query<N extends NodeType<N>, R>
+  {
+    private final int children;
+    private final N root;
+    private final Predicate<N> enter;
+    private final BiConsumer<N, Consumer<? super R>> local;
+    private final BiConsumer<N, Consumer<? super R>> subtree;
+
+    /**
+     * Construct a query.
+     *
+     * @param in_children The number of children of each non-leaf node
+     * @param in_root     The root node
+     * @param in_enter    A function that returns {@code false} for nodes that
+     *                    cannot hold results
+     * @param in_local    A function that passes the results held directly by
+     *                    a node to a consumer
+     * @param in_subtree  A function that passes all of the results held by a
+     *                    node and its descendants to a consumer
+     */
+
+    Query(
+      final int in_children,
+      final N in_root,
+      final Predicate<N> in_enter,
+      final BiConsumer<N, Consumer<? super R>> in_local,
+      final BiConsumer<N, Consumer<? super R>> in_subtree)
+    {
+      this.children = in_children;
+      this.root = in_root;
+      this.enter = in_enter;
+      this.local = in_local;
+      this.subtree = in_subtree;
+    }
+
+    /**
+     * @return The root node
+     */
+
+    N root()
+    {
+      return this.root;
+    }
+
+    /**
+     * Pass the results held by {@code node} and its descendants to
+     * {@code out}, or, if {@code node} holds enough objects to be worth
+     * dividing, pass the results held directly by {@code node} to
+     * {@code out} and add the children that may hold results to
+     * {@code children_out}.
+     *
+     * @param node         The node
+     * @param out          The results
+     * @param children_out The children that remain to be searched
+     */
+
+    void step(
+      final N node,
+      final Consumer<? super R> out,
+      final Collection<N> children_out)
+    {
+      if (node.isLeaf() || node.subtreeSize() <= SEQUENTIAL_THRESHOLD) {
+        this.subtree.accept(node, out);
+        return;
+      }
+
+      if (this.enter.test(node)) {
+        this.local.accept(node, out);
+        for (int index = 0; index < this.children; ++index) {
+          final N child = node.child(index);
+          if (child.subtreeSize() > 0) {
+            children_out.add(child);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * A task that searches the subtree rooted at a node. The result is the
+   * list of buffers filled by the task and its subtasks; the buffers are not
+   * concatenated until the caller receives them, so that results are only
+   * copied once.
+   */
+
+  private static final class Task<N extends NodeType<N>, R>
+    extends RecursiveTask<List<List<R>>>
+  {
+    private static final long serialVersionUID = 1L;
+
+    private final transient Query<N, R> query;
+    private final transient N node;
+
+    private Task(
+      final Query<N, R> in_query,
+      final N in_node)
+    {
+      this.query = in_query;
+      this.node = in_node;
+    }
+
+    @Override
+    protected List<List<R>> compute()
+    {
+      final List<R> buffer = new ArrayList<>();
+      final List<N> children = new ArrayList<>(this.query.children);
+      this.query.step(this.node, buffer::add, children);
+
+      final List<List<R>> buffers = new ArrayList<>();
+      buffers.add(buffer);
+
+      final List<Task<N, R>> tasks = new ArrayList<>(children.size());
+      for (final N child : children) {
+        tasks.add(new Task<>(this.query, child));
+      }
+      ForkJoinTask.invokeAll(tasks);
+      for (final Task<N, R> task : tasks) {
+        buffers.addAll(task.join());
+      }
+      return buffers;
+    }
+  }
+}
@@ -0,0 +1,341 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jspatial.implementation;
+
+import java.util.Objects;
+import java.util.function.BiConsumer;
+
+/**
+ * <p>An immutable map that compares keys by identity, used by persistent
+ * trees to find the bounds of the objects that they hold.</p>
+ *
+ * <p>The map is a hash array mapped trie over the identity hash codes of
+ * the keys. Each node holds up to 32 slots selected by five bits of the
+ * hash code, and a slot holds either a key and value or a child node. An
+ * update copies only the nodes on the path to the updated key, and so new
+ * versions of the map share almost all of their nodes with the original.
+ * Keys whose hash codes are equal are held in a single node at the bottom
+ * of the trie, and are searched linearly.</p>
+ *
+ * @param <K> The type of keys
+ * @param <V> The type of values
+ */
+
+final class PersistentIdentityMap<K, V>
+{
+  private static final int BITS = 5;
+  private static final int MASK = (1 << BITS) - 1;
+  private static final int MAXIMUM_SHIFT = 30;
+  private static final Node EMPTY_NODE = new Node(0, new Object[0]);
+  private static final PersistentIdentityMap<?, ?> EMPTY =
+    new PersistentIdentityMap<>(EMPTY_NODE, 0);
+
+  private final Node root;
+  private final int size;
+
+  private PersistentIdentityMap(
+    final Node in_root,
+    final int in_size)
+  {
+    this.root = in_root;
+    this.size = in_size;
+  }
+
+  /**
+   * @param <K> The type of keys
+   * @param <V> The type of values
+   *
+   * @return The empty map
+   */
+
+  @SuppressWarnings("unchecked")
+  static <K, V> PersistentIdentityMap<K, V> empty()
+  {
+    return (PersistentIdentityMap<K, V>) EMPTY;
+  }
+
+  /**
+   * @return The number of keys in the map
+   */
+
+  int size()
+  {
+    return this.size;
+  }
+
+  /**
+   * @param key The key
+   *
+   * @return The value associated with {@code key}, or {@code null} if there
+   * is no such value
+   */
+
+  @SuppressWarnings("unchecked")
+  V get(final Object key)
+  {
+    return (V) this.root.find(System.identityHashCode(key), 0, key);
+  }
+
+  /**
+   * @param key   The key
+   * @param value The value
+   *
+   * @return A version of this map in which {@code key} is associated with
+   * {@code value}
+   */
+
+  PersistentIdentityMap<K, V> put(
+    final K key,
+    final V value)
+  {
+    Objects.requireNonNull(key, "Key");
+    Objects.requireNonNull(value, "Value");
+
+    final int hash = System.identityHashCode(key);
+    final int new_size =
+      this.root.find(hash, 0, key) == null ? this.size + 1 : this.size;
+    return new PersistentIdentityMap<>(
+      this.root.put(hash, 0, key, value), new_size);
+  }
+
+  /**
+   * @param key The key
+   *
+   * @return A version of this map that does not contain {@code key}
+   */
+
+  PersistentIdentityMap<K, V> remove(final Object key)
+  {
+    final int hash = System.identityHashCode(key);
+    if (this.root.find(hash, 0, key) == null) {
+      return this;
+    }
+    return new PersistentIdentityMap<>(
+      this.root.remove(hash, 0, key), this.size - 1);
+  }
+
+  /**
+   * Apply {@code f} to every key and value in the map, in an unspecified
+   * order.
+   *
+   * @param f The function
+   */
+
+  @SuppressWarnings("unchecked")
+  void forEach(final BiConsumer<K, V> f)
+  {
+    this.root.forEach((BiConsumer<Object, Object>) f);
+  }
+
+  private static final class Node
+  {
+    /*
+     * The bitmap holds a bit for each occupied slot. The slots are packed
+     * into the array as pairs: a non-null key followed by its value, or a
+     * null key followed by a child node. Collision nodes, found below the
+     * maximum shift, ignore the bitmap and hold only keys and values.
+     */
+
+    private final int bitmap;
+    private final Object[] array;
+
+    private Node(
+      final int in_bitmap,
+      final Object[] in_array)
+    {
+      this.bitmap = in_bitmap;
+      this.array = in_array;
+    }
+
+    private static int bit(
+      final int hash,
+      final int shift)
+    {
+      return 1 << ((hash >>> shift) & MASK);
+    }
+
+    private int index(final int bit)
+    {
+      return Integer.bitCount(this.bitmap & (bit - 1)) * 2;
+    }
+
+    private Object find(
+      final int hash,
+      final int shift,
+      final Object key)
+    {
+      if (shift > MAXIMUM_SHIFT) {
+        for (int index = 0; index < this.array.length; index += 2) {
+          if (this.array[index] == key) {
+            return this.array[index + 1];
+          }
+        }
+        return null;
+      }
+
+      final int bit = bit(hash, shift);
+      if ((this.bitmap & bit) == 0) {
+        return null;
+      }
+
+      final int index = this.index(bit);
+      final Object k = this.array[index];
+      final Object v = this.array[index + 1];
+      if (k == null) {
+        return ((Node) v).find(hash, shift + BITS, key);
+      }
+      return k == key ? v : null;
+    }
+
+    private Node withSlot(
+      final int index,
+      final Object key,
+      final Object value)
+    {
+      final Object[] copy = this.array.clone();
+      copy[index] = key;
+      copy[index + 1] = value;
+      return new Node(this.bitmap, copy);
+    }
+
+    private Node withInsertedSlot(
+      final int bit,
+      final int index,
+      final Object key,
+      final Object value)
+    {
+      final Object[] copy = new Object[this.array.length + 2];
+      System.arraycopy(this.array, 0, copy, 0, index);
+      copy[index] = key;
+      copy[index + 1] = value;
+      System.arraycopy(
+        this.array, index, copy, index + 2, this.array.length - index);
+      return new Node(this.bitmap | bit, copy);
+    }
+
+    private Node withoutSlot(
+      final int bit,
+      final int index)
+    {
+      final Object[] copy = new Object[this.array.length - 2];
+      System.arraycopy(this.array, 0, copy, 0, index);
+      System.arraycopy(
+        this.array, index + 2, copy, index, this.array.length - index - 2);
+      return new Node(this.bitmap & ~bit, copy);
+    }
+
+    private Node put(
+      final int hash,
+      final int shift,
+      final Object key,
+      final Object value)
+    {
+      if (shift > MAXIMUM_SHIFT) {
+        for (int index = 0; index < this.array.length; index += 2) {
+          if (this.array[index] == key) {
+            return this.withSlot(index, key, value);
+          }
+        }
+        return this.withInsertedSlot(0, this.array.length, key, value);
+      }
+
+      final int bit = bit(hash, shift);
+      final int index = this.index(bit);
+      if ((this.bitmap & bit) == 0) {
+        return this.withInsertedSlot(bit, index, key, value);
+      }
+
+      final Object k = this.array[index];
+      final Object v = this.array[index + 1];
+      if (k == null) {
+        return this.withSlot(
+          index, null, ((Node) v).put(hash, shift + BITS, key, value));
+      }
+      if (k == key) {
+        return this.withSlot(index, key, value);
+      }
+
+      /*
+       * Two different keys share this slot: move both into a new child node.
+       */
+
+      final Node child =
+        EMPTY_NODE
+          .put(System.identityHashCode(k), shift + BITS, k, v)
+          .put(hash, shift + BITS, key, value);
+      return this.withSlot(index, null, child);
+    }
+
+    private Node remove(
+      final int hash,
+      final int shift,
+      final Object key)
+    {
+      if (shift > MAXIMUM_SHIFT) {
+        for (int index = 0; index < this.array.length; index += 2) {
+          if (this.array[index] == key) {
+            return this.withoutSlot(0, index);
+          }
+        }
+        return this;
+      }
+
+      final int bit = bit(hash, shift);
+      if ((this.bitmap & bit) == 0) {
+        return this;
+      }
+
+      final int index = this.index(bit);
+      final Object k = this.array[index];
+      final Object v = this.array[index + 1];
+      if (k == null) {
+        final Node child = ((Node) v).remove(hash, shift + BITS, key);
+        if (child.array.length == 0) {
+          return this.withoutSlot(bit, index);
+        }
+
+        /*
+         * A child left holding a single key and value is replaced by that
+         * key and value, so that the trie does not retain long chains of
+         * nodes after removals.
+         */
+
+        if (child.array.length == 2 && child.array[0] != null) {
+          return this.withSlot(index, child.array[0], child.array[1]);
+        }
+        return this.withSlot(index, null, child);
+      }
+      if (k == key) {
+        return this.withoutSlot(bit, index);
+      }
+      return this;
+    }
+
+    private void forEach(final BiConsumer<Object, Object> f)
+    {
+      for (int index = 0; index < this.array.length; index += 2) {
+        final Object k = this.array[index];
+        final Object v = this.array[index + 1];
+        if (k == null) {
+          ((Node) v).forEach(f);
+        } else {
+          f.accept(k, v);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,463 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jspatial.implementation;
+
+import com.io7m.jaffirm.core.Preconditions;
+import com.io7m.jregions.core.unparameterized.areas.AreaD;
+import com.io7m.jspatial.api.quadtrees.QuadTreeConfigurationD;
+import com.io7m.jspatial.api.quadtrees.QuadTreeDType;
+import com.io7m.junreachable.UnreachableCodeException;
+
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongArrays;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.LongFunction;
+import java.util.function.ToLongFunction;
+
+/**
+ * <p>Functions to write {@link QuadTreeD} trees to channels, and to read
+ * them back, in a compact binary format.</p>
+ *
+ * <p>The format records the configuration of a tree, the shape of the
+ * tree, and the bounds of each object along with an identifier that the
+ * caller assigns to the object. Reading a tree rebuilds the quadrants in
+ * the recorded shape and places each object directly into the quadrant
+ * that held it, so no object is inserted by descending from the root, and
+ * no quadrant redistributes objects when it is split.</p>
+ *
+ * <p>All values are big-endian. A tree is written as:</p>
+ *
+ * <ul>
+ * <li>The magic number {@code 0x4A535144} and the format version
+ * {@code 2}, as 32-bit integers.</li>
+ * <li>The area of the tree, the minimum quadrant width, and the minimum
+ * quadrant height, as 64-bit floating point values.</li>
+ * <li>The maximum number of objects per leaf and the maximum depth, as
+ * 32-bit integers.</li>
+ * <li>{@code 1} if the tree trims empty leaves on removal and {@code 0}
+ * otherwise, as a byte.</li>
+ * <li>The number of objects in the tree, as a 64-bit integer.</li>
+ * <li>The root quadrant.</li>
+ * <li>The index of objects.</li>
+ * </ul>
+ *
+ * <p>A quadrant is written as {@code 1} if the quadrant has children and
+ * {@code 0} otherwise, as a byte, followed by the number of objects held
+ * directly by the quadrant and the number of objects held by the quadrant
+ * and all of its descendants, as 32-bit integers, the number of bytes
+ * occupied by the quadrant and all of its descendants, as a 64-bit integer,
+ * and the area of the quadrant. Each object follows as its identifier, as
+ * a 64-bit integer, and its bounds as four 64-bit floating point values.
+ * The four children of the quadrant, if any, follow the objects in the
+ * order used by {@link QuadTreeD}. Areas are written in the order minimum
+ * X, maximum X, minimum Y, maximum Y.</p>
+ *
+ * <p>The index holds an entry for each object in the tree, in ascending
+ * order of identifier. An entry is the identifier of the object and the
+ * offset of the object from the start of the tree, as 64-bit integers.
+ * The sizes of quadrants and the index are not needed to rebuild a tree,
+ * but allow {@link QuadTreeMappedD} to query a tree without reading it.</p>
+ *
+ * <p>Channels are expected to be in blocking mode.</p>
+ *
+ * @since 3.0.0
+ */
+
+public final class QuadTreeBinaryD
+{
+  /**
+   * The size of the header, in bytes.
+   */
+
+  static final int HEADER_SIZE = 8 + 6 * 8 + 8 + 1 + 8;
+
+  /**
+   * The size of a quadrant, excluding its objects and children, in bytes.
+   */
+
+  static final int QUADRANT_SIZE = 1 + 4 + 4 + 8 + AreaBoundsD.STRIDE * 8;
+
+  /**
+   * The size of an object, in bytes.
+   */
+
+  static final int OBJECT_SIZE = 8 + AreaBoundsD.STRIDE * 8;
+
+  /**
+   * The size of an index entry, in bytes.
+   */
+
+  static final int INDEX_ENTRY_SIZE = 8 + 8;
+
+  private static final int MAGIC = 0x4A535144;
+  private static final int VERSION = 2;
+
+  private QuadTreeBinaryD()
+  {
+    throw new UnreachableCodeException();
+  }
+
+  /**
+   * Write a tree to a channel.
+   *
+   * @param tree    The tree, which must have been created by
+   *                {@link QuadTreeD#create(QuadTreeConfigurationD)}
+   * @param ids     A function that yields the identifier of each object
+   * @param channel The channel
+   * @param <T>     The precise type of tree objects
+   *
+   * @throws IOException On I/O errors
+   */
+
+  @SuppressWarnings("unchecked")
+  public static <T> void write(
+    final QuadTreeDType<T> tree,
+    final ToLongFunction<T> ids,
+    final WritableByteChannel channel)
+    throws IOException
+  {
+    Objects.requireNonNull(tree, "Tree");
+    Objects.requireNonNull(ids, "IDs");
+    Objects.requireNonNull(channel, "Channel");
+    Preconditions.checkPrecondition(
+      tree,
+      tree instanceof QuadTreeD,
+      t -> "Tree must be an instance of " + QuadTreeD.class.getName());
+
+    final QuadTreeD<T> quadtree = (QuadTreeD<T>) tree;
+    final QuadTreeConfigurationD config = quadtree.configuration();
+    final AreaD area = config.area();
+
+    final ByteBuffer buffer = ChannelBuffers.forWriting();
+    buffer.putInt(MAGIC);
+    buffer.putInt(VERSION);
+    buffer.putDouble(area.minimumX());
+    buffer.putDouble(area.maximumX());
+    buffer.putDouble(area.minimumY());
+    buffer.putDouble(area.maximumY());
+    buffer.putDouble(config.minimumQuadrantWidth());
+    buffer.putDouble(config.minimumQuadrantHeight());
+    buffer.putInt(config.maximumItemsPerLeaf());
+    buffer.putInt(config.maximumDepth());
+    buffer.put(config.trimOnRemove() ? (byte) 1 : (byte) 0);
+    buffer.putLong(quadtree.size());
+
+    final LongArrayList sizes = new LongArrayList();
+    measureQuadrant(quadtree.rootNode(), sizes);
+
+    final Writer<T> writer =
+      new Writer<>(channel, buffer, ids, sizes, Math.toIntExact(quadtree.size()));
+    writer.writeQuadrant(quadtree.rootNode());
+    writer.writeIndex();
+    ChannelBuffers.flush(channel, buffer);
+  }
+
+  /**
+   * Calculate the number of bytes occupied by each quadrant and all of its
+   * descendants, in the order in which the quadrants are written.
+   */
+
+  private static <T> long measureQuadrant(
+    final QuadTreeD<T>.Quadrant quadrant,
+    final LongArrayList sizes)
+  {
+    final int slot = sizes.size();
+    sizes.add(0L);
+
+    long size = (long) QUADRANT_SIZE
+      + (long) quadrant.objects().size() * (long) OBJECT_SIZE;
+    if (!quadrant.isLeaf()) {
+      for (int index = 0; index < 4; ++index) {
+        size += measureQuadrant(quadrant.child(index), sizes);
+      }
+    }
+    sizes.set(slot, size);
+    return size;
+  }
+
+  /**
+   * Read a tree from a channel.
+   *
+   * @param channel The channel
+   * @param items   A function that yields the object with each identifier
+   * @param <T>     The precise type of tree objects
+   *
+   * @return A new tree
+   *
+   * @throws IOException On I/O errors, or if the channel does not contain a
+   *                     tree in the expected format
+   */
+
+  @SuppressWarnings("unchecked")
+  public static <T> QuadTreeDType<T> read(
+    final ReadableByteChannel channel,
+    final LongFunction<T> items)
+    throws IOException
+  {
+    Objects.requireNonNull(channel, "Channel");
+    Objects.requireNonNull(items, "Items");
+
+    final ByteBuffer buffer = ChannelBuffers.forReading();
+    ChannelBuffers.require(channel, buffer, HEADER_SIZE);
+    final QuadTreeConfigurationD config = readConfiguration(buffer);
+    final long size = buffer.getLong();
+
+    final QuadTreeD<T> tree = (QuadTreeD<T>) QuadTreeD.<T>create(config);
+    readQuadrant(channel, buffer, items, tree, tree.rootNode());
+    if (tree.size() != size) {
+      throw new IOException(String.format(
+        "Object count mismatch: expected %d, received %d",
+        Long.valueOf(size),
+        Long.valueOf(tree.size())));
+    }
+
+    /*
+     * The index is not needed to rebuild the tree, but is consumed so that
+     * the channel is left positioned after the tree.
+     */
+
+    for (long index = 0L; index < size; ++index) {
+      ChannelBuffers.require(channel, buffer, INDEX_ENTRY_SIZE);
+      buffer.position(buffer.position() + INDEX_ENTRY_SIZE);
+    }
+    return tree;
+  }
+
+  /**
+   * Read the header of a tree, up to but not including the number of
+   * objects in the tree.
+   *
+   * @param buffer The buffer
+   *
+   * @return The configuration of the tree
+   *
+   * @throws IOException If the buffer does not contain a tree in the
+   *                     expected format
+   */
+
+  static QuadTreeConfigurationD readConfiguration(
+    final ByteBuffer buffer)
+    throws IOException
+  {
+    final int magic = buffer.getInt();
+    if (magic != MAGIC) {
+      throw new IOException(String.format(
+        "Unrecognized magic number: expected 0x%08x, received 0x%08x",
+        Integer.valueOf(MAGIC),
+        Integer.valueOf(magic)));
+    }
+    final int version = buffer.getInt();
+    if (version == 1) {
+      throw new IOException(
+        "Format version 1 is no longer supported, as it lacks the sizes and "
+          + "index used by mapped trees; write the tree again with this version");
+    }
+    if (version != VERSION) {
+      throw new IOException(String.format(
+        "Unsupported format version: expected %d, received %d",
+        Integer.valueOf(VERSION),
+        Integer.valueOf(version)));
+    }
+
+    final QuadTreeConfigurationD.Builder cb = QuadTreeConfigurationD.builder();
+    cb.setArea(AreaD.of(
+      buffer.getDouble(),
+      buffer.getDouble(),
+      buffer.getDouble(),
+      buffer.getDouble()));
+    cb.setMinimumQuadrantWidth(buffer.getDouble());
+    cb.setMinimumQuadrantHeight(buffer.getDouble());
+    cb.setMaximumItemsPerLeaf(buffer.getInt());
+    cb.setMaximumDepth(buffer.getInt());
+    cb.setTrimOnRemove(buffer.get() != 0);
+    final QuadTreeConfigurationD config = cb.build();
+
+    final AreaD area = config.area();
+    if (!Double.isFinite(area.sizeX()) || !Double.isFinite(area.sizeY())) {
+      throw new IOException("The area of the tree is not finite: " + area);
+    }
+    return config;
+  }
+
+  private static <T> void readQuadrant(
+    final ReadableByteChannel channel,
+    final ByteBuffer buffer,
+    final LongFunction<T> items,
+    final QuadTreeD<T> tree,
+    final QuadTreeD<T>.Quadrant quadrant)
+    throws IOException
+  {
+    ChannelBuffers.require(channel, buffer, QUADRANT_SIZE);
+    final byte split = buffer.get();
+    final int count = buffer.getInt();
+    if (split < 0 || split > 1 || count < 0) {
+      throw new IOException("Malformed quadrant at " + quadrant.area());
+    }
+
+    /*
+     * The sizes and area of the quadrant are only used by mapped trees.
+     */
+
+    buffer.position(buffer.position() + QUADRANT_SIZE - (1 + 4));
+
+    /*
+     * The quadrant is split before it receives any objects, so that the
+     * objects stay in the quadrant rather than being redistributed to the
+     * children.
+     */
+
+    if (split == 1) {
+      if (!quadrant.canSplit()) {
+        throw new IOException("Quadrant cannot be split: " + quadrant.area());
+      }
+      quadrant.split();
+    }
+
+    final double[] quadrant_bounds = AreaBoundsD.pack(quadrant.area());
+    final double[] bounds = new double[AreaBoundsD.STRIDE];
+    for (int index = 0; index < count; ++index) {
+      readObject(channel, buffer, items, tree, quadrant, quadrant_bounds, bounds);
+    }
+
+    if (split == 1) {
+      for (int index = 0; index < 4; ++index) {
+        readQuadrant(channel, buffer, items, tree, quadrant.child(index));
+      }
+    }
+  }
+
+  private static <T> void readObject(
+    final ReadableByteChannel channel,
+    final ByteBuffer buffer,
+    final LongFunction<T> items,
+    final QuadTreeD<T> tree,
+    final QuadTreeD<T>.Quadrant quadrant,
+    final double[] quadrant_bounds,
+    final double[] bounds)
+    throws IOException
+  {
+    ChannelBuffers.require(channel, buffer, OBJECT_SIZE);
+    final long id = buffer.getLong();
+    for (int axis = 0; axis < AreaBoundsD.STRIDE; ++axis) {
+      bounds[axis] = buffer.getDouble();
+    }
+
+    if (!AreaBoundsD.contains(quadrant_bounds, 0, bounds, 0)) {
+      throw new IOException(
+        "Object " + id + " is not contained within " + quadrant.area());
+    }
+    final T item = Objects.requireNonNull(items.apply(id), "Item");
+    final long size = tree.size();
+    quadrant.insertObject(new QuadTreeD.Item<>(item, AreaBoundsD.unpack(bounds, 0)));
+    if (tree.size() == size) {
+      throw new IOException("Object " + id + " appears more than once");
+    }
+  }
+
+  /**
+   * The state of a tree being written.
+   */
+
+  private static final class Writer<T>
+  {
+    private final WritableByteChannel channel;
+    private final ByteBuffer buffer;
+    private final ToLongFunction<T> ids;
+    private final LongArrayList sizes;
+    private final long[] index_ids;
+    private final long[] index_offsets;
+    private int index_count;
+    private int quadrant_count;
+    private long position;
+
+    private Writer(
+      final WritableByteChannel in_channel,
+      final ByteBuffer in_buffer,
+      final ToLongFunction<T> in_ids,
+      final LongArrayList in_sizes,
+      final int size)
+    {
+      this.channel = in_channel;
+      this.buffer = in_buffer;
+      this.ids = in_ids;
+      this.sizes = in_sizes;
+      this.index_ids = new long[size];
+      this.index_offsets = new long[size];
+      this.index_count = 0;
+      this.quadrant_count = 0;
+      this.position = (long) HEADER_SIZE;
+    }
+
+    private void writeQuadrant(
+      final QuadTreeD<T>.Quadrant quadrant)
+      throws IOException
+    {
+      final Map<T, AreaD> objects = quadrant.objects();
+      final AreaD area = quadrant.area();
+      ChannelBuffers.reserve(this.channel, this.buffer, QUADRANT_SIZE);
+      this.buffer.put(quadrant.isLeaf() ? (byte) 0 : (byte) 1);
+      this.buffer.putInt(objects.size());
+      this.buffer.putInt(quadrant.subtreeSize());
+      this.buffer.putLong(this.sizes.getLong(this.quadrant_count));
+      this.buffer.putDouble(area.minimumX());
+      this.buffer.putDouble(area.maximumX());
+      this.buffer.putDouble(area.minimumY());
+      this.buffer.putDouble(area.maximumY());
+      this.position += (long) QUADRANT_SIZE;
+      ++this.quadrant_count;
+
+      for (final Map.Entry<T, AreaD> e : objects.entrySet()) {
+        final long id = this.ids.applyAsLong(e.getKey());
+        this.index_ids[this.index_count] = id;
+        this.index_offsets[this.index_count] = this.position;
+        ++this.index_count;
+
+        final AreaD bounds = e.getValue();
+        ChannelBuffers.reserve(this.channel, this.buffer, OBJECT_SIZE);
+        this.buffer.putLong(id);
+        this.buffer.putDouble(bounds.minimumX());
+        this.buffer.putDouble(bounds.maximumX());
+        this.buffer.putDouble(bounds.minimumY());
+        this.buffer.putDouble(bounds.maximumY());
+        this.position += (long) OBJECT_SIZE;
+      }
+
+      if (!quadrant.isLeaf()) {
+        for (int index = 0; index < 4; ++index) {
+          this.writeQuadrant(quadrant.child(index));
+        }
+      }
+    }
+
+    private void writeIndex()
+      throws IOException
+    {
+      LongArrays.quickSort(this.index_ids, this.index_offsets);
+      for (int index = 0; index < this.index_count; ++index) {
+        ChannelBuffers.reserve(this.channel, this.buffer, INDEX_ENTRY_SIZE);
+        this.buffer.putLong(this.index_ids[index]);
+        this.buffer.putLong(this.index_offsets[index]);
+      }
+    }
+  }
+}
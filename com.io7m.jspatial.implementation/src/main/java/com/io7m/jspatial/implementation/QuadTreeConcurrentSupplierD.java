@@ -0,0 +1,66 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.jspatial.implementation;
+
+import com.io7m.jspatial.api.quadtrees.QuadTreeConfigurationD;
+import com.io7m.jspatial.api.quadtrees.QuadTreeDType;
+import com.io7m.jspatial.api.quadtrees.QuadTreeSupplierDType;
+import org.osgi.service.component.annotations.Component;
+
+import java.util.Objects;
+
+/**
+ * An implementation of the {@link QuadTreeSupplierDType} interface that
+ * supplies {@link QuadTreeConcurrentD} trees.
+ */
+
+@Component
+public final class QuadTreeConcurrentSupplierD implements QuadTreeSupplierDType
+{
+  private final QuadTreeSupplierDType supplier;
+
+  /**
+   * Construct a new supplier of trees backed by {@link QuadTreeVersionedD} trees.
+   */
+
+  public QuadTreeConcurrentSupplierD()
+  {
+    this(new QuadTreeVersionedSupplierD());
+  }
+
+  /**
+   * Construct a new supplier of trees backed by trees from the given
+   * supplier.
+   *
+   * @param in_supplier The supplier of underlying trees
+   *
+   * @see QuadTreeConcurrentD#create(QuadTreeSupplierDType, QuadTreeConfigurationD)
+   */
+
+  public QuadTreeConcurrentSupplierD(
+    final QuadTreeSupplierDType in_supplier)
+  {
+    this.supplier = Objects.requireNonNull(in_supplier, "Supplier");
+  }
+
+  @Override
+  public <A> QuadTreeDType<A> create(final QuadTreeConfigurationD config)
+  {
+    return QuadTreeConcurrentD.create(this.supplier, config);
+  }
+}
@@ -20,28 +20,35 @@ import com.io7m.jaffirm.core.Invariants;
 import com.io7m.jaffirm.core.Preconditions;
 import com.io7m.jregions.core.unparameterized.areas.AreaD;
 import com.io7m.jregions.core.unparameterized.areas.AreaXYSplitD;
-import com.io7m.jregions.core.unparameterized.areas.AreasD;
 import com.io7m.jspatial.api.Ray2D;
 import com.io7m.jspatial.api.TreeVisitResult;
 import com.io7m.jspatial.api.quadtrees.QuadTreeConfigurationD;
 import com.io7m.jspatial.api.quadtrees.QuadTreeDType;
+import com.io7m.jspatial.api.quadtrees.QuadTreeItemVisitorDType;
+import com.io7m.jspatial.api.quadtrees.QuadTreeNearestVisitorDType;
 import com.io7m.jspatial.api.quadtrees.QuadTreeQuadrantDType;
 import com.io7m.jspatial.api.quadtrees.QuadTreeQuadrantIterationDType;
+import com.io7m.jspatial.api.quadtrees.QuadTreeRaycastBufferD;
 import com.io7m.jspatial.api.quadtrees.QuadTreeRaycastResultD;
+import com.io7m.jspatial.api.quadtrees.QuadTreeRaycastVisitorDType;
 import com.io7m.jtensors.core.unparameterized.vectors.Vector2D;
 import com.io7m.jtensors.core.unparameterized.vectors.Vectors2D;
 import com.io7m.junreachable.UnreachableCodeException;
-import it.unimi.dsi.fastutil.objects.ObjectIterator;
-import it.unimi.dsi.fastutil.objects.ObjectSet;
 import it.unimi.dsi.fastutil.objects.Reference2ReferenceMaps;
 import it.unimi.dsi.fastutil.objects.Reference2ReferenceOpenHashMap;
 
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.Set;
 import java.util.SortedSet;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.BiFunction;
+import java.util.stream.Stream;
 
 /**
  * Default implementation of the {@link QuadTreeDType} interface.
@@ -51,14 +58,16 @@ import java.util.function.BiFunction;
 
 public final class QuadTreeD<T> implements QuadTreeDType<T>
 {
-  private final Reference2ReferenceOpenHashMap<T, AreaD> objects;
+  private static final int INITIAL_ITEMS = 4;
+
+  private final Reference2ReferenceOpenHashMap<T, Item<T>> objects;
   private final QuadTreeConfigurationD config;
   private Quadrant root;
 
   private QuadTreeD(final QuadTreeConfigurationD in_config)
   {
     this.config = Objects.requireNonNull(in_config, "Configuration");
-    this.root = new Quadrant(null, in_config.area());
+    this.root = new Quadrant(null, in_config.area(), 0);
     this.objects = new Reference2ReferenceOpenHashMap<>();
   }
 
@@ -77,6 +86,24 @@ public final class QuadTreeD<T> implements QuadTreeDType<T>
     return new QuadTreeD<>(config);
   }
 
+  /**
+   * @return The configuration of this tree
+   */
+
+  QuadTreeConfigurationD configuration()
+  {
+    return this.config;
+  }
+
+  /**
+   * @return The root node of this tree
+   */
+
+  Quadrant rootNode()
+  {
+    return this.root;
+  }
+
   @Override
   public void trim()
   {
@@ -100,13 +127,35 @@ public final class QuadTreeD<T> implements QuadTreeDType<T>
     }
 
     final QuadTreeD<?> that = (QuadTreeD<?>) o;
-    return this.objects.equals(that.objects);
+    if (this.objects.size() != that.objects.size()) {
+      return false;
+    }
+
+    for (final Item<T> e : this.objects.values()) {
+      if (!Objects.equals(e.area, that.boundsOf(e.value))) {
+        return false;
+      }
+    }
+    return true;
   }
 
   @Override
   public int hashCode()
   {
-    return this.objects.hashCode();
+    int hash = 0;
+    for (final Item<T> e : this.objects.values()) {
+      hash += System.identityHashCode(e.value) ^ e.area.hashCode();
+    }
+    return hash;
+  }
+
+  private AreaD boundsOf(final Object item)
+  {
+    final Item<T> existing = this.objects.get(item);
+    if (existing != null) {
+      return existing.area;
+    }
+    return null;
   }
 
   @Override
@@ -123,15 +172,68 @@ public final class QuadTreeD<T> implements QuadTreeDType<T>
     Objects.requireNonNull(item, "Item");
     Objects.requireNonNull(item_bounds, "Bounds");
 
-    if (this.objects.containsKey(item)) {
-      this.remove(item);
-      Invariants.checkInvariant(
-        item,
-        !this.objects.containsKey(item),
-        x -> "Item must not be in tree");
+    /*
+     * If the object is already in the tree, start from the node that
+     * currently holds it rather than descending from the root.
+     */
+
+    final Item<T> existing = this.objects.get(item);
+    if (existing != null) {
+      return existing.owner.reinsert(existing, new Item<>(item, item_bounds));
     }
 
-    return this.root.insert(item, item_bounds);
+    return this.root.insert(new Item<>(item, item_bounds));
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public long insertAll(
+    final Map<T, AreaD> items)
+  {
+    Objects.requireNonNull(items, "Items");
+
+    final double[] root_bounds = this.root.bounds;
+    final Item<T>[] entries = (Item<T>[]) new Item<?>[items.size()];
+    final long[] codes = new long[entries.length];
+    int count = 0;
+    for (final Map.Entry<T, AreaD> entry : items.entrySet()) {
+      final Item<T> item = new Item<>(
+        Objects.requireNonNull(entry.getKey(), "Item"),
+        Objects.requireNonNull(entry.getValue(), "Bounds"));
+      entries[count] = item;
+      codes[count] = AreaBoundsD.mortonCode(root_bounds, item.bounds, 0);
+      ++count;
+    }
+
+    final int[] order = MortonCodes.sort(codes);
+
+    /*
+     * A tree that already holds objects is updated one object at a time,
+     * in Morton order so that consecutive insertions visit nearby nodes.
+     */
+
+    if (!this.objects.isEmpty()) {
+      long inserted = 0L;
+      for (final int index : order) {
+        final Item<T> item = entries[index];
+        if (this.insert(item.value, item.area)) {
+          ++inserted;
+        }
+      }
+      return inserted;
+    }
+
+    /*
+     * Otherwise, discard the objects that cannot fit in the tree and build
+     * the tree from the remaining objects in a single pass.
+     */
+
+    final int fitting = BulkLoader.retain(
+      order, index -> AreaBoundsD.contains(root_bounds, 0, entries[index].bounds, 0));
+    this.objects.ensureCapacity(fitting);
+    this.root = new Quadrant(null, this.root.area, 0);
+    BulkLoader.load(new BulkNodes(entries), 4, this.root, order, fitting);
+    return (long) fitting;
   }
 
   @Override
@@ -144,13 +246,19 @@ public final class QuadTreeD<T> implements QuadTreeDType<T>
   public boolean remove(final T item)
   {
     Objects.requireNonNull(item, "Item");
-    return this.root.remove(item);
+
+    final Item<T> existing = this.objects.get(item);
+    if (existing != null) {
+      existing.owner.removeObject(existing);
+      return true;
+    }
+    return false;
   }
 
   @Override
   public void clear()
   {
-    this.root = new Quadrant(null, this.root.area);
+    this.root = new Quadrant(null, this.root.area, 0);
     this.objects.clear();
   }
 
@@ -160,10 +268,8 @@ public final class QuadTreeD<T> implements QuadTreeDType<T>
     Objects.requireNonNull(f, "Function");
 
     final QuadTreeDType<U> qt = new QuadTreeD<>(this.config);
-    for (final Map.Entry<T, AreaD> es : this.objects.entrySet()) {
-      final T item = es.getKey();
-      final AreaD item_area = es.getValue();
-      qt.insert(f.apply(item, item_area), es.getValue());
+    for (final Item<T> e : this.objects.values()) {
+      qt.insert(f.apply(e.value, e.area), e.area);
     }
     return qt;
   }
@@ -183,9 +289,30 @@ public final class QuadTreeD<T> implements QuadTreeDType<T>
   {
     Objects.requireNonNull(item, "Item");
 
-    return this.objects.computeIfAbsent(item, i -> {
-      throw new NoSuchElementException(i.toString());
-    });
+    final Item<T> existing = this.objects.get(item);
+    if (existing == null) {
+      throw new NoSuchElementException(item.toString());
+    }
+    return existing.area;
+  }
+
+  private static <T> TreeVisitResult collectItem(
+    final Collection<T> items,
+    final T item,
+    final AreaD bounds)
+  {
+    items.add(item);
+    return TreeVisitResult.RESULT_CONTINUE;
+  }
+
+  private static <T> TreeVisitResult collectRaycastResult(
+    final Collection<QuadTreeRaycastResultD<T>> items,
+    final T item,
+    final AreaD bounds,
+    final double distance)
+  {
+    items.add(QuadTreeRaycastResultD.of(distance, bounds, item));
+    return TreeVisitResult.RESULT_CONTINUE;
   }
 
   @Override
@@ -195,7 +322,7 @@ public final class QuadTreeD<T> implements QuadTreeDType<T>
   {
     Objects.requireNonNull(area, "Area");
     Objects.requireNonNull(items, "Items");
-    this.root.areaContaining(area, items);
+    this.root.areaContainingVisit(AreaBoundsD.pack(area), items, QuadTreeD::collectItem);
   }
 
   @Override
@@ -205,7 +332,7 @@ public final class QuadTreeD<T> implements QuadTreeDType<T>
   {
     Objects.requireNonNull(area, "Area");
     Objects.requireNonNull(items, "Items");
-    this.root.areaOverlapping(area, items);
+    this.root.areaOverlappingVisit(AreaBoundsD.pack(area), items, QuadTreeD::collectItem);
   }
 
   @Override
@@ -215,47 +342,431 @@ public final class QuadTreeD<T> implements QuadTreeDType<T>
   {
     Objects.requireNonNull(ray, "Ray");
     Objects.requireNonNull(items, "Items");
-    this.root.raycast(ray, items);
+    this.root.raycastVisit(ray, items, QuadTreeD::collectRaycastResult);
+  }
+
+  @Override
+  public void containedByParallel(
+    final AreaD area,
+    final Set<T> items,
+    final ForkJoinPool pool)
+  {
+    Objects.requireNonNull(area, "Area");
+    Objects.requireNonNull(items, "Items");
+    Objects.requireNonNull(pool, "Pool");
+    ParallelQuery.run(pool, this.containingQuery(AreaBoundsD.pack(area)), items);
+  }
+
+  @Override
+  public void overlappedByParallel(
+    final AreaD area,
+    final Set<T> items,
+    final ForkJoinPool pool)
+  {
+    Objects.requireNonNull(area, "Area");
+    Objects.requireNonNull(items, "Items");
+    Objects.requireNonNull(pool, "Pool");
+    ParallelQuery.run(pool, this.overlappingQuery(AreaBoundsD.pack(area)), items);
+  }
+
+  @Override
+  public void raycastParallel(
+    final Ray2D ray,
+    final SortedSet<QuadTreeRaycastResultD<T>> items,
+    final ForkJoinPool pool)
+  {
+    Objects.requireNonNull(ray, "Ray");
+    Objects.requireNonNull(items, "Items");
+    Objects.requireNonNull(pool, "Pool");
+
+    ParallelQuery.run(
+      pool,
+      new ParallelQuery.Query<>(
+        4,
+        this.root,
+        node -> AreaBoundsD.intersects(ray, node.bounds, 0),
+        (node, out) -> ParallelQuery.areaRaycast(ray, node, (index, distance) -> {
+          final Item<T> item = node.itemAt(index);
+          out.accept(QuadTreeRaycastResultD.of(distance, item.area, item.value));
+        }),
+        (node, out) -> node.raycastVisit(ray, out, ParallelQuery::acceptAreaRaycast)),
+      items);
+  }
+
+  @Override
+  public Stream<T> streamAll()
+  {
+    return TreeSpliterator.stream(this.containingQuery(this.root.bounds), true);
+  }
+
+  @Override
+  public Stream<T> streamOverlapping(
+    final AreaD area)
+  {
+    Objects.requireNonNull(area, "Area");
+    return TreeSpliterator.stream(this.overlappingQuery(AreaBoundsD.pack(area)), false);
+  }
+
+  @Override
+  public void overlappedByBatch(
+    final List<AreaD> areas,
+    final List<? extends Set<T>> items)
+  {
+    final BatchQuery.BatchType<T> batch = BatchQuery.overlappingAreas(areas, items);
+    this.root.batch(batch, BatchQuery.all(batch), batch.size());
+  }
+
+  @Override
+  public void raycastBatch(
+    final List<Ray2D> rays,
+    final List<QuadTreeRaycastBufferD<T>> results)
+  {
+    final BatchQuery.BatchType<T> batch = BatchQuery.raycastAreas(rays, results);
+    this.root.batch(batch, BatchQuery.all(batch), batch.size());
+  }
+
+  private ParallelQuery.Query<Quadrant, T> containingQuery(
+    final double[] target)
+  {
+    return new ParallelQuery.Query<>(
+      4,
+      this.root,
+      node -> AreaBoundsD.touches(target, 0, node.bounds, 0),
+      (node, out) -> ParallelQuery.areaContaining(
+        target, node, index -> out.accept(node.itemAt(index).value)),
+      (node, out) -> node.areaContainingVisit(target, out, ParallelQuery::acceptItem));
+  }
+
+  private ParallelQuery.Query<Quadrant, T> overlappingQuery(
+    final double[] target)
+  {
+    return new ParallelQuery.Query<>(
+      4,
+      this.root,
+      node -> AreaBoundsD.overlaps(target, 0, node.bounds, 0),
+      (node, out) -> ParallelQuery.areaOverlapping(
+        target, node, index -> out.accept(node.itemAt(index).value)),
+      (node, out) -> node.areaOverlappingVisit(target, out, ParallelQuery::acceptItem));
+  }
+
+  @Override
+  public <C> TreeVisitResult containedBy(
+    final AreaD area,
+    final C context,
+    final QuadTreeItemVisitorDType<T, C> f)
+  {
+    Objects.requireNonNull(area, "Area");
+    Objects.requireNonNull(context, "Context");
+    Objects.requireNonNull(f, "Function");
+    return this.root.areaContainingVisit(AreaBoundsD.pack(area), context, f);
+  }
+
+  @Override
+  public <C> TreeVisitResult overlappedBy(
+    final AreaD area,
+    final C context,
+    final QuadTreeItemVisitorDType<T, C> f)
+  {
+    Objects.requireNonNull(area, "Area");
+    Objects.requireNonNull(context, "Context");
+    Objects.requireNonNull(f, "Function");
+    return this.root.areaOverlappingVisit(AreaBoundsD.pack(area), context, f);
+  }
+
+  @Override
+  public <C> TreeVisitResult raycast(
+    final Ray2D ray,
+    final C context,
+    final QuadTreeRaycastVisitorDType<T, C> f)
+  {
+    Objects.requireNonNull(ray, "Ray");
+    Objects.requireNonNull(context, "Context");
+    Objects.requireNonNull(f, "Function");
+    return this.root.raycastVisit(ray, context, f);
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public <C> TreeVisitResult nearest(
+    final Vector2D point,
+    final int count,
+    final C context,
+    final QuadTreeNearestVisitorDType<T, C> f)
+  {
+    Objects.requireNonNull(point, "Point");
+    Objects.requireNonNull(context, "Context");
+    Objects.requireNonNull(f, "Function");
+    Preconditions.checkPreconditionI(
+      count, count >= 0, c -> "Count must be non-negative");
+
+    /*
+     * Best-first search: nodes and items share a single queue ordered by
+     * their distance from the point. An item can only reach the front of
+     * the queue once every node that could contain something nearer has
+     * been expanded, so items leave the queue in order of distance.
+     */
+
+    final double x = point.x();
+    final double y = point.y();
+    final DistanceHeap heap = new DistanceHeap();
+    heap.add(AreaBoundsD.distanceSquared(x, y, this.root.bounds, 0), this.root, 0);
+
+    int found = 0;
+    while (found < count && !heap.isEmpty()) {
+      final double key = heap.topKey();
+      final Object top = heap.topObject();
+      heap.removeTop();
+
+      if (top instanceof Item) {
+        final Item<T> item = (Item<T>) top;
+        ++found;
+        if (f.apply(context, item.value, item.area, Math.sqrt(key))
+          == TreeVisitResult.RESULT_TERMINATE) {
+          return TreeVisitResult.RESULT_TERMINATE;
+        }
+      } else {
+        ((Quadrant) top).nearestExpand(x, y, heap);
+      }
+    }
+    return TreeVisitResult.RESULT_CONTINUE;
+  }
+
+  @Override
+  public Optional<QuadTreeRaycastResultD<T>> raycastFirst(
+    final Ray2D ray)
+  {
+    Objects.requireNonNull(ray, "Ray");
+
+    final RaycastHit<T> hit = new RaycastHit<>();
+    if (AreaBoundsD.entryDistance(ray, this.root.bounds, 0) < hit.distance) {
+      this.root.raycastFirst(ray, AreaBoundsD.raycastOrder(ray), hit);
+    }
+
+    final Item<T> item = hit.item;
+    if (item != null) {
+      return Optional.of(QuadTreeRaycastResultD.of(hit.distance, item.area, item.value));
+    }
+    return Optional.empty();
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public <C> TreeVisitResult raycastFirst(
+    final Ray2D ray,
+    final int count,
+    final C context,
+    final QuadTreeRaycastVisitorDType<T, C> f)
+  {
+    Objects.requireNonNull(ray, "Ray");
+    Objects.requireNonNull(context, "Context");
+    Objects.requireNonNull(f, "Function");
+    Preconditions.checkPreconditionI(
+      count, count >= 0, c -> "Count must be non-negative");
+
+    /*
+     * Best-first search, as with nearest(), ordered by the distance at
+     * which the ray enters each node and item. Nodes that the ray enters
+     * beyond the last object passed to the visitor are never expanded.
+     */
+
+    final DistanceHeap heap = new DistanceHeap();
+    final double root_distance = AreaBoundsD.entryDistance(ray, this.root.bounds, 0);
+    if (root_distance < Double.POSITIVE_INFINITY) {
+      heap.add(root_distance, this.root, 0);
+    }
+
+    int found = 0;
+    while (found < count && !heap.isEmpty()) {
+      final double key = heap.topKey();
+      final Object top = heap.topObject();
+      heap.removeTop();
+
+      if (top instanceof Item) {
+        final Item<T> item = (Item<T>) top;
+        ++found;
+        if (f.apply(context, item.value, item.area, key)
+          == TreeVisitResult.RESULT_TERMINATE) {
+          return TreeVisitResult.RESULT_TERMINATE;
+        }
+      } else {
+        ((Quadrant) top).raycastExpand(ray, heap);
+      }
+    }
+    return TreeVisitResult.RESULT_CONTINUE;
+  }
+
+  @Override
+  public void raycast(
+    final Ray2D ray,
+    final QuadTreeRaycastBufferD<T> results)
+  {
+    Objects.requireNonNull(ray, "Ray");
+    Objects.requireNonNull(results, "Results");
+    this.root.raycastBuffer(ray, results);
+  }
+
+  @Override
+  public long countContainedBy(
+    final AreaD area)
+  {
+    Objects.requireNonNull(area, "Area");
+    return this.root.countContaining(AreaBoundsD.pack(area));
+  }
+
+  @Override
+  public long countOverlapping(
+    final AreaD area)
+  {
+    Objects.requireNonNull(area, "Area");
+    return this.root.countOverlapping(AreaBoundsD.pack(area));
+  }
+
+  @Override
+  public boolean anyOverlapping(
+    final AreaD area)
+  {
+    Objects.requireNonNull(area, "Area");
+    return this.root.anyOverlapping(AreaBoundsD.pack(area));
+  }
+
+  /**
+   * The nodes of a tree being built by {@link #insertAll(Map)}.
+   */
+
+  private final class BulkNodes implements BulkLoader.NodesType<Quadrant>
+  {
+    private final Item<T>[] entries;
+
+    private BulkNodes(
+      final Item<T>[] in_entries)
+    {
+      this.entries = in_entries;
+    }
+
+    @Override
+    public boolean splitFor(
+      final Quadrant node,
+      final int count)
+    {
+      if (count > QuadTreeD.this.config.maximumItemsPerLeaf()
+        && node.canSplit()) {
+        node.split();
+        return true;
+      }
+      return false;
+    }
+
+    @Override
+    public int childIndexContaining(
+      final Quadrant node,
+      final int source)
+    {
+      return node.childIndexContaining(this.entries[source].bounds);
+    }
+
+    @Override
+    public Quadrant child(
+      final Quadrant node,
+      final int index)
+    {
+      return node.child(index);
+    }
+
+    @Override
+    public void hold(
+      final Quadrant node,
+      final int source)
+    {
+      node.insertObject(this.entries[source]);
+    }
+  }
+
+  /**
+   * An object held by the tree, along with its bounds and the node that
+   * currently holds it.
+   */
+
+  static final class Item<T>
+  {
+    private final T value;
+    private final AreaD area;
+    private final double[] bounds;
+    private QuadTreeD<T>.Quadrant owner;
+    private int index;
+
+    Item(
+      final T in_value,
+      final AreaD in_area)
+    {
+      this.value = in_value;
+      this.area = in_area;
+      this.bounds = AreaBoundsD.pack(in_area);
+      this.index = -1;
+    }
   }
 
-  protected final class Quadrant implements QuadTreeQuadrantDType<T>
+  /**
+   * The nearest object found so far by a first-hit raycast.
+   */
+
+  private static final class RaycastHit<T>
+  {
+    private double distance;
+    private Item<T> item;
+
+    private RaycastHit()
+    {
+      this.distance = Double.POSITIVE_INFINITY;
+    }
+  }
+
+  protected final class Quadrant
+    extends ItemNode<Quadrant> implements QuadTreeQuadrantDType<T>
   {
     private final AreaD area;
-    private final Reference2ReferenceOpenHashMap<T, AreaD> quadrant_objects;
+    private final double[] bounds;
     private final Quadrant parent;
-    private final Map<T, AreaD> quadrant_objects_view;
-    private Quadrant x0y0;
-    private Quadrant x0y1;
-    private Quadrant x1y0;
-    private Quadrant x1y1;
+    private final int node_depth;
 
-    private Quadrant(
+    /*
+     * The number of objects held by this node and all of its descendants.
+     */
+
+    private int subtree_count;
+
+    /*
+     * The children of this node, or {@code null} if this node is a leaf.
+     * Bit 0 of the index of a child selects the upper half of the node on
+     * the X axis, and bit 1 the upper half on the Y axis.
+     */
+
+    private Object[] children;
+
+    protected Quadrant(
       final Quadrant in_parent,
-      final AreaD in_area)
+      final AreaD in_area,
+      final int in_depth)
     {
       this.parent = in_parent;
+      this.node_depth = in_depth;
       this.area = Objects.requireNonNull(in_area, "Area");
-      this.quadrant_objects = new Reference2ReferenceOpenHashMap<>();
-      this.quadrant_objects_view =
-        Reference2ReferenceMaps.unmodifiable(this.quadrant_objects);
+      this.bounds = AreaBoundsD.pack(in_area);
     }
 
     private boolean insert(
-      final T item,
-      final AreaD item_bounds)
+      final Item<T> item)
     {
       Preconditions.checkPrecondition(
-        item,
-        !QuadTreeD.this.objects.containsKey(item),
+        item.value,
+        !QuadTreeD.this.objects.containsKey(item.value),
         x -> "Object must not be in tree");
 
-      return AreasD.contains(this.area, item_bounds)
-        && this.insertStep(item, item_bounds);
+      return AreaBoundsD.contains(this.bounds, 0, item.bounds, 0)
+        && this.insertStep(item);
     }
 
     private boolean insertStep(
-      final T item,
-      final AreaD item_bounds)
+      final Item<T> item)
     {
       /*
        * The object can fit in this node, but perhaps it is possible to fit it
@@ -263,20 +774,16 @@ public final class QuadTreeD<T> implements QuadTreeDType<T>
        */
 
       /*
-       * If this node is a leaf, and is large enough to split, do so.
+       * If this node is a leaf, and either has room for the object or cannot
+       * be split further, insert the object directly. Otherwise, split the
+       * node and redistribute the objects it holds to the new children.
        */
 
       if (this.isLeaf()) {
-        if (this.canSplit()) {
-          this.split();
-        } else {
-
-          /*
-           * The node is a leaf, but cannot be split further. Insert directly.
-           */
-
-          return this.insertObject(item, item_bounds);
+        if (this.hasCapacity() || !this.canSplit()) {
+          return this.insertObject(item);
         }
+        this.split();
       }
 
       /*
@@ -285,272 +792,578 @@ public final class QuadTreeD<T> implements QuadTreeDType<T>
 
       Invariants.checkInvariant(!this.isLeaf(), "Node is not a leaf");
 
-      if (AreasD.contains(this.x0y0.area, item_bounds)) {
-        return this.x0y0.insertStep(item, item_bounds);
-      }
-      if (AreasD.contains(this.x1y0.area, item_bounds)) {
-        return this.x1y0.insertStep(item, item_bounds);
-      }
-      if (AreasD.contains(this.x0y1.area, item_bounds)) {
-        return this.x0y1.insertStep(item, item_bounds);
-      }
-      if (AreasD.contains(this.x1y1.area, item_bounds)) {
-        return this.x1y1.insertStep(item, item_bounds);
+      final Quadrant child = this.childContaining(item.bounds);
+      if (child != null) {
+        return child.insertStep(item);
       }
 
       /*
        * Otherwise, insert the object into this node.
        */
 
-      return this.insertObject(item, item_bounds);
+      return this.insertObject(item);
+    }
+
+    private Quadrant childContaining(
+      final double[] target)
+    {
+      final int index = this.childIndexContaining(target);
+      return index < 0 ? null : this.child(index);
     }
 
-    private boolean insertObject(
-      final T item,
-      final AreaD item_bounds)
+    /**
+     * @return The index of the first child that can contain {@code target},
+     * or {@code -1} if no child can contain it
+     */
+
+    private int childIndexContaining(
+      final double[] target)
     {
-      QuadTreeD.this.objects.put(item, item_bounds);
-      this.quadrant_objects.put(item, item_bounds);
+      for (int index = 0; index < 4; ++index) {
+        if (AreaBoundsD.contains(this.child(index).bounds, 0, target, 0)) {
+          return index;
+        }
+      }
+      return -1;
+    }
+
+    boolean insertObject(
+      final Item<T> item)
+    {
+      if (this.item_values == null) {
+        this.item_values = new Item<?>[INITIAL_ITEMS];
+        this.item_bounds = new double[INITIAL_ITEMS * AreaBoundsD.STRIDE];
+      } else if (this.item_count == this.item_values.length) {
+        final int capacity = this.item_values.length * 2;
+        this.item_values = Arrays.copyOf(this.item_values, capacity);
+        this.item_bounds =
+          Arrays.copyOf(this.item_bounds, capacity * AreaBoundsD.STRIDE);
+      }
+
+      final int index = this.item_count;
+      this.item_values[index] = item;
+      System.arraycopy(
+        item.bounds,
+        0,
+        this.item_bounds,
+        index * AreaBoundsD.STRIDE,
+        AreaBoundsD.STRIDE);
+      this.item_count = index + 1;
+      for (Quadrant node = this; node != null; node = node.parent) {
+        ++node.subtree_count;
+      }
+
+      item.owner = this;
+      item.index = index;
+      QuadTreeD.this.objects.put(item.value, item);
       return true;
     }
 
-    private void split()
+    @SuppressWarnings("unchecked")
+    private Item<T> itemAt(final int index)
+    {
+      return (Item<T>) this.item_values[index];
+    }
+
+    /**
+     * Remove the object at {@code index} from this node, moving the last
+     * object held by this node into the vacated slot.
+     */
+
+    private void removeIndex(final int index)
+    {
+      final int last = this.item_count - 1;
+      if (index != last) {
+        final Item<T> moved = this.itemAt(last);
+        this.item_values[index] = moved;
+        System.arraycopy(
+          this.item_bounds,
+          last * AreaBoundsD.STRIDE,
+          this.item_bounds,
+          index * AreaBoundsD.STRIDE,
+          AreaBoundsD.STRIDE);
+        moved.index = index;
+      }
+      this.item_values[last] = null;
+      this.item_count = last;
+      for (Quadrant node = this; node != null; node = node.parent) {
+        --node.subtree_count;
+      }
+    }
+
+    void split()
     {
       Preconditions.checkPrecondition(this.canSplit(), "Quadrant can split");
 
       final AreaXYSplitD<AreaD> q = QuadrantsD.subdivide(this.area);
-      this.x0y0 = new Quadrant(this, q.x0y0());
-      this.x0y1 = new Quadrant(this, q.x0y1());
-      this.x1y0 = new Quadrant(this, q.x1y0());
-      this.x1y1 = new Quadrant(this, q.x1y1());
+      final int depth = this.node_depth + 1;
+      this.children = new Object[]{
+        new Quadrant(this, q.x0y0(), depth),
+        new Quadrant(this, q.x1y0(), depth),
+        new Quadrant(this, q.x0y1(), depth),
+        new Quadrant(this, q.x1y1(), depth),
+      };
+
+      this.redistribute();
     }
 
-    private boolean canSplit()
+    /**
+     * Move every object held by this (newly split) node into the child nodes
+     * that can contain them. Objects that straddle child boundaries remain in
+     * this node.
+     */
+
+    private void redistribute()
     {
-      final double width = this.area.sizeX();
-      final double height = this.area.sizeY();
+      for (int index = this.item_count - 1; index >= 0; --index) {
+        final Item<T> item = this.itemAt(index);
+        final Quadrant child = this.childContaining(item.bounds);
+        if (child != null) {
+          this.removeIndex(index);
+          child.insertStep(item);
+        }
+      }
+    }
 
-      final double min_width =
-        Math.max(0.0001, QuadTreeD.this.config.minimumQuadrantWidth());
-      final double min_height =
-        Math.max(0.0001, QuadTreeD.this.config.minimumQuadrantHeight());
+    private boolean hasCapacity()
+    {
+      return this.item_count
+        < QuadTreeD.this.config.maximumItemsPerLeaf();
+    }
 
-      final double half_width = width / 2.0;
-      final double half_height = height / 2.0;
+    boolean canSplit()
+    {
+      return QuadrantsD.canSplit(QuadTreeD.this.config, this.area, this.node_depth);
+    }
 
-      return half_width >= min_width && half_height >= min_height;
+    @Override
+    public int subtreeSize()
+    {
+      return this.subtree_count;
     }
 
-    private boolean isLeaf()
+    @Override
+    public boolean isLeaf()
     {
-      return this.x0y0 == null;
+      return this.children == null;
     }
 
-    private boolean remove(final T item)
+    private void removeObject(final Item<T> item)
     {
-      if (!QuadTreeD.this.objects.containsKey(item)) {
-        return false;
+      this.removeIndex(item.index);
+      QuadTreeD.this.objects.remove(item.value);
+      if (QuadTreeD.this.config.trimOnRemove()) {
+        this.unsplitAttemptRecursive();
       }
-
-      final AreaD bounds = QuadTreeD.this.objects.get(item);
-      return this.removeStep(item, bounds);
     }
 
-    private boolean removeStep(
-      final T item,
-      final AreaD item_bounds)
+    /**
+     * Move an object held by this node to new bounds. The object is inserted
+     * starting from the nearest ancestor of this node that can contain the
+     * new bounds, so objects that move only a short distance avoid a full
+     * descent from the root.
+     */
+
+    private boolean reinsert(
+      final Item<T> existing,
+      final Item<T> item)
     {
-      if (this.quadrant_objects.containsKey(item)) {
-        this.quadrant_objects.remove(item);
-        QuadTreeD.this.objects.remove(item);
-        if (QuadTreeD.this.config.trimOnRemove()) {
-          this.unsplitAttemptRecursive();
-        }
-        return true;
+      Quadrant start = this;
+      while (start != null
+        && !AreaBoundsD.contains(start.bounds, 0, item.bounds, 0)) {
+        start = start.parent;
       }
 
-      Invariants.checkInvariant(!this.isLeaf(), "Node cannot be a leaf");
+      this.removeIndex(existing.index);
+      QuadTreeD.this.objects.remove(existing.value);
 
-      if (AreasD.contains(this.x0y0.area, item_bounds)) {
-        return this.x0y0.removeStep(item, item_bounds);
-      }
-      if (AreasD.contains(this.x1y0.area, item_bounds)) {
-        return this.x1y0.removeStep(item, item_bounds);
+      final boolean inserted = start != null && start.insertStep(item);
+      if (QuadTreeD.this.config.trimOnRemove()) {
+        this.unsplitAttemptRecursive();
       }
-      if (AreasD.contains(this.x0y1.area, item_bounds)) {
-        return this.x0y1.removeStep(item, item_bounds);
+      return inserted;
+    }
+
+    /**
+     * @return The child at {@code index}, in the same order used when
+     * inserting objects
+     */
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Quadrant child(final int index)
+    {
+      return (Quadrant) this.children[index];
+    }
+
+    private <C> TreeVisitResult areaContainingVisit(
+      final double[] target_area,
+      final C context,
+      final QuadTreeItemVisitorDType<T, C> f)
+    {
+      if (this.isLeaf() && this.item_count == 0) {
+        return TreeVisitResult.RESULT_CONTINUE;
       }
-      if (AreasD.contains(this.x1y1.area, item_bounds)) {
-        return this.x1y1.removeStep(item, item_bounds);
+
+      if (AreaBoundsD.contains(target_area, 0, this.bounds, 0)) {
+        return this.visitRecursive(context, f);
       }
 
-      /*
-       * The object must be in the tree, according to remove(). Therefore it
-       * must be in this node, or one of the child quadrants.
-       */
+      final double[] b = this.item_bounds;
+      for (int index = 0; index < this.item_count; ++index) {
+        if (AreaBoundsD.contains(
+          target_area, 0, b, index * AreaBoundsD.STRIDE)) {
+          final Item<T> item = this.itemAt(index);
+          if (f.apply(context, item.value, item.area)
+            == TreeVisitResult.RESULT_TERMINATE) {
+            return TreeVisitResult.RESULT_TERMINATE;
+          }
+        }
+      }
 
-      throw new UnreachableCodeException();
+      if (!this.isLeaf()) {
+        for (int index = 0; index < 4; ++index) {
+          if (this.child(index).areaContainingVisit(target_area, context, f)
+            == TreeVisitResult.RESULT_TERMINATE) {
+            return TreeVisitResult.RESULT_TERMINATE;
+          }
+        }
+      }
+      return TreeVisitResult.RESULT_CONTINUE;
     }
 
-    private void areaContaining(
-      final AreaD target_area,
-      final Set<T> items)
+    private <C> TreeVisitResult visitRecursive(
+      final C context,
+      final QuadTreeItemVisitorDType<T, C> f)
     {
-      /*
-       * Avoid performing pointless containment checks.
-       */
+      for (int index = 0; index < this.item_count; ++index) {
+        final Item<T> item = this.itemAt(index);
+        if (f.apply(context, item.value, item.area)
+          == TreeVisitResult.RESULT_TERMINATE) {
+          return TreeVisitResult.RESULT_TERMINATE;
+        }
+      }
 
-      if (this.isLeaf() && this.quadrant_objects.isEmpty()) {
-        return;
+      if (!this.isLeaf()) {
+        for (int index = 0; index < 4; ++index) {
+          if (this.child(index).visitRecursive(context, f)
+            == TreeVisitResult.RESULT_TERMINATE) {
+            return TreeVisitResult.RESULT_TERMINATE;
+          }
+        }
       }
+      return TreeVisitResult.RESULT_CONTINUE;
+    }
 
-      /*
-       * If {@code target_area} completely contains this quadrant, collect
-       * everything in this quadrant and all children of this quadrant.
-       */
+    private <C> TreeVisitResult areaOverlappingVisit(
+      final double[] target_area,
+      final C context,
+      final QuadTreeItemVisitorDType<T, C> f)
+    {
+      if (this.isLeaf() && this.item_count == 0) {
+        return TreeVisitResult.RESULT_CONTINUE;
+      }
 
-      if (AreasD.contains(target_area, this.area)) {
-        this.collectRecursive(items);
+      if (!AreaBoundsD.overlaps(target_area, 0, this.bounds, 0)) {
+        return TreeVisitResult.RESULT_CONTINUE;
       }
 
-      /*
-       * Otherwise, {@code target_area} may be overlapping this quadrant and
-       * therefore some items may still be contained within {@code target_area}.
-       */
+      final double[] b = this.item_bounds;
+      for (int base = 0; base < this.item_count; base += LeafKernelDType.MAXIMUM_COUNT) {
+        long hits = AreaBoundsD.overlapping(target_area, b, base, this.item_count);
+        for (; hits != 0L; hits &= hits - 1L) {
+          final Item<T> item = this.itemAt(base + Long.numberOfTrailingZeros(hits));
+          if (f.apply(context, item.value, item.area)
+            == TreeVisitResult.RESULT_TERMINATE) {
+            return TreeVisitResult.RESULT_TERMINATE;
+          }
+        }
+      }
 
-      final ObjectSet<Map.Entry<T, AreaD>> entries =
-        this.quadrant_objects.entrySet();
-      final ObjectIterator<Map.Entry<T, AreaD>> iter =
-        entries.iterator();
+      if (!this.isLeaf()) {
+        for (int index = 0; index < 4; ++index) {
+          if (this.child(index).areaOverlappingVisit(target_area, context, f)
+            == TreeVisitResult.RESULT_TERMINATE) {
+            return TreeVisitResult.RESULT_TERMINATE;
+          }
+        }
+      }
+      return TreeVisitResult.RESULT_CONTINUE;
+    }
 
-      while (iter.hasNext()) {
-        final Map.Entry<T, AreaD> entry = iter.next();
-        final T item = entry.getKey();
-        final AreaD item_area = entry.getValue();
+    private <C> TreeVisitResult raycastVisit(
+      final Ray2D ray,
+      final C context,
+      final QuadTreeRaycastVisitorDType<T, C> f)
+    {
+      if (this.isLeaf() && this.item_count == 0) {
+        return TreeVisitResult.RESULT_CONTINUE;
+      }
+
+      if (!AreaBoundsD.intersects(ray, this.bounds, 0)) {
+        return TreeVisitResult.RESULT_CONTINUE;
+      }
 
-        if (AreasD.contains(target_area, item_area)) {
-          items.add(item);
+      final double[] b = this.item_bounds;
+      for (int base = 0; base < this.item_count; base += LeafKernelDType.MAXIMUM_COUNT) {
+        long hits = AreaBoundsD.intersecting(ray, b, base, this.item_count);
+        for (; hits != 0L; hits &= hits - 1L) {
+          final int index = base + Long.numberOfTrailingZeros(hits);
+          final int offset = index * AreaBoundsD.STRIDE;
+          final Item<T> item = this.itemAt(index);
+          final double distance = Vectors2D.distance(
+            Vector2D.of(b[offset], b[offset + 2]),
+            ray.origin());
+          if (f.apply(context, item.value, item.area, distance)
+            == TreeVisitResult.RESULT_TERMINATE) {
+            return TreeVisitResult.RESULT_TERMINATE;
+          }
         }
       }
 
       if (!this.isLeaf()) {
-        this.x0y0.areaContaining(target_area, items);
-        this.x0y1.areaContaining(target_area, items);
-        this.x1y0.areaContaining(target_area, items);
-        this.x1y1.areaContaining(target_area, items);
+        for (int index = 0; index < 4; ++index) {
+          if (this.child(index).raycastVisit(ray, context, f)
+            == TreeVisitResult.RESULT_TERMINATE) {
+            return TreeVisitResult.RESULT_TERMINATE;
+          }
+        }
       }
+      return TreeVisitResult.RESULT_CONTINUE;
     }
 
-    private void collectRecursive(final Set<T> items)
+    private void nearestExpand(
+      final double x,
+      final double y,
+      final DistanceHeap heap)
     {
-      items.addAll(this.quadrant_objects.keySet());
+      final double[] b = this.item_bounds;
+      for (int index = 0; index < this.item_count; ++index) {
+        heap.add(
+          AreaBoundsD.distanceSquared(x, y, b, index * AreaBoundsD.STRIDE),
+          this.item_values[index],
+          0);
+      }
+
       if (!this.isLeaf()) {
-        this.x0y0.collectRecursive(items);
-        this.x0y1.collectRecursive(items);
-        this.x1y0.collectRecursive(items);
-        this.x1y1.collectRecursive(items);
+        for (int index = 0; index < 4; ++index) {
+          final Quadrant c = this.child(index);
+          if (!c.isLeaf() || c.item_count > 0) {
+            heap.add(AreaBoundsD.distanceSquared(x, y, c.bounds, 0), c, 0);
+          }
+        }
       }
     }
 
-    private void areaOverlapping(
-      final AreaD target_area,
-      final Set<T> items)
+    private void raycastFirst(
+      final Ray2D ray,
+      final int order,
+      final RaycastHit<T> hit)
     {
+      final double[] b = this.item_bounds;
+      for (int index = 0; index < this.item_count; ++index) {
+        final double distance =
+          AreaBoundsD.entryDistance(ray, b, index * AreaBoundsD.STRIDE);
+        if (distance < hit.distance) {
+          hit.distance = distance;
+          hit.item = this.itemAt(index);
+        }
+      }
+
       /*
-       * Avoid performing pointless overlap checks.
+       * Visit the children nearest the ray origin first, so that the hits
+       * found there can rule out the children further along the ray.
        */
 
-      if (this.isLeaf() && this.quadrant_objects.isEmpty()) {
-        return;
+      if (!this.isLeaf()) {
+        for (int index = 0; index < 4; ++index) {
+          final Quadrant c = this.child(index ^ order);
+          if (!c.isLeaf() || c.item_count > 0) {
+            if (AreaBoundsD.entryDistance(ray, c.bounds, 0) < hit.distance) {
+              c.raycastFirst(ray, order, hit);
+            }
+          }
+        }
       }
+    }
 
-      /*
-       * If {@code target_area} overlaps this quadrant, test each object
-       * against {@code target_area}.
-       */
+    private void raycastExpand(
+      final Ray2D ray,
+      final DistanceHeap heap)
+    {
+      final double[] b = this.item_bounds;
+      for (int index = 0; index < this.item_count; ++index) {
+        final double distance =
+          AreaBoundsD.entryDistance(ray, b, index * AreaBoundsD.STRIDE);
+        if (distance < Double.POSITIVE_INFINITY) {
+          heap.add(distance, this.item_values[index], 0);
+        }
+      }
+
+      if (!this.isLeaf()) {
+        for (int index = 0; index < 4; ++index) {
+          final Quadrant c = this.child(index);
+          if (!c.isLeaf() || c.item_count > 0) {
+            final double distance = AreaBoundsD.entryDistance(ray, c.bounds, 0);
+            if (distance < Double.POSITIVE_INFINITY) {
+              heap.add(distance, c, 0);
+            }
+          }
+        }
+      }
+    }
 
-      if (AreasD.overlaps(target_area, this.area)) {
-        final ObjectSet<Map.Entry<T, AreaD>> entries =
-          this.quadrant_objects.entrySet();
-        final ObjectIterator<Map.Entry<T, AreaD>> iter =
-          entries.iterator();
+    private void raycastBuffer(
+      final Ray2D ray,
+      final QuadTreeRaycastBufferD<T> results)
+    {
+      if (this.isLeaf() && this.item_count == 0) {
+        return;
+      }
 
-        while (iter.hasNext()) {
-          final Map.Entry<T, AreaD> entry = iter.next();
-          final T item = entry.getKey();
-          final AreaD item_area = entry.getValue();
+      if (!AreaBoundsD.intersects(ray, this.bounds, 0)) {
+        return;
+      }
 
-          if (AreasD.overlaps(target_area, item_area)) {
-            items.add(item);
+      final double[] b = this.item_bounds;
+      for (int base = 0; base < this.item_count; base += LeafKernelDType.MAXIMUM_COUNT) {
+        long hits = AreaBoundsD.raycastCandidates(ray, b, base, this.item_count);
+        for (; hits != 0L; hits &= hits - 1L) {
+          final int index = base + Long.numberOfTrailingZeros(hits);
+          final int offset = index * AreaBoundsD.STRIDE;
+          final double distance = AreaBoundsD.entryDistance(ray, b, offset);
+          if (distance < Double.POSITIVE_INFINITY) {
+            results.add(
+              this.itemAt(index).value,
+              distance,
+              b[offset],
+              b[offset + 1],
+              b[offset + 2],
+              b[offset + 3]);
           }
         }
+      }
 
-        if (!this.isLeaf()) {
-          this.x0y0.areaOverlapping(target_area, items);
-          this.x1y0.areaOverlapping(target_area, items);
-          this.x0y1.areaOverlapping(target_area, items);
-          this.x1y1.areaOverlapping(target_area, items);
+      if (!this.isLeaf()) {
+        for (int index = 0; index < 4; ++index) {
+          this.child(index).raycastBuffer(ray, results);
         }
       }
     }
 
-    private void raycast(
-      final Ray2D ray,
-      final SortedSet<QuadTreeRaycastResultD<T>> items)
+    private long countContaining(
+      final double[] target_area)
     {
+      if (this.subtree_count == 0) {
+        return 0L;
+      }
+
       /*
-       * Avoid performing pointless ray checks.
+       * If the target area completely contains this node, then it contains
+       * every object held by this node and its descendants.
        */
 
-      if (this.isLeaf() && this.quadrant_objects.isEmpty()) {
-        return;
+      if (AreaBoundsD.contains(target_area, 0, this.bounds, 0)) {
+        return (long) this.subtree_count;
+      }
+      if (!AreaBoundsD.touches(target_area, 0, this.bounds, 0)) {
+        return 0L;
       }
 
-      /*
-       * Check whether or not the ray intersects the quadrant.
-       */
+      long count = 0L;
+      final double[] b = this.item_bounds;
+      for (int index = 0; index < this.item_count; ++index) {
+        if (AreaBoundsD.contains(target_area, 0, b, index * AreaBoundsD.STRIDE)) {
+          ++count;
+        }
+      }
 
-      final double x0 = this.area.minimumX();
-      final double x1 = this.area.maximumX();
-      final double y0 = this.area.minimumY();
-      final double y1 = this.area.maximumY();
+      if (!this.isLeaf()) {
+        for (int index = 0; index < 4; ++index) {
+          count += this.child(index).countContaining(target_area);
+        }
+      }
+      return count;
+    }
 
-      /*
-       * If the ray intersects the quadrant, check each item in the quadrant
-       * against the ray.
-       */
+    private long countOverlapping(
+      final double[] target_area)
+    {
+      if (this.subtree_count == 0) {
+        return 0L;
+      }
+      if (!AreaBoundsD.overlaps(target_area, 0, this.bounds, 0)) {
+        return 0L;
+      }
+      if (AreaBoundsD.overlapsAllWithin(target_area, 0, this.bounds, 0)) {
+        return (long) this.subtree_count;
+      }
+
+      long count = 0L;
+      final double[] b = this.item_bounds;
+      for (int base = 0; base < this.item_count; base += LeafKernelDType.MAXIMUM_COUNT) {
+        count += Long.bitCount(AreaBoundsD.overlapping(target_area, b, base, this.item_count));
+      }
+
+      if (!this.isLeaf()) {
+        for (int index = 0; index < 4; ++index) {
+          count += this.child(index).countOverlapping(target_area);
+        }
+      }
+      return count;
+    }
+
+    private boolean anyOverlapping(
+      final double[] target_area)
+    {
+      if (this.subtree_count == 0) {
+        return false;
+      }
+      if (!AreaBoundsD.overlaps(target_area, 0, this.bounds, 0)) {
+        return false;
+      }
+      if (AreaBoundsD.overlapsAllWithin(target_area, 0, this.bounds, 0)) {
+        return true;
+      }
+
+      final double[] b = this.item_bounds;
+      for (int base = 0; base < this.item_count; base += LeafKernelDType.MAXIMUM_COUNT) {
+        if (AreaBoundsD.overlapping(target_area, b, base, this.item_count) != 0L) {
+          return true;
+        }
+      }
 
-      if (ray.intersectsArea(x0, y0, x1, y1)) {
-        final ObjectSet<Map.Entry<T, AreaD>> entries =
-          this.quadrant_objects.entrySet();
-        final ObjectIterator<Map.Entry<T, AreaD>> iter =
-          entries.iterator();
-
-        while (iter.hasNext()) {
-          final Map.Entry<T, AreaD> entry = iter.next();
-          final T item = entry.getKey();
-          final AreaD item_area = entry.getValue();
-
-          final double item_x0 = item_area.minimumX();
-          final double item_x1 = item_area.maximumX();
-          final double item_y0 = item_area.minimumY();
-          final double item_y1 = item_area.maximumY();
-
-          if (ray.intersectsArea(item_x0, item_y0, item_x1, item_y1)) {
-            final double distance = Vectors2D.distance(
-              Vector2D.of(item_x0, item_y0),
-              ray.origin());
-            final QuadTreeRaycastResultD<T> result =
-              QuadTreeRaycastResultD.of(distance, item_area, item);
-            items.add(result);
+      if (!this.isLeaf()) {
+        for (int index = 0; index < 4; ++index) {
+          if (this.child(index).anyOverlapping(target_area)) {
+            return true;
           }
         }
+      }
+      return false;
+    }
+
+    private void batch(
+      final BatchQuery.BatchType<T> batch,
+      final int[] candidates,
+      final int candidate_count)
+    {
+      final int count = batch.select(candidates, candidate_count, this.bounds);
+
+      final double[] b = this.item_bounds;
+      for (int index = 0; index < this.item_count; ++index) {
+        final int offset = index * AreaBoundsD.STRIDE;
+        for (int query = 0; query < count; ++query) {
+          batch.test(candidates[query], b, offset, this.itemAt(index).value);
+        }
+      }
 
-        if (!this.isLeaf()) {
-          this.x0y0.raycast(ray, items);
-          this.x0y1.raycast(ray, items);
-          this.x1y0.raycast(ray, items);
-          this.x1y1.raycast(ray, items);
+      if (count > 0 && !this.isLeaf()) {
+        for (int index = 0; index < 4; ++index) {
+          final Quadrant c = this.child(index);
+          if (c.subtree_count > 0) {
+            c.batch(batch, candidates, count);
+          }
         }
       }
     }
@@ -563,33 +1376,14 @@ public final class QuadTreeD<T> implements QuadTreeDType<T>
       switch (f.apply(context, this, depth)) {
         case RESULT_CONTINUE: {
           if (!this.isLeaf()) {
-            switch (this.x0y0.iterateQuadrants(
-              context, f, Math.addExact(depth, 1L))) {
-              case RESULT_CONTINUE:
-                break;
-              case RESULT_TERMINATE:
-                return TreeVisitResult.RESULT_TERMINATE;
-            }
-            switch (this.x1y0.iterateQuadrants(
-              context, f, Math.addExact(depth, 1L))) {
-              case RESULT_CONTINUE:
-                break;
-              case RESULT_TERMINATE:
-                return TreeVisitResult.RESULT_TERMINATE;
-            }
-            switch (this.x0y1.iterateQuadrants(
-              context, f, Math.addExact(depth, 1L))) {
-              case RESULT_CONTINUE:
-                break;
-              case RESULT_TERMINATE:
-                return TreeVisitResult.RESULT_TERMINATE;
-            }
-            switch (this.x1y1.iterateQuadrants(
-              context, f, Math.addExact(depth, 1L))) {
-              case RESULT_CONTINUE:
-                break;
-              case RESULT_TERMINATE:
-                return TreeVisitResult.RESULT_TERMINATE;
+            for (int index = 0; index < 4; ++index) {
+              switch (this.child(index).iterateQuadrants(
+                context, f, Math.addExact(depth, 1L))) {
+                case RESULT_CONTINUE:
+                  break;
+                case RESULT_TERMINATE:
+                  return TreeVisitResult.RESULT_TERMINATE;
+              }
             }
           }
           return TreeVisitResult.RESULT_CONTINUE;
@@ -604,7 +1398,13 @@ public final class QuadTreeD<T> implements QuadTreeDType<T>
     @Override
     public Map<T, AreaD> objects()
     {
-      return this.quadrant_objects_view;
+      final Reference2ReferenceOpenHashMap<T, AreaD> m =
+        new Reference2ReferenceOpenHashMap<>(this.item_count);
+      for (int index = 0; index < this.item_count; ++index) {
+        final Item<T> item = this.itemAt(index);
+        m.put(item.value, item.area);
+      }
+      return Reference2ReferenceMaps.unmodifiable(m);
     }
 
     @Override
@@ -620,19 +1420,13 @@ public final class QuadTreeD<T> implements QuadTreeDType<T>
     private void unsplitAttempt()
     {
       if (!this.isLeaf()) {
-        final boolean x0y0_can_be_pruned = this.x0y0.unsplitCanPrune();
-        final boolean x1y0_can_be_pruned = this.x1y0.unsplitCanPrune();
-        final boolean x0y1_can_be_pruned = this.x0y1.unsplitCanPrune();
-        final boolean x1y1_can_be_pruned = this.x1y1.unsplitCanPrune();
-
-        if (x0y0_can_be_pruned
-          && x1y0_can_be_pruned
-          && x0y1_can_be_pruned
-          && x1y1_can_be_pruned) {
-          this.x0y0 = null;
-          this.x0y1 = null;
-          this.x1y0 = null;
-          this.x1y1 = null;
+        boolean prune = true;
+        for (int index = 0; index < 4; ++index) {
+          prune &= this.child(index).unsplitCanPrune();
+        }
+
+        if (prune) {
+          this.children = null;
         }
       }
     }
@@ -651,27 +1445,23 @@ public final class QuadTreeD<T> implements QuadTreeDType<T>
 
     private boolean unsplitCanPrune()
     {
-      return this.isLeaf() && this.quadrant_objects.isEmpty();
+      return this.isLeaf() && this.item_count == 0;
     }
 
     private void trim()
     {
       if (this.isLeaf()) {
         this.unsplitAttemptRecursive();
-      } else {
-        this.x0y0.trim();
-        if (this.isLeaf()) {
-          return;
-        }
-        this.x0y1.trim();
-        if (this.isLeaf()) {
-          return;
-        }
-        this.x1y0.trim();
-        if (this.isLeaf()) {
-          return;
-        }
-        this.x1y1.trim();
+        return;
+      }
+
+      /*
+       * Trimming a child may turn this node back into a leaf, at which point
+       * there are no further children to trim.
+       */
+
+      for (int index = 0; index < 4 && !this.isLeaf(); ++index) {
+        this.child(index).trim();
       }
     }
   }
@@ -0,0 +1,1481 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.jspatial.implementation;
+
+import com.io7m.jaffirm.core.Preconditions;
+import com.io7m.jregions.core.unparameterized.areas.AreaD;
+import com.io7m.jspatial.api.Ray2D;
+import com.io7m.jspatial.api.TreeVisitResult;
+import com.io7m.jspatial.api.quadtrees.QuadTreeConfigurationD;
+import com.io7m.jspatial.api.quadtrees.QuadTreeDType;
+import com.io7m.jspatial.api.quadtrees.QuadTreeItemVisitorDType;
+import com.io7m.jspatial.api.quadtrees.QuadTreeNearestVisitorDType;
+import com.io7m.jspatial.api.quadtrees.QuadTreeQuadrantIterationDType;
+import com.io7m.jspatial.api.quadtrees.QuadTreeQuadrantDType;
+import com.io7m.jspatial.api.quadtrees.QuadTreeRaycastBufferD;
+import com.io7m.jspatial.api.quadtrees.QuadTreeRaycastResultD;
+import com.io7m.jspatial.api.quadtrees.QuadTreeRaycastVisitorDType;
+import com.io7m.jtensors.core.unparameterized.vectors.Vector2D;
+import com.io7m.jtensors.core.unparameterized.vectors.Vectors2D;
+import com.io7m.junreachable.UnreachableCodeException;
+import it.unimi.dsi.fastutil.objects.Reference2IntMap;
+import it.unimi.dsi.fastutil.objects.Reference2IntOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Reference2ReferenceMaps;
+import it.unimi.dsi.fastutil.objects.Reference2ReferenceOpenHashMap;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.function.BiFunction;
+
+/**
+ * <p>An implementation of the {@link QuadTreeDType} interface that stores
+ * nodes and items in flat primitive arrays.</p>
+ *
+ * <p>Nodes are identified by {@code int} indices. The four children of a
+ * node are allocated as a contiguous block, and the objects held by a node
+ * are kept in an intrusive linked list of item slots. The tree therefore
+ * consists of a handful of large arrays rather than one heap object per
+ * quadrant, and traversal operates on primitive bounds. Quadrants and areas
+ * are only instantiated at the API boundary.</p>
+ *
+ * <p>The structure of a tree created with {@link #create} is identical to
+ * that of {@link QuadTreeD} for the same configuration and sequence of
+ * operations.</p>
+ *
+ * <p>A tree created with {@link #createLoose} is a loose tree: each node
+ * also has loose bounds, which are its bounds scaled about their centre by
+ * the looseness factor and clipped to the loose bounds of its parent. An
+ * object is held by the deepest node whose loose bounds contain it, and the
+ * candidate child at each level is the one containing the centre of the
+ * object, so objects that straddle a split plane no longer accumulate near
+ * the root. Queries prune on loose bounds, and the area of each quadrant
+ * exposed by iteration is its loose bounds.</p>
+ *
+ * @param <T> The precise type of tree objects
+ */
+
+public final class QuadTreeFlatD<T> implements QuadTreeDType<T>
+{
+  private static final int NONE = -1;
+  private static final int BOUNDS_STRIDE = AreaBoundsD.STRIDE;
+  private static final int CHILD_COUNT = 4;
+  private static final int INITIAL_NODES = 1 + CHILD_COUNT;
+  private static final int INITIAL_ITEMS = 16;
+
+  private final QuadTreeConfigurationD config;
+  private final double looseness;
+  private final Reference2IntOpenHashMap<T> item_slots;
+
+  /*
+   * Per-node storage. Bounds and loose bounds are stored as (min x, max x,
+   * min y, max y). A node with no children has a child base of NONE. Free
+   * child blocks are chained through the parent array of their first node.
+   */
+
+  private double[] node_bounds;
+  private double[] node_loose;
+  private int[] node_children;
+  private int[] node_parent;
+  private int[] node_depth;
+  private int[] node_items_head;
+  private int[] node_items_count;
+  private int[] node_subtree_count;
+  private int node_top;
+  private int node_free;
+
+  /*
+   * Per-item storage. Each node holds a doubly linked list of item slots.
+   * Free slots are chained through the next array.
+   */
+
+  private Object[] item_values;
+  private double[] item_bounds;
+  private int[] item_node;
+  private int[] item_next;
+  private int[] item_prev;
+  private int item_top;
+  private int item_free;
+
+  private QuadTreeFlatD(
+    final QuadTreeConfigurationD in_config,
+    final double in_looseness)
+  {
+    this.config = Objects.requireNonNull(in_config, "Configuration");
+    this.looseness = in_looseness;
+    this.item_slots = new Reference2IntOpenHashMap<>();
+    this.item_slots.defaultReturnValue(NONE);
+    this.reset(INITIAL_NODES, INITIAL_ITEMS);
+  }
+
+  /**
+   * Create a new empty tree with the given bounds.
+   *
+   * @param config The tree configuration
+   * @param <T>    The type of objects contained within the tree
+   *
+   * @return A new tree
+   */
+
+  public static <T> QuadTreeDType<T> create(
+    final QuadTreeConfigurationD config)
+  {
+    return new QuadTreeFlatD<>(config, 1.0);
+  }
+
+  /**
+   * Create a new empty loose tree with the given bounds. The bounds of each
+   * quadrant below the root are expanded about their centre so that they are
+   * {@code looseness} times as large on each axis, and each object is held
+   * by the deepest quadrant whose expanded bounds contain it. A looseness of
+   * {@code 1.0} yields the same tree as {@link #create(QuadTreeConfigurationD)}.
+   *
+   * @param config    The tree configuration
+   * @param looseness The looseness factor, at least {@code 1.0}
+   * @param <T>       The type of objects contained within the tree
+   *
+   * @return A new tree
+   */
+
+  public static <T> QuadTreeDType<T> createLoose(
+    final QuadTreeConfigurationD config,
+    final double looseness)
+  {
+    Preconditions.checkPreconditionD(
+      looseness,
+      looseness >= 1.0 && looseness <= Double.MAX_VALUE,
+      x -> "Looseness must be in the range [1.0, Double.MAX_VALUE]");
+    return new QuadTreeFlatD<>(config, looseness);
+  }
+
+  private void reset(
+    final int node_capacity,
+    final int item_capacity)
+  {
+    this.node_bounds = new double[node_capacity * BOUNDS_STRIDE];
+    this.node_loose = new double[node_capacity * BOUNDS_STRIDE];
+    this.node_children = new int[node_capacity];
+    this.node_parent = new int[node_capacity];
+    this.node_depth = new int[node_capacity];
+    this.node_items_head = new int[node_capacity];
+    this.node_items_count = new int[node_capacity];
+    this.node_subtree_count = new int[node_capacity];
+    this.node_top = 1;
+    this.node_free = NONE;
+
+    final AreaD area = this.config.area();
+    System.arraycopy(AreaBoundsD.pack(area), 0, this.node_bounds, 0, BOUNDS_STRIDE);
+    System.arraycopy(this.node_bounds, 0, this.node_loose, 0, BOUNDS_STRIDE);
+    this.node_children[0] = NONE;
+    this.node_parent[0] = NONE;
+    this.node_depth[0] = 0;
+    this.node_items_head[0] = NONE;
+    this.node_items_count[0] = 0;
+    this.node_subtree_count[0] = 0;
+
+    this.item_values = new Object[item_capacity];
+    this.item_bounds = new double[item_capacity * BOUNDS_STRIDE];
+    this.item_node = new int[item_capacity];
+    this.item_next = new int[item_capacity];
+    this.item_prev = new int[item_capacity];
+    this.item_top = 0;
+    this.item_free = NONE;
+  }
+
+  @Override
+  public void trim()
+  {
+    this.trimNode(0);
+  }
+
+  @Override
+  public long size()
+  {
+    return (long) this.item_slots.size();
+  }
+
+  @Override
+  public boolean equals(final Object o)
+  {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || this.getClass() != o.getClass()) {
+      return false;
+    }
+
+    final QuadTreeFlatD<?> that = (QuadTreeFlatD<?>) o;
+    if (this.item_slots.size() != that.item_slots.size()) {
+      return false;
+    }
+
+    for (final Reference2IntMap.Entry<T> e : this.item_slots.reference2IntEntrySet()) {
+      final int slot = e.getIntValue();
+      final int that_slot = that.item_slots.getInt(e.getKey());
+      if (that_slot == NONE) {
+        return false;
+      }
+      if (!Arrays.equals(
+        this.item_bounds,
+        slot * BOUNDS_STRIDE,
+        (slot + 1) * BOUNDS_STRIDE,
+        that.item_bounds,
+        that_slot * BOUNDS_STRIDE,
+        (that_slot + 1) * BOUNDS_STRIDE)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public int hashCode()
+  {
+    int hash = 0;
+    for (final Reference2IntMap.Entry<T> e : this.item_slots.reference2IntEntrySet()) {
+      final int b = e.getIntValue() * BOUNDS_STRIDE;
+      int item_hash = 0;
+      for (int index = 0; index < BOUNDS_STRIDE; ++index) {
+        item_hash = 31 * item_hash + Double.hashCode(this.item_bounds[b + index]);
+      }
+      hash += System.identityHashCode(e.getKey()) ^ item_hash;
+    }
+    return hash;
+  }
+
+  @Override
+  public AreaD bounds()
+  {
+    return this.config.area();
+  }
+
+  @Override
+  public boolean insert(
+    final T item,
+    final AreaD area)
+  {
+    Objects.requireNonNull(item, "Item");
+    Objects.requireNonNull(area, "Bounds");
+
+    final double[] bounds = AreaBoundsD.pack(area);
+
+    /*
+     * If the object is already in the tree, start from the node that
+     * currently holds it rather than descending from the root.
+     */
+
+    final int existing = this.item_slots.getInt(item);
+    if (existing != NONE) {
+      return this.reinsert(existing, bounds);
+    }
+
+    if (!AreaBoundsD.contains(this.node_loose, 0, bounds, 0)) {
+      return false;
+    }
+
+    final int slot = this.itemAllocate(item, bounds, 0);
+    this.item_slots.put(item, slot);
+    this.insertStep(0, slot);
+    return true;
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public long insertAll(
+    final Map<T, AreaD> items)
+  {
+    Objects.requireNonNull(items, "Items");
+
+    final Object[] values = new Object[items.size()];
+    final double[] bounds = new double[values.length * BOUNDS_STRIDE];
+    final long[] codes = new long[values.length];
+    int index = 0;
+    for (final Map.Entry<T, AreaD> entry : items.entrySet()) {
+      final int offset = index * BOUNDS_STRIDE;
+      values[index] = Objects.requireNonNull(entry.getKey(), "Item");
+      AreaBoundsD.store(Objects.requireNonNull(entry.getValue(), "Bounds"), bounds, offset);
+      codes[index] = AreaBoundsD.mortonCode(this.node_loose, bounds, offset);
+      ++index;
+    }
+
+    final int[] order = MortonCodes.sort(codes);
+
+    /*
+     * A tree that already holds objects is updated one object at a time,
+     * in Morton order so that consecutive insertions visit nearby nodes.
+     */
+
+    if (!this.item_slots.isEmpty()) {
+      long inserted = 0L;
+      for (final int source : order) {
+        final AreaD region = AreaBoundsD.unpack(bounds, source * BOUNDS_STRIDE);
+        if (this.insert((T) values[source], region)) {
+          ++inserted;
+        }
+      }
+      return inserted;
+    }
+
+    /*
+     * Otherwise, discard the objects that cannot fit in the tree and build
+     * the tree from the remaining objects in a single pass.
+     */
+
+    final int fitting = BulkLoader.retain(
+      order,
+      source -> AreaBoundsD.contains(this.node_loose, 0, bounds, source * BOUNDS_STRIDE));
+    this.reset(INITIAL_NODES, Math.max(INITIAL_ITEMS, fitting));
+    this.item_slots.ensureCapacity(fitting);
+    BulkLoader.load(
+      new BulkNodes(values, bounds), CHILD_COUNT, Integer.valueOf(0), order, fitting);
+    return (long) fitting;
+  }
+
+  private boolean reinsert(
+    final int slot,
+    final double[] bounds)
+  {
+    final int owner = this.item_node[slot];
+
+    int start = owner;
+    while (start != NONE
+      && !AreaBoundsD.contains(this.node_loose, start * BOUNDS_STRIDE, bounds, 0)) {
+      start = this.node_parent[start];
+    }
+
+    this.itemUnlink(slot);
+    if (start == NONE) {
+      this.item_slots.removeInt(this.item_values[slot]);
+      this.itemFree(slot);
+    } else {
+      System.arraycopy(bounds, 0, this.item_bounds, slot * BOUNDS_STRIDE, BOUNDS_STRIDE);
+      this.insertStep(start, slot);
+    }
+
+    if (this.config.trimOnRemove()) {
+      this.unsplitAttemptRecursive(owner);
+    }
+    return start != NONE;
+  }
+
+  @Override
+  public boolean contains(final T item)
+  {
+    return this.item_slots.containsKey(item);
+  }
+
+  @Override
+  public boolean remove(final T item)
+  {
+    Objects.requireNonNull(item, "Item");
+
+    final int slot = this.item_slots.removeInt(item);
+    if (slot == NONE) {
+      return false;
+    }
+
+    final int owner = this.item_node[slot];
+    this.itemUnlink(slot);
+    this.itemFree(slot);
+    if (this.config.trimOnRemove()) {
+      this.unsplitAttemptRecursive(owner);
+    }
+    return true;
+  }
+
+  @Override
+  public void clear()
+  {
+    this.item_slots.clear();
+    this.reset(INITIAL_NODES, INITIAL_ITEMS);
+  }
+
+  @Override
+  public <U> QuadTreeDType<U> map(final BiFunction<T, AreaD, U> f)
+  {
+    Objects.requireNonNull(f, "Function");
+
+    final QuadTreeDType<U> qt = new QuadTreeFlatD<>(this.config, this.looseness);
+    for (final Reference2IntMap.Entry<T> e : this.item_slots.reference2IntEntrySet()) {
+      final T item = e.getKey();
+      final AreaD item_area =
+        AreaBoundsD.unpack(this.item_bounds, e.getIntValue() * BOUNDS_STRIDE);
+      qt.insert(f.apply(item, item_area), item_area);
+    }
+    return qt;
+  }
+
+  @Override
+  public <C> void iterateQuadrants(
+    final C context,
+    final QuadTreeQuadrantIterationDType<T, C> f)
+  {
+    Objects.requireNonNull(context, "Context");
+    Objects.requireNonNull(f, "Function");
+    this.iterateQuadrantsNode(context, f, 0, 0L);
+  }
+
+  @Override
+  public AreaD areaFor(final T item)
+  {
+    Objects.requireNonNull(item, "Item");
+
+    final int slot = this.item_slots.getInt(item);
+    if (slot == NONE) {
+      throw new NoSuchElementException(item.toString());
+    }
+    return AreaBoundsD.unpack(this.item_bounds, slot * BOUNDS_STRIDE);
+  }
+
+  private static <T> TreeVisitResult collectItem(
+    final Set<T> items,
+    final T item,
+    final AreaD bounds)
+  {
+    items.add(item);
+    return TreeVisitResult.RESULT_CONTINUE;
+  }
+
+  private static <T> TreeVisitResult collectRaycastResult(
+    final SortedSet<QuadTreeRaycastResultD<T>> items,
+    final T item,
+    final AreaD bounds,
+    final double distance)
+  {
+    items.add(QuadTreeRaycastResultD.of(distance, bounds, item));
+    return TreeVisitResult.RESULT_CONTINUE;
+  }
+
+  @Override
+  public void containedBy(
+    final AreaD area,
+    final Set<T> items)
+  {
+    Objects.requireNonNull(area, "Area");
+    Objects.requireNonNull(items, "Items");
+    this.areaContainingVisit(0, AreaBoundsD.pack(area), items, QuadTreeFlatD::collectItem);
+  }
+
+  @Override
+  public void overlappedBy(
+    final AreaD area,
+    final Set<T> items)
+  {
+    Objects.requireNonNull(area, "Area");
+    Objects.requireNonNull(items, "Items");
+    this.areaOverlappingVisit(0, AreaBoundsD.pack(area), items, QuadTreeFlatD::collectItem);
+  }
+
+  @Override
+  public void raycast(
+    final Ray2D ray,
+    final SortedSet<QuadTreeRaycastResultD<T>> items)
+  {
+    Objects.requireNonNull(ray, "Ray");
+    Objects.requireNonNull(items, "Items");
+    this.raycastVisit(0, ray, items, QuadTreeFlatD::collectRaycastResult);
+  }
+
+  @Override
+  public <C> TreeVisitResult containedBy(
+    final AreaD area,
+    final C context,
+    final QuadTreeItemVisitorDType<T, C> f)
+  {
+    Objects.requireNonNull(area, "Area");
+    Objects.requireNonNull(context, "Context");
+    Objects.requireNonNull(f, "Function");
+    return this.areaContainingVisit(0, AreaBoundsD.pack(area), context, f);
+  }
+
+  @Override
+  public <C> TreeVisitResult overlappedBy(
+    final AreaD area,
+    final C context,
+    final QuadTreeItemVisitorDType<T, C> f)
+  {
+    Objects.requireNonNull(area, "Area");
+    Objects.requireNonNull(context, "Context");
+    Objects.requireNonNull(f, "Function");
+    return this.areaOverlappingVisit(0, AreaBoundsD.pack(area), context, f);
+  }
+
+  @Override
+  public <C> TreeVisitResult raycast(
+    final Ray2D ray,
+    final C context,
+    final QuadTreeRaycastVisitorDType<T, C> f)
+  {
+    Objects.requireNonNull(ray, "Ray");
+    Objects.requireNonNull(context, "Context");
+    Objects.requireNonNull(f, "Function");
+    return this.raycastVisit(0, ray, context, f);
+  }
+
+  @Override
+  public <C> TreeVisitResult nearest(
+    final Vector2D point,
+    final int count,
+    final C context,
+    final QuadTreeNearestVisitorDType<T, C> f)
+  {
+    Objects.requireNonNull(point, "Point");
+    Objects.requireNonNull(context, "Context");
+    Objects.requireNonNull(f, "Function");
+    Preconditions.checkPreconditionI(
+      count, count >= 0, c -> "Count must be non-negative");
+
+    /*
+     * Best-first search over a single queue of nodes and items ordered by
+     * distance from the point. Nodes are queued by index, and items by
+     * the negated index of their slot minus one.
+     */
+
+    final double x = point.x();
+    final double y = point.y();
+    final DistanceHeap heap = new DistanceHeap();
+    heap.add(AreaBoundsD.distanceSquared(x, y, this.node_loose, 0), null, 0);
+
+    int found = 0;
+    while (found < count && !heap.isEmpty()) {
+      final double key = heap.topKey();
+      final int top = heap.topInt();
+      heap.removeTop();
+
+      if (top < 0) {
+        final int slot = -(top + 1);
+        ++found;
+        final TreeVisitResult result = f.apply(
+          context,
+          this.itemValue(slot),
+          AreaBoundsD.unpack(this.item_bounds, slot * BOUNDS_STRIDE),
+          Math.sqrt(key));
+        if (result == TreeVisitResult.RESULT_TERMINATE) {
+          return TreeVisitResult.RESULT_TERMINATE;
+        }
+      } else {
+        this.nearestExpand(top, x, y, heap);
+      }
+    }
+    return TreeVisitResult.RESULT_CONTINUE;
+  }
+
+  @Override
+  public Optional<QuadTreeRaycastResultD<T>> raycastFirst(
+    final Ray2D ray)
+  {
+    Objects.requireNonNull(ray, "Ray");
+
+    final RaycastHit hit = new RaycastHit();
+    if (AreaBoundsD.entryDistance(ray, this.node_loose, 0) < hit.distance) {
+      this.raycastFirst(0, ray, AreaBoundsD.raycastOrder(ray), hit);
+    }
+
+    final int slot = hit.slot;
+    if (slot != NONE) {
+      return Optional.of(QuadTreeRaycastResultD.of(
+        hit.distance,
+        AreaBoundsD.unpack(this.item_bounds, slot * BOUNDS_STRIDE),
+        this.itemValue(slot)));
+    }
+    return Optional.empty();
+  }
+
+  @Override
+  public <C> TreeVisitResult raycastFirst(
+    final Ray2D ray,
+    final int count,
+    final C context,
+    final QuadTreeRaycastVisitorDType<T, C> f)
+  {
+    Objects.requireNonNull(ray, "Ray");
+    Objects.requireNonNull(context, "Context");
+    Objects.requireNonNull(f, "Function");
+    Preconditions.checkPreconditionI(
+      count, count >= 0, c -> "Count must be non-negative");
+
+    /*
+     * Best-first search, as with nearest(), ordered by the distance at
+     * which the ray enters each node and item.
+     */
+
+    final DistanceHeap heap = new DistanceHeap();
+    final double root_distance = AreaBoundsD.entryDistance(ray, this.node_loose, 0);
+    if (root_distance < Double.POSITIVE_INFINITY) {
+      heap.add(root_distance, null, 0);
+    }
+
+    int found = 0;
+    while (found < count && !heap.isEmpty()) {
+      final double key = heap.topKey();
+      final int top = heap.topInt();
+      heap.removeTop();
+
+      if (top < 0) {
+        final int slot = -(top + 1);
+        ++found;
+        final TreeVisitResult result = f.apply(
+          context,
+          this.itemValue(slot),
+          AreaBoundsD.unpack(this.item_bounds, slot * BOUNDS_STRIDE),
+          key);
+        if (result == TreeVisitResult.RESULT_TERMINATE) {
+          return TreeVisitResult.RESULT_TERMINATE;
+        }
+      } else {
+        this.raycastExpand(top, ray, heap);
+      }
+    }
+    return TreeVisitResult.RESULT_CONTINUE;
+  }
+
+  @Override
+  public void raycast(
+    final Ray2D ray,
+    final QuadTreeRaycastBufferD<T> results)
+  {
+    Objects.requireNonNull(ray, "Ray");
+    Objects.requireNonNull(results, "Results");
+    this.raycastBuffer(0, ray, results);
+  }
+
+  @Override
+  public long countContainedBy(
+    final AreaD area)
+  {
+    Objects.requireNonNull(area, "Area");
+    return this.countContaining(0, AreaBoundsD.pack(area));
+  }
+
+  @Override
+  public long countOverlapping(
+    final AreaD area)
+  {
+    Objects.requireNonNull(area, "Area");
+    return this.countOverlapping(0, AreaBoundsD.pack(area));
+  }
+
+  @Override
+  public boolean anyOverlapping(
+    final AreaD area)
+  {
+    Objects.requireNonNull(area, "Area");
+    return this.anyOverlapping(0, AreaBoundsD.pack(area));
+  }
+
+  @SuppressWarnings("unchecked")
+  private T itemValue(final int slot)
+  {
+    return (T) this.item_values[slot];
+  }
+
+  private boolean isLeaf(final int node)
+  {
+    return this.node_children[node] == NONE;
+  }
+
+  private boolean isEmptyLeaf(final int node)
+  {
+    return this.node_children[node] == NONE && this.node_items_count[node] == 0;
+  }
+
+  private int itemAllocate(
+    final T item,
+    final double[] bounds,
+    final int offset)
+  {
+    final int slot;
+    if (this.item_free != NONE) {
+      slot = this.item_free;
+      this.item_free = this.item_next[slot];
+    } else {
+      if (this.item_top == this.item_values.length) {
+        final int capacity = this.item_values.length * 2;
+        this.item_values = Arrays.copyOf(this.item_values, capacity);
+        this.item_bounds = Arrays.copyOf(this.item_bounds, capacity * BOUNDS_STRIDE);
+        this.item_node = Arrays.copyOf(this.item_node, capacity);
+        this.item_next = Arrays.copyOf(this.item_next, capacity);
+        this.item_prev = Arrays.copyOf(this.item_prev, capacity);
+      }
+      slot = this.item_top;
+      ++this.item_top;
+    }
+
+    this.item_values[slot] = item;
+    System.arraycopy(bounds, offset, this.item_bounds, slot * BOUNDS_STRIDE, BOUNDS_STRIDE);
+    this.item_node[slot] = NONE;
+    this.item_next[slot] = NONE;
+    this.item_prev[slot] = NONE;
+    return slot;
+  }
+
+  private void itemFree(final int slot)
+  {
+    this.item_values[slot] = null;
+    this.item_node[slot] = NONE;
+    this.item_prev[slot] = NONE;
+    this.item_next[slot] = this.item_free;
+    this.item_free = slot;
+  }
+
+  private void itemLink(
+    final int node,
+    final int slot)
+  {
+    final int head = this.node_items_head[node];
+    this.item_node[slot] = node;
+    this.item_prev[slot] = NONE;
+    this.item_next[slot] = head;
+    if (head != NONE) {
+      this.item_prev[head] = slot;
+    }
+    this.node_items_head[node] = slot;
+    ++this.node_items_count[node];
+    for (int current = node; current != NONE; current = this.node_parent[current]) {
+      ++this.node_subtree_count[current];
+    }
+  }
+
+  private void itemUnlink(final int slot)
+  {
+    final int node = this.item_node[slot];
+    final int prev = this.item_prev[slot];
+    final int next = this.item_next[slot];
+
+    if (prev != NONE) {
+      this.item_next[prev] = next;
+    } else {
+      this.node_items_head[node] = next;
+    }
+    if (next != NONE) {
+      this.item_prev[next] = prev;
+    }
+
+    this.item_node[slot] = NONE;
+    this.item_prev[slot] = NONE;
+    this.item_next[slot] = NONE;
+    --this.node_items_count[node];
+    for (int current = node; current != NONE; current = this.node_parent[current]) {
+      --this.node_subtree_count[current];
+    }
+  }
+
+  private void insertStep(
+    final int start,
+    final int slot)
+  {
+    int node = start;
+    while (true) {
+
+      /*
+       * If this node is a leaf, and either has room for the object or cannot
+       * be split further, insert the object directly. Otherwise, split the
+       * node and redistribute the objects it holds to the new children.
+       */
+
+      if (this.isLeaf(node)) {
+        if (this.hasCapacity(node) || !this.canSplit(node)) {
+          this.itemLink(node, slot);
+          return;
+        }
+        this.split(node);
+      }
+
+      final int child = this.childContaining(node, this.item_bounds, slot * BOUNDS_STRIDE);
+      if (child == NONE) {
+        this.itemLink(node, slot);
+        return;
+      }
+      node = child;
+    }
+  }
+
+  /**
+   * Find the child of {@code node} that can contain the item in
+   * {@code slot}. The candidate is the child whose half of the node contains
+   * the centre of the item, and the item fits if it lies within the loose
+   * bounds of that child. When the tree is not loose, this accepts exactly
+   * the items that lie within one child, and an item lying exactly on a split
+   * plane is assigned to the lower child on that axis, matching the order in
+   * which {@link QuadTreeD} tries its children.
+   */
+
+  private int childContaining(
+    final int node,
+    final double[] bounds,
+    final int offset)
+  {
+    final int child = this.node_children[node]
+      + AreaBoundsD.childIndexOfCentre(this.node_bounds, node * BOUNDS_STRIDE, bounds, offset);
+    return AreaBoundsD.contains(this.node_loose, child * BOUNDS_STRIDE, bounds, offset) ? child : NONE;
+  }
+
+  private boolean hasCapacity(final int node)
+  {
+    return this.node_items_count[node]
+      < this.config.maximumItemsPerLeaf();
+  }
+
+  private boolean canSplit(final int node)
+  {
+    if (this.node_depth[node] >= this.config.maximumDepth()) {
+      return false;
+    }
+
+    final int n = node * BOUNDS_STRIDE;
+    final double width = this.node_bounds[n + 1] - this.node_bounds[n];
+    final double height = this.node_bounds[n + 3] - this.node_bounds[n + 2];
+
+    final double min_width =
+      Math.max(0.0001, this.config.minimumQuadrantWidth());
+    final double min_height =
+      Math.max(0.0001, this.config.minimumQuadrantHeight());
+
+    return width / 2.0 >= min_width && height / 2.0 >= min_height;
+  }
+
+  private int nodeAllocateBlock()
+  {
+    if (this.node_free != NONE) {
+      final int base = this.node_free;
+      this.node_free = this.node_parent[base];
+      return base;
+    }
+
+    final int base = this.node_top;
+    final int required = base + CHILD_COUNT;
+    if (required > this.node_children.length) {
+      final int capacity = Math.max(required, this.node_children.length * 2);
+      this.node_bounds = Arrays.copyOf(this.node_bounds, capacity * BOUNDS_STRIDE);
+      this.node_loose = Arrays.copyOf(this.node_loose, capacity * BOUNDS_STRIDE);
+      this.node_children = Arrays.copyOf(this.node_children, capacity);
+      this.node_parent = Arrays.copyOf(this.node_parent, capacity);
+      this.node_depth = Arrays.copyOf(this.node_depth, capacity);
+      this.node_items_head = Arrays.copyOf(this.node_items_head, capacity);
+      this.node_items_count = Arrays.copyOf(this.node_items_count, capacity);
+      this.node_subtree_count = Arrays.copyOf(this.node_subtree_count, capacity);
+    }
+    this.node_top = required;
+    return base;
+  }
+
+  private void split(final int node)
+  {
+    Preconditions.checkPrecondition(this.canSplit(node), "Quadrant can split");
+
+    final int base = this.nodeAllocateBlock();
+    final int n = node * BOUNDS_STRIDE;
+    for (int index = 0; index < CHILD_COUNT; ++index) {
+      final int child = base + index;
+      final int c = child * BOUNDS_STRIDE;
+      AreaBoundsD.storeChild(this.node_bounds, n, index, this.node_bounds, c);
+      AreaBoundsD.storeLoose(
+        this.node_bounds, c, this.looseness, this.node_loose, n, this.node_loose, c);
+      this.node_children[child] = NONE;
+      this.node_parent[child] = node;
+      this.node_depth[child] = this.node_depth[node] + 1;
+      this.node_items_head[child] = NONE;
+      this.node_items_count[child] = 0;
+      this.node_subtree_count[child] = 0;
+    }
+
+    this.node_children[node] = base;
+    this.redistribute(node);
+  }
+
+  /**
+   * Move every object held by a (newly split) node into the child nodes
+   * that can contain them. Objects that straddle child boundaries remain in
+   * the node.
+   */
+
+  private void redistribute(final int node)
+  {
+    int slot = this.node_items_head[node];
+    while (slot != NONE) {
+      final int next = this.item_next[slot];
+      final int child = this.childContaining(node, this.item_bounds, slot * BOUNDS_STRIDE);
+      if (child != NONE) {
+        this.itemUnlink(slot);
+        this.insertStep(child, slot);
+      }
+      slot = next;
+    }
+  }
+
+  /**
+   * Attempt to turn a node back into a leaf.
+   */
+
+  private void unsplitAttempt(final int node)
+  {
+    final int base = this.node_children[node];
+    if (base != NONE) {
+      for (int index = 0; index < CHILD_COUNT; ++index) {
+        if (!this.isEmptyLeaf(base + index)) {
+          return;
+        }
+      }
+
+      this.node_children[node] = NONE;
+      this.node_parent[base] = this.node_free;
+      this.node_free = base;
+    }
+  }
+
+  /**
+   * Attempt to turn a node and as many ancestors of the node back into leaves as possible.
+   */
+
+  private void unsplitAttemptRecursive(final int node)
+  {
+    int current = node;
+    while (current != NONE) {
+      this.unsplitAttempt(current);
+      current = this.node_parent[current];
+    }
+  }
+
+  private void trimNode(final int node)
+  {
+    if (this.isLeaf(node)) {
+      this.unsplitAttemptRecursive(node);
+    } else {
+      for (int index = 0; index < CHILD_COUNT; ++index) {
+        this.trimNode(this.node_children[node] + index);
+        if (this.isLeaf(node)) {
+          return;
+        }
+      }
+    }
+  }
+
+  private <C> TreeVisitResult visitItem(
+    final int slot,
+    final C context,
+    final QuadTreeItemVisitorDType<T, C> f)
+  {
+    return f.apply(
+      context,
+      this.itemValue(slot),
+      AreaBoundsD.unpack(this.item_bounds, slot * BOUNDS_STRIDE));
+  }
+
+  private <C> TreeVisitResult areaContainingVisit(
+    final int node,
+    final double[] target,
+    final C context,
+    final QuadTreeItemVisitorDType<T, C> f)
+  {
+    if (this.isEmptyLeaf(node)) {
+      return TreeVisitResult.RESULT_CONTINUE;
+    }
+
+    if (AreaBoundsD.contains(target, 0, this.node_loose, node * BOUNDS_STRIDE)) {
+      return this.visitRecursive(node, context, f);
+    }
+
+    for (int slot = this.node_items_head[node]; slot != NONE; slot = this.item_next[slot]) {
+      if (AreaBoundsD.contains(target, 0, this.item_bounds, slot * BOUNDS_STRIDE)
+        && this.visitItem(slot, context, f) == TreeVisitResult.RESULT_TERMINATE) {
+        return TreeVisitResult.RESULT_TERMINATE;
+      }
+    }
+
+    final int base = this.node_children[node];
+    if (base != NONE) {
+      for (int index = 0; index < CHILD_COUNT; ++index) {
+        if (this.areaContainingVisit(base + index, target, context, f)
+          == TreeVisitResult.RESULT_TERMINATE) {
+          return TreeVisitResult.RESULT_TERMINATE;
+        }
+      }
+    }
+    return TreeVisitResult.RESULT_CONTINUE;
+  }
+
+  private <C> TreeVisitResult visitRecursive(
+    final int node,
+    final C context,
+    final QuadTreeItemVisitorDType<T, C> f)
+  {
+    for (int slot = this.node_items_head[node]; slot != NONE; slot = this.item_next[slot]) {
+      if (this.visitItem(slot, context, f) == TreeVisitResult.RESULT_TERMINATE) {
+        return TreeVisitResult.RESULT_TERMINATE;
+      }
+    }
+
+    final int base = this.node_children[node];
+    if (base != NONE) {
+      for (int index = 0; index < CHILD_COUNT; ++index) {
+        if (this.visitRecursive(base + index, context, f)
+          == TreeVisitResult.RESULT_TERMINATE) {
+          return TreeVisitResult.RESULT_TERMINATE;
+        }
+      }
+    }
+    return TreeVisitResult.RESULT_CONTINUE;
+  }
+
+  private <C> TreeVisitResult areaOverlappingVisit(
+    final int node,
+    final double[] target,
+    final C context,
+    final QuadTreeItemVisitorDType<T, C> f)
+  {
+    if (this.isEmptyLeaf(node)) {
+      return TreeVisitResult.RESULT_CONTINUE;
+    }
+
+    if (!AreaBoundsD.overlaps(target, 0, this.node_loose, node * BOUNDS_STRIDE)) {
+      return TreeVisitResult.RESULT_CONTINUE;
+    }
+
+    for (int slot = this.node_items_head[node]; slot != NONE; slot = this.item_next[slot]) {
+      if (AreaBoundsD.overlaps(target, 0, this.item_bounds, slot * BOUNDS_STRIDE)
+        && this.visitItem(slot, context, f) == TreeVisitResult.RESULT_TERMINATE) {
+        return TreeVisitResult.RESULT_TERMINATE;
+      }
+    }
+
+    final int base = this.node_children[node];
+    if (base != NONE) {
+      for (int index = 0; index < CHILD_COUNT; ++index) {
+        if (this.areaOverlappingVisit(base + index, target, context, f)
+          == TreeVisitResult.RESULT_TERMINATE) {
+          return TreeVisitResult.RESULT_TERMINATE;
+        }
+      }
+    }
+    return TreeVisitResult.RESULT_CONTINUE;
+  }
+
+  private <C> TreeVisitResult raycastVisit(
+    final int node,
+    final Ray2D ray,
+    final C context,
+    final QuadTreeRaycastVisitorDType<T, C> f)
+  {
+    if (this.isEmptyLeaf(node)) {
+      return TreeVisitResult.RESULT_CONTINUE;
+    }
+
+    if (!AreaBoundsD.intersects(ray, this.node_loose, node * BOUNDS_STRIDE)) {
+      return TreeVisitResult.RESULT_CONTINUE;
+    }
+
+    final double[] ib = this.item_bounds;
+    for (int slot = this.node_items_head[node]; slot != NONE; slot = this.item_next[slot]) {
+      final int i = slot * BOUNDS_STRIDE;
+      if (AreaBoundsD.intersects(ray, ib, i)) {
+        final double distance = Vectors2D.distance(
+        Vector2D.of(ib[i], ib[i + 2]),
+          ray.origin());
+        final TreeVisitResult result =
+          f.apply(context, this.itemValue(slot), AreaBoundsD.unpack(ib, i), distance);
+        if (result == TreeVisitResult.RESULT_TERMINATE) {
+          return TreeVisitResult.RESULT_TERMINATE;
+        }
+      }
+    }
+
+    final int base = this.node_children[node];
+    if (base != NONE) {
+      for (int index = 0; index < CHILD_COUNT; ++index) {
+        if (this.raycastVisit(base + index, ray, context, f)
+          == TreeVisitResult.RESULT_TERMINATE) {
+          return TreeVisitResult.RESULT_TERMINATE;
+        }
+      }
+    }
+    return TreeVisitResult.RESULT_CONTINUE;
+  }
+
+  private void nearestExpand(
+    final int node,
+    final double x,
+    final double y,
+    final DistanceHeap heap)
+  {
+    for (int slot = this.node_items_head[node]; slot != NONE; slot = this.item_next[slot]) {
+      heap.add(
+        AreaBoundsD.distanceSquared(x, y, this.item_bounds, slot * BOUNDS_STRIDE),
+        null,
+        -(slot + 1));
+    }
+
+    final int base = this.node_children[node];
+    if (base != NONE) {
+      for (int index = 0; index < CHILD_COUNT; ++index) {
+        final int child = base + index;
+        if (!this.isEmptyLeaf(child)) {
+          heap.add(
+            AreaBoundsD.distanceSquared(x, y, this.node_loose, child * BOUNDS_STRIDE),
+            null,
+            child);
+        }
+      }
+    }
+  }
+
+  private void raycastFirst(
+    final int node,
+    final Ray2D ray,
+    final int order,
+    final RaycastHit hit)
+  {
+    for (int slot = this.node_items_head[node]; slot != NONE; slot = this.item_next[slot]) {
+      final double distance =
+        AreaBoundsD.entryDistance(ray, this.item_bounds, slot * BOUNDS_STRIDE);
+      if (distance < hit.distance) {
+        hit.distance = distance;
+        hit.slot = slot;
+      }
+    }
+
+    /*
+     * Visit the children nearest the ray origin first, so that the hits
+     * found there can rule out the children further along the ray.
+     */
+
+    final int base = this.node_children[node];
+    if (base != NONE) {
+      for (int index = 0; index < CHILD_COUNT; ++index) {
+        final int child = base + (index ^ order);
+        if (!this.isEmptyLeaf(child)) {
+          final double distance =
+            AreaBoundsD.entryDistance(ray, this.node_loose, child * BOUNDS_STRIDE);
+          if (distance < hit.distance) {
+            this.raycastFirst(child, ray, order, hit);
+          }
+        }
+      }
+    }
+  }
+
+  private void raycastExpand(
+    final int node,
+    final Ray2D ray,
+    final DistanceHeap heap)
+  {
+    for (int slot = this.node_items_head[node]; slot != NONE; slot = this.item_next[slot]) {
+      final double distance =
+        AreaBoundsD.entryDistance(ray, this.item_bounds, slot * BOUNDS_STRIDE);
+      if (distance < Double.POSITIVE_INFINITY) {
+        heap.add(distance, null, -(slot + 1));
+      }
+    }
+
+    final int base = this.node_children[node];
+    if (base != NONE) {
+      for (int index = 0; index < CHILD_COUNT; ++index) {
+        final int child = base + index;
+        if (!this.isEmptyLeaf(child)) {
+          final double distance =
+            AreaBoundsD.entryDistance(ray, this.node_loose, child * BOUNDS_STRIDE);
+          if (distance < Double.POSITIVE_INFINITY) {
+            heap.add(distance, null, child);
+          }
+        }
+      }
+    }
+  }
+
+  private void raycastBuffer(
+    final int node,
+    final Ray2D ray,
+    final QuadTreeRaycastBufferD<T> results)
+  {
+    if (this.isEmptyLeaf(node)) {
+      return;
+    }
+
+    if (!AreaBoundsD.intersects(ray, this.node_loose, node * BOUNDS_STRIDE)) {
+      return;
+    }
+
+    final double[] ib = this.item_bounds;
+    for (int slot = this.node_items_head[node]; slot != NONE; slot = this.item_next[slot]) {
+      final int o = slot * BOUNDS_STRIDE;
+      final double distance = AreaBoundsD.entryDistance(ray, ib, o);
+      if (distance < Double.POSITIVE_INFINITY) {
+        results.add(
+          this.itemValue(slot),
+          distance,
+          ib[o],
+          ib[o + 1],
+          ib[o + 2],
+          ib[o + 3]);
+      }
+    }
+
+    final int base = this.node_children[node];
+    if (base != NONE) {
+      for (int index = 0; index < CHILD_COUNT; ++index) {
+        this.raycastBuffer(base + index, ray, results);
+      }
+    }
+  }
+
+  private long countContaining(
+    final int node,
+    final double[] target)
+  {
+    if (this.node_subtree_count[node] == 0) {
+      return 0L;
+    }
+
+    /*
+     * If the target area completely contains this node, then it contains
+     * every object held by this node and its descendants.
+     */
+
+    final int n = node * BOUNDS_STRIDE;
+    if (AreaBoundsD.contains(target, 0, this.node_loose, n)) {
+      return (long) this.node_subtree_count[node];
+    }
+    if (!AreaBoundsD.touches(target, 0, this.node_loose, n)) {
+      return 0L;
+    }
+
+    long count = 0L;
+    for (int slot = this.node_items_head[node]; slot != NONE; slot = this.item_next[slot]) {
+      if (AreaBoundsD.contains(target, 0, this.item_bounds, slot * BOUNDS_STRIDE)) {
+        ++count;
+      }
+    }
+
+    final int base = this.node_children[node];
+    if (base != NONE) {
+      for (int index = 0; index < CHILD_COUNT; ++index) {
+        count += this.countContaining(base + index, target);
+      }
+    }
+    return count;
+  }
+
+  private long countOverlapping(
+    final int node,
+    final double[] target)
+  {
+    final int n = node * BOUNDS_STRIDE;
+    if (this.node_subtree_count[node] == 0) {
+      return 0L;
+    }
+    if (!AreaBoundsD.overlaps(target, 0, this.node_loose, n)) {
+      return 0L;
+    }
+    if (AreaBoundsD.overlapsAllWithin(target, 0, this.node_loose, n)) {
+      return (long) this.node_subtree_count[node];
+    }
+
+    long count = 0L;
+    for (int slot = this.node_items_head[node]; slot != NONE; slot = this.item_next[slot]) {
+      if (AreaBoundsD.overlaps(target, 0, this.item_bounds, slot * BOUNDS_STRIDE)) {
+        ++count;
+      }
+    }
+
+    final int base = this.node_children[node];
+    if (base != NONE) {
+      for (int index = 0; index < CHILD_COUNT; ++index) {
+        count += this.countOverlapping(base + index, target);
+      }
+    }
+    return count;
+  }
+
+  private boolean anyOverlapping(
+    final int node,
+    final double[] target)
+  {
+    final int n = node * BOUNDS_STRIDE;
+    if (this.node_subtree_count[node] == 0) {
+      return false;
+    }
+    if (!AreaBoundsD.overlaps(target, 0, this.node_loose, n)) {
+      return false;
+    }
+    if (AreaBoundsD.overlapsAllWithin(target, 0, this.node_loose, n)) {
+      return true;
+    }
+
+    for (int slot = this.node_items_head[node]; slot != NONE; slot = this.item_next[slot]) {
+      if (AreaBoundsD.overlaps(target, 0, this.item_bounds, slot * BOUNDS_STRIDE)) {
+        return true;
+      }
+    }
+
+    final int base = this.node_children[node];
+    if (base != NONE) {
+      for (int index = 0; index < CHILD_COUNT; ++index) {
+        if (this.anyOverlapping(base + index, target)) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  private <C> TreeVisitResult iterateQuadrantsNode(
+    final C context,
+    final QuadTreeQuadrantIterationDType<T, C> f,
+    final int node,
+    final long depth)
+  {
+    switch (f.apply(context, new Quadrant(node), depth)) {
+      case RESULT_CONTINUE: {
+        final int base = this.node_children[node];
+        if (base != NONE) {
+          for (int index = 0; index < CHILD_COUNT; ++index) {
+            final TreeVisitResult r = this.iterateQuadrantsNode(
+              context, f, base + index, Math.addExact(depth, 1L));
+            if (r == TreeVisitResult.RESULT_TERMINATE) {
+              return TreeVisitResult.RESULT_TERMINATE;
+            }
+          }
+        }
+        return TreeVisitResult.RESULT_CONTINUE;
+      }
+      case RESULT_TERMINATE:
+        return TreeVisitResult.RESULT_TERMINATE;
+    }
+
+    throw new UnreachableCodeException();
+  }
+
+  /**
+   * The nodes of a tree being built by {@link #insertAll(Map)}. The
+   * objects held by each node are allocated consecutive slots.
+   */
+
+  private final class BulkNodes implements BulkLoader.NodesType<Integer>
+  {
+    private final Object[] values;
+    private final double[] bounds;
+
+    private BulkNodes(
+      final Object[] in_values,
+      final double[] in_bounds)
+    {
+      this.values = in_values;
+      this.bounds = in_bounds;
+    }
+
+    @Override
+    public boolean splitFor(
+      final Integer node,
+      final int count)
+    {
+      final QuadTreeFlatD<T> tree = QuadTreeFlatD.this;
+      if (count > tree.config.maximumItemsPerLeaf()
+        && tree.canSplit(node.intValue())) {
+        tree.split(node.intValue());
+        return true;
+      }
+      return false;
+    }
+
+    @Override
+    public int childIndexContaining(
+      final Integer node,
+      final int source)
+    {
+      final QuadTreeFlatD<T> tree = QuadTreeFlatD.this;
+      final int parent = node.intValue();
+      final int child = tree.childContaining(parent, this.bounds, source * BOUNDS_STRIDE);
+      return child == NONE ? NONE : child - tree.node_children[parent];
+    }
+
+    @Override
+    public Integer child(
+      final Integer node,
+      final int index)
+    {
+      return Integer.valueOf(QuadTreeFlatD.this.node_children[node.intValue()] + index);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public void hold(
+      final Integer node,
+      final int source)
+    {
+      final QuadTreeFlatD<T> tree = QuadTreeFlatD.this;
+      final T item = (T) this.values[source];
+      final int slot = tree.itemAllocate(item, this.bounds, source * BOUNDS_STRIDE);
+      tree.item_slots.put(item, slot);
+      tree.itemLink(node.intValue(), slot);
+    }
+  }
+
+  /**
+   * The nearest item slot found so far by a first-hit raycast.
+   */
+
+  private static final class RaycastHit
+  {
+    private double distance;
+    private int slot;
+
+    RaycastHit()
+    {
+      this.distance = Double.POSITIVE_INFINITY;
+      this.slot = NONE;
+    }
+  }
+
+  /**
+   * A view of a single node, created when quadrants are exposed through
+   * {@link #iterateQuadrants(Object, QuadTreeQuadrantIterationDType)}.
+   */
+
+  private final class Quadrant implements QuadTreeQuadrantDType<T>
+  {
+    private final int node;
+
+    Quadrant(final int in_node)
+    {
+      this.node = in_node;
+    }
+
+    @Override
+    public Map<T, AreaD> objects()
+    {
+      final QuadTreeFlatD<T> tree = QuadTreeFlatD.this;
+      final Reference2ReferenceOpenHashMap<T, AreaD> objects =
+        new Reference2ReferenceOpenHashMap<>(tree.node_items_count[this.node]);
+      for (int slot = tree.node_items_head[this.node]; slot != NONE; slot = tree.item_next[slot]) {
+        objects.put(
+          tree.itemValue(slot),
+          AreaBoundsD.unpack(tree.item_bounds, slot * BOUNDS_STRIDE));
+      }
+      return Reference2ReferenceMaps.unmodifiable(objects);
+    }
+
+    @Override
+    public AreaD area()
+    {
+      return AreaBoundsD.unpack(QuadTreeFlatD.this.node_loose, this.node * BOUNDS_STRIDE);
+    }
+  }
+}
@@ -20,22 +20,24 @@ import com.io7m.jaffirm.core.Invariants;
 import com.io7m.jaffirm.core.Preconditions;
 import com.io7m.jregions.core.unparameterized.areas.AreaI;
 import com.io7m.jregions.core.unparameterized.areas.AreaXYSplitI;
-import com.io7m.jregions.core.unparameterized.areas.AreasI;
 import com.io7m.jspatial.api.Ray2D;
 import com.io7m.jspatial.api.TreeVisitResult;
 import com.io7m.jspatial.api.quadtrees.QuadTreeConfigurationI;
 import com.io7m.jspatial.api.quadtrees.QuadTreeIType;
+import com.io7m.jspatial.api.quadtrees.QuadTreeItemVisitorIType;
+import com.io7m.jspatial.api.quadtrees.QuadTreeNearestVisitorIType;
 import com.io7m.jspatial.api.quadtrees.QuadTreeQuadrantIType;
 import com.io7m.jspatial.api.quadtrees.QuadTreeQuadrantIterationIType;
+import com.io7m.jspatial.api.quadtrees.QuadTreeRaycastBufferI;
 import com.io7m.jspatial.api.quadtrees.QuadTreeRaycastResultI;
+import com.io7m.jspatial.api.quadtrees.QuadTreeRaycastVisitorIType;
 import com.io7m.jtensors.core.unparameterized.vectors.Vector2D;
 import com.io7m.jtensors.core.unparameterized.vectors.Vectors2D;
 import com.io7m.junreachable.UnreachableCodeException;
-import it.unimi.dsi.fastutil.objects.ObjectIterator;
-import it.unimi.dsi.fastutil.objects.ObjectSet;
 import it.unimi.dsi.fastutil.objects.Reference2ReferenceMaps;
 import it.unimi.dsi.fastutil.objects.Reference2ReferenceOpenHashMap;
 
+import java.util.Arrays;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Objects;
@@ -52,14 +54,16 @@ import java.util.function.BiFunction;
 
 public final class QuadTreeI<T> implements QuadTreeIType<T>
 {
-  private final Reference2ReferenceOpenHashMap<T, AreaI> objects;
+  private static final int INITIAL_ITEMS = 4;
+
+  private final Reference2ReferenceOpenHashMap<T, Item<T>> objects;
   private final QuadTreeConfigurationI config;
   private Quadrant root;
 
   private QuadTreeI(final QuadTreeConfigurationI in_config)
   {
     this.config = Objects.requireNonNull(in_config, "Configuration");
-    this.root = new Quadrant(null, in_config.area());
+    this.root = new Quadrant(null, in_config.area(), 0);
     this.objects = new Reference2ReferenceOpenHashMap<>();
   }
 
@@ -101,13 +105,35 @@ public final class QuadTreeI<T> implements QuadTreeIType<T>
     }
 
     final QuadTreeI<?> that = (QuadTreeI<?>) o;
-    return this.objects.equals(that.objects);
+    if (this.objects.size() != that.objects.size()) {
+      return false;
+    }
+
+    for (final Item<T> e : this.objects.values()) {
+      if (!Objects.equals(e.area(), that.boundsOf(e.value))) {
+        return false;
+      }
+    }
+    return true;
   }
 
   @Override
   public int hashCode()
   {
-    return this.objects.hashCode();
+    int hash = 0;
+    for (final Item<T> e : this.objects.values()) {
+      hash += System.identityHashCode(e.value) ^ e.area().hashCode();
+    }
+    return hash;
+  }
+
+  private AreaI boundsOf(final Object item)
+  {
+    final Item<T> existing = this.objects.get(item);
+    if (existing != null) {
+      return existing.area();
+    }
+    return null;
   }
 
   @Override
@@ -124,15 +150,68 @@ public final class QuadTreeI<T> implements QuadTreeIType<T>
     Objects.requireNonNull(item, "Item");
     Objects.requireNonNull(item_bounds, "Bounds");
 
-    if (this.objects.containsKey(item)) {
-      this.remove(item);
-      Invariants.checkInvariant(
-        item,
-        !this.objects.containsKey(item),
-        x -> "Item must not be in tree");
+    /*
+     * If the object is already in the tree, start from the node that
+     * currently holds it rather than descending from the root.
+     */
+
+    final Item<T> existing = this.objects.get(item);
+    if (existing != null) {
+      return existing.owner.reinsert(existing, new Item<>(item, item_bounds));
+    }
+
+    return this.root.insert(new Item<>(item, item_bounds));
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public long insertAll(
+    final Map<T, AreaI> items)
+  {
+    Objects.requireNonNull(items, "Items");
+
+    final int[] root_bounds = this.root.bounds;
+    final Item<T>[] entries = (Item<T>[]) new Item<?>[items.size()];
+    final long[] codes = new long[entries.length];
+    int count = 0;
+    for (final Map.Entry<T, AreaI> entry : items.entrySet()) {
+      final Item<T> item = new Item<>(
+        Objects.requireNonNull(entry.getKey(), "Item"),
+        Objects.requireNonNull(entry.getValue(), "Bounds"));
+      entries[count] = item;
+      codes[count] = AreaBoundsI.mortonCode(root_bounds, item.bounds, 0);
+      ++count;
+    }
+
+    final int[] order = MortonCodes.sort(codes);
+
+    /*
+     * A tree that already holds objects is updated one object at a time,
+     * in Morton order so that consecutive insertions visit nearby nodes.
+     */
+
+    if (!this.objects.isEmpty()) {
+      long inserted = 0L;
+      for (final int index : order) {
+        final Item<T> item = entries[index];
+        if (this.insert(item.value, item.area())) {
+          ++inserted;
+        }
+      }
+      return inserted;
     }
 
-    return this.root.insert(item, item_bounds);
+    /*
+     * Otherwise, discard the objects that cannot fit in the tree and build
+     * the tree from the remaining objects in a single pass.
+     */
+
+    final int fitting = BulkLoader.retain(
+      order, index -> AreaBoundsI.contains(root_bounds, 0, entries[index].bounds, 0));
+    this.objects.ensureCapacity(fitting);
+    this.root = new Quadrant(null, this.root.area, 0);
+    BulkLoader.load(new BulkNodes(entries), 4, this.root, order, fitting);
+    return (long) fitting;
   }
 
   @Override
@@ -145,13 +224,19 @@ public final class QuadTreeI<T> implements QuadTreeIType<T>
   public boolean remove(final T item)
   {
     Objects.requireNonNull(item, "Item");
-    return this.root.remove(item);
+
+    final Item<T> existing = this.objects.get(item);
+    if (existing != null) {
+      existing.owner.removeObject(existing);
+      return true;
+    }
+    return false;
   }
 
   @Override
   public void clear()
   {
-    this.root = new Quadrant(null, this.root.area);
+    this.root = new Quadrant(null, this.root.area, 0);
     this.objects.clear();
   }
 
@@ -161,10 +246,8 @@ public final class QuadTreeI<T> implements QuadTreeIType<T>
     Objects.requireNonNull(f, "Function");
 
     final QuadTreeIType<U> qt = new QuadTreeI<>(this.config);
-    for (final Map.Entry<T, AreaI> es : this.objects.entrySet()) {
-      final T item = es.getKey();
-      final AreaI item_area = es.getValue();
-      qt.insert(f.apply(item, item_area), es.getValue());
+    for (final Item<T> e : this.objects.values()) {
+      qt.insert(f.apply(e.value, e.area()), e.area());
     }
     return qt;
   }
@@ -176,7 +259,7 @@ public final class QuadTreeI<T> implements QuadTreeIType<T>
   {
     Objects.requireNonNull(context, "Context");
     Objects.requireNonNull(f, "Function");
-    this.root.iterateQuadrants(context, f, 0);
+    this.root.iterateQuadrants(context, f, 0L);
   }
 
   @Override
@@ -184,9 +267,30 @@ public final class QuadTreeI<T> implements QuadTreeIType<T>
   {
     Objects.requireNonNull(item, "Item");
 
-    return this.objects.computeIfAbsent(item, i -> {
-      throw new NoSuchElementException(i.toString());
-    });
+    final Item<T> existing = this.objects.get(item);
+    if (existing == null) {
+      throw new NoSuchElementException(item.toString());
+    }
+    return existing.area();
+  }
+
+  private static <T> TreeVisitResult collectItem(
+    final Set<T> items,
+    final T item,
+    final AreaI bounds)
+  {
+    items.add(item);
+    return TreeVisitResult.RESULT_CONTINUE;
+  }
+
+  private static <T> TreeVisitResult collectRaycastResult(
+    final SortedSet<QuadTreeRaycastResultI<T>> items,
+    final T item,
+    final AreaI bounds,
+    final double distance)
+  {
+    items.add(QuadTreeRaycastResultI.of(distance, bounds, item));
+    return TreeVisitResult.RESULT_CONTINUE;
   }
 
   @Override
@@ -196,7 +300,7 @@ public final class QuadTreeI<T> implements QuadTreeIType<T>
   {
     Objects.requireNonNull(area, "Area");
     Objects.requireNonNull(items, "Items");
-    this.root.areaContaining(area, items);
+    this.root.areaContainingVisit(AreaBoundsI.pack(area), items, QuadTreeI::collectItem);
   }
 
   @Override
@@ -206,7 +310,7 @@ public final class QuadTreeI<T> implements QuadTreeIType<T>
   {
     Objects.requireNonNull(area, "Area");
     Objects.requireNonNull(items, "Items");
-    this.root.areaOverlapping(area, items);
+    this.root.areaOverlappingVisit(AreaBoundsI.pack(area), items, QuadTreeI::collectItem);
   }
 
   @Override
@@ -216,15 +320,312 @@ public final class QuadTreeI<T> implements QuadTreeIType<T>
   {
     Objects.requireNonNull(ray, "Ray");
     Objects.requireNonNull(items, "Items");
-    this.root.raycast(ray, items);
+    this.root.raycastVisit(ray, items, QuadTreeI::collectRaycastResult);
+  }
+
+  @Override
+  public <C> TreeVisitResult containedBy(
+    final AreaI area,
+    final C context,
+    final QuadTreeItemVisitorIType<T, C> f)
+  {
+    Objects.requireNonNull(area, "Area");
+    Objects.requireNonNull(context, "Context");
+    Objects.requireNonNull(f, "Function");
+    return this.root.areaContainingVisit(AreaBoundsI.pack(area), context, f);
+  }
+
+  @Override
+  public <C> TreeVisitResult overlappedBy(
+    final AreaI area,
+    final C context,
+    final QuadTreeItemVisitorIType<T, C> f)
+  {
+    Objects.requireNonNull(area, "Area");
+    Objects.requireNonNull(context, "Context");
+    Objects.requireNonNull(f, "Function");
+    return this.root.areaOverlappingVisit(AreaBoundsI.pack(area), context, f);
+  }
+
+  @Override
+  public <C> TreeVisitResult raycast(
+    final Ray2D ray,
+    final C context,
+    final QuadTreeRaycastVisitorIType<T, C> f)
+  {
+    Objects.requireNonNull(ray, "Ray");
+    Objects.requireNonNull(context, "Context");
+    Objects.requireNonNull(f, "Function");
+    return this.root.raycastVisit(ray, context, f);
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public <C> TreeVisitResult nearest(
+    final Vector2D point,
+    final int count,
+    final C context,
+    final QuadTreeNearestVisitorIType<T, C> f)
+  {
+    Objects.requireNonNull(point, "Point");
+    Objects.requireNonNull(context, "Context");
+    Objects.requireNonNull(f, "Function");
+    Preconditions.checkPreconditionI(
+      count, count >= 0, c -> "Count must be non-negative");
+
+    /*
+     * Best-first search: nodes and items share a single queue ordered by
+     * their distance from the point. An item can only reach the front of
+     * the queue once every node that could contain something nearer has
+     * been expanded, so items leave the queue in order of distance.
+     */
+
+    final double x = point.x();
+    final double y = point.y();
+    final DistanceHeap heap = new DistanceHeap();
+    heap.add(AreaBoundsI.distanceSquared(x, y, this.root.bounds, 0), this.root, 0);
+
+    int found = 0;
+    while (found < count && !heap.isEmpty()) {
+      final double key = heap.topKey();
+      final Object top = heap.topObject();
+      heap.removeTop();
+
+      if (top instanceof Item) {
+        final Item<T> item = (Item<T>) top;
+        ++found;
+        if (f.apply(context, item.value, item.area(), Math.sqrt(key))
+          == TreeVisitResult.RESULT_TERMINATE) {
+          return TreeVisitResult.RESULT_TERMINATE;
+        }
+      } else {
+        ((Quadrant) top).nearestExpand(x, y, heap);
+      }
+    }
+    return TreeVisitResult.RESULT_CONTINUE;
+  }
+
+  @Override
+  public Optional<QuadTreeRaycastResultI<T>> raycastFirst(
+    final Ray2D ray)
+  {
+    Objects.requireNonNull(ray, "Ray");
+
+    final RaycastHit<T> hit = new RaycastHit<>();
+    if (AreaBoundsD.entryDistance(ray, this.root.ray_bounds, 0) < hit.distance) {
+      this.root.raycastFirst(ray, AreaBoundsI.raycastOrder(ray), hit);
+    }
+
+    final Item<T> item = hit.item;
+    if (item != null) {
+      return Optional.of(QuadTreeRaycastResultI.of(hit.distance, item.area(), item.value));
+    }
+    return Optional.empty();
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public <C> TreeVisitResult raycastFirst(
+    final Ray2D ray,
+    final int count,
+    final C context,
+    final QuadTreeRaycastVisitorIType<T, C> f)
+  {
+    Objects.requireNonNull(ray, "Ray");
+    Objects.requireNonNull(context, "Context");
+    Objects.requireNonNull(f, "Function");
+    Preconditions.checkPreconditionI(
+      count, count >= 0, c -> "Count must be non-negative");
+
+    /*
+     * Best-first search, as with nearest(), ordered by the distance at
+     * which the ray enters each node and item. Nodes that the ray enters
+     * beyond the last object passed to the visitor are never expanded.
+     */
+
+    final DistanceHeap heap = new DistanceHeap();
+    final double root_distance = AreaBoundsD.entryDistance(ray, this.root.ray_bounds, 0);
+    if (root_distance < Double.POSITIVE_INFINITY) {
+      heap.add(root_distance, this.root, 0);
+    }
+
+    int found = 0;
+    while (found < count && !heap.isEmpty()) {
+      final double key = heap.topKey();
+      final Object top = heap.topObject();
+      heap.removeTop();
+
+      if (top instanceof Item) {
+        final Item<T> item = (Item<T>) top;
+        ++found;
+        if (f.apply(context, item.value, item.area(), key)
+          == TreeVisitResult.RESULT_TERMINATE) {
+          return TreeVisitResult.RESULT_TERMINATE;
+        }
+      } else {
+        ((Quadrant) top).raycastExpand(ray, heap);
+      }
+    }
+    return TreeVisitResult.RESULT_CONTINUE;
+  }
+
+  @Override
+  public void raycast(
+    final Ray2D ray,
+    final QuadTreeRaycastBufferI<T> results)
+  {
+    Objects.requireNonNull(ray, "Ray");
+    Objects.requireNonNull(results, "Results");
+    this.root.raycastBuffer(ray, results);
+  }
+
+  @Override
+  public long countContainedBy(
+    final AreaI area)
+  {
+    Objects.requireNonNull(area, "Area");
+    return this.root.countContaining(AreaBoundsI.pack(area));
+  }
+
+  @Override
+  public long countOverlapping(
+    final AreaI area)
+  {
+    Objects.requireNonNull(area, "Area");
+    return this.root.countOverlapping(AreaBoundsI.pack(area));
+  }
+
+  @Override
+  public boolean anyOverlapping(
+    final AreaI area)
+  {
+    Objects.requireNonNull(area, "Area");
+    return this.root.anyOverlapping(AreaBoundsI.pack(area));
+  }
+
+  /**
+   * The nodes of a tree being built by {@link #insertAll(Map)}.
+   */
+
+  private final class BulkNodes implements BulkLoader.NodesType<Quadrant>
+  {
+    private final Item<T>[] entries;
+
+    private BulkNodes(
+      final Item<T>[] in_entries)
+    {
+      this.entries = in_entries;
+    }
+
+    @Override
+    public boolean splitFor(
+      final Quadrant node,
+      final int count)
+    {
+      if (count > QuadTreeI.this.config.maximumItemsPerLeaf()
+        && node.canSplit()) {
+        node.split();
+        return true;
+      }
+      return false;
+    }
+
+    @Override
+    public int childIndexContaining(
+      final Quadrant node,
+      final int source)
+    {
+      return node.childIndexContaining(this.entries[source].bounds);
+    }
+
+    @Override
+    public Quadrant child(
+      final Quadrant node,
+      final int index)
+    {
+      return node.child(index);
+    }
+
+    @Override
+    public void hold(
+      final Quadrant node,
+      final int source)
+    {
+      node.insertObject(this.entries[source]);
+    }
+  }
+
+  /**
+   * An object held by the tree, along with its bounds and the node that
+   * currently holds it.
+   */
+
+  private static final class Item<T>
+  {
+    private final T value;
+    private final int[] bounds;
+    private QuadTreeI<T>.Quadrant owner;
+    private int index;
+
+    private Item(
+      final T in_value,
+      final AreaI in_area)
+    {
+      this.value = in_value;
+      this.bounds = AreaBoundsI.pack(in_area);
+      this.index = -1;
+    }
+
+    private AreaI area()
+    {
+      return AreaBoundsI.unpack(this.bounds, 0);
+    }
+  }
+
+  /**
+   * The nearest object found so far by a first-hit raycast.
+   */
+
+  private static final class RaycastHit<T>
+  {
+    private double distance;
+    private Item<T> item;
+
+    private RaycastHit()
+    {
+      this.distance = Double.POSITIVE_INFINITY;
+    }
   }
 
   protected final class Quadrant implements QuadTreeQuadrantIType<T>
   {
     private final AreaI area;
-    private final Reference2ReferenceOpenHashMap<T, AreaI> quadrant_objects;
+    private final int[] bounds;
+    private final double[] ray_bounds;
     private final Quadrant parent;
-    private final Map<T, AreaI> quadrant_objects_view;
+    private final int node_depth;
+
+    /*
+     * The objects held directly by this node. The bounds of object {@code i}
+     * are packed into {@code item_bounds} at offset
+     * {@code i * AreaBoundsI.STRIDE} so that queries can test objects
+     * without touching the objects themselves. The same bounds are held
+     * as {@code double} values in {@code item_ray_bounds}, so that rays
+     * can be tested without converting each coordinate on every test. The
+     * arrays are allocated on the first insertion, as most nodes in a tree
+     * are empty.
+     */
+
+    private Item<?>[] item_values;
+    private int[] item_bounds;
+    private double[] item_ray_bounds;
+    private int item_count;
+
+    /*
+     * The number of objects held by this node and all of its descendants.
+     */
+
+    private int subtree_count;
     private Quadrant x0y0;
     private Quadrant x0y1;
     private Quadrant x1y0;
@@ -232,31 +633,31 @@ public final class QuadTreeI<T> implements QuadTreeIType<T>
 
     protected Quadrant(
       final Quadrant in_parent,
-      final AreaI in_area)
+      final AreaI in_area,
+      final int in_depth)
     {
       this.parent = in_parent;
+      this.node_depth = in_depth;
       this.area = Objects.requireNonNull(in_area, "Area");
-      this.quadrant_objects = new Reference2ReferenceOpenHashMap<>();
-      this.quadrant_objects_view =
-        Reference2ReferenceMaps.unmodifiable(this.quadrant_objects);
+      this.bounds = AreaBoundsI.pack(in_area);
+      this.ray_bounds = new double[AreaBoundsI.STRIDE];
+      AreaBoundsI.storeDouble(this.bounds, 0, this.ray_bounds, 0);
     }
 
     private boolean insert(
-      final T item,
-      final AreaI item_bounds)
+      final Item<T> item)
     {
       Preconditions.checkPrecondition(
-        item,
-        !QuadTreeI.this.objects.containsKey(item),
+        item.value,
+        !QuadTreeI.this.objects.containsKey(item.value),
         x -> "Object must not be in tree");
 
-      return AreasI.contains(this.area, item_bounds)
-        && this.insertStep(item, item_bounds);
+      return AreaBoundsI.contains(this.bounds, 0, item.bounds, 0)
+        && this.insertStep(item);
     }
 
     private boolean insertStep(
-      final T item,
-      final AreaI item_bounds)
+      final Item<T> item)
     {
       /*
        * The object can fit in this node, but perhaps it is possible to fit it
@@ -264,20 +665,16 @@ public final class QuadTreeI<T> implements QuadTreeIType<T>
        */
 
       /*
-       * If this node is a leaf, and is large enough to split, do so.
+       * If this node is a leaf, and either has room for the object or cannot
+       * be split further, insert the object directly. Otherwise, split the
+       * node and redistribute the objects it holds to the new children.
        */
 
       if (this.isLeaf()) {
-        if (this.canSplit()) {
-          this.split();
-        } else {
-
-          /*
-           * The node is a leaf, but cannot be split further. Insert directly.
-           */
-
-          return this.insertObject(item, item_bounds);
+        if (this.hasCapacity() || !this.canSplit()) {
+          return this.insertObject(item);
         }
+        this.split();
       }
 
       /*
@@ -286,35 +683,116 @@ public final class QuadTreeI<T> implements QuadTreeIType<T>
 
       Invariants.checkInvariant(!this.isLeaf(), "Node is not a leaf");
 
-      if (AreasI.contains(this.x0y0.area, item_bounds)) {
-        return this.x0y0.insertStep(item, item_bounds);
-      }
-      if (AreasI.contains(this.x1y0.area, item_bounds)) {
-        return this.x1y0.insertStep(item, item_bounds);
-      }
-      if (AreasI.contains(this.x0y1.area, item_bounds)) {
-        return this.x0y1.insertStep(item, item_bounds);
-      }
-      if (AreasI.contains(this.x1y1.area, item_bounds)) {
-        return this.x1y1.insertStep(item, item_bounds);
+      final Quadrant child = this.childContaining(item.bounds);
+      if (child != null) {
+        return child.insertStep(item);
       }
 
       /*
        * Otherwise, insert the object into this node.
        */
 
-      return this.insertObject(item, item_bounds);
+      return this.insertObject(item);
+    }
+
+    private Quadrant childContaining(
+      final int[] target)
+    {
+      final int index = this.childIndexContaining(target);
+      return index < 0 ? null : this.child(index);
+    }
+
+    /**
+     * @return The index of the first child that can contain {@code target},
+     * or {@code -1} if no child can contain it
+     */
+
+    private int childIndexContaining(
+      final int[] target)
+    {
+      for (int index = 0; index < 4; ++index) {
+        if (AreaBoundsI.contains(this.child(index).bounds, 0, target, 0)) {
+          return index;
+        }
+      }
+      return -1;
     }
 
     private boolean insertObject(
-      final T item,
-      final AreaI item_bounds)
+      final Item<T> item)
     {
-      QuadTreeI.this.objects.put(item, item_bounds);
-      this.quadrant_objects.put(item, item_bounds);
+      if (this.item_values == null) {
+        this.item_values = new Item<?>[INITIAL_ITEMS];
+        this.item_bounds = new int[INITIAL_ITEMS * AreaBoundsI.STRIDE];
+        this.item_ray_bounds = new double[INITIAL_ITEMS * AreaBoundsI.STRIDE];
+      } else if (this.item_count == this.item_values.length) {
+        final int capacity = this.item_values.length * 2;
+        this.item_values = Arrays.copyOf(this.item_values, capacity);
+        this.item_bounds =
+          Arrays.copyOf(this.item_bounds, capacity * AreaBoundsI.STRIDE);
+        this.item_ray_bounds =
+          Arrays.copyOf(this.item_ray_bounds, capacity * AreaBoundsI.STRIDE);
+      }
+
+      final int index = this.item_count;
+      this.item_values[index] = item;
+      System.arraycopy(
+        item.bounds,
+        0,
+        this.item_bounds,
+        index * AreaBoundsI.STRIDE,
+        AreaBoundsI.STRIDE);
+      AreaBoundsI.storeDouble(
+        item.bounds, 0, this.item_ray_bounds, index * AreaBoundsI.STRIDE);
+      this.item_count = index + 1;
+      for (Quadrant node = this; node != null; node = node.parent) {
+        ++node.subtree_count;
+      }
+
+      item.owner = this;
+      item.index = index;
+      QuadTreeI.this.objects.put(item.value, item);
       return true;
     }
 
+    @SuppressWarnings("unchecked")
+    private Item<T> itemAt(final int index)
+    {
+      return (Item<T>) this.item_values[index];
+    }
+
+    /**
+     * Remove the object at {@code index} from this node, moving the last
+     * object held by this node into the vacated slot.
+     */
+
+    private void removeIndex(final int index)
+    {
+      final int last = this.item_count - 1;
+      if (index != last) {
+        final Item<T> moved = this.itemAt(last);
+        this.item_values[index] = moved;
+        System.arraycopy(
+          this.item_bounds,
+          last * AreaBoundsI.STRIDE,
+          this.item_bounds,
+          index * AreaBoundsI.STRIDE,
+          AreaBoundsI.STRIDE);
+        System.arraycopy(
+          this.item_ray_bounds,
+          last * AreaBoundsI.STRIDE,
+          this.item_ray_bounds,
+          index * AreaBoundsI.STRIDE,
+          AreaBoundsI.STRIDE);
+        moved.index = index;
+      }
+      this.item_values[last] = null;
+      this.item_count = last;
+      for (Quadrant node = this; node != null; node = node.parent) {
+        --node.subtree_count;
+      }
+    }
+
     private void split()
     {
       Preconditions.checkPrecondition(this.canSplit(), "Quadrant can split");
@@ -322,17 +800,47 @@ public final class QuadTreeI<T> implements QuadTreeIType<T>
       final Optional<AreaXYSplitI<AreaI>> q_opt = QuadrantsI.subdivide(this.area);
       if (q_opt.isPresent()) {
         final AreaXYSplitI<AreaI> q = q_opt.get();
-        this.x0y0 = new Quadrant(this, q.x0y0());
-        this.x0y1 = new Quadrant(this, q.x0y1());
-        this.x1y0 = new Quadrant(this, q.x1y0());
-        this.x1y1 = new Quadrant(this, q.x1y1());
+        this.x0y0 = new Quadrant(this, q.x0y0(), this.node_depth + 1);
+        this.x0y1 = new Quadrant(this, q.x0y1(), this.node_depth + 1);
+        this.x1y0 = new Quadrant(this, q.x1y0(), this.node_depth + 1);
+        this.x1y1 = new Quadrant(this, q.x1y1(), this.node_depth + 1);
       } else {
         throw new UnreachableCodeException();
       }
+
+      this.redistribute();
+    }
+
+    /**
+     * Move every object held by this (newly split) node into the child nodes
+     * that can contain them. Objects that straddle child boundaries remain in
+     * this node.
+     */
+
+    private void redistribute()
+    {
+      for (int index = this.item_count - 1; index >= 0; --index) {
+        final Item<T> item = this.itemAt(index);
+        final Quadrant child = this.childContaining(item.bounds);
+        if (child != null) {
+          this.removeIndex(index);
+          child.insertStep(item);
+        }
+      }
+    }
+
+    private boolean hasCapacity()
+    {
+      return this.item_count
+        < QuadTreeI.this.config.maximumItemsPerLeaf();
     }
 
     private boolean canSplit()
     {
+      if (this.node_depth >= QuadTreeI.this.config.maximumDepth()) {
+        return false;
+      }
+
       final int width = this.area.sizeX();
       final int height = this.area.sizeY();
 
@@ -352,246 +860,438 @@ public final class QuadTreeI<T> implements QuadTreeIType<T>
       return this.x0y0 == null;
     }
 
-    private boolean remove(final T item)
+    private void removeObject(final Item<T> item)
     {
-      if (!QuadTreeI.this.objects.containsKey(item)) {
-        return false;
+      this.removeIndex(item.index);
+      QuadTreeI.this.objects.remove(item.value);
+      if (QuadTreeI.this.config.trimOnRemove()) {
+        this.unsplitAttemptRecursive();
       }
-
-      final AreaI bounds = QuadTreeI.this.objects.get(item);
-      return this.removeStep(item, bounds);
     }
 
-    private boolean removeStep(
-      final T item,
-      final AreaI item_bounds)
+    /**
+     * Move an object held by this node to new bounds. The object is inserted
+     * starting from the nearest ancestor of this node that can contain the
+     * new bounds, so objects that move only a short distance avoid a full
+     * descent from the root.
+     */
+
+    private boolean reinsert(
+      final Item<T> existing,
+      final Item<T> item)
     {
-      if (this.quadrant_objects.containsKey(item)) {
-        this.quadrant_objects.remove(item);
-        QuadTreeI.this.objects.remove(item);
-        if (QuadTreeI.this.config.trimOnRemove()) {
-          this.unsplitAttemptRecursive();
-        }
-        return true;
+      Quadrant start = this;
+      while (start != null
+        && !AreaBoundsI.contains(start.bounds, 0, item.bounds, 0)) {
+        start = start.parent;
       }
 
-      Invariants.checkInvariant(!this.isLeaf(), "Node cannot be a leaf");
+      this.removeIndex(existing.index);
+      QuadTreeI.this.objects.remove(existing.value);
 
-      if (AreasI.contains(this.x0y0.area, item_bounds)) {
-        return this.x0y0.removeStep(item, item_bounds);
+      final boolean inserted = start != null && start.insertStep(item);
+      if (QuadTreeI.this.config.trimOnRemove()) {
+        this.unsplitAttemptRecursive();
       }
-      if (AreasI.contains(this.x1y0.area, item_bounds)) {
-        return this.x1y0.removeStep(item, item_bounds);
+      return inserted;
+    }
+
+    /**
+     * @return The child at {@code index}, in the same order used when
+     * inserting objects
+     */
+
+    private Quadrant child(final int index)
+    {
+      switch (index) {
+        case 0:
+          return this.x0y0;
+        case 1:
+          return this.x1y0;
+        case 2:
+          return this.x0y1;
+        case 3:
+          return this.x1y1;
+        default:
+          throw new UnreachableCodeException();
       }
-      if (AreasI.contains(this.x0y1.area, item_bounds)) {
-        return this.x0y1.removeStep(item, item_bounds);
+    }
+
+    private <C> TreeVisitResult areaContainingVisit(
+      final int[] target_area,
+      final C context,
+      final QuadTreeItemVisitorIType<T, C> f)
+    {
+      if (this.isLeaf() && this.item_count == 0) {
+        return TreeVisitResult.RESULT_CONTINUE;
       }
-      if (AreasI.contains(this.x1y1.area, item_bounds)) {
-        return this.x1y1.removeStep(item, item_bounds);
+
+      if (AreaBoundsI.contains(target_area, 0, this.bounds, 0)) {
+        return this.visitRecursive(context, f);
       }
 
-      /*
-       * The object must be in the tree, according to remove(). Therefore it
-       * must be in this node, or one of the child quadrants.
-       */
+      final int[] b = this.item_bounds;
+      for (int index = 0; index < this.item_count; ++index) {
+        if (AreaBoundsI.contains(
+          target_area, 0, b, index * AreaBoundsI.STRIDE)) {
+          final Item<T> item = this.itemAt(index);
+          if (f.apply(context, item.value, item.area())
+            == TreeVisitResult.RESULT_TERMINATE) {
+            return TreeVisitResult.RESULT_TERMINATE;
+          }
+        }
+      }
 
-      throw new UnreachableCodeException();
+      if (!this.isLeaf()) {
+        for (int index = 0; index < 4; ++index) {
+          if (this.child(index).areaContainingVisit(target_area, context, f)
+            == TreeVisitResult.RESULT_TERMINATE) {
+            return TreeVisitResult.RESULT_TERMINATE;
+          }
+        }
+      }
+      return TreeVisitResult.RESULT_CONTINUE;
     }
 
-    private void areaContaining(
-      final AreaI target_area,
-      final Set<T> items)
+    private <C> TreeVisitResult visitRecursive(
+      final C context,
+      final QuadTreeItemVisitorIType<T, C> f)
     {
-      /*
-       * Avoid performing pointless containment checks.
-       */
+      for (int index = 0; index < this.item_count; ++index) {
+        final Item<T> item = this.itemAt(index);
+        if (f.apply(context, item.value, item.area())
+          == TreeVisitResult.RESULT_TERMINATE) {
+          return TreeVisitResult.RESULT_TERMINATE;
+        }
+      }
 
-      if (this.isLeaf() && this.quadrant_objects.isEmpty()) {
-        return;
+      if (!this.isLeaf()) {
+        for (int index = 0; index < 4; ++index) {
+          if (this.child(index).visitRecursive(context, f)
+            == TreeVisitResult.RESULT_TERMINATE) {
+            return TreeVisitResult.RESULT_TERMINATE;
+          }
+        }
       }
+      return TreeVisitResult.RESULT_CONTINUE;
+    }
 
-      /*
-       * If {@code target_area} completely contains this quadrant, collect
-       * everything in this quadrant and all children of this quadrant.
-       */
+    private <C> TreeVisitResult areaOverlappingVisit(
+      final int[] target_area,
+      final C context,
+      final QuadTreeItemVisitorIType<T, C> f)
+    {
+      if (this.isLeaf() && this.item_count == 0) {
+        return TreeVisitResult.RESULT_CONTINUE;
+      }
 
-      if (AreasI.contains(target_area, this.area)) {
-        this.collectRecursive(items);
+      if (!AreaBoundsI.overlaps(target_area, 0, this.bounds, 0)) {
+        return TreeVisitResult.RESULT_CONTINUE;
       }
 
-      /*
-       * Otherwise, {@code target_area} may be overlapping this quadrant and
-       * therefore some items may still be contained within {@code target_area}.
-       */
+      final int[] b = this.item_bounds;
+      for (int index = 0; index < this.item_count; ++index) {
+        if (AreaBoundsI.overlaps(
+          target_area, 0, b, index * AreaBoundsI.STRIDE)) {
+          final Item<T> item = this.itemAt(index);
+          if (f.apply(context, item.value, item.area())
+            == TreeVisitResult.RESULT_TERMINATE) {
+            return TreeVisitResult.RESULT_TERMINATE;
+          }
+        }
+      }
+
+      if (!this.isLeaf()) {
+        for (int index = 0; index < 4; ++index) {
+          if (this.child(index).areaOverlappingVisit(target_area, context, f)
+            == TreeVisitResult.RESULT_TERMINATE) {
+            return TreeVisitResult.RESULT_TERMINATE;
+          }
+        }
+      }
+      return TreeVisitResult.RESULT_CONTINUE;
+    }
 
-      final ObjectSet<Map.Entry<T, AreaI>> entries =
-        this.quadrant_objects.entrySet();
-      final ObjectIterator<Map.Entry<T, AreaI>> iter =
-        entries.iterator();
+    private <C> TreeVisitResult raycastVisit(
+      final Ray2D ray,
+      final C context,
+      final QuadTreeRaycastVisitorIType<T, C> f)
+    {
+      if (this.isLeaf() && this.item_count == 0) {
+        return TreeVisitResult.RESULT_CONTINUE;
+      }
 
-      while (iter.hasNext()) {
-        final Map.Entry<T, AreaI> entry = iter.next();
-        final T item = entry.getKey();
-        final AreaI item_area = entry.getValue();
+      if (!AreaBoundsD.intersects(ray, this.ray_bounds, 0)) {
+        return TreeVisitResult.RESULT_CONTINUE;
+      }
 
-        if (AreasI.contains(target_area, item_area)) {
-          items.add(item);
+      final double[] b = this.item_ray_bounds;
+      for (int index = 0; index < this.item_count; ++index) {
+        final int offset = index * AreaBoundsI.STRIDE;
+        if (AreaBoundsD.intersects(ray, b, offset)) {
+          final Item<T> item = this.itemAt(index);
+          final double distance = Vectors2D.distance(
+            Vector2D.of(b[offset], b[offset + 2]),
+            ray.origin());
+          if (f.apply(context, item.value, item.area(), distance)
+            == TreeVisitResult.RESULT_TERMINATE) {
+            return TreeVisitResult.RESULT_TERMINATE;
+          }
         }
       }
 
       if (!this.isLeaf()) {
-        this.x0y0.areaContaining(target_area, items);
-        this.x0y1.areaContaining(target_area, items);
-        this.x1y0.areaContaining(target_area, items);
-        this.x1y1.areaContaining(target_area, items);
+        for (int index = 0; index < 4; ++index) {
+          if (this.child(index).raycastVisit(ray, context, f)
+            == TreeVisitResult.RESULT_TERMINATE) {
+            return TreeVisitResult.RESULT_TERMINATE;
+          }
+        }
       }
+      return TreeVisitResult.RESULT_CONTINUE;
     }
 
-    private void collectRecursive(final Set<T> items)
+    private void nearestExpand(
+      final double x,
+      final double y,
+      final DistanceHeap heap)
     {
-      items.addAll(this.quadrant_objects.keySet());
+      final int[] b = this.item_bounds;
+      for (int index = 0; index < this.item_count; ++index) {
+        heap.add(
+          AreaBoundsI.distanceSquared(x, y, b, index * AreaBoundsI.STRIDE),
+          this.item_values[index],
+          0);
+      }
+
       if (!this.isLeaf()) {
-        this.x0y0.collectRecursive(items);
-        this.x0y1.collectRecursive(items);
-        this.x1y0.collectRecursive(items);
-        this.x1y1.collectRecursive(items);
+        for (int index = 0; index < 4; ++index) {
+          final Quadrant c = this.child(index);
+          if (!c.isLeaf() || c.item_count > 0) {
+            heap.add(AreaBoundsI.distanceSquared(x, y, c.bounds, 0), c, 0);
+          }
+        }
       }
     }
 
-    private void areaOverlapping(
-      final AreaI target_area,
-      final Set<T> items)
+    private void raycastFirst(
+      final Ray2D ray,
+      final int order,
+      final RaycastHit<T> hit)
     {
-      /*
-       * Avoid performing pointless overlap checks.
-       */
-
-      if (this.isLeaf() && this.quadrant_objects.isEmpty()) {
-        return;
+      final double[] b = this.item_ray_bounds;
+      for (int index = 0; index < this.item_count; ++index) {
+        final double distance =
+          AreaBoundsD.entryDistance(ray, b, index * AreaBoundsI.STRIDE);
+        if (distance < hit.distance) {
+          hit.distance = distance;
+          hit.item = this.itemAt(index);
+        }
       }
 
       /*
-       * If {@code target_area} overlaps this quadrant, test each object
-       * against {@code target_area}.
+       * Visit the children nearest the ray origin first, so that the hits
+       * found there can rule out the children further along the ray.
        */
 
-      if (AreasI.overlaps(target_area, this.area)) {
-        final ObjectSet<Map.Entry<T, AreaI>> entries =
-          this.quadrant_objects.entrySet();
-        final ObjectIterator<Map.Entry<T, AreaI>> iter =
-          entries.iterator();
-
-        while (iter.hasNext()) {
-          final Map.Entry<T, AreaI> entry = iter.next();
-          final T item = entry.getKey();
-          final AreaI item_area = entry.getValue();
-
-          if (AreasI.overlaps(target_area, item_area)) {
-            items.add(item);
+      if (!this.isLeaf()) {
+        for (int index = 0; index < 4; ++index) {
+          final Quadrant c = this.child(index ^ order);
+          if (!c.isLeaf() || c.item_count > 0) {
+            if (AreaBoundsD.entryDistance(ray, c.ray_bounds, 0) < hit.distance) {
+              c.raycastFirst(ray, order, hit);
+            }
           }
         }
+      }
+    }
 
-        if (!this.isLeaf()) {
-          this.x0y0.areaOverlapping(target_area, items);
-          this.x1y0.areaOverlapping(target_area, items);
-          this.x0y1.areaOverlapping(target_area, items);
-          this.x1y1.areaOverlapping(target_area, items);
+    private void raycastExpand(
+      final Ray2D ray,
+      final DistanceHeap heap)
+    {
+      final double[] b = this.item_ray_bounds;
+      for (int index = 0; index < this.item_count; ++index) {
+        final double distance =
+          AreaBoundsD.entryDistance(ray, b, index * AreaBoundsI.STRIDE);
+        if (distance < Double.POSITIVE_INFINITY) {
+          heap.add(distance, this.item_values[index], 0);
+        }
+      }
+
+      if (!this.isLeaf()) {
+        for (int index = 0; index < 4; ++index) {
+          final Quadrant c = this.child(index);
+          if (!c.isLeaf() || c.item_count > 0) {
+            final double distance = AreaBoundsD.entryDistance(ray, c.ray_bounds, 0);
+            if (distance < Double.POSITIVE_INFINITY) {
+              heap.add(distance, c, 0);
+            }
+          }
         }
       }
     }
 
-    private void raycast(
+    private void raycastBuffer(
       final Ray2D ray,
-      final SortedSet<QuadTreeRaycastResultI<T>> items)
+      final QuadTreeRaycastBufferI<T> results)
     {
-      /*
-       * Avoid performing pointless ray checks.
-       */
+      if (this.isLeaf() && this.item_count == 0) {
+        return;
+      }
 
-      if (this.isLeaf() && this.quadrant_objects.isEmpty()) {
+      if (!AreaBoundsD.intersects(ray, this.ray_bounds, 0)) {
         return;
       }
 
-      /*
-       * Check whether or not the ray intersects the quadrant.
-       */
+      final int[] b = this.item_bounds;
+      final double[] rb = this.item_ray_bounds;
+      for (int index = 0; index < this.item_count; ++index) {
+        final int offset = index * AreaBoundsI.STRIDE;
+        final double distance = AreaBoundsD.entryDistance(ray, rb, offset);
+        if (distance < Double.POSITIVE_INFINITY) {
+          results.add(
+            this.itemAt(index).value,
+            distance,
+            b[offset],
+            b[offset + 1],
+            b[offset + 2],
+            b[offset + 3]);
+        }
+      }
+
+      if (!this.isLeaf()) {
+        for (int index = 0; index < 4; ++index) {
+          this.child(index).raycastBuffer(ray, results);
+        }
+      }
+    }
 
-      final double x0 = (double) this.area.minimumX();
-      final double x1 = (double) this.area.maximumX();
-      final double y0 = (double) this.area.minimumY();
-      final double y1 = (double) this.area.maximumY();
+    private long countContaining(
+      final int[] target_area)
+    {
+      if (this.subtree_count == 0) {
+        return 0L;
+      }
 
       /*
-       * If the ray intersects the quadrant, check each item in the quadrant
-       * against the ray.
+       * If the target area completely contains this node, then it contains
+       * every object held by this node and its descendants.
        */
 
-      if (ray.intersectsArea(x0, y0, x1, y1)) {
-        final ObjectSet<Map.Entry<T, AreaI>> entries =
-          this.quadrant_objects.entrySet();
-        final ObjectIterator<Map.Entry<T, AreaI>> iter =
-          entries.iterator();
-
-        while (iter.hasNext()) {
-          final Map.Entry<T, AreaI> entry = iter.next();
-          final T item = entry.getKey();
-          final AreaI item_area = entry.getValue();
-
-          final double item_x0 = (double) item_area.minimumX();
-          final double item_x1 = (double) item_area.maximumX();
-          final double item_y0 = (double) item_area.minimumY();
-          final double item_y1 = (double) item_area.maximumY();
-
-          if (ray.intersectsArea(item_x0, item_y0, item_x1, item_y1)) {
-            final double distance = Vectors2D.distance(
-              Vector2D.of(item_x0, item_y0),
-              ray.origin());
-            final QuadTreeRaycastResultI<T> result =
-              QuadTreeRaycastResultI.of(distance, item_area, item);
-            items.add(result);
-          }
+      if (AreaBoundsI.contains(target_area, 0, this.bounds, 0)) {
+        return (long) this.subtree_count;
+      }
+      if (!AreaBoundsI.touches(target_area, 0, this.bounds, 0)) {
+        return 0L;
+      }
+
+      long count = 0L;
+      final int[] b = this.item_bounds;
+      for (int index = 0; index < this.item_count; ++index) {
+        if (AreaBoundsI.contains(target_area, 0, b, index * AreaBoundsI.STRIDE)) {
+          ++count;
         }
+      }
 
-        if (!this.isLeaf()) {
-          this.x0y0.raycast(ray, items);
-          this.x0y1.raycast(ray, items);
-          this.x1y0.raycast(ray, items);
-          this.x1y1.raycast(ray, items);
+      if (!this.isLeaf()) {
+        for (int index = 0; index < 4; ++index) {
+          count += this.child(index).countContaining(target_area);
         }
       }
+      return count;
+    }
+
+    private long countOverlapping(
+      final int[] target_area)
+    {
+      if (this.subtree_count == 0) {
+        return 0L;
+      }
+      if (!AreaBoundsI.overlaps(target_area, 0, this.bounds, 0)) {
+        return 0L;
+      }
+      if (AreaBoundsI.overlapsAllWithin(target_area, 0, this.bounds, 0)) {
+        return (long) this.subtree_count;
+      }
+
+      long count = 0L;
+      final int[] b = this.item_bounds;
+      for (int index = 0; index < this.item_count; ++index) {
+        if (AreaBoundsI.overlaps(target_area, 0, b, index * AreaBoundsI.STRIDE)) {
+          ++count;
+        }
+      }
+
+      if (!this.isLeaf()) {
+        for (int index = 0; index < 4; ++index) {
+          count += this.child(index).countOverlapping(target_area);
+        }
+      }
+      return count;
+    }
+
+    private boolean anyOverlapping(
+      final int[] target_area)
+    {
+      if (this.subtree_count == 0) {
+        return false;
+      }
+      if (!AreaBoundsI.overlaps(target_area, 0, this.bounds, 0)) {
+        return false;
+      }
+      if (AreaBoundsI.overlapsAllWithin(target_area, 0, this.bounds, 0)) {
+        return true;
+      }
+
+      final int[] b = this.item_bounds;
+      for (int index = 0; index < this.item_count; ++index) {
+        if (AreaBoundsI.overlaps(target_area, 0, b, index * AreaBoundsI.STRIDE)) {
+          return true;
+        }
+      }
+
+      if (!this.isLeaf()) {
+        for (int index = 0; index < 4; ++index) {
+          if (this.child(index).anyOverlapping(target_area)) {
+            return true;
+          }
+        }
+      }
+      return false;
     }
 
     private <C> TreeVisitResult iterateQuadrants(
       final C context,
       final QuadTreeQuadrantIterationIType<T, C> f,
-      final int depth)
+      final long depth)
     {
       switch (f.apply(context, this, depth)) {
         case RESULT_CONTINUE: {
           if (!this.isLeaf()) {
             switch (this.x0y0.iterateQuadrants(
-              context, f, Math.addExact(depth, 1))) {
+              context, f, Math.addExact(depth, 1L))) {
               case RESULT_CONTINUE:
                 break;
               case RESULT_TERMINATE:
                 return TreeVisitResult.RESULT_TERMINATE;
             }
             switch (this.x1y0.iterateQuadrants(
-              context, f, Math.addExact(depth, 1))) {
+              context, f, Math.addExact(depth, 1L))) {
               case RESULT_CONTINUE:
                 break;
               case RESULT_TERMINATE:
                 return TreeVisitResult.RESULT_TERMINATE;
             }
             switch (this.x0y1.iterateQuadrants(
-              context, f, Math.addExact(depth, 1))) {
+              context, f, Math.addExact(depth, 1L))) {
               case RESULT_CONTINUE:
                 break;
               case RESULT_TERMINATE:
                 return TreeVisitResult.RESULT_TERMINATE;
             }
             switch (this.x1y1.iterateQuadrants(
-              context, f, Math.addExact(depth, 1))) {
+              context, f, Math.addExact(depth, 1L))) {
               case RESULT_CONTINUE:
                 break;
               case RESULT_TERMINATE:
@@ -610,7 +1310,13 @@ public final class QuadTreeI<T> implements QuadTreeIType<T>
     @Override
     public Map<T, AreaI> objects()
     {
-      return this.quadrant_objects_view;
+      final Reference2ReferenceOpenHashMap<T, AreaI> m =
+        new Reference2ReferenceOpenHashMap<>(this.item_count);
+      for (int index = 0; index < this.item_count; ++index) {
+        final Item<T> item = this.itemAt(index);
+        m.put(item.value, item.area());
+      }
+      return Reference2ReferenceMaps.unmodifiable(m);
     }
 
     @Override
@@ -657,7 +1363,7 @@ public final class QuadTreeI<T> implements QuadTreeIType<T>
 
     private boolean unsplitCanPrune()
     {
-      return this.isLeaf() && this.quadrant_objects.isEmpty();
+      return this.isLeaf() && this.item_count == 0;
     }
 
     private void trim()
@@ -20,22 +20,24 @@ import com.io7m.jaffirm.core.Invariants;
 import com.io7m.jaffirm.core.Preconditions;
 import com.io7m.jregions.core.unparameterized.areas.AreaL;
 import com.io7m.jregions.core.unparameterized.areas.AreaXYSplitL;
-import com.io7m.jregions.core.unparameterized.areas.AreasL;
 import com.io7m.jspatial.api.Ray2D;
 import com.io7m.jspatial.api.TreeVisitResult;
 import com.io7m.jspatial.api.quadtrees.QuadTreeConfigurationL;
+import com.io7m.jspatial.api.quadtrees.QuadTreeItemVisitorLType;
+import com.io7m.jspatial.api.quadtrees.QuadTreeNearestVisitorLType;
 import com.io7m.jspatial.api.quadtrees.QuadTreeLType;
 import com.io7m.jspatial.api.quadtrees.QuadTreeQuadrantIterationLType;
 import com.io7m.jspatial.api.quadtrees.QuadTreeQuadrantLType;
+import com.io7m.jspatial.api.quadtrees.QuadTreeRaycastBufferL;
 import com.io7m.jspatial.api.quadtrees.QuadTreeRaycastResultL;
+import com.io7m.jspatial.api.quadtrees.QuadTreeRaycastVisitorLType;
 import com.io7m.jtensors.core.unparameterized.vectors.Vector2D;
 import com.io7m.jtensors.core.unparameterized.vectors.Vectors2D;
 import com.io7m.junreachable.UnreachableCodeException;
-import it.unimi.dsi.fastutil.objects.ObjectIterator;
-import it.unimi.dsi.fastutil.objects.ObjectSet;
 import it.unimi.dsi.fastutil.objects.Reference2ReferenceMaps;
 import it.unimi.dsi.fastutil.objects.Reference2ReferenceOpenHashMap;
 
+import java.util.Arrays;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Objects;
@@ -52,14 +54,16 @@ import java.util.function.BiFunction;
 
 public final class QuadTreeL<T> implements QuadTreeLType<T>
 {
-  private final Reference2ReferenceOpenHashMap<T, AreaL> objects;
+  private static final int INITIAL_ITEMS = 4;
+
+  private final Reference2ReferenceOpenHashMap<T, Item<T>> objects;
   private final QuadTreeConfigurationL config;
   private Quadrant root;
 
   private QuadTreeL(final QuadTreeConfigurationL in_config)
   {
     this.config = Objects.requireNonNull(in_config, "Configuration");
-    this.root = new Quadrant(null, in_config.area());
+    this.root = new Quadrant(null, in_config.area(), 0);
     this.objects = new Reference2ReferenceOpenHashMap<>();
   }
 
@@ -101,13 +105,35 @@ public final class QuadTreeL<T> implements QuadTreeLType<T>
     }
 
     final QuadTreeL<?> that = (QuadTreeL<?>) o;
-    return this.objects.equals(that.objects);
+    if (this.objects.size() != that.objects.size()) {
+      return false;
+    }
+
+    for (final Item<T> e : this.objects.values()) {
+      if (!Objects.equals(e.area(), that.boundsOf(e.value))) {
+        return false;
+      }
+    }
+    return true;
   }
 
   @Override
   public int hashCode()
   {
-    return this.objects.hashCode();
+    int hash = 0;
+    for (final Item<T> e : this.objects.values()) {
+      hash += System.identityHashCode(e.value) ^ e.area().hashCode();
+    }
+    return hash;
+  }
+
+  private AreaL boundsOf(final Object item)
+  {
+    final Item<T> existing = this.objects.get(item);
+    if (existing != null) {
+      return existing.area();
+    }
+    return null;
   }
 
   @Override
@@ -124,15 +150,68 @@ public final class QuadTreeL<T> implements QuadTreeLType<T>
     Objects.requireNonNull(item, "Item");
     Objects.requireNonNull(item_bounds, "Bounds");
 
-    if (this.objects.containsKey(item)) {
-      this.remove(item);
-      Invariants.checkInvariant(
-        item,
-        !this.objects.containsKey(item),
-        x -> "Item must not be in tree");
+    /*
+     * If the object is already in the tree, start from the node that
+     * currently holds it rather than descending from the root.
+     */
+
+    final Item<T> existing = this.objects.get(item);
+    if (existing != null) {
+      return existing.owner.reinsert(existing, new Item<>(item, item_bounds));
+    }
+
+    return this.root.insert(new Item<>(item, item_bounds));
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public long insertAll(
+    final Map<T, AreaL> items)
+  {
+    Objects.requireNonNull(items, "Items");
+
+    final long[] root_bounds = this.root.bounds;
+    final Item<T>[] entries = (Item<T>[]) new Item<?>[items.size()];
+    final long[] codes = new long[entries.length];
+    int count = 0;
+    for (final Map.Entry<T, AreaL> entry : items.entrySet()) {
+      final Item<T> item = new Item<>(
+        Objects.requireNonNull(entry.getKey(), "Item"),
+        Objects.requireNonNull(entry.getValue(), "Bounds"));
+      entries[count] = item;
+      codes[count] = AreaBoundsL.mortonCode(root_bounds, item.bounds, 0);
+      ++count;
+    }
+
+    final int[] order = MortonCodes.sort(codes);
+
+    /*
+     * A tree that already holds objects is updated one object at a time,
+     * in Morton order so that consecutive insertions visit nearby nodes.
+     */
+
+    if (!this.objects.isEmpty()) {
+      long inserted = 0L;
+      for (final int index : order) {
+        final Item<T> item = entries[index];
+        if (this.insert(item.value, item.area())) {
+          ++inserted;
+        }
+      }
+      return inserted;
     }
 
-    return this.root.insert(item, item_bounds);
+    /*
+     * Otherwise, discard the objects that cannot fit in the tree and build
+     * the tree from the remaining objects in a single pass.
+     */
+
+    final int fitting = BulkLoader.retain(
+      order, index -> AreaBoundsL.contains(root_bounds, 0, entries[index].bounds, 0));
+    this.objects.ensureCapacity(fitting);
+    this.root = new Quadrant(null, this.root.area, 0);
+    BulkLoader.load(new BulkNodes(entries), 4, this.root, order, fitting);
+    return (long) fitting;
   }
 
   @Override
@@ -145,13 +224,19 @@ public final class QuadTreeL<T> implements QuadTreeLType<T>
   public boolean remove(final T item)
   {
     Objects.requireNonNull(item, "Item");
-    return this.root.remove(item);
+
+    final Item<T> existing = this.objects.get(item);
+    if (existing != null) {
+      existing.owner.removeObject(existing);
+      return true;
+    }
+    return false;
   }
 
   @Override
   public void clear()
   {
-    this.root = new Quadrant(null, this.root.area);
+    this.root = new Quadrant(null, this.root.area, 0);
     this.objects.clear();
   }
 
@@ -161,10 +246,8 @@ public final class QuadTreeL<T> implements QuadTreeLType<T>
     Objects.requireNonNull(f, "Function");
 
     final QuadTreeLType<U> qt = new QuadTreeL<>(this.config);
-    for (final Map.Entry<T, AreaL> es : this.objects.entrySet()) {
-      final T item = es.getKey();
-      final AreaL item_area = es.getValue();
-      qt.insert(f.apply(item, item_area), es.getValue());
+    for (final Item<T> e : this.objects.values()) {
+      qt.insert(f.apply(e.value, e.area()), e.area());
     }
     return qt;
   }
@@ -184,9 +267,30 @@ public final class QuadTreeL<T> implements QuadTreeLType<T>
   {
     Objects.requireNonNull(item, "Item");
 
-    return this.objects.computeIfAbsent(item, i -> {
-      throw new NoSuchElementException(i.toString());
-    });
+    final Item<T> existing = this.objects.get(item);
+    if (existing == null) {
+      throw new NoSuchElementException(item.toString());
+    }
+    return existing.area();
+  }
+
+  private static <T> TreeVisitResult collectItem(
+    final Set<T> items,
+    final T item,
+    final AreaL bounds)
+  {
+    items.add(item);
+    return TreeVisitResult.RESULT_CONTINUE;
+  }
+
+  private static <T> TreeVisitResult collectRaycastResult(
+    final SortedSet<QuadTreeRaycastResultL<T>> items,
+    final T item,
+    final AreaL bounds,
+    final double distance)
+  {
+    items.add(QuadTreeRaycastResultL.of(distance, bounds, item));
+    return TreeVisitResult.RESULT_CONTINUE;
   }
 
   @Override
@@ -196,7 +300,7 @@ public final class QuadTreeL<T> implements QuadTreeLType<T>
   {
     Objects.requireNonNull(area, "Area");
     Objects.requireNonNull(items, "Items");
-    this.root.areaContaining(area, items);
+    this.root.areaContainingVisit(AreaBoundsL.pack(area), items, QuadTreeL::collectItem);
   }
 
   @Override
@@ -206,7 +310,7 @@ public final class QuadTreeL<T> implements QuadTreeLType<T>
   {
     Objects.requireNonNull(area, "Area");
     Objects.requireNonNull(items, "Items");
-    this.root.areaOverlapping(area, items);
+    this.root.areaOverlappingVisit(AreaBoundsL.pack(area), items, QuadTreeL::collectItem);
   }
 
   @Override
@@ -216,15 +320,312 @@ public final class QuadTreeL<T> implements QuadTreeLType<T>
   {
     Objects.requireNonNull(ray, "Ray");
     Objects.requireNonNull(items, "Items");
-    this.root.raycast(ray, items);
+    this.root.raycastVisit(ray, items, QuadTreeL::collectRaycastResult);
+  }
+
+  @Override
+  public <C> TreeVisitResult containedBy(
+    final AreaL area,
+    final C context,
+    final QuadTreeItemVisitorLType<T, C> f)
+  {
+    Objects.requireNonNull(area, "Area");
+    Objects.requireNonNull(context, "Context");
+    Objects.requireNonNull(f, "Function");
+    return this.root.areaContainingVisit(AreaBoundsL.pack(area), context, f);
+  }
+
+  @Override
+  public <C> TreeVisitResult overlappedBy(
+    final AreaL area,
+    final C context,
+    final QuadTreeItemVisitorLType<T, C> f)
+  {
+    Objects.requireNonNull(area, "Area");
+    Objects.requireNonNull(context, "Context");
+    Objects.requireNonNull(f, "Function");
+    return this.root.areaOverlappingVisit(AreaBoundsL.pack(area), context, f);
+  }
+
+  @Override
+  public <C> TreeVisitResult raycast(
+    final Ray2D ray,
+    final C context,
+    final QuadTreeRaycastVisitorLType<T, C> f)
+  {
+    Objects.requireNonNull(ray, "Ray");
+    Objects.requireNonNull(context, "Context");
+    Objects.requireNonNull(f, "Function");
+    return this.root.raycastVisit(ray, context, f);
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public <C> TreeVisitResult nearest(
+    final Vector2D point,
+    final int count,
+    final C context,
+    final QuadTreeNearestVisitorLType<T, C> f)
+  {
+    Objects.requireNonNull(point, "Point");
+    Objects.requireNonNull(context, "Context");
+    Objects.requireNonNull(f, "Function");
+    Preconditions.checkPreconditionI(
+      count, count >= 0, c -> "Count must be non-negative");
+
+    /*
+     * Best-first search: nodes and items share a single queue ordered by
+     * their distance from the point. An item can only reach the front of
+     * the queue once every node that could contain something nearer has
+     * been expanded, so items leave the queue in order of distance.
+     */
+
+    final double x = point.x();
+    final double y = point.y();
+    final DistanceHeap heap = new DistanceHeap();
+    heap.add(AreaBoundsL.distanceSquared(x, y, this.root.bounds, 0), this.root, 0);
+
+    int found = 0;
+    while (found < count && !heap.isEmpty()) {
+      final double key = heap.topKey();
+      final Object top = heap.topObject();
+      heap.removeTop();
+
+      if (top instanceof Item) {
+        final Item<T> item = (Item<T>) top;
+        ++found;
+        if (f.apply(context, item.value, item.area(), Math.sqrt(key))
+          == TreeVisitResult.RESULT_TERMINATE) {
+          return TreeVisitResult.RESULT_TERMINATE;
+        }
+      } else {
+        ((Quadrant) top).nearestExpand(x, y, heap);
+      }
+    }
+    return TreeVisitResult.RESULT_CONTINUE;
+  }
+
+  @Override
+  public Optional<QuadTreeRaycastResultL<T>> raycastFirst(
+    final Ray2D ray)
+  {
+    Objects.requireNonNull(ray, "Ray");
+
+    final RaycastHit<T> hit = new RaycastHit<>();
+    if (AreaBoundsD.entryDistance(ray, this.root.ray_bounds, 0) < hit.distance) {
+      this.root.raycastFirst(ray, AreaBoundsL.raycastOrder(ray), hit);
+    }
+
+    final Item<T> item = hit.item;
+    if (item != null) {
+      return Optional.of(QuadTreeRaycastResultL.of(hit.distance, item.area(), item.value));
+    }
+    return Optional.empty();
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public <C> TreeVisitResult raycastFirst(
+    final Ray2D ray,
+    final int count,
+    final C context,
+    final QuadTreeRaycastVisitorLType<T, C> f)
+  {
+    Objects.requireNonNull(ray, "Ray");
+    Objects.requireNonNull(context, "Context");
+    Objects.requireNonNull(f, "Function");
+    Preconditions.checkPreconditionI(
+      count, count >= 0, c -> "Count must be non-negative");
+
+    /*
+     * Best-first search, as with nearest(), ordered by the distance at
+     * which the ray enters each node and item. Nodes that the ray enters
+     * beyond the last object passed to the visitor are never expanded.
+     */
+
+    final DistanceHeap heap = new DistanceHeap();
+    final double root_distance = AreaBoundsD.entryDistance(ray, this.root.ray_bounds, 0);
+    if (root_distance < Double.POSITIVE_INFINITY) {
+      heap.add(root_distance, this.root, 0);
+    }
+
+    int found = 0;
+    while (found < count && !heap.isEmpty()) {
+      final double key = heap.topKey();
+      final Object top = heap.topObject();
+      heap.removeTop();
+
+      if (top instanceof Item) {
+        final Item<T> item = (Item<T>) top;
+        ++found;
+        if (f.apply(context, item.value, item.area(), key)
+          == TreeVisitResult.RESULT_TERMINATE) {
+          return TreeVisitResult.RESULT_TERMINATE;
+        }
+      } else {
+        ((Quadrant) top).raycastExpand(ray, heap);
+      }
+    }
+    return TreeVisitResult.RESULT_CONTINUE;
+  }
+
+  @Override
+  public void raycast(
+    final Ray2D ray,
+    final QuadTreeRaycastBufferL<T> results)
+  {
+    Objects.requireNonNull(ray, "Ray");
+    Objects.requireNonNull(results, "Results");
+    this.root.raycastBuffer(ray, results);
+  }
+
+  @Override
+  public long countContainedBy(
+    final AreaL area)
+  {
+    Objects.requireNonNull(area, "Area");
+    return this.root.countContaining(AreaBoundsL.pack(area));
+  }
+
+  @Override
+  public long countOverlapping(
+    final AreaL area)
+  {
+    Objects.requireNonNull(area, "Area");
+    return this.root.countOverlapping(AreaBoundsL.pack(area));
+  }
+
+  @Override
+  public boolean anyOverlapping(
+    final AreaL area)
+  {
+    Objects.requireNonNull(area, "Area");
+    return this.root.anyOverlapping(AreaBoundsL.pack(area));
+  }
+
+  /**
+   * The nodes of a tree being built by {@link #insertAll(Map)}.
+   */
+
+  private final class BulkNodes implements BulkLoader.NodesType<Quadrant>
+  {
+    private final Item<T>[] entries;
+
+    private BulkNodes(
+      final Item<T>[] in_entries)
+    {
+      this.entries = in_entries;
+    }
+
+    @Override
+    public boolean splitFor(
+      final Quadrant node,
+      final int count)
+    {
+      if (count > QuadTreeL.this.config.maximumItemsPerLeaf()
+        && node.canSplit()) {
+        node.split();
+        return true;
+      }
+      return false;
+    }
+
+    @Override
+    public int childIndexContaining(
+      final Quadrant node,
+      final int source)
+    {
+      return node.childIndexContaining(this.entries[source].bounds);
+    }
+
+    @Override
+    public Quadrant child(
+      final Quadrant node,
+      final int index)
+    {
+      return node.child(index);
+    }
+
+    @Override
+    public void hold(
+      final Quadrant node,
+      final int source)
+    {
+      node.insertObject(this.entries[source]);
+    }
+  }
+
+  /**
+   * An object held by the tree, along with its bounds and the node that
+   * currently holds it.
+   */
+
+  private static final class Item<T>
+  {
+    private final T value;
+    private final long[] bounds;
+    private QuadTreeL<T>.Quadrant owner;
+    private int index;
+
+    private Item(
+      final T in_value,
+      final AreaL in_area)
+    {
+      this.value = in_value;
+      this.bounds = AreaBoundsL.pack(in_area);
+      this.index = -1;
+    }
+
+    private AreaL area()
+    {
+      return AreaBoundsL.unpack(this.bounds, 0);
+    }
+  }
+
+  /**
+   * The nearest object found so far by a first-hit raycast.
+   */
+
+  private static final class RaycastHit<T>
+  {
+    private double distance;
+    private Item<T> item;
+
+    private RaycastHit()
+    {
+      this.distance = Double.POSITIVE_INFINITY;
+    }
   }
 
   protected final class Quadrant implements QuadTreeQuadrantLType<T>
   {
     private final AreaL area;
-    private final Reference2ReferenceOpenHashMap<T, AreaL> quadrant_objects;
+    private final long[] bounds;
+    private final double[] ray_bounds;
     private final Quadrant parent;
-    private final Map<T, AreaL> quadrant_objects_view;
+    private final int node_depth;
+
+    /*
+     * The objects held directly by this node. The bounds of object {@code i}
+     * are packed into {@code item_bounds} at offset
+     * {@code i * AreaBoundsL.STRIDE} so that queries can test objects
+     * without touching the objects themselves. The same bounds are held
+     * as {@code double} values in {@code item_ray_bounds}, so that rays
+     * can be tested without converting each coordinate on every test. The
+     * arrays are allocated on the first insertion, as most nodes in a tree
+     * are empty.
+     */
+
+    private Item<?>[] item_values;
+    private long[] item_bounds;
+    private double[] item_ray_bounds;
+    private int item_count;
+
+    /*
+     * The number of objects held by this node and all of its descendants.
+     */
+
+    private int subtree_count;
     private Quadrant x0y0;
     private Quadrant x0y1;
     private Quadrant x1y0;
@@ -232,31 +633,31 @@ public final class QuadTreeL<T> implements QuadTreeLType<T>
 
     protected Quadrant(
       final Quadrant in_parent,
-      final AreaL in_area)
+      final AreaL in_area,
+      final int in_depth)
     {
       this.parent = in_parent;
+      this.node_depth = in_depth;
       this.area = Objects.requireNonNull(in_area, "Area");
-      this.quadrant_objects = new Reference2ReferenceOpenHashMap<>();
-      this.quadrant_objects_view =
-        Reference2ReferenceMaps.unmodifiable(this.quadrant_objects);
+      this.bounds = AreaBoundsL.pack(in_area);
+      this.ray_bounds = new double[AreaBoundsL.STRIDE];
+      AreaBoundsL.storeDouble(this.bounds, 0, this.ray_bounds, 0);
     }
 
     private boolean insert(
-      final T item,
-      final AreaL item_bounds)
+      final Item<T> item)
     {
       Preconditions.checkPrecondition(
-        item,
-        !QuadTreeL.this.objects.containsKey(item),
+        item.value,
+        !QuadTreeL.this.objects.containsKey(item.value),
         x -> "Object must not be in tree");
 
-      return AreasL.contains(this.area, item_bounds)
-        && this.insertStep(item, item_bounds);
+      return AreaBoundsL.contains(this.bounds, 0, item.bounds, 0)
+        && this.insertStep(item);
     }
 
     private boolean insertStep(
-      final T item,
-      final AreaL item_bounds)
+      final Item<T> item)
     {
       /*
        * The object can fit in this node, but perhaps it is possible to fit it
@@ -264,20 +665,16 @@ public final class QuadTreeL<T> implements QuadTreeLType<T>
        */
 
       /*
-       * If this node is a leaf, and is large enough to split, do so.
+       * If this node is a leaf, and either has room for the object or cannot
+       * be split further, insert the object directly. Otherwise, split the
+       * node and redistribute the objects it holds to the new children.
        */
 
       if (this.isLeaf()) {
-        if (this.canSplit()) {
-          this.split();
-        } else {
-
-          /*
-           * The node is a leaf, but cannot be split further. Insert directly.
-           */
-
-          return this.insertObject(item, item_bounds);
+        if (this.hasCapacity() || !this.canSplit()) {
+          return this.insertObject(item);
         }
+        this.split();
       }
 
       /*
@@ -286,35 +683,116 @@ public final class QuadTreeL<T> implements QuadTreeLType<T>
 
       Invariants.checkInvariant(!this.isLeaf(), "Node is not a leaf");
 
-      if (AreasL.contains(this.x0y0.area, item_bounds)) {
-        return this.x0y0.insertStep(item, item_bounds);
-      }
-      if (AreasL.contains(this.x1y0.area, item_bounds)) {
-        return this.x1y0.insertStep(item, item_bounds);
-      }
-      if (AreasL.contains(this.x0y1.area, item_bounds)) {
-        return this.x0y1.insertStep(item, item_bounds);
-      }
-      if (AreasL.contains(this.x1y1.area, item_bounds)) {
-        return this.x1y1.insertStep(item, item_bounds);
+      final Quadrant child = this.childContaining(item.bounds);
+      if (child != null) {
+        return child.insertStep(item);
       }
 
       /*
        * Otherwise, insert the object into this node.
        */
 
-      return this.insertObject(item, item_bounds);
+      return this.insertObject(item);
+    }
+
+    private Quadrant childContaining(
+      final long[] target)
+    {
+      final int index = this.childIndexContaining(target);
+      return index < 0 ? null : this.child(index);
+    }
+
+    /**
+     * @return The index of the first child that can contain {@code target},
+     * or {@code -1} if no child can contain it
+     */
+
+    private int childIndexContaining(
+      final long[] target)
+    {
+      for (int index = 0; index < 4; ++index) {
+        if (AreaBoundsL.contains(this.child(index).bounds, 0, target, 0)) {
+          return index;
+        }
+      }
+      return -1;
     }
 
     private boolean insertObject(
-      final T item,
-      final AreaL item_bounds)
+      final Item<T> item)
     {
-      QuadTreeL.this.objects.put(item, item_bounds);
-      this.quadrant_objects.put(item, item_bounds);
+      if (this.item_values == null) {
+        this.item_values = new Item<?>[INITIAL_ITEMS];
+        this.item_bounds = new long[INITIAL_ITEMS * AreaBoundsL.STRIDE];
+        this.item_ray_bounds = new double[INITIAL_ITEMS * AreaBoundsL.STRIDE];
+      } else if (this.item_count == this.item_values.length) {
+        final int capacity = this.item_values.length * 2;
+        this.item_values = Arrays.copyOf(this.item_values, capacity);
+        this.item_bounds =
+          Arrays.copyOf(this.item_bounds, capacity * AreaBoundsL.STRIDE);
+        this.item_ray_bounds =
+          Arrays.copyOf(this.item_ray_bounds, capacity * AreaBoundsL.STRIDE);
+      }
+
+      final int index = this.item_count;
+      this.item_values[index] = item;
+      System.arraycopy(
+        item.bounds,
+        0,
+        this.item_bounds,
+        index * AreaBoundsL.STRIDE,
+        AreaBoundsL.STRIDE);
+      AreaBoundsL.storeDouble(
+        item.bounds, 0, this.item_ray_bounds, index * AreaBoundsL.STRIDE);
+      this.item_count = index + 1;
+      for (Quadrant node = this; node != null; node = node.parent) {
+        ++node.subtree_count;
+      }
+
+      item.owner = this;
+      item.index = index;
+      QuadTreeL.this.objects.put(item.value, item);
       return true;
     }
 
+    @SuppressWarnings("unchecked")
+    private Item<T> itemAt(final int index)
+    {
+      return (Item<T>) this.item_values[index];
+    }
+
+    /**
+     * Remove the object at {@code index} from this node, moving the last
+     * object held by this node into the vacated slot.
+     */
+
+    private void removeIndex(final int index)
+    {
+      final int last = this.item_count - 1;
+      if (index != last) {
+        final Item<T> moved = this.itemAt(last);
+        this.item_values[index] = moved;
+        System.arraycopy(
+          this.item_bounds,
+          last * AreaBoundsL.STRIDE,
+          this.item_bounds,
+          index * AreaBoundsL.STRIDE,
+          AreaBoundsL.STRIDE);
+        System.arraycopy(
+          this.item_ray_bounds,
+          last * AreaBoundsL.STRIDE,
+          this.item_ray_bounds,
+          index * AreaBoundsL.STRIDE,
+          AreaBoundsL.STRIDE);
+        moved.index = index;
+      }
+      this.item_values[last] = null;
+      this.item_count = last;
+      for (Quadrant node = this; node != null; node = node.parent) {
+        --node.subtree_count;
+      }
+    }
+
     private void split()
     {
       Preconditions.checkPrecondition(this.canSplit(), "Quadrant can split");
@@ -322,17 +800,47 @@ public final class QuadTreeL<T> implements QuadTreeLType<T>
       final Optional<AreaXYSplitL<AreaL>> q_opt = QuadrantsL.subdivide(this.area);
       if (q_opt.isPresent()) {
         final AreaXYSplitL<AreaL> q = q_opt.get();
-        this.x0y0 = new Quadrant(this, q.x0y0());
-        this.x0y1 = new Quadrant(this, q.x0y1());
-        this.x1y0 = new Quadrant(this, q.x1y0());
-        this.x1y1 = new Quadrant(this, q.x1y1());
+        this.x0y0 = new Quadrant(this, q.x0y0(), this.node_depth + 1);
+        this.x0y1 = new Quadrant(this, q.x0y1(), this.node_depth + 1);
+        this.x1y0 = new Quadrant(this, q.x1y0(), this.node_depth + 1);
+        this.x1y1 = new Quadrant(this, q.x1y1(), this.node_depth + 1);
       } else {
         throw new UnreachableCodeException();
       }
+
+      this.redistribute();
+    }
+
+    /**
+     * Move every object held by this (newly split) node into the child nodes
+     * that can contain them. Objects that straddle child boundaries remain in
+     * this node.
+     */
+
+    private void redistribute()
+    {
+      for (int index = this.item_count - 1; index >= 0; --index) {
+        final Item<T> item = this.itemAt(index);
+        final Quadrant child = this.childContaining(item.bounds);
+        if (child != null) {
+          this.removeIndex(index);
+          child.insertStep(item);
+        }
+      }
+    }
+
+    private boolean hasCapacity()
+    {
+      return this.item_count
+        < QuadTreeL.this.config.maximumItemsPerLeaf();
     }
 
     private boolean canSplit()
     {
+      if (this.node_depth >= QuadTreeL.this.config.maximumDepth()) {
+        return false;
+      }
+
       final long width = this.area.sizeX();
       final long height = this.area.sizeY();
 
@@ -352,213 +860,405 @@ public final class QuadTreeL<T> implements QuadTreeLType<T>
       return this.x0y0 == null;
     }
 
-    private boolean remove(final T item)
+    private void removeObject(final Item<T> item)
     {
-      if (!QuadTreeL.this.objects.containsKey(item)) {
-        return false;
+      this.removeIndex(item.index);
+      QuadTreeL.this.objects.remove(item.value);
+      if (QuadTreeL.this.config.trimOnRemove()) {
+        this.unsplitAttemptRecursive();
       }
-
-      final AreaL bounds = QuadTreeL.this.objects.get(item);
-      return this.removeStep(item, bounds);
     }
 
-    private boolean removeStep(
-      final T item,
-      final AreaL item_bounds)
+    /**
+     * Move an object held by this node to new bounds. The object is inserted
+     * starting from the nearest ancestor of this node that can contain the
+     * new bounds, so objects that move only a short distance avoid a full
+     * descent from the root.
+     */
+
+    private boolean reinsert(
+      final Item<T> existing,
+      final Item<T> item)
     {
-      if (this.quadrant_objects.containsKey(item)) {
-        this.quadrant_objects.remove(item);
-        QuadTreeL.this.objects.remove(item);
-        if (QuadTreeL.this.config.trimOnRemove()) {
-          this.unsplitAttemptRecursive();
-        }
-        return true;
+      Quadrant start = this;
+      while (start != null
+        && !AreaBoundsL.contains(start.bounds, 0, item.bounds, 0)) {
+        start = start.parent;
       }
 
-      Invariants.checkInvariant(!this.isLeaf(), "Node cannot be a leaf");
+      this.removeIndex(existing.index);
+      QuadTreeL.this.objects.remove(existing.value);
 
-      if (AreasL.contains(this.x0y0.area, item_bounds)) {
-        return this.x0y0.removeStep(item, item_bounds);
+      final boolean inserted = start != null && start.insertStep(item);
+      if (QuadTreeL.this.config.trimOnRemove()) {
+        this.unsplitAttemptRecursive();
       }
-      if (AreasL.contains(this.x1y0.area, item_bounds)) {
-        return this.x1y0.removeStep(item, item_bounds);
+      return inserted;
+    }
+
+    /**
+     * @return The child at {@code index}, in the same order used when
+     * inserting objects
+     */
+
+    private Quadrant child(final int index)
+    {
+      switch (index) {
+        case 0:
+          return this.x0y0;
+        case 1:
+          return this.x1y0;
+        case 2:
+          return this.x0y1;
+        case 3:
+          return this.x1y1;
+        default:
+          throw new UnreachableCodeException();
       }
-      if (AreasL.contains(this.x0y1.area, item_bounds)) {
-        return this.x0y1.removeStep(item, item_bounds);
+    }
+
+    private <C> TreeVisitResult areaContainingVisit(
+      final long[] target_area,
+      final C context,
+      final QuadTreeItemVisitorLType<T, C> f)
+    {
+      if (this.isLeaf() && this.item_count == 0) {
+        return TreeVisitResult.RESULT_CONTINUE;
       }
-      if (AreasL.contains(this.x1y1.area, item_bounds)) {
-        return this.x1y1.removeStep(item, item_bounds);
+
+      if (AreaBoundsL.contains(target_area, 0, this.bounds, 0)) {
+        return this.visitRecursive(context, f);
       }
 
-      /*
-       * The object must be in the tree, according to remove(). Therefore it
-       * must be in this node, or one of the child quadrants.
-       */
+      final long[] b = this.item_bounds;
+      for (int index = 0; index < this.item_count; ++index) {
+        if (AreaBoundsL.contains(
+          target_area, 0, b, index * AreaBoundsL.STRIDE)) {
+          final Item<T> item = this.itemAt(index);
+          if (f.apply(context, item.value, item.area())
+            == TreeVisitResult.RESULT_TERMINATE) {
+            return TreeVisitResult.RESULT_TERMINATE;
+          }
+        }
+      }
 
-      throw new UnreachableCodeException();
+      if (!this.isLeaf()) {
+        for (int index = 0; index < 4; ++index) {
+          if (this.child(index).areaContainingVisit(target_area, context, f)
+            == TreeVisitResult.RESULT_TERMINATE) {
+            return TreeVisitResult.RESULT_TERMINATE;
+          }
+        }
+      }
+      return TreeVisitResult.RESULT_CONTINUE;
     }
 
-    private void areaContaining(
-      final AreaL target_area,
-      final Set<T> items)
+    private <C> TreeVisitResult visitRecursive(
+      final C context,
+      final QuadTreeItemVisitorLType<T, C> f)
     {
-      /*
-       * Avoid performing pointless containment checks.
-       */
+      for (int index = 0; index < this.item_count; ++index) {
+        final Item<T> item = this.itemAt(index);
+        if (f.apply(context, item.value, item.area())
+          == TreeVisitResult.RESULT_TERMINATE) {
+          return TreeVisitResult.RESULT_TERMINATE;
+        }
+      }
 
-      if (this.isLeaf() && this.quadrant_objects.isEmpty()) {
-        return;
+      if (!this.isLeaf()) {
+        for (int index = 0; index < 4; ++index) {
+          if (this.child(index).visitRecursive(context, f)
+            == TreeVisitResult.RESULT_TERMINATE) {
+            return TreeVisitResult.RESULT_TERMINATE;
+          }
+        }
       }
+      return TreeVisitResult.RESULT_CONTINUE;
+    }
 
-      /*
-       * If {@code target_area} completely contains this quadrant, collect
-       * everything in this quadrant and all children of this quadrant.
-       */
+    private <C> TreeVisitResult areaOverlappingVisit(
+      final long[] target_area,
+      final C context,
+      final QuadTreeItemVisitorLType<T, C> f)
+    {
+      if (this.isLeaf() && this.item_count == 0) {
+        return TreeVisitResult.RESULT_CONTINUE;
+      }
 
-      if (AreasL.contains(target_area, this.area)) {
-        this.collectRecursive(items);
+      if (!AreaBoundsL.overlaps(target_area, 0, this.bounds, 0)) {
+        return TreeVisitResult.RESULT_CONTINUE;
       }
 
-      /*
-       * Otherwise, {@code target_area} may be overlapping this quadrant and
-       * therefore some items may still be contained within {@code target_area}.
-       */
+      final long[] b = this.item_bounds;
+      for (int index = 0; index < this.item_count; ++index) {
+        if (AreaBoundsL.overlaps(
+          target_area, 0, b, index * AreaBoundsL.STRIDE)) {
+          final Item<T> item = this.itemAt(index);
+          if (f.apply(context, item.value, item.area())
+            == TreeVisitResult.RESULT_TERMINATE) {
+            return TreeVisitResult.RESULT_TERMINATE;
+          }
+        }
+      }
+
+      if (!this.isLeaf()) {
+        for (int index = 0; index < 4; ++index) {
+          if (this.child(index).areaOverlappingVisit(target_area, context, f)
+            == TreeVisitResult.RESULT_TERMINATE) {
+            return TreeVisitResult.RESULT_TERMINATE;
+          }
+        }
+      }
+      return TreeVisitResult.RESULT_CONTINUE;
+    }
 
-      final ObjectSet<Map.Entry<T, AreaL>> entries =
-        this.quadrant_objects.entrySet();
-      final ObjectIterator<Map.Entry<T, AreaL>> iter =
-        entries.iterator();
+    private <C> TreeVisitResult raycastVisit(
+      final Ray2D ray,
+      final C context,
+      final QuadTreeRaycastVisitorLType<T, C> f)
+    {
+      if (this.isLeaf() && this.item_count == 0) {
+        return TreeVisitResult.RESULT_CONTINUE;
+      }
 
-      while (iter.hasNext()) {
-        final Map.Entry<T, AreaL> entry = iter.next();
-        final T item = entry.getKey();
-        final AreaL item_area = entry.getValue();
+      if (!AreaBoundsD.intersects(ray, this.ray_bounds, 0)) {
+        return TreeVisitResult.RESULT_CONTINUE;
+      }
 
-        if (AreasL.contains(target_area, item_area)) {
-          items.add(item);
+      final double[] b = this.item_ray_bounds;
+      for (int index = 0; index < this.item_count; ++index) {
+        final int offset = index * AreaBoundsL.STRIDE;
+        if (AreaBoundsD.intersects(ray, b, offset)) {
+          final Item<T> item = this.itemAt(index);
+          final double distance = Vectors2D.distance(
+            Vector2D.of(b[offset], b[offset + 2]),
+            ray.origin());
+          if (f.apply(context, item.value, item.area(), distance)
+            == TreeVisitResult.RESULT_TERMINATE) {
+            return TreeVisitResult.RESULT_TERMINATE;
+          }
         }
       }
 
       if (!this.isLeaf()) {
-        this.x0y0.areaContaining(target_area, items);
-        this.x0y1.areaContaining(target_area, items);
-        this.x1y0.areaContaining(target_area, items);
-        this.x1y1.areaContaining(target_area, items);
+        for (int index = 0; index < 4; ++index) {
+          if (this.child(index).raycastVisit(ray, context, f)
+            == TreeVisitResult.RESULT_TERMINATE) {
+            return TreeVisitResult.RESULT_TERMINATE;
+          }
+        }
       }
+      return TreeVisitResult.RESULT_CONTINUE;
     }
 
-    private void collectRecursive(final Set<T> items)
+    private void nearestExpand(
+      final double x,
+      final double y,
+      final DistanceHeap heap)
     {
-      items.addAll(this.quadrant_objects.keySet());
+      final long[] b = this.item_bounds;
+      for (int index = 0; index < this.item_count; ++index) {
+        heap.add(
+          AreaBoundsL.distanceSquared(x, y, b, index * AreaBoundsL.STRIDE),
+          this.item_values[index],
+          0);
+      }
+
       if (!this.isLeaf()) {
-        this.x0y0.collectRecursive(items);
-        this.x0y1.collectRecursive(items);
-        this.x1y0.collectRecursive(items);
-        this.x1y1.collectRecursive(items);
+        for (int index = 0; index < 4; ++index) {
+          final Quadrant c = this.child(index);
+          if (!c.isLeaf() || c.item_count > 0) {
+            heap.add(AreaBoundsL.distanceSquared(x, y, c.bounds, 0), c, 0);
+          }
+        }
       }
     }
 
-    private void areaOverlapping(
-      final AreaL target_area,
-      final Set<T> items)
+    private void raycastFirst(
+      final Ray2D ray,
+      final int order,
+      final RaycastHit<T> hit)
     {
-      /*
-       * Avoid performing pointless overlap checks.
-       */
-
-      if (this.isLeaf() && this.quadrant_objects.isEmpty()) {
-        return;
+      final double[] b = this.item_ray_bounds;
+      for (int index = 0; index < this.item_count; ++index) {
+        final double distance =
+          AreaBoundsD.entryDistance(ray, b, index * AreaBoundsL.STRIDE);
+        if (distance < hit.distance) {
+          hit.distance = distance;
+          hit.item = this.itemAt(index);
+        }
       }
 
       /*
-       * If {@code target_area} overlaps this quadrant, test each object
-       * against {@code target_area}.
+       * Visit the children nearest the ray origin first, so that the hits
+       * found there can rule out the children further along the ray.
        */
 
-      if (AreasL.overlaps(target_area, this.area)) {
-        final ObjectSet<Map.Entry<T, AreaL>> entries =
-          this.quadrant_objects.entrySet();
-        final ObjectIterator<Map.Entry<T, AreaL>> iter =
-          entries.iterator();
-
-        while (iter.hasNext()) {
-          final Map.Entry<T, AreaL> entry = iter.next();
-          final T item = entry.getKey();
-          final AreaL item_area = entry.getValue();
-
-          if (AreasL.overlaps(target_area, item_area)) {
-            items.add(item);
+      if (!this.isLeaf()) {
+        for (int index = 0; index < 4; ++index) {
+          final Quadrant c = this.child(index ^ order);
+          if (!c.isLeaf() || c.item_count > 0) {
+            if (AreaBoundsD.entryDistance(ray, c.ray_bounds, 0) < hit.distance) {
+              c.raycastFirst(ray, order, hit);
+            }
           }
         }
+      }
+    }
 
-        if (!this.isLeaf()) {
-          this.x0y0.areaOverlapping(target_area, items);
-          this.x1y0.areaOverlapping(target_area, items);
-          this.x0y1.areaOverlapping(target_area, items);
-          this.x1y1.areaOverlapping(target_area, items);
+    private void raycastExpand(
+      final Ray2D ray,
+      final DistanceHeap heap)
+    {
+      final double[] b = this.item_ray_bounds;
+      for (int index = 0; index < this.item_count; ++index) {
+        final double distance =
+          AreaBoundsD.entryDistance(ray, b, index * AreaBoundsL.STRIDE);
+        if (distance < Double.POSITIVE_INFINITY) {
+          heap.add(distance, this.item_values[index], 0);
+        }
+      }
+
+      if (!this.isLeaf()) {
+        for (int index = 0; index < 4; ++index) {
+          final Quadrant c = this.child(index);
+          if (!c.isLeaf() || c.item_count > 0) {
+            final double distance = AreaBoundsD.entryDistance(ray, c.ray_bounds, 0);
+            if (distance < Double.POSITIVE_INFINITY) {
+              heap.add(distance, c, 0);
+            }
+          }
         }
       }
     }
 
-    private void raycast(
+    private void raycastBuffer(
       final Ray2D ray,
-      final SortedSet<QuadTreeRaycastResultL<T>> items)
+      final QuadTreeRaycastBufferL<T> results)
     {
-      /*
-       * Avoid performing pointless ray checks.
-       */
+      if (this.isLeaf() && this.item_count == 0) {
+        return;
+      }
 
-      if (this.isLeaf() && this.quadrant_objects.isEmpty()) {
+      if (!AreaBoundsD.intersects(ray, this.ray_bounds, 0)) {
         return;
       }
 
-      /*
-       * Check whether or not the ray intersects the quadrant.
-       */
+      final long[] b = this.item_bounds;
+      final double[] rb = this.item_ray_bounds;
+      for (int index = 0; index < this.item_count; ++index) {
+        final int offset = index * AreaBoundsL.STRIDE;
+        final double distance = AreaBoundsD.entryDistance(ray, rb, offset);
+        if (distance < Double.POSITIVE_INFINITY) {
+          results.add(
+            this.itemAt(index).value,
+            distance,
+            b[offset],
+            b[offset + 1],
+            b[offset + 2],
+            b[offset + 3]);
+        }
+      }
+
+      if (!this.isLeaf()) {
+        for (int index = 0; index < 4; ++index) {
+          this.child(index).raycastBuffer(ray, results);
+        }
+      }
+    }
 
-      final double x0 = (double) this.area.minimumX();
-      final double x1 = (double) this.area.maximumX();
-      final double y0 = (double) this.area.minimumY();
-      final double y1 = (double) this.area.maximumY();
+    private long countContaining(
+      final long[] target_area)
+    {
+      if (this.subtree_count == 0) {
+        return 0L;
+      }
 
       /*
-       * If the ray intersects the quadrant, check each item in the quadrant
-       * against the ray.
+       * If the target area completely contains this node, then it contains
+       * every object held by this node and its descendants.
        */
 
-      if (ray.intersectsArea(x0, y0, x1, y1)) {
-        final ObjectSet<Map.Entry<T, AreaL>> entries =
-          this.quadrant_objects.entrySet();
-        final ObjectIterator<Map.Entry<T, AreaL>> iter =
-          entries.iterator();
-
-        while (iter.hasNext()) {
-          final Map.Entry<T, AreaL> entry = iter.next();
-          final T item = entry.getKey();
-          final AreaL item_area = entry.getValue();
-
-          final double item_x0 = (double) item_area.minimumX();
-          final double item_x1 = (double) item_area.maximumX();
-          final double item_y0 = (double) item_area.minimumY();
-          final double item_y1 = (double) item_area.maximumY();
-
-          if (ray.intersectsArea(item_x0, item_y0, item_x1, item_y1)) {
-            final double distance = Vectors2D.distance(
-              Vector2D.of(item_x0, item_y0),
-              ray.origin());
-            final QuadTreeRaycastResultL<T> result =
-              QuadTreeRaycastResultL.of(distance, item_area, item);
-            items.add(result);
-          }
+      if (AreaBoundsL.contains(target_area, 0, this.bounds, 0)) {
+        return (long) this.subtree_count;
+      }
+      if (!AreaBoundsL.touches(target_area, 0, this.bounds, 0)) {
+        return 0L;
+      }
+
+      long count = 0L;
+      final long[] b = this.item_bounds;
+      for (int index = 0; index < this.item_count; ++index) {
+        if (AreaBoundsL.contains(target_area, 0, b, index * AreaBoundsL.STRIDE)) {
+          ++count;
         }
+      }
 
-        if (!this.isLeaf()) {
-          this.x0y0.raycast(ray, items);
-          this.x0y1.raycast(ray, items);
-          this.x1y0.raycast(ray, items);
-          this.x1y1.raycast(ray, items);
+      if (!this.isLeaf()) {
+        for (int index = 0; index < 4; ++index) {
+          count += this.child(index).countContaining(target_area);
         }
       }
+      return count;
+    }
+
+    private long countOverlapping(
+      final long[] target_area)
+    {
+      if (this.subtree_count == 0) {
+        return 0L;
+      }
+      if (!AreaBoundsL.overlaps(target_area, 0, this.bounds, 0)) {
+        return 0L;
+      }
+      if (AreaBoundsL.overlapsAllWithin(target_area, 0, this.bounds, 0)) {
+        return (long) this.subtree_count;
+      }
+
+      long count = 0L;
+      final long[] b = this.item_bounds;
+      for (int index = 0; index < this.item_count; ++index) {
+        if (AreaBoundsL.overlaps(target_area, 0, b, index * AreaBoundsL.STRIDE)) {
+          ++count;
+        }
+      }
+
+      if (!this.isLeaf()) {
+        for (int index = 0; index < 4; ++index) {
+          count += this.child(index).countOverlapping(target_area);
+        }
+      }
+      return count;
+    }
+
+    private boolean anyOverlapping(
+      final long[] target_area)
+    {
+      if (this.subtree_count == 0) {
+        return false;
+      }
+      if (!AreaBoundsL.overlaps(target_area, 0, this.bounds, 0)) {
+        return false;
+      }
+      if (AreaBoundsL.overlapsAllWithin(target_area, 0, this.bounds, 0)) {
+        return true;
+      }
+
+      final long[] b = this.item_bounds;
+      for (int index = 0; index < this.item_count; ++index) {
+        if (AreaBoundsL.overlaps(target_area, 0, b, index * AreaBoundsL.STRIDE)) {
+          return true;
+        }
+      }
+
+      if (!this.isLeaf()) {
+        for (int index = 0; index < 4; ++index) {
+          if (this.child(index).anyOverlapping(target_area)) {
+            return true;
+          }
+        }
+      }
+      return false;
     }
 
     private <C> TreeVisitResult iterateQuadrants(
@@ -610,7 +1310,13 @@ public final class QuadTreeL<T> implements QuadTreeLType<T>
     @Override
     public Map<T, AreaL> objects()
     {
-      return this.quadrant_objects_view;
+      final Reference2ReferenceOpenHashMap<T, AreaL> m =
+        new Reference2ReferenceOpenHashMap<>(this.item_count);
+      for (int index = 0; index < this.item_count; ++index) {
+        final Item<T> item = this.itemAt(index);
+        m.put(item.value, item.area());
+      }
+      return Reference2ReferenceMaps.unmodifiable(m);
     }
 
     @Override
@@ -657,7 +1363,7 @@ public final class QuadTreeL<T> implements QuadTreeLType<T>
 
     private boolean unsplitCanPrune()
     {
-      return this.isLeaf() && this.quadrant_objects.isEmpty();
+      return this.isLeaf() && this.item_count == 0;
     }
 
     private void trim()
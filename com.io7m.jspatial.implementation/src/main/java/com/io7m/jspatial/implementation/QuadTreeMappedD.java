@@ -0,0 +1,1223 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.jspatial.implementation;
+
+import com.io7m.jaffirm.core.Preconditions;
+import com.io7m.jregions.core.unparameterized.areas.AreaD;
+import com.io7m.jregions.core.unparameterized.areas.AreaXYSplitD;
+import com.io7m.jspatial.api.Ray2D;
+import com.io7m.jspatial.api.TreeVisitResult;
+import com.io7m.jspatial.api.quadtrees.QuadTreeConfigurationD;
+import com.io7m.jspatial.api.quadtrees.QuadTreeItemVisitorDType;
+import com.io7m.jspatial.api.quadtrees.QuadTreeNearestVisitorDType;
+import com.io7m.jspatial.api.quadtrees.QuadTreeQuadrantDType;
+import com.io7m.jspatial.api.quadtrees.QuadTreeQuadrantIterationDType;
+import com.io7m.jspatial.api.quadtrees.QuadTreeRaycastBufferD;
+import com.io7m.jspatial.api.quadtrees.QuadTreeRaycastResultD;
+import com.io7m.jspatial.api.quadtrees.QuadTreeRaycastVisitorDType;
+import com.io7m.jspatial.api.quadtrees.QuadTreeReadableDType;
+import com.io7m.jtensors.core.unparameterized.vectors.Vector2D;
+import com.io7m.jtensors.core.unparameterized.vectors.Vectors2D;
+import com.io7m.junreachable.UnreachableCodeException;
+import it.unimi.dsi.fastutil.objects.Reference2ReferenceMaps;
+import it.unimi.dsi.fastutil.objects.Reference2ReferenceOpenHashMap;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.function.BiFunction;
+import java.util.function.LongFunction;
+import java.util.function.ToLongFunction;
+
+/**
+ * <p>A read-only implementation of the {@link QuadTreeReadableDType}
+ * interface that queries a tree written by {@link QuadTreeBinaryD} in
+ * place, through a memory-mapped file.</p>
+ *
+ * <p>Opening a tree maps the file and checks the shape of the tree, but
+ * does not read the objects. Queries navigate the quadrants directly in
+ * the mapped file, and the tree holds no objects in memory: each object
+ * visited by a query is obtained from its identifier with a function
+ * given by the caller. An object is held by the tree if its identifier is
+ * held by the tree. As a tree is never modified, any number of threads may
+ * query a tree concurrently, provided that the functions given to
+ * {@link #open(FileChannel, ToLongFunction, LongFunction)} are safe to call
+ * from those threads.</p>
+ *
+ * <p>A file is mapped as a single region, and so trees in files larger
+ * than {@link Integer#MAX_VALUE} bytes cannot be opened.</p>
+ *
+ * @param <T> The precise type of tree objects
+ *
+ * @since 3.0.0
+ */
+
+public final class QuadTreeMappedD<T> implements QuadTreeReadableDType<T>
+{
+  private static final int CHILDREN = 4;
+
+  /*
+   * The offsets of the fields of a quadrant, as written by QuadTreeBinaryD.
+   */
+
+  private static final int QUADRANT_COUNT = 1;
+  private static final int QUADRANT_SUBTREE_COUNT = 5;
+  private static final int QUADRANT_SIZE = 9;
+  private static final int QUADRANT_AREA = 17;
+
+  /*
+   * The markers that distinguish quadrants and objects in distance heaps.
+   * The integer value of a heap entry is the offset of the quadrant or
+   * object.
+   */
+
+  private static final Object HEAP_QUADRANT = new Object();
+  private static final Object HEAP_OBJECT = new Object();
+
+  private final QuadTreeConfigurationD config;
+  private final ByteBuffer data;
+  private final ToLongFunction<T> ids;
+  private final LongFunction<T> objects;
+  private final int size;
+  private final int index_offset;
+
+  private QuadTreeMappedD(
+    final QuadTreeConfigurationD in_config,
+    final ByteBuffer in_data,
+    final ToLongFunction<T> in_ids,
+    final LongFunction<T> in_items,
+    final int in_size,
+    final int in_index)
+  {
+    this.config = in_config;
+    this.data = in_data;
+    this.ids = in_ids;
+    this.objects = in_items;
+    this.size = in_size;
+    this.index_offset = in_index;
+  }
+
+  /**
+   * Open a tree written by {@link QuadTreeBinaryD} to a file. The channel
+   * may be closed once the tree is opened; the mapping remains valid until
+   * the tree is garbage collected.
+   *
+   * @param channel The channel
+   * @param ids     A function that yields the identifier of each object
+   * @param items   A function that yields the object with each identifier
+   * @param <T>     The precise type of tree objects
+   *
+   * @return A new tree
+   *
+   * @throws IOException On I/O errors, or if the file does not contain a
+   *                     tree in the expected format
+   */
+
+  public static <T> QuadTreeReadableDType<T> open(
+    final FileChannel channel,
+    final ToLongFunction<T> ids,
+    final LongFunction<T> items)
+    throws IOException
+  {
+    Objects.requireNonNull(channel, "Channel");
+    Objects.requireNonNull(ids, "IDs");
+    Objects.requireNonNull(items, "Items");
+
+    final long file_size = channel.size();
+    if (file_size > (long) Integer.MAX_VALUE) {
+      throw new IOException("File is too large to be mapped: " + file_size);
+    }
+    if (file_size < (long) QuadTreeBinaryD.HEADER_SIZE) {
+      throw new IOException("File is too small to contain a tree: " + file_size);
+    }
+
+    final ByteBuffer data =
+      channel.map(FileChannel.MapMode.READ_ONLY, 0L, file_size);
+    final QuadTreeConfigurationD config = QuadTreeBinaryD.readConfiguration(data);
+    final long size = data.getLong();
+
+    final int root = QuadTreeBinaryD.HEADER_SIZE;
+    final long objects = checkQuadrant(data, config, root, config.area(), 0);
+    if (objects != size) {
+      throw new IOException(String.format(
+        "Object count mismatch: expected %d, received %d",
+        Long.valueOf(size),
+        Long.valueOf(objects)));
+    }
+
+    final int index = root + (int) data.getLong(root + QUADRANT_SIZE);
+    checkIndex(data, index, (int) size);
+    return new QuadTreeMappedD<>(config, data, ids, items, (int) size, index);
+  }
+
+  private static IOException malformed(
+    final long offset)
+  {
+    return new IOException("Malformed quadrant at offset " + offset);
+  }
+
+  /**
+   * Check that the quadrant at {@code offset} and all of its descendants
+   * lie within the file, have consistent sizes, and have the areas and
+   * splits that {@link QuadTreeBinaryD} would accept. Children must follow
+   * their parent strictly in order. As a quadrant is only split if
+   * {@link QuadrantsD#canSplit(QuadTreeConfigurationD, AreaD, int)} allows it,
+   * the depth of the recursion is bounded by the maximum depth and the
+   * minimum quadrant sizes of the configuration.
+   *
+   * @return The number of objects in the quadrant and its descendants
+   */
+
+  private static long checkQuadrant(
+    final ByteBuffer data,
+    final QuadTreeConfigurationD config,
+    final int offset,
+    final AreaD area,
+    final int depth)
+    throws IOException
+  {
+    final long own_size = checkQuadrantFields(data, offset);
+    checkQuadrantArea(data, offset, area);
+    final long end = (long) offset + data.getLong(offset + QUADRANT_SIZE);
+
+    long objects = (long) data.getInt(offset + QUADRANT_COUNT);
+    long child = (long) offset + own_size;
+    if (data.get(offset) == 1) {
+      if (!QuadrantsD.canSplit(config, area, depth)) {
+        throw new IOException("Quadrant cannot be split at offset " + offset);
+      }
+
+      final AreaXYSplitD<AreaD> q = QuadrantsD.subdivide(area);
+      final AreaD[] children = {q.x0y0(), q.x1y0(), q.x0y1(), q.x1y1()};
+      for (int index = 0; index < CHILDREN; ++index) {
+        objects += checkQuadrant(data, config, (int) child, children[index], depth + 1);
+        final long next = child + data.getLong((int) child + QUADRANT_SIZE);
+        if (next <= child || next > end) {
+          throw malformed(child);
+        }
+        child = next;
+      }
+    }
+
+    if (child != end
+      || objects != (long) data.getInt(offset + QUADRANT_SUBTREE_COUNT)) {
+      throw malformed((long) offset);
+    }
+    return objects;
+  }
+
+  /**
+   * Check that the quadrant at {@code offset} records the area that
+   * the quadrant has in the tree.
+   */
+
+  private static void checkQuadrantArea(
+    final ByteBuffer data,
+    final int offset,
+    final AreaD area)
+    throws IOException
+  {
+    final double[] expected = AreaBoundsD.pack(area);
+    final int base = offset + QUADRANT_AREA;
+    for (int axis = 0; axis < AreaBoundsD.STRIDE; ++axis) {
+      if (Double.compare(data.getDouble(base + axis * 8), expected[axis]) != 0) {
+        throw malformed((long) offset);
+      }
+    }
+  }
+
+  /**
+   * Check the fields of the quadrant at {@code offset}, excluding its
+   * descendants.
+   *
+   * @return The number of bytes occupied by the quadrant and its objects
+   */
+
+  private static long checkQuadrantFields(
+    final ByteBuffer data,
+    final int offset)
+    throws IOException
+  {
+    if ((long) offset + (long) QuadTreeBinaryD.QUADRANT_SIZE > (long) data.limit()) {
+      throw malformed((long) offset);
+    }
+
+    final byte split = data.get(offset);
+    final int count = data.getInt(offset + QUADRANT_COUNT);
+    if (split < 0 || split > 1 || count < 0) {
+      throw malformed((long) offset);
+    }
+
+    final long size = data.getLong(offset + QUADRANT_SIZE);
+    final long own_size = (long) QuadTreeBinaryD.QUADRANT_SIZE
+      + (long) count * (long) QuadTreeBinaryD.OBJECT_SIZE;
+    if (size < own_size || (long) offset + size > (long) data.limit()) {
+      throw malformed((long) offset);
+    }
+    return own_size;
+  }
+
+  /**
+   * Check that the index lies at the end of the file, that its identifiers
+   * are unique and ascending, and that its objects lie within the tree.
+   */
+
+  private static void checkIndex(
+    final ByteBuffer data,
+    final int index,
+    final int size)
+    throws IOException
+  {
+    final long end = (long) index + (long) size * (long) QuadTreeBinaryD.INDEX_ENTRY_SIZE;
+    if (end != (long) data.limit()) {
+      throw new IOException("Malformed index at offset " + index);
+    }
+
+    for (int entry = 0; entry < size; ++entry) {
+      final int offset = index + entry * QuadTreeBinaryD.INDEX_ENTRY_SIZE;
+      final long id = data.getLong(offset);
+      final long object = data.getLong(offset + 8);
+      if (entry > 0 && data.getLong(offset - QuadTreeBinaryD.INDEX_ENTRY_SIZE) >= id) {
+        throw new IOException("Object " + id + " appears more than once, or out of order");
+      }
+      if (object < (long) QuadTreeBinaryD.HEADER_SIZE
+        || object + (long) QuadTreeBinaryD.OBJECT_SIZE > (long) index
+        || data.getLong((int) object) != id) {
+        throw new IOException("Object " + id + " has a malformed offset " + object);
+      }
+    }
+  }
+
+  private int objectCount(
+    final int quadrant)
+  {
+    return this.data.getInt(quadrant + QUADRANT_COUNT);
+  }
+
+  private int subtreeCount(
+    final int quadrant)
+  {
+    return this.data.getInt(quadrant + QUADRANT_SUBTREE_COUNT);
+  }
+
+  private boolean isLeaf(
+    final int quadrant)
+  {
+    return this.data.get(quadrant) == 0;
+  }
+
+  private int next(
+    final int quadrant)
+  {
+    return quadrant + (int) this.data.getLong(quadrant + QUADRANT_SIZE);
+  }
+
+  private void quadrantBounds(
+    final int quadrant,
+    final double[] bounds)
+  {
+    final int base = quadrant + QUADRANT_AREA;
+    for (int axis = 0; axis < AreaBoundsD.STRIDE; ++axis) {
+      bounds[axis] = this.data.getDouble(base + axis * 8);
+    }
+  }
+
+  private void objectBounds(
+    final int object,
+    final double[] bounds)
+  {
+    final int base = object + 8;
+    for (int axis = 0; axis < AreaBoundsD.STRIDE; ++axis) {
+      bounds[axis] = this.data.getDouble(base + axis * 8);
+    }
+  }
+
+  private T objectValue(
+    final int object)
+  {
+    return Objects.requireNonNull(this.objects.apply(this.data.getLong(object)), "Item");
+  }
+
+  private AreaD objectArea(
+    final int object)
+  {
+    final double[] bounds = new double[AreaBoundsD.STRIDE];
+    this.objectBounds(object, bounds);
+    return AreaBoundsD.unpack(bounds, 0);
+  }
+
+  /**
+   * @return The offset of the object with the given identifier, or
+   * {@code -1} if there is no such object
+   */
+
+  private int find(
+    final long id)
+  {
+    int low = 0;
+    int high = this.size - 1;
+    while (low <= high) {
+      final int middle = (low + high) >>> 1;
+      final int entry = this.index_offset + middle * QuadTreeBinaryD.INDEX_ENTRY_SIZE;
+      final long middle_id = this.data.getLong(entry);
+      if (middle_id < id) {
+        low = middle + 1;
+      } else if (middle_id > id) {
+        high = middle - 1;
+      } else {
+        return (int) this.data.getLong(entry + 8);
+      }
+    }
+    return -1;
+  }
+
+  @Override
+  public long size()
+  {
+    return (long) this.size;
+  }
+
+  @Override
+  public AreaD bounds()
+  {
+    return this.config.area();
+  }
+
+  @Override
+  public boolean contains(final T item)
+  {
+    Objects.requireNonNull(item, "Item");
+    return this.find(this.ids.applyAsLong(item)) >= 0;
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>The result is a {@link QuadTreeD} tree with the same shape as this
+   * tree.</p>
+   */
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public <U> QuadTreeReadableDType<U> map(final BiFunction<T, AreaD, U> f)
+  {
+    Objects.requireNonNull(f, "Function");
+
+    final QuadTreeD<U> tree = (QuadTreeD<U>) QuadTreeD.<U>create(this.config);
+    this.mapQuadrant(QuadTreeBinaryD.HEADER_SIZE, tree.rootNode(), f);
+    return tree;
+  }
+
+  private <U> void mapQuadrant(
+    final int quadrant,
+    final QuadTreeD<U>.Quadrant target,
+    final BiFunction<T, AreaD, U> f)
+  {
+    /*
+     * As with QuadTreeBinaryD, the quadrant is split before it receives any
+     * objects, so that the objects stay in the quadrant.
+     */
+
+    if (!this.isLeaf(quadrant)) {
+      target.split();
+    }
+
+    int object = quadrant + QuadTreeBinaryD.QUADRANT_SIZE;
+    final int count = this.objectCount(quadrant);
+    for (int index = 0; index < count; ++index) {
+      final AreaD area = this.objectArea(object);
+      final U value = Objects.requireNonNull(
+        f.apply(this.objectValue(object), area), "Value");
+      target.insertObject(new QuadTreeD.Item<>(value, area));
+      object += QuadTreeBinaryD.OBJECT_SIZE;
+    }
+
+    if (!this.isLeaf(quadrant)) {
+      int child = object;
+      for (int index = 0; index < CHILDREN; ++index) {
+        this.mapQuadrant(child, target.child(index), f);
+        child = this.next(child);
+      }
+    }
+  }
+
+  @Override
+  public <C> void iterateQuadrants(
+    final C context,
+    final QuadTreeQuadrantIterationDType<T, C> f)
+  {
+    Objects.requireNonNull(context, "Context");
+    Objects.requireNonNull(f, "Function");
+    this.iterateQuadrantsFrom(QuadTreeBinaryD.HEADER_SIZE, context, f, 0L);
+  }
+
+  private <C> TreeVisitResult iterateQuadrantsFrom(
+    final int quadrant,
+    final C context,
+    final QuadTreeQuadrantIterationDType<T, C> f,
+    final long depth)
+  {
+    switch (f.apply(context, new Quadrant(quadrant), depth)) {
+      case RESULT_CONTINUE: {
+        if (!this.isLeaf(quadrant)) {
+          int child = quadrant + QuadTreeBinaryD.QUADRANT_SIZE
+            + this.objectCount(quadrant) * QuadTreeBinaryD.OBJECT_SIZE;
+          for (int index = 0; index < CHILDREN; ++index) {
+            if (this.iterateQuadrantsFrom(child, context, f, Math.addExact(depth, 1L))
+              == TreeVisitResult.RESULT_TERMINATE) {
+              return TreeVisitResult.RESULT_TERMINATE;
+            }
+            child = this.next(child);
+          }
+        }
+        return TreeVisitResult.RESULT_CONTINUE;
+      }
+      case RESULT_TERMINATE:
+        return TreeVisitResult.RESULT_TERMINATE;
+    }
+
+    throw new UnreachableCodeException();
+  }
+
+  @Override
+  public AreaD areaFor(final T item)
+  {
+    Objects.requireNonNull(item, "Item");
+
+    final int object = this.find(this.ids.applyAsLong(item));
+    if (object < 0) {
+      throw new NoSuchElementException(item.toString());
+    }
+    return this.objectArea(object);
+  }
+
+  private static <T> TreeVisitResult collectItem(
+    final Set<T> items,
+    final T item,
+    final AreaD bounds)
+  {
+    items.add(item);
+    return TreeVisitResult.RESULT_CONTINUE;
+  }
+
+  private static <T> TreeVisitResult collectRaycastResult(
+    final SortedSet<QuadTreeRaycastResultD<T>> items,
+    final T item,
+    final AreaD bounds,
+    final double distance)
+  {
+    items.add(QuadTreeRaycastResultD.of(distance, bounds, item));
+    return TreeVisitResult.RESULT_CONTINUE;
+  }
+
+  @Override
+  public void containedBy(
+    final AreaD area,
+    final Set<T> items)
+  {
+    Objects.requireNonNull(area, "Area");
+    Objects.requireNonNull(items, "Items");
+    this.containedBy(area, items, QuadTreeMappedD::collectItem);
+  }
+
+  @Override
+  public void overlappedBy(
+    final AreaD area,
+    final Set<T> items)
+  {
+    Objects.requireNonNull(area, "Area");
+    Objects.requireNonNull(items, "Items");
+    this.overlappedBy(area, items, QuadTreeMappedD::collectItem);
+  }
+
+  @Override
+  public void raycast(
+    final Ray2D ray,
+    final SortedSet<QuadTreeRaycastResultD<T>> items)
+  {
+    Objects.requireNonNull(ray, "Ray");
+    Objects.requireNonNull(items, "Items");
+    this.raycast(ray, items, QuadTreeMappedD::collectRaycastResult);
+  }
+
+  @Override
+  public <C> TreeVisitResult containedBy(
+    final AreaD area,
+    final C context,
+    final QuadTreeItemVisitorDType<T, C> f)
+  {
+    Objects.requireNonNull(area, "Area");
+    Objects.requireNonNull(context, "Context");
+    Objects.requireNonNull(f, "Function");
+    return this.areaContainingVisit(
+      QuadTreeBinaryD.HEADER_SIZE,
+      AreaBoundsD.pack(area),
+      new double[AreaBoundsD.STRIDE],
+      context,
+      f);
+  }
+
+  private <C> TreeVisitResult areaContainingVisit(
+    final int quadrant,
+    final double[] target_area,
+    final double[] bounds,
+    final C context,
+    final QuadTreeItemVisitorDType<T, C> f)
+  {
+    if (this.subtreeCount(quadrant) == 0) {
+      return TreeVisitResult.RESULT_CONTINUE;
+    }
+
+    this.quadrantBounds(quadrant, bounds);
+    if (AreaBoundsD.contains(target_area, 0, bounds, 0)) {
+      return this.visitRecursive(quadrant, bounds, context, f);
+    }
+
+    int object = quadrant + QuadTreeBinaryD.QUADRANT_SIZE;
+    final int count = this.objectCount(quadrant);
+    for (int index = 0; index < count; ++index) {
+      this.objectBounds(object, bounds);
+      if (AreaBoundsD.contains(target_area, 0, bounds, 0)) {
+        if (f.apply(context, this.objectValue(object), AreaBoundsD.unpack(bounds, 0))
+          == TreeVisitResult.RESULT_TERMINATE) {
+          return TreeVisitResult.RESULT_TERMINATE;
+        }
+      }
+      object += QuadTreeBinaryD.OBJECT_SIZE;
+    }
+
+    if (!this.isLeaf(quadrant)) {
+      int child = object;
+      for (int index = 0; index < CHILDREN; ++index) {
+        if (this.areaContainingVisit(child, target_area, bounds, context, f)
+          == TreeVisitResult.RESULT_TERMINATE) {
+          return TreeVisitResult.RESULT_TERMINATE;
+        }
+        child = this.next(child);
+      }
+    }
+    return TreeVisitResult.RESULT_CONTINUE;
+  }
+
+  /**
+   * Visit every object in a quadrant and its descendants. The descendants
+   * of a quadrant immediately follow the quadrant in the file, so the
+   * quadrants are visited in a single pass over the bytes that they
+   * occupy.
+   */
+
+  private <C> TreeVisitResult visitRecursive(
+    final int quadrant,
+    final double[] bounds,
+    final C context,
+    final QuadTreeItemVisitorDType<T, C> f)
+  {
+    final int end = this.next(quadrant);
+    int position = quadrant;
+    while (position < end) {
+      final int count = this.objectCount(position);
+      position += QuadTreeBinaryD.QUADRANT_SIZE;
+      for (int index = 0; index < count; ++index) {
+        this.objectBounds(position, bounds);
+        if (f.apply(context, this.objectValue(position), AreaBoundsD.unpack(bounds, 0))
+          == TreeVisitResult.RESULT_TERMINATE) {
+          return TreeVisitResult.RESULT_TERMINATE;
+        }
+        position += QuadTreeBinaryD.OBJECT_SIZE;
+      }
+    }
+    return TreeVisitResult.RESULT_CONTINUE;
+  }
+
+  @Override
+  public <C> TreeVisitResult overlappedBy(
+    final AreaD area,
+    final C context,
+    final QuadTreeItemVisitorDType<T, C> f)
+  {
+    Objects.requireNonNull(area, "Area");
+    Objects.requireNonNull(context, "Context");
+    Objects.requireNonNull(f, "Function");
+    return this.areaOverlappingVisit(
+      QuadTreeBinaryD.HEADER_SIZE,
+      AreaBoundsD.pack(area),
+      new double[AreaBoundsD.STRIDE],
+      context,
+      f);
+  }
+
+  private <C> TreeVisitResult areaOverlappingVisit(
+    final int quadrant,
+    final double[] target_area,
+    final double[] bounds,
+    final C context,
+    final QuadTreeItemVisitorDType<T, C> f)
+  {
+    if (this.subtreeCount(quadrant) == 0) {
+      return TreeVisitResult.RESULT_CONTINUE;
+    }
+
+    this.quadrantBounds(quadrant, bounds);
+    if (!AreaBoundsD.overlaps(target_area, 0, bounds, 0)) {
+      return TreeVisitResult.RESULT_CONTINUE;
+    }
+
+    int object = quadrant + QuadTreeBinaryD.QUADRANT_SIZE;
+    final int count = this.objectCount(quadrant);
+    for (int index = 0; index < count; ++index) {
+      this.objectBounds(object, bounds);
+      if (AreaBoundsD.overlaps(target_area, 0, bounds, 0)) {
+        if (f.apply(context, this.objectValue(object), AreaBoundsD.unpack(bounds, 0))
+          == TreeVisitResult.RESULT_TERMINATE) {
+          return TreeVisitResult.RESULT_TERMINATE;
+        }
+      }
+      object += QuadTreeBinaryD.OBJECT_SIZE;
+    }
+
+    if (!this.isLeaf(quadrant)) {
+      int child = object;
+      for (int index = 0; index < CHILDREN; ++index) {
+        if (this.areaOverlappingVisit(child, target_area, bounds, context, f)
+          == TreeVisitResult.RESULT_TERMINATE) {
+          return TreeVisitResult.RESULT_TERMINATE;
+        }
+        child = this.next(child);
+      }
+    }
+    return TreeVisitResult.RESULT_CONTINUE;
+  }
+
+  @Override
+  public <C> TreeVisitResult raycast(
+    final Ray2D ray,
+    final C context,
+    final QuadTreeRaycastVisitorDType<T, C> f)
+  {
+    Objects.requireNonNull(ray, "Ray");
+    Objects.requireNonNull(context, "Context");
+    Objects.requireNonNull(f, "Function");
+    return this.raycastVisit(
+      QuadTreeBinaryD.HEADER_SIZE, ray, new double[AreaBoundsD.STRIDE], context, f);
+  }
+
+  private <C> TreeVisitResult raycastVisit(
+    final int quadrant,
+    final Ray2D ray,
+    final double[] bounds,
+    final C context,
+    final QuadTreeRaycastVisitorDType<T, C> f)
+  {
+    if (this.subtreeCount(quadrant) == 0) {
+      return TreeVisitResult.RESULT_CONTINUE;
+    }
+
+    this.quadrantBounds(quadrant, bounds);
+    if (!AreaBoundsD.intersects(ray, bounds, 0)) {
+      return TreeVisitResult.RESULT_CONTINUE;
+    }
+
+    int object = quadrant + QuadTreeBinaryD.QUADRANT_SIZE;
+    final int count = this.objectCount(quadrant);
+    for (int index = 0; index < count; ++index) {
+      this.objectBounds(object, bounds);
+      if (AreaBoundsD.intersects(ray, bounds, 0)) {
+        final double distance =
+          Vectors2D.distance(Vector2D.of(bounds[0], bounds[2]), ray.origin());
+        if (f.apply(context, this.objectValue(object), AreaBoundsD.unpack(bounds, 0), distance)
+          == TreeVisitResult.RESULT_TERMINATE) {
+          return TreeVisitResult.RESULT_TERMINATE;
+        }
+      }
+      object += QuadTreeBinaryD.OBJECT_SIZE;
+    }
+
+    if (!this.isLeaf(quadrant)) {
+      int child = object;
+      for (int index = 0; index < CHILDREN; ++index) {
+        if (this.raycastVisit(child, ray, bounds, context, f)
+          == TreeVisitResult.RESULT_TERMINATE) {
+          return TreeVisitResult.RESULT_TERMINATE;
+        }
+        child = this.next(child);
+      }
+    }
+    return TreeVisitResult.RESULT_CONTINUE;
+  }
+
+  @Override
+  public <C> TreeVisitResult nearest(
+    final Vector2D point,
+    final int count,
+    final C context,
+    final QuadTreeNearestVisitorDType<T, C> f)
+  {
+    Objects.requireNonNull(point, "Point");
+    Objects.requireNonNull(context, "Context");
+    Objects.requireNonNull(f, "Function");
+    Preconditions.checkPreconditionI(
+      count, count >= 0, c -> "Count must be non-negative");
+
+    /*
+     * Best-first search, as with QuadTreeD.
+     */
+
+    final double x = point.x();
+    final double y = point.y();
+    final double[] bounds = new double[AreaBoundsD.STRIDE];
+    final DistanceHeap heap = new DistanceHeap();
+    final int root = QuadTreeBinaryD.HEADER_SIZE;
+    this.quadrantBounds(root, bounds);
+    heap.add(AreaBoundsD.distanceSquared(x, y, bounds, 0), HEAP_QUADRANT, root);
+
+    int found = 0;
+    while (found < count && !heap.isEmpty()) {
+      final double key = heap.topKey();
+      final Object top = heap.topObject();
+      final int offset = heap.topInt();
+      heap.removeTop();
+
+      if (top == HEAP_OBJECT) {
+        ++found;
+        this.objectBounds(offset, bounds);
+        if (f.apply(context, this.objectValue(offset), AreaBoundsD.unpack(bounds, 0), Math.sqrt(key))
+          == TreeVisitResult.RESULT_TERMINATE) {
+          return TreeVisitResult.RESULT_TERMINATE;
+        }
+      } else {
+        this.nearestExpand(offset, x, y, bounds, heap);
+      }
+    }
+    return TreeVisitResult.RESULT_CONTINUE;
+  }
+
+  private void nearestExpand(
+    final int quadrant,
+    final double x,
+    final double y,
+    final double[] bounds,
+    final DistanceHeap heap)
+  {
+    int object = quadrant + QuadTreeBinaryD.QUADRANT_SIZE;
+    final int count = this.objectCount(quadrant);
+    for (int index = 0; index < count; ++index) {
+      this.objectBounds(object, bounds);
+      heap.add(AreaBoundsD.distanceSquared(x, y, bounds, 0), HEAP_OBJECT, object);
+      object += QuadTreeBinaryD.OBJECT_SIZE;
+    }
+
+    if (!this.isLeaf(quadrant)) {
+      int child = object;
+      for (int index = 0; index < CHILDREN; ++index) {
+        if (this.subtreeCount(child) > 0) {
+          this.quadrantBounds(child, bounds);
+          heap.add(AreaBoundsD.distanceSquared(x, y, bounds, 0), HEAP_QUADRANT, child);
+        }
+        child = this.next(child);
+      }
+    }
+  }
+
+  @Override
+  public Optional<QuadTreeRaycastResultD<T>> raycastFirst(
+    final Ray2D ray)
+  {
+    Objects.requireNonNull(ray, "Ray");
+
+    final int root = QuadTreeBinaryD.HEADER_SIZE;
+    final double[] bounds = new double[AreaBoundsD.STRIDE];
+    final RaycastHit hit = new RaycastHit();
+    this.quadrantBounds(root, bounds);
+    if (AreaBoundsD.entryDistance(ray, bounds, 0) < hit.distance) {
+      this.raycastFirst(root, ray, AreaBoundsD.raycastOrder(ray), bounds, hit);
+    }
+
+    if (hit.object >= 0) {
+      return Optional.of(QuadTreeRaycastResultD.of(
+        hit.distance, this.objectArea(hit.object), this.objectValue(hit.object)));
+    }
+    return Optional.empty();
+  }
+
+  private void raycastFirst(
+    final int quadrant,
+    final Ray2D ray,
+    final int order,
+    final double[] bounds,
+    final RaycastHit hit)
+  {
+    int object = quadrant + QuadTreeBinaryD.QUADRANT_SIZE;
+    final int count = this.objectCount(quadrant);
+    for (int index = 0; index < count; ++index) {
+      this.objectBounds(object, bounds);
+      final double distance = AreaBoundsD.entryDistance(ray, bounds, 0);
+      if (distance < hit.distance) {
+        hit.distance = distance;
+        hit.object = object;
+      }
+      object += QuadTreeBinaryD.OBJECT_SIZE;
+    }
+
+    if (!this.isLeaf(quadrant)) {
+      final int[] children = new int[CHILDREN];
+      int child = object;
+      for (int index = 0; index < CHILDREN; ++index) {
+        children[index] = child;
+        child = this.next(child);
+      }
+
+      for (int index = 0; index < CHILDREN; ++index) {
+        final int next = children[index ^ order];
+        if (this.subtreeCount(next) > 0) {
+          this.quadrantBounds(next, bounds);
+          if (AreaBoundsD.entryDistance(ray, bounds, 0) < hit.distance) {
+            this.raycastFirst(next, ray, order, bounds, hit);
+          }
+        }
+      }
+    }
+  }
+
+  @Override
+  public <C> TreeVisitResult raycastFirst(
+    final Ray2D ray,
+    final int count,
+    final C context,
+    final QuadTreeRaycastVisitorDType<T, C> f)
+  {
+    Objects.requireNonNull(ray, "Ray");
+    Objects.requireNonNull(context, "Context");
+    Objects.requireNonNull(f, "Function");
+    Preconditions.checkPreconditionI(
+      count, count >= 0, c -> "Count must be non-negative");
+
+    final int root = QuadTreeBinaryD.HEADER_SIZE;
+    final double[] bounds = new double[AreaBoundsD.STRIDE];
+    final DistanceHeap heap = new DistanceHeap();
+    this.quadrantBounds(root, bounds);
+    final double root_distance = AreaBoundsD.entryDistance(ray, bounds, 0);
+    if (root_distance < Double.POSITIVE_INFINITY) {
+      heap.add(root_distance, HEAP_QUADRANT, root);
+    }
+
+    int found = 0;
+    while (found < count && !heap.isEmpty()) {
+      final double key = heap.topKey();
+      final Object top = heap.topObject();
+      final int offset = heap.topInt();
+      heap.removeTop();
+
+      if (top == HEAP_OBJECT) {
+        ++found;
+        this.objectBounds(offset, bounds);
+        if (f.apply(context, this.objectValue(offset), AreaBoundsD.unpack(bounds, 0), key)
+          == TreeVisitResult.RESULT_TERMINATE) {
+          return TreeVisitResult.RESULT_TERMINATE;
+        }
+      } else {
+        this.raycastExpand(offset, ray, bounds, heap);
+      }
+    }
+    return TreeVisitResult.RESULT_CONTINUE;
+  }
+
+  private void raycastExpand(
+    final int quadrant,
+    final Ray2D ray,
+    final double[] bounds,
+    final DistanceHeap heap)
+  {
+    int object = quadrant + QuadTreeBinaryD.QUADRANT_SIZE;
+    final int count = this.objectCount(quadrant);
+    for (int index = 0; index < count; ++index) {
+      this.objectBounds(object, bounds);
+      final double distance = AreaBoundsD.entryDistance(ray, bounds, 0);
+      if (distance < Double.POSITIVE_INFINITY) {
+        heap.add(distance, HEAP_OBJECT, object);
+      }
+      object += QuadTreeBinaryD.OBJECT_SIZE;
+    }
+
+    if (!this.isLeaf(quadrant)) {
+      int child = object;
+      for (int index = 0; index < CHILDREN; ++index) {
+        if (this.subtreeCount(child) > 0) {
+          this.quadrantBounds(child, bounds);
+          final double distance = AreaBoundsD.entryDistance(ray, bounds, 0);
+          if (distance < Double.POSITIVE_INFINITY) {
+            heap.add(distance, HEAP_QUADRANT, child);
+          }
+        }
+        child = this.next(child);
+      }
+    }
+  }
+
+  @Override
+  public void raycast(
+    final Ray2D ray,
+    final QuadTreeRaycastBufferD<T> results)
+  {
+    Objects.requireNonNull(ray, "Ray");
+    Objects.requireNonNull(results, "Results");
+    this.raycastBuffer(
+      QuadTreeBinaryD.HEADER_SIZE, ray, new double[AreaBoundsD.STRIDE], results);
+  }
+
+  private void raycastBuffer(
+    final int quadrant,
+    final Ray2D ray,
+    final double[] bounds,
+    final QuadTreeRaycastBufferD<T> results)
+  {
+    if (this.subtreeCount(quadrant) == 0) {
+      return;
+    }
+
+    this.quadrantBounds(quadrant, bounds);
+    if (!AreaBoundsD.intersects(ray, bounds, 0)) {
+      return;
+    }
+
+    int object = quadrant + QuadTreeBinaryD.QUADRANT_SIZE;
+    final int count = this.objectCount(quadrant);
+    for (int index = 0; index < count; ++index) {
+      this.objectBounds(object, bounds);
+      final double distance = AreaBoundsD.entryDistance(ray, bounds, 0);
+      if (distance < Double.POSITIVE_INFINITY) {
+        results.add(
+          this.objectValue(object), distance, bounds[0], bounds[1], bounds[2], bounds[3]);
+      }
+      object += QuadTreeBinaryD.OBJECT_SIZE;
+    }
+
+    if (!this.isLeaf(quadrant)) {
+      int child = object;
+      for (int index = 0; index < CHILDREN; ++index) {
+        this.raycastBuffer(child, ray, bounds, results);
+        child = this.next(child);
+      }
+    }
+  }
+
+  @Override
+  public long countContainedBy(
+    final AreaD area)
+  {
+    Objects.requireNonNull(area, "Area");
+    return this.countContaining(
+      QuadTreeBinaryD.HEADER_SIZE, AreaBoundsD.pack(area), new double[AreaBoundsD.STRIDE]);
+  }
+
+  private long countContaining(
+    final int quadrant,
+    final double[] target_area,
+    final double[] bounds)
+  {
+    final int subtree_count = this.subtreeCount(quadrant);
+    if (subtree_count == 0) {
+      return 0L;
+    }
+
+    this.quadrantBounds(quadrant, bounds);
+    if (AreaBoundsD.contains(target_area, 0, bounds, 0)) {
+      return (long) subtree_count;
+    }
+    if (!AreaBoundsD.touches(target_area, 0, bounds, 0)) {
+      return 0L;
+    }
+
+    long count = 0L;
+    int object = quadrant + QuadTreeBinaryD.QUADRANT_SIZE;
+    final int object_count = this.objectCount(quadrant);
+    for (int index = 0; index < object_count; ++index) {
+      this.objectBounds(object, bounds);
+      if (AreaBoundsD.contains(target_area, 0, bounds, 0)) {
+        ++count;
+      }
+      object += QuadTreeBinaryD.OBJECT_SIZE;
+    }
+
+    if (!this.isLeaf(quadrant)) {
+      int child = object;
+      for (int index = 0; index < CHILDREN; ++index) {
+        count += this.countContaining(child, target_area, bounds);
+        child = this.next(child);
+      }
+    }
+    return count;
+  }
+
+  @Override
+  public long countOverlapping(
+    final AreaD area)
+  {
+    Objects.requireNonNull(area, "Area");
+    return this.countOverlapping(
+      QuadTreeBinaryD.HEADER_SIZE, AreaBoundsD.pack(area), new double[AreaBoundsD.STRIDE]);
+  }
+
+  private long countOverlapping(
+    final int quadrant,
+    final double[] target_area,
+    final double[] bounds)
+  {
+    final int subtree_count = this.subtreeCount(quadrant);
+    if (subtree_count == 0) {
+      return 0L;
+    }
+
+    this.quadrantBounds(quadrant, bounds);
+    if (!AreaBoundsD.overlaps(target_area, 0, bounds, 0)) {
+      return 0L;
+    }
+    if (AreaBoundsD.overlapsAllWithin(target_area, 0, bounds, 0)) {
+      return (long) subtree_count;
+    }
+
+    long count = 0L;
+    int object = quadrant + QuadTreeBinaryD.QUADRANT_SIZE;
+    final int object_count = this.objectCount(quadrant);
+    for (int index = 0; index < object_count; ++index) {
+      this.objectBounds(object, bounds);
+      if (AreaBoundsD.overlaps(target_area, 0, bounds, 0)) {
+        ++count;
+      }
+      object += QuadTreeBinaryD.OBJECT_SIZE;
+    }
+
+    if (!this.isLeaf(quadrant)) {
+      int child = object;
+      for (int index = 0; index < CHILDREN; ++index) {
+        count += this.countOverlapping(child, target_area, bounds);
+        child = this.next(child);
+      }
+    }
+    return count;
+  }
+
+  @Override
+  public boolean anyOverlapping(
+    final AreaD area)
+  {
+    Objects.requireNonNull(area, "Area");
+    return this.anyOverlapping(
+      QuadTreeBinaryD.HEADER_SIZE, AreaBoundsD.pack(area), new double[AreaBoundsD.STRIDE]);
+  }
+
+  private boolean anyOverlapping(
+    final int quadrant,
+    final double[] target_area,
+    final double[] bounds)
+  {
+    if (this.subtreeCount(quadrant) == 0) {
+      return false;
+    }
+
+    this.quadrantBounds(quadrant, bounds);
+    if (!AreaBoundsD.overlaps(target_area, 0, bounds, 0)) {
+      return false;
+    }
+    if (AreaBoundsD.overlapsAllWithin(target_area, 0, bounds, 0)) {
+      return true;
+    }
+
+    int object = quadrant + QuadTreeBinaryD.QUADRANT_SIZE;
+    final int count = this.objectCount(quadrant);
+    for (int index = 0; index < count; ++index) {
+      this.objectBounds(object, bounds);
+      if (AreaBoundsD.overlaps(target_area, 0, bounds, 0)) {
+        return true;
+      }
+      object += QuadTreeBinaryD.OBJECT_SIZE;
+    }
+
+    if (!this.isLeaf(quadrant)) {
+      int child = object;
+      for (int index = 0; index < CHILDREN; ++index) {
+        if (this.anyOverlapping(child, target_area, bounds)) {
+          return true;
+        }
+        child = this.next(child);
+      }
+    }
+    return false;
+  }
+
+  /**
+   * The nearest object found so far by a first-hit raycast.
+   */
+
+  private static final class RaycastHit
+  {
+    private double distance;
+    private int object;
+
+    private RaycastHit()
+    {
+      this.distance = Double.POSITIVE_INFINITY;
+      this.object = -1;
+    }
+  }
+
+  /**
+   * A view of a quadrant in the mapped file.
+   */
+
+  private final class Quadrant implements QuadTreeQuadrantDType<T>
+  {
+    private final int offset;
+
+    private Quadrant(
+      final int in_offset)
+    {
+      this.offset = in_offset;
+    }
+
+    @Override
+    public Map<T, AreaD> objects()
+    {
+      final int count = QuadTreeMappedD.this.objectCount(this.offset);
+      final Reference2ReferenceOpenHashMap<T, AreaD> m =
+        new Reference2ReferenceOpenHashMap<>(count);
+
+      int object = this.offset + QuadTreeBinaryD.QUADRANT_SIZE;
+      for (int index = 0; index < count; ++index) {
+        m.put(
+          QuadTreeMappedD.this.objectValue(object),
+          QuadTreeMappedD.this.objectArea(object));
+        object += QuadTreeBinaryD.OBJECT_SIZE;
+      }
+      return Reference2ReferenceMaps.unmodifiable(m);
+    }
+
+    @Override
+    public AreaD area()
+    {
+      final double[] bounds = new double[AreaBoundsD.STRIDE];
+      QuadTreeMappedD.this.quadrantBounds(this.offset, bounds);
+      return AreaBoundsD.unpack(bounds, 0);
+    }
+  }
+}
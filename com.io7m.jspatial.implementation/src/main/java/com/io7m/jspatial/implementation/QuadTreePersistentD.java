@@ -0,0 +1,1152 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jspatial.implementation;
+
+import com.io7m.jaffirm.core.Invariants;
+import com.io7m.jaffirm.core.Preconditions;
+import com.io7m.jregions.core.unparameterized.areas.AreaD;
+import com.io7m.jregions.core.unparameterized.areas.AreaXYSplitD;
+import com.io7m.jspatial.api.Ray2D;
+import com.io7m.jspatial.api.TreeVisitResult;
+import com.io7m.jspatial.api.quadtrees.QuadTreeConfigurationD;
+import com.io7m.jspatial.api.quadtrees.QuadTreeItemVisitorDType;
+import com.io7m.jspatial.api.quadtrees.QuadTreeNearestVisitorDType;
+import com.io7m.jspatial.api.quadtrees.QuadTreePersistentDType;
+import com.io7m.jspatial.api.quadtrees.QuadTreeQuadrantDType;
+import com.io7m.jspatial.api.quadtrees.QuadTreeQuadrantIterationDType;
+import com.io7m.jspatial.api.quadtrees.QuadTreeRaycastBufferD;
+import com.io7m.jspatial.api.quadtrees.QuadTreeRaycastResultD;
+import com.io7m.jspatial.api.quadtrees.QuadTreeRaycastVisitorDType;
+import com.io7m.jtensors.core.unparameterized.vectors.Vector2D;
+import com.io7m.jtensors.core.unparameterized.vectors.Vectors2D;
+import com.io7m.junreachable.UnreachableCodeException;
+import it.unimi.dsi.fastutil.objects.Reference2ReferenceMaps;
+import it.unimi.dsi.fastutil.objects.Reference2ReferenceOpenHashMap;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.function.BiFunction;
+
+/**
+ * <p>An implementation of the {@link QuadTreePersistentDType} interface.</p>
+ *
+ * <p>The tree has the same structure as a {@link QuadTreeD} tree that has
+ * been given the same sequence of operations, but its quadrants are never
+ * modified. An operation copies the quadrants on the path from the root to
+ * the quadrants that it changes, and the new version shares every other
+ * quadrant with the original version. The bounds of the objects in the tree
+ * are held in a {@link PersistentIdentityMap}, which is updated in the same
+ * way.</p>
+ *
+ * @param <T> The precise type of tree objects
+ */
+
+public final class QuadTreePersistentD<T> implements QuadTreePersistentDType<T>
+{
+  private static final int CHILDREN = 4;
+  private static final Item<?>[] NO_ITEMS = new Item<?>[0];
+
+  private final QuadTreeConfigurationD config;
+  private final Quadrant<T> root;
+  private final PersistentIdentityMap<T, Item<T>> objects;
+
+  private QuadTreePersistentD(
+    final QuadTreeConfigurationD in_config,
+    final Quadrant<T> in_root,
+    final PersistentIdentityMap<T, Item<T>> in_objects)
+  {
+    this.config = in_config;
+    this.root = in_root;
+    this.objects = in_objects;
+  }
+
+  /**
+   * Create a new empty tree with the given bounds.
+   *
+   * @param config The tree configuration
+   * @param <T>    The type of objects contained within the tree
+   *
+   * @return A new tree
+   */
+
+  public static <T> QuadTreePersistentDType<T> create(
+    final QuadTreeConfigurationD config)
+  {
+    Objects.requireNonNull(config, "Configuration");
+    return new QuadTreePersistentD<>(
+      config,
+      Quadrant.empty(config.area(), 0),
+      PersistentIdentityMap.empty());
+  }
+
+  private QuadTreePersistentD<T> withRoot(
+    final Quadrant<T> new_root,
+    final PersistentIdentityMap<T, Item<T>> new_objects)
+  {
+    return new QuadTreePersistentD<>(this.config, new_root, new_objects);
+  }
+
+  @Override
+  public long size()
+  {
+    return (long) this.objects.size();
+  }
+
+  @Override
+  public boolean equals(final Object o)
+  {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || this.getClass() != o.getClass()) {
+      return false;
+    }
+
+    final QuadTreePersistentD<?> that = (QuadTreePersistentD<?>) o;
+    if (this.objects.size() != that.objects.size()) {
+      return false;
+    }
+
+    final boolean[] equal = {true};
+    this.objects.forEach((value, item) -> {
+      final Item<?> other = that.objects.get(value);
+      if (other == null || !Objects.equals(item.area, other.area)) {
+        equal[0] = false;
+      }
+    });
+    return equal[0];
+  }
+
+  @Override
+  public int hashCode()
+  {
+    final int[] hash = {0};
+    this.objects.forEach((value, item) -> {
+      hash[0] += System.identityHashCode(value) ^ item.area.hashCode();
+    });
+    return hash[0];
+  }
+
+  @Override
+  public AreaD bounds()
+  {
+    return this.root.area;
+  }
+
+  @Override
+  public boolean contains(final T item)
+  {
+    return this.objects.get(item) != null;
+  }
+
+  @Override
+  public QuadTreePersistentDType<T> insert(
+    final T item,
+    final AreaD item_bounds)
+  {
+    Objects.requireNonNull(item, "Item");
+    Objects.requireNonNull(item_bounds, "Bounds");
+
+    final Item<T> inserted = new Item<>(item, item_bounds);
+    final boolean fits =
+      AreaBoundsD.contains(this.root.bounds, 0, inserted.bounds, 0);
+
+    /*
+     * An object that is already in the tree is removed without trimming,
+     * inserted again, and then the path to its old position is trimmed.
+     * This is the order in which a mutable tree moves an object, and so
+     * the two trees have the same structure afterwards.
+     */
+
+    final Item<T> existing = this.objects.get(item);
+    if (existing != null) {
+      Quadrant<T> new_root = this.root.remove(existing, false);
+      PersistentIdentityMap<T, Item<T>> new_objects = this.objects.remove(item);
+      if (fits) {
+        new_root = new_root.insertStep(this.config, inserted);
+        new_objects = new_objects.put(item, inserted);
+      }
+      if (this.config.trimOnRemove()) {
+        new_root = new_root.trimPath(existing.bounds);
+      }
+      return this.withRoot(new_root, new_objects);
+    }
+
+    if (!fits) {
+      return this;
+    }
+    return this.withRoot(
+      this.root.insertStep(this.config, inserted),
+      this.objects.put(item, inserted));
+  }
+
+  @Override
+  public QuadTreePersistentDType<T> insertAll(
+    final Map<T, AreaD> items)
+  {
+    Objects.requireNonNull(items, "Items");
+
+    QuadTreePersistentDType<T> result = this;
+    for (final Map.Entry<T, AreaD> entry : items.entrySet()) {
+      result = result.insert(entry.getKey(), entry.getValue());
+    }
+    return result;
+  }
+
+  @Override
+  public QuadTreePersistentDType<T> remove(final T item)
+  {
+    Objects.requireNonNull(item, "Item");
+
+    final Item<T> existing = this.objects.get(item);
+    if (existing == null) {
+      return this;
+    }
+    return this.withRoot(
+      this.root.remove(existing, this.config.trimOnRemove()),
+      this.objects.remove(item));
+  }
+
+  @Override
+  public QuadTreePersistentDType<T> clear()
+  {
+    if (this.objects.size() == 0) {
+      return this;
+    }
+    return this.withRoot(
+      Quadrant.empty(this.root.area, 0), PersistentIdentityMap.empty());
+  }
+
+  @Override
+  public QuadTreePersistentDType<T> trim()
+  {
+    return this.withRoot(this.root.trim(), this.objects);
+  }
+
+  @Override
+  public <U> QuadTreePersistentDType<U> map(final BiFunction<T, AreaD, U> f)
+  {
+    Objects.requireNonNull(f, "Function");
+
+    @SuppressWarnings("unchecked")
+    final QuadTreePersistentDType<U>[] result =
+      new QuadTreePersistentDType[]{create(this.config)};
+    this.objects.forEach((value, item) -> {
+      result[0] = result[0].insert(f.apply(value, item.area), item.area);
+    });
+    return result[0];
+  }
+
+  @Override
+  public <C> void iterateQuadrants(
+    final C context,
+    final QuadTreeQuadrantIterationDType<T, C> f)
+  {
+    Objects.requireNonNull(context, "Context");
+    Objects.requireNonNull(f, "Function");
+    this.root.iterateQuadrants(context, f, 0L);
+  }
+
+  @Override
+  public AreaD areaFor(final T item)
+  {
+    Objects.requireNonNull(item, "Item");
+
+    final Item<T> existing = this.objects.get(item);
+    if (existing == null) {
+      throw new NoSuchElementException(item.toString());
+    }
+    return existing.area;
+  }
+
+  private static <T> TreeVisitResult collectItem(
+    final Set<T> items,
+    final T item,
+    final AreaD bounds)
+  {
+    items.add(item);
+    return TreeVisitResult.RESULT_CONTINUE;
+  }
+
+  private static <T> TreeVisitResult collectRaycastResult(
+    final SortedSet<QuadTreeRaycastResultD<T>> items,
+    final T item,
+    final AreaD bounds,
+    final double distance)
+  {
+    items.add(QuadTreeRaycastResultD.of(distance, bounds, item));
+    return TreeVisitResult.RESULT_CONTINUE;
+  }
+
+  @Override
+  public void containedBy(
+    final AreaD area,
+    final Set<T> items)
+  {
+    Objects.requireNonNull(area, "Area");
+    Objects.requireNonNull(items, "Items");
+    this.root.areaContainingVisit(
+      AreaBoundsD.pack(area), items, QuadTreePersistentD::collectItem);
+  }
+
+  @Override
+  public void overlappedBy(
+    final AreaD area,
+    final Set<T> items)
+  {
+    Objects.requireNonNull(area, "Area");
+    Objects.requireNonNull(items, "Items");
+    this.root.areaOverlappingVisit(
+      AreaBoundsD.pack(area), items, QuadTreePersistentD::collectItem);
+  }
+
+  @Override
+  public void raycast(
+    final Ray2D ray,
+    final SortedSet<QuadTreeRaycastResultD<T>> items)
+  {
+    Objects.requireNonNull(ray, "Ray");
+    Objects.requireNonNull(items, "Items");
+    this.root.raycastVisit(ray, items, QuadTreePersistentD::collectRaycastResult);
+  }
+
+  @Override
+  public <C> TreeVisitResult containedBy(
+    final AreaD area,
+    final C context,
+    final QuadTreeItemVisitorDType<T, C> f)
+  {
+    Objects.requireNonNull(area, "Area");
+    Objects.requireNonNull(context, "Context");
+    Objects.requireNonNull(f, "Function");
+    return this.root.areaContainingVisit(AreaBoundsD.pack(area), context, f);
+  }
+
+  @Override
+  public <C> TreeVisitResult overlappedBy(
+    final AreaD area,
+    final C context,
+    final QuadTreeItemVisitorDType<T, C> f)
+  {
+    Objects.requireNonNull(area, "Area");
+    Objects.requireNonNull(context, "Context");
+    Objects.requireNonNull(f, "Function");
+    return this.root.areaOverlappingVisit(AreaBoundsD.pack(area), context, f);
+  }
+
+  @Override
+  public <C> TreeVisitResult raycast(
+    final Ray2D ray,
+    final C context,
+    final QuadTreeRaycastVisitorDType<T, C> f)
+  {
+    Objects.requireNonNull(ray, "Ray");
+    Objects.requireNonNull(context, "Context");
+    Objects.requireNonNull(f, "Function");
+    return this.root.raycastVisit(ray, context, f);
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public <C> TreeVisitResult nearest(
+    final Vector2D point,
+    final int count,
+    final C context,
+    final QuadTreeNearestVisitorDType<T, C> f)
+  {
+    Objects.requireNonNull(point, "Point");
+    Objects.requireNonNull(context, "Context");
+    Objects.requireNonNull(f, "Function");
+    Preconditions.checkPreconditionI(
+      count, count >= 0, c -> "Count must be non-negative");
+
+    /*
+     * Best-first search, as with QuadTreeD.
+     */
+
+    final double x = point.x();
+    final double y = point.y();
+    final DistanceHeap heap = new DistanceHeap();
+    heap.add(AreaBoundsD.distanceSquared(x, y, this.root.bounds, 0), this.root, 0);
+
+    int found = 0;
+    while (found < count && !heap.isEmpty()) {
+      final double key = heap.topKey();
+      final Object top = heap.topObject();
+      heap.removeTop();
+
+      if (top instanceof Item) {
+        final Item<T> item = (Item<T>) top;
+        ++found;
+        if (f.apply(context, item.value, item.area, Math.sqrt(key))
+          == TreeVisitResult.RESULT_TERMINATE) {
+          return TreeVisitResult.RESULT_TERMINATE;
+        }
+      } else {
+        ((Quadrant<T>) top).nearestExpand(x, y, heap);
+      }
+    }
+    return TreeVisitResult.RESULT_CONTINUE;
+  }
+
+  @Override
+  public Optional<QuadTreeRaycastResultD<T>> raycastFirst(
+    final Ray2D ray)
+  {
+    Objects.requireNonNull(ray, "Ray");
+
+    final RaycastHit<T> hit = new RaycastHit<>();
+    if (AreaBoundsD.entryDistance(ray, this.root.bounds, 0) < hit.distance) {
+      this.root.raycastFirst(ray, AreaBoundsD.raycastOrder(ray), hit);
+    }
+
+    final Item<T> item = hit.item;
+    if (item != null) {
+      return Optional.of(QuadTreeRaycastResultD.of(hit.distance, item.area, item.value));
+    }
+    return Optional.empty();
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public <C> TreeVisitResult raycastFirst(
+    final Ray2D ray,
+    final int count,
+    final C context,
+    final QuadTreeRaycastVisitorDType<T, C> f)
+  {
+    Objects.requireNonNull(ray, "Ray");
+    Objects.requireNonNull(context, "Context");
+    Objects.requireNonNull(f, "Function");
+    Preconditions.checkPreconditionI(
+      count, count >= 0, c -> "Count must be non-negative");
+
+    final DistanceHeap heap = new DistanceHeap();
+    final double root_distance = AreaBoundsD.entryDistance(ray, this.root.bounds, 0);
+    if (root_distance < Double.POSITIVE_INFINITY) {
+      heap.add(root_distance, this.root, 0);
+    }
+
+    int found = 0;
+    while (found < count && !heap.isEmpty()) {
+      final double key = heap.topKey();
+      final Object top = heap.topObject();
+      heap.removeTop();
+
+      if (top instanceof Item) {
+        final Item<T> item = (Item<T>) top;
+        ++found;
+        if (f.apply(context, item.value, item.area, key)
+          == TreeVisitResult.RESULT_TERMINATE) {
+          return TreeVisitResult.RESULT_TERMINATE;
+        }
+      } else {
+        ((Quadrant<T>) top).raycastExpand(ray, heap);
+      }
+    }
+    return TreeVisitResult.RESULT_CONTINUE;
+  }
+
+  @Override
+  public void raycast(
+    final Ray2D ray,
+    final QuadTreeRaycastBufferD<T> results)
+  {
+    Objects.requireNonNull(ray, "Ray");
+    Objects.requireNonNull(results, "Results");
+    this.root.raycastBuffer(ray, results);
+  }
+
+  @Override
+  public long countContainedBy(
+    final AreaD area)
+  {
+    Objects.requireNonNull(area, "Area");
+    return this.root.countContaining(AreaBoundsD.pack(area));
+  }
+
+  @Override
+  public long countOverlapping(
+    final AreaD area)
+  {
+    Objects.requireNonNull(area, "Area");
+    return this.root.countOverlapping(AreaBoundsD.pack(area));
+  }
+
+  @Override
+  public boolean anyOverlapping(
+    final AreaD area)
+  {
+    Objects.requireNonNull(area, "Area");
+    return this.root.anyOverlapping(AreaBoundsD.pack(area));
+  }
+
+  /**
+   * An object held by the tree, along with its bounds.
+   */
+
+  private static final class Item<T>
+  {
+    private final T value;
+    private final AreaD area;
+    private final double[] bounds;
+
+    private Item(
+      final T in_value,
+      final AreaD in_area)
+    {
+      this.value = in_value;
+      this.area = in_area;
+      this.bounds = AreaBoundsD.pack(in_area);
+    }
+  }
+
+  /**
+   * The nearest object found so far by a first-hit raycast.
+   */
+
+  private static final class RaycastHit<T>
+  {
+    private double distance;
+    private Item<T> item;
+
+    private RaycastHit()
+    {
+      this.distance = Double.POSITIVE_INFINITY;
+    }
+  }
+
+  /**
+   * An immutable quadrant. A quadrant is either a leaf, or has exactly four
+   * children, in the same order as the children of {@link QuadTreeD}
+   * quadrants.
+   */
+
+  private static final class Quadrant<T> implements QuadTreeQuadrantDType<T>
+  {
+    private final AreaD area;
+    private final double[] bounds;
+    private final int node_depth;
+    private final Item<T>[] items;
+    private final Quadrant<T>[] children;
+    private final int subtree_count;
+
+    private Quadrant(
+      final AreaD in_area,
+      final double[] in_bounds,
+      final int in_depth,
+      final Item<T>[] in_items,
+      final Quadrant<T>[] in_children,
+      final int in_subtree_count)
+    {
+      this.area = in_area;
+      this.bounds = in_bounds;
+      this.node_depth = in_depth;
+      this.items = in_items;
+      this.children = in_children;
+      this.subtree_count = in_subtree_count;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> Quadrant<T> empty(
+      final AreaD area,
+      final int depth)
+    {
+      return new Quadrant<>(
+        area, AreaBoundsD.pack(area), depth, (Item<T>[]) NO_ITEMS, null, 0);
+    }
+
+    private boolean isLeaf()
+    {
+      return this.children == null;
+    }
+
+    private boolean isEmptyLeaf()
+    {
+      return this.children == null && this.items.length == 0;
+    }
+
+    private Quadrant<T> withItems(
+      final Item<T>[] new_items,
+      final Quadrant<T>[] new_children,
+      final int new_subtree_count)
+    {
+      return new Quadrant<>(
+        this.area,
+        this.bounds,
+        this.node_depth,
+        new_items,
+        new_children,
+        new_subtree_count);
+    }
+
+    private Quadrant<T> withItem(final Item<T> item)
+    {
+      final Item<T>[] new_items =
+        Arrays.copyOf(this.items, this.items.length + 1);
+      new_items[this.items.length] = item;
+      return this.withItems(new_items, this.children, this.subtree_count + 1);
+    }
+
+    private Quadrant<T> withoutItem(final int index)
+    {
+      final Item<T>[] new_items =
+        Arrays.copyOf(this.items, this.items.length - 1);
+      System.arraycopy(
+        this.items, index + 1, new_items, index, this.items.length - index - 1);
+      return this.withItems(new_items, this.children, this.subtree_count - 1);
+    }
+
+    private Quadrant<T> withChild(
+      final int index,
+      final Quadrant<T> child)
+    {
+      final Quadrant<T> existing = this.children[index];
+      if (existing == child) {
+        return this;
+      }
+
+      final Quadrant<T>[] new_children = this.children.clone();
+      new_children[index] = child;
+      return this.withItems(
+        this.items,
+        new_children,
+        this.subtree_count - existing.subtree_count + child.subtree_count);
+    }
+
+    private int indexOf(final Item<T> item)
+    {
+      for (int index = 0; index < this.items.length; ++index) {
+        if (this.items[index] == item) {
+          return index;
+        }
+      }
+      return -1;
+    }
+
+    /**
+     * @return The index of the first child that can contain {@code target},
+     * or {@code -1} if no child can contain it
+     */
+
+    private int childIndexContaining(
+      final double[] target)
+    {
+      for (int index = 0; index < CHILDREN; ++index) {
+        if (AreaBoundsD.contains(this.children[index].bounds, 0, target, 0)) {
+          return index;
+        }
+      }
+      return -1;
+    }
+
+    private boolean hasCapacity(
+      final QuadTreeConfigurationD config)
+    {
+      return this.items.length < config.maximumItemsPerLeaf();
+    }
+
+    private boolean canSplit(
+      final QuadTreeConfigurationD config)
+    {
+      if (this.node_depth >= config.maximumDepth()) {
+        return false;
+      }
+
+      final double min_width = Math.max(0.0001, config.minimumQuadrantWidth());
+      final double min_height = Math.max(0.0001, config.minimumQuadrantHeight());
+      return this.area.sizeX() / 2.0 >= min_width
+        && this.area.sizeY() / 2.0 >= min_height;
+    }
+
+    /**
+     * Insert an object that this quadrant can contain, returning the new
+     * version of this quadrant.
+     */
+
+    private Quadrant<T> insertStep(
+      final QuadTreeConfigurationD config,
+      final Item<T> item)
+    {
+      Quadrant<T> node = this;
+      if (node.isLeaf()) {
+        if (node.hasCapacity(config) || !node.canSplit(config)) {
+          return node.withItem(item);
+        }
+        node = node.split(config);
+      }
+
+      final int index = node.childIndexContaining(item.bounds);
+      if (index >= 0) {
+        return node.withChild(index, node.children[index].insertStep(config, item));
+      }
+      return node.withItem(item);
+    }
+
+    /**
+     * Split this leaf, and move every object that fits in a child into that
+     * child, in the same order as {@link QuadTreeD}.
+     */
+
+    @SuppressWarnings("unchecked")
+    private Quadrant<T> split(
+      final QuadTreeConfigurationD config)
+    {
+      final AreaXYSplitD<AreaD> q = QuadrantsD.subdivide(this.area);
+      final int depth = this.node_depth + 1;
+      final Quadrant<T>[] new_children = (Quadrant<T>[]) new Quadrant<?>[]{
+        empty(q.x0y0(), depth),
+        empty(q.x1y0(), depth),
+        empty(q.x0y1(), depth),
+        empty(q.x1y1(), depth),
+      };
+
+      Quadrant<T> node =
+        this.withItems((Item<T>[]) NO_ITEMS, new_children, 0);
+      for (int index = this.items.length - 1; index >= 0; --index) {
+        final Item<T> item = this.items[index];
+        final int child = node.childIndexContaining(item.bounds);
+        if (child < 0) {
+          node = node.withItem(item);
+        } else {
+          node = node.withChild(
+            child, node.children[child].insertStep(config, item));
+        }
+      }
+      return node;
+    }
+
+    /**
+     * Remove an object from the quadrant that holds it. An object is held by
+     * the first quadrant on the path from the root that is either a leaf or
+     * has no child that can contain the object.
+     */
+
+    private Quadrant<T> remove(
+      final Item<T> item,
+      final boolean trim)
+    {
+      if (!this.isLeaf()) {
+        final int child = this.childIndexContaining(item.bounds);
+        if (child >= 0) {
+          final Quadrant<T> result =
+            this.withChild(child, this.children[child].remove(item, trim));
+          return trim ? result.unsplitAttempt() : result;
+        }
+      }
+
+      final int index = this.indexOf(item);
+      Invariants.checkInvariantI(
+        index, index >= 0, i -> "Object must be held by quadrant");
+      final Quadrant<T> result = this.withoutItem(index);
+      return trim ? result.unsplitAttempt() : result;
+    }
+
+    /**
+     * Attempt to turn each quadrant on the path to {@code target} back into
+     * a leaf, starting from the bottom of the path.
+     */
+
+    private Quadrant<T> trimPath(
+      final double[] target)
+    {
+      if (this.isLeaf()) {
+        return this;
+      }
+
+      Quadrant<T> node = this;
+      final int child = this.childIndexContaining(target);
+      if (child >= 0) {
+        node = this.withChild(child, this.children[child].trimPath(target));
+      }
+      return node.unsplitAttempt();
+    }
+
+    private Quadrant<T> unsplitAttempt()
+    {
+      if (this.isLeaf()) {
+        return this;
+      }
+      for (int index = 0; index < CHILDREN; ++index) {
+        if (!this.children[index].isEmptyLeaf()) {
+          return this;
+        }
+      }
+      return this.withItems(this.items, null, this.subtree_count);
+    }
+
+    private Quadrant<T> trim()
+    {
+      if (this.isLeaf()) {
+        return this;
+      }
+
+      Quadrant<T> node = this;
+      for (int index = 0; index < CHILDREN; ++index) {
+        node = node.withChild(index, this.children[index].trim());
+      }
+      return node.unsplitAttempt();
+    }
+
+    private <C> TreeVisitResult areaContainingVisit(
+      final double[] target_area,
+      final C context,
+      final QuadTreeItemVisitorDType<T, C> f)
+    {
+      if (this.subtree_count == 0) {
+        return TreeVisitResult.RESULT_CONTINUE;
+      }
+
+      if (AreaBoundsD.contains(target_area, 0, this.bounds, 0)) {
+        return this.visitRecursive(context, f);
+      }
+
+      for (final Item<T> item : this.items) {
+        if (AreaBoundsD.contains(target_area, 0, item.bounds, 0)) {
+          if (f.apply(context, item.value, item.area)
+            == TreeVisitResult.RESULT_TERMINATE) {
+            return TreeVisitResult.RESULT_TERMINATE;
+          }
+        }
+      }
+
+      if (!this.isLeaf()) {
+        for (final Quadrant<T> child : this.children) {
+          if (child.areaContainingVisit(target_area, context, f)
+            == TreeVisitResult.RESULT_TERMINATE) {
+            return TreeVisitResult.RESULT_TERMINATE;
+          }
+        }
+      }
+      return TreeVisitResult.RESULT_CONTINUE;
+    }
+
+    private <C> TreeVisitResult visitRecursive(
+      final C context,
+      final QuadTreeItemVisitorDType<T, C> f)
+    {
+      for (final Item<T> item : this.items) {
+        if (f.apply(context, item.value, item.area)
+          == TreeVisitResult.RESULT_TERMINATE) {
+          return TreeVisitResult.RESULT_TERMINATE;
+        }
+      }
+
+      if (!this.isLeaf()) {
+        for (final Quadrant<T> child : this.children) {
+          if (child.visitRecursive(context, f) == TreeVisitResult.RESULT_TERMINATE) {
+            return TreeVisitResult.RESULT_TERMINATE;
+          }
+        }
+      }
+      return TreeVisitResult.RESULT_CONTINUE;
+    }
+
+    private <C> TreeVisitResult areaOverlappingVisit(
+      final double[] target_area,
+      final C context,
+      final QuadTreeItemVisitorDType<T, C> f)
+    {
+      if (this.subtree_count == 0) {
+        return TreeVisitResult.RESULT_CONTINUE;
+      }
+
+      if (!AreaBoundsD.overlaps(target_area, 0, this.bounds, 0)) {
+        return TreeVisitResult.RESULT_CONTINUE;
+      }
+
+      for (final Item<T> item : this.items) {
+        if (AreaBoundsD.overlaps(target_area, 0, item.bounds, 0)) {
+          if (f.apply(context, item.value, item.area)
+            == TreeVisitResult.RESULT_TERMINATE) {
+            return TreeVisitResult.RESULT_TERMINATE;
+          }
+        }
+      }
+
+      if (!this.isLeaf()) {
+        for (final Quadrant<T> child : this.children) {
+          if (child.areaOverlappingVisit(target_area, context, f)
+            == TreeVisitResult.RESULT_TERMINATE) {
+            return TreeVisitResult.RESULT_TERMINATE;
+          }
+        }
+      }
+      return TreeVisitResult.RESULT_CONTINUE;
+    }
+
+    private <C> TreeVisitResult raycastVisit(
+      final Ray2D ray,
+      final C context,
+      final QuadTreeRaycastVisitorDType<T, C> f)
+    {
+      if (this.subtree_count == 0) {
+        return TreeVisitResult.RESULT_CONTINUE;
+      }
+
+      if (!AreaBoundsD.intersects(ray, this.bounds, 0)) {
+        return TreeVisitResult.RESULT_CONTINUE;
+      }
+
+      for (final Item<T> item : this.items) {
+        final double[] b = item.bounds;
+        if (AreaBoundsD.intersects(ray, b, 0)) {
+          final double distance =
+            Vectors2D.distance(
+            Vector2D.of(b[0], b[2]),
+            ray.origin());
+          if (f.apply(context, item.value, item.area, distance)
+            == TreeVisitResult.RESULT_TERMINATE) {
+            return TreeVisitResult.RESULT_TERMINATE;
+          }
+        }
+      }
+
+      if (!this.isLeaf()) {
+        for (final Quadrant<T> child : this.children) {
+          if (child.raycastVisit(ray, context, f) == TreeVisitResult.RESULT_TERMINATE) {
+            return TreeVisitResult.RESULT_TERMINATE;
+          }
+        }
+      }
+      return TreeVisitResult.RESULT_CONTINUE;
+    }
+
+    private void nearestExpand(
+      final double x,
+      final double y,
+      final DistanceHeap heap)
+    {
+      for (final Item<T> item : this.items) {
+        heap.add(AreaBoundsD.distanceSquared(x, y, item.bounds, 0), item, 0);
+      }
+
+      if (!this.isLeaf()) {
+        for (final Quadrant<T> child : this.children) {
+          if (child.subtree_count > 0) {
+            heap.add(AreaBoundsD.distanceSquared(x, y, child.bounds, 0), child, 0);
+          }
+        }
+      }
+    }
+
+    private void raycastFirst(
+      final Ray2D ray,
+      final int order,
+      final RaycastHit<T> hit)
+    {
+      for (final Item<T> item : this.items) {
+        final double distance = AreaBoundsD.entryDistance(ray, item.bounds, 0);
+        if (distance < hit.distance) {
+          hit.distance = distance;
+          hit.item = item;
+        }
+      }
+
+      if (!this.isLeaf()) {
+        for (int index = 0; index < CHILDREN; ++index) {
+          final Quadrant<T> child = this.children[index ^ order];
+          if (child.subtree_count > 0
+            && AreaBoundsD.entryDistance(ray, child.bounds, 0) < hit.distance) {
+            child.raycastFirst(ray, order, hit);
+          }
+        }
+      }
+    }
+
+    private void raycastExpand(
+      final Ray2D ray,
+      final DistanceHeap heap)
+    {
+      for (final Item<T> item : this.items) {
+        final double distance = AreaBoundsD.entryDistance(ray, item.bounds, 0);
+        if (distance < Double.POSITIVE_INFINITY) {
+          heap.add(distance, item, 0);
+        }
+      }
+
+      if (!this.isLeaf()) {
+        for (final Quadrant<T> child : this.children) {
+          if (child.subtree_count > 0) {
+            final double distance = AreaBoundsD.entryDistance(ray, child.bounds, 0);
+            if (distance < Double.POSITIVE_INFINITY) {
+              heap.add(distance, child, 0);
+            }
+          }
+        }
+      }
+    }
+
+    private void raycastBuffer(
+      final Ray2D ray,
+      final QuadTreeRaycastBufferD<T> results)
+    {
+      if (this.subtree_count == 0) {
+        return;
+      }
+
+      if (!AreaBoundsD.intersects(ray, this.bounds, 0)) {
+        return;
+      }
+
+      for (final Item<T> item : this.items) {
+        final double[] b = item.bounds;
+        final double distance = AreaBoundsD.entryDistance(ray, b, 0);
+        if (distance < Double.POSITIVE_INFINITY) {
+          results.add(item.value, distance, b[0], b[1], b[2], b[3]);
+        }
+      }
+
+      if (!this.isLeaf()) {
+        for (final Quadrant<T> child : this.children) {
+          child.raycastBuffer(ray, results);
+        }
+      }
+    }
+
+    private long countContaining(
+      final double[] target_area)
+    {
+      if (this.subtree_count == 0) {
+        return 0L;
+      }
+      if (AreaBoundsD.contains(target_area, 0, this.bounds, 0)) {
+        return (long) this.subtree_count;
+      }
+      if (!AreaBoundsD.touches(target_area, 0, this.bounds, 0)) {
+        return 0L;
+      }
+
+      long count = 0L;
+      for (final Item<T> item : this.items) {
+        if (AreaBoundsD.contains(target_area, 0, item.bounds, 0)) {
+          ++count;
+        }
+      }
+
+      if (!this.isLeaf()) {
+        for (final Quadrant<T> child : this.children) {
+          count += child.countContaining(target_area);
+        }
+      }
+      return count;
+    }
+
+    private long countOverlapping(
+      final double[] target_area)
+    {
+      if (this.subtree_count == 0) {
+        return 0L;
+      }
+      if (!AreaBoundsD.overlaps(target_area, 0, this.bounds, 0)) {
+        return 0L;
+      }
+      if (AreaBoundsD.overlapsAllWithin(target_area, 0, this.bounds, 0)) {
+        return (long) this.subtree_count;
+      }
+
+      long count = 0L;
+      for (final Item<T> item : this.items) {
+        if (AreaBoundsD.overlaps(target_area, 0, item.bounds, 0)) {
+          ++count;
+        }
+      }
+
+      if (!this.isLeaf()) {
+        for (final Quadrant<T> child : this.children) {
+          count += child.countOverlapping(target_area);
+        }
+      }
+      return count;
+    }
+
+    private boolean anyOverlapping(
+      final double[] target_area)
+    {
+      if (this.subtree_count == 0) {
+        return false;
+      }
+      if (!AreaBoundsD.overlaps(target_area, 0, this.bounds, 0)) {
+        return false;
+      }
+      if (AreaBoundsD.overlapsAllWithin(target_area, 0, this.bounds, 0)) {
+        return true;
+      }
+
+      for (final Item<T> item : this.items) {
+        if (AreaBoundsD.overlaps(target_area, 0, item.bounds, 0)) {
+          return true;
+        }
+      }
+
+      if (!this.isLeaf()) {
+        for (final Quadrant<T> child : this.children) {
+          if (child.anyOverlapping(target_area)) {
+            return true;
+          }
+        }
+      }
+      return false;
+    }
+
+    private <C> TreeVisitResult iterateQuadrants(
+      final C context,
+      final QuadTreeQuadrantIterationDType<T, C> f,
+      final long depth)
+    {
+      switch (f.apply(context, this, depth)) {
+        case RESULT_CONTINUE: {
+          if (!this.isLeaf()) {
+            for (final Quadrant<T> child : this.children) {
+              if (child.iterateQuadrants(context, f, Math.addExact(depth, 1L))
+                == TreeVisitResult.RESULT_TERMINATE) {
+                return TreeVisitResult.RESULT_TERMINATE;
+              }
+            }
+          }
+          return TreeVisitResult.RESULT_CONTINUE;
+        }
+        case RESULT_TERMINATE:
+          return TreeVisitResult.RESULT_TERMINATE;
+      }
+
+      throw new UnreachableCodeException();
+    }
+
+    @Override
+    public Map<T, AreaD> objects()
+    {
+      final Reference2ReferenceOpenHashMap<T, AreaD> m =
+        new Reference2ReferenceOpenHashMap<>(this.items.length);
+      for (final Item<T> item : this.items) {
+        m.put(item.value, item.area);
+      }
+      return Reference2ReferenceMaps.unmodifiable(m);
+    }
+
+    @Override
+    public AreaD area()
+    {
+      return this.area;
+    }
+  }
+}
@@ -0,0 +1,350 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jspatial.implementation;
+
+import com.io7m.jregions.core.unparameterized.areas.AreaD;
+import com.io7m.jspatial.api.Ray2D;
+import com.io7m.jspatial.api.TreeVisitResult;
+import com.io7m.jspatial.api.quadtrees.QuadTreeConfigurationD;
+import com.io7m.jspatial.api.quadtrees.QuadTreeDType;
+import com.io7m.jspatial.api.quadtrees.QuadTreeItemVisitorDType;
+import com.io7m.jspatial.api.quadtrees.QuadTreeNearestVisitorDType;
+import com.io7m.jspatial.api.quadtrees.QuadTreePersistentDType;
+import com.io7m.jspatial.api.quadtrees.QuadTreeQuadrantIterationDType;
+import com.io7m.jspatial.api.quadtrees.QuadTreeRaycastBufferD;
+import com.io7m.jspatial.api.quadtrees.QuadTreeRaycastResultD;
+import com.io7m.jspatial.api.quadtrees.QuadTreeRaycastVisitorDType;
+import com.io7m.jspatial.api.quadtrees.QuadTreeReadableDType;
+import com.io7m.jtensors.core.unparameterized.vectors.Vector2D;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BiFunction;
+
+/**
+ * <p>An implementation of the {@link QuadTreeDType} interface backed by a
+ * {@link QuadTreePersistentD} tree.</p>
+ *
+ * <p>The tree holds the current version of a persistent tree. Each
+ * modification produces a new version and publishes it, and modifications
+ * are serialized by the tree's monitor. Queries never lock: each query reads
+ * the version that was current when it started, and is unaffected by
+ * modifications made while it runs. {@link #snapshot()} returns the current
+ * version without copying it, so readers on other threads may hold a
+ * consistent view of the tree for as long as they require.</p>
+ *
+ * @param <T> The precise type of tree objects
+ */
+
+public final class QuadTreeVersionedD<T> implements QuadTreeDType<T>
+{
+  private volatile QuadTreePersistentDType<T> current;
+
+  private QuadTreeVersionedD(final QuadTreePersistentDType<T> in_current)
+  {
+    this.current = Objects.requireNonNull(in_current, "Current");
+  }
+
+  /**
+   * Create a new empty tree with the given bounds.
+   *
+   * @param config The tree configuration
+   * @param <T>    The type of objects contained within the tree
+   *
+   * @return A new tree
+   */
+
+  public static <T> QuadTreeDType<T> create(
+    final QuadTreeConfigurationD config)
+  {
+    return new QuadTreeVersionedD<>(QuadTreePersistentD.create(config));
+  }
+
+  @Override
+  public boolean equals(final Object o)
+  {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || this.getClass() != o.getClass()) {
+      return false;
+    }
+
+    final QuadTreeVersionedD<?> that = (QuadTreeVersionedD<?>) o;
+    return this.current.equals(that.current);
+  }
+
+  @Override
+  public int hashCode()
+  {
+    return this.current.hashCode();
+  }
+
+  @Override
+  public QuadTreeReadableDType<T> snapshot()
+  {
+    return this.current;
+  }
+
+  @Override
+  public long size()
+  {
+    return this.current.size();
+  }
+
+  @Override
+  public AreaD bounds()
+  {
+    return this.current.bounds();
+  }
+
+  @Override
+  public boolean contains(final T item)
+  {
+    return this.current.contains(item);
+  }
+
+  @Override
+  public synchronized boolean insert(
+    final T item,
+    final AreaD bounds)
+  {
+    final QuadTreePersistentDType<T> next = this.current.insert(item, bounds);
+    this.current = next;
+    return next.contains(item);
+  }
+
+  @Override
+  public synchronized long insertAll(
+    final Map<T, AreaD> items)
+  {
+    Objects.requireNonNull(items, "Items");
+
+    /*
+     * The new version is only published once every object has been
+     * inserted, so queries see either none or all of the objects.
+     */
+
+    QuadTreePersistentDType<T> next = this.current;
+    long count = 0L;
+    for (final Map.Entry<T, AreaD> entry : items.entrySet()) {
+      final T item = entry.getKey();
+      next = next.insert(item, entry.getValue());
+      if (next.contains(item)) {
+        ++count;
+      }
+    }
+    this.current = next;
+    return count;
+  }
+
+  @Override
+  public synchronized boolean remove(final T item)
+  {
+    final QuadTreePersistentDType<T> previous = this.current;
+    final QuadTreePersistentDType<T> next = previous.remove(item);
+    this.current = next;
+    return next != previous;
+  }
+
+  @Override
+  public synchronized void clear()
+  {
+    this.current = this.current.clear();
+  }
+
+  @Override
+  public synchronized void trim()
+  {
+    this.current = this.current.trim();
+  }
+
+  @Override
+  public <U> QuadTreeDType<U> map(final BiFunction<T, AreaD, U> f)
+  {
+    return new QuadTreeVersionedD<>(this.current.map(f));
+  }
+
+  @Override
+  public <C> void iterateQuadrants(
+    final C context,
+    final QuadTreeQuadrantIterationDType<T, C> f)
+  {
+    this.current.iterateQuadrants(context, f);
+  }
+
+  @Override
+  public AreaD areaFor(final T item)
+  {
+    return this.current.areaFor(item);
+  }
+
+  @Override
+  public void containedBy(
+    final AreaD area,
+    final Set<T> items)
+  {
+    this.current.containedBy(area, items);
+  }
+
+  @Override
+  public void overlappedBy(
+    final AreaD area,
+    final Set<T> items)
+  {
+    this.current.overlappedBy(area, items);
+  }
+
+  @Override
+  public void raycast(
+    final Ray2D ray,
+    final SortedSet<QuadTreeRaycastResultD<T>> items)
+  {
+    this.current.raycast(ray, items);
+  }
+
+  @Override
+  public void containedByParallel(
+    final AreaD area,
+    final Set<T> items,
+    final ForkJoinPool pool)
+  {
+    this.current.containedByParallel(area, items, pool);
+  }
+
+  @Override
+  public void overlappedByParallel(
+    final AreaD area,
+    final Set<T> items,
+    final ForkJoinPool pool)
+  {
+    this.current.overlappedByParallel(area, items, pool);
+  }
+
+  @Override
+  public void raycastParallel(
+    final Ray2D ray,
+    final SortedSet<QuadTreeRaycastResultD<T>> items,
+    final ForkJoinPool pool)
+  {
+    this.current.raycastParallel(ray, items, pool);
+  }
+
+  @Override
+  public void overlappedByBatch(
+    final List<AreaD> areas,
+    final List<? extends Set<T>> items)
+  {
+    this.current.overlappedByBatch(areas, items);
+  }
+
+  @Override
+  public void raycastBatch(
+    final List<Ray2D> rays,
+    final List<QuadTreeRaycastBufferD<T>> results)
+  {
+    this.current.raycastBatch(rays, results);
+  }
+
+  @Override
+  public <C> TreeVisitResult containedBy(
+    final AreaD area,
+    final C context,
+    final QuadTreeItemVisitorDType<T, C> f)
+  {
+    return this.current.containedBy(area, context, f);
+  }
+
+  @Override
+  public <C> TreeVisitResult overlappedBy(
+    final AreaD area,
+    final C context,
+    final QuadTreeItemVisitorDType<T, C> f)
+  {
+    return this.current.overlappedBy(area, context, f);
+  }
+
+  @Override
+  public <C> TreeVisitResult raycast(
+    final Ray2D ray,
+    final C context,
+    final QuadTreeRaycastVisitorDType<T, C> f)
+  {
+    return this.current.raycast(ray, context, f);
+  }
+
+  @Override
+  public <C> TreeVisitResult nearest(
+    final Vector2D point,
+    final int count,
+    final C context,
+    final QuadTreeNearestVisitorDType<T, C> f)
+  {
+    return this.current.nearest(point, count, context, f);
+  }
+
+  @Override
+  public Optional<QuadTreeRaycastResultD<T>> raycastFirst(
+    final Ray2D ray)
+  {
+    return this.current.raycastFirst(ray);
+  }
+
+  @Override
+  public <C> TreeVisitResult raycastFirst(
+    final Ray2D ray,
+    final int count,
+    final C context,
+    final QuadTreeRaycastVisitorDType<T, C> f)
+  {
+    return this.current.raycastFirst(ray, count, context, f);
+  }
+
+  @Override
+  public void raycast(
+    final Ray2D ray,
+    final QuadTreeRaycastBufferD<T> results)
+  {
+    this.current.raycast(ray, results);
+  }
+
+  @Override
+  public long countContainedBy(
+    final AreaD area)
+  {
+    return this.current.countContainedBy(area);
+  }
+
+  @Override
+  public long countOverlapping(
+    final AreaD area)
+  {
+    return this.current.countOverlapping(area);
+  }
+
+  @Override
+  public boolean anyOverlapping(
+    final AreaD area)
+  {
+    return this.current.anyOverlapping(area);
+  }
+}
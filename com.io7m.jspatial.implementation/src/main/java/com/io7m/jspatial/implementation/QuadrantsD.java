@@ -19,6 +19,7 @@ package com.io7m.jspatial.implementation;
 import com.io7m.jregions.core.unparameterized.areas.AreaD;
 import com.io7m.jregions.core.unparameterized.areas.AreaXYSplitD;
 import com.io7m.jregions.core.unparameterized.areas.AreasD;
+import com.io7m.jspatial.api.quadtrees.QuadTreeConfigurationD;
 import com.io7m.junreachable.UnreachableCodeException;
 
 import java.util.Objects;
@@ -52,4 +53,41 @@ public final class QuadrantsD
       area.sizeX() / 2.0,
       area.sizeY() / 2.0);
   }
+
+  /**
+   * Determine whether a quadrant of a {@link QuadTreeD} can be split.
+   *
+   * @param config The configuration of the tree
+   * @param area   The area of the quadrant
+   * @param depth  The depth of the quadrant
+   *
+   * @return {@code true} iff the quadrant is above the maximum depth and
+   * each of its children would be at least the minimum quadrant size
+   */
+
+  public static boolean canSplit(
+    final QuadTreeConfigurationD config,
+    final AreaD area,
+    final int depth)
+  {
+    Objects.requireNonNull(config, "Configuration");
+    Objects.requireNonNull(area, "Area");
+
+    if (depth >= config.maximumDepth()) {
+      return false;
+    }
+
+    final double width = area.sizeX();
+    final double height = area.sizeY();
+
+    final double min_width =
+      Math.max(0.0001, config.minimumQuadrantWidth());
+    final double min_height =
+      Math.max(0.0001, config.minimumQuadrantHeight());
+
+    final double half_width = width / 2.0;
+    final double half_height = height / 2.0;
+
+    return half_width >= min_width && half_height >= min_height;
+  }
 }
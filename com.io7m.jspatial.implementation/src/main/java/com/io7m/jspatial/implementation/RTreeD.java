@@ -0,0 +1,1400 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jspatial.implementation;
+
+import com.io7m.jaffirm.core.Preconditions;
+import com.io7m.jregions.core.unparameterized.areas.AreaD;
+import com.io7m.jspatial.api.Ray2D;
+import com.io7m.jspatial.api.TreeVisitResult;
+import com.io7m.jspatial.api.quadtrees.QuadTreeConfigurationD;
+import com.io7m.jspatial.api.quadtrees.QuadTreeDType;
+import com.io7m.jspatial.api.quadtrees.QuadTreeItemVisitorDType;
+import com.io7m.jspatial.api.quadtrees.QuadTreeNearestVisitorDType;
+import com.io7m.jspatial.api.quadtrees.QuadTreeQuadrantDType;
+import com.io7m.jspatial.api.quadtrees.QuadTreeQuadrantIterationDType;
+import com.io7m.jspatial.api.quadtrees.QuadTreeRaycastBufferD;
+import com.io7m.jspatial.api.quadtrees.QuadTreeRaycastResultD;
+import com.io7m.jspatial.api.quadtrees.QuadTreeRaycastVisitorDType;
+import com.io7m.jtensors.core.unparameterized.vectors.Vector2D;
+import com.io7m.jtensors.core.unparameterized.vectors.Vectors2D;
+import com.io7m.junreachable.UnreachableCodeException;
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import it.unimi.dsi.fastutil.objects.Reference2ReferenceMap;
+import it.unimi.dsi.fastutil.objects.Reference2ReferenceMaps;
+import it.unimi.dsi.fastutil.objects.Reference2ReferenceOpenHashMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.function.BiFunction;
+
+/**
+ * <p>An implementation of the {@link QuadTreeDType} interface backed by an
+ * R-tree rather than by recursive subdivision of the tree's area.</p>
+ *
+ * <p>Each node holds up to sixteen entries, along with the bounding area of
+ * each entry. The entries of a leaf are objects, and the entries of any
+ * other node are nodes one level further down, so all leaves are at the same
+ * depth and the shape of the tree follows the objects rather than the
+ * midpoints of the tree's area. Objects are inserted using the R*
+ * heuristics of Beckmann et al.: below the root, the subtree that needs the
+ * least enlargement of overlap (just above the leaves) or of area (further
+ * up) is chosen; a node that overflows first has the entries furthest from
+ * its centre reinserted, at most once per level for each insertion; and a
+ * node that still overflows is split along the axis and at the position that
+ * minimize the total margin, then the overlap, then the area of the two
+ * halves. Removing an object dissolves any node left with fewer than six
+ * entries and reinserts the entries it held. {@link #insertAll(Map)} on an
+ * empty tree builds the tree bottom-up in a single pass with
+ * Sort-Tile-Recursive (STR) packing.</p>
+ *
+ * <p>The area of the configuration bounds the objects that the tree accepts,
+ * exactly as with the other implementations, but the subdivision parameters
+ * of the configuration (the minimum quadrant sizes, the maximum depth, and
+ * the maximum number of items per leaf) do not apply. The quadrants exposed
+ * by {@link #iterateQuadrants(Object, QuadTreeQuadrantIterationDType)} are
+ * the nodes of the tree, and the area of each quadrant is the bounding area
+ * of its entries. Only leaves hold objects.</p>
+ *
+ * @param <T> The precise type of tree objects
+ */
+
+public final class RTreeD<T> implements QuadTreeDType<T>
+{
+  private static final int NONE = -1;
+  private static final int BOUNDS_STRIDE = AreaBoundsD.STRIDE;
+  private static final int MAXIMUM_ENTRIES = 16;
+  private static final int MINIMUM_ENTRIES = 6;
+  private static final int REINSERT_ENTRIES = 5;
+
+  private final QuadTreeConfigurationD config;
+  private final double[] tree_bounds;
+  private final Reference2ReferenceOpenHashMap<T, Node> item_leaves;
+  private Node root;
+
+  /*
+   * The set of node heights (as a bit mask) at which entries have been
+   * reinserted during the current insertion. R* reinserts at most once per
+   * level, and splits any node that overflows thereafter.
+   */
+
+  private long reinserted;
+
+  private RTreeD(final QuadTreeConfigurationD in_config)
+  {
+    this.config = Objects.requireNonNull(in_config, "Configuration");
+    this.tree_bounds = AreaBoundsD.pack(in_config.area());
+    this.item_leaves = new Reference2ReferenceOpenHashMap<>();
+    this.root = new Node(0);
+  }
+
+  /**
+   * Create a new empty tree with the given bounds.
+   *
+   * @param config The tree configuration
+   * @param <T>    The type of objects contained within the tree
+   *
+   * @return A new tree
+   */
+
+  public static <T> QuadTreeDType<T> create(
+    final QuadTreeConfigurationD config)
+  {
+    return new RTreeD<>(config);
+  }
+
+  @Override
+  public void trim()
+  {
+    /*
+     * Removal always dissolves underfull nodes, so an R-tree never holds
+     * empty nodes other than an empty root leaf.
+     */
+  }
+
+  @Override
+  public long size()
+  {
+    return (long) this.item_leaves.size();
+  }
+
+  @Override
+  public boolean equals(final Object o)
+  {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || this.getClass() != o.getClass()) {
+      return false;
+    }
+
+    final RTreeD<?> that = (RTreeD<?>) o;
+    if (this.item_leaves.size() != that.item_leaves.size()) {
+      return false;
+    }
+
+    for (final Reference2ReferenceMap.Entry<T, Node> e : this.entries()) {
+      final Node leaf = e.getValue();
+      final Node that_leaf = that.item_leaves.get(e.getKey());
+      if (that_leaf == null) {
+        return false;
+      }
+      final int b = indexOf(leaf, e.getKey()) * BOUNDS_STRIDE;
+      final int that_b = indexOf(that_leaf, e.getKey()) * BOUNDS_STRIDE;
+      if (!Arrays.equals(
+        leaf.entry_bounds,
+        b,
+        b + BOUNDS_STRIDE,
+        that_leaf.entry_bounds,
+        that_b,
+        that_b + BOUNDS_STRIDE)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public int hashCode()
+  {
+    int hash = 0;
+    for (final Reference2ReferenceMap.Entry<T, Node> e : this.entries()) {
+      final Node leaf = e.getValue();
+      final int b = indexOf(leaf, e.getKey()) * BOUNDS_STRIDE;
+      int item_hash = 0;
+      for (int index = 0; index < BOUNDS_STRIDE; ++index) {
+        item_hash = 31 * item_hash + Double.hashCode(leaf.entry_bounds[b + index]);
+      }
+      hash += System.identityHashCode(e.getKey()) ^ item_hash;
+    }
+    return hash;
+  }
+
+  private Set<Reference2ReferenceMap.Entry<T, Node>> entries()
+  {
+    return this.item_leaves.reference2ReferenceEntrySet();
+  }
+
+  @Override
+  public AreaD bounds()
+  {
+    return this.config.area();
+  }
+
+  @Override
+  public boolean insert(
+    final T item,
+    final AreaD item_area)
+  {
+    Objects.requireNonNull(item, "Item");
+    Objects.requireNonNull(item_area, "Bounds");
+
+    /*
+     * An object that is already in the tree is removed and inserted again
+     * with its new bounds. As with the other implementations, an object
+     * whose new bounds do not fit in the tree is removed.
+     */
+
+    this.remove(item);
+
+    final double[] bounds = AreaBoundsD.pack(item_area);
+    if (!AreaBoundsD.contains(this.tree_bounds, 0, bounds, 0)) {
+      return false;
+    }
+
+    this.insertTop(item, bounds, 0, 0);
+    return true;
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public long insertAll(
+    final Map<T, AreaD> items)
+  {
+    Objects.requireNonNull(items, "Items");
+
+    /*
+     * A tree that already holds objects is updated one object at a time.
+     */
+
+    if (!this.item_leaves.isEmpty()) {
+      long inserted = 0L;
+      for (final Map.Entry<T, AreaD> entry : items.entrySet()) {
+        if (this.insert(entry.getKey(), entry.getValue())) {
+          ++inserted;
+        }
+      }
+      return inserted;
+    }
+
+    /*
+     * Otherwise, discard the objects that cannot fit in the tree and pack
+     * the remaining objects.
+     */
+
+    final Object[] values = new Object[items.size()];
+    final double[] bounds = new double[values.length * BOUNDS_STRIDE];
+    int fitting = 0;
+    for (final Map.Entry<T, AreaD> entry : items.entrySet()) {
+      final int offset = fitting * BOUNDS_STRIDE;
+      values[fitting] = Objects.requireNonNull(entry.getKey(), "Item");
+      AreaBoundsD.store(Objects.requireNonNull(entry.getValue(), "Bounds"), bounds, offset);
+      if (AreaBoundsD.contains(this.tree_bounds, 0, bounds, offset)) {
+        ++fitting;
+      }
+    }
+
+    this.item_leaves.ensureCapacity(fitting);
+    this.root = this.pack(values, bounds, fitting, 0);
+    return (long) fitting;
+  }
+
+  @Override
+  public boolean contains(final T item)
+  {
+    return this.item_leaves.containsKey(item);
+  }
+
+  @Override
+  public boolean remove(final T item)
+  {
+    Objects.requireNonNull(item, "Item");
+
+    final Node leaf = this.item_leaves.remove(item);
+    if (leaf == null) {
+      return false;
+    }
+
+    removeAt(leaf, indexOf(leaf, item));
+    this.condense(leaf);
+    return true;
+  }
+
+  @Override
+  public void clear()
+  {
+    this.item_leaves.clear();
+    this.root = new Node(0);
+  }
+
+  @Override
+  public <U> QuadTreeDType<U> map(final BiFunction<T, AreaD, U> f)
+  {
+    Objects.requireNonNull(f, "Function");
+
+    final QuadTreeDType<U> qt = new RTreeD<>(this.config);
+    for (final T item : this.item_leaves.keySet()) {
+      final AreaD item_area = this.areaFor(item);
+      qt.insert(f.apply(item, item_area), item_area);
+    }
+    return qt;
+  }
+
+  @Override
+  public <C> void iterateQuadrants(
+    final C context,
+    final QuadTreeQuadrantIterationDType<T, C> f)
+  {
+    Objects.requireNonNull(context, "Context");
+    Objects.requireNonNull(f, "Function");
+    this.iterateQuadrantsNode(context, f, this.root, 0L);
+  }
+
+  @Override
+  public AreaD areaFor(final T item)
+  {
+    Objects.requireNonNull(item, "Item");
+
+    final Node leaf = this.item_leaves.get(item);
+    if (leaf == null) {
+      throw new NoSuchElementException(item.toString());
+    }
+    return AreaBoundsD.unpack(leaf.entry_bounds, indexOf(leaf, item) * BOUNDS_STRIDE);
+  }
+
+  private static <T> TreeVisitResult collectItem(
+    final Set<T> items,
+    final T item,
+    final AreaD bounds)
+  {
+    items.add(item);
+    return TreeVisitResult.RESULT_CONTINUE;
+  }
+
+  private static <T> TreeVisitResult collectRaycastResult(
+    final SortedSet<QuadTreeRaycastResultD<T>> items,
+    final T item,
+    final AreaD bounds,
+    final double distance)
+  {
+    items.add(QuadTreeRaycastResultD.of(distance, bounds, item));
+    return TreeVisitResult.RESULT_CONTINUE;
+  }
+
+  @Override
+  public void containedBy(
+    final AreaD area,
+    final Set<T> items)
+  {
+    Objects.requireNonNull(area, "Area");
+    Objects.requireNonNull(items, "Items");
+    this.areaContainingVisit(this.root, AreaBoundsD.pack(area), items, RTreeD::collectItem);
+  }
+
+  @Override
+  public void overlappedBy(
+    final AreaD area,
+    final Set<T> items)
+  {
+    Objects.requireNonNull(area, "Area");
+    Objects.requireNonNull(items, "Items");
+    this.areaOverlappingVisit(this.root, AreaBoundsD.pack(area), items, RTreeD::collectItem);
+  }
+
+  @Override
+  public void raycast(
+    final Ray2D ray,
+    final SortedSet<QuadTreeRaycastResultD<T>> items)
+  {
+    Objects.requireNonNull(ray, "Ray");
+    Objects.requireNonNull(items, "Items");
+    this.raycastVisit(this.root, ray, items, RTreeD::collectRaycastResult);
+  }
+
+  @Override
+  public <C> TreeVisitResult containedBy(
+    final AreaD area,
+    final C context,
+    final QuadTreeItemVisitorDType<T, C> f)
+  {
+    Objects.requireNonNull(area, "Area");
+    Objects.requireNonNull(context, "Context");
+    Objects.requireNonNull(f, "Function");
+    return this.areaContainingVisit(this.root, AreaBoundsD.pack(area), context, f);
+  }
+
+  @Override
+  public <C> TreeVisitResult overlappedBy(
+    final AreaD area,
+    final C context,
+    final QuadTreeItemVisitorDType<T, C> f)
+  {
+    Objects.requireNonNull(area, "Area");
+    Objects.requireNonNull(context, "Context");
+    Objects.requireNonNull(f, "Function");
+    return this.areaOverlappingVisit(this.root, AreaBoundsD.pack(area), context, f);
+  }
+
+  @Override
+  public <C> TreeVisitResult raycast(
+    final Ray2D ray,
+    final C context,
+    final QuadTreeRaycastVisitorDType<T, C> f)
+  {
+    Objects.requireNonNull(ray, "Ray");
+    Objects.requireNonNull(context, "Context");
+    Objects.requireNonNull(f, "Function");
+    return this.raycastVisit(this.root, ray, context, f);
+  }
+
+  @Override
+  public <C> TreeVisitResult nearest(
+    final Vector2D point,
+    final int count,
+    final C context,
+    final QuadTreeNearestVisitorDType<T, C> f)
+  {
+    Objects.requireNonNull(point, "Point");
+    Objects.requireNonNull(context, "Context");
+    Objects.requireNonNull(f, "Function");
+    Preconditions.checkPreconditionI(
+      count, count >= 0, c -> "Count must be non-negative");
+
+    /*
+     * Best-first search over a single queue of nodes and items ordered by
+     * distance from the point. Nodes are queued as themselves, and items as
+     * the leaf that holds them along with their index in the leaf.
+     */
+
+    final double x = point.x();
+    final double y = point.y();
+    final DistanceHeap heap = new DistanceHeap();
+    heap.add(0.0, this.root, NONE);
+
+    int found = 0;
+    while (found < count && !heap.isEmpty()) {
+      final double key = heap.topKey();
+      final Node node = (Node) heap.topObject();
+      final int index = heap.topInt();
+      heap.removeTop();
+
+      if (index != NONE) {
+        ++found;
+        final TreeVisitResult result = f.apply(
+          context,
+          itemAt(node, index),
+          AreaBoundsD.unpack(node.entry_bounds, index * BOUNDS_STRIDE),
+          Math.sqrt(key));
+        if (result == TreeVisitResult.RESULT_TERMINATE) {
+          return TreeVisitResult.RESULT_TERMINATE;
+        }
+      } else {
+        for (int entry = 0; entry < node.count; ++entry) {
+          heap.add(
+            AreaBoundsD.distanceSquared(x, y, node.entry_bounds, entry * BOUNDS_STRIDE),
+            node.height == 0 ? node : node.entries[entry],
+            node.height == 0 ? entry : NONE);
+        }
+      }
+    }
+    return TreeVisitResult.RESULT_CONTINUE;
+  }
+
+  @Override
+  public Optional<QuadTreeRaycastResultD<T>> raycastFirst(
+    final Ray2D ray)
+  {
+    Objects.requireNonNull(ray, "Ray");
+
+    final List<QuadTreeRaycastResultD<T>> results = new ArrayList<>(1);
+    this.raycastFirst(ray, 1, results, (context, item, item_area, distance) -> {
+      context.add(QuadTreeRaycastResultD.of(distance, item_area, item));
+      return TreeVisitResult.RESULT_CONTINUE;
+    });
+    return results.stream().findFirst();
+  }
+
+  @Override
+  public <C> TreeVisitResult raycastFirst(
+    final Ray2D ray,
+    final int count,
+    final C context,
+    final QuadTreeRaycastVisitorDType<T, C> f)
+  {
+    Objects.requireNonNull(ray, "Ray");
+    Objects.requireNonNull(context, "Context");
+    Objects.requireNonNull(f, "Function");
+    Preconditions.checkPreconditionI(
+      count, count >= 0, c -> "Count must be non-negative");
+
+    /*
+     * Best-first search, as with nearest(), ordered by the distance at
+     * which the ray enters each node and item.
+     */
+
+    final DistanceHeap heap = new DistanceHeap();
+    heap.add(0.0, this.root, NONE);
+
+    int found = 0;
+    while (found < count && !heap.isEmpty()) {
+      final double key = heap.topKey();
+      final Node node = (Node) heap.topObject();
+      final int index = heap.topInt();
+      heap.removeTop();
+
+      if (index != NONE) {
+        ++found;
+        final TreeVisitResult result = f.apply(
+          context,
+          itemAt(node, index),
+          AreaBoundsD.unpack(node.entry_bounds, index * BOUNDS_STRIDE),
+          key);
+        if (result == TreeVisitResult.RESULT_TERMINATE) {
+          return TreeVisitResult.RESULT_TERMINATE;
+        }
+      } else {
+        for (int entry = 0; entry < node.count; ++entry) {
+          final double distance =
+            AreaBoundsD.entryDistance(ray, node.entry_bounds, entry * BOUNDS_STRIDE);
+          if (distance < Double.POSITIVE_INFINITY) {
+            heap.add(
+              distance,
+              node.height == 0 ? node : node.entries[entry],
+              node.height == 0 ? entry : NONE);
+          }
+        }
+      }
+    }
+    return TreeVisitResult.RESULT_CONTINUE;
+  }
+
+  @Override
+  public void raycast(
+    final Ray2D ray,
+    final QuadTreeRaycastBufferD<T> results)
+  {
+    Objects.requireNonNull(ray, "Ray");
+    Objects.requireNonNull(results, "Results");
+    this.raycastBuffer(this.root, ray, results);
+  }
+
+  @Override
+  public long countContainedBy(
+    final AreaD area)
+  {
+    Objects.requireNonNull(area, "Area");
+    return countContaining(this.root, AreaBoundsD.pack(area));
+  }
+
+  @Override
+  public long countOverlapping(
+    final AreaD area)
+  {
+    Objects.requireNonNull(area, "Area");
+    return countOverlapping(this.root, AreaBoundsD.pack(area));
+  }
+
+  @Override
+  public boolean anyOverlapping(
+    final AreaD area)
+  {
+    Objects.requireNonNull(area, "Area");
+    return anyOverlapping(this.root, AreaBoundsD.pack(area));
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <T> T itemAt(
+    final Node leaf,
+    final int index)
+  {
+    return (T) leaf.entries[index];
+  }
+
+  private static int indexOf(
+    final Node node,
+    final Object entry)
+  {
+    for (int index = 0; index < node.count; ++index) {
+      if (node.entries[index] == entry) {
+        return index;
+      }
+    }
+    throw new UnreachableCodeException();
+  }
+
+  private static void removeAt(
+    final Node node,
+    final int index)
+  {
+    final int last = node.count - 1;
+    node.entries[index] = node.entries[last];
+    System.arraycopy(
+      node.entry_bounds, last * BOUNDS_STRIDE, node.entry_bounds, index * BOUNDS_STRIDE, BOUNDS_STRIDE);
+    node.entries[last] = null;
+    node.count = last;
+  }
+
+  /**
+   * Pack the bounding area of the entries of {@code node} into an existing
+   * array.
+   */
+
+  private static void storeUnion(
+    final Node node,
+    final double[] out,
+    final int o)
+  {
+    final double[] eb = node.entry_bounds;
+    double x0 = Double.POSITIVE_INFINITY;
+    double x1 = Double.NEGATIVE_INFINITY;
+    double y0 = Double.POSITIVE_INFINITY;
+    double y1 = Double.NEGATIVE_INFINITY;
+    for (int index = 0; index < node.count; ++index) {
+      final int e = index * BOUNDS_STRIDE;
+      x0 = Math.min(x0, eb[e]);
+      x1 = Math.max(x1, eb[e + 1]);
+      y0 = Math.min(y0, eb[e + 2]);
+      y1 = Math.max(y1, eb[e + 3]);
+    }
+    out[o] = x0;
+    out[o + 1] = x1;
+    out[o + 2] = y0;
+    out[o + 3] = y1;
+  }
+
+  private static double areaOf(
+    final double[] b,
+    final int o)
+  {
+    return (b[o + 1] - b[o]) * (b[o + 3] - b[o + 2]);
+  }
+
+  private static double marginOf(
+    final double[] b,
+    final int o)
+  {
+    return (b[o + 1] - b[o]) + (b[o + 3] - b[o + 2]);
+  }
+
+  private static double overlapOf(
+    final double x0,
+    final double x1,
+    final double y0,
+    final double y1,
+    final double[] b,
+    final int o)
+  {
+    final double w = Math.min(x1, b[o + 1]) - Math.max(x0, b[o]);
+    final double h = Math.min(y1, b[o + 3]) - Math.max(y0, b[o + 2]);
+    return w > 0.0 && h > 0.0 ? w * h : 0.0;
+  }
+
+  /**
+   * Add an entry to a node, without adjusting the bounds or sizes of the
+   * node and its ancestors.
+   */
+
+  @SuppressWarnings("unchecked")
+  private void add(
+    final Node node,
+    final Object entry,
+    final double[] bounds,
+    final int offset)
+  {
+    final int index = node.count;
+    node.entries[index] = entry;
+    System.arraycopy(bounds, offset, node.entry_bounds, index * BOUNDS_STRIDE, BOUNDS_STRIDE);
+    node.count = index + 1;
+    if (node.height == 0) {
+      this.item_leaves.put((T) entry, node);
+    } else {
+      ((Node) entry).parent = node;
+    }
+  }
+
+  /**
+   * Recalculate the size of {@code start} and the bounds and sizes of all of
+   * its ancestors.
+   */
+
+  private static void refit(final Node start)
+  {
+    Node node = start;
+    while (true) {
+      if (node.height == 0) {
+        node.size = node.count;
+      } else {
+        int size = 0;
+        for (int index = 0; index < node.count; ++index) {
+          size += ((Node) node.entries[index]).size;
+        }
+        node.size = size;
+      }
+
+      final Node parent = node.parent;
+      if (parent == null) {
+        return;
+      }
+      storeUnion(node, parent.entry_bounds, indexOf(parent, node) * BOUNDS_STRIDE);
+      node = parent;
+    }
+  }
+
+  private void insertTop(
+    final Object entry,
+    final double[] bounds,
+    final int offset,
+    final int height)
+  {
+    this.reinserted = 0L;
+    this.insertEntry(entry, bounds, offset, height);
+  }
+
+  /**
+   * Insert an entry into a node at the given height, and then deal with any
+   * resulting overflow.
+   */
+
+  private void insertEntry(
+    final Object entry,
+    final double[] bounds,
+    final int offset,
+    final int height)
+  {
+    Node node = this.root;
+    while (node.height > height) {
+      node = (Node) node.entries[chooseSubtree(node, bounds, offset)];
+    }
+
+    this.add(node, entry, bounds, offset);
+    refit(node);
+
+    while (node != null && node.count > MAXIMUM_ENTRIES) {
+      final long level = 1L << node.height;
+      if (node != this.root && (this.reinserted & level) == 0L) {
+        this.reinserted |= level;
+        this.reinsert(node);
+        return;
+      }
+
+      final Node parent = node.parent;
+      this.split(node);
+      node = parent;
+    }
+  }
+
+  /**
+   * Choose the entry of {@code node} into which to descend in order to insert
+   * the given bounds.
+   */
+
+  private static int chooseSubtree(
+    final Node node,
+    final double[] b,
+    final int o)
+  {
+    final double[] eb = node.entry_bounds;
+    final boolean above_leaves = node.height == 1;
+
+    int best = 0;
+    double best_overlap = Double.POSITIVE_INFINITY;
+    double best_enlargement = Double.POSITIVE_INFINITY;
+    double best_area = Double.POSITIVE_INFINITY;
+
+    for (int index = 0; index < node.count; ++index) {
+      final int e = index * BOUNDS_STRIDE;
+      final double x0 = Math.min(eb[e], b[o]);
+      final double x1 = Math.max(eb[e + 1], b[o + 1]);
+      final double y0 = Math.min(eb[e + 2], b[o + 2]);
+      final double y1 = Math.max(eb[e + 3], b[o + 3]);
+      final double entry_area = areaOf(eb, e);
+      final double enlargement = (x1 - x0) * (y1 - y0) - entry_area;
+
+      double overlap = 0.0;
+      if (above_leaves) {
+        for (int other = 0; other < node.count; ++other) {
+          if (other != index) {
+            final int p = other * BOUNDS_STRIDE;
+            overlap += overlapOf(x0, x1, y0, y1, eb, p)
+              - overlapOf(eb[e], eb[e + 1], eb[e + 2], eb[e + 3], eb, p);
+          }
+        }
+      }
+
+      final boolean better;
+      if (overlap != best_overlap) {
+        better = overlap < best_overlap;
+      } else if (enlargement != best_enlargement) {
+        better = enlargement < best_enlargement;
+      } else {
+        better = entry_area < best_area;
+      }
+
+      if (better) {
+        best = index;
+        best_overlap = overlap;
+        best_enlargement = enlargement;
+        best_area = entry_area;
+      }
+    }
+    return best;
+  }
+
+  /**
+   * Remove the entries of an overflowing node that are furthest from the
+   * centre of the node, and insert them again starting with the nearest.
+   */
+
+  private void reinsert(final Node node)
+  {
+    final int count = node.count;
+    final Object[] entries = Arrays.copyOf(node.entries, count);
+    final double[] bounds = Arrays.copyOf(node.entry_bounds, count * BOUNDS_STRIDE);
+
+    final double[] union = new double[BOUNDS_STRIDE];
+    storeUnion(node, union, 0);
+    final double cx = (union[0] + union[1]) / 2.0;
+    final double cy = (union[2] + union[3]) / 2.0;
+
+    final double[] distances = new double[count];
+    final int[] order = new int[count];
+    for (int index = 0; index < count; ++index) {
+      final int e = index * BOUNDS_STRIDE;
+      final double dx = (bounds[e] + bounds[e + 1]) / 2.0 - cx;
+      final double dy = (bounds[e + 2] + bounds[e + 3]) / 2.0 - cy;
+      distances[index] = dx * dx + dy * dy;
+      order[index] = index;
+    }
+    IntArrays.quickSort(order, (a, b) -> Double.compare(distances[a], distances[b]));
+
+    final int kept = count - REINSERT_ENTRIES;
+    Arrays.fill(node.entries, null);
+    node.count = 0;
+    for (int index = 0; index < kept; ++index) {
+      this.add(node, entries[order[index]], bounds, order[index] * BOUNDS_STRIDE);
+    }
+    refit(node);
+
+    for (int index = kept; index < count; ++index) {
+      this.insertEntry(
+        entries[order[index]], bounds, order[index] * BOUNDS_STRIDE, node.height);
+    }
+  }
+
+  /**
+   * Split an overflowing node in two. The second half becomes a new sibling
+   * of the node, or the node and its sibling become the children of a new
+   * root.
+   */
+
+  private void split(final Node node)
+  {
+    final int count = node.count;
+    final Object[] entries = Arrays.copyOf(node.entries, count);
+    final double[] bounds = Arrays.copyOf(node.entry_bounds, count * BOUNDS_STRIDE);
+
+    final int[][] best_orders = chooseSplitAxis(bounds, count);
+
+    /*
+     * Along that axis, choose the distribution with the least overlap
+     * between the two halves, and then the least total area.
+     */
+
+    int[] best_order = null;
+    int best_k = NONE;
+    double best_overlap = Double.POSITIVE_INFINITY;
+    double best_area = Double.POSITIVE_INFINITY;
+    for (final int[] order : best_orders) {
+      final double[] lower = sweep(bounds, order, false);
+      final double[] upper = sweep(bounds, order, true);
+      for (int k = MINIMUM_ENTRIES; k <= count - MINIMUM_ENTRIES; ++k) {
+        final int l = (k - 1) * BOUNDS_STRIDE;
+        final int u = k * BOUNDS_STRIDE;
+        final double overlap =
+          overlapOf(lower[l], lower[l + 1], lower[l + 2], lower[l + 3], upper, u);
+        final double split_area = areaOf(lower, l) + areaOf(upper, u);
+        if (overlap < best_overlap || (overlap == best_overlap && split_area < best_area)) {
+          best_overlap = overlap;
+          best_area = split_area;
+          best_order = order;
+          best_k = k;
+        }
+      }
+    }
+
+    final int[] order = Objects.requireNonNull(best_order, "Order");
+    final Node sibling = new Node(node.height);
+    Arrays.fill(node.entries, null);
+    node.count = 0;
+    for (int index = 0; index < count; ++index) {
+      this.add(
+        index < best_k ? node : sibling,
+        entries[order[index]],
+        bounds,
+        order[index] * BOUNDS_STRIDE);
+    }
+
+    final double[] union = new double[BOUNDS_STRIDE];
+    final Node parent;
+    if (node == this.root) {
+      parent = new Node(node.height + 1);
+      storeUnion(node, union, 0);
+      this.add(parent, node, union, 0);
+      this.root = parent;
+    } else {
+      parent = node.parent;
+    }
+
+    storeUnion(sibling, union, 0);
+    this.add(parent, sibling, union, 0);
+    refit(sibling);
+    refit(node);
+  }
+
+  /**
+   * @return The orderings of the entries along the axis on which the sum of
+   * the margins of all of the candidate distributions is smallest
+   */
+
+  private static int[][] chooseSplitAxis(
+    final double[] bounds,
+    final int count)
+  {
+    int[][] best_orders = null;
+    double best_margin = Double.POSITIVE_INFINITY;
+    for (int axis = 0; axis < 2; ++axis) {
+      final int[][] orders = splitOrders(bounds, count, axis * 2);
+      double margin = 0.0;
+      for (final int[] order : orders) {
+        final double[] lower = sweep(bounds, order, false);
+        final double[] upper = sweep(bounds, order, true);
+        for (int k = MINIMUM_ENTRIES; k <= count - MINIMUM_ENTRIES; ++k) {
+          margin += marginOf(lower, (k - 1) * BOUNDS_STRIDE)
+            + marginOf(upper, k * BOUNDS_STRIDE);
+        }
+      }
+      if (margin < best_margin) {
+        best_margin = margin;
+        best_orders = orders;
+      }
+    }
+    return Objects.requireNonNull(best_orders, "Orders");
+  }
+
+  /**
+   * @return The entries sorted by their lower bounds and by their upper
+   * bounds on the axis whose bounds are at offset {@code a}
+   */
+
+  private static int[][] splitOrders(
+    final double[] bounds,
+    final int count,
+    final int a)
+  {
+    final int[] by_lower = new int[count];
+    final int[] by_upper = new int[count];
+    for (int index = 0; index < count; ++index) {
+      by_lower[index] = index;
+      by_upper[index] = index;
+    }
+
+    IntArrays.quickSort(by_lower, (x, y) -> {
+      final int c = Double.compare(bounds[x * BOUNDS_STRIDE + a], bounds[y * BOUNDS_STRIDE + a]);
+      return c != 0 ? c : Double.compare(
+        bounds[x * BOUNDS_STRIDE + a + 1], bounds[y * BOUNDS_STRIDE + a + 1]);
+    });
+    IntArrays.quickSort(by_upper, (x, y) -> {
+      final int c = Double.compare(
+        bounds[x * BOUNDS_STRIDE + a + 1], bounds[y * BOUNDS_STRIDE + a + 1]);
+      return c != 0 ? c : Double.compare(bounds[x * BOUNDS_STRIDE + a], bounds[y * BOUNDS_STRIDE + a]);
+    });
+    return new int[][]{by_lower, by_upper};
+  }
+
+  /**
+   * @return The bounding areas of each prefix (the first {@code k + 1}
+   * entries, at index {@code k}) or, if {@code reverse} is {@code true}, of
+   * each suffix (the entries from {@code k} onwards, at index {@code k}) of
+   * the entries in the given order
+   */
+
+  private static double[] sweep(
+    final double[] bounds,
+    final int[] order,
+    final boolean reverse)
+  {
+    final int count = order.length;
+    final double[] out = new double[count * BOUNDS_STRIDE];
+    for (int step = 0; step < count; ++step) {
+      final int index = reverse ? count - 1 - step : step;
+      final int e = order[index] * BOUNDS_STRIDE;
+      final int o = index * BOUNDS_STRIDE;
+      if (step == 0) {
+        System.arraycopy(bounds, e, out, o, BOUNDS_STRIDE);
+      } else {
+        final int p = reverse ? o + BOUNDS_STRIDE : o - BOUNDS_STRIDE;
+        out[o] = Math.min(out[p], bounds[e]);
+        out[o + 1] = Math.max(out[p + 1], bounds[e + 1]);
+        out[o + 2] = Math.min(out[p + 2], bounds[e + 2]);
+        out[o + 3] = Math.max(out[p + 3], bounds[e + 3]);
+      }
+    }
+    return out;
+  }
+
+  /**
+   * Dissolve the underfull ancestors of a leaf from which an object has
+   * been removed, reinsert the entries that they held, and shorten the tree
+   * if the root is left with a single child. The sizes and bounds of the
+   * ancestors are brought up to date first, so that the subtrees of any
+   * dissolved ancestors are consistent when they are reinserted.
+   */
+
+  private void condense(final Node leaf)
+  {
+    refit(leaf);
+
+    final List<Node> orphans = new ArrayList<>();
+    Node attached = leaf;
+    for (Node node = leaf; node.parent != null; node = node.parent) {
+      if (node.count < MINIMUM_ENTRIES) {
+        removeAt(node.parent, indexOf(node.parent, node));
+        orphans.add(node);
+        attached = node.parent;
+      }
+    }
+    refit(attached);
+
+    for (final Node orphan : orphans) {
+      for (int index = 0; index < orphan.count; ++index) {
+        this.insertTop(
+          orphan.entries[index], orphan.entry_bounds, index * BOUNDS_STRIDE, orphan.height);
+      }
+    }
+
+    while (this.root.height > 0 && this.root.count == 1) {
+      final Node child = (Node) this.root.entries[0];
+      child.parent = null;
+      this.root = child;
+    }
+  }
+
+  /**
+   * Pack entries into nodes at the given height using Sort-Tile-Recursive
+   * packing, and then pack those nodes in turn until a single root remains.
+   * The entries are sorted into vertical slices by the x coordinate of their
+   * centres, and each slice is sorted by the y coordinate of their centres
+   * and cut into full nodes.
+   */
+
+  private Node pack(
+    final Object[] entries,
+    final double[] bounds,
+    final int count,
+    final int height)
+  {
+    if (count == 0) {
+      return new Node(height);
+    }
+
+    final int nodes = (count + MAXIMUM_ENTRIES - 1) / MAXIMUM_ENTRIES;
+    final int slices = (int) Math.ceil(Math.sqrt((double) nodes));
+    final int slice_size = MAXIMUM_ENTRIES * ((nodes + slices - 1) / slices);
+
+    final double[] cx = new double[count];
+    final double[] cy = new double[count];
+    final int[] order = new int[count];
+    for (int index = 0; index < count; ++index) {
+      final int e = index * BOUNDS_STRIDE;
+      cx[index] = bounds[e] + bounds[e + 1];
+      cy[index] = bounds[e + 2] + bounds[e + 3];
+      order[index] = index;
+    }
+    IntArrays.quickSort(order, (a, b) -> Double.compare(cx[a], cx[b]));
+
+    final Node[] packed = new Node[nodes];
+    final double[] packed_bounds = new double[packed.length * BOUNDS_STRIDE];
+    int packed_count = 0;
+    for (int slice = 0; slice < count; slice += slice_size) {
+      final int slice_end = Math.min(count, slice + slice_size);
+      IntArrays.quickSort(order, slice, slice_end, (a, b) -> Double.compare(cy[a], cy[b]));
+      for (int start = slice; start < slice_end; start += MAXIMUM_ENTRIES) {
+        final Node node = new Node(height);
+        final int end = Math.min(slice_end, start + MAXIMUM_ENTRIES);
+        for (int index = start; index < end; ++index) {
+          this.add(node, entries[order[index]], bounds, order[index] * BOUNDS_STRIDE);
+        }
+        refit(node);
+        storeUnion(node, packed_bounds, packed_count * BOUNDS_STRIDE);
+        packed[packed_count] = node;
+        ++packed_count;
+      }
+    }
+
+    if (packed_count == 1) {
+      return packed[0];
+    }
+    final Node top = this.pack(packed, packed_bounds, packed_count, height + 1);
+    refit(packed[0]);
+    return top;
+  }
+
+  private <C> TreeVisitResult iterateQuadrantsNode(
+    final C context,
+    final QuadTreeQuadrantIterationDType<T, C> f,
+    final Node node,
+    final long depth)
+  {
+    switch (f.apply(context, new Quadrant(node), depth)) {
+      case RESULT_CONTINUE: {
+        if (node.height > 0) {
+          for (int index = 0; index < node.count; ++index) {
+            final TreeVisitResult r = this.iterateQuadrantsNode(
+              context, f, (Node) node.entries[index], Math.addExact(depth, 1L));
+            if (r == TreeVisitResult.RESULT_TERMINATE) {
+              return TreeVisitResult.RESULT_TERMINATE;
+            }
+          }
+        }
+        return TreeVisitResult.RESULT_CONTINUE;
+      }
+      case RESULT_TERMINATE:
+        return TreeVisitResult.RESULT_TERMINATE;
+    }
+
+    throw new UnreachableCodeException();
+  }
+
+  private static <T, C> TreeVisitResult visitItem(
+    final Node leaf,
+    final int index,
+    final C context,
+    final QuadTreeItemVisitorDType<T, C> f)
+  {
+    return f.apply(
+      context,
+      itemAt(leaf, index),
+      AreaBoundsD.unpack(leaf.entry_bounds, index * BOUNDS_STRIDE));
+  }
+
+  private <C> TreeVisitResult areaContainingVisit(
+    final Node node,
+    final double[] target,
+    final C context,
+    final QuadTreeItemVisitorDType<T, C> f)
+  {
+    final double[] eb = node.entry_bounds;
+    for (int index = 0; index < node.count; ++index) {
+      final int e = index * BOUNDS_STRIDE;
+      final TreeVisitResult result;
+      if (node.height == 0) {
+        if (!AreaBoundsD.contains(target, 0, eb, e)) {
+          continue;
+        }
+        result = visitItem(node, index, context, f);
+      } else if (AreaBoundsD.contains(target, 0, eb, e)) {
+        result = this.visitRecursive((Node) node.entries[index], context, f);
+      } else if (AreaBoundsD.touches(target, 0, eb, e)) {
+        result = this.areaContainingVisit((Node) node.entries[index], target, context, f);
+      } else {
+        continue;
+      }
+      if (result == TreeVisitResult.RESULT_TERMINATE) {
+        return TreeVisitResult.RESULT_TERMINATE;
+      }
+    }
+    return TreeVisitResult.RESULT_CONTINUE;
+  }
+
+  private <C> TreeVisitResult visitRecursive(
+    final Node node,
+    final C context,
+    final QuadTreeItemVisitorDType<T, C> f)
+  {
+    for (int index = 0; index < node.count; ++index) {
+      final TreeVisitResult result = node.height == 0
+        ? visitItem(node, index, context, f)
+        : this.visitRecursive((Node) node.entries[index], context, f);
+      if (result == TreeVisitResult.RESULT_TERMINATE) {
+        return TreeVisitResult.RESULT_TERMINATE;
+      }
+    }
+    return TreeVisitResult.RESULT_CONTINUE;
+  }
+
+  private <C> TreeVisitResult areaOverlappingVisit(
+    final Node node,
+    final double[] target,
+    final C context,
+    final QuadTreeItemVisitorDType<T, C> f)
+  {
+    final double[] eb = node.entry_bounds;
+    for (int index = 0; index < node.count; ++index) {
+      final int e = index * BOUNDS_STRIDE;
+      final TreeVisitResult result;
+      if (node.height == 0) {
+        if (!AreaBoundsD.overlaps(target, 0, eb, e)) {
+          continue;
+        }
+        result = visitItem(node, index, context, f);
+      } else if (AreaBoundsD.overlapsAnyWithin(target, 0, eb, e)) {
+        result = this.areaOverlappingVisit((Node) node.entries[index], target, context, f);
+      } else {
+        continue;
+      }
+      if (result == TreeVisitResult.RESULT_TERMINATE) {
+        return TreeVisitResult.RESULT_TERMINATE;
+      }
+    }
+    return TreeVisitResult.RESULT_CONTINUE;
+  }
+
+  private <C> TreeVisitResult raycastVisit(
+    final Node node,
+    final Ray2D ray,
+    final C context,
+    final QuadTreeRaycastVisitorDType<T, C> f)
+  {
+    final double[] eb = node.entry_bounds;
+    for (int index = 0; index < node.count; ++index) {
+      final int e = index * BOUNDS_STRIDE;
+      if (!AreaBoundsD.intersects(ray, eb, e)) {
+        continue;
+      }
+
+      final TreeVisitResult result;
+      if (node.height == 0) {
+        final double distance = Vectors2D.distance(
+          Vector2D.of(eb[e], eb[e + 2]),
+          ray.origin());
+        result = f.apply(context, itemAt(node, index), AreaBoundsD.unpack(eb, e), distance);
+      } else {
+        result = this.raycastVisit((Node) node.entries[index], ray, context, f);
+      }
+      if (result == TreeVisitResult.RESULT_TERMINATE) {
+        return TreeVisitResult.RESULT_TERMINATE;
+      }
+    }
+    return TreeVisitResult.RESULT_CONTINUE;
+  }
+
+  private void raycastBuffer(
+    final Node node,
+    final Ray2D ray,
+    final QuadTreeRaycastBufferD<T> results)
+  {
+    final double[] eb = node.entry_bounds;
+    for (int index = 0; index < node.count; ++index) {
+      final int e = index * BOUNDS_STRIDE;
+      if (node.height == 0) {
+        final double distance = AreaBoundsD.entryDistance(ray, eb, e);
+        if (distance < Double.POSITIVE_INFINITY) {
+          results.add(itemAt(node, index), distance, eb[e], eb[e + 1], eb[e + 2], eb[e + 3]);
+        }
+      } else if (AreaBoundsD.intersects(ray, eb, e)) {
+        this.raycastBuffer((Node) node.entries[index], ray, results);
+      }
+    }
+  }
+
+  private static long countContaining(
+    final Node node,
+    final double[] target)
+  {
+    final double[] eb = node.entry_bounds;
+    long count = 0L;
+    for (int index = 0; index < node.count; ++index) {
+      final int e = index * BOUNDS_STRIDE;
+      if (node.height == 0) {
+        if (AreaBoundsD.contains(target, 0, eb, e)) {
+          ++count;
+        }
+      } else if (AreaBoundsD.contains(target, 0, eb, e)) {
+        count += (long) ((Node) node.entries[index]).size;
+      } else if (AreaBoundsD.touches(target, 0, eb, e)) {
+        count += countContaining((Node) node.entries[index], target);
+      }
+    }
+    return count;
+  }
+
+  private static long countOverlapping(
+    final Node node,
+    final double[] target)
+  {
+    final double[] eb = node.entry_bounds;
+    long count = 0L;
+    for (int index = 0; index < node.count; ++index) {
+      final int e = index * BOUNDS_STRIDE;
+      if (node.height == 0) {
+        if (AreaBoundsD.overlaps(target, 0, eb, e)) {
+          ++count;
+        }
+      } else if (AreaBoundsD.overlapsAllWithin(target, 0, eb, e)) {
+        count += (long) ((Node) node.entries[index]).size;
+      } else if (AreaBoundsD.overlapsAnyWithin(target, 0, eb, e)) {
+        count += countOverlapping((Node) node.entries[index], target);
+      }
+    }
+    return count;
+  }
+
+  private static boolean anyOverlapping(
+    final Node node,
+    final double[] target)
+  {
+    final double[] eb = node.entry_bounds;
+    for (int index = 0; index < node.count; ++index) {
+      final int e = index * BOUNDS_STRIDE;
+      if (node.height == 0) {
+        if (AreaBoundsD.overlaps(target, 0, eb, e)) {
+          return true;
+        }
+      } else if (AreaBoundsD.overlapsAllWithin(target, 0, eb, e)
+        || (AreaBoundsD.overlapsAnyWithin(target, 0, eb, e)
+        && anyOverlapping((Node) node.entries[index], target))) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * A node of the tree. The entries of a leaf (a node of height zero) are
+   * objects, and the entries of any other node are nodes of the next height
+   * down. Each node has room for one entry more than the maximum, so that an
+   * overflowing node can be held until it is split.
+   */
+
+  private static final class Node
+  {
+    private final int height;
+    private final Object[] entries;
+    private final double[] entry_bounds;
+    private Node parent;
+    private int count;
+    private int size;
+
+    Node(final int in_height)
+    {
+      this.height = in_height;
+      this.entries = new Object[MAXIMUM_ENTRIES + 1];
+      this.entry_bounds = new double[(MAXIMUM_ENTRIES + 1) * BOUNDS_STRIDE];
+      this.parent = null;
+      this.count = 0;
+      this.size = 0;
+    }
+  }
+
+  /**
+   * A view of a single node, created when nodes are exposed through
+   * {@link #iterateQuadrants(Object, QuadTreeQuadrantIterationDType)}.
+   */
+
+  private final class Quadrant implements QuadTreeQuadrantDType<T>
+  {
+    private final Node node;
+
+    Quadrant(final Node in_node)
+    {
+      this.node = in_node;
+    }
+
+    @Override
+    public Map<T, AreaD> objects()
+    {
+      final Node n = this.node;
+      final Reference2ReferenceOpenHashMap<T, AreaD> objects =
+        new Reference2ReferenceOpenHashMap<>(n.height == 0 ? n.count : 0);
+      if (n.height == 0) {
+        for (int index = 0; index < n.count; ++index) {
+          objects.put(
+            itemAt(n, index),
+            AreaBoundsD.unpack(n.entry_bounds, index * BOUNDS_STRIDE));
+        }
+      }
+      return Reference2ReferenceMaps.unmodifiable(objects);
+    }
+
+    @Override
+    public AreaD area()
+    {
+      if (this.node.count == 0) {
+        return RTreeD.this.config.area();
+      }
+      final double[] union = new double[BOUNDS_STRIDE];
+      storeUnion(this.node, union, 0);
+      return AreaBoundsD.unpack(union, 0);
+    }
+  }
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jspatial.implementation;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * <p>A spliterator over the results of a query on a tree.</p>
+ *
+ * <p>The spliterator holds the nodes whose subtrees have not yet been
+ * searched, and a buffer of results that have been found but not yet
+ * consumed. Nodes are searched in the same steps as a parallel query: A node
+ * whose subtree holds more than {@link ParallelQuery#SEQUENTIAL_THRESHOLD}
+ * objects contributes the results that it holds directly and is replaced by
+ * its children, and any smaller subtree is searched at once using the tree's
+ * own query functions. Splitting hands roughly half of the pending nodes,
+ * measured by the number of objects in their subtrees, to a new
+ * spliterator, and so a parallel stream divides work at node
+ * boundaries.</p>
+ *
+ * <p>The size estimate is the number of objects in the pending subtrees plus
+ * the number of buffered results. This is exact for queries that return
+ * every object in the tree, and an upper bound otherwise. The tree must not
+ * be modified while the spliterator is in use.</p>
+ *
+ * @param <N> The type of nodes
+ * @param <R> The type of results
+ */
+
+final class TreeSpliterator<N extends ParallelQuery.NodeType<N>, R>
+  implements Spliterator<R>
+{
+  private final ParallelQuery.Query<N, R> query;
+  private final boolean exact;
+  private final ArrayDeque<N> pending;
+  private final ArrayList<N> children;
+  private final ArrayList<R> buffer;
+  private long pending_size;
+  private int buffer_position;
+
+  private TreeSpliterator(
+    final ParallelQuery.Query<N, R> in_query,
+    final boolean in_exact,
+    final ArrayDeque<N> in_pending,
+    final long in_pending_size)
+  {
+    this.query = in_query;
+    this.exact = in_exact;
+    this.pending = in_pending;
+    this.pending_size = in_pending_size;
+    this.children = new ArrayList<>();
+    this.buffer = new ArrayList<>();
+  }
+
+  /**
+   * Create a stream over the results of a query.
+   *
+   * @param query The query
+   * @param exact {@code true} iff the query returns every object in the tree
+   * @param <N>   The type of nodes
+   * @param <R>   The type of results
+   *
+   * @return A sequential stream
+   */
+
+  static <N extends ParallelQuery.NodeType<N>, R> Stream<R> stream(
+    final ParallelQuery.Query<N, R> query,
+    final boolean exact)
+  {
+    final N root = query.root();
+    final ArrayDeque<N> pending = new ArrayDeque<>();
+    pending.add(root);
+    return StreamSupport.stream(
+      new TreeSpliterator<>(query, exact, pending, (long) root.subtreeSize()),
+      false);
+  }
+
+  /**
+   * Search the first pending node, passing results to {@code out} and adding
+   * any children that remain to be searched to the pending nodes.
+   */
+
+  private void step(final Consumer<? super R> out)
+  {
+    final N node = this.pending.removeFirst();
+    this.pending_size -= (long) node.subtreeSize();
+
+    this.children.clear();
+    this.query.step(node, out, this.children);
+    for (final N child : this.children) {
+      this.pending.addFirst(child);
+      this.pending_size += (long) child.subtreeSize();
+    }
+  }
+
+  private static <N extends ParallelQuery.NodeType<N>> boolean isDivisible(
+    final N node)
+  {
+    return !node.isLeaf()
+      && node.subtreeSize() > ParallelQuery.SEQUENTIAL_THRESHOLD;
+  }
+
+  @Override
+  public boolean tryAdvance(
+    final Consumer<? super R> action)
+  {
+    Objects.requireNonNull(action, "Action");
+
+    while (this.buffer_position == this.buffer.size()) {
+      this.buffer.clear();
+      this.buffer_position = 0;
+      if (this.pending.isEmpty()) {
+        return false;
+      }
+      this.step(this.buffer::add);
+    }
+
+    final R result = this.buffer.get(this.buffer_position);
+    ++this.buffer_position;
+    action.accept(result);
+    return true;
+  }
+
+  @Override
+  public void forEachRemaining(
+    final Consumer<? super R> action)
+  {
+    Objects.requireNonNull(action, "Action");
+
+    for (int index = this.buffer_position; index < this.buffer.size(); ++index) {
+      action.accept(this.buffer.get(index));
+    }
+    this.buffer.clear();
+    this.buffer_position = 0;
+
+    /*
+     * Pass results directly to the action rather than through the buffer.
+     */
+
+    while (!this.pending.isEmpty()) {
+      this.step(action);
+    }
+  }
+
+  @Override
+  public Spliterator<R> trySplit()
+  {
+    /*
+     * A single large node cannot be divided as it is, but its children can.
+     */
+
+    while (this.pending.size() == 1 && isDivisible(this.pending.getFirst())) {
+      this.step(this.buffer::add);
+    }
+
+    if (this.pending.size() < 2) {
+      return null;
+    }
+
+    final long half = this.pending_size / 2L;
+    final ArrayDeque<N> split = new ArrayDeque<>();
+    long split_size = 0L;
+    while (split_size < half && this.pending.size() > 1) {
+      final N node = this.pending.removeLast();
+      split.addFirst(node);
+      split_size += (long) node.subtreeSize();
+    }
+
+    this.pending_size -= split_size;
+    return new TreeSpliterator<>(this.query, this.exact, split, split_size);
+  }
+
+  @Override
+  public long estimateSize()
+  {
+    return this.pending_size + (long) (this.buffer.size() - this.buffer_position);
+  }
+
+  @Override
+  public int characteristics()
+  {
+    if (this.exact) {
+      return Spliterator.NONNULL | Spliterator.SIZED | Spliterator.SUBSIZED;
+    }
+    return Spliterator.NONNULL;
+  }
+}
@@ -0,0 +1,984 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jspatial.implementation;
+
+import com.io7m.jaffirm.core.Preconditions;
+import it.unimi.dsi.fastutil.longs.Long2IntMap;
+import it.unimi.dsi.fastutil.longs.Long2IntMaps;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+
+import java.util.Arrays;
+
+/**
+ * <p>The storage of a uniform grid: a division of the bounds of a tree into
+ * cells of equal size, and the objects that touch each cell.</p>
+ *
+ * <p>Only the cells that hold at least one object are stored, in a hash map
+ * keyed by the linear index of the cell. An object is linked into every
+ * cell that its closed bounds touch, unless it touches more than
+ * {@link #MAXIMUM_OBJECT_CELLS} cells, in which case it is kept in a
+ * separate list of large objects that every query examines.</p>
+ *
+ * <p>Objects are identified by the slot at which the owning tree stores
+ * them. Queries report each slot at most once without keeping any state of
+ * their own: an object found in several cells is only reported in the one
+ * cell that the query chooses as its reference cell.</p>
+ *
+ * <p>Grids have three axes; two-dimensional grids have a single cell on the
+ * third axis.</p>
+ */
+
+final class UniformGrid
+{
+  /**
+   * The largest number of cells an object may touch before it is treated
+   * as a large object.
+   */
+
+  static final int MAXIMUM_OBJECT_CELLS = 64;
+
+  private static final int NONE = -1;
+  private static final int AXES = 3;
+  private static final int RANGE_STRIDE = 2 * AXES;
+  private static final int INITIAL_ENTRIES = 64;
+
+  private final long[] origin;
+  private final long[] limit;
+  private final long[] size;
+  private final long[] count;
+  private final Long2IntOpenHashMap cells;
+
+  /*
+   * Per-entry storage. Each entry links a slot into a cell, and the entries
+   * of a cell form a singly linked list. Free entries are chained through
+   * the next array.
+   */
+
+  private int[] entry_slot;
+  private int[] entry_next;
+  private int entry_top;
+  private int entry_free;
+
+  /*
+   * Per-slot storage: the range of cells (min x, max x, min y, max y, min z,
+   * max z) touched by each slot, and a doubly linked list of the slots that
+   * are held as large objects.
+   */
+
+  private long[] slot_cells;
+  private int[] large_next;
+  private int[] large_prev;
+  private int large_head;
+
+  /**
+   * Construct an empty grid.
+   *
+   * @param in_minimum The minimum coordinate of the grid on each axis
+   * @param in_maximum The maximum coordinate of the grid on each axis
+   * @param in_size    The size of a cell on each axis
+   * @param in_slots   The initial slot capacity
+   */
+
+  UniformGrid(
+    final long[] in_minimum,
+    final long[] in_maximum,
+    final long[] in_size,
+    final int in_slots)
+  {
+    this.origin = in_minimum.clone();
+    this.limit = in_maximum.clone();
+    this.size = new long[AXES];
+    this.count = new long[AXES];
+
+    long total = 1L;
+    for (int axis = 0; axis < AXES; ++axis) {
+      final long extent = Math.subtractExact(in_maximum[axis], in_minimum[axis]);
+      final long cell_size = Math.max(1L, in_size[axis]);
+      final long remainder = extent % cell_size == 0L ? 0L : 1L;
+      final long cells_on_axis = Math.max(1L, extent / cell_size + remainder);
+      Preconditions.checkPreconditionL(
+        cells_on_axis,
+        cells_on_axis <= Long.MAX_VALUE / total,
+        c -> "Number of grid cells must be representable");
+      this.size[axis] = cell_size;
+      this.count[axis] = cells_on_axis;
+      total *= cells_on_axis;
+    }
+
+    this.cells = new Long2IntOpenHashMap();
+    this.cells.defaultReturnValue(NONE);
+    this.reset(in_slots);
+  }
+
+  /**
+   * Remove all objects from the grid.
+   *
+   * @param slots The new slot capacity
+   */
+
+  void reset(
+    final int slots)
+  {
+    this.cells.clear();
+    this.entry_slot = new int[INITIAL_ENTRIES];
+    this.entry_next = new int[INITIAL_ENTRIES];
+    this.entry_top = 0;
+    this.entry_free = NONE;
+    this.slot_cells = new long[slots * RANGE_STRIDE];
+    this.large_next = new int[slots];
+    this.large_prev = new int[slots];
+    this.large_head = NONE;
+  }
+
+  /**
+   * Ensure that the grid can hold slots up to, but excluding, {@code slots}.
+   *
+   * @param slots The slot capacity
+   */
+
+  void ensureSlots(
+    final int slots)
+  {
+    if (slots > this.large_next.length) {
+      final int capacity = Math.max(slots, this.large_next.length * 2);
+      this.slot_cells = Arrays.copyOf(this.slot_cells, capacity * RANGE_STRIDE);
+      this.large_next = Arrays.copyOf(this.large_next, capacity);
+      this.large_prev = Arrays.copyOf(this.large_prev, capacity);
+    }
+  }
+
+  /**
+   * Release memory held by cells that are no longer occupied.
+   */
+
+  void trim()
+  {
+    this.cells.trim();
+  }
+
+  /**
+   * @return The number of occupied cells
+   */
+
+  int occupied()
+  {
+    return this.cells.size();
+  }
+
+  /**
+   * @param axis       The axis
+   * @param coordinate A coordinate on the axis
+   *
+   * @return The index of the cell containing the coordinate, clamped to the grid
+   */
+
+  long cell(
+    final int axis,
+    final long coordinate)
+  {
+    final long clamped =
+      Math.min(Math.max(coordinate, this.origin[axis]), this.limit[axis]);
+    return Math.min((clamped - this.origin[axis]) / this.size[axis], this.count[axis] - 1L);
+  }
+
+  /**
+   * @param axis       The axis
+   * @param coordinate A coordinate on the axis
+   *
+   * @return The index of the cell containing the coordinate, clamped to the grid
+   */
+
+  private long cell(
+    final int axis,
+    final double coordinate)
+  {
+    final double index =
+      Math.floor((coordinate - (double) this.origin[axis]) / (double) this.size[axis]);
+    if (index <= 0.0) {
+      return 0L;
+    }
+    return Math.min((long) index, this.count[axis] - 1L);
+  }
+
+  /**
+   * @param axis  The axis
+   * @param index The index of a cell on the axis
+   *
+   * @return The minimum coordinate of the cell
+   */
+
+  long cellMinimum(
+    final int axis,
+    final long index)
+  {
+    return this.origin[axis] + index * this.size[axis];
+  }
+
+  /**
+   * @param axis  The axis
+   * @param index The index of a cell on the axis
+   *
+   * @return The maximum coordinate of the cell, clamped to the grid
+   */
+
+  long cellMaximum(
+    final int axis,
+    final long index)
+  {
+    return Math.min(this.limit[axis], this.cellMinimum(axis, index) + this.size[axis]);
+  }
+
+  /**
+   * @param x0 The minimum x coordinate
+   * @param x1 The maximum x coordinate
+   * @param y0 The minimum y coordinate
+   * @param y1 The maximum y coordinate
+   * @param z0 The minimum z coordinate
+   * @param z1 The maximum z coordinate
+   *
+   * @return The range of cells touched by the given closed bounds
+   */
+
+  long[] range(
+    final long x0,
+    final long x1,
+    final long y0,
+    final long y1,
+    final long z0,
+    final long z1)
+  {
+    return new long[]{
+      this.cell(0, x0),
+      this.cell(0, x1),
+      this.cell(1, y0),
+      this.cell(1, y1),
+      this.cell(2, z0),
+      this.cell(2, z1),
+    };
+  }
+
+  private long key(
+    final long x,
+    final long y,
+    final long z)
+  {
+    return (x * this.count[1] + y) * this.count[2] + z;
+  }
+
+  /**
+   * @param key  The key of a cell
+   * @param axis The axis
+   *
+   * @return The index of the cell on the given axis
+   */
+
+  long keyIndex(
+    final long key,
+    final int axis)
+  {
+    switch (axis) {
+      case 0:
+        return key / this.count[2] / this.count[1];
+      case 1:
+        return key / this.count[2] % this.count[1];
+      default:
+        return key % this.count[2];
+    }
+  }
+
+  /**
+   * @return The keys of the occupied cells, in ascending order
+   */
+
+  long[] occupiedKeys()
+  {
+    final long[] keys = this.cells.keySet().toLongArray();
+    Arrays.sort(keys);
+    return keys;
+  }
+
+  /**
+   * @param key The key of a cell
+   *
+   * @return The first entry of the cell, or {@code -1} if the cell is empty
+   */
+
+  int head(
+    final long key)
+  {
+    return this.cells.get(key);
+  }
+
+  /**
+   * @param entry An entry
+   *
+   * @return The entry that follows {@code entry} in its cell, or {@code -1}
+   */
+
+  int next(
+    final int entry)
+  {
+    return this.entry_next[entry];
+  }
+
+  /**
+   * @param entry An entry
+   *
+   * @return The slot linked by the entry
+   */
+
+  int slot(
+    final int entry)
+  {
+    return this.entry_slot[entry];
+  }
+
+  /**
+   * @param slot A slot held by the grid
+   *
+   * @return {@code true} iff the slot touches exactly one cell
+   */
+
+  boolean isSingleCell(
+    final int slot)
+  {
+    return this.cellsOf(slot) == 1L;
+  }
+
+  private long cellsOf(
+    final int slot)
+  {
+    final int r = slot * RANGE_STRIDE;
+    final long[] sc = this.slot_cells;
+    return (sc[r + 1] - sc[r] + 1L) * (sc[r + 3] - sc[r + 2] + 1L) * (sc[r + 5] - sc[r + 4] + 1L);
+  }
+
+  /**
+   * Link a slot into every cell touched by the given closed bounds.
+   *
+   * @param slot The slot
+   * @param x0   The minimum x coordinate
+   * @param x1   The maximum x coordinate
+   * @param y0   The minimum y coordinate
+   * @param y1   The maximum y coordinate
+   * @param z0   The minimum z coordinate
+   * @param z1   The maximum z coordinate
+   */
+
+  void insert(
+    final int slot,
+    final long x0,
+    final long x1,
+    final long y0,
+    final long y1,
+    final long z0,
+    final long z1)
+  {
+    final int r = slot * RANGE_STRIDE;
+    final long[] sc = this.slot_cells;
+    sc[r] = this.cell(0, x0);
+    sc[r + 1] = this.cell(0, x1);
+    sc[r + 2] = this.cell(1, y0);
+    sc[r + 3] = this.cell(1, y1);
+    sc[r + 4] = this.cell(2, z0);
+    sc[r + 5] = this.cell(2, z1);
+
+    if (this.cellsOf(slot) > (long) MAXIMUM_OBJECT_CELLS) {
+      this.large_prev[slot] = NONE;
+      this.large_next[slot] = this.large_head;
+      if (this.large_head != NONE) {
+        this.large_prev[this.large_head] = slot;
+      }
+      this.large_head = slot;
+      return;
+    }
+
+    for (long x = sc[r]; x <= sc[r + 1]; ++x) {
+      for (long y = sc[r + 2]; y <= sc[r + 3]; ++y) {
+        for (long z = sc[r + 4]; z <= sc[r + 5]; ++z) {
+          this.link(this.key(x, y, z), slot);
+        }
+      }
+    }
+  }
+
+  /**
+   * Unlink a slot from every cell that holds it.
+   *
+   * @param slot The slot
+   */
+
+  void remove(
+    final int slot)
+  {
+    if (this.cellsOf(slot) > (long) MAXIMUM_OBJECT_CELLS) {
+      final int prev = this.large_prev[slot];
+      final int next = this.large_next[slot];
+      if (prev != NONE) {
+        this.large_next[prev] = next;
+      } else {
+        this.large_head = next;
+      }
+      if (next != NONE) {
+        this.large_prev[next] = prev;
+      }
+      return;
+    }
+
+    final int r = slot * RANGE_STRIDE;
+    final long[] sc = this.slot_cells;
+    for (long x = sc[r]; x <= sc[r + 1]; ++x) {
+      for (long y = sc[r + 2]; y <= sc[r + 3]; ++y) {
+        for (long z = sc[r + 4]; z <= sc[r + 5]; ++z) {
+          this.unlink(this.key(x, y, z), slot);
+        }
+      }
+    }
+  }
+
+  private void link(
+    final long key,
+    final int slot)
+  {
+    final int entry;
+    if (this.entry_free != NONE) {
+      entry = this.entry_free;
+      this.entry_free = this.entry_next[entry];
+    } else {
+      if (this.entry_top == this.entry_slot.length) {
+        final int capacity = this.entry_slot.length * 2;
+        this.entry_slot = Arrays.copyOf(this.entry_slot, capacity);
+        this.entry_next = Arrays.copyOf(this.entry_next, capacity);
+      }
+      entry = this.entry_top;
+      ++this.entry_top;
+    }
+
+    this.entry_slot[entry] = slot;
+    this.entry_next[entry] = this.cells.get(key);
+    this.cells.put(key, entry);
+  }
+
+  private void unlink(
+    final long key,
+    final int slot)
+  {
+    int previous = NONE;
+    int entry = this.cells.get(key);
+    while (this.entry_slot[entry] != slot) {
+      previous = entry;
+      entry = this.entry_next[entry];
+    }
+
+    final int next = this.entry_next[entry];
+    if (previous != NONE) {
+      this.entry_next[previous] = next;
+    } else if (next != NONE) {
+      this.cells.put(key, next);
+    } else {
+      this.cells.remove(key);
+    }
+
+    this.entry_next[entry] = this.entry_free;
+    this.entry_free = entry;
+  }
+
+  private boolean visitLarge(
+    final SlotVisitorType visitor)
+  {
+    for (int slot = this.large_head; slot != NONE; slot = this.large_next[slot]) {
+      if (!visitor.visit(slot)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Visit every slot that touches at least one cell of a range of cells.
+   *
+   * @param range   The range of cells
+   * @param visitor The visitor
+   *
+   * @return {@code false} iff the visitor stopped the query
+   */
+
+  boolean visitRange(
+    final long[] range,
+    final SlotVisitorType visitor)
+  {
+    if (!this.visitLarge(visitor)) {
+      return false;
+    }
+
+    /*
+     * Visit the cells of the range directly if there are fewer of them than
+     * there are occupied cells, and otherwise examine each occupied cell.
+     */
+
+    final long range_cells =
+      (range[1] - range[0] + 1L) * (range[3] - range[2] + 1L) * (range[5] - range[4] + 1L);
+
+    if (range_cells <= (long) this.cells.size()) {
+      for (long x = range[0]; x <= range[1]; ++x) {
+        for (long y = range[2]; y <= range[3]; ++y) {
+          for (long z = range[4]; z <= range[5]; ++z) {
+            final int head = this.cells.get(this.key(x, y, z));
+            if (head != NONE && !this.visitCell(head, x, y, z, range, visitor)) {
+              return false;
+            }
+          }
+        }
+      }
+      return true;
+    }
+
+    for (final Long2IntMap.Entry e : Long2IntMaps.fastIterable(this.cells)) {
+      final long key = e.getLongKey();
+      final long x = this.keyIndex(key, 0);
+      final long y = this.keyIndex(key, 1);
+      final long z = this.keyIndex(key, 2);
+      if (within(range, x, y, z)
+        && !this.visitCell(e.getIntValue(), x, y, z, range, visitor)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean within(
+    final long[] range,
+    final long x,
+    final long y,
+    final long z)
+  {
+    final boolean wx = x >= range[0] && x <= range[1];
+    final boolean wy = y >= range[2] && y <= range[3];
+    final boolean wz = z >= range[4] && z <= range[5];
+    return wx && wy && wz;
+  }
+
+  /**
+   * Visit the slots of a cell for which the cell is the first cell of the
+   * range that the slot touches.
+   */
+
+  private boolean visitCell(
+    final int head,
+    final long x,
+    final long y,
+    final long z,
+    final long[] range,
+    final SlotVisitorType visitor)
+  {
+    final long[] sc = this.slot_cells;
+    for (int entry = head; entry != NONE; entry = this.entry_next[entry]) {
+      final int slot = this.entry_slot[entry];
+      final int r = slot * RANGE_STRIDE;
+      final boolean rx = Math.max(sc[r], range[0]) == x;
+      final boolean ry = Math.max(sc[r + 2], range[2]) == y;
+      final boolean rz = Math.max(sc[r + 4], range[4]) == z;
+      if (rx && ry && rz && !visitor.visit(slot)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Visit the slots that touch the cells through which a ray passes, in the
+   * order in which the ray passes through the cells. After the slots of each
+   * cell, the visitor is told the distance at which the ray leaves the cell:
+   * no slot that has not yet been visited can be hit closer than that.
+   *
+   * @param ray_origin    The origin of the ray
+   * @param ray_direction The direction of the ray
+   * @param entry         The distance at which the ray enters the grid
+   * @param visitor       The visitor
+   *
+   * @return {@code false} iff the visitor stopped the query
+   */
+
+  boolean raycast(
+    final double[] ray_origin,
+    final double[] ray_direction,
+    final double entry,
+    final SearchVisitorType visitor)
+  {
+    if (!this.visitLarge(visitor)) {
+      return false;
+    }
+    if (entry == Double.POSITIVE_INFINITY) {
+      return visitor.bound(Double.POSITIVE_INFINITY);
+    }
+
+    final long[] current = new long[AXES];
+    final long[] step = new long[AXES];
+    for (int axis = 0; axis < AXES; ++axis) {
+      final double d = ray_direction[axis];
+      current[axis] = this.cell(axis, ray_origin[axis] + d * entry);
+      step[axis] = (long) Math.signum(d);
+    }
+
+    return this.raycastPath(current, step, ray_origin, ray_direction, visitor);
+  }
+
+  /**
+   * Walk the cells along a ray, starting from {@code current}.
+   */
+
+  private boolean raycastPath(
+    final long[] current,
+    final long[] step,
+    final double[] ray_origin,
+    final double[] ray_direction,
+    final SearchVisitorType visitor)
+  {
+    /*
+     * The cells along the ray form a path that is monotonic on each axis,
+     * and so the cells of a slot's range that lie on the path are
+     * consecutive: a slot is visited in the first cell of its range that the
+     * path reaches.
+     */
+
+    final long[] previous = new long[AXES];
+    boolean first = true;
+    while (true) {
+      final int head = this.cells.get(this.key(current[0], current[1], current[2]));
+      if (!this.raycastCell(head, first ? null : previous, visitor)) {
+        return false;
+      }
+
+      final int axis = this.exitAxis(current, step, ray_origin, ray_direction);
+      if (axis == NONE) {
+        return visitor.bound(Double.POSITIVE_INFINITY);
+      }
+
+      final double exit =
+        this.cellExit(axis, current[axis], step[axis], ray_origin, ray_direction);
+      if (!visitor.bound(exit)) {
+        return false;
+      }
+
+      System.arraycopy(current, 0, previous, 0, AXES);
+      current[axis] += step[axis];
+      first = false;
+      if (current[axis] < 0L || current[axis] >= this.count[axis]) {
+        return visitor.bound(Double.POSITIVE_INFINITY);
+      }
+    }
+  }
+
+  /**
+   * Visit the slots of a cell on the path of a ray that are not held by
+   * the previous cell on the path, if any.
+   */
+
+  private boolean raycastCell(
+    final int head,
+    final long[] previous,
+    final SearchVisitorType visitor)
+  {
+    final long[] sc = this.slot_cells;
+    for (int entry = head; entry != NONE; entry = this.entry_next[entry]) {
+      final int slot = this.entry_slot[entry];
+      final boolean entered = previous == null
+        || !within(sc, slot * RANGE_STRIDE, previous[0], previous[1], previous[2]);
+      if (entered && !visitor.visit(slot)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @return The axis on which a ray leaves a cell first, or {@code -1} if the
+   * ray never leaves the cell
+   */
+
+  private int exitAxis(
+    final long[] current,
+    final long[] step,
+    final double[] ray_origin,
+    final double[] ray_direction)
+  {
+    int axis = NONE;
+    double exit = Double.POSITIVE_INFINITY;
+    for (int index = 0; index < AXES; ++index) {
+      final double t =
+        this.cellExit(index, current[index], step[index], ray_origin, ray_direction);
+      if (t < exit) {
+        exit = t;
+        axis = index;
+      }
+    }
+    return axis;
+  }
+
+  private static boolean within(
+    final long[] sc,
+    final int r,
+    final long x,
+    final long y,
+    final long z)
+  {
+    final boolean wx = x >= sc[r] && x <= sc[r + 1];
+    final boolean wy = y >= sc[r + 2] && y <= sc[r + 3];
+    final boolean wz = z >= sc[r + 4] && z <= sc[r + 5];
+    return wx && wy && wz;
+  }
+
+  /**
+   * @return The distance along a ray at which the ray leaves a cell on the given axis
+   */
+
+  private double cellExit(
+    final int axis,
+    final long index,
+    final long step,
+    final double[] ray_origin,
+    final double[] ray_direction)
+  {
+    if (step == 0L) {
+      return Double.POSITIVE_INFINITY;
+    }
+    final long boundary = step > 0L ? index + 1L : index;
+    final double plane =
+      (double) this.origin[axis] + (double) boundary * (double) this.size[axis];
+    return (plane - ray_origin[axis]) / ray_direction[axis];
+  }
+
+  /**
+   * Visit the slots of the grid in rings of cells of increasing distance
+   * from a point. After each ring, the visitor is told a distance that no
+   * slot that has not yet been visited can be closer than.
+   *
+   * @param point   The point
+   * @param visitor The visitor
+   *
+   * @return {@code false} iff the visitor stopped the query
+   */
+
+  boolean nearest(
+    final double[] point,
+    final SearchVisitorType visitor)
+  {
+    if (!this.visitLarge(visitor)) {
+      return false;
+    }
+
+    final long[] centre = new long[AXES];
+    for (int axis = 0; axis < AXES; ++axis) {
+      centre[axis] = this.cell(axis, point[axis]);
+    }
+
+    final long[] box = new long[RANGE_STRIDE];
+    for (long ring = 0L; ; ++ring) {
+      long box_cells = 1L;
+      for (int axis = 0; axis < AXES; ++axis) {
+        box[axis * 2] = Math.max(0L, centre[axis] - ring);
+        box[axis * 2 + 1] = Math.min(this.count[axis] - 1L, centre[axis] + ring);
+        box_cells *= box[axis * 2 + 1] - box[axis * 2] + 1L;
+      }
+
+      /*
+       * Once a ring would examine more cells than are occupied, examine the
+       * occupied cells instead, and finish.
+       */
+
+      if (box_cells > (long) this.cells.size()) {
+        return this.nearestRemaining(centre, ring, visitor)
+          && visitor.bound(Double.POSITIVE_INFINITY);
+      }
+
+      if (!this.nearestRing(centre, ring, box, visitor)) {
+        return false;
+      }
+
+      final double bound = this.ringBound(point, box);
+      if (!visitor.bound(bound)) {
+        return false;
+      }
+      if (bound == Double.POSITIVE_INFINITY) {
+        return true;
+      }
+    }
+  }
+
+  /**
+   * @return The distance from a point to the nearest face of a box of cells
+   * that does not lie on the boundary of the grid
+   */
+
+  private double ringBound(
+    final double[] point,
+    final long[] box)
+  {
+    double bound = Double.POSITIVE_INFINITY;
+    for (int axis = 0; axis < AXES; ++axis) {
+      if (box[axis * 2] > 0L) {
+        final double face = (double) this.cellMinimum(axis, box[axis * 2]);
+        bound = Math.min(bound, Math.max(0.0, point[axis] - face));
+      }
+      if (box[axis * 2 + 1] < this.count[axis] - 1L) {
+        final double face = (double) this.cellMinimum(axis, box[axis * 2 + 1] + 1L);
+        bound = Math.min(bound, Math.max(0.0, face - point[axis]));
+      }
+    }
+    return bound;
+  }
+
+  /**
+   * Visit the cells at exactly {@code ring} cells from {@code centre}.
+   */
+
+  private boolean nearestRing(
+    final long[] centre,
+    final long ring,
+    final long[] box,
+    final SearchVisitorType visitor)
+  {
+    for (long x = box[0]; x <= box[1]; ++x) {
+      for (long y = box[2]; y <= box[3]; ++y) {
+        final long dxy = Math.max(Math.abs(x - centre[0]), Math.abs(y - centre[1]));
+        if (dxy == ring) {
+          for (long z = box[4]; z <= box[5]; ++z) {
+            if (!this.nearestCell(centre, x, y, z, visitor)) {
+              return false;
+            }
+          }
+        } else {
+          final long z0 = centre[2] - ring;
+          final long z1 = centre[2] + ring;
+          if (z0 >= box[4] && !this.nearestCell(centre, x, y, z0, visitor)) {
+            return false;
+          }
+          if (z1 <= box[5] && !this.nearestCell(centre, x, y, z1, visitor)) {
+            return false;
+          }
+        }
+      }
+    }
+    return true;
+  }
+
+  private boolean nearestCell(
+    final long[] centre,
+    final long x,
+    final long y,
+    final long z,
+    final SearchVisitorType visitor)
+  {
+    final int head = this.cells.get(this.key(x, y, z));
+    for (int entry = head; entry != NONE; entry = this.entry_next[entry]) {
+      final int slot = this.entry_slot[entry];
+      if (this.isNearestReference(slot, centre, x, y, z) && !visitor.visit(slot)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * A slot is visited in the cell of its range that is nearest to the
+   * centre of the search, which lies in the first ring that reaches the
+   * slot.
+   */
+
+  private boolean isNearestReference(
+    final int slot,
+    final long[] centre,
+    final long x,
+    final long y,
+    final long z)
+  {
+    final int r = slot * RANGE_STRIDE;
+    final long[] sc = this.slot_cells;
+    final boolean rx = Math.min(Math.max(centre[0], sc[r]), sc[r + 1]) == x;
+    final boolean ry = Math.min(Math.max(centre[1], sc[r + 2]), sc[r + 3]) == y;
+    final boolean rz = Math.min(Math.max(centre[2], sc[r + 4]), sc[r + 5]) == z;
+    return rx && ry && rz;
+  }
+
+  /**
+   * Visit the slots that have not been reached by rings before {@code ring}.
+   */
+
+  private boolean nearestRemaining(
+    final long[] centre,
+    final long ring,
+    final SearchVisitorType visitor)
+  {
+    for (final Long2IntMap.Entry e : Long2IntMaps.fastIterable(this.cells)) {
+      final long key = e.getLongKey();
+      final long x = this.keyIndex(key, 0);
+      final long y = this.keyIndex(key, 1);
+      final long z = this.keyIndex(key, 2);
+      final long distance = Math.max(
+        Math.abs(x - centre[0]),
+        Math.max(Math.abs(y - centre[1]), Math.abs(z - centre[2])));
+      if (distance >= ring) {
+        for (int entry = e.getIntValue(); entry != NONE; entry = this.entry_next[entry]) {
+          final int slot = this.entry_slot[entry];
+          if (this.isNearestReference(slot, centre, x, y, z) && !visitor.visit(slot)) {
+            return false;
+          }
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * A receiver of the slots found by a query.
+   */
+
+  interface SlotVisitorType
+  {
+    /**
+     * @param slot A slot
+     *
+     * @return {@code false} iff the query should stop
+     */
+
+    boolean visit(int slot);
+  }
+
+  /**
+   * A receiver of the slots found by a search that proceeds outwards from a
+   * point or along a ray.
+   */
+
+  interface SearchVisitorType extends SlotVisitorType
+  {
+    /**
+     * Indicate that every slot that has not yet been visited is at least
+     * the given distance away. Searches that visit every slot may ignore
+     * bounds.
+     *
+     * @param distance The distance
+     *
+     * @return {@code false} iff the query should stop
+     */
+
+    default boolean bound(
+      final double distance)
+    {
+      return true;
+    }
+  }
+}
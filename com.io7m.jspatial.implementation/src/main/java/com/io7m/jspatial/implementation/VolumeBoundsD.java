@@ -0,0 +1,575 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.jspatial.implementation;
+
+import com.io7m.jregions.core.unparameterized.volumes.VolumeD;
+import com.io7m.jspatial.api.Ray3D;
+import com.io7m.jtensors.core.unparameterized.vectors.Vector3D;
+import com.io7m.junreachable.UnreachableCodeException;
+
+/**
+ * Functions over volumes packed into {@code double} arrays as
+ * (minimum x, maximum x, minimum y, maximum y, minimum z, maximum z). The
+ * overlap and containment tests match those of {@code VolumesD}, but do not allocate.
+ */
+
+final class VolumeBoundsD
+{
+  /**
+   * The number of array elements used by a single volume.
+   */
+
+  static final int STRIDE = 6;
+
+  /**
+   * The number of array elements used by a single packed ray.
+   */
+
+  static final int RAY_STRIDE = 6;
+
+  private VolumeBoundsD()
+  {
+    throw new UnreachableCodeException();
+  }
+
+  /**
+   * Pack a volume into a new array.
+   *
+   * @param v The volume
+   *
+   * @return A new array
+   */
+
+  static double[] pack(final VolumeD v)
+  {
+    final double[] out = new double[STRIDE];
+    store(v, out, 0);
+    return out;
+  }
+
+  /**
+   * Pack a volume into an existing array.
+   *
+   * @param v   The volume
+   * @param out The output array
+   * @param o   The offset of the volume within {@code out}
+   */
+
+  static void store(
+    final VolumeD v,
+    final double[] out,
+    final int o)
+  {
+    out[o] = v.minimumX();
+    out[o + 1] = v.maximumX();
+    out[o + 2] = v.minimumY();
+    out[o + 3] = v.maximumY();
+    out[o + 4] = v.minimumZ();
+    out[o + 5] = v.maximumZ();
+  }
+
+  /**
+   * Unpack a volume.
+   *
+   * @param b The array
+   * @param o The offset of the volume within {@code b}
+   *
+   * @return A volume
+   */
+
+  static VolumeD unpack(
+    final double[] b,
+    final int o)
+  {
+    return VolumeD.of(
+      b[o],
+      b[o + 1],
+      b[o + 2],
+      b[o + 3],
+      b[o + 4],
+      b[o + 5]);
+  }
+
+  /**
+   * @param outer The outer array
+   * @param o     The offset of the outer volume
+   * @param inner The inner array
+   * @param i     The offset of the inner volume
+   *
+   * @return {@code true} iff the outer volume contains the inner volume
+   */
+
+  static boolean contains(
+    final double[] outer,
+    final int o,
+    final double[] inner,
+    final int i)
+  {
+    final boolean cx =
+      inner[i] >= outer[o] && inner[i + 1] <= outer[o + 1];
+    final boolean cy =
+      inner[i + 2] >= outer[o + 2] && inner[i + 3] <= outer[o + 3];
+    final boolean cz =
+      inner[i + 4] >= outer[o + 4] && inner[i + 5] <= outer[o + 5];
+    return cx && cy && cz;
+  }
+
+  /**
+   * @param outer The outer array
+   * @param o     The offset of the outer volume
+   * @param inner The inner volume
+   *
+   * @return {@code true} iff the outer volume contains {@code inner}
+   */
+
+  static boolean contains(
+    final double[] outer,
+    final int o,
+    final VolumeD inner)
+  {
+    final boolean cx =
+      inner.minimumX() >= outer[o]
+        && inner.maximumX() <= outer[o + 1];
+    final boolean cy =
+      inner.minimumY() >= outer[o + 2]
+        && inner.maximumY() <= outer[o + 3];
+    final boolean cz =
+      inner.minimumZ() >= outer[o + 4]
+        && inner.maximumZ() <= outer[o + 5];
+    return cx && cy && cz;
+  }
+
+  /**
+   * Empty extents are treated as having a size of one.
+   *
+   * @param a  The first array
+   * @param ai The offset of the first volume
+   * @param b  The second array
+   * @param bi The offset of the second volume
+   *
+   * @return {@code true} iff the volumes overlap
+   */
+
+  static boolean overlaps(
+    final double[] a,
+    final int ai,
+    final double[] b,
+    final int bi)
+  {
+    final double a_x0 = a[ai];
+    final double a_x1 = a_x0 + Math.max(1.0, a[ai + 1] - a_x0);
+    final double a_y0 = a[ai + 2];
+    final double a_y1 = a_y0 + Math.max(1.0, a[ai + 3] - a_y0);
+    final double a_z0 = a[ai + 4];
+    final double a_z1 = a_z0 + Math.max(1.0, a[ai + 5] - a_z0);
+    final double b_x0 = b[bi];
+    final double b_x1 = b_x0 + Math.max(1.0, b[bi + 1] - b_x0);
+    final double b_y0 = b[bi + 2];
+    final double b_y1 = b_y0 + Math.max(1.0, b[bi + 3] - b_y0);
+    final double b_z0 = b[bi + 4];
+    final double b_z1 = b_z0 + Math.max(1.0, b[bi + 5] - b_z0);
+
+    final boolean ox = a_x0 < b_x1 && a_x1 > b_x0;
+    final boolean oy = a_y0 < b_y1 && a_y1 > b_y0;
+    final boolean oz = a_z0 < b_z1 && a_z1 > b_z0;
+    return ox && oy && oz;
+  }
+
+  /**
+   * Unlike {@link #overlaps(double[], int, double[], int)}, volumes that share only an edge or
+   * a corner are considered to touch.
+   *
+   * @param a  The first array
+   * @param ai The offset of the first volume
+   * @param b  The second array
+   * @param bi The offset of the second volume
+   *
+   * @return {@code true} iff the volumes have at least one point in common
+   */
+
+  static boolean touches(
+    final double[] a,
+    final int ai,
+    final double[] b,
+    final int bi)
+  {
+    final boolean tx =
+      a[ai] <= b[bi + 1] && a[ai + 1] >= b[bi];
+    final boolean ty =
+      a[ai + 2] <= b[bi + 3] && a[ai + 3] >= b[bi + 2];
+    final boolean tz =
+      a[ai + 4] <= b[bi + 5] && a[ai + 5] >= b[bi + 4];
+    return tx && ty && tz;
+  }
+
+  /**
+   * Determine whether every volume contained within the second volume overlaps the first
+   * volume, in the sense of {@link #overlaps(double[], int, double[], int)}. This is slightly
+   * stronger than containment: A volume of size zero lying on the upper boundary of the first
+   * volume does not overlap it.
+   *
+   * @param a  The first array
+   * @param ai The offset of the first volume
+   * @param b  The second array
+   * @param bi The offset of the second volume
+   *
+   * @return {@code true} iff every volume within the second volume overlaps the first
+   */
+
+  static boolean overlapsAllWithin(
+    final double[] a,
+    final int ai,
+    final double[] b,
+    final int bi)
+  {
+    final double a_x0 = a[ai];
+    final double a_x1 = a_x0 + Math.max(1.0, a[ai + 1] - a_x0);
+    final boolean wx = b[bi] >= a_x0 && b[bi + 1] < a_x1;
+    final double a_y0 = a[ai + 2];
+    final double a_y1 = a_y0 + Math.max(1.0, a[ai + 3] - a_y0);
+    final boolean wy = b[bi + 2] >= a_y0 && b[bi + 3] < a_y1;
+    final double a_z0 = a[ai + 4];
+    final double a_z1 = a_z0 + Math.max(1.0, a[ai + 5] - a_z0);
+    final boolean wz = b[bi + 4] >= a_z0 && b[bi + 5] < a_z1;
+    return wx && wy && wz;
+  }
+
+  /**
+   * Determine whether some volume contained within the second volume can overlap the first
+   * volume, in the sense of {@link #overlaps(double[], int, double[], int)}. Because empty
+   * extents are treated as having a size of one, a volume within the second volume can overlap
+   * volumes that lie up to one unit beyond the upper boundary of the second volume, so this is
+   * slightly weaker than {@link #overlaps(double[], int, double[], int)}.
+   *
+   * @param a  The first array
+   * @param ai The offset of the first volume
+   * @param b  The second array
+   * @param bi The offset of the second volume
+   *
+   * @return {@code false} if no volume within the second volume overlaps the first
+   */
+
+  static boolean overlapsAnyWithin(
+    final double[] a,
+    final int ai,
+    final double[] b,
+    final int bi)
+  {
+    final double a_x0 = a[ai];
+    final double a_x1 = a_x0 + Math.max(1.0, a[ai + 1] - a_x0);
+    final boolean ox = a_x0 < b[bi + 1] + 1.0 && a_x1 > b[bi];
+    final double a_y0 = a[ai + 2];
+    final double a_y1 = a_y0 + Math.max(1.0, a[ai + 3] - a_y0);
+    final boolean oy = a_y0 < b[bi + 3] + 1.0 && a_y1 > b[bi + 2];
+    final double a_z0 = a[ai + 4];
+    final double a_z1 = a_z0 + Math.max(1.0, a[ai + 5] - a_z0);
+    final boolean oz = a_z0 < b[bi + 5] + 1.0 && a_z1 > b[bi + 4];
+    return ox && oy && oz;
+  }
+
+  /**
+   * @param ray The ray
+   * @param b   The array
+   * @param o   The offset of the volume within {@code b}
+   *
+   * @return {@code true} iff the ray intersects the volume
+   */
+
+  static boolean intersects(
+    final Ray3D ray,
+    final double[] b,
+    final int o)
+  {
+    return ray.intersectsVolume(
+      b[o],
+      b[o + 2],
+      b[o + 4],
+      b[o + 1],
+      b[o + 3],
+      b[o + 5]);
+  }
+
+  /**
+   * @param ray The ray
+   * @param b   The array
+   * @param o   The offset of the volume within {@code b}
+   *
+   * @return The distance along the ray at which it enters the volume, or
+   * {@link Double#POSITIVE_INFINITY} if the ray misses the volume
+   */
+
+  static double entryDistance(
+    final Ray3D ray,
+    final double[] b,
+    final int o)
+  {
+    return ray.entryDistanceVolume(
+      b[o],
+      b[o + 2],
+      b[o + 4],
+      b[o + 1],
+      b[o + 3],
+      b[o + 5]);
+  }
+
+  /**
+   * Pack a ray into an existing array as (origin x, origin y, origin z,
+   * inverse direction x, inverse direction y, inverse direction z).
+   *
+   * @param ray The ray
+   * @param out The output array
+   * @param o   The offset of the ray within {@code out}
+   */
+
+  static void storeRay(
+    final Ray3D ray,
+    final double[] out,
+    final int o)
+  {
+    final Vector3D origin = ray.origin();
+    final Vector3D direction_inverse = ray.directionInverse();
+    out[o] = origin.x();
+    out[o + 1] = origin.y();
+    out[o + 2] = origin.z();
+    out[o + 3] = direction_inverse.x();
+    out[o + 4] = direction_inverse.y();
+    out[o + 5] = direction_inverse.z();
+  }
+
+  /**
+   * The same test as {@link #entryDistance(Ray3D, double[], int)}, for a
+   * ray packed by {@link #storeRay(Ray3D, double[], int)}.
+   *
+   * @param r  The array of rays
+   * @param ro The offset of the ray within {@code r}
+   * @param b  The array of volumes
+   * @param o  The offset of the volume within {@code b}
+   *
+   * @return The distance along the ray at which it enters the volume, or
+   * {@link Double#POSITIVE_INFINITY} if the ray misses the volume
+   */
+
+  static double entryDistance(
+    final double[] r,
+    final int ro,
+    final double[] b,
+    final int o)
+  {
+    final double ox = r[ro];
+    final double oy = r[ro + 1];
+    final double oz = r[ro + 2];
+    final double dix = r[ro + 3];
+    final double diy = r[ro + 4];
+    final double diz = r[ro + 5];
+
+    final double tx0 = (b[o] - ox) * dix;
+    final double tx1 = (b[o + 1] - ox) * dix;
+    double tmin = Math.min(tx0, tx1);
+    double tmax = Math.max(tx0, tx1);
+
+    final double ty0 = (b[o + 2] - oy) * diy;
+    final double ty1 = (b[o + 3] - oy) * diy;
+    tmin = Math.max(tmin, Math.min(ty0, ty1));
+    tmax = Math.min(tmax, Math.max(ty0, ty1));
+
+    final double tz0 = (b[o + 4] - oz) * diz;
+    final double tz1 = (b[o + 5] - oz) * diz;
+    tmin = Math.max(tmin, Math.min(tz0, tz1));
+    tmax = Math.min(tmax, Math.max(tz0, tz1));
+
+    if (tmax >= Math.max(0.0, tmin) && tmin < Double.POSITIVE_INFINITY) {
+      return Math.max(0.0, tmin);
+    }
+    return Double.POSITIVE_INFINITY;
+  }
+
+  /**
+   * Test up to {@link LeafKernelDType#MAXIMUM_COUNT} of the volumes in
+   * {@code b} against the query volume in {@code a}, as with
+   * {@link #overlaps(double[], int, double[], int)}.
+   *
+   * @param a     The array holding the query volume at offset 0
+   * @param b     The array of volumes
+   * @param index The index of the first volume to test
+   * @param end   The number of volumes in {@code b}
+   *
+   * @return A mask in which bit {@code i} is set iff the volume at
+   * {@code index + i} overlaps the query volume
+   */
+
+  static long overlapping(
+    final double[] a,
+    final double[] b,
+    final int index,
+    final int end)
+  {
+    return LeafKernelsD.current().overlappingVolumes(
+      a, b, index, Math.min(end - index, LeafKernelDType.MAXIMUM_COUNT));
+  }
+
+  /**
+   * Test up to {@link LeafKernelDType#MAXIMUM_COUNT} of the volumes in
+   * {@code b} against a ray, as with {@link #intersects(Ray3D, double[], int)}.
+   *
+   * @param ray   The ray
+   * @param b     The array of volumes
+   * @param index The index of the first volume to test
+   * @param end   The number of volumes in {@code b}
+   *
+   * @return A mask in which bit {@code i} is set iff the ray intersects the
+   * volume at {@code index + i}
+   */
+
+  static long intersecting(
+    final Ray3D ray,
+    final double[] b,
+    final int index,
+    final int end)
+  {
+    final Vector3D origin = ray.origin();
+    final Vector3D direction_inverse = ray.directionInverse();
+    return LeafKernelsD.current().intersectingVolumes(
+      origin.x(),
+      origin.y(),
+      origin.z(),
+      direction_inverse.x(),
+      direction_inverse.y(),
+      direction_inverse.z(),
+      b,
+      index,
+      Math.min(end - index, LeafKernelDType.MAXIMUM_COUNT));
+  }
+
+  /**
+   * Select up to {@link LeafKernelDType#MAXIMUM_COUNT} of the volumes in
+   * {@code b} as candidates for {@link #entryDistance(Ray3D, double[], int)}.
+   * Calculating the entry distance is itself a slab test, so with the
+   * scalar kernel every volume is a candidate and each volume is tested exactly
+   * once. With any other kernel, the candidates are the volumes that the
+   * kernel finds to be intersected by the ray, as with
+   * {@link #intersecting(Ray3D, double[], int, int)}.
+   *
+   * @param ray   The ray
+   * @param b     The array of volumes
+   * @param index The index of the first volume, which must be less than
+   *              {@code end}
+   * @param end   The number of volumes in {@code b}
+   *
+   * @return A mask in which bit {@code i} is set iff the volume at
+   * {@code index + i} is a candidate
+   */
+
+  static long raycastCandidates(
+    final Ray3D ray,
+    final double[] b,
+    final int index,
+    final int end)
+  {
+    if (LeafKernelsD.current() == LeafKernelsD.scalar()) {
+      final int count = Math.min(end - index, LeafKernelDType.MAXIMUM_COUNT);
+      return -1L >>> (Long.SIZE - count);
+    }
+    return intersecting(ray, b, index, end);
+  }
+
+  /**
+   * @param x The x coordinate of the point
+   * @param y The y coordinate of the point
+   * @param z The z coordinate of the point
+   * @param b The array
+   * @param o The offset of the volume within {@code b}
+   *
+   * @return The squared distance from the point to the nearest point of the volume
+   */
+
+  static double distanceSquared(
+    final double x,
+    final double y,
+    final double z,
+    final double[] b,
+    final int o)
+  {
+    final double dx =
+      axisDistance(x, b[o], b[o + 1]);
+    final double dy =
+      axisDistance(y, b[o + 2], b[o + 3]);
+    final double dz =
+      axisDistance(z, b[o + 4], b[o + 5]);
+    return dx * dx + dy * dy + dz * dz;
+  }
+
+  /**
+   * @param r The packed bounds of the tree
+   * @param b The array
+   * @param o The offset of the volume within {@code b}
+   *
+   * @return The Morton code of the centre of the volume, relative to {@code r}
+   */
+
+  static long mortonCode(
+    final double[] r,
+    final double[] b,
+    final int o)
+  {
+    return MortonCodes.interleave3(
+      MortonCodes.quantize(
+        b[o], b[o + 1], r[0], r[1], MortonCodes.BITS_3D),
+      MortonCodes.quantize(
+        b[o + 2], b[o + 3], r[2], r[3], MortonCodes.BITS_3D),
+      MortonCodes.quantize(
+        b[o + 4], b[o + 5], r[4], r[5], MortonCodes.BITS_3D));
+  }
+
+  /**
+   * @param ray The ray
+   *
+   * @return A value that, when combined with a child index using exclusive-or, yields the children
+   * of a node in an order in which the ray can pass through them
+   */
+
+  static int raycastOrder(
+    final Ray3D ray)
+  {
+    final Vector3D direction = ray.direction();
+    int order = 0;
+    if (direction.x() < 0.0) {
+      order |= 1;
+    }
+    if (direction.y() < 0.0) {
+      order |= 2;
+    }
+    if (direction.z() < 0.0) {
+      order |= 4;
+    }
+    return order;
+  }
+
+  private static double axisDistance(
+    final double p,
+    final double minimum,
+    final double maximum)
+  {
+    if (p < minimum) {
+      return minimum - p;
+    }
+    if (p > maximum) {
+      return p - maximum;
+    }
+    return 0.0;
+  }
+}
@@ -0,0 +1,397 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.jspatial.implementation;
+
+import com.io7m.jregions.core.unparameterized.volumes.VolumeI;
+import com.io7m.jspatial.api.Ray3D;
+import com.io7m.jtensors.core.unparameterized.vectors.Vector3D;
+import com.io7m.junreachable.UnreachableCodeException;
+
+/**
+ * Functions over volumes packed into {@code int} arrays as
+ * (minimum x, maximum x, minimum y, maximum y, minimum z, maximum z). The
+ * overlap and containment tests match those of {@code VolumesI}, but do not allocate.
+ */
+
+final class VolumeBoundsI
+{
+  /**
+   * The number of array elements used by a single volume.
+   */
+
+  static final int STRIDE = 6;
+
+  private VolumeBoundsI()
+  {
+    throw new UnreachableCodeException();
+  }
+
+  /**
+   * Pack a volume into a new array.
+   *
+   * @param v The volume
+   *
+   * @return A new array
+   */
+
+  static int[] pack(final VolumeI v)
+  {
+    final int[] out = new int[STRIDE];
+    store(v, out, 0);
+    return out;
+  }
+
+  /**
+   * Pack a volume into an existing array.
+   *
+   * @param v   The volume
+   * @param out The output array
+   * @param o   The offset of the volume within {@code out}
+   */
+
+  static void store(
+    final VolumeI v,
+    final int[] out,
+    final int o)
+  {
+    out[o] = v.minimumX();
+    out[o + 1] = v.maximumX();
+    out[o + 2] = v.minimumY();
+    out[o + 3] = v.maximumY();
+    out[o + 4] = v.minimumZ();
+    out[o + 5] = v.maximumZ();
+  }
+
+  /**
+   * Copy a packed volume into an array of {@code double} values, so that
+   * rays can be tested against the copy without converting coordinates.
+   *
+   * @param b   The array
+   * @param o   The offset of the volume within {@code b}
+   * @param out The output array
+   * @param oo  The offset of the volume within {@code out}
+   */
+
+  static void storeDouble(
+    final int[] b,
+    final int o,
+    final double[] out,
+    final int oo)
+  {
+    for (int index = 0; index < STRIDE; ++index) {
+      out[oo + index] = (double) b[o + index];
+    }
+  }
+
+  /**
+   * Unpack a volume.
+   *
+   * @param b The array
+   * @param o The offset of the volume within {@code b}
+   *
+   * @return A volume
+   */
+
+  static VolumeI unpack(
+    final int[] b,
+    final int o)
+  {
+    return VolumeI.of(
+      b[o],
+      b[o + 1],
+      b[o + 2],
+      b[o + 3],
+      b[o + 4],
+      b[o + 5]);
+  }
+
+  /**
+   * @param outer The outer array
+   * @param o     The offset of the outer volume
+   * @param inner The inner array
+   * @param i     The offset of the inner volume
+   *
+   * @return {@code true} iff the outer volume contains the inner volume
+   */
+
+  static boolean contains(
+    final int[] outer,
+    final int o,
+    final int[] inner,
+    final int i)
+  {
+    final boolean cx =
+      inner[i] >= outer[o] && inner[i + 1] <= outer[o + 1];
+    final boolean cy =
+      inner[i + 2] >= outer[o + 2] && inner[i + 3] <= outer[o + 3];
+    final boolean cz =
+      inner[i + 4] >= outer[o + 4] && inner[i + 5] <= outer[o + 5];
+    return cx && cy && cz;
+  }
+
+  /**
+   * @param outer The outer array
+   * @param o     The offset of the outer volume
+   * @param inner The inner volume
+   *
+   * @return {@code true} iff the outer volume contains {@code inner}
+   */
+
+  static boolean contains(
+    final int[] outer,
+    final int o,
+    final VolumeI inner)
+  {
+    final boolean cx =
+      inner.minimumX() >= outer[o]
+        && inner.maximumX() <= outer[o + 1];
+    final boolean cy =
+      inner.minimumY() >= outer[o + 2]
+        && inner.maximumY() <= outer[o + 3];
+    final boolean cz =
+      inner.minimumZ() >= outer[o + 4]
+        && inner.maximumZ() <= outer[o + 5];
+    return cx && cy && cz;
+  }
+
+  /**
+   * Empty extents are treated as having a size of one.
+   *
+   * @param a  The first array
+   * @param ai The offset of the first volume
+   * @param b  The second array
+   * @param bi The offset of the second volume
+   *
+   * @return {@code true} iff the volumes overlap
+   */
+
+  static boolean overlaps(
+    final int[] a,
+    final int ai,
+    final int[] b,
+    final int bi)
+  {
+    final int a_x0 = a[ai];
+    final int a_x1 = a_x0 + Math.max(1, a[ai + 1] - a_x0);
+    final int a_y0 = a[ai + 2];
+    final int a_y1 = a_y0 + Math.max(1, a[ai + 3] - a_y0);
+    final int a_z0 = a[ai + 4];
+    final int a_z1 = a_z0 + Math.max(1, a[ai + 5] - a_z0);
+    final int b_x0 = b[bi];
+    final int b_x1 = b_x0 + Math.max(1, b[bi + 1] - b_x0);
+    final int b_y0 = b[bi + 2];
+    final int b_y1 = b_y0 + Math.max(1, b[bi + 3] - b_y0);
+    final int b_z0 = b[bi + 4];
+    final int b_z1 = b_z0 + Math.max(1, b[bi + 5] - b_z0);
+
+    final boolean ox = a_x0 < b_x1 && a_x1 > b_x0;
+    final boolean oy = a_y0 < b_y1 && a_y1 > b_y0;
+    final boolean oz = a_z0 < b_z1 && a_z1 > b_z0;
+    return ox && oy && oz;
+  }
+
+  /**
+   * Unlike {@link #overlaps(int[], int, int[], int)}, volumes that share only an edge or
+   * a corner are considered to touch.
+   *
+   * @param a  The first array
+   * @param ai The offset of the first volume
+   * @param b  The second array
+   * @param bi The offset of the second volume
+   *
+   * @return {@code true} iff the volumes have at least one point in common
+   */
+
+  static boolean touches(
+    final int[] a,
+    final int ai,
+    final int[] b,
+    final int bi)
+  {
+    final boolean tx =
+      a[ai] <= b[bi + 1] && a[ai + 1] >= b[bi];
+    final boolean ty =
+      a[ai + 2] <= b[bi + 3] && a[ai + 3] >= b[bi + 2];
+    final boolean tz =
+      a[ai + 4] <= b[bi + 5] && a[ai + 5] >= b[bi + 4];
+    return tx && ty && tz;
+  }
+
+  /**
+   * Determine whether every volume contained within the second volume overlaps the first
+   * volume, in the sense of {@link #overlaps(int[], int, int[], int)}. This is slightly
+   * stronger than containment: A volume of size zero lying on the upper boundary of the first
+   * volume does not overlap it.
+   *
+   * @param a  The first array
+   * @param ai The offset of the first volume
+   * @param b  The second array
+   * @param bi The offset of the second volume
+   *
+   * @return {@code true} iff every volume within the second volume overlaps the first
+   */
+
+  static boolean overlapsAllWithin(
+    final int[] a,
+    final int ai,
+    final int[] b,
+    final int bi)
+  {
+    final int a_x0 = a[ai];
+    final int a_x1 = a_x0 + Math.max(1, a[ai + 1] - a_x0);
+    final boolean wx = b[bi] >= a_x0 && b[bi + 1] < a_x1;
+    final int a_y0 = a[ai + 2];
+    final int a_y1 = a_y0 + Math.max(1, a[ai + 3] - a_y0);
+    final boolean wy = b[bi + 2] >= a_y0 && b[bi + 3] < a_y1;
+    final int a_z0 = a[ai + 4];
+    final int a_z1 = a_z0 + Math.max(1, a[ai + 5] - a_z0);
+    final boolean wz = b[bi + 4] >= a_z0 && b[bi + 5] < a_z1;
+    return wx && wy && wz;
+  }
+
+  /**
+   * @param ray The ray
+   * @param b   The array
+   * @param o   The offset of the volume within {@code b}
+   *
+   * @return {@code true} iff the ray intersects the volume
+   */
+
+  static boolean intersects(
+    final Ray3D ray,
+    final int[] b,
+    final int o)
+  {
+    return ray.intersectsVolume(
+      (double) b[o],
+      (double) b[o + 2],
+      (double) b[o + 4],
+      (double) b[o + 1],
+      (double) b[o + 3],
+      (double) b[o + 5]);
+  }
+
+  /**
+   * @param ray The ray
+   * @param b   The array
+   * @param o   The offset of the volume within {@code b}
+   *
+   * @return The distance along the ray at which it enters the volume, or
+   * {@link Double#POSITIVE_INFINITY} if the ray misses the volume
+   */
+
+  static double entryDistance(
+    final Ray3D ray,
+    final int[] b,
+    final int o)
+  {
+    return ray.entryDistanceVolume(
+      (double) b[o],
+      (double) b[o + 2],
+      (double) b[o + 4],
+      (double) b[o + 1],
+      (double) b[o + 3],
+      (double) b[o + 5]);
+  }
+
+  /**
+   * @param x The x coordinate of the point
+   * @param y The y coordinate of the point
+   * @param z The z coordinate of the point
+   * @param b The array
+   * @param o The offset of the volume within {@code b}
+   *
+   * @return The squared distance from the point to the nearest point of the volume
+   */
+
+  static double distanceSquared(
+    final double x,
+    final double y,
+    final double z,
+    final int[] b,
+    final int o)
+  {
+    final double dx =
+      axisDistance(x, (double) b[o], (double) b[o + 1]);
+    final double dy =
+      axisDistance(y, (double) b[o + 2], (double) b[o + 3]);
+    final double dz =
+      axisDistance(z, (double) b[o + 4], (double) b[o + 5]);
+    return dx * dx + dy * dy + dz * dz;
+  }
+
+  /**
+   * @param r The packed bounds of the tree
+   * @param b The array
+   * @param o The offset of the volume within {@code b}
+   *
+   * @return The Morton code of the centre of the volume, relative to {@code r}
+   */
+
+  static long mortonCode(
+    final int[] r,
+    final int[] b,
+    final int o)
+  {
+    return MortonCodes.interleave3(
+      MortonCodes.quantize(
+        (double) b[o], (double) b[o + 1], (double) r[0], (double) r[1], MortonCodes.BITS_3D),
+      MortonCodes.quantize(
+        (double) b[o + 2], (double) b[o + 3], (double) r[2], (double) r[3], MortonCodes.BITS_3D),
+      MortonCodes.quantize(
+        (double) b[o + 4], (double) b[o + 5], (double) r[4], (double) r[5], MortonCodes.BITS_3D));
+  }
+
+  /**
+   * @param ray The ray
+   *
+   * @return A value that, when combined with a child index using exclusive-or, yields the children
+   * of a node in an order in which the ray can pass through them
+   */
+
+  static int raycastOrder(
+    final Ray3D ray)
+  {
+    final Vector3D direction = ray.direction();
+    int order = 0;
+    if (direction.x() < 0.0) {
+      order |= 1;
+    }
+    if (direction.y() < 0.0) {
+      order |= 2;
+    }
+    if (direction.z() < 0.0) {
+      order |= 4;
+    }
+    return order;
+  }
+
+  private static double axisDistance(
+    final double p,
+    final double minimum,
+    final double maximum)
+  {
+    if (p < minimum) {
+      return minimum - p;
+    }
+    if (p > maximum) {
+      return p - maximum;
+    }
+    return 0.0;
+  }
+}
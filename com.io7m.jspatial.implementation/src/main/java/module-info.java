@@ -14,12 +14,26 @@
  * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
  */
 
+import com.io7m.jspatial.implementation.BoundingVolumeHierarchySupplierD;
+import com.io7m.jspatial.implementation.OctTreeConcurrentSupplierD;
+import com.io7m.jspatial.implementation.OctTreeFlatSupplierL;
+import com.io7m.jspatial.implementation.OctTreeGridSupplierI;
+import com.io7m.jspatial.implementation.OctTreeGridSupplierL;
+import com.io7m.jspatial.implementation.OctTreeLinearSupplierL;
 import com.io7m.jspatial.implementation.OctTreeSupplierD;
 import com.io7m.jspatial.implementation.OctTreeSupplierI;
 import com.io7m.jspatial.implementation.OctTreeSupplierL;
+import com.io7m.jspatial.implementation.OctTreeVersionedSupplierD;
+import com.io7m.jspatial.implementation.QuadTreeConcurrentSupplierD;
+import com.io7m.jspatial.implementation.QuadTreeFlatSupplierD;
+import com.io7m.jspatial.implementation.QuadTreeGridSupplierI;
+import com.io7m.jspatial.implementation.QuadTreeGridSupplierL;
+import com.io7m.jspatial.implementation.QuadTreeLinearSupplierI;
 import com.io7m.jspatial.implementation.QuadTreeSupplierD;
 import com.io7m.jspatial.implementation.QuadTreeSupplierI;
 import com.io7m.jspatial.implementation.QuadTreeSupplierL;
+import com.io7m.jspatial.implementation.QuadTreeVersionedSupplierD;
+import com.io7m.jspatial.implementation.RTreeSupplierD;
 
 /**
  * Spatial data structures (Main implementation)
@@ -38,13 +52,35 @@ module com.io7m.jspatial.implementation
   requires com.io7m.jaffirm.core;
   requires com.io7m.jtensors.core;
 
-  provides com.io7m.jspatial.api.octtrees.OctTreeSupplierDType with OctTreeSupplierD;
-  provides com.io7m.jspatial.api.octtrees.OctTreeSupplierLType with OctTreeSupplierL;
-  provides com.io7m.jspatial.api.octtrees.OctTreeSupplierIType with OctTreeSupplierI;
+  provides com.io7m.jspatial.api.octtrees.OctTreeSupplierDType with
+    OctTreeSupplierD,
+    BoundingVolumeHierarchySupplierD,
+    OctTreeConcurrentSupplierD,
+    OctTreeVersionedSupplierD;
+  provides com.io7m.jspatial.api.octtrees.OctTreeSupplierLType with
+    OctTreeSupplierL,
+    OctTreeFlatSupplierL,
+    OctTreeLinearSupplierL,
+    OctTreeGridSupplierL;
+  provides com.io7m.jspatial.api.octtrees.OctTreeSupplierIType with
+    OctTreeSupplierI,
+    OctTreeGridSupplierI;
 
-  provides com.io7m.jspatial.api.quadtrees.QuadTreeSupplierDType with QuadTreeSupplierD;
-  provides com.io7m.jspatial.api.quadtrees.QuadTreeSupplierLType with QuadTreeSupplierL;
-  provides com.io7m.jspatial.api.quadtrees.QuadTreeSupplierIType with QuadTreeSupplierI;
+  provides com.io7m.jspatial.api.quadtrees.QuadTreeSupplierDType with
+    QuadTreeSupplierD,
+    QuadTreeFlatSupplierD,
+    RTreeSupplierD,
+    QuadTreeConcurrentSupplierD,
+    QuadTreeVersionedSupplierD;
+  provides com.io7m.jspatial.api.quadtrees.QuadTreeSupplierLType with
+    QuadTreeSupplierL,
+    QuadTreeGridSupplierL;
+  provides com.io7m.jspatial.api.quadtrees.QuadTreeSupplierIType with
+    QuadTreeSupplierI,
+    QuadTreeLinearSupplierI,
+    QuadTreeGridSupplierI;
+
+  uses com.io7m.jspatial.implementation.LeafKernelDType;
 
   exports com.io7m.jspatial.implementation;
 }
@@ -269,4 +269,32 @@ public final class RayI2DTest
       Assert.assertFalse(i);
     }
   }
+
+  @Test
+  public void testRayEntryDistance()
+  {
+    final Vector2D direct = Vector2D.of(1.0, 0.0);
+
+    {
+      // Enter -X face in +X direction
+      final Ray2D ray = Ray2D.of(Vector2D.of(1.0, 3.0), direct);
+      Assert.assertEquals(1.0, ray.entryDistanceArea(2.0, 2.0, 4.0, 4.0), 0.0);
+    }
+
+    {
+      // Origin inside the box
+      final Ray2D ray = Ray2D.of(Vector2D.of(3.0, 3.0), direct);
+      Assert.assertEquals(0.0, ray.entryDistanceArea(2.0, 2.0, 4.0, 4.0), 0.0);
+    }
+
+    {
+      // Box behind the origin
+      final Ray2D ray = Ray2D.of(Vector2D.of(6.0, 3.0), direct);
+      Assert.assertEquals(
+        Double.POSITIVE_INFINITY,
+        ray.entryDistanceArea(2.0, 2.0, 4.0, 4.0),
+        0.0);
+      Assert.assertFalse(ray.intersectsArea(2.0, 2.0, 4.0, 4.0));
+    }
+  }
 }
@@ -377,4 +377,34 @@ public final class RayI3DTest
       Assert.assertFalse(i);
     }
   }
+
+  @Test
+  public void testRayEntryDistance()
+  {
+    final Vector3D direct = Vector3D.of(1.0, 0.0, 0.0);
+
+    {
+      // Enter -X face in +X direction
+      final Ray3D ray = Ray3D.of(Vector3D.of(1.0, 3.0, 3.0), direct);
+      Assert.assertEquals(
+        1.0, ray.entryDistanceVolume(2.0, 2.0, 2.0, 4.0, 4.0, 4.0), 0.0);
+    }
+
+    {
+      // Origin inside the box
+      final Ray3D ray = Ray3D.of(Vector3D.of(3.0, 3.0, 3.0), direct);
+      Assert.assertEquals(
+        0.0, ray.entryDistanceVolume(2.0, 2.0, 2.0, 4.0, 4.0, 4.0), 0.0);
+    }
+
+    {
+      // Box behind the origin
+      final Ray3D ray = Ray3D.of(Vector3D.of(6.0, 3.0, 3.0), direct);
+      Assert.assertEquals(
+        Double.POSITIVE_INFINITY,
+        ray.entryDistanceVolume(2.0, 2.0, 2.0, 4.0, 4.0, 4.0),
+        0.0);
+      Assert.assertFalse(ray.intersectsVolume(2.0, 2.0, 2.0, 4.0, 4.0, 4.0));
+    }
+  }
 }
@@ -56,5 +56,7 @@ public abstract class OctTreeConfigurationDContract
     Assert.assertEquals(2.0, c.minimumOctantWidth(), 0.0001);
     Assert.assertEquals(2.0, c.minimumOctantDepth(), 0.0001);
     Assert.assertFalse(c.trimOnRemove());
+    Assert.assertEquals(0L, (long) c.maximumItemsPerLeaf());
+    Assert.assertEquals((long) Integer.MAX_VALUE, (long) c.maximumDepth());
   }
 }
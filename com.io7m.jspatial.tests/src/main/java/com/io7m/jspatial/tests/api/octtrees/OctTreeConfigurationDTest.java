@@ -16,6 +16,7 @@
 
 package com.io7m.jspatial.tests.api.octtrees;
 
+import com.io7m.jaffirm.core.PreconditionViolationException;
 import com.io7m.jregions.core.unparameterized.volumes.VolumeD;
 import com.io7m.jspatial.api.octtrees.OctTreeConfigurationD;
 import com.io7m.jspatial.api.octtrees.OctTreeConfigurationDType;
@@ -307,4 +308,36 @@ public final class OctTreeConfigurationDTest extends
     Assert.assertEquals(qc0, qc2);
     Assert.assertEquals(qc1, qc2);
   }
+
+  /**
+   * Negative maximum numbers of items per leaf are rejected.
+   */
+
+  @Test
+  public void testNegativeMaximumItemsPerLeaf()
+  {
+    final VolumeD volume0 = VolumeD.of(0.0, 100.0, 0.0, 100.0, 0.0, 100.0);
+    final OctTreeConfigurationD.Builder b = OctTreeConfigurationD.builder();
+    b.setVolume(volume0);
+    b.setMaximumItemsPerLeaf(-1);
+
+    this.expected.expect(PreconditionViolationException.class);
+    b.build();
+  }
+
+  /**
+   * Negative maximum depths are rejected.
+   */
+
+  @Test
+  public void testNegativeMaximumDepth()
+  {
+    final VolumeD volume0 = VolumeD.of(0.0, 100.0, 0.0, 100.0, 0.0, 100.0);
+    final OctTreeConfigurationD.Builder b = OctTreeConfigurationD.builder();
+    b.setVolume(volume0);
+    b.setMaximumDepth(-1);
+
+    this.expected.expect(PreconditionViolationException.class);
+    b.build();
+  }
 }
@@ -56,5 +56,7 @@ public abstract class OctTreeConfigurationIContract
     Assert.assertEquals(2, c.minimumOctantWidth());
     Assert.assertEquals(2, c.minimumOctantDepth());
     Assert.assertFalse(c.trimOnRemove());
+    Assert.assertEquals(0L, (long) c.maximumItemsPerLeaf());
+    Assert.assertEquals((long) Integer.MAX_VALUE, (long) c.maximumDepth());
   }
 }
@@ -16,6 +16,7 @@
 
 package com.io7m.jspatial.tests.api.octtrees;
 
+import com.io7m.jaffirm.core.PreconditionViolationException;
 import com.io7m.jregions.core.unparameterized.volumes.VolumeI;
 import com.io7m.jspatial.api.octtrees.OctTreeConfigurationI;
 import com.io7m.jspatial.api.octtrees.OctTreeConfigurationIType;
@@ -310,4 +311,36 @@ public final class OctTreeConfigurationITest extends
     Assert.assertEquals(qc0, qc2);
     Assert.assertEquals(qc1, qc2);
   }
+
+  /**
+   * Negative maximum numbers of items per leaf are rejected.
+   */
+
+  @Test
+  public void testNegativeMaximumItemsPerLeaf()
+  {
+    final VolumeI volume0 = VolumeI.of(0, 100, 0, 100, 0, 100);
+    final OctTreeConfigurationI.Builder b = OctTreeConfigurationI.builder();
+    b.setVolume(volume0);
+    b.setMaximumItemsPerLeaf(-1);
+
+    this.expected.expect(PreconditionViolationException.class);
+    b.build();
+  }
+
+  /**
+   * Negative maximum depths are rejected.
+   */
+
+  @Test
+  public void testNegativeMaximumDepth()
+  {
+    final VolumeI volume0 = VolumeI.of(0, 100, 0, 100, 0, 100);
+    final OctTreeConfigurationI.Builder b = OctTreeConfigurationI.builder();
+    b.setVolume(volume0);
+    b.setMaximumDepth(-1);
+
+    this.expected.expect(PreconditionViolationException.class);
+    b.build();
+  }
 }
@@ -56,5 +56,7 @@ public abstract class OctTreeConfigurationLContract
     Assert.assertEquals(2L, c.minimumOctantWidth());
     Assert.assertEquals(2L, c.minimumOctantDepth());
     Assert.assertFalse(c.trimOnRemove());
+    Assert.assertEquals(0L, (long) c.maximumItemsPerLeaf());
+    Assert.assertEquals((long) Integer.MAX_VALUE, (long) c.maximumDepth());
   }
 }
@@ -16,6 +16,7 @@
 
 package com.io7m.jspatial.tests.api.octtrees;
 
+import com.io7m.jaffirm.core.PreconditionViolationException;
 import com.io7m.jregions.core.unparameterized.volumes.VolumeL;
 import com.io7m.jspatial.api.octtrees.OctTreeConfigurationL;
 import com.io7m.jspatial.api.octtrees.OctTreeConfigurationLType;
@@ -310,4 +311,36 @@ public final class OctTreeConfigurationLTest extends
     Assert.assertEquals(qc0, qc2);
     Assert.assertEquals(qc1, qc2);
   }
+
+  /**
+   * Negative maximum numbers of items per leaf are rejected.
+   */
+
+  @Test
+  public void testNegativeMaximumItemsPerLeaf()
+  {
+    final VolumeL volume0 = VolumeL.of(0L, 100L, 0L, 100L, 0L, 100L);
+    final OctTreeConfigurationL.Builder b = OctTreeConfigurationL.builder();
+    b.setVolume(volume0);
+    b.setMaximumItemsPerLeaf(-1);
+
+    this.expected.expect(PreconditionViolationException.class);
+    b.build();
+  }
+
+  /**
+   * Negative maximum depths are rejected.
+   */
+
+  @Test
+  public void testNegativeMaximumDepth()
+  {
+    final VolumeL volume0 = VolumeL.of(0L, 100L, 0L, 100L, 0L, 100L);
+    final OctTreeConfigurationL.Builder b = OctTreeConfigurationL.builder();
+    b.setVolume(volume0);
+    b.setMaximumDepth(-1);
+
+    this.expected.expect(PreconditionViolationException.class);
+    b.build();
+  }
 }
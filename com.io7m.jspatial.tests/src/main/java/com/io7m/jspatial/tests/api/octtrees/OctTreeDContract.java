@@ -16,12 +16,14 @@
 
 package com.io7m.jspatial.tests.api.octtrees;
 
+import com.io7m.jaffirm.core.PreconditionViolationException;
 import com.io7m.jregions.core.unparameterized.volumes.VolumeD;
 import com.io7m.jregions.core.unparameterized.volumes.VolumesD;
 import com.io7m.jspatial.api.Ray3D;
 import com.io7m.jspatial.api.TreeVisitResult;
 import com.io7m.jspatial.api.octtrees.OctTreeConfigurationD;
 import com.io7m.jspatial.api.octtrees.OctTreeDType;
+import com.io7m.jspatial.api.octtrees.OctTreeRaycastBufferD;
 import com.io7m.jspatial.api.octtrees.OctTreeRaycastResultD;
 import com.io7m.jspatial.tests.api.VolumeDContainedGenerator;
 import com.io7m.jtensors.core.unparameterized.vectors.Vector3D;
@@ -33,15 +35,21 @@ import org.junit.Test;
 import org.junit.rules.ExpectedException;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.Random;
+import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
 /**
  * Tree contract.
@@ -2443,4 +2451,970 @@ public abstract class OctTreeDContract
     Assert.assertTrue(tree.insert(item, item_volume));
     Assert.assertEquals(1L, (long) OctTreeDContract.countOctants(tree));
   }
+
+  /**
+   * Leaves are only split when they hold more than the configured number of
+   * items, and their items are redistributed when they are split.
+   */
+
+  @Test
+  public final void testInsertCapacitySplit()
+  {
+    final VolumeD container = VolumeD.of(0.0, 100.0, 0.0, 100.0, 0.0, 100.0);
+
+    final OctTreeConfigurationD.Builder cb = OctTreeConfigurationD.builder();
+    cb.setVolume(container);
+    cb.setMaximumItemsPerLeaf(4);
+    final OctTreeConfigurationD c = cb.build();
+
+    final OctTreeDType<Object> tree = this.create(c);
+
+    final Integer central = Integer.valueOf(0);
+    Assert.assertTrue(tree.insert(central, VolumeD.of(40.0, 60.0, 40.0, 60.0, 40.0, 60.0)));
+    Assert.assertTrue(tree.insert(Integer.valueOf(1), VolumeD.of(1.0, 2.0, 1.0, 2.0, 1.0, 2.0)));
+    Assert.assertTrue(tree.insert(Integer.valueOf(2), VolumeD.of(98.0, 99.0, 1.0, 2.0, 1.0, 2.0)));
+    Assert.assertTrue(tree.insert(Integer.valueOf(3), VolumeD.of(1.0, 2.0, 98.0, 99.0, 1.0, 2.0)));
+    Assert.assertEquals(1L, (long) OctTreeDContract.countOctants(tree));
+
+    Assert.assertTrue(tree.insert(
+      Integer.valueOf(4),
+      VolumeD.of(98.0, 99.0, 98.0, 99.0, 98.0, 99.0)));
+    Assert.assertEquals(9L, (long) OctTreeDContract.countOctants(tree));
+
+    tree.iterateOctants(Integer.valueOf(0), (context, octant, depth) -> {
+      if (depth == 0L) {
+        Assert.assertEquals(1L, (long) octant.objects().size());
+        Assert.assertTrue(octant.objects().containsKey(central));
+      } else {
+        Assert.assertTrue(octant.objects().size() <= 1);
+      }
+      return TreeVisitResult.RESULT_CONTINUE;
+    });
+
+    for (int index = 0; index <= 4; ++index) {
+      Assert.assertTrue(tree.remove(Integer.valueOf(index)));
+    }
+    Assert.assertTrue(tree.isEmpty());
+  }
+
+  /**
+   * Octants at the maximum depth are not split.
+   */
+
+  @Test
+  public final void testInsertMaximumDepth()
+  {
+    final VolumeD container = VolumeD.of(0.0, 100.0, 0.0, 100.0, 0.0, 100.0);
+
+    final OctTreeConfigurationD.Builder cb = OctTreeConfigurationD.builder();
+    cb.setVolume(container);
+    cb.setMaximumDepth(1);
+    final OctTreeConfigurationD c = cb.build();
+
+    final OctTreeDType<Object> tree = this.create(c);
+
+    final Integer item = Integer.valueOf(0);
+    Assert.assertTrue(tree.insert(item, VolumeD.of(1.0, 2.0, 1.0, 2.0, 1.0, 2.0)));
+    Assert.assertEquals(9L, (long) OctTreeDContract.countOctants(tree));
+
+    tree.iterateOctants(Integer.valueOf(0), (context, octant, depth) -> {
+      if (octant.objects().containsKey(item)) {
+        Assert.assertEquals(1L, depth);
+      }
+      return TreeVisitResult.RESULT_CONTINUE;
+    });
+  }
+
+  /**
+   * Inserting an object that is already in the tree moves it.
+   */
+
+  @Test
+  public final void testInsertExistingMoves()
+  {
+    final VolumeD container = VolumeD.of(0.0, 100.0, 0.0, 100.0, 0.0, 100.0);
+
+    final OctTreeConfigurationD.Builder cb = OctTreeConfigurationD.builder();
+    cb.setVolume(container);
+    cb.setTrimOnRemove(true);
+    final OctTreeConfigurationD c = cb.build();
+
+    final OctTreeDType<Object> tree = this.create(c);
+    final OctTreeDType<Object> expected = this.create(c);
+
+    final Integer item0 = Integer.valueOf(0);
+    final Integer item1 = Integer.valueOf(1);
+    final VolumeD bounds0 = VolumeD.of(1.0, 2.0, 1.0, 2.0, 1.0, 2.0);
+    final VolumeD bounds1 = VolumeD.of(98.0, 99.0, 98.0, 99.0, 98.0, 99.0);
+    final VolumeD bounds2 = VolumeD.of(40.0, 45.0, 40.0, 45.0, 40.0, 45.0);
+
+    Assert.assertTrue(tree.insert(item0, bounds0));
+    Assert.assertTrue(tree.insert(item1, bounds1));
+    Assert.assertTrue(tree.insert(item0, bounds2));
+
+    Assert.assertEquals(2L, tree.size());
+    Assert.assertEquals(bounds2, tree.volumeFor(item0));
+
+    final Set<Object> found = new HashSet<>();
+    tree.overlappedBy(bounds0, found);
+    Assert.assertTrue(found.isEmpty());
+    tree.overlappedBy(bounds2, found);
+    Assert.assertEquals(Collections.singleton(item0), found);
+
+    Assert.assertTrue(expected.insert(item1, bounds1));
+    Assert.assertTrue(expected.insert(item0, bounds2));
+    Assert.assertEquals(expected, tree);
+    Assert.assertEquals((long) expected.hashCode(), (long) tree.hashCode());
+    Assert.assertEquals(
+      (long) OctTreeDContract.countOctants(expected),
+      (long) OctTreeDContract.countOctants(tree));
+
+    Assert.assertFalse(tree.insert(item0, VolumeD.of(-10.0, 200.0, -10.0, 200.0, -10.0, 200.0)));
+    Assert.assertFalse(tree.contains(item0));
+    Assert.assertEquals(1L, tree.size());
+  }
+
+  private static void insertGrid(
+    final OctTreeDType<Object> tree)
+  {
+    int index = 0;
+    for (int x = 0; x < 3; ++x) {
+      for (int y = 0; y < 3; ++y) {
+        for (int z = 0; z < 3; ++z) {
+          final VolumeD bounds = VolumeD.of(
+            (double) (x * 30 + 5),
+            (double) (x * 30 + 15),
+            (double) (y * 30 + 5),
+            (double) (y * 30 + 15),
+            (double) (z * 30 + 5),
+            (double) (z * 30 + 15));
+          Assert.assertTrue(tree.insert(Integer.valueOf(index), bounds));
+          ++index;
+        }
+      }
+    }
+
+    final VolumeD straddling =
+      VolumeD.of(45.0, 55.0, 45.0, 55.0, 45.0, 55.0);
+    Assert.assertTrue(tree.insert(Integer.valueOf(index), straddling));
+  }
+
+  /**
+   * The visitor queries find the same objects as the set-based queries.
+   */
+
+  @Test
+  public final void testVisitorQueries()
+  {
+    final OctTreeConfigurationD.Builder cb = OctTreeConfigurationD.builder();
+    cb.setVolume(VolumeD.of(0.0, 100.0, 0.0, 100.0, 0.0, 100.0));
+    final OctTreeConfigurationD c = cb.build();
+
+    final OctTreeDType<Object> tree = this.create(c);
+    OctTreeDContract.insertGrid(tree);
+
+    final VolumeD query = VolumeD.of(0.0, 50.0, 0.0, 50.0, 0.0, 50.0);
+
+    {
+      final Set<Object> expected = new HashSet<>();
+      tree.containedBy(query, expected);
+
+      final Set<Object> received = new HashSet<>();
+      Assert.assertEquals(
+        TreeVisitResult.RESULT_CONTINUE,
+        tree.containedBy(query, received, (context, item, item_volume) -> {
+          Assert.assertEquals(tree.volumeFor(item), item_volume);
+          Assert.assertTrue(context.add(item));
+          return TreeVisitResult.RESULT_CONTINUE;
+        }));
+
+      Assert.assertEquals(8L, (long) received.size());
+      Assert.assertEquals(expected, received);
+    }
+
+    {
+      final Set<Object> expected = new HashSet<>();
+      tree.overlappedBy(query, expected);
+
+      final Set<Object> received = new HashSet<>();
+      Assert.assertEquals(
+        TreeVisitResult.RESULT_CONTINUE,
+        tree.overlappedBy(query, received, (context, item, item_volume) -> {
+          Assert.assertEquals(tree.volumeFor(item), item_volume);
+          Assert.assertTrue(context.add(item));
+          return TreeVisitResult.RESULT_CONTINUE;
+        }));
+
+      Assert.assertEquals(9L, (long) received.size());
+      Assert.assertEquals(expected, received);
+    }
+
+    {
+      final Ray3D ray = Ray3D.of(Vector3D.of(0.0, 0.0, 0.0), Vector3D.of(1.0, 1.0, 1.0));
+      final SortedSet<OctTreeRaycastResultD<Object>> expected = new TreeSet<>();
+      tree.raycast(ray, expected);
+
+      final Map<Object, Double> received = new HashMap<>();
+      Assert.assertEquals(
+        TreeVisitResult.RESULT_CONTINUE,
+        tree.raycast(ray, received, (context, item, item_volume, distance) -> {
+          Assert.assertEquals(tree.volumeFor(item), item_volume);
+          Assert.assertNull(context.put(item, Double.valueOf(distance)));
+          return TreeVisitResult.RESULT_CONTINUE;
+        }));
+
+      Assert.assertEquals(4L, (long) received.size());
+      Assert.assertEquals((long) expected.size(), (long) received.size());
+      for (final OctTreeRaycastResultD<Object> r : expected) {
+        Assert.assertEquals(r.distance(), received.get(r.item()).doubleValue(), 0.0);
+      }
+    }
+  }
+
+  /**
+   * The visitor queries stop as soon as the visitor asks them to.
+   */
+
+  @Test
+  public final void testVisitorQueriesTerminate()
+  {
+    final OctTreeConfigurationD.Builder cb = OctTreeConfigurationD.builder();
+    cb.setVolume(VolumeD.of(0.0, 100.0, 0.0, 100.0, 0.0, 100.0));
+    final OctTreeConfigurationD c = cb.build();
+
+    final OctTreeDType<Object> tree = this.create(c);
+    OctTreeDContract.insertGrid(tree);
+
+    final VolumeD query = VolumeD.of(0.0, 50.0, 0.0, 50.0, 0.0, 50.0);
+
+    {
+      final AtomicInteger calls = new AtomicInteger(0);
+      Assert.assertEquals(
+        TreeVisitResult.RESULT_TERMINATE,
+        tree.containedBy(tree.bounds(), calls, (context, item, item_volume) -> {
+          context.incrementAndGet();
+          return TreeVisitResult.RESULT_TERMINATE;
+        }));
+      Assert.assertEquals(1L, (long) calls.get());
+    }
+
+    {
+      final AtomicInteger calls = new AtomicInteger(0);
+      Assert.assertEquals(
+        TreeVisitResult.RESULT_TERMINATE,
+        tree.containedBy(query, calls, (context, item, item_volume) -> {
+          context.incrementAndGet();
+          return TreeVisitResult.RESULT_TERMINATE;
+        }));
+      Assert.assertEquals(1L, (long) calls.get());
+    }
+
+    {
+      final AtomicInteger calls = new AtomicInteger(0);
+      Assert.assertEquals(
+        TreeVisitResult.RESULT_TERMINATE,
+        tree.overlappedBy(query, calls, (context, item, item_volume) -> {
+          context.incrementAndGet();
+          return TreeVisitResult.RESULT_TERMINATE;
+        }));
+      Assert.assertEquals(1L, (long) calls.get());
+    }
+
+    {
+      final AtomicInteger calls = new AtomicInteger(0);
+      Assert.assertEquals(
+        TreeVisitResult.RESULT_TERMINATE,
+        tree.raycast(Ray3D.of(Vector3D.of(0.0, 0.0, 0.0), Vector3D.of(1.0, 1.0, 1.0)), calls, (context, item, item_volume, distance) -> {
+          context.incrementAndGet();
+          return TreeVisitResult.RESULT_TERMINATE;
+        }));
+      Assert.assertEquals(1L, (long) calls.get());
+    }
+  }
+
+  private static double distanceTo(
+    final Vector3D point,
+    final VolumeD volume)
+  {
+    final double dx = Math.max(
+      0.0,
+      Math.max(volume.minimumX() - point.x(), point.x() - volume.maximumX()));
+    final double dy = Math.max(
+      0.0,
+      Math.max(volume.minimumY() - point.y(), point.y() - volume.maximumY()));
+    final double dz = Math.max(
+      0.0,
+      Math.max(volume.minimumZ() - point.z(), point.z() - volume.maximumZ()));
+    return Math.sqrt(dx * dx + dy * dy + dz * dz);
+  }
+
+  /**
+   * Nearest neighbour queries return the nearest objects in order of distance.
+   */
+
+  @Test
+  public final void testNearest()
+  {
+    final OctTreeConfigurationD.Builder cb = OctTreeConfigurationD.builder();
+    cb.setVolume(VolumeD.of(0.0, 100.0, 0.0, 100.0, 0.0, 100.0));
+    cb.setMaximumItemsPerLeaf(2);
+    final OctTreeConfigurationD c = cb.build();
+
+    final OctTreeDType<Object> tree = this.create(c);
+    OctTreeDContract.insertGrid(tree);
+
+    final List<Vector3D> points =
+      List.of(
+        Vector3D.of(0.0, 0.0, 0.0),
+        Vector3D.of(50.0, 50.0, 50.0),
+        Vector3D.of(99.0, 12.0, 60.0),
+        Vector3D.of(-20.0, 150.0, 40.0));
+
+    for (final Vector3D point : points) {
+      final List<Double> expected = new ArrayList<>();
+      for (int index = 0; index < (int) tree.size(); ++index) {
+        final VolumeD bounds = tree.volumeFor(Integer.valueOf(index));
+        expected.add(Double.valueOf(OctTreeDContract.distanceTo(point, bounds)));
+      }
+      Collections.sort(expected);
+
+      for (final int count : new int[]{0, 1, 5, (int) tree.size() + 10}) {
+        final Set<Object> seen = new HashSet<>();
+        final List<Double> received = new ArrayList<>();
+        Assert.assertEquals(
+          TreeVisitResult.RESULT_CONTINUE,
+          tree.nearest(point, count, received, (context, item, item_volume, distance) -> {
+            Assert.assertTrue(seen.add(item));
+            Assert.assertEquals(tree.volumeFor(item), item_volume);
+            Assert.assertEquals(
+              OctTreeDContract.distanceTo(point, item_volume), distance, 0.000001);
+            context.add(Double.valueOf(distance));
+            return TreeVisitResult.RESULT_CONTINUE;
+          }));
+
+        final int expected_count = Math.min(count, expected.size());
+        Assert.assertEquals((long) expected_count, (long) received.size());
+        for (int index = 0; index < expected_count; ++index) {
+          Assert.assertEquals(
+            expected.get(index).doubleValue(),
+            received.get(index).doubleValue(),
+            0.000001);
+        }
+      }
+    }
+  }
+
+  /**
+   * Nearest neighbour queries stop as soon as the visitor asks them to.
+   */
+
+  @Test
+  public final void testNearestTerminate()
+  {
+    final OctTreeConfigurationD.Builder cb = OctTreeConfigurationD.builder();
+    cb.setVolume(VolumeD.of(0.0, 100.0, 0.0, 100.0, 0.0, 100.0));
+    final OctTreeConfigurationD c = cb.build();
+
+    final OctTreeDType<Object> tree = this.create(c);
+    OctTreeDContract.insertGrid(tree);
+
+    final Vector3D point = Vector3D.of(50.0, 50.0, 50.0);
+    final AtomicInteger calls = new AtomicInteger(0);
+    Assert.assertEquals(
+      TreeVisitResult.RESULT_TERMINATE,
+      tree.nearest(point, 10, calls, (context, item, item_volume, distance) -> {
+        context.incrementAndGet();
+        return TreeVisitResult.RESULT_TERMINATE;
+      }));
+    Assert.assertEquals(1L, (long) calls.get());
+  }
+
+  private static double entryDistance(
+    final Ray3D ray,
+    final VolumeD volume)
+  {
+    return ray.entryDistanceVolume(
+      volume.minimumX(),
+      volume.minimumY(),
+      volume.minimumZ(),
+      volume.maximumX(),
+      volume.maximumY(),
+      volume.maximumZ());
+  }
+
+  /**
+   * First-hit raycasts return the objects the ray enters first, in order of distance.
+   */
+
+  @Test
+  public final void testRaycastFirst()
+  {
+    final OctTreeConfigurationD.Builder cb = OctTreeConfigurationD.builder();
+    cb.setVolume(VolumeD.of(0.0, 100.0, 0.0, 100.0, 0.0, 100.0));
+    cb.setMaximumItemsPerLeaf(2);
+    final OctTreeConfigurationD c = cb.build();
+
+    final OctTreeDType<Object> tree = this.create(c);
+    OctTreeDContract.insertGrid(tree);
+
+    final List<Ray3D> rays =
+      List.of(
+        Ray3D.of(Vector3D.of(-10.0, 10.0, 10.0), Vector3D.of(1.0, 0.0, 0.0)),
+        Ray3D.of(Vector3D.of(0.0, 0.0, 0.0), Vectors3D.normalize(Vector3D.of(1.0, 1.0, 1.0))),
+        Ray3D.of(Vector3D.of(50.0, 50.0, 50.0), Vectors3D.normalize(Vector3D.of(-1.0, -0.5, -0.25))),
+        Ray3D.of(Vector3D.of(99.0, 12.0, 60.0), Vectors3D.normalize(Vector3D.of(-1.0, 0.1, -0.2))),
+        Ray3D.of(Vector3D.of(200.0, 200.0, 200.0), Vector3D.of(1.0, 0.0, 0.0)));
+
+    for (final Ray3D ray : rays) {
+      final List<Double> expected = new ArrayList<>();
+      for (int index = 0; index < (int) tree.size(); ++index) {
+        final double distance =
+          OctTreeDContract.entryDistance(ray, tree.volumeFor(Integer.valueOf(index)));
+        if (distance < Double.POSITIVE_INFINITY) {
+          expected.add(Double.valueOf(distance));
+        }
+      }
+      Collections.sort(expected);
+
+      final Optional<OctTreeRaycastResultD<Object>> first = tree.raycastFirst(ray);
+      Assert.assertEquals(Boolean.valueOf(!expected.isEmpty()), Boolean.valueOf(first.isPresent()));
+      first.ifPresent(result -> {
+        Assert.assertEquals(tree.volumeFor(result.item()), result.volume());
+        Assert.assertEquals(expected.get(0).doubleValue(), result.distance(), 0.000001);
+      });
+
+      for (final int count : new int[]{0, 1, 5, (int) tree.size() + 10}) {
+        final Set<Object> seen = new HashSet<>();
+        final List<Double> received = new ArrayList<>();
+        Assert.assertEquals(
+          TreeVisitResult.RESULT_CONTINUE,
+          tree.raycastFirst(ray, count, received, (context, item, item_volume, distance) -> {
+            Assert.assertTrue(seen.add(item));
+            Assert.assertEquals(tree.volumeFor(item), item_volume);
+            Assert.assertEquals(
+              OctTreeDContract.entryDistance(ray, item_volume), distance, 0.000001);
+            context.add(Double.valueOf(distance));
+            return TreeVisitResult.RESULT_CONTINUE;
+          }));
+
+        final int expected_count = Math.min(count, expected.size());
+        Assert.assertEquals((long) expected_count, (long) received.size());
+        for (int index = 0; index < expected_count; ++index) {
+          Assert.assertEquals(
+            expected.get(index).doubleValue(),
+            received.get(index).doubleValue(),
+            0.000001);
+        }
+      }
+    }
+  }
+
+  /**
+   * First-hit raycasts stop as soon as the visitor asks them to.
+   */
+
+  @Test
+  public final void testRaycastFirstTerminate()
+  {
+    final OctTreeConfigurationD.Builder cb = OctTreeConfigurationD.builder();
+    cb.setVolume(VolumeD.of(0.0, 100.0, 0.0, 100.0, 0.0, 100.0));
+    final OctTreeConfigurationD c = cb.build();
+
+    final OctTreeDType<Object> tree = this.create(c);
+    OctTreeDContract.insertGrid(tree);
+
+    final Ray3D ray = Ray3D.of(Vector3D.of(0.0, 0.0, 0.0), Vectors3D.normalize(Vector3D.of(1.0, 1.0, 1.0)));
+    final AtomicInteger calls = new AtomicInteger(0);
+    Assert.assertEquals(
+      TreeVisitResult.RESULT_TERMINATE,
+      tree.raycastFirst(ray, 10, calls, (context, item, item_volume, distance) -> {
+        context.incrementAndGet();
+        return TreeVisitResult.RESULT_TERMINATE;
+      }));
+    Assert.assertEquals(1L, (long) calls.get());
+  }
+
+  /**
+   * Buffered raycasts find every intersected object, at the same distances as first-hit raycasts.
+   */
+
+  @Test
+  public final void testRaycastBuffer()
+  {
+    final OctTreeConfigurationD.Builder cb = OctTreeConfigurationD.builder();
+    cb.setVolume(VolumeD.of(0.0, 100.0, 0.0, 100.0, 0.0, 100.0));
+    cb.setMaximumItemsPerLeaf(2);
+    final OctTreeConfigurationD c = cb.build();
+
+    final OctTreeDType<Object> tree = this.create(c);
+    OctTreeDContract.insertGrid(tree);
+
+    final List<Ray3D> rays =
+      List.of(
+        Ray3D.of(Vector3D.of(-10.0, 10.0, 10.0), Vector3D.of(1.0, 0.0, 0.0)),
+        Ray3D.of(Vector3D.of(0.0, 0.0, 0.0), Vectors3D.normalize(Vector3D.of(1.0, 1.0, 1.0))),
+        Ray3D.of(Vector3D.of(50.0, 50.0, 50.0), Vectors3D.normalize(Vector3D.of(-1.0, -0.5, -0.25))),
+        Ray3D.of(Vector3D.of(200.0, 200.0, 200.0), Vector3D.of(1.0, 0.0, 0.0)));
+
+    final OctTreeRaycastBufferD<Object> results = OctTreeRaycastBufferD.create();
+    for (final Ray3D ray : rays) {
+      final List<Double> expected = new ArrayList<>();
+      for (int index = 0; index < (int) tree.size(); ++index) {
+        final double distance =
+          OctTreeDContract.entryDistance(ray, tree.volumeFor(Integer.valueOf(index)));
+        if (distance < Double.POSITIVE_INFINITY) {
+          expected.add(Double.valueOf(distance));
+        }
+      }
+      Collections.sort(expected);
+
+      results.clear();
+      tree.raycast(ray, results);
+      results.sortByDistance();
+
+      Assert.assertEquals((long) expected.size(), (long) results.size());
+      final Set<Object> seen = new HashSet<>();
+      for (int index = 0; index < results.size(); ++index) {
+        final Object item = results.item(index);
+        Assert.assertTrue(seen.add(item));
+        Assert.assertEquals(tree.volumeFor(item), results.volume(index));
+        Assert.assertEquals(
+          expected.get(index).doubleValue(), results.distance(index), 0.000001);
+      }
+    }
+  }
+
+  private static void checkCounts(
+    final OctTreeDType<Object> tree,
+    final List<VolumeD> queries)
+  {
+    for (final VolumeD query : queries) {
+      final Set<Object> contained = new HashSet<>();
+      tree.containedBy(query, contained);
+      final Set<Object> overlapping = new HashSet<>();
+      tree.overlappedBy(query, overlapping);
+
+      Assert.assertEquals(
+        (long) contained.size(), tree.countContainedBy(query));
+      Assert.assertEquals(
+        (long) overlapping.size(), tree.countOverlapping(query));
+      Assert.assertEquals(
+        Boolean.valueOf(!overlapping.isEmpty()),
+        Boolean.valueOf(tree.anyOverlapping(query)));
+    }
+  }
+
+  /**
+   * Counting queries agree with the set-based queries, including after
+   * objects have been removed.
+   */
+
+  @Test
+  public final void testCountQueries()
+  {
+    final List<VolumeD> queries =
+      List.of(
+        VolumeD.of(0.0, 100.0, 0.0, 100.0, 0.0, 100.0),
+        VolumeD.of(0.0, 50.0, 0.0, 50.0, 0.0, 50.0),
+        VolumeD.of(20.0, 60.0, 20.0, 60.0, 20.0, 60.0),
+        VolumeD.of(14.0, 46.0, 14.0, 46.0, 14.0, 46.0),
+        VolumeD.of(50.0, 50.0, 50.0, 50.0, 50.0, 50.0),
+        VolumeD.of(49.0, 50.0, 49.0, 50.0, 49.0, 50.0),
+        VolumeD.of(95.0, 100.0, 95.0, 100.0, 95.0, 100.0),
+        VolumeD.of(200.0, 300.0, 200.0, 300.0, 200.0, 300.0));
+
+    for (final int leaf : new int[]{2, 8}) {
+      final OctTreeConfigurationD.Builder cb = OctTreeConfigurationD.builder();
+      cb.setVolume(VolumeD.of(0.0, 100.0, 0.0, 100.0, 0.0, 100.0));
+      cb.setMaximumItemsPerLeaf(leaf);
+      final OctTreeConfigurationD c = cb.build();
+
+      final OctTreeDType<Object> tree = this.create(c);
+      OctTreeDContract.insertGrid(tree);
+      Assert.assertTrue(tree.insert("point", VolumeD.of(50.0, 50.0, 50.0, 50.0, 50.0, 50.0)));
+      Assert.assertTrue(tree.insert("corner", VolumeD.of(100.0, 100.0, 100.0, 100.0, 100.0, 100.0)));
+      OctTreeDContract.checkCounts(tree, queries);
+
+      Assert.assertTrue(tree.remove("point"));
+      Assert.assertTrue(tree.remove(Integer.valueOf(0)));
+      Assert.assertTrue(tree.remove(Integer.valueOf(3)));
+      OctTreeDContract.checkCounts(tree, queries);
+
+      tree.clear();
+      Assert.assertEquals(0L, tree.countOverlapping(VolumeD.of(0.0, 100.0, 0.0, 100.0, 0.0, 100.0)));
+      Assert.assertFalse(tree.anyOverlapping(VolumeD.of(0.0, 100.0, 0.0, 100.0, 0.0, 100.0)));
+    }
+  }
+
+  private static void checkSameQueries(
+    final OctTreeDType<Object> expected,
+    final OctTreeDType<Object> tree,
+    final List<VolumeD> queries)
+  {
+    Assert.assertEquals(expected.size(), tree.size());
+    Assert.assertEquals(expected, tree);
+
+    for (final VolumeD query : queries) {
+      final Set<Object> expected_contained = new HashSet<>();
+      expected.containedBy(query, expected_contained);
+      final Set<Object> contained = new HashSet<>();
+      tree.containedBy(query, contained);
+      Assert.assertEquals(expected_contained, contained);
+
+      final Set<Object> expected_overlapping = new HashSet<>();
+      expected.overlappedBy(query, expected_overlapping);
+      final Set<Object> overlapping = new HashSet<>();
+      tree.overlappedBy(query, overlapping);
+      Assert.assertEquals(expected_overlapping, overlapping);
+    }
+    OctTreeDContract.checkCounts(tree, queries);
+
+    tree.iterateOctants(tree, (context, octant, depth) -> {
+      for (final Map.Entry<Object, VolumeD> entry : octant.objects().entrySet()) {
+        Assert.assertEquals(context.volumeFor(entry.getKey()), entry.getValue());
+        Assert.assertTrue(VolumesD.contains(octant.volume(), entry.getValue()));
+      }
+      return TreeVisitResult.RESULT_CONTINUE;
+    });
+  }
+
+  /**
+   * Bulk insertion produces a tree that holds the same objects, and answers
+   * queries in the same way, as inserting the objects one at a time.
+   */
+
+  @Test
+  public final void testInsertAll()
+  {
+    final List<VolumeD> queries =
+      List.of(
+        VolumeD.of(0.0, 100.0, 0.0, 100.0, 0.0, 100.0),
+        VolumeD.of(0.0, 50.0, 0.0, 50.0, 0.0, 50.0),
+        VolumeD.of(20.0, 60.0, 20.0, 60.0, 20.0, 60.0),
+        VolumeD.of(14.0, 46.0, 14.0, 46.0, 14.0, 46.0),
+        VolumeD.of(50.0, 50.0, 50.0, 50.0, 50.0, 50.0),
+        VolumeD.of(95.0, 100.0, 95.0, 100.0, 95.0, 100.0));
+
+    for (final int leaf : new int[]{0, 2, 8}) {
+      final OctTreeConfigurationD.Builder cb = OctTreeConfigurationD.builder();
+      cb.setVolume(VolumeD.of(0.0, 100.0, 0.0, 100.0, 0.0, 100.0));
+      cb.setMaximumItemsPerLeaf(leaf);
+      final OctTreeConfigurationD c = cb.build();
+
+      final OctTreeDType<Object> expected = this.create(c);
+      OctTreeDContract.insertGrid(expected);
+      Assert.assertTrue(expected.insert("point", VolumeD.of(50.0, 50.0, 50.0, 50.0, 50.0, 50.0)));
+
+      final Set<Object> all = new HashSet<>();
+      expected.overlappedBy(VolumeD.of(0.0, 100.0, 0.0, 100.0, 0.0, 100.0), all);
+      final Map<Object, VolumeD> items = new HashMap<>();
+      for (final Object item : all) {
+        items.put(item, expected.volumeFor(item));
+      }
+      items.put("outside", VolumeD.of(200.0, 300.0, 200.0, 300.0, 200.0, 300.0));
+
+      final OctTreeDType<Object> tree = this.create(c);
+      Assert.assertEquals(expected.size(), tree.insertAll(items));
+      Assert.assertFalse(tree.contains("outside"));
+      OctTreeDContract.checkSameQueries(expected, tree, queries);
+
+      final Map<Object, VolumeD> more = new HashMap<>();
+      more.put(Integer.valueOf(0), VolumeD.of(60.0, 70.0, 60.0, 70.0, 60.0, 70.0));
+      more.put("extra", VolumeD.of(1.0, 2.0, 1.0, 2.0, 1.0, 2.0));
+      more.put("outside", VolumeD.of(200.0, 300.0, 200.0, 300.0, 200.0, 300.0));
+      for (final Map.Entry<Object, VolumeD> entry : more.entrySet()) {
+        expected.insert(entry.getKey(), entry.getValue());
+      }
+
+      Assert.assertEquals(2L, tree.insertAll(more));
+      OctTreeDContract.checkSameQueries(expected, tree, queries);
+    }
+  }
+
+  /**
+   * Bulk insertion into an empty tree with no objects does nothing.
+   */
+
+  @Test
+  public final void testInsertAllEmpty()
+  {
+    final OctTreeConfigurationD.Builder cb = OctTreeConfigurationD.builder();
+    cb.setVolume(VolumeD.of(0.0, 100.0, 0.0, 100.0, 0.0, 100.0));
+    final OctTreeConfigurationD c = cb.build();
+
+    final OctTreeDType<Object> tree = this.create(c);
+    Assert.assertEquals(0L, tree.insertAll(Map.of()));
+    Assert.assertEquals(0L, tree.size());
+  }
+
+  /**
+   * Parallel queries return the same results as sequential queries.
+   */
+
+  @Test
+  public final void testParallelQueries()
+  {
+    final VolumeD container = VolumeD.of(-512.0, 512.0, -512.0, 512.0, -512.0, 512.0);
+    final OctTreeConfigurationD.Builder cb = OctTreeConfigurationD.builder();
+    cb.setVolume(container);
+    cb.setMaximumItemsPerLeaf(8);
+    final OctTreeConfigurationD c = cb.build();
+
+    /*
+     * Use enough small objects that the tree contains subtrees large enough
+     * to be divided between tasks.
+     */
+
+    final OctTreeDType<Integer> tree = this.create(c);
+    final Random random = new Random(0L);
+    for (int index = 0; index < 20000; ++index) {
+      final double x = -512.0 + random.nextDouble() * 1016.0;
+      final double y = -512.0 + random.nextDouble() * 1016.0;
+      final double z = -512.0 + random.nextDouble() * 1016.0;
+      final VolumeD volume = VolumeD.of(
+        x, x + random.nextDouble() * 8.0,
+        y, y + random.nextDouble() * 8.0,
+        z, z + random.nextDouble() * 8.0);
+      Assert.assertTrue(tree.insert(Integer.valueOf(index), volume));
+    }
+
+    final Generator<VolumeD> gen = new VolumeDContainedGenerator(container);
+    final ForkJoinPool pool = new ForkJoinPool(4);
+    try {
+      for (int query = 0; query < 20; ++query) {
+        final VolumeD target = query == 0 ? container : gen.next();
+
+        final Set<Integer> expected_contained = new HashSet<>();
+        final Set<Integer> received_contained = new HashSet<>();
+        tree.containedBy(target, expected_contained);
+        tree.containedByParallel(target, received_contained, pool);
+        Assert.assertEquals(expected_contained, received_contained);
+
+        final Set<Integer> expected_overlapped = new HashSet<>();
+        final Set<Integer> received_overlapped = new HashSet<>();
+        tree.overlappedBy(target, expected_overlapped);
+        tree.overlappedByParallel(target, received_overlapped, pool);
+        Assert.assertEquals(expected_overlapped, received_overlapped);
+
+        final Ray3D ray = Ray3D.of(
+          Vector3D.of(target.minimumX(), target.minimumY(), target.minimumZ()),
+          Vector3D.of(1.0, 0.75, 0.5));
+        final SortedSet<OctTreeRaycastResultD<Integer>> expected_hits = new TreeSet<>();
+        final SortedSet<OctTreeRaycastResultD<Integer>> received_hits = new TreeSet<>();
+        tree.raycast(ray, expected_hits);
+        tree.raycastParallel(ray, received_hits, pool);
+        Assert.assertEquals(expected_hits.size(), received_hits.size());
+        final Iterator<OctTreeRaycastResultD<Integer>> received_iter = received_hits.iterator();
+        for (final OctTreeRaycastResultD<Integer> hit : expected_hits) {
+          Assert.assertEquals(hit.distance(), received_iter.next().distance(), 0.0);
+        }
+      }
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  /**
+   * Streams return the same objects as the corresponding queries, whether
+   * sequential or parallel.
+   */
+
+  @Test
+  public final void testStreams()
+  {
+    final VolumeD container = VolumeD.of(-512.0, 512.0, -512.0, 512.0, -512.0, 512.0);
+    final OctTreeConfigurationD.Builder cb = OctTreeConfigurationD.builder();
+    cb.setVolume(container);
+    cb.setMaximumItemsPerLeaf(8);
+    final OctTreeConfigurationD c = cb.build();
+
+    final OctTreeDType<Integer> tree = this.create(c);
+    Assert.assertEquals(0L, tree.streamAll().count());
+    Assert.assertEquals(0L, tree.streamOverlapping(container).count());
+
+    final Set<Integer> all = new HashSet<>();
+    final Random random = new Random(0L);
+    for (int index = 0; index < 20000; ++index) {
+      final double x = -512.0 + random.nextDouble() * 1016.0;
+      final double y = -512.0 + random.nextDouble() * 1016.0;
+      final double z = -512.0 + random.nextDouble() * 1016.0;
+      final VolumeD volume = VolumeD.of(
+        x, x + random.nextDouble() * 8.0,
+        y, y + random.nextDouble() * 8.0,
+        z, z + random.nextDouble() * 8.0);
+      final Integer item = Integer.valueOf(index);
+      Assert.assertTrue(tree.insert(item, volume));
+      all.add(item);
+    }
+
+    Assert.assertEquals(20000L, tree.streamAll().spliterator().getExactSizeIfKnown());
+    Assert.assertEquals(20000L, tree.streamAll().count());
+    Assert.assertEquals(20000L, tree.streamAll().parallel().count());
+    Assert.assertEquals(all, tree.streamAll().collect(Collectors.toSet()));
+    Assert.assertEquals(all, tree.streamAll().parallel().collect(Collectors.toSet()));
+
+    final Generator<VolumeD> gen = new VolumeDContainedGenerator(container);
+    for (int query = 0; query < 20; ++query) {
+      final VolumeD target = query == 0 ? container : gen.next();
+
+      final Set<Integer> expected = new HashSet<>();
+      tree.overlappedBy(target, expected);
+      Assert.assertEquals(
+        expected, tree.streamOverlapping(target).collect(Collectors.toSet()));
+      Assert.assertEquals(
+        expected, tree.streamOverlapping(target).parallel().collect(Collectors.toSet()));
+      Assert.assertEquals(
+        (long) expected.size(), tree.streamOverlapping(target).parallel().count());
+    }
+  }
+
+  /**
+   * A batch of queries returns the same results as executing each query in
+   * turn.
+   */
+
+  @Test
+  public final void testOverlappedByBatch()
+  {
+    final VolumeD container = VolumeD.of(-512.0, 512.0, -512.0, 512.0, -512.0, 512.0);
+    final OctTreeConfigurationD.Builder cb = OctTreeConfigurationD.builder();
+    cb.setVolume(container);
+    cb.setMaximumItemsPerLeaf(8);
+    final OctTreeConfigurationD c = cb.build();
+
+    final OctTreeDType<Integer> tree = this.create(c);
+    tree.overlappedByBatch(new ArrayList<>(), new ArrayList<>());
+
+    final Random random = new Random(0L);
+    for (int index = 0; index < 20000; ++index) {
+      final double x = -512.0 + random.nextDouble() * 1016.0;
+      final double y = -512.0 + random.nextDouble() * 1016.0;
+      final double z = -512.0 + random.nextDouble() * 1016.0;
+      final VolumeD volume = VolumeD.of(
+        x, x + random.nextDouble() * 8.0,
+        y, y + random.nextDouble() * 8.0,
+        z, z + random.nextDouble() * 8.0);
+      Assert.assertTrue(tree.insert(Integer.valueOf(index), volume));
+    }
+
+    final Generator<VolumeD> gen = new VolumeDContainedGenerator(container);
+    final List<VolumeD> volumes = new ArrayList<>();
+    final List<Set<Integer>> received = new ArrayList<>();
+    volumes.add(container);
+    received.add(new HashSet<>());
+    for (int query = 0; query < 200; ++query) {
+      volumes.add(gen.next());
+      received.add(new HashSet<>());
+    }
+
+    tree.overlappedByBatch(volumes, received);
+    for (int query = 0; query < volumes.size(); ++query) {
+      final Set<Integer> expected = new HashSet<>();
+      tree.overlappedBy(volumes.get(query), expected);
+      Assert.assertEquals(expected, received.get(query));
+    }
+  }
+
+  /**
+   * A batch of queries must have exactly one result set per query.
+   */
+
+  @Test
+  public final void testOverlappedByBatchMismatched()
+  {
+    final VolumeD container = VolumeD.of(-512.0, 512.0, -512.0, 512.0, -512.0, 512.0);
+    final OctTreeConfigurationD.Builder cb = OctTreeConfigurationD.builder();
+    cb.setVolume(container);
+    final OctTreeConfigurationD c = cb.build();
+
+    final OctTreeDType<Integer> tree = this.create(c);
+    final List<VolumeD> volumes = new ArrayList<>();
+    volumes.add(container);
+
+    this.expected.expect(PreconditionViolationException.class);
+    tree.overlappedByBatch(volumes, new ArrayList<>());
+  }
+
+  /**
+   * A batch of raycasts returns the same results as casting each ray in
+   * turn.
+   */
+
+  @Test
+  public final void testRaycastBatch()
+  {
+    final VolumeD container = VolumeD.of(-512.0, 512.0, -512.0, 512.0, -512.0, 512.0);
+    final OctTreeConfigurationD.Builder cb = OctTreeConfigurationD.builder();
+    cb.setVolume(container);
+    cb.setMaximumItemsPerLeaf(8);
+    final OctTreeConfigurationD c = cb.build();
+
+    final OctTreeDType<Integer> tree = this.create(c);
+    tree.raycastBatch(new ArrayList<>(), new ArrayList<>());
+
+    final Random random = new Random(0L);
+    for (int index = 0; index < 20000; ++index) {
+      final double x = -512.0 + random.nextDouble() * 1016.0;
+      final double y = -512.0 + random.nextDouble() * 1016.0;
+      final double z = -512.0 + random.nextDouble() * 1016.0;
+      final VolumeD volume = VolumeD.of(
+        x, x + random.nextDouble() * 8.0,
+        y, y + random.nextDouble() * 8.0,
+        z, z + random.nextDouble() * 8.0);
+      Assert.assertTrue(tree.insert(Integer.valueOf(index), volume));
+    }
+
+    final Vector3D origin = Vector3D.of(-600.0, -500.0, -400.0);
+    final List<Ray3D> rays = new ArrayList<>();
+    final List<OctTreeRaycastBufferD<Integer>> received = new ArrayList<>();
+    for (int query = 0; query < 200; ++query) {
+      final Vector3D direction = Vectors3D.normalize(Vector3D.of(
+        random.nextDouble(), random.nextDouble(), random.nextDouble() - 0.5));
+      rays.add(Ray3D.of(origin, direction));
+      received.add(OctTreeRaycastBufferD.create());
+    }
+
+    tree.raycastBatch(rays, received);
+    for (int query = 0; query < rays.size(); ++query) {
+      final OctTreeRaycastBufferD<Integer> expected = OctTreeRaycastBufferD.create();
+      tree.raycast(rays.get(query), expected);
+      OctTreeDContract.checkSameResults(expected, received.get(query));
+    }
+  }
+
+  /**
+   * A batch of raycasts must have exactly one result buffer per ray.
+   */
+
+  @Test
+  public final void testRaycastBatchMismatched()
+  {
+    final OctTreeConfigurationD.Builder cb = OctTreeConfigurationD.builder();
+    cb.setVolume(VolumeD.of(-512.0, 512.0, -512.0, 512.0, -512.0, 512.0));
+    final OctTreeConfigurationD c = cb.build();
+
+    final OctTreeDType<Integer> tree = this.create(c);
+    final List<Ray3D> rays = new ArrayList<>();
+    rays.add(Ray3D.of(Vector3D.of(0.0, 0.0, 0.0), Vector3D.of(1.0, 1.0, 1.0)));
+
+    this.expected.expect(PreconditionViolationException.class);
+    tree.raycastBatch(rays, new ArrayList<>());
+  }
+
+  private static void checkSameResults(
+    final OctTreeRaycastBufferD<Integer> expected,
+    final OctTreeRaycastBufferD<Integer> received)
+  {
+    Assert.assertEquals((long) expected.size(), (long) received.size());
+
+    final Map<Integer, Double> distances = new HashMap<>();
+    for (int index = 0; index < expected.size(); ++index) {
+      distances.put(expected.item(index), Double.valueOf(expected.distance(index)));
+    }
+    for (int index = 0; index < received.size(); ++index) {
+      final Double distance = distances.get(received.item(index));
+      Assert.assertNotNull(distance);
+      Assert.assertEquals(distance.doubleValue(), received.distance(index), 0.000001);
+    }
+  }
 }
@@ -22,6 +22,7 @@ import com.io7m.jspatial.api.Ray3D;
 import com.io7m.jspatial.api.TreeVisitResult;
 import com.io7m.jspatial.api.octtrees.OctTreeConfigurationI;
 import com.io7m.jspatial.api.octtrees.OctTreeIType;
+import com.io7m.jspatial.api.octtrees.OctTreeRaycastBufferI;
 import com.io7m.jspatial.api.octtrees.OctTreeRaycastResultI;
 import com.io7m.jspatial.tests.api.VolumeIContainedGenerator;
 import com.io7m.jtensors.core.unparameterized.vectors.Vector3D;
@@ -33,12 +34,15 @@ import org.junit.Test;
 import org.junit.rules.ExpectedException;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -2099,4 +2103,699 @@ public abstract class OctTreeIContract
     Assert.assertTrue(tree.insert(item, item_volume));
     Assert.assertEquals(1, (long) OctTreeIContract.countOctants(tree));
   }
+
+  /**
+   * Leaves are only split when they hold more than the configured number of
+   * items, and their items are redistributed when they are split.
+   */
+
+  @Test
+  public final void testInsertCapacitySplit()
+  {
+    final VolumeI container = VolumeI.of(0, 100, 0, 100, 0, 100);
+
+    final OctTreeConfigurationI.Builder cb = OctTreeConfigurationI.builder();
+    cb.setVolume(container);
+    cb.setMaximumItemsPerLeaf(4);
+    final OctTreeConfigurationI c = cb.build();
+
+    final OctTreeIType<Object> tree = this.create(c);
+
+    final Integer central = Integer.valueOf(0);
+    Assert.assertTrue(tree.insert(central, VolumeI.of(40, 60, 40, 60, 40, 60)));
+    Assert.assertTrue(tree.insert(Integer.valueOf(1), VolumeI.of(1, 2, 1, 2, 1, 2)));
+    Assert.assertTrue(tree.insert(Integer.valueOf(2), VolumeI.of(98, 99, 1, 2, 1, 2)));
+    Assert.assertTrue(tree.insert(Integer.valueOf(3), VolumeI.of(1, 2, 98, 99, 1, 2)));
+    Assert.assertEquals(1L, (long) OctTreeIContract.countOctants(tree));
+
+    Assert.assertTrue(tree.insert(
+      Integer.valueOf(4),
+      VolumeI.of(98, 99, 98, 99, 98, 99)));
+    Assert.assertEquals(9L, (long) OctTreeIContract.countOctants(tree));
+
+    tree.iterateOctants(Integer.valueOf(0), (context, octant, depth) -> {
+      if (depth == 0L) {
+        Assert.assertEquals(1L, (long) octant.objects().size());
+        Assert.assertTrue(octant.objects().containsKey(central));
+      } else {
+        Assert.assertTrue(octant.objects().size() <= 1);
+      }
+      return TreeVisitResult.RESULT_CONTINUE;
+    });
+
+    for (int index = 0; index <= 4; ++index) {
+      Assert.assertTrue(tree.remove(Integer.valueOf(index)));
+    }
+    Assert.assertTrue(tree.isEmpty());
+  }
+
+  /**
+   * Octants at the maximum depth are not split.
+   */
+
+  @Test
+  public final void testInsertMaximumDepth()
+  {
+    final VolumeI container = VolumeI.of(0, 100, 0, 100, 0, 100);
+
+    final OctTreeConfigurationI.Builder cb = OctTreeConfigurationI.builder();
+    cb.setVolume(container);
+    cb.setMaximumDepth(1);
+    final OctTreeConfigurationI c = cb.build();
+
+    final OctTreeIType<Object> tree = this.create(c);
+
+    final Integer item = Integer.valueOf(0);
+    Assert.assertTrue(tree.insert(item, VolumeI.of(1, 2, 1, 2, 1, 2)));
+    Assert.assertEquals(9L, (long) OctTreeIContract.countOctants(tree));
+
+    tree.iterateOctants(Integer.valueOf(0), (context, octant, depth) -> {
+      if (octant.objects().containsKey(item)) {
+        Assert.assertEquals(1L, depth);
+      }
+      return TreeVisitResult.RESULT_CONTINUE;
+    });
+  }
+
+  /**
+   * Inserting an object that is already in the tree moves it.
+   */
+
+  @Test
+  public final void testInsertExistingMoves()
+  {
+    final VolumeI container = VolumeI.of(0, 100, 0, 100, 0, 100);
+
+    final OctTreeConfigurationI.Builder cb = OctTreeConfigurationI.builder();
+    cb.setVolume(container);
+    cb.setTrimOnRemove(true);
+    final OctTreeConfigurationI c = cb.build();
+
+    final OctTreeIType<Object> tree = this.create(c);
+    final OctTreeIType<Object> expected = this.create(c);
+
+    final Integer item0 = Integer.valueOf(0);
+    final Integer item1 = Integer.valueOf(1);
+    final VolumeI bounds0 = VolumeI.of(1, 2, 1, 2, 1, 2);
+    final VolumeI bounds1 = VolumeI.of(98, 99, 98, 99, 98, 99);
+    final VolumeI bounds2 = VolumeI.of(40, 45, 40, 45, 40, 45);
+
+    Assert.assertTrue(tree.insert(item0, bounds0));
+    Assert.assertTrue(tree.insert(item1, bounds1));
+    Assert.assertTrue(tree.insert(item0, bounds2));
+
+    Assert.assertEquals(2L, tree.size());
+    Assert.assertEquals(bounds2, tree.volumeFor(item0));
+
+    final Set<Object> found = new HashSet<>();
+    tree.overlappedBy(bounds0, found);
+    Assert.assertTrue(found.isEmpty());
+    tree.overlappedBy(bounds2, found);
+    Assert.assertEquals(Collections.singleton(item0), found);
+
+    Assert.assertTrue(expected.insert(item1, bounds1));
+    Assert.assertTrue(expected.insert(item0, bounds2));
+    Assert.assertEquals(expected, tree);
+    Assert.assertEquals((long) expected.hashCode(), (long) tree.hashCode());
+    Assert.assertEquals(
+      (long) OctTreeIContract.countOctants(expected),
+      (long) OctTreeIContract.countOctants(tree));
+
+    Assert.assertFalse(tree.insert(item0, VolumeI.of(-10, 200, -10, 200, -10, 200)));
+    Assert.assertFalse(tree.contains(item0));
+    Assert.assertEquals(1L, tree.size());
+  }
+
+  private static void insertGrid(
+    final OctTreeIType<Object> tree)
+  {
+    int index = 0;
+    for (int x = 0; x < 3; ++x) {
+      for (int y = 0; y < 3; ++y) {
+        for (int z = 0; z < 3; ++z) {
+          final VolumeI bounds = VolumeI.of(
+            x * 30 + 5,
+            x * 30 + 15,
+            y * 30 + 5,
+            y * 30 + 15,
+            z * 30 + 5,
+            z * 30 + 15);
+          Assert.assertTrue(tree.insert(Integer.valueOf(index), bounds));
+          ++index;
+        }
+      }
+    }
+
+    final VolumeI straddling =
+      VolumeI.of(45, 55, 45, 55, 45, 55);
+    Assert.assertTrue(tree.insert(Integer.valueOf(index), straddling));
+  }
+
+  /**
+   * The visitor queries find the same objects as the set-based queries.
+   */
+
+  @Test
+  public final void testVisitorQueries()
+  {
+    final OctTreeConfigurationI.Builder cb = OctTreeConfigurationI.builder();
+    cb.setVolume(VolumeI.of(0, 100, 0, 100, 0, 100));
+    final OctTreeConfigurationI c = cb.build();
+
+    final OctTreeIType<Object> tree = this.create(c);
+    OctTreeIContract.insertGrid(tree);
+
+    final VolumeI query = VolumeI.of(0, 50, 0, 50, 0, 50);
+
+    {
+      final Set<Object> expected = new HashSet<>();
+      tree.containedBy(query, expected);
+
+      final Set<Object> received = new HashSet<>();
+      Assert.assertEquals(
+        TreeVisitResult.RESULT_CONTINUE,
+        tree.containedBy(query, received, (context, item, item_volume) -> {
+          Assert.assertEquals(tree.volumeFor(item), item_volume);
+          Assert.assertTrue(context.add(item));
+          return TreeVisitResult.RESULT_CONTINUE;
+        }));
+
+      Assert.assertEquals(8L, (long) received.size());
+      Assert.assertEquals(expected, received);
+    }
+
+    {
+      final Set<Object> expected = new HashSet<>();
+      tree.overlappedBy(query, expected);
+
+      final Set<Object> received = new HashSet<>();
+      Assert.assertEquals(
+        TreeVisitResult.RESULT_CONTINUE,
+        tree.overlappedBy(query, received, (context, item, item_volume) -> {
+          Assert.assertEquals(tree.volumeFor(item), item_volume);
+          Assert.assertTrue(context.add(item));
+          return TreeVisitResult.RESULT_CONTINUE;
+        }));
+
+      Assert.assertEquals(9L, (long) received.size());
+      Assert.assertEquals(expected, received);
+    }
+
+    {
+      final Ray3D ray = Ray3D.of(Vector3D.of(0.0, 0.0, 0.0), Vector3D.of(1.0, 1.0, 1.0));
+      final SortedSet<OctTreeRaycastResultI<Object>> expected = new TreeSet<>();
+      tree.raycast(ray, expected);
+
+      final Map<Object, Double> received = new HashMap<>();
+      Assert.assertEquals(
+        TreeVisitResult.RESULT_CONTINUE,
+        tree.raycast(ray, received, (context, item, item_volume, distance) -> {
+          Assert.assertEquals(tree.volumeFor(item), item_volume);
+          Assert.assertNull(context.put(item, Double.valueOf(distance)));
+          return TreeVisitResult.RESULT_CONTINUE;
+        }));
+
+      Assert.assertEquals(4L, (long) received.size());
+      Assert.assertEquals((long) expected.size(), (long) received.size());
+      for (final OctTreeRaycastResultI<Object> r : expected) {
+        Assert.assertEquals(r.distance(), received.get(r.item()).doubleValue(), 0.0);
+      }
+    }
+  }
+
+  /**
+   * The visitor queries stop as soon as the visitor asks them to.
+   */
+
+  @Test
+  public final void testVisitorQueriesTerminate()
+  {
+    final OctTreeConfigurationI.Builder cb = OctTreeConfigurationI.builder();
+    cb.setVolume(VolumeI.of(0, 100, 0, 100, 0, 100));
+    final OctTreeConfigurationI c = cb.build();
+
+    final OctTreeIType<Object> tree = this.create(c);
+    OctTreeIContract.insertGrid(tree);
+
+    final VolumeI query = VolumeI.of(0, 50, 0, 50, 0, 50);
+
+    {
+      final AtomicInteger calls = new AtomicInteger(0);
+      Assert.assertEquals(
+        TreeVisitResult.RESULT_TERMINATE,
+        tree.containedBy(tree.bounds(), calls, (context, item, item_volume) -> {
+          context.incrementAndGet();
+          return TreeVisitResult.RESULT_TERMINATE;
+        }));
+      Assert.assertEquals(1L, (long) calls.get());
+    }
+
+    {
+      final AtomicInteger calls = new AtomicInteger(0);
+      Assert.assertEquals(
+        TreeVisitResult.RESULT_TERMINATE,
+        tree.containedBy(query, calls, (context, item, item_volume) -> {
+          context.incrementAndGet();
+          return TreeVisitResult.RESULT_TERMINATE;
+        }));
+      Assert.assertEquals(1L, (long) calls.get());
+    }
+
+    {
+      final AtomicInteger calls = new AtomicInteger(0);
+      Assert.assertEquals(
+        TreeVisitResult.RESULT_TERMINATE,
+        tree.overlappedBy(query, calls, (context, item, item_volume) -> {
+          context.incrementAndGet();
+          return TreeVisitResult.RESULT_TERMINATE;
+        }));
+      Assert.assertEquals(1L, (long) calls.get());
+    }
+
+    {
+      final AtomicInteger calls = new AtomicInteger(0);
+      Assert.assertEquals(
+        TreeVisitResult.RESULT_TERMINATE,
+        tree.raycast(Ray3D.of(Vector3D.of(0.0, 0.0, 0.0), Vector3D.of(1.0, 1.0, 1.0)), calls, (context, item, item_volume, distance) -> {
+          context.incrementAndGet();
+          return TreeVisitResult.RESULT_TERMINATE;
+        }));
+      Assert.assertEquals(1L, (long) calls.get());
+    }
+  }
+
+  private static double distanceTo(
+    final Vector3D point,
+    final VolumeI volume)
+  {
+    final double dx = Math.max(
+      0.0,
+      Math.max((double) volume.minimumX() - point.x(), point.x() - (double) volume.maximumX()));
+    final double dy = Math.max(
+      0.0,
+      Math.max((double) volume.minimumY() - point.y(), point.y() - (double) volume.maximumY()));
+    final double dz = Math.max(
+      0.0,
+      Math.max((double) volume.minimumZ() - point.z(), point.z() - (double) volume.maximumZ()));
+    return Math.sqrt(dx * dx + dy * dy + dz * dz);
+  }
+
+  /**
+   * Nearest neighbour queries return the nearest objects in order of distance.
+   */
+
+  @Test
+  public final void testNearest()
+  {
+    final OctTreeConfigurationI.Builder cb = OctTreeConfigurationI.builder();
+    cb.setVolume(VolumeI.of(0, 100, 0, 100, 0, 100));
+    cb.setMaximumItemsPerLeaf(2);
+    final OctTreeConfigurationI c = cb.build();
+
+    final OctTreeIType<Object> tree = this.create(c);
+    OctTreeIContract.insertGrid(tree);
+
+    final List<Vector3D> points =
+      List.of(
+        Vector3D.of(0.0, 0.0, 0.0),
+        Vector3D.of(50.0, 50.0, 50.0),
+        Vector3D.of(99.0, 12.0, 60.0),
+        Vector3D.of(-20.0, 150.0, 40.0));
+
+    for (final Vector3D point : points) {
+      final List<Double> expected = new ArrayList<>();
+      for (int index = 0; index < (int) tree.size(); ++index) {
+        final VolumeI bounds = tree.volumeFor(Integer.valueOf(index));
+        expected.add(Double.valueOf(OctTreeIContract.distanceTo(point, bounds)));
+      }
+      Collections.sort(expected);
+
+      for (final int count : new int[]{0, 1, 5, (int) tree.size() + 10}) {
+        final Set<Object> seen = new HashSet<>();
+        final List<Double> received = new ArrayList<>();
+        Assert.assertEquals(
+          TreeVisitResult.RESULT_CONTINUE,
+          tree.nearest(point, count, received, (context, item, item_volume, distance) -> {
+            Assert.assertTrue(seen.add(item));
+            Assert.assertEquals(tree.volumeFor(item), item_volume);
+            Assert.assertEquals(
+              OctTreeIContract.distanceTo(point, item_volume), distance, 0.000001);
+            context.add(Double.valueOf(distance));
+            return TreeVisitResult.RESULT_CONTINUE;
+          }));
+
+        final int expected_count = Math.min(count, expected.size());
+        Assert.assertEquals((long) expected_count, (long) received.size());
+        for (int index = 0; index < expected_count; ++index) {
+          Assert.assertEquals(
+            expected.get(index).doubleValue(),
+            received.get(index).doubleValue(),
+            0.000001);
+        }
+      }
+    }
+  }
+
+  /**
+   * Nearest neighbour queries stop as soon as the visitor asks them to.
+   */
+
+  @Test
+  public final void testNearestTerminate()
+  {
+    final OctTreeConfigurationI.Builder cb = OctTreeConfigurationI.builder();
+    cb.setVolume(VolumeI.of(0, 100, 0, 100, 0, 100));
+    final OctTreeConfigurationI c = cb.build();
+
+    final OctTreeIType<Object> tree = this.create(c);
+    OctTreeIContract.insertGrid(tree);
+
+    final Vector3D point = Vector3D.of(50.0, 50.0, 50.0);
+    final AtomicInteger calls = new AtomicInteger(0);
+    Assert.assertEquals(
+      TreeVisitResult.RESULT_TERMINATE,
+      tree.nearest(point, 10, calls, (context, item, item_volume, distance) -> {
+        context.incrementAndGet();
+        return TreeVisitResult.RESULT_TERMINATE;
+      }));
+    Assert.assertEquals(1L, (long) calls.get());
+  }
+
+  private static double entryDistance(
+    final Ray3D ray,
+    final VolumeI volume)
+  {
+    return ray.entryDistanceVolume(
+      (double) volume.minimumX(),
+      (double) volume.minimumY(),
+      (double) volume.minimumZ(),
+      (double) volume.maximumX(),
+      (double) volume.maximumY(),
+      (double) volume.maximumZ());
+  }
+
+  /**
+   * First-hit raycasts return the objects the ray enters first, in order of distance.
+   */
+
+  @Test
+  public final void testRaycastFirst()
+  {
+    final OctTreeConfigurationI.Builder cb = OctTreeConfigurationI.builder();
+    cb.setVolume(VolumeI.of(0, 100, 0, 100, 0, 100));
+    cb.setMaximumItemsPerLeaf(2);
+    final OctTreeConfigurationI c = cb.build();
+
+    final OctTreeIType<Object> tree = this.create(c);
+    OctTreeIContract.insertGrid(tree);
+
+    final List<Ray3D> rays =
+      List.of(
+        Ray3D.of(Vector3D.of(-10.0, 10.0, 10.0), Vector3D.of(1.0, 0.0, 0.0)),
+        Ray3D.of(Vector3D.of(0.0, 0.0, 0.0), Vectors3D.normalize(Vector3D.of(1.0, 1.0, 1.0))),
+        Ray3D.of(Vector3D.of(50.0, 50.0, 50.0), Vectors3D.normalize(Vector3D.of(-1.0, -0.5, -0.25))),
+        Ray3D.of(Vector3D.of(99.0, 12.0, 60.0), Vectors3D.normalize(Vector3D.of(-1.0, 0.1, -0.2))),
+        Ray3D.of(Vector3D.of(200.0, 200.0, 200.0), Vector3D.of(1.0, 0.0, 0.0)));
+
+    for (final Ray3D ray : rays) {
+      final List<Double> expected = new ArrayList<>();
+      for (int index = 0; index < (int) tree.size(); ++index) {
+        final double distance =
+          OctTreeIContract.entryDistance(ray, tree.volumeFor(Integer.valueOf(index)));
+        if (distance < Double.POSITIVE_INFINITY) {
+          expected.add(Double.valueOf(distance));
+        }
+      }
+      Collections.sort(expected);
+
+      final Optional<OctTreeRaycastResultI<Object>> first = tree.raycastFirst(ray);
+      Assert.assertEquals(Boolean.valueOf(!expected.isEmpty()), Boolean.valueOf(first.isPresent()));
+      first.ifPresent(result -> {
+        Assert.assertEquals(tree.volumeFor(result.item()), result.volume());
+        Assert.assertEquals(expected.get(0).doubleValue(), result.distance(), 0.000001);
+      });
+
+      for (final int count : new int[]{0, 1, 5, (int) tree.size() + 10}) {
+        final Set<Object> seen = new HashSet<>();
+        final List<Double> received = new ArrayList<>();
+        Assert.assertEquals(
+          TreeVisitResult.RESULT_CONTINUE,
+          tree.raycastFirst(ray, count, received, (context, item, item_volume, distance) -> {
+            Assert.assertTrue(seen.add(item));
+            Assert.assertEquals(tree.volumeFor(item), item_volume);
+            Assert.assertEquals(
+              OctTreeIContract.entryDistance(ray, item_volume), distance, 0.000001);
+            context.add(Double.valueOf(distance));
+            return TreeVisitResult.RESULT_CONTINUE;
+          }));
+
+        final int expected_count = Math.min(count, expected.size());
+        Assert.assertEquals((long) expected_count, (long) received.size());
+        for (int index = 0; index < expected_count; ++index) {
+          Assert.assertEquals(
+            expected.get(index).doubleValue(),
+            received.get(index).doubleValue(),
+            0.000001);
+        }
+      }
+    }
+  }
+
+  /**
+   * First-hit raycasts stop as soon as the visitor asks them to.
+   */
+
+  @Test
+  public final void testRaycastFirstTerminate()
+  {
+    final OctTreeConfigurationI.Builder cb = OctTreeConfigurationI.builder();
+    cb.setVolume(VolumeI.of(0, 100, 0, 100, 0, 100));
+    final OctTreeConfigurationI c = cb.build();
+
+    final OctTreeIType<Object> tree = this.create(c);
+    OctTreeIContract.insertGrid(tree);
+
+    final Ray3D ray = Ray3D.of(Vector3D.of(0.0, 0.0, 0.0), Vectors3D.normalize(Vector3D.of(1.0, 1.0, 1.0)));
+    final AtomicInteger calls = new AtomicInteger(0);
+    Assert.assertEquals(
+      TreeVisitResult.RESULT_TERMINATE,
+      tree.raycastFirst(ray, 10, calls, (context, item, item_volume, distance) -> {
+        context.incrementAndGet();
+        return TreeVisitResult.RESULT_TERMINATE;
+      }));
+    Assert.assertEquals(1L, (long) calls.get());
+  }
+
+  /**
+   * Buffered raycasts find every intersected object, at the same distances as first-hit raycasts.
+   */
+
+  @Test
+  public final void testRaycastBuffer()
+  {
+    final OctTreeConfigurationI.Builder cb = OctTreeConfigurationI.builder();
+    cb.setVolume(VolumeI.of(0, 100, 0, 100, 0, 100));
+    cb.setMaximumItemsPerLeaf(2);
+    final OctTreeConfigurationI c = cb.build();
+
+    final OctTreeIType<Object> tree = this.create(c);
+    OctTreeIContract.insertGrid(tree);
+
+    final List<Ray3D> rays =
+      List.of(
+        Ray3D.of(Vector3D.of(-10.0, 10.0, 10.0), Vector3D.of(1.0, 0.0, 0.0)),
+        Ray3D.of(Vector3D.of(0.0, 0.0, 0.0), Vectors3D.normalize(Vector3D.of(1.0, 1.0, 1.0))),
+        Ray3D.of(Vector3D.of(50.0, 50.0, 50.0), Vectors3D.normalize(Vector3D.of(-1.0, -0.5, -0.25))),
+        Ray3D.of(Vector3D.of(200.0, 200.0, 200.0), Vector3D.of(1.0, 0.0, 0.0)));
+
+    final OctTreeRaycastBufferI<Object> results = OctTreeRaycastBufferI.create();
+    for (final Ray3D ray : rays) {
+      final List<Double> expected = new ArrayList<>();
+      for (int index = 0; index < (int) tree.size(); ++index) {
+        final double distance =
+          OctTreeIContract.entryDistance(ray, tree.volumeFor(Integer.valueOf(index)));
+        if (distance < Double.POSITIVE_INFINITY) {
+          expected.add(Double.valueOf(distance));
+        }
+      }
+      Collections.sort(expected);
+
+      results.clear();
+      tree.raycast(ray, results);
+      results.sortByDistance();
+
+      Assert.assertEquals((long) expected.size(), (long) results.size());
+      final Set<Object> seen = new HashSet<>();
+      for (int index = 0; index < results.size(); ++index) {
+        final Object item = results.item(index);
+        Assert.assertTrue(seen.add(item));
+        Assert.assertEquals(tree.volumeFor(item), results.volume(index));
+        Assert.assertEquals(
+          expected.get(index).doubleValue(), results.distance(index), 0.000001);
+      }
+    }
+  }
+
+  private static void checkCounts(
+    final OctTreeIType<Object> tree,
+    final List<VolumeI> queries)
+  {
+    for (final VolumeI query : queries) {
+      final Set<Object> contained = new HashSet<>();
+      tree.containedBy(query, contained);
+      final Set<Object> overlapping = new HashSet<>();
+      tree.overlappedBy(query, overlapping);
+
+      Assert.assertEquals(
+        (long) contained.size(), tree.countContainedBy(query));
+      Assert.assertEquals(
+        (long) overlapping.size(), tree.countOverlapping(query));
+      Assert.assertEquals(
+        Boolean.valueOf(!overlapping.isEmpty()),
+        Boolean.valueOf(tree.anyOverlapping(query)));
+    }
+  }
+
+  /**
+   * Counting queries agree with the set-based queries, including after
+   * objects have been removed.
+   */
+
+  @Test
+  public final void testCountQueries()
+  {
+    final List<VolumeI> queries =
+      List.of(
+        VolumeI.of(0, 100, 0, 100, 0, 100),
+        VolumeI.of(0, 50, 0, 50, 0, 50),
+        VolumeI.of(20, 60, 20, 60, 20, 60),
+        VolumeI.of(14, 46, 14, 46, 14, 46),
+        VolumeI.of(50, 50, 50, 50, 50, 50),
+        VolumeI.of(49, 50, 49, 50, 49, 50),
+        VolumeI.of(95, 100, 95, 100, 95, 100),
+        VolumeI.of(200, 300, 200, 300, 200, 300));
+
+    for (final int leaf : new int[]{2, 8}) {
+      final OctTreeConfigurationI.Builder cb = OctTreeConfigurationI.builder();
+      cb.setVolume(VolumeI.of(0, 100, 0, 100, 0, 100));
+      cb.setMaximumItemsPerLeaf(leaf);
+      final OctTreeConfigurationI c = cb.build();
+
+      final OctTreeIType<Object> tree = this.create(c);
+      OctTreeIContract.insertGrid(tree);
+      Assert.assertTrue(tree.insert("point", VolumeI.of(50, 50, 50, 50, 50, 50)));
+      Assert.assertTrue(tree.insert("corner", VolumeI.of(100, 100, 100, 100, 100, 100)));
+      OctTreeIContract.checkCounts(tree, queries);
+
+      Assert.assertTrue(tree.remove("point"));
+      Assert.assertTrue(tree.remove(Integer.valueOf(0)));
+      Assert.assertTrue(tree.remove(Integer.valueOf(3)));
+      OctTreeIContract.checkCounts(tree, queries);
+
+      tree.clear();
+      Assert.assertEquals(0L, tree.countOverlapping(VolumeI.of(0, 100, 0, 100, 0, 100)));
+      Assert.assertFalse(tree.anyOverlapping(VolumeI.of(0, 100, 0, 100, 0, 100)));
+    }
+  }
+
+  private static void checkSameQueries(
+    final OctTreeIType<Object> expected,
+    final OctTreeIType<Object> tree,
+    final List<VolumeI> queries)
+  {
+    Assert.assertEquals(expected.size(), tree.size());
+    Assert.assertEquals(expected, tree);
+
+    for (final VolumeI query : queries) {
+      final Set<Object> expected_contained = new HashSet<>();
+      expected.containedBy(query, expected_contained);
+      final Set<Object> contained = new HashSet<>();
+      tree.containedBy(query, contained);
+      Assert.assertEquals(expected_contained, contained);
+
+      final Set<Object> expected_overlapping = new HashSet<>();
+      expected.overlappedBy(query, expected_overlapping);
+      final Set<Object> overlapping = new HashSet<>();
+      tree.overlappedBy(query, overlapping);
+      Assert.assertEquals(expected_overlapping, overlapping);
+    }
+    OctTreeIContract.checkCounts(tree, queries);
+
+    tree.iterateOctants(tree, (context, octant, depth) -> {
+      for (final Map.Entry<Object, VolumeI> entry : octant.objects().entrySet()) {
+        Assert.assertEquals(context.volumeFor(entry.getKey()), entry.getValue());
+        Assert.assertTrue(VolumesI.contains(octant.volume(), entry.getValue()));
+      }
+      return TreeVisitResult.RESULT_CONTINUE;
+    });
+  }
+
+  /**
+   * Bulk insertion produces a tree that holds the same objects, and answers
+   * queries in the same way, as inserting the objects one at a time.
+   */
+
+  @Test
+  public final void testInsertAll()
+  {
+    final List<VolumeI> queries =
+      List.of(
+        VolumeI.of(0, 100, 0, 100, 0, 100),
+        VolumeI.of(0, 50, 0, 50, 0, 50),
+        VolumeI.of(20, 60, 20, 60, 20, 60),
+        VolumeI.of(14, 46, 14, 46, 14, 46),
+        VolumeI.of(50, 50, 50, 50, 50, 50),
+        VolumeI.of(95, 100, 95, 100, 95, 100));
+
+    for (final int leaf : new int[]{0, 2, 8}) {
+      final OctTreeConfigurationI.Builder cb = OctTreeConfigurationI.builder();
+      cb.setVolume(VolumeI.of(0, 100, 0, 100, 0, 100));
+      cb.setMaximumItemsPerLeaf(leaf);
+      final OctTreeConfigurationI c = cb.build();
+
+      final OctTreeIType<Object> expected = this.create(c);
+      OctTreeIContract.insertGrid(expected);
+      Assert.assertTrue(expected.insert("point", VolumeI.of(50, 50, 50, 50, 50, 50)));
+
+      final Set<Object> all = new HashSet<>();
+      expected.overlappedBy(VolumeI.of(0, 100, 0, 100, 0, 100), all);
+      final Map<Object, VolumeI> items = new HashMap<>();
+      for (final Object item : all) {
+        items.put(item, expected.volumeFor(item));
+      }
+      items.put("outside", VolumeI.of(200, 300, 200, 300, 200, 300));
+
+      final OctTreeIType<Object> tree = this.create(c);
+      Assert.assertEquals(expected.size(), tree.insertAll(items));
+      Assert.assertFalse(tree.contains("outside"));
+      OctTreeIContract.checkSameQueries(expected, tree, queries);
+
+      final Map<Object, VolumeI> more = new HashMap<>();
+      more.put(Integer.valueOf(0), VolumeI.of(60, 70, 60, 70, 60, 70));
+      more.put("extra", VolumeI.of(1, 2, 1, 2, 1, 2));
+      more.put("outside", VolumeI.of(200, 300, 200, 300, 200, 300));
+      for (final Map.Entry<Object, VolumeI> entry : more.entrySet()) {
+        expected.insert(entry.getKey(), entry.getValue());
+      }
+
+      Assert.assertEquals(2L, tree.insertAll(more));
+      OctTreeIContract.checkSameQueries(expected, tree, queries);
+    }
+  }
+
+  /**
+   * Bulk insertion into an empty tree with no objects does nothing.
+   */
+
+  @Test
+  public final void testInsertAllEmpty()
+  {
+    final OctTreeConfigurationI.Builder cb = OctTreeConfigurationI.builder();
+    cb.setVolume(VolumeI.of(0, 100, 0, 100, 0, 100));
+    final OctTreeConfigurationI c = cb.build();
+
+    final OctTreeIType<Object> tree = this.create(c);
+    Assert.assertEquals(0L, tree.insertAll(Map.of()));
+    Assert.assertEquals(0L, tree.size());
+  }
 }
@@ -22,6 +22,7 @@ import com.io7m.jspatial.api.Ray3D;
 import com.io7m.jspatial.api.TreeVisitResult;
 import com.io7m.jspatial.api.octtrees.OctTreeConfigurationL;
 import com.io7m.jspatial.api.octtrees.OctTreeLType;
+import com.io7m.jspatial.api.octtrees.OctTreeRaycastBufferL;
 import com.io7m.jspatial.api.octtrees.OctTreeRaycastResultL;
 import com.io7m.jspatial.tests.api.VolumeLContainedGenerator;
 import com.io7m.jtensors.core.unparameterized.vectors.Vector3D;
@@ -33,12 +34,15 @@ import org.junit.Test;
 import org.junit.rules.ExpectedException;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -2099,4 +2103,699 @@ public abstract class OctTreeLContract
     Assert.assertTrue(tree.insert(item, item_volume));
     Assert.assertEquals(1L, (long) OctTreeLContract.countOctants(tree));
   }
+
+  /**
+   * Leaves are only split when they hold more than the configured number of
+   * items, and their items are redistributed when they are split.
+   */
+
+  @Test
+  public final void testInsertCapacitySplit()
+  {
+    final VolumeL container = VolumeL.of(0L, 100L, 0L, 100L, 0L, 100L);
+
+    final OctTreeConfigurationL.Builder cb = OctTreeConfigurationL.builder();
+    cb.setVolume(container);
+    cb.setMaximumItemsPerLeaf(4);
+    final OctTreeConfigurationL c = cb.build();
+
+    final OctTreeLType<Object> tree = this.create(c);
+
+    final Integer central = Integer.valueOf(0);
+    Assert.assertTrue(tree.insert(central, VolumeL.of(40L, 60L, 40L, 60L, 40L, 60L)));
+    Assert.assertTrue(tree.insert(Integer.valueOf(1), VolumeL.of(1L, 2L, 1L, 2L, 1L, 2L)));
+    Assert.assertTrue(tree.insert(Integer.valueOf(2), VolumeL.of(98L, 99L, 1L, 2L, 1L, 2L)));
+    Assert.assertTrue(tree.insert(Integer.valueOf(3), VolumeL.of(1L, 2L, 98L, 99L, 1L, 2L)));
+    Assert.assertEquals(1L, (long) OctTreeLContract.countOctants(tree));
+
+    Assert.assertTrue(tree.insert(
+      Integer.valueOf(4),
+      VolumeL.of(98L, 99L, 98L, 99L, 98L, 99L)));
+    Assert.assertEquals(9L, (long) OctTreeLContract.countOctants(tree));
+
+    tree.iterateOctants(Integer.valueOf(0), (context, octant, depth) -> {
+      if (depth == 0L) {
+        Assert.assertEquals(1L, (long) octant.objects().size());
+        Assert.assertTrue(octant.objects().containsKey(central));
+      } else {
+        Assert.assertTrue(octant.objects().size() <= 1);
+      }
+      return TreeVisitResult.RESULT_CONTINUE;
+    });
+
+    for (int index = 0; index <= 4; ++index) {
+      Assert.assertTrue(tree.remove(Integer.valueOf(index)));
+    }
+    Assert.assertTrue(tree.isEmpty());
+  }
+
+  /**
+   * Octants at the maximum depth are not split.
+   */
+
+  @Test
+  public final void testInsertMaximumDepth()
+  {
+    final VolumeL container = VolumeL.of(0L, 100L, 0L, 100L, 0L, 100L);
+
+    final OctTreeConfigurationL.Builder cb = OctTreeConfigurationL.builder();
+    cb.setVolume(container);
+    cb.setMaximumDepth(1);
+    final OctTreeConfigurationL c = cb.build();
+
+    final OctTreeLType<Object> tree = this.create(c);
+
+    final Integer item = Integer.valueOf(0);
+    Assert.assertTrue(tree.insert(item, VolumeL.of(1L, 2L, 1L, 2L, 1L, 2L)));
+    Assert.assertEquals(9L, (long) OctTreeLContract.countOctants(tree));
+
+    tree.iterateOctants(Integer.valueOf(0), (context, octant, depth) -> {
+      if (octant.objects().containsKey(item)) {
+        Assert.assertEquals(1L, depth);
+      }
+      return TreeVisitResult.RESULT_CONTINUE;
+    });
+  }
+
+  /**
+   * Inserting an object that is already in the tree moves it.
+   */
+
+  @Test
+  public final void testInsertExistingMoves()
+  {
+    final VolumeL container = VolumeL.of(0L, 100L, 0L, 100L, 0L, 100L);
+
+    final OctTreeConfigurationL.Builder cb = OctTreeConfigurationL.builder();
+    cb.setVolume(container);
+    cb.setTrimOnRemove(true);
+    final OctTreeConfigurationL c = cb.build();
+
+    final OctTreeLType<Object> tree = this.create(c);
+    final OctTreeLType<Object> expected = this.create(c);
+
+    final Integer item0 = Integer.valueOf(0);
+    final Integer item1 = Integer.valueOf(1);
+    final VolumeL bounds0 = VolumeL.of(1L, 2L, 1L, 2L, 1L, 2L);
+    final VolumeL bounds1 = VolumeL.of(98L, 99L, 98L, 99L, 98L, 99L);
+    final VolumeL bounds2 = VolumeL.of(40L, 45L, 40L, 45L, 40L, 45L);
+
+    Assert.assertTrue(tree.insert(item0, bounds0));
+    Assert.assertTrue(tree.insert(item1, bounds1));
+    Assert.assertTrue(tree.insert(item0, bounds2));
+
+    Assert.assertEquals(2L, tree.size());
+    Assert.assertEquals(bounds2, tree.volumeFor(item0));
+
+    final Set<Object> found = new HashSet<>();
+    tree.overlappedBy(bounds0, found);
+    Assert.assertTrue(found.isEmpty());
+    tree.overlappedBy(bounds2, found);
+    Assert.assertEquals(Collections.singleton(item0), found);
+
+    Assert.assertTrue(expected.insert(item1, bounds1));
+    Assert.assertTrue(expected.insert(item0, bounds2));
+    Assert.assertEquals(expected, tree);
+    Assert.assertEquals((long) expected.hashCode(), (long) tree.hashCode());
+    Assert.assertEquals(
+      (long) OctTreeLContract.countOctants(expected),
+      (long) OctTreeLContract.countOctants(tree));
+
+    Assert.assertFalse(tree.insert(item0, VolumeL.of(-10L, 200L, -10L, 200L, -10L, 200L)));
+    Assert.assertFalse(tree.contains(item0));
+    Assert.assertEquals(1L, tree.size());
+  }
+
+  private static void insertGrid(
+    final OctTreeLType<Object> tree)
+  {
+    int index = 0;
+    for (int x = 0; x < 3; ++x) {
+      for (int y = 0; y < 3; ++y) {
+        for (int z = 0; z < 3; ++z) {
+          final VolumeL bounds = VolumeL.of(
+            (long) (x * 30 + 5),
+            (long) (x * 30 + 15),
+            (long) (y * 30 + 5),
+            (long) (y * 30 + 15),
+            (long) (z * 30 + 5),
+            (long) (z * 30 + 15));
+          Assert.assertTrue(tree.insert(Integer.valueOf(index), bounds));
+          ++index;
+        }
+      }
+    }
+
+    final VolumeL straddling =
+      VolumeL.of(45L, 55L, 45L, 55L, 45L, 55L);
+    Assert.assertTrue(tree.insert(Integer.valueOf(index), straddling));
+  }
+
+  /**
+   * The visitor queries find the same objects as the set-based queries.
+   */
+
+  @Test
+  public final void testVisitorQueries()
+  {
+    final OctTreeConfigurationL.Builder cb = OctTreeConfigurationL.builder();
+    cb.setVolume(VolumeL.of(0L, 100L, 0L, 100L, 0L, 100L));
+    final OctTreeConfigurationL c = cb.build();
+
+    final OctTreeLType<Object> tree = this.create(c);
+    OctTreeLContract.insertGrid(tree);
+
+    final VolumeL query = VolumeL.of(0L, 50L, 0L, 50L, 0L, 50L);
+
+    {
+      final Set<Object> expected = new HashSet<>();
+      tree.containedBy(query, expected);
+
+      final Set<Object> received = new HashSet<>();
+      Assert.assertEquals(
+        TreeVisitResult.RESULT_CONTINUE,
+        tree.containedBy(query, received, (context, item, item_volume) -> {
+          Assert.assertEquals(tree.volumeFor(item), item_volume);
+          Assert.assertTrue(context.add(item));
+          return TreeVisitResult.RESULT_CONTINUE;
+        }));
+
+      Assert.assertEquals(8L, (long) received.size());
+      Assert.assertEquals(expected, received);
+    }
+
+    {
+      final Set<Object> expected = new HashSet<>();
+      tree.overlappedBy(query, expected);
+
+      final Set<Object> received = new HashSet<>();
+      Assert.assertEquals(
+        TreeVisitResult.RESULT_CONTINUE,
+        tree.overlappedBy(query, received, (context, item, item_volume) -> {
+          Assert.assertEquals(tree.volumeFor(item), item_volume);
+          Assert.assertTrue(context.add(item));
+          return TreeVisitResult.RESULT_CONTINUE;
+        }));
+
+      Assert.assertEquals(9L, (long) received.size());
+      Assert.assertEquals(expected, received);
+    }
+
+    {
+      final Ray3D ray = Ray3D.of(Vector3D.of(0.0, 0.0, 0.0), Vector3D.of(1.0, 1.0, 1.0));
+      final SortedSet<OctTreeRaycastResultL<Object>> expected = new TreeSet<>();
+      tree.raycast(ray, expected);
+
+      final Map<Object, Double> received = new HashMap<>();
+      Assert.assertEquals(
+        TreeVisitResult.RESULT_CONTINUE,
+        tree.raycast(ray, received, (context, item, item_volume, distance) -> {
+          Assert.assertEquals(tree.volumeFor(item), item_volume);
+          Assert.assertNull(context.put(item, Double.valueOf(distance)));
+          return TreeVisitResult.RESULT_CONTINUE;
+        }));
+
+      Assert.assertEquals(4L, (long) received.size());
+      Assert.assertEquals((long) expected.size(), (long) received.size());
+      for (final OctTreeRaycastResultL<Object> r : expected) {
+        Assert.assertEquals(r.distance(), received.get(r.item()).doubleValue(), 0.0);
+      }
+    }
+  }
+
+  /**
+   * The visitor queries stop as soon as the visitor asks them to.
+   */
+
+  @Test
+  public final void testVisitorQueriesTerminate()
+  {
+    final OctTreeConfigurationL.Builder cb = OctTreeConfigurationL.builder();
+    cb.setVolume(VolumeL.of(0L, 100L, 0L, 100L, 0L, 100L));
+    final OctTreeConfigurationL c = cb.build();
+
+    final OctTreeLType<Object> tree = this.create(c);
+    OctTreeLContract.insertGrid(tree);
+
+    final VolumeL query = VolumeL.of(0L, 50L, 0L, 50L, 0L, 50L);
+
+    {
+      final AtomicInteger calls = new AtomicInteger(0);
+      Assert.assertEquals(
+        TreeVisitResult.RESULT_TERMINATE,
+        tree.containedBy(tree.bounds(), calls, (context, item, item_volume) -> {
+          context.incrementAndGet();
+          return TreeVisitResult.RESULT_TERMINATE;
+        }));
+      Assert.assertEquals(1L, (long) calls.get());
+    }
+
+    {
+      final AtomicInteger calls = new AtomicInteger(0);
+      Assert.assertEquals(
+        TreeVisitResult.RESULT_TERMINATE,
+        tree.containedBy(query, calls, (context, item, item_volume) -> {
+          context.incrementAndGet();
+          return TreeVisitResult.RESULT_TERMINATE;
+        }));
+      Assert.assertEquals(1L, (long) calls.get());
+    }
+
+    {
+      final AtomicInteger calls = new AtomicInteger(0);
+      Assert.assertEquals(
+        TreeVisitResult.RESULT_TERMINATE,
+        tree.overlappedBy(query, calls, (context, item, item_volume) -> {
+          context.incrementAndGet();
+          return TreeVisitResult.RESULT_TERMINATE;
+        }));
+      Assert.assertEquals(1L, (long) calls.get());
+    }
+
+    {
+      final AtomicInteger calls = new AtomicInteger(0);
+      Assert.assertEquals(
+        TreeVisitResult.RESULT_TERMINATE,
+        tree.raycast(Ray3D.of(Vector3D.of(0.0, 0.0, 0.0), Vector3D.of(1.0, 1.0, 1.0)), calls, (context, item, item_volume, distance) -> {
+          context.incrementAndGet();
+          return TreeVisitResult.RESULT_TERMINATE;
+        }));
+      Assert.assertEquals(1L, (long) calls.get());
+    }
+  }
+
+  private static double distanceTo(
+    final Vector3D point,
+    final VolumeL volume)
+  {
+    final double dx = Math.max(
+      0.0,
+      Math.max((double) volume.minimumX() - point.x(), point.x() - (double) volume.maximumX()));
+    final double dy = Math.max(
+      0.0,
+      Math.max((double) volume.minimumY() - point.y(), point.y() - (double) volume.maximumY()));
+    final double dz = Math.max(
+      0.0,
+      Math.max((double) volume.minimumZ() - point.z(), point.z() - (double) volume.maximumZ()));
+    return Math.sqrt(dx * dx + dy * dy + dz * dz);
+  }
+
+  /**
+   * Nearest neighbour queries return the nearest objects in order of distance.
+   */
+
+  @Test
+  public final void testNearest()
+  {
+    final OctTreeConfigurationL.Builder cb = OctTreeConfigurationL.builder();
+    cb.setVolume(VolumeL.of(0L, 100L, 0L, 100L, 0L, 100L));
+    cb.setMaximumItemsPerLeaf(2);
+    final OctTreeConfigurationL c = cb.build();
+
+    final OctTreeLType<Object> tree = this.create(c);
+    OctTreeLContract.insertGrid(tree);
+
+    final List<Vector3D> points =
+      List.of(
+        Vector3D.of(0.0, 0.0, 0.0),
+        Vector3D.of(50.0, 50.0, 50.0),
+        Vector3D.of(99.0, 12.0, 60.0),
+        Vector3D.of(-20.0, 150.0, 40.0));
+
+    for (final Vector3D point : points) {
+      final List<Double> expected = new ArrayList<>();
+      for (int index = 0; index < (int) tree.size(); ++index) {
+        final VolumeL bounds = tree.volumeFor(Integer.valueOf(index));
+        expected.add(Double.valueOf(OctTreeLContract.distanceTo(point, bounds)));
+      }
+      Collections.sort(expected);
+
+      for (final int count : new int[]{0, 1, 5, (int) tree.size() + 10}) {
+        final Set<Object> seen = new HashSet<>();
+        final List<Double> received = new ArrayList<>();
+        Assert.assertEquals(
+          TreeVisitResult.RESULT_CONTINUE,
+          tree.nearest(point, count, received, (context, item, item_volume, distance) -> {
+            Assert.assertTrue(seen.add(item));
+            Assert.assertEquals(tree.volumeFor(item), item_volume);
+            Assert.assertEquals(
+              OctTreeLContract.distanceTo(point, item_volume), distance, 0.000001);
+            context.add(Double.valueOf(distance));
+            return TreeVisitResult.RESULT_CONTINUE;
+          }));
+
+        final int expected_count = Math.min(count, expected.size());
+        Assert.assertEquals((long) expected_count, (long) received.size());
+        for (int index = 0; index < expected_count; ++index) {
+          Assert.assertEquals(
+            expected.get(index).doubleValue(),
+            received.get(index).doubleValue(),
+            0.000001);
+        }
+      }
+    }
+  }
+
+  /**
+   * Nearest neighbour queries stop as soon as the visitor asks them to.
+   */
+
+  @Test
+  public final void testNearestTerminate()
+  {
+    final OctTreeConfigurationL.Builder cb = OctTreeConfigurationL.builder();
+    cb.setVolume(VolumeL.of(0L, 100L, 0L, 100L, 0L, 100L));
+    final OctTreeConfigurationL c = cb.build();
+
+    final OctTreeLType<Object> tree = this.create(c);
+    OctTreeLContract.insertGrid(tree);
+
+    final Vector3D point = Vector3D.of(50.0, 50.0, 50.0);
+    final AtomicInteger calls = new AtomicInteger(0);
+    Assert.assertEquals(
+      TreeVisitResult.RESULT_TERMINATE,
+      tree.nearest(point, 10, calls, (context, item, item_volume, distance) -> {
+        context.incrementAndGet();
+        return TreeVisitResult.RESULT_TERMINATE;
+      }));
+    Assert.assertEquals(1L, (long) calls.get());
+  }
+
+  private static double entryDistance(
+    final Ray3D ray,
+    final VolumeL volume)
+  {
+    return ray.entryDistanceVolume(
+      (double) volume.minimumX(),
+      (double) volume.minimumY(),
+      (double) volume.minimumZ(),
+      (double) volume.maximumX(),
+      (double) volume.maximumY(),
+      (double) volume.maximumZ());
+  }
+
+  /**
+   * First-hit raycasts return the objects the ray enters first, in order of distance.
+   */
+
+  @Test
+  public final void testRaycastFirst()
+  {
+    final OctTreeConfigurationL.Builder cb = OctTreeConfigurationL.builder();
+    cb.setVolume(VolumeL.of(0L, 100L, 0L, 100L, 0L, 100L));
+    cb.setMaximumItemsPerLeaf(2);
+    final OctTreeConfigurationL c = cb.build();
+
+    final OctTreeLType<Object> tree = this.create(c);
+    OctTreeLContract.insertGrid(tree);
+
+    final List<Ray3D> rays =
+      List.of(
+        Ray3D.of(Vector3D.of(-10.0, 10.0, 10.0), Vector3D.of(1.0, 0.0, 0.0)),
+        Ray3D.of(Vector3D.of(0.0, 0.0, 0.0), Vectors3D.normalize(Vector3D.of(1.0, 1.0, 1.0))),
+        Ray3D.of(Vector3D.of(50.0, 50.0, 50.0), Vectors3D.normalize(Vector3D.of(-1.0, -0.5, -0.25))),
+        Ray3D.of(Vector3D.of(99.0, 12.0, 60.0), Vectors3D.normalize(Vector3D.of(-1.0, 0.1, -0.2))),
+        Ray3D.of(Vector3D.of(200.0, 200.0, 200.0), Vector3D.of(1.0, 0.0, 0.0)));
+
+    for (final Ray3D ray : rays) {
+      final List<Double> expected = new ArrayList<>();
+      for (int index = 0; index < (int) tree.size(); ++index) {
+        final double distance =
+          OctTreeLContract.entryDistance(ray, tree.volumeFor(Integer.valueOf(index)));
+        if (distance < Double.POSITIVE_INFINITY) {
+          expected.add(Double.valueOf(distance));
+        }
+      }
+      Collections.sort(expected);
+
+      final Optional<OctTreeRaycastResultL<Object>> first = tree.raycastFirst(ray);
+      Assert.assertEquals(Boolean.valueOf(!expected.isEmpty()), Boolean.valueOf(first.isPresent()));
+      first.ifPresent(result -> {
+        Assert.assertEquals(tree.volumeFor(result.item()), result.volume());
+        Assert.assertEquals(expected.get(0).doubleValue(), result.distance(), 0.000001);
+      });
+
+      for (final int count : new int[]{0, 1, 5, (int) tree.size() + 10}) {
+        final Set<Object> seen = new HashSet<>();
+        final List<Double> received = new ArrayList<>();
+        Assert.assertEquals(
+          TreeVisitResult.RESULT_CONTINUE,
+          tree.raycastFirst(ray, count, received, (context, item, item_volume, distance) -> {
+            Assert.assertTrue(seen.add(item));
+            Assert.assertEquals(tree.volumeFor(item), item_volume);
+            Assert.assertEquals(
+              OctTreeLContract.entryDistance(ray, item_volume), distance, 0.000001);
+            context.add(Double.valueOf(distance));
+            return TreeVisitResult.RESULT_CONTINUE;
+          }));
+
+        final int expected_count = Math.min(count, expected.size());
+        Assert.assertEquals((long) expected_count, (long) received.size());
+        for (int index = 0; index < expected_count; ++index) {
+          Assert.assertEquals(
+            expected.get(index).doubleValue(),
+            received.get(index).doubleValue(),
+            0.000001);
+        }
+      }
+    }
+  }
+
+  /**
+   * First-hit raycasts stop as soon as the visitor asks them to.
+   */
+
+  @Test
+  public final void testRaycastFirstTerminate()
+  {
+    final OctTreeConfigurationL.Builder cb = OctTreeConfigurationL.builder();
+    cb.setVolume(VolumeL.of(0L, 100L, 0L, 100L, 0L, 100L));
+    final OctTreeConfigurationL c = cb.build();
+
+    final OctTreeLType<Object> tree = this.create(c);
+    OctTreeLContract.insertGrid(tree);
+
+    final Ray3D ray = Ray3D.of(Vector3D.of(0.0, 0.0, 0.0), Vectors3D.normalize(Vector3D.of(1.0, 1.0, 1.0)));
+    final AtomicInteger calls = new AtomicInteger(0);
+    Assert.assertEquals(
+      TreeVisitResult.RESULT_TERMINATE,
+      tree.raycastFirst(ray, 10, calls, (context, item, item_volume, distance) -> {
+        context.incrementAndGet();
+        return TreeVisitResult.RESULT_TERMINATE;
+      }));
+    Assert.assertEquals(1L, (long) calls.get());
+  }
+
+  /**
+   * Buffered raycasts find every intersected object, at the same distances as first-hit raycasts.
+   */
+
+  @Test
+  public final void testRaycastBuffer()
+  {
+    final OctTreeConfigurationL.Builder cb = OctTreeConfigurationL.builder();
+    cb.setVolume(VolumeL.of(0L, 100L, 0L, 100L, 0L, 100L));
+    cb.setMaximumItemsPerLeaf(2);
+    final OctTreeConfigurationL c = cb.build();
+
+    final OctTreeLType<Object> tree = this.create(c);
+    OctTreeLContract.insertGrid(tree);
+
+    final List<Ray3D> rays =
+      List.of(
+        Ray3D.of(Vector3D.of(-10.0, 10.0, 10.0), Vector3D.of(1.0, 0.0, 0.0)),
+        Ray3D.of(Vector3D.of(0.0, 0.0, 0.0), Vectors3D.normalize(Vector3D.of(1.0, 1.0, 1.0))),
+        Ray3D.of(Vector3D.of(50.0, 50.0, 50.0), Vectors3D.normalize(Vector3D.of(-1.0, -0.5, -0.25))),
+        Ray3D.of(Vector3D.of(200.0, 200.0, 200.0), Vector3D.of(1.0, 0.0, 0.0)));
+
+    final OctTreeRaycastBufferL<Object> results = OctTreeRaycastBufferL.create();
+    for (final Ray3D ray : rays) {
+      final List<Double> expected = new ArrayList<>();
+      for (int index = 0; index < (int) tree.size(); ++index) {
+        final double distance =
+          OctTreeLContract.entryDistance(ray, tree.volumeFor(Integer.valueOf(index)));
+        if (distance < Double.POSITIVE_INFINITY) {
+          expected.add(Double.valueOf(distance));
+        }
+      }
+      Collections.sort(expected);
+
+      results.clear();
+      tree.raycast(ray, results);
+      results.sortByDistance();
+
+      Assert.assertEquals((long) expected.size(), (long) results.size());
+      final Set<Object> seen = new HashSet<>();
+      for (int index = 0; index < results.size(); ++index) {
+        final Object item = results.item(index);
+        Assert.assertTrue(seen.add(item));
+        Assert.assertEquals(tree.volumeFor(item), results.volume(index));
+        Assert.assertEquals(
+          expected.get(index).doubleValue(), results.distance(index), 0.000001);
+      }
+    }
+  }
+
+  private static void checkCounts(
+    final OctTreeLType<Object> tree,
+    final List<VolumeL> queries)
+  {
+    for (final VolumeL query : queries) {
+      final Set<Object> contained = new HashSet<>();
+      tree.containedBy(query, contained);
+      final Set<Object> overlapping = new HashSet<>();
+      tree.overlappedBy(query, overlapping);
+
+      Assert.assertEquals(
+        (long) contained.size(), tree.countContainedBy(query));
+      Assert.assertEquals(
+        (long) overlapping.size(), tree.countOverlapping(query));
+      Assert.assertEquals(
+        Boolean.valueOf(!overlapping.isEmpty()),
+        Boolean.valueOf(tree.anyOverlapping(query)));
+    }
+  }
+
+  /**
+   * Counting queries agree with the set-based queries, including after
+   * objects have been removed.
+   */
+
+  @Test
+  public final void testCountQueries()
+  {
+    final List<VolumeL> queries =
+      List.of(
+        VolumeL.of(0L, 100L, 0L, 100L, 0L, 100L),
+        VolumeL.of(0L, 50L, 0L, 50L, 0L, 50L),
+        VolumeL.of(20L, 60L, 20L, 60L, 20L, 60L),
+        VolumeL.of(14L, 46L, 14L, 46L, 14L, 46L),
+        VolumeL.of(50L, 50L, 50L, 50L, 50L, 50L),
+        VolumeL.of(49L, 50L, 49L, 50L, 49L, 50L),
+        VolumeL.of(95L, 100L, 95L, 100L, 95L, 100L),
+        VolumeL.of(200L, 300L, 200L, 300L, 200L, 300L));
+
+    for (final int leaf : new int[]{2, 8}) {
+      final OctTreeConfigurationL.Builder cb = OctTreeConfigurationL.builder();
+      cb.setVolume(VolumeL.of(0L, 100L, 0L, 100L, 0L, 100L));
+      cb.setMaximumItemsPerLeaf(leaf);
+      final OctTreeConfigurationL c = cb.build();
+
+      final OctTreeLType<Object> tree = this.create(c);
+      OctTreeLContract.insertGrid(tree);
+      Assert.assertTrue(tree.insert("point", VolumeL.of(50L, 50L, 50L, 50L, 50L, 50L)));
+      Assert.assertTrue(tree.insert("corner", VolumeL.of(100L, 100L, 100L, 100L, 100L, 100L)));
+      OctTreeLContract.checkCounts(tree, queries);
+
+      Assert.assertTrue(tree.remove("point"));
+      Assert.assertTrue(tree.remove(Integer.valueOf(0)));
+      Assert.assertTrue(tree.remove(Integer.valueOf(3)));
+      OctTreeLContract.checkCounts(tree, queries);
+
+      tree.clear();
+      Assert.assertEquals(0L, tree.countOverlapping(VolumeL.of(0L, 100L, 0L, 100L, 0L, 100L)));
+      Assert.assertFalse(tree.anyOverlapping(VolumeL.of(0L, 100L, 0L, 100L, 0L, 100L)));
+    }
+  }
+
+  private static void checkSameQueries(
+    final OctTreeLType<Object> expected,
+    final OctTreeLType<Object> tree,
+    final List<VolumeL> queries)
+  {
+    Assert.assertEquals(expected.size(), tree.size());
+    Assert.assertEquals(expected, tree);
+
+    for (final VolumeL query : queries) {
+      final Set<Object> expected_contained = new HashSet<>();
+      expected.containedBy(query, expected_contained);
+      final Set<Object> contained = new HashSet<>();
+      tree.containedBy(query, contained);
+      Assert.assertEquals(expected_contained, contained);
+
+      final Set<Object> expected_overlapping = new HashSet<>();
+      expected.overlappedBy(query, expected_overlapping);
+      final Set<Object> overlapping = new HashSet<>();
+      tree.overlappedBy(query, overlapping);
+      Assert.assertEquals(expected_overlapping, overlapping);
+    }
+    OctTreeLContract.checkCounts(tree, queries);
+
+    tree.iterateOctants(tree, (context, octant, depth) -> {
+      for (final Map.Entry<Object, VolumeL> entry : octant.objects().entrySet()) {
+        Assert.assertEquals(context.volumeFor(entry.getKey()), entry.getValue());
+        Assert.assertTrue(VolumesL.contains(octant.volume(), entry.getValue()));
+      }
+      return TreeVisitResult.RESULT_CONTINUE;
+    });
+  }
+
+  /**
+   * Bulk insertion produces a tree that holds the same objects, and answers
+   * queries in the same way, as inserting the objects one at a time.
+   */
+
+  @Test
+  public final void testInsertAll()
+  {
+    final List<VolumeL> queries =
+      List.of(
+        VolumeL.of(0L, 100L, 0L, 100L, 0L, 100L),
+        VolumeL.of(0L, 50L, 0L, 50L, 0L, 50L),
+        VolumeL.of(20L, 60L, 20L, 60L, 20L, 60L),
+        VolumeL.of(14L, 46L, 14L, 46L, 14L, 46L),
+        VolumeL.of(50L, 50L, 50L, 50L, 50L, 50L),
+        VolumeL.of(95L, 100L, 95L, 100L, 95L, 100L));
+
+    for (final int leaf : new int[]{0, 2, 8}) {
+      final OctTreeConfigurationL.Builder cb = OctTreeConfigurationL.builder();
+      cb.setVolume(VolumeL.of(0L, 100L, 0L, 100L, 0L, 100L));
+      cb.setMaximumItemsPerLeaf(leaf);
+      final OctTreeConfigurationL c = cb.build();
+
+      final OctTreeLType<Object> expected = this.create(c);
+      OctTreeLContract.insertGrid(expected);
+      Assert.assertTrue(expected.insert("point", VolumeL.of(50L, 50L, 50L, 50L, 50L, 50L)));
+
+      final Set<Object> all = new HashSet<>();
+      expected.overlappedBy(VolumeL.of(0L, 100L, 0L, 100L, 0L, 100L), all);
+      final Map<Object, VolumeL> items = new HashMap<>();
+      for (final Object item : all) {
+        items.put(item, expected.volumeFor(item));
+      }
+      items.put("outside", VolumeL.of(200L, 300L, 200L, 300L, 200L, 300L));
+
+      final OctTreeLType<Object> tree = this.create(c);
+      Assert.assertEquals(expected.size(), tree.insertAll(items));
+      Assert.assertFalse(tree.contains("outside"));
+      OctTreeLContract.checkSameQueries(expected, tree, queries);
+
+      final Map<Object, VolumeL> more = new HashMap<>();
+      more.put(Integer.valueOf(0), VolumeL.of(60L, 70L, 60L, 70L, 60L, 70L));
+      more.put("extra", VolumeL.of(1L, 2L, 1L, 2L, 1L, 2L));
+      more.put("outside", VolumeL.of(200L, 300L, 200L, 300L, 200L, 300L));
+      for (final Map.Entry<Object, VolumeL> entry : more.entrySet()) {
+        expected.insert(entry.getKey(), entry.getValue());
+      }
+
+      Assert.assertEquals(2L, tree.insertAll(more));
+      OctTreeLContract.checkSameQueries(expected, tree, queries);
+    }
+  }
+
+  /**
+   * Bulk insertion into an empty tree with no objects does nothing.
+   */
+
+  @Test
+  public final void testInsertAllEmpty()
+  {
+    final OctTreeConfigurationL.Builder cb = OctTreeConfigurationL.builder();
+    cb.setVolume(VolumeL.of(0L, 100L, 0L, 100L, 0L, 100L));
+    final OctTreeConfigurationL c = cb.build();
+
+    final OctTreeLType<Object> tree = this.create(c);
+    Assert.assertEquals(0L, tree.insertAll(Map.of()));
+    Assert.assertEquals(0L, tree.size());
+  }
 }
@@ -0,0 +1,92 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.jspatial.tests.api.octtrees;
+
+import com.io7m.jregions.core.unparameterized.volumes.VolumeD;
+import com.io7m.jspatial.api.octtrees.OctTreeRaycastBufferD;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+/**
+ * Tests for OctTreeRaycastBufferD.
+ */
+
+public final class OctTreeRaycastBufferDTest
+{
+  @Rule public final ExpectedException expected = ExpectedException.none();
+
+  /**
+   * Results survive growth and sorting with their bounds intact.
+   */
+
+  @Test
+  public void testAddSort()
+  {
+    final OctTreeRaycastBufferD<Integer> buffer = OctTreeRaycastBufferD.create();
+    final int count = 100;
+    for (int index = 0; index < count; ++index) {
+      buffer.add(
+        Integer.valueOf(index),
+        (double) ((index * 37) % count),
+        (double) index,
+        (double) (index + 1),
+        (double) index,
+        (double) (index + 2),
+        (double) index,
+        (double) (index + 3));
+    }
+
+    Assert.assertEquals((long) count, (long) buffer.size());
+    buffer.sortByDistance();
+
+    for (int index = 0; index < count; ++index) {
+      Assert.assertEquals((double) index, buffer.distance(index), 0.0);
+      final int item = buffer.item(index).intValue();
+      Assert.assertEquals((long) index, (long) ((item * 37) % count));
+      Assert.assertEquals((double) item, buffer.minimumX(index), 0.0);
+      Assert.assertEquals((double) (item + 1), buffer.maximumX(index), 0.0);
+      Assert.assertEquals((double) item, buffer.minimumY(index), 0.0);
+      Assert.assertEquals((double) (item + 2), buffer.maximumY(index), 0.0);
+      Assert.assertEquals((double) item, buffer.minimumZ(index), 0.0);
+      Assert.assertEquals((double) (item + 3), buffer.maximumZ(index), 0.0);
+      Assert.assertEquals(
+        VolumeD.of((double) item, (double) (item + 1), (double) item, (double) (item + 2), (double) item, (double) (item + 3)),
+        buffer.volume(index));
+    }
+  }
+
+  /**
+   * Clearing a buffer removes all results.
+   */
+
+  @Test
+  public void testClear()
+  {
+    final OctTreeRaycastBufferD<Integer> buffer = OctTreeRaycastBufferD.create();
+    buffer.add(Integer.valueOf(23), 1.0, (double) 0, (double) 1, (double) 0, (double) 1, (double) 0, (double) 1);
+    Assert.assertEquals(1L, (long) buffer.size());
+
+    buffer.clear();
+    Assert.assertEquals(0L, (long) buffer.size());
+
+    this.expected.expect(IndexOutOfBoundsException.class);
+    buffer.item(0);
+  }
+}
@@ -55,5 +55,7 @@ public abstract class QuadTreeConfigurationDContract
     Assert.assertEquals(2.0, c.minimumQuadrantHeight(), 0.0001);
     Assert.assertEquals(2.0, c.minimumQuadrantWidth(), 0.0001);
     Assert.assertFalse(c.trimOnRemove());
+    Assert.assertEquals(0L, (long) c.maximumItemsPerLeaf());
+    Assert.assertEquals((long) Integer.MAX_VALUE, (long) c.maximumDepth());
   }
 }
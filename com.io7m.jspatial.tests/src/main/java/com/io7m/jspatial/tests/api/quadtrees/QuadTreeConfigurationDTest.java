@@ -16,6 +16,7 @@
 
 package com.io7m.jspatial.tests.api.quadtrees;
 
+import com.io7m.jaffirm.core.PreconditionViolationException;
 import com.io7m.jregions.core.unparameterized.areas.AreaD;
 import com.io7m.jspatial.api.quadtrees.QuadTreeConfigurationD;
 import com.io7m.jspatial.api.quadtrees.QuadTreeConfigurationDType;
@@ -280,4 +281,36 @@ public final class QuadTreeConfigurationDTest extends
     Assert.assertEquals(qc0, qc2);
     Assert.assertEquals(qc1, qc2);
   }
+
+  /**
+   * Negative maximum numbers of items per leaf are rejected.
+   */
+
+  @Test
+  public void testNegativeMaximumItemsPerLeaf()
+  {
+    final AreaD area0 = AreaD.of(0.0, 100.0, 0.0, 100.0);
+    final QuadTreeConfigurationD.Builder b = QuadTreeConfigurationD.builder();
+    b.setArea(area0);
+    b.setMaximumItemsPerLeaf(-1);
+
+    this.expected.expect(PreconditionViolationException.class);
+    b.build();
+  }
+
+  /**
+   * Negative maximum depths are rejected.
+   */
+
+  @Test
+  public void testNegativeMaximumDepth()
+  {
+    final AreaD area0 = AreaD.of(0.0, 100.0, 0.0, 100.0);
+    final QuadTreeConfigurationD.Builder b = QuadTreeConfigurationD.builder();
+    b.setArea(area0);
+    b.setMaximumDepth(-1);
+
+    this.expected.expect(PreconditionViolationException.class);
+    b.build();
+  }
 }
@@ -55,5 +55,7 @@ public abstract class QuadTreeConfigurationIContract
     Assert.assertEquals(2L, (long) c.minimumQuadrantHeight());
     Assert.assertEquals(2L, (long) c.minimumQuadrantWidth());
     Assert.assertFalse(c.trimOnRemove());
+    Assert.assertEquals(0L, (long) c.maximumItemsPerLeaf());
+    Assert.assertEquals((long) Integer.MAX_VALUE, (long) c.maximumDepth());
   }
 }
@@ -16,6 +16,7 @@
 
 package com.io7m.jspatial.tests.api.quadtrees;
 
+import com.io7m.jaffirm.core.PreconditionViolationException;
 import com.io7m.jregions.core.unparameterized.areas.AreaI;
 import com.io7m.jspatial.api.quadtrees.QuadTreeConfigurationI;
 import com.io7m.jspatial.api.quadtrees.QuadTreeConfigurationIType;
@@ -282,4 +283,36 @@ public final class QuadTreeConfigurationITest extends
     Assert.assertEquals(qc0, qc2);
     Assert.assertEquals(qc1, qc2);
   }
+
+  /**
+   * Negative maximum numbers of items per leaf are rejected.
+   */
+
+  @Test
+  public void testNegativeMaximumItemsPerLeaf()
+  {
+    final AreaI area0 = AreaI.of(0, 100, 0, 100);
+    final QuadTreeConfigurationI.Builder b = QuadTreeConfigurationI.builder();
+    b.setArea(area0);
+    b.setMaximumItemsPerLeaf(-1);
+
+    this.expected.expect(PreconditionViolationException.class);
+    b.build();
+  }
+
+  /**
+   * Negative maximum depths are rejected.
+   */
+
+  @Test
+  public void testNegativeMaximumDepth()
+  {
+    final AreaI area0 = AreaI.of(0, 100, 0, 100);
+    final QuadTreeConfigurationI.Builder b = QuadTreeConfigurationI.builder();
+    b.setArea(area0);
+    b.setMaximumDepth(-1);
+
+    this.expected.expect(PreconditionViolationException.class);
+    b.build();
+  }
 }
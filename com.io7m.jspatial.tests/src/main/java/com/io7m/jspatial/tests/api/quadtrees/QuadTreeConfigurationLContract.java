@@ -55,5 +55,7 @@ public abstract class QuadTreeConfigurationLContract
     Assert.assertEquals(2L, c.minimumQuadrantHeight());
     Assert.assertEquals(2L, c.minimumQuadrantWidth());
     Assert.assertFalse(c.trimOnRemove());
+    Assert.assertEquals(0L, (long) c.maximumItemsPerLeaf());
+    Assert.assertEquals((long) Integer.MAX_VALUE, (long) c.maximumDepth());
   }
 }
@@ -16,12 +16,14 @@
 
 package com.io7m.jspatial.tests.api.quadtrees;
 
+import com.io7m.jaffirm.core.PreconditionViolationException;
 import com.io7m.jregions.core.unparameterized.areas.AreaD;
 import com.io7m.jregions.core.unparameterized.areas.AreasD;
 import com.io7m.jspatial.api.Ray2D;
 import com.io7m.jspatial.api.TreeVisitResult;
 import com.io7m.jspatial.api.quadtrees.QuadTreeConfigurationD;
 import com.io7m.jspatial.api.quadtrees.QuadTreeDType;
+import com.io7m.jspatial.api.quadtrees.QuadTreeRaycastBufferD;
 import com.io7m.jspatial.api.quadtrees.QuadTreeRaycastResultD;
 import com.io7m.jspatial.tests.api.AreaDContainedGenerator;
 import com.io7m.jtensors.core.unparameterized.vectors.Vector2D;
@@ -32,14 +34,22 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.Random;
+import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
 /**
  * Tree contract.
@@ -1412,4 +1422,948 @@ public abstract class QuadTreeDContract
     Assert.assertTrue(tree.insert(item, item_area));
     Assert.assertEquals(1L, (long) QuadTreeDContract.countQuadrants(tree));
   }
+
+  /**
+   * Leaves are only split when they hold more than the configured number of
+   * items, and their items are redistributed when they are split.
+   */
+
+  @Test
+  public final void testInsertCapacitySplit()
+  {
+    final AreaD container = AreaD.of(0.0, 100.0, 0.0, 100.0);
+
+    final QuadTreeConfigurationD.Builder cb = QuadTreeConfigurationD.builder();
+    cb.setArea(container);
+    cb.setMaximumItemsPerLeaf(3);
+    final QuadTreeConfigurationD c = cb.build();
+
+    final QuadTreeDType<Object> tree = this.create(c);
+
+    final Integer central = Integer.valueOf(0);
+    Assert.assertTrue(tree.insert(central, AreaD.of(40.0, 60.0, 40.0, 60.0)));
+    Assert.assertTrue(tree.insert(Integer.valueOf(1), AreaD.of(1.0, 2.0, 1.0, 2.0)));
+    Assert.assertTrue(tree.insert(Integer.valueOf(2), AreaD.of(98.0, 99.0, 1.0, 2.0)));
+    Assert.assertEquals(1L, (long) QuadTreeDContract.countQuadrants(tree));
+
+    Assert.assertTrue(tree.insert(
+      Integer.valueOf(3),
+      AreaD.of(98.0, 99.0, 98.0, 99.0)));
+    Assert.assertEquals(5L, (long) QuadTreeDContract.countQuadrants(tree));
+
+    tree.iterateQuadrants(Integer.valueOf(0), (context, quadrant, depth) -> {
+      if (depth == 0L) {
+        Assert.assertEquals(1L, (long) quadrant.objects().size());
+        Assert.assertTrue(quadrant.objects().containsKey(central));
+      } else {
+        Assert.assertTrue(quadrant.objects().size() <= 1);
+      }
+      return TreeVisitResult.RESULT_CONTINUE;
+    });
+
+    for (int index = 0; index <= 3; ++index) {
+      Assert.assertTrue(tree.remove(Integer.valueOf(index)));
+    }
+    Assert.assertTrue(tree.isEmpty());
+  }
+
+  /**
+   * Quadrants at the maximum depth are not split.
+   */
+
+  @Test
+  public final void testInsertMaximumDepth()
+  {
+    final AreaD container = AreaD.of(0.0, 100.0, 0.0, 100.0);
+
+    final QuadTreeConfigurationD.Builder cb = QuadTreeConfigurationD.builder();
+    cb.setArea(container);
+    cb.setMaximumDepth(1);
+    final QuadTreeConfigurationD c = cb.build();
+
+    final QuadTreeDType<Object> tree = this.create(c);
+
+    final Integer item = Integer.valueOf(0);
+    Assert.assertTrue(tree.insert(item, AreaD.of(1.0, 2.0, 1.0, 2.0)));
+    Assert.assertEquals(5L, (long) QuadTreeDContract.countQuadrants(tree));
+
+    tree.iterateQuadrants(Integer.valueOf(0), (context, quadrant, depth) -> {
+      if (quadrant.objects().containsKey(item)) {
+        Assert.assertEquals(1L, depth);
+      }
+      return TreeVisitResult.RESULT_CONTINUE;
+    });
+  }
+
+  /**
+   * Inserting an object that is already in the tree moves it.
+   */
+
+  @Test
+  public final void testInsertExistingMoves()
+  {
+    final AreaD container = AreaD.of(0.0, 100.0, 0.0, 100.0);
+
+    final QuadTreeConfigurationD.Builder cb = QuadTreeConfigurationD.builder();
+    cb.setArea(container);
+    cb.setTrimOnRemove(true);
+    final QuadTreeConfigurationD c = cb.build();
+
+    final QuadTreeDType<Object> tree = this.create(c);
+    final QuadTreeDType<Object> expected = this.create(c);
+
+    final Integer item0 = Integer.valueOf(0);
+    final Integer item1 = Integer.valueOf(1);
+    final AreaD bounds0 = AreaD.of(1.0, 2.0, 1.0, 2.0);
+    final AreaD bounds1 = AreaD.of(98.0, 99.0, 98.0, 99.0);
+    final AreaD bounds2 = AreaD.of(40.0, 45.0, 40.0, 45.0);
+
+    Assert.assertTrue(tree.insert(item0, bounds0));
+    Assert.assertTrue(tree.insert(item1, bounds1));
+    Assert.assertTrue(tree.insert(item0, bounds2));
+
+    Assert.assertEquals(2L, tree.size());
+    Assert.assertEquals(bounds2, tree.areaFor(item0));
+
+    final Set<Object> found = new HashSet<>();
+    tree.overlappedBy(bounds0, found);
+    Assert.assertTrue(found.isEmpty());
+    tree.overlappedBy(bounds2, found);
+    Assert.assertEquals(Collections.singleton(item0), found);
+
+    Assert.assertTrue(expected.insert(item1, bounds1));
+    Assert.assertTrue(expected.insert(item0, bounds2));
+    Assert.assertEquals(expected, tree);
+    Assert.assertEquals((long) expected.hashCode(), (long) tree.hashCode());
+    Assert.assertEquals(
+      (long) QuadTreeDContract.countQuadrants(expected),
+      (long) QuadTreeDContract.countQuadrants(tree));
+
+    Assert.assertFalse(tree.insert(item0, AreaD.of(-10.0, 200.0, -10.0, 200.0)));
+    Assert.assertFalse(tree.contains(item0));
+    Assert.assertEquals(1L, tree.size());
+  }
+
+  private static void insertGrid(
+    final QuadTreeDType<Object> tree)
+  {
+    int index = 0;
+    for (int x = 0; x < 3; ++x) {
+      for (int y = 0; y < 3; ++y) {
+        final AreaD bounds = AreaD.of(
+          (double) (x * 30 + 5),
+          (double) (x * 30 + 15),
+          (double) (y * 30 + 5),
+          (double) (y * 30 + 15));
+        Assert.assertTrue(tree.insert(Integer.valueOf(index), bounds));
+        ++index;
+      }
+    }
+
+    final AreaD straddling =
+      AreaD.of(45.0, 55.0, 45.0, 55.0);
+    Assert.assertTrue(tree.insert(Integer.valueOf(index), straddling));
+  }
+
+  /**
+   * The visitor queries find the same objects as the set-based queries.
+   */
+
+  @Test
+  public final void testVisitorQueries()
+  {
+    final QuadTreeConfigurationD.Builder cb = QuadTreeConfigurationD.builder();
+    cb.setArea(AreaD.of(0.0, 100.0, 0.0, 100.0));
+    final QuadTreeConfigurationD c = cb.build();
+
+    final QuadTreeDType<Object> tree = this.create(c);
+    QuadTreeDContract.insertGrid(tree);
+
+    final AreaD query = AreaD.of(0.0, 50.0, 0.0, 50.0);
+
+    {
+      final Set<Object> expected = new HashSet<>();
+      tree.containedBy(query, expected);
+
+      final Set<Object> received = new HashSet<>();
+      Assert.assertEquals(
+        TreeVisitResult.RESULT_CONTINUE,
+        tree.containedBy(query, received, (context, item, item_area) -> {
+          Assert.assertEquals(tree.areaFor(item), item_area);
+          Assert.assertTrue(context.add(item));
+          return TreeVisitResult.RESULT_CONTINUE;
+        }));
+
+      Assert.assertEquals(4L, (long) received.size());
+      Assert.assertEquals(expected, received);
+    }
+
+    {
+      final Set<Object> expected = new HashSet<>();
+      tree.overlappedBy(query, expected);
+
+      final Set<Object> received = new HashSet<>();
+      Assert.assertEquals(
+        TreeVisitResult.RESULT_CONTINUE,
+        tree.overlappedBy(query, received, (context, item, item_area) -> {
+          Assert.assertEquals(tree.areaFor(item), item_area);
+          Assert.assertTrue(context.add(item));
+          return TreeVisitResult.RESULT_CONTINUE;
+        }));
+
+      Assert.assertEquals(5L, (long) received.size());
+      Assert.assertEquals(expected, received);
+    }
+
+    {
+      final Ray2D ray = Ray2D.of(Vector2D.of(0.0, 0.0), Vector2D.of(1.0, 1.0));
+      final SortedSet<QuadTreeRaycastResultD<Object>> expected = new TreeSet<>();
+      tree.raycast(ray, expected);
+
+      final Map<Object, Double> received = new HashMap<>();
+      Assert.assertEquals(
+        TreeVisitResult.RESULT_CONTINUE,
+        tree.raycast(ray, received, (context, item, item_area, distance) -> {
+          Assert.assertEquals(tree.areaFor(item), item_area);
+          Assert.assertNull(context.put(item, Double.valueOf(distance)));
+          return TreeVisitResult.RESULT_CONTINUE;
+        }));
+
+      Assert.assertEquals(4L, (long) received.size());
+      Assert.assertEquals((long) expected.size(), (long) received.size());
+      for (final QuadTreeRaycastResultD<Object> r : expected) {
+        Assert.assertEquals(r.distance(), received.get(r.item()).doubleValue(), 0.0);
+      }
+    }
+  }
+
+  /**
+   * The visitor queries stop as soon as the visitor asks them to.
+   */
+
+  @Test
+  public final void testVisitorQueriesTerminate()
+  {
+    final QuadTreeConfigurationD.Builder cb = QuadTreeConfigurationD.builder();
+    cb.setArea(AreaD.of(0.0, 100.0, 0.0, 100.0));
+    final QuadTreeConfigurationD c = cb.build();
+
+    final QuadTreeDType<Object> tree = this.create(c);
+    QuadTreeDContract.insertGrid(tree);
+
+    final AreaD query = AreaD.of(0.0, 50.0, 0.0, 50.0);
+
+    {
+      final AtomicInteger calls = new AtomicInteger(0);
+      Assert.assertEquals(
+        TreeVisitResult.RESULT_TERMINATE,
+        tree.containedBy(tree.bounds(), calls, (context, item, item_area) -> {
+          context.incrementAndGet();
+          return TreeVisitResult.RESULT_TERMINATE;
+        }));
+      Assert.assertEquals(1L, (long) calls.get());
+    }
+
+    {
+      final AtomicInteger calls = new AtomicInteger(0);
+      Assert.assertEquals(
+        TreeVisitResult.RESULT_TERMINATE,
+        tree.containedBy(query, calls, (context, item, item_area) -> {
+          context.incrementAndGet();
+          return TreeVisitResult.RESULT_TERMINATE;
+        }));
+      Assert.assertEquals(1L, (long) calls.get());
+    }
+
+    {
+      final AtomicInteger calls = new AtomicInteger(0);
+      Assert.assertEquals(
+        TreeVisitResult.RESULT_TERMINATE,
+        tree.overlappedBy(query, calls, (context, item, item_area) -> {
+          context.incrementAndGet();
+          return TreeVisitResult.RESULT_TERMINATE;
+        }));
+      Assert.assertEquals(1L, (long) calls.get());
+    }
+
+    {
+      final AtomicInteger calls = new AtomicInteger(0);
+      Assert.assertEquals(
+        TreeVisitResult.RESULT_TERMINATE,
+        tree.raycast(Ray2D.of(Vector2D.of(0.0, 0.0), Vector2D.of(1.0, 1.0)), calls, (context, item, item_area, distance) -> {
+          context.incrementAndGet();
+          return TreeVisitResult.RESULT_TERMINATE;
+        }));
+      Assert.assertEquals(1L, (long) calls.get());
+    }
+  }
+
+  private static double distanceTo(
+    final Vector2D point,
+    final AreaD area)
+  {
+    final double dx = Math.max(
+      0.0,
+      Math.max(area.minimumX() - point.x(), point.x() - area.maximumX()));
+    final double dy = Math.max(
+      0.0,
+      Math.max(area.minimumY() - point.y(), point.y() - area.maximumY()));
+    return Math.sqrt(dx * dx + dy * dy);
+  }
+
+  /**
+   * Nearest neighbour queries return the nearest objects in order of distance.
+   */
+
+  @Test
+  public final void testNearest()
+  {
+    final QuadTreeConfigurationD.Builder cb = QuadTreeConfigurationD.builder();
+    cb.setArea(AreaD.of(0.0, 100.0, 0.0, 100.0));
+    cb.setMaximumItemsPerLeaf(2);
+    final QuadTreeConfigurationD c = cb.build();
+
+    final QuadTreeDType<Object> tree = this.create(c);
+    QuadTreeDContract.insertGrid(tree);
+
+    final List<Vector2D> points =
+      List.of(
+        Vector2D.of(0.0, 0.0),
+        Vector2D.of(50.0, 50.0),
+        Vector2D.of(99.0, 12.0),
+        Vector2D.of(-20.0, 150.0));
+
+    for (final Vector2D point : points) {
+      final List<Double> expected = new ArrayList<>();
+      for (int index = 0; index < (int) tree.size(); ++index) {
+        final AreaD bounds = tree.areaFor(Integer.valueOf(index));
+        expected.add(Double.valueOf(QuadTreeDContract.distanceTo(point, bounds)));
+      }
+      Collections.sort(expected);
+
+      for (final int count : new int[]{0, 1, 5, (int) tree.size() + 10}) {
+        final Set<Object> seen = new HashSet<>();
+        final List<Double> received = new ArrayList<>();
+        Assert.assertEquals(
+          TreeVisitResult.RESULT_CONTINUE,
+          tree.nearest(point, count, received, (context, item, item_area, distance) -> {
+            Assert.assertTrue(seen.add(item));
+            Assert.assertEquals(tree.areaFor(item), item_area);
+            Assert.assertEquals(
+              QuadTreeDContract.distanceTo(point, item_area), distance, 0.000001);
+            context.add(Double.valueOf(distance));
+            return TreeVisitResult.RESULT_CONTINUE;
+          }));
+
+        final int expected_count = Math.min(count, expected.size());
+        Assert.assertEquals((long) expected_count, (long) received.size());
+        for (int index = 0; index < expected_count; ++index) {
+          Assert.assertEquals(
+            expected.get(index).doubleValue(),
+            received.get(index).doubleValue(),
+            0.000001);
+        }
+      }
+    }
+  }
+
+  /**
+   * Nearest neighbour queries stop as soon as the visitor asks them to.
+   */
+
+  @Test
+  public final void testNearestTerminate()
+  {
+    final QuadTreeConfigurationD.Builder cb = QuadTreeConfigurationD.builder();
+    cb.setArea(AreaD.of(0.0, 100.0, 0.0, 100.0));
+    final QuadTreeConfigurationD c = cb.build();
+
+    final QuadTreeDType<Object> tree = this.create(c);
+    QuadTreeDContract.insertGrid(tree);
+
+    final Vector2D point = Vector2D.of(50.0, 50.0);
+    final AtomicInteger calls = new AtomicInteger(0);
+    Assert.assertEquals(
+      TreeVisitResult.RESULT_TERMINATE,
+      tree.nearest(point, 10, calls, (context, item, item_area, distance) -> {
+        context.incrementAndGet();
+        return TreeVisitResult.RESULT_TERMINATE;
+      }));
+    Assert.assertEquals(1L, (long) calls.get());
+  }
+
+  private static double entryDistance(
+    final Ray2D ray,
+    final AreaD area)
+  {
+    return ray.entryDistanceArea(
+      area.minimumX(),
+      area.minimumY(),
+      area.maximumX(),
+      area.maximumY());
+  }
+
+  /**
+   * First-hit raycasts return the objects the ray enters first, in order of distance.
+   */
+
+  @Test
+  public final void testRaycastFirst()
+  {
+    final QuadTreeConfigurationD.Builder cb = QuadTreeConfigurationD.builder();
+    cb.setArea(AreaD.of(0.0, 100.0, 0.0, 100.0));
+    cb.setMaximumItemsPerLeaf(2);
+    final QuadTreeConfigurationD c = cb.build();
+
+    final QuadTreeDType<Object> tree = this.create(c);
+    QuadTreeDContract.insertGrid(tree);
+
+    final List<Ray2D> rays =
+      List.of(
+        Ray2D.of(Vector2D.of(-10.0, 10.0), Vector2D.of(1.0, 0.0)),
+        Ray2D.of(Vector2D.of(0.0, 0.0), Vectors2D.normalize(Vector2D.of(1.0, 1.0))),
+        Ray2D.of(Vector2D.of(50.0, 50.0), Vectors2D.normalize(Vector2D.of(-1.0, -0.5))),
+        Ray2D.of(Vector2D.of(99.0, 12.0), Vectors2D.normalize(Vector2D.of(-1.0, 0.2))),
+        Ray2D.of(Vector2D.of(200.0, 200.0), Vector2D.of(1.0, 0.0)));
+
+    for (final Ray2D ray : rays) {
+      final List<Double> expected = new ArrayList<>();
+      for (int index = 0; index < (int) tree.size(); ++index) {
+        final double distance =
+          QuadTreeDContract.entryDistance(ray, tree.areaFor(Integer.valueOf(index)));
+        if (distance < Double.POSITIVE_INFINITY) {
+          expected.add(Double.valueOf(distance));
+        }
+      }
+      Collections.sort(expected);
+
+      final Optional<QuadTreeRaycastResultD<Object>> first = tree.raycastFirst(ray);
+      Assert.assertEquals(Boolean.valueOf(!expected.isEmpty()), Boolean.valueOf(first.isPresent()));
+      first.ifPresent(result -> {
+        Assert.assertEquals(tree.areaFor(result.item()), result.area());
+        Assert.assertEquals(expected.get(0).doubleValue(), result.distance(), 0.000001);
+      });
+
+      for (final int count : new int[]{0, 1, 5, (int) tree.size() + 10}) {
+        final Set<Object> seen = new HashSet<>();
+        final List<Double> received = new ArrayList<>();
+        Assert.assertEquals(
+          TreeVisitResult.RESULT_CONTINUE,
+          tree.raycastFirst(ray, count, received, (context, item, item_area, distance) -> {
+            Assert.assertTrue(seen.add(item));
+            Assert.assertEquals(tree.areaFor(item), item_area);
+            Assert.assertEquals(
+              QuadTreeDContract.entryDistance(ray, item_area), distance, 0.000001);
+            context.add(Double.valueOf(distance));
+            return TreeVisitResult.RESULT_CONTINUE;
+          }));
+
+        final int expected_count = Math.min(count, expected.size());
+        Assert.assertEquals((long) expected_count, (long) received.size());
+        for (int index = 0; index < expected_count; ++index) {
+          Assert.assertEquals(
+            expected.get(index).doubleValue(),
+            received.get(index).doubleValue(),
+            0.000001);
+        }
+      }
+    }
+  }
+
+  /**
+   * First-hit raycasts stop as soon as the visitor asks them to.
+   */
+
+  @Test
+  public final void testRaycastFirstTerminate()
+  {
+    final QuadTreeConfigurationD.Builder cb = QuadTreeConfigurationD.builder();
+    cb.setArea(AreaD.of(0.0, 100.0, 0.0, 100.0));
+    final QuadTreeConfigurationD c = cb.build();
+
+    final QuadTreeDType<Object> tree = this.create(c);
+    QuadTreeDContract.insertGrid(tree);
+
+    final Ray2D ray = Ray2D.of(Vector2D.of(0.0, 0.0), Vectors2D.normalize(Vector2D.of(1.0, 1.0)));
+    final AtomicInteger calls = new AtomicInteger(0);
+    Assert.assertEquals(
+      TreeVisitResult.RESULT_TERMINATE,
+      tree.raycastFirst(ray, 10, calls, (context, item, item_area, distance) -> {
+        context.incrementAndGet();
+        return TreeVisitResult.RESULT_TERMINATE;
+      }));
+    Assert.assertEquals(1L, (long) calls.get());
+  }
+
+  /**
+   * Buffered raycasts find every intersected object, at the same distances as first-hit raycasts.
+   */
+
+  @Test
+  public final void testRaycastBuffer()
+  {
+    final QuadTreeConfigurationD.Builder cb = QuadTreeConfigurationD.builder();
+    cb.setArea(AreaD.of(0.0, 100.0, 0.0, 100.0));
+    cb.setMaximumItemsPerLeaf(2);
+    final QuadTreeConfigurationD c = cb.build();
+
+    final QuadTreeDType<Object> tree = this.create(c);
+    QuadTreeDContract.insertGrid(tree);
+
+    final List<Ray2D> rays =
+      List.of(
+        Ray2D.of(Vector2D.of(-10.0, 10.0), Vector2D.of(1.0, 0.0)),
+        Ray2D.of(Vector2D.of(0.0, 0.0), Vectors2D.normalize(Vector2D.of(1.0, 1.0))),
+        Ray2D.of(Vector2D.of(50.0, 50.0), Vectors2D.normalize(Vector2D.of(-1.0, -0.5))),
+        Ray2D.of(Vector2D.of(200.0, 200.0), Vector2D.of(1.0, 0.0)));
+
+    final QuadTreeRaycastBufferD<Object> results = QuadTreeRaycastBufferD.create();
+    for (final Ray2D ray : rays) {
+      final List<Double> expected = new ArrayList<>();
+      for (int index = 0; index < (int) tree.size(); ++index) {
+        final double distance =
+          QuadTreeDContract.entryDistance(ray, tree.areaFor(Integer.valueOf(index)));
+        if (distance < Double.POSITIVE_INFINITY) {
+          expected.add(Double.valueOf(distance));
+        }
+      }
+      Collections.sort(expected);
+
+      results.clear();
+      tree.raycast(ray, results);
+      results.sortByDistance();
+
+      Assert.assertEquals((long) expected.size(), (long) results.size());
+      final Set<Object> seen = new HashSet<>();
+      for (int index = 0; index < results.size(); ++index) {
+        final Object item = results.item(index);
+        Assert.assertTrue(seen.add(item));
+        Assert.assertEquals(tree.areaFor(item), results.area(index));
+        Assert.assertEquals(
+          expected.get(index).doubleValue(), results.distance(index), 0.000001);
+      }
+    }
+  }
+
+  private static void checkCounts(
+    final QuadTreeDType<Object> tree,
+    final List<AreaD> queries)
+  {
+    for (final AreaD query : queries) {
+      final Set<Object> contained = new HashSet<>();
+      tree.containedBy(query, contained);
+      final Set<Object> overlapping = new HashSet<>();
+      tree.overlappedBy(query, overlapping);
+
+      Assert.assertEquals(
+        (long) contained.size(), tree.countContainedBy(query));
+      Assert.assertEquals(
+        (long) overlapping.size(), tree.countOverlapping(query));
+      Assert.assertEquals(
+        Boolean.valueOf(!overlapping.isEmpty()),
+        Boolean.valueOf(tree.anyOverlapping(query)));
+    }
+  }
+
+  /**
+   * Counting queries agree with the set-based queries, including after
+   * objects have been removed.
+   */
+
+  @Test
+  public final void testCountQueries()
+  {
+    final List<AreaD> queries =
+      List.of(
+        AreaD.of(0.0, 100.0, 0.0, 100.0),
+        AreaD.of(0.0, 50.0, 0.0, 50.0),
+        AreaD.of(20.0, 60.0, 20.0, 60.0),
+        AreaD.of(14.0, 46.0, 14.0, 46.0),
+        AreaD.of(50.0, 50.0, 50.0, 50.0),
+        AreaD.of(49.0, 50.0, 49.0, 50.0),
+        AreaD.of(95.0, 100.0, 95.0, 100.0),
+        AreaD.of(200.0, 300.0, 200.0, 300.0));
+
+    for (final int leaf : new int[]{2, 8}) {
+      final QuadTreeConfigurationD.Builder cb = QuadTreeConfigurationD.builder();
+      cb.setArea(AreaD.of(0.0, 100.0, 0.0, 100.0));
+      cb.setMaximumItemsPerLeaf(leaf);
+      final QuadTreeConfigurationD c = cb.build();
+
+      final QuadTreeDType<Object> tree = this.create(c);
+      QuadTreeDContract.insertGrid(tree);
+      Assert.assertTrue(tree.insert("point", AreaD.of(50.0, 50.0, 50.0, 50.0)));
+      Assert.assertTrue(tree.insert("corner", AreaD.of(100.0, 100.0, 100.0, 100.0)));
+      QuadTreeDContract.checkCounts(tree, queries);
+
+      Assert.assertTrue(tree.remove("point"));
+      Assert.assertTrue(tree.remove(Integer.valueOf(0)));
+      Assert.assertTrue(tree.remove(Integer.valueOf(3)));
+      QuadTreeDContract.checkCounts(tree, queries);
+
+      tree.clear();
+      Assert.assertEquals(0L, tree.countOverlapping(AreaD.of(0.0, 100.0, 0.0, 100.0)));
+      Assert.assertFalse(tree.anyOverlapping(AreaD.of(0.0, 100.0, 0.0, 100.0)));
+    }
+  }
+
+  private static void checkSameQueries(
+    final QuadTreeDType<Object> expected,
+    final QuadTreeDType<Object> tree,
+    final List<AreaD> queries)
+  {
+    Assert.assertEquals(expected.size(), tree.size());
+    Assert.assertEquals(expected, tree);
+
+    for (final AreaD query : queries) {
+      final Set<Object> expected_contained = new HashSet<>();
+      expected.containedBy(query, expected_contained);
+      final Set<Object> contained = new HashSet<>();
+      tree.containedBy(query, contained);
+      Assert.assertEquals(expected_contained, contained);
+
+      final Set<Object> expected_overlapping = new HashSet<>();
+      expected.overlappedBy(query, expected_overlapping);
+      final Set<Object> overlapping = new HashSet<>();
+      tree.overlappedBy(query, overlapping);
+      Assert.assertEquals(expected_overlapping, overlapping);
+    }
+    QuadTreeDContract.checkCounts(tree, queries);
+
+    tree.iterateQuadrants(tree, (context, quadrant, depth) -> {
+      for (final Map.Entry<Object, AreaD> entry : quadrant.objects().entrySet()) {
+        Assert.assertEquals(context.areaFor(entry.getKey()), entry.getValue());
+        Assert.assertTrue(AreasD.contains(quadrant.area(), entry.getValue()));
+      }
+      return TreeVisitResult.RESULT_CONTINUE;
+    });
+  }
+
+  /**
+   * Bulk insertion produces a tree that holds the same objects, and answers
+   * queries in the same way, as inserting the objects one at a time.
+   */
+
+  @Test
+  public final void testInsertAll()
+  {
+    final List<AreaD> queries =
+      List.of(
+        AreaD.of(0.0, 100.0, 0.0, 100.0),
+        AreaD.of(0.0, 50.0, 0.0, 50.0),
+        AreaD.of(20.0, 60.0, 20.0, 60.0),
+        AreaD.of(14.0, 46.0, 14.0, 46.0),
+        AreaD.of(50.0, 50.0, 50.0, 50.0),
+        AreaD.of(95.0, 100.0, 95.0, 100.0));
+
+    for (final int leaf : new int[]{0, 2, 8}) {
+      final QuadTreeConfigurationD.Builder cb = QuadTreeConfigurationD.builder();
+      cb.setArea(AreaD.of(0.0, 100.0, 0.0, 100.0));
+      cb.setMaximumItemsPerLeaf(leaf);
+      final QuadTreeConfigurationD c = cb.build();
+
+      final QuadTreeDType<Object> expected = this.create(c);
+      QuadTreeDContract.insertGrid(expected);
+      Assert.assertTrue(expected.insert("point", AreaD.of(50.0, 50.0, 50.0, 50.0)));
+
+      final Set<Object> all = new HashSet<>();
+      expected.overlappedBy(AreaD.of(0.0, 100.0, 0.0, 100.0), all);
+      final Map<Object, AreaD> items = new HashMap<>();
+      for (final Object item : all) {
+        items.put(item, expected.areaFor(item));
+      }
+      items.put("outside", AreaD.of(200.0, 300.0, 200.0, 300.0));
+
+      final QuadTreeDType<Object> tree = this.create(c);
+      Assert.assertEquals(expected.size(), tree.insertAll(items));
+      Assert.assertFalse(tree.contains("outside"));
+      QuadTreeDContract.checkSameQueries(expected, tree, queries);
+
+      final Map<Object, AreaD> more = new HashMap<>();
+      more.put(Integer.valueOf(0), AreaD.of(60.0, 70.0, 60.0, 70.0));
+      more.put("extra", AreaD.of(1.0, 2.0, 1.0, 2.0));
+      more.put("outside", AreaD.of(200.0, 300.0, 200.0, 300.0));
+      for (final Map.Entry<Object, AreaD> entry : more.entrySet()) {
+        expected.insert(entry.getKey(), entry.getValue());
+      }
+
+      Assert.assertEquals(2L, tree.insertAll(more));
+      QuadTreeDContract.checkSameQueries(expected, tree, queries);
+    }
+  }
+
+  /**
+   * Bulk insertion into an empty tree with no objects does nothing.
+   */
+
+  @Test
+  public final void testInsertAllEmpty()
+  {
+    final QuadTreeConfigurationD.Builder cb = QuadTreeConfigurationD.builder();
+    cb.setArea(AreaD.of(0.0, 100.0, 0.0, 100.0));
+    final QuadTreeConfigurationD c = cb.build();
+
+    final QuadTreeDType<Object> tree = this.create(c);
+    Assert.assertEquals(0L, tree.insertAll(Map.of()));
+    Assert.assertEquals(0L, tree.size());
+  }
+
+  /**
+   * Parallel queries return the same results as sequential queries.
+   */
+
+  @Test
+  public final void testParallelQueries()
+  {
+    final AreaD container = AreaD.of(-512.0, 512.0, -512.0, 512.0);
+    final QuadTreeConfigurationD.Builder cb = QuadTreeConfigurationD.builder();
+    cb.setArea(container);
+    cb.setMaximumItemsPerLeaf(8);
+    final QuadTreeConfigurationD c = cb.build();
+
+    /*
+     * Use enough small objects that the tree contains subtrees large enough
+     * to be divided between tasks.
+     */
+
+    final QuadTreeDType<Integer> tree = this.create(c);
+    final Random random = new Random(0L);
+    for (int index = 0; index < 20000; ++index) {
+      final double x = -512.0 + random.nextDouble() * 1016.0;
+      final double y = -512.0 + random.nextDouble() * 1016.0;
+      final AreaD area =
+        AreaD.of(x, x + random.nextDouble() * 8.0, y, y + random.nextDouble() * 8.0);
+      Assert.assertTrue(tree.insert(Integer.valueOf(index), area));
+    }
+
+    final Generator<AreaD> gen = new AreaDContainedGenerator(container);
+    final ForkJoinPool pool = new ForkJoinPool(4);
+    try {
+      for (int query = 0; query < 20; ++query) {
+        final AreaD target = query == 0 ? container : gen.next();
+
+        final Set<Integer> expected_contained = new HashSet<>();
+        final Set<Integer> received_contained = new HashSet<>();
+        tree.containedBy(target, expected_contained);
+        tree.containedByParallel(target, received_contained, pool);
+        Assert.assertEquals(expected_contained, received_contained);
+
+        final Set<Integer> expected_overlapped = new HashSet<>();
+        final Set<Integer> received_overlapped = new HashSet<>();
+        tree.overlappedBy(target, expected_overlapped);
+        tree.overlappedByParallel(target, received_overlapped, pool);
+        Assert.assertEquals(expected_overlapped, received_overlapped);
+
+        final Ray2D ray = Ray2D.of(
+          Vector2D.of(target.minimumX(), target.minimumY()),
+          Vector2D.of(1.0, 0.75));
+        final SortedSet<QuadTreeRaycastResultD<Integer>> expected_hits = new TreeSet<>();
+        final SortedSet<QuadTreeRaycastResultD<Integer>> received_hits = new TreeSet<>();
+        tree.raycast(ray, expected_hits);
+        tree.raycastParallel(ray, received_hits, pool);
+        Assert.assertEquals(expected_hits.size(), received_hits.size());
+        final Iterator<QuadTreeRaycastResultD<Integer>> received_iter = received_hits.iterator();
+        for (final QuadTreeRaycastResultD<Integer> hit : expected_hits) {
+          Assert.assertEquals(hit.distance(), received_iter.next().distance(), 0.0);
+        }
+      }
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  /**
+   * Streams return the same objects as the corresponding queries, whether
+   * sequential or parallel.
+   */
+
+  @Test
+  public final void testStreams()
+  {
+    final AreaD container = AreaD.of(-512.0, 512.0, -512.0, 512.0);
+    final QuadTreeConfigurationD.Builder cb = QuadTreeConfigurationD.builder();
+    cb.setArea(container);
+    cb.setMaximumItemsPerLeaf(8);
+    final QuadTreeConfigurationD c = cb.build();
+
+    final QuadTreeDType<Integer> tree = this.create(c);
+    Assert.assertEquals(0L, tree.streamAll().count());
+    Assert.assertEquals(0L, tree.streamOverlapping(container).count());
+
+    final Set<Integer> all = new HashSet<>();
+    final Random random = new Random(0L);
+    for (int index = 0; index < 20000; ++index) {
+      final double x = -512.0 + random.nextDouble() * 1016.0;
+      final double y = -512.0 + random.nextDouble() * 1016.0;
+      final AreaD area =
+        AreaD.of(x, x + random.nextDouble() * 8.0, y, y + random.nextDouble() * 8.0);
+      final Integer item = Integer.valueOf(index);
+      Assert.assertTrue(tree.insert(item, area));
+      all.add(item);
+    }
+
+    Assert.assertEquals(20000L, tree.streamAll().spliterator().getExactSizeIfKnown());
+    Assert.assertEquals(20000L, tree.streamAll().count());
+    Assert.assertEquals(20000L, tree.streamAll().parallel().count());
+    Assert.assertEquals(all, tree.streamAll().collect(Collectors.toSet()));
+    Assert.assertEquals(all, tree.streamAll().parallel().collect(Collectors.toSet()));
+
+    final Generator<AreaD> gen = new AreaDContainedGenerator(container);
+    for (int query = 0; query < 20; ++query) {
+      final AreaD target = query == 0 ? container : gen.next();
+
+      final Set<Integer> expected = new HashSet<>();
+      tree.overlappedBy(target, expected);
+      Assert.assertEquals(
+        expected, tree.streamOverlapping(target).collect(Collectors.toSet()));
+      Assert.assertEquals(
+        expected, tree.streamOverlapping(target).parallel().collect(Collectors.toSet()));
+      Assert.assertEquals(
+        (long) expected.size(), tree.streamOverlapping(target).parallel().count());
+    }
+  }
+
+  /**
+   * A batch of queries returns the same results as executing each query in
+   * turn.
+   */
+
+  @Test
+  public final void testOverlappedByBatch()
+  {
+    final AreaD container = AreaD.of(-512.0, 512.0, -512.0, 512.0);
+    final QuadTreeConfigurationD.Builder cb = QuadTreeConfigurationD.builder();
+    cb.setArea(container);
+    cb.setMaximumItemsPerLeaf(8);
+    final QuadTreeConfigurationD c = cb.build();
+
+    final QuadTreeDType<Integer> tree = this.create(c);
+    tree.overlappedByBatch(new ArrayList<>(), new ArrayList<>());
+
+    final Random random = new Random(0L);
+    for (int index = 0; index < 20000; ++index) {
+      final double x = -512.0 + random.nextDouble() * 1016.0;
+      final double y = -512.0 + random.nextDouble() * 1016.0;
+      final AreaD area =
+        AreaD.of(x, x + random.nextDouble() * 8.0, y, y + random.nextDouble() * 8.0);
+      Assert.assertTrue(tree.insert(Integer.valueOf(index), area));
+    }
+
+    final Generator<AreaD> gen = new AreaDContainedGenerator(container);
+    final List<AreaD> areas = new ArrayList<>();
+    final List<Set<Integer>> received = new ArrayList<>();
+    areas.add(container);
+    received.add(new HashSet<>());
+    for (int query = 0; query < 200; ++query) {
+      areas.add(gen.next());
+      received.add(new HashSet<>());
+    }
+
+    tree.overlappedByBatch(areas, received);
+    for (int query = 0; query < areas.size(); ++query) {
+      final Set<Integer> expected = new HashSet<>();
+      tree.overlappedBy(areas.get(query), expected);
+      Assert.assertEquals(expected, received.get(query));
+    }
+  }
+
+  /**
+   * A batch of queries must have exactly one result set per query.
+   */
+
+  @Test
+  public final void testOverlappedByBatchMismatched()
+  {
+    final AreaD container = AreaD.of(-512.0, 512.0, -512.0, 512.0);
+    final QuadTreeConfigurationD.Builder cb = QuadTreeConfigurationD.builder();
+    cb.setArea(container);
+    final QuadTreeConfigurationD c = cb.build();
+
+    final QuadTreeDType<Integer> tree = this.create(c);
+    final List<AreaD> areas = new ArrayList<>();
+    areas.add(container);
+
+    this.expected.expect(PreconditionViolationException.class);
+    tree.overlappedByBatch(areas, new ArrayList<>());
+  }
+
+  /**
+   * A batch of raycasts returns the same results as casting each ray in
+   * turn.
+   */
+
+  @Test
+  public final void testRaycastBatch()
+  {
+    final AreaD container = AreaD.of(-512.0, 512.0, -512.0, 512.0);
+    final QuadTreeConfigurationD.Builder cb = QuadTreeConfigurationD.builder();
+    cb.setArea(container);
+    cb.setMaximumItemsPerLeaf(8);
+    final QuadTreeConfigurationD c = cb.build();
+
+    final QuadTreeDType<Integer> tree = this.create(c);
+    tree.raycastBatch(new ArrayList<>(), new ArrayList<>());
+
+    final Random random = new Random(0L);
+    for (int index = 0; index < 20000; ++index) {
+      final double x = -512.0 + random.nextDouble() * 1016.0;
+      final double y = -512.0 + random.nextDouble() * 1016.0;
+      final AreaD area =
+        AreaD.of(x, x + random.nextDouble() * 8.0, y, y + random.nextDouble() * 8.0);
+      Assert.assertTrue(tree.insert(Integer.valueOf(index), area));
+    }
+
+    final Vector2D origin = Vector2D.of(-600.0, -500.0);
+    final List<Ray2D> rays = new ArrayList<>();
+    final List<QuadTreeRaycastBufferD<Integer>> received = new ArrayList<>();
+    for (int query = 0; query < 200; ++query) {
+      final Vector2D direction = Vectors2D.normalize(
+        Vector2D.of(random.nextDouble(), random.nextDouble()));
+      rays.add(Ray2D.of(origin, direction));
+      received.add(QuadTreeRaycastBufferD.create());
+    }
+
+    tree.raycastBatch(rays, received);
+    for (int query = 0; query < rays.size(); ++query) {
+      final QuadTreeRaycastBufferD<Integer> expected = QuadTreeRaycastBufferD.create();
+      tree.raycast(rays.get(query), expected);
+      QuadTreeDContract.checkSameResults(expected, received.get(query));
+    }
+  }
+
+  /**
+   * A batch of raycasts must have exactly one result buffer per ray.
+   */
+
+  @Test
+  public final void testRaycastBatchMismatched()
+  {
+    final QuadTreeConfigurationD.Builder cb = QuadTreeConfigurationD.builder();
+    cb.setArea(AreaD.of(-512.0, 512.0, -512.0, 512.0));
+    final QuadTreeConfigurationD c = cb.build();
+
+    final QuadTreeDType<Integer> tree = this.create(c);
+    final List<Ray2D> rays = new ArrayList<>();
+    rays.add(Ray2D.of(Vector2D.of(0.0, 0.0), Vector2D.of(1.0, 1.0)));
+
+    this.expected.expect(PreconditionViolationException.class);
+    tree.raycastBatch(rays, new ArrayList<>());
+  }
+
+  private static void checkSameResults(
+    final QuadTreeRaycastBufferD<Integer> expected,
+    final QuadTreeRaycastBufferD<Integer> received)
+  {
+    Assert.assertEquals((long) expected.size(), (long) received.size());
+
+    final Map<Integer, Double> distances = new HashMap<>();
+    for (int index = 0; index < expected.size(); ++index) {
+      distances.put(expected.item(index), Double.valueOf(expected.distance(index)));
+    }
+    for (int index = 0; index < received.size(); ++index) {
+      final Double distance = distances.get(received.item(index));
+      Assert.assertNotNull(distance);
+      Assert.assertEquals(distance.doubleValue(), received.distance(index), 0.000001);
+    }
+  }
 }
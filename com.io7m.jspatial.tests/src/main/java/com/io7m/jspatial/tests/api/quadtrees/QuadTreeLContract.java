@@ -22,6 +22,7 @@ import com.io7m.jspatial.api.Ray2D;
 import com.io7m.jspatial.api.TreeVisitResult;
 import com.io7m.jspatial.api.quadtrees.QuadTreeConfigurationL;
 import com.io7m.jspatial.api.quadtrees.QuadTreeLType;
+import com.io7m.jspatial.api.quadtrees.QuadTreeRaycastBufferL;
 import com.io7m.jspatial.api.quadtrees.QuadTreeRaycastResultL;
 import com.io7m.jspatial.tests.api.AreaLContainedGenerator;
 import com.io7m.jtensors.core.unparameterized.vectors.Vector2D;
@@ -32,11 +33,16 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -1379,4 +1385,689 @@ public abstract class QuadTreeLContract
     Assert.assertTrue(tree.insert(item, item_area));
     Assert.assertEquals(1L, (long) QuadTreeLContract.countQuadrants(tree));
   }
+
+  /**
+   * Leaves are only split when they hold more than the configured number of
+   * items, and their items are redistributed when they are split.
+   */
+
+  @Test
+  public final void testInsertCapacitySplit()
+  {
+    final AreaL container = AreaL.of(0L, 100L, 0L, 100L);
+
+    final QuadTreeConfigurationL.Builder cb = QuadTreeConfigurationL.builder();
+    cb.setArea(container);
+    cb.setMaximumItemsPerLeaf(3);
+    final QuadTreeConfigurationL c = cb.build();
+
+    final QuadTreeLType<Object> tree = this.create(c);
+
+    final Integer central = Integer.valueOf(0);
+    Assert.assertTrue(tree.insert(central, AreaL.of(40L, 60L, 40L, 60L)));
+    Assert.assertTrue(tree.insert(Integer.valueOf(1), AreaL.of(1L, 2L, 1L, 2L)));
+    Assert.assertTrue(tree.insert(Integer.valueOf(2), AreaL.of(98L, 99L, 1L, 2L)));
+    Assert.assertEquals(1L, (long) QuadTreeLContract.countQuadrants(tree));
+
+    Assert.assertTrue(tree.insert(
+      Integer.valueOf(3),
+      AreaL.of(98L, 99L, 98L, 99L)));
+    Assert.assertEquals(5L, (long) QuadTreeLContract.countQuadrants(tree));
+
+    tree.iterateQuadrants(Integer.valueOf(0), (context, quadrant, depth) -> {
+      if (depth == 0L) {
+        Assert.assertEquals(1L, (long) quadrant.objects().size());
+        Assert.assertTrue(quadrant.objects().containsKey(central));
+      } else {
+        Assert.assertTrue(quadrant.objects().size() <= 1);
+      }
+      return TreeVisitResult.RESULT_CONTINUE;
+    });
+
+    for (int index = 0; index <= 3; ++index) {
+      Assert.assertTrue(tree.remove(Integer.valueOf(index)));
+    }
+    Assert.assertTrue(tree.isEmpty());
+  }
+
+  /**
+   * Quadrants at the maximum depth are not split.
+   */
+
+  @Test
+  public final void testInsertMaximumDepth()
+  {
+    final AreaL container = AreaL.of(0L, 100L, 0L, 100L);
+
+    final QuadTreeConfigurationL.Builder cb = QuadTreeConfigurationL.builder();
+    cb.setArea(container);
+    cb.setMaximumDepth(1);
+    final QuadTreeConfigurationL c = cb.build();
+
+    final QuadTreeLType<Object> tree = this.create(c);
+
+    final Integer item = Integer.valueOf(0);
+    Assert.assertTrue(tree.insert(item, AreaL.of(1L, 2L, 1L, 2L)));
+    Assert.assertEquals(5L, (long) QuadTreeLContract.countQuadrants(tree));
+
+    tree.iterateQuadrants(Integer.valueOf(0), (context, quadrant, depth) -> {
+      if (quadrant.objects().containsKey(item)) {
+        Assert.assertEquals(1L, depth);
+      }
+      return TreeVisitResult.RESULT_CONTINUE;
+    });
+  }
+
+  /**
+   * Inserting an object that is already in the tree moves it.
+   */
+
+  @Test
+  public final void testInsertExistingMoves()
+  {
+    final AreaL container = AreaL.of(0L, 100L, 0L, 100L);
+
+    final QuadTreeConfigurationL.Builder cb = QuadTreeConfigurationL.builder();
+    cb.setArea(container);
+    cb.setTrimOnRemove(true);
+    final QuadTreeConfigurationL c = cb.build();
+
+    final QuadTreeLType<Object> tree = this.create(c);
+    final QuadTreeLType<Object> expected = this.create(c);
+
+    final Integer item0 = Integer.valueOf(0);
+    final Integer item1 = Integer.valueOf(1);
+    final AreaL bounds0 = AreaL.of(1L, 2L, 1L, 2L);
+    final AreaL bounds1 = AreaL.of(98L, 99L, 98L, 99L);
+    final AreaL bounds2 = AreaL.of(40L, 45L, 40L, 45L);
+
+    Assert.assertTrue(tree.insert(item0, bounds0));
+    Assert.assertTrue(tree.insert(item1, bounds1));
+    Assert.assertTrue(tree.insert(item0, bounds2));
+
+    Assert.assertEquals(2L, tree.size());
+    Assert.assertEquals(bounds2, tree.areaFor(item0));
+
+    final Set<Object> found = new HashSet<>();
+    tree.overlappedBy(bounds0, found);
+    Assert.assertTrue(found.isEmpty());
+    tree.overlappedBy(bounds2, found);
+    Assert.assertEquals(Collections.singleton(item0), found);
+
+    Assert.assertTrue(expected.insert(item1, bounds1));
+    Assert.assertTrue(expected.insert(item0, bounds2));
+    Assert.assertEquals(expected, tree);
+    Assert.assertEquals((long) expected.hashCode(), (long) tree.hashCode());
+    Assert.assertEquals(
+      (long) QuadTreeLContract.countQuadrants(expected),
+      (long) QuadTreeLContract.countQuadrants(tree));
+
+    Assert.assertFalse(tree.insert(item0, AreaL.of(-10L, 200L, -10L, 200L)));
+    Assert.assertFalse(tree.contains(item0));
+    Assert.assertEquals(1L, tree.size());
+  }
+
+  private static void insertGrid(
+    final QuadTreeLType<Object> tree)
+  {
+    int index = 0;
+    for (int x = 0; x < 3; ++x) {
+      for (int y = 0; y < 3; ++y) {
+        final AreaL bounds = AreaL.of(
+          (long) (x * 30 + 5),
+          (long) (x * 30 + 15),
+          (long) (y * 30 + 5),
+          (long) (y * 30 + 15));
+        Assert.assertTrue(tree.insert(Integer.valueOf(index), bounds));
+        ++index;
+      }
+    }
+
+    final AreaL straddling =
+      AreaL.of(45L, 55L, 45L, 55L);
+    Assert.assertTrue(tree.insert(Integer.valueOf(index), straddling));
+  }
+
+  /**
+   * The visitor queries find the same objects as the set-based queries.
+   */
+
+  @Test
+  public final void testVisitorQueries()
+  {
+    final QuadTreeConfigurationL.Builder cb = QuadTreeConfigurationL.builder();
+    cb.setArea(AreaL.of(0L, 100L, 0L, 100L));
+    final QuadTreeConfigurationL c = cb.build();
+
+    final QuadTreeLType<Object> tree = this.create(c);
+    QuadTreeLContract.insertGrid(tree);
+
+    final AreaL query = AreaL.of(0L, 50L, 0L, 50L);
+
+    {
+      final Set<Object> expected = new HashSet<>();
+      tree.containedBy(query, expected);
+
+      final Set<Object> received = new HashSet<>();
+      Assert.assertEquals(
+        TreeVisitResult.RESULT_CONTINUE,
+        tree.containedBy(query, received, (context, item, item_area) -> {
+          Assert.assertEquals(tree.areaFor(item), item_area);
+          Assert.assertTrue(context.add(item));
+          return TreeVisitResult.RESULT_CONTINUE;
+        }));
+
+      Assert.assertEquals(4L, (long) received.size());
+      Assert.assertEquals(expected, received);
+    }
+
+    {
+      final Set<Object> expected = new HashSet<>();
+      tree.overlappedBy(query, expected);
+
+      final Set<Object> received = new HashSet<>();
+      Assert.assertEquals(
+        TreeVisitResult.RESULT_CONTINUE,
+        tree.overlappedBy(query, received, (context, item, item_area) -> {
+          Assert.assertEquals(tree.areaFor(item), item_area);
+          Assert.assertTrue(context.add(item));
+          return TreeVisitResult.RESULT_CONTINUE;
+        }));
+
+      Assert.assertEquals(5L, (long) received.size());
+      Assert.assertEquals(expected, received);
+    }
+
+    {
+      final Ray2D ray = Ray2D.of(Vector2D.of(0.0, 0.0), Vector2D.of(1.0, 1.0));
+      final SortedSet<QuadTreeRaycastResultL<Object>> expected = new TreeSet<>();
+      tree.raycast(ray, expected);
+
+      final Map<Object, Double> received = new HashMap<>();
+      Assert.assertEquals(
+        TreeVisitResult.RESULT_CONTINUE,
+        tree.raycast(ray, received, (context, item, item_area, distance) -> {
+          Assert.assertEquals(tree.areaFor(item), item_area);
+          Assert.assertNull(context.put(item, Double.valueOf(distance)));
+          return TreeVisitResult.RESULT_CONTINUE;
+        }));
+
+      Assert.assertEquals(4L, (long) received.size());
+      Assert.assertEquals((long) expected.size(), (long) received.size());
+      for (final QuadTreeRaycastResultL<Object> r : expected) {
+        Assert.assertEquals(r.distance(), received.get(r.item()).doubleValue(), 0.0);
+      }
+    }
+  }
+
+  /**
+   * The visitor queries stop as soon as the visitor asks them to.
+   */
+
+  @Test
+  public final void testVisitorQueriesTerminate()
+  {
+    final QuadTreeConfigurationL.Builder cb = QuadTreeConfigurationL.builder();
+    cb.setArea(AreaL.of(0L, 100L, 0L, 100L));
+    final QuadTreeConfigurationL c = cb.build();
+
+    final QuadTreeLType<Object> tree = this.create(c);
+    QuadTreeLContract.insertGrid(tree);
+
+    final AreaL query = AreaL.of(0L, 50L, 0L, 50L);
+
+    {
+      final AtomicInteger calls = new AtomicInteger(0);
+      Assert.assertEquals(
+        TreeVisitResult.RESULT_TERMINATE,
+        tree.containedBy(tree.bounds(), calls, (context, item, item_area) -> {
+          context.incrementAndGet();
+          return TreeVisitResult.RESULT_TERMINATE;
+        }));
+      Assert.assertEquals(1L, (long) calls.get());
+    }
+
+    {
+      final AtomicInteger calls = new AtomicInteger(0);
+      Assert.assertEquals(
+        TreeVisitResult.RESULT_TERMINATE,
+        tree.containedBy(query, calls, (context, item, item_area) -> {
+          context.incrementAndGet();
+          return TreeVisitResult.RESULT_TERMINATE;
+        }));
+      Assert.assertEquals(1L, (long) calls.get());
+    }
+
+    {
+      final AtomicInteger calls = new AtomicInteger(0);
+      Assert.assertEquals(
+        TreeVisitResult.RESULT_TERMINATE,
+        tree.overlappedBy(query, calls, (context, item, item_area) -> {
+          context.incrementAndGet();
+          return TreeVisitResult.RESULT_TERMINATE;
+        }));
+      Assert.assertEquals(1L, (long) calls.get());
+    }
+
+    {
+      final AtomicInteger calls = new AtomicInteger(0);
+      Assert.assertEquals(
+        TreeVisitResult.RESULT_TERMINATE,
+        tree.raycast(Ray2D.of(Vector2D.of(0.0, 0.0), Vector2D.of(1.0, 1.0)), calls, (context, item, item_area, distance) -> {
+          context.incrementAndGet();
+          return TreeVisitResult.RESULT_TERMINATE;
+        }));
+      Assert.assertEquals(1L, (long) calls.get());
+    }
+  }
+
+  private static double distanceTo(
+    final Vector2D point,
+    final AreaL area)
+  {
+    final double dx = Math.max(
+      0.0,
+      Math.max((double) area.minimumX() - point.x(), point.x() - (double) area.maximumX()));
+    final double dy = Math.max(
+      0.0,
+      Math.max((double) area.minimumY() - point.y(), point.y() - (double) area.maximumY()));
+    return Math.sqrt(dx * dx + dy * dy);
+  }
+
+  /**
+   * Nearest neighbour queries return the nearest objects in order of distance.
+   */
+
+  @Test
+  public final void testNearest()
+  {
+    final QuadTreeConfigurationL.Builder cb = QuadTreeConfigurationL.builder();
+    cb.setArea(AreaL.of(0L, 100L, 0L, 100L));
+    cb.setMaximumItemsPerLeaf(2);
+    final QuadTreeConfigurationL c = cb.build();
+
+    final QuadTreeLType<Object> tree = this.create(c);
+    QuadTreeLContract.insertGrid(tree);
+
+    final List<Vector2D> points =
+      List.of(
+        Vector2D.of(0.0, 0.0),
+        Vector2D.of(50.0, 50.0),
+        Vector2D.of(99.0, 12.0),
+        Vector2D.of(-20.0, 150.0));
+
+    for (final Vector2D point : points) {
+      final List<Double> expected = new ArrayList<>();
+      for (int index = 0; index < (int) tree.size(); ++index) {
+        final AreaL bounds = tree.areaFor(Integer.valueOf(index));
+        expected.add(Double.valueOf(QuadTreeLContract.distanceTo(point, bounds)));
+      }
+      Collections.sort(expected);
+
+      for (final int count : new int[]{0, 1, 5, (int) tree.size() + 10}) {
+        final Set<Object> seen = new HashSet<>();
+        final List<Double> received = new ArrayList<>();
+        Assert.assertEquals(
+          TreeVisitResult.RESULT_CONTINUE,
+          tree.nearest(point, count, received, (context, item, item_area, distance) -> {
+            Assert.assertTrue(seen.add(item));
+            Assert.assertEquals(tree.areaFor(item), item_area);
+            Assert.assertEquals(
+              QuadTreeLContract.distanceTo(point, item_area), distance, 0.000001);
+            context.add(Double.valueOf(distance));
+            return TreeVisitResult.RESULT_CONTINUE;
+          }));
+
+        final int expected_count = Math.min(count, expected.size());
+        Assert.assertEquals((long) expected_count, (long) received.size());
+        for (int index = 0; index < expected_count; ++index) {
+          Assert.assertEquals(
+            expected.get(index).doubleValue(),
+            received.get(index).doubleValue(),
+            0.000001);
+        }
+      }
+    }
+  }
+
+  /**
+   * Nearest neighbour queries stop as soon as the visitor asks them to.
+   */
+
+  @Test
+  public final void testNearestTerminate()
+  {
+    final QuadTreeConfigurationL.Builder cb = QuadTreeConfigurationL.builder();
+    cb.setArea(AreaL.of(0L, 100L, 0L, 100L));
+    final QuadTreeConfigurationL c = cb.build();
+
+    final QuadTreeLType<Object> tree = this.create(c);
+    QuadTreeLContract.insertGrid(tree);
+
+    final Vector2D point = Vector2D.of(50.0, 50.0);
+    final AtomicInteger calls = new AtomicInteger(0);
+    Assert.assertEquals(
+      TreeVisitResult.RESULT_TERMINATE,
+      tree.nearest(point, 10, calls, (context, item, item_area, distance) -> {
+        context.incrementAndGet();
+        return TreeVisitResult.RESULT_TERMINATE;
+      }));
+    Assert.assertEquals(1L, (long) calls.get());
+  }
+
+  private static double entryDistance(
+    final Ray2D ray,
+    final AreaL area)
+  {
+    return ray.entryDistanceArea(
+      (double) area.minimumX(),
+      (double) area.minimumY(),
+      (double) area.maximumX(),
+      (double) area.maximumY());
+  }
+
+  /**
+   * First-hit raycasts return the objects the ray enters first, in order of distance.
+   */
+
+  @Test
+  public final void testRaycastFirst()
+  {
+    final QuadTreeConfigurationL.Builder cb = QuadTreeConfigurationL.builder();
+    cb.setArea(AreaL.of(0L, 100L, 0L, 100L));
+    cb.setMaximumItemsPerLeaf(2);
+    final QuadTreeConfigurationL c = cb.build();
+
+    final QuadTreeLType<Object> tree = this.create(c);
+    QuadTreeLContract.insertGrid(tree);
+
+    final List<Ray2D> rays =
+      List.of(
+        Ray2D.of(Vector2D.of(-10.0, 10.0), Vector2D.of(1.0, 0.0)),
+        Ray2D.of(Vector2D.of(0.0, 0.0), Vectors2D.normalize(Vector2D.of(1.0, 1.0))),
+        Ray2D.of(Vector2D.of(50.0, 50.0), Vectors2D.normalize(Vector2D.of(-1.0, -0.5))),
+        Ray2D.of(Vector2D.of(99.0, 12.0), Vectors2D.normalize(Vector2D.of(-1.0, 0.2))),
+        Ray2D.of(Vector2D.of(200.0, 200.0), Vector2D.of(1.0, 0.0)));
+
+    for (final Ray2D ray : rays) {
+      final List<Double> expected = new ArrayList<>();
+      for (int index = 0; index < (int) tree.size(); ++index) {
+        final double distance =
+          QuadTreeLContract.entryDistance(ray, tree.areaFor(Integer.valueOf(index)));
+        if (distance < Double.POSITIVE_INFINITY) {
+          expected.add(Double.valueOf(distance));
+        }
+      }
+      Collections.sort(expected);
+
+      final Optional<QuadTreeRaycastResultL<Object>> first = tree.raycastFirst(ray);
+      Assert.assertEquals(Boolean.valueOf(!expected.isEmpty()), Boolean.valueOf(first.isPresent()));
+      first.ifPresent(result -> {
+        Assert.assertEquals(tree.areaFor(result.item()), result.area());
+        Assert.assertEquals(expected.get(0).doubleValue(), result.distance(), 0.000001);
+      });
+
+      for (final int count : new int[]{0, 1, 5, (int) tree.size() + 10}) {
+        final Set<Object> seen = new HashSet<>();
+        final List<Double> received = new ArrayList<>();
+        Assert.assertEquals(
+          TreeVisitResult.RESULT_CONTINUE,
+          tree.raycastFirst(ray, count, received, (context, item, item_area, distance) -> {
+            Assert.assertTrue(seen.add(item));
+            Assert.assertEquals(tree.areaFor(item), item_area);
+            Assert.assertEquals(
+              QuadTreeLContract.entryDistance(ray, item_area), distance, 0.000001);
+            context.add(Double.valueOf(distance));
+            return TreeVisitResult.RESULT_CONTINUE;
+          }));
+
+        final int expected_count = Math.min(count, expected.size());
+        Assert.assertEquals((long) expected_count, (long) received.size());
+        for (int index = 0; index < expected_count; ++index) {
+          Assert.assertEquals(
+            expected.get(index).doubleValue(),
+            received.get(index).doubleValue(),
+            0.000001);
+        }
+      }
+    }
+  }
+
+  /**
+   * First-hit raycasts stop as soon as the visitor asks them to.
+   */
+
+  @Test
+  public final void testRaycastFirstTerminate()
+  {
+    final QuadTreeConfigurationL.Builder cb = QuadTreeConfigurationL.builder();
+    cb.setArea(AreaL.of(0L, 100L, 0L, 100L));
+    final QuadTreeConfigurationL c = cb.build();
+
+    final QuadTreeLType<Object> tree = this.create(c);
+    QuadTreeLContract.insertGrid(tree);
+
+    final Ray2D ray = Ray2D.of(Vector2D.of(0.0, 0.0), Vectors2D.normalize(Vector2D.of(1.0, 1.0)));
+    final AtomicInteger calls = new AtomicInteger(0);
+    Assert.assertEquals(
+      TreeVisitResult.RESULT_TERMINATE,
+      tree.raycastFirst(ray, 10, calls, (context, item, item_area, distance) -> {
+        context.incrementAndGet();
+        return TreeVisitResult.RESULT_TERMINATE;
+      }));
+    Assert.assertEquals(1L, (long) calls.get());
+  }
+
+  /**
+   * Buffered raycasts find every intersected object, at the same distances as first-hit raycasts.
+   */
+
+  @Test
+  public final void testRaycastBuffer()
+  {
+    final QuadTreeConfigurationL.Builder cb = QuadTreeConfigurationL.builder();
+    cb.setArea(AreaL.of(0L, 100L, 0L, 100L));
+    cb.setMaximumItemsPerLeaf(2);
+    final QuadTreeConfigurationL c = cb.build();
+
+    final QuadTreeLType<Object> tree = this.create(c);
+    QuadTreeLContract.insertGrid(tree);
+
+    final List<Ray2D> rays =
+      List.of(
+        Ray2D.of(Vector2D.of(-10.0, 10.0), Vector2D.of(1.0, 0.0)),
+        Ray2D.of(Vector2D.of(0.0, 0.0), Vectors2D.normalize(Vector2D.of(1.0, 1.0))),
+        Ray2D.of(Vector2D.of(50.0, 50.0), Vectors2D.normalize(Vector2D.of(-1.0, -0.5))),
+        Ray2D.of(Vector2D.of(200.0, 200.0), Vector2D.of(1.0, 0.0)));
+
+    final QuadTreeRaycastBufferL<Object> results = QuadTreeRaycastBufferL.create();
+    for (final Ray2D ray : rays) {
+      final List<Double> expected = new ArrayList<>();
+      for (int index = 0; index < (int) tree.size(); ++index) {
+        final double distance =
+          QuadTreeLContract.entryDistance(ray, tree.areaFor(Integer.valueOf(index)));
+        if (distance < Double.POSITIVE_INFINITY) {
+          expected.add(Double.valueOf(distance));
+        }
+      }
+      Collections.sort(expected);
+
+      results.clear();
+      tree.raycast(ray, results);
+      results.sortByDistance();
+
+      Assert.assertEquals((long) expected.size(), (long) results.size());
+      final Set<Object> seen = new HashSet<>();
+      for (int index = 0; index < results.size(); ++index) {
+        final Object item = results.item(index);
+        Assert.assertTrue(seen.add(item));
+        Assert.assertEquals(tree.areaFor(item), results.area(index));
+        Assert.assertEquals(
+          expected.get(index).doubleValue(), results.distance(index), 0.000001);
+      }
+    }
+  }
+
+  private static void checkCounts(
+    final QuadTreeLType<Object> tree,
+    final List<AreaL> queries)
+  {
+    for (final AreaL query : queries) {
+      final Set<Object> contained = new HashSet<>();
+      tree.containedBy(query, contained);
+      final Set<Object> overlapping = new HashSet<>();
+      tree.overlappedBy(query, overlapping);
+
+      Assert.assertEquals(
+        (long) contained.size(), tree.countContainedBy(query));
+      Assert.assertEquals(
+        (long) overlapping.size(), tree.countOverlapping(query));
+      Assert.assertEquals(
+        Boolean.valueOf(!overlapping.isEmpty()),
+        Boolean.valueOf(tree.anyOverlapping(query)));
+    }
+  }
+
+  /**
+   * Counting queries agree with the set-based queries, including after
+   * objects have been removed.
+   */
+
+  @Test
+  public final void testCountQueries()
+  {
+    final List<AreaL> queries =
+      List.of(
+        AreaL.of(0L, 100L, 0L, 100L),
+        AreaL.of(0L, 50L, 0L, 50L),
+        AreaL.of(20L, 60L, 20L, 60L),
+        AreaL.of(14L, 46L, 14L, 46L),
+        AreaL.of(50L, 50L, 50L, 50L),
+        AreaL.of(49L, 50L, 49L, 50L),
+        AreaL.of(95L, 100L, 95L, 100L),
+        AreaL.of(200L, 300L, 200L, 300L));
+
+    for (final int leaf : new int[]{2, 8}) {
+      final QuadTreeConfigurationL.Builder cb = QuadTreeConfigurationL.builder();
+      cb.setArea(AreaL.of(0L, 100L, 0L, 100L));
+      cb.setMaximumItemsPerLeaf(leaf);
+      final QuadTreeConfigurationL c = cb.build();
+
+      final QuadTreeLType<Object> tree = this.create(c);
+      QuadTreeLContract.insertGrid(tree);
+      Assert.assertTrue(tree.insert("point", AreaL.of(50L, 50L, 50L, 50L)));
+      Assert.assertTrue(tree.insert("corner", AreaL.of(100L, 100L, 100L, 100L)));
+      QuadTreeLContract.checkCounts(tree, queries);
+
+      Assert.assertTrue(tree.remove("point"));
+      Assert.assertTrue(tree.remove(Integer.valueOf(0)));
+      Assert.assertTrue(tree.remove(Integer.valueOf(3)));
+      QuadTreeLContract.checkCounts(tree, queries);
+
+      tree.clear();
+      Assert.assertEquals(0L, tree.countOverlapping(AreaL.of(0L, 100L, 0L, 100L)));
+      Assert.assertFalse(tree.anyOverlapping(AreaL.of(0L, 100L, 0L, 100L)));
+    }
+  }
+
+  private static void checkSameQueries(
+    final QuadTreeLType<Object> expected,
+    final QuadTreeLType<Object> tree,
+    final List<AreaL> queries)
+  {
+    Assert.assertEquals(expected.size(), tree.size());
+    Assert.assertEquals(expected, tree);
+
+    for (final AreaL query : queries) {
+      final Set<Object> expected_contained = new HashSet<>();
+      expected.containedBy(query, expected_contained);
+      final Set<Object> contained = new HashSet<>();
+      tree.containedBy(query, contained);
+      Assert.assertEquals(expected_contained, contained);
+
+      final Set<Object> expected_overlapping = new HashSet<>();
+      expected.overlappedBy(query, expected_overlapping);
+      final Set<Object> overlapping = new HashSet<>();
+      tree.overlappedBy(query, overlapping);
+      Assert.assertEquals(expected_overlapping, overlapping);
+    }
+    QuadTreeLContract.checkCounts(tree, queries);
+
+    tree.iterateQuadrants(tree, (context, quadrant, depth) -> {
+      for (final Map.Entry<Object, AreaL> entry : quadrant.objects().entrySet()) {
+        Assert.assertEquals(context.areaFor(entry.getKey()), entry.getValue());
+        Assert.assertTrue(AreasL.contains(quadrant.area(), entry.getValue()));
+      }
+      return TreeVisitResult.RESULT_CONTINUE;
+    });
+  }
+
+  /**
+   * Bulk insertion produces a tree that holds the same objects, and answers
+   * queries in the same way, as inserting the objects one at a time.
+   */
+
+  @Test
+  public final void testInsertAll()
+  {
+    final List<AreaL> queries =
+      List.of(
+        AreaL.of(0L, 100L, 0L, 100L),
+        AreaL.of(0L, 50L, 0L, 50L),
+        AreaL.of(20L, 60L, 20L, 60L),
+        AreaL.of(14L, 46L, 14L, 46L),
+        AreaL.of(50L, 50L, 50L, 50L),
+        AreaL.of(95L, 100L, 95L, 100L));
+
+    for (final int leaf : new int[]{0, 2, 8}) {
+      final QuadTreeConfigurationL.Builder cb = QuadTreeConfigurationL.builder();
+      cb.setArea(AreaL.of(0L, 100L, 0L, 100L));
+      cb.setMaximumItemsPerLeaf(leaf);
+      final QuadTreeConfigurationL c = cb.build();
+
+      final QuadTreeLType<Object> expected = this.create(c);
+      QuadTreeLContract.insertGrid(expected);
+      Assert.assertTrue(expected.insert("point", AreaL.of(50L, 50L, 50L, 50L)));
+
+      final Set<Object> all = new HashSet<>();
+      expected.overlappedBy(AreaL.of(0L, 100L, 0L, 100L), all);
+      final Map<Object, AreaL> items = new HashMap<>();
+      for (final Object item : all) {
+        items.put(item, expected.areaFor(item));
+      }
+      items.put("outside", AreaL.of(200L, 300L, 200L, 300L));
+
+      final QuadTreeLType<Object> tree = this.create(c);
+      Assert.assertEquals(expected.size(), tree.insertAll(items));
+      Assert.assertFalse(tree.contains("outside"));
+      QuadTreeLContract.checkSameQueries(expected, tree, queries);
+
+      final Map<Object, AreaL> more = new HashMap<>();
+      more.put(Integer.valueOf(0), AreaL.of(60L, 70L, 60L, 70L));
+      more.put("extra", AreaL.of(1L, 2L, 1L, 2L));
+      more.put("outside", AreaL.of(200L, 300L, 200L, 300L));
+      for (final Map.Entry<Object, AreaL> entry : more.entrySet()) {
+        expected.insert(entry.getKey(), entry.getValue());
+      }
+
+      Assert.assertEquals(2L, tree.insertAll(more));
+      QuadTreeLContract.checkSameQueries(expected, tree, queries);
+    }
+  }
+
+  /**
+   * Bulk insertion into an empty tree with no objects does nothing.
+   */
+
+  @Test
+  public final void testInsertAllEmpty()
+  {
+    final QuadTreeConfigurationL.Builder cb = QuadTreeConfigurationL.builder();
+    cb.setArea(AreaL.of(0L, 100L, 0L, 100L));
+    final QuadTreeConfigurationL c = cb.build();
+
+    final QuadTreeLType<Object> tree = this.create(c);
+    Assert.assertEquals(0L, tree.insertAll(Map.of()));
+    Assert.assertEquals(0L, tree.size());
+  }
 }
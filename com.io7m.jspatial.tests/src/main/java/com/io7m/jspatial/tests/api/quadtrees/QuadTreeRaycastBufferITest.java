@@ -0,0 +1,88 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.jspatial.tests.api.quadtrees;
+
+import com.io7m.jregions.core.unparameterized.areas.AreaI;
+import com.io7m.jspatial.api.quadtrees.QuadTreeRaycastBufferI;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+/**
+ * Tests for QuadTreeRaycastBufferI.
+ */
+
+public final class QuadTreeRaycastBufferITest
+{
+  @Rule public final ExpectedException expected = ExpectedException.none();
+
+  /**
+   * Results survive growth and sorting with their bounds intact.
+   */
+
+  @Test
+  public void testAddSort()
+  {
+    final QuadTreeRaycastBufferI<Integer> buffer = QuadTreeRaycastBufferI.create();
+    final int count = 100;
+    for (int index = 0; index < count; ++index) {
+      buffer.add(
+        Integer.valueOf(index),
+        (double) ((index * 37) % count),
+        index,
+        index + 1,
+        index,
+        index + 2);
+    }
+
+    Assert.assertEquals((long) count, (long) buffer.size());
+    buffer.sortByDistance();
+
+    for (int index = 0; index < count; ++index) {
+      Assert.assertEquals((double) index, buffer.distance(index), 0.0);
+      final int item = buffer.item(index).intValue();
+      Assert.assertEquals((long) index, (long) ((item * 37) % count));
+      Assert.assertEquals((long) item, (long) buffer.minimumX(index));
+      Assert.assertEquals((long) (item + 1), (long) buffer.maximumX(index));
+      Assert.assertEquals((long) item, (long) buffer.minimumY(index));
+      Assert.assertEquals((long) (item + 2), (long) buffer.maximumY(index));
+      Assert.assertEquals(
+        AreaI.of(item, item + 1, item, item + 2),
+        buffer.area(index));
+    }
+  }
+
+  /**
+   * Clearing a buffer removes all results.
+   */
+
+  @Test
+  public void testClear()
+  {
+    final QuadTreeRaycastBufferI<Integer> buffer = QuadTreeRaycastBufferI.create();
+    buffer.add(Integer.valueOf(23), 1.0, 0, 1, 0, 1);
+    Assert.assertEquals(1L, (long) buffer.size());
+
+    buffer.clear();
+    Assert.assertEquals(0L, (long) buffer.size());
+
+    this.expected.expect(IndexOutOfBoundsException.class);
+    buffer.item(0);
+  }
+}
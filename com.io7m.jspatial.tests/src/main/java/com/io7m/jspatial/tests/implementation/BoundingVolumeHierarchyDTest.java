@@ -0,0 +1,418 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jspatial.tests.implementation;
+
+import com.io7m.jregions.core.unparameterized.volumes.VolumeD;
+import com.io7m.jregions.core.unparameterized.volumes.VolumesD;
+import com.io7m.jspatial.api.Ray3D;
+import com.io7m.jspatial.api.TreeVisitResult;
+import com.io7m.jspatial.api.octtrees.OctTreeConfigurationD;
+import com.io7m.jspatial.api.octtrees.OctTreeDType;
+import com.io7m.jspatial.api.octtrees.OctTreeRaycastBufferD;
+import com.io7m.jspatial.api.octtrees.OctTreeRaycastResultD;
+import com.io7m.jspatial.implementation.BoundingVolumeHierarchyD;
+import com.io7m.jspatial.implementation.BoundingVolumeHierarchySupplierD;
+import com.io7m.jspatial.implementation.OctTreeConcurrentD;
+import com.io7m.jspatial.implementation.OctTreeD;
+import com.io7m.jspatial.tests.api.VolumeDContainedGenerator;
+import com.io7m.jtensors.core.unparameterized.vectors.Vector3D;
+import net.java.quickcheck.Generator;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Test for {@link BoundingVolumeHierarchyD}
+ */
+
+public final class BoundingVolumeHierarchyDTest
+{
+  private static OctTreeConfigurationD configuration(final VolumeD volume)
+  {
+    final OctTreeConfigurationD.Builder cb = OctTreeConfigurationD.builder();
+    cb.setVolume(volume);
+    return cb.build();
+  }
+
+  /**
+   * Check that only leaves hold objects, that every object lies within the
+   * volume of the octant that holds it, and that every object is held
+   * exactly once.
+   *
+   * @return The largest number of objects held by any octant
+   */
+
+  private static int checkStructure(final OctTreeDType<Integer> tree)
+  {
+    final Set<Integer> seen = new HashSet<>();
+    final int[] largest = {0};
+    tree.iterateOctants(tree, (context, octant, depth) -> {
+      final Map<Integer, VolumeD> objects = octant.objects();
+      largest[0] = Math.max(largest[0], objects.size());
+      objects.forEach((item, volume) -> {
+        Assert.assertTrue(seen.add(item));
+        Assert.assertEquals(context.volumeFor(item), volume);
+        Assert.assertTrue(VolumesD.contains(octant.volume(), volume));
+      });
+      return TreeVisitResult.RESULT_CONTINUE;
+    });
+
+    Assert.assertEquals(tree.size(), (long) seen.size());
+    return largest[0];
+  }
+
+  private static void checkQueries(
+    final OctTreeDType<Integer> expected,
+    final OctTreeDType<Integer> tree,
+    final Generator<VolumeD> gen,
+    final Random random)
+  {
+    Assert.assertEquals(expected.size(), tree.size());
+
+    for (int index = 0; index < 50; ++index) {
+      final VolumeD query = gen.next();
+
+      final Set<Integer> expected_overlapped = new HashSet<>();
+      final Set<Integer> overlapped = new HashSet<>();
+      expected.overlappedBy(query, expected_overlapped);
+      tree.overlappedBy(query, overlapped);
+      Assert.assertEquals(expected_overlapped, overlapped);
+      Assert.assertEquals(
+        (long) overlapped.size(), tree.countOverlapping(query));
+      Assert.assertEquals(
+        Boolean.valueOf(!overlapped.isEmpty()),
+        Boolean.valueOf(tree.anyOverlapping(query)));
+
+      final Set<Integer> expected_contained = new HashSet<>();
+      final Set<Integer> contained = new HashSet<>();
+      expected.containedBy(query, expected_contained);
+      tree.containedBy(query, contained);
+      Assert.assertEquals(expected_contained, contained);
+      Assert.assertEquals(
+        (long) contained.size(), tree.countContainedBy(query));
+
+      final Ray3D ray = Ray3D.of(
+        Vector3D.of(query.minimumX(), query.minimumY(), query.minimumZ()),
+        Vector3D.of(
+          random.nextDouble() - 0.5,
+          random.nextDouble() - 0.5,
+          random.nextDouble() - 0.5));
+
+      final SortedSet<OctTreeRaycastResultD<Integer>> expected_hits = new TreeSet<>();
+      final SortedSet<OctTreeRaycastResultD<Integer>> hits = new TreeSet<>();
+      expected.raycast(ray, expected_hits);
+      tree.raycast(ray, hits);
+      Assert.assertEquals(expected_hits, hits);
+      Assert.assertEquals(
+        expected.raycastFirst(ray).map(OctTreeRaycastResultD::distance),
+        tree.raycastFirst(ray).map(OctTreeRaycastResultD::distance));
+
+      final List<Double> expected_first = new ArrayList<>();
+      final List<Double> first = new ArrayList<>();
+      expected.raycastFirst(ray, 5, expected_first, (context, item, volume, distance) -> {
+        context.add(Double.valueOf(distance));
+        return TreeVisitResult.RESULT_CONTINUE;
+      });
+      tree.raycastFirst(ray, 5, first, (context, item, volume, distance) -> {
+        context.add(Double.valueOf(distance));
+        return TreeVisitResult.RESULT_CONTINUE;
+      });
+      Assert.assertEquals(expected_first, first);
+
+      final OctTreeRaycastBufferD<Integer> expected_buffer = OctTreeRaycastBufferD.create();
+      final OctTreeRaycastBufferD<Integer> buffer = OctTreeRaycastBufferD.create();
+      expected.raycast(ray, expected_buffer);
+      tree.raycast(ray, buffer);
+      Assert.assertEquals(expected_buffer.size(), buffer.size());
+
+      final List<Double> expected_nearest = new ArrayList<>();
+      final List<Double> nearest = new ArrayList<>();
+      expected.nearest(ray.origin(), 5, expected_nearest, (context, item, volume, distance) -> {
+        context.add(Double.valueOf(distance));
+        return TreeVisitResult.RESULT_CONTINUE;
+      });
+      tree.nearest(ray.origin(), 5, nearest, (context, item, volume, distance) -> {
+        context.add(Double.valueOf(distance));
+        return TreeVisitResult.RESULT_CONTINUE;
+      });
+      Assert.assertEquals(expected_nearest, nearest);
+    }
+  }
+
+  /**
+   * A hierarchy returns the same query results as the default
+   * implementation after an arbitrary sequence of insertions, moves, and
+   * removals, whether rebuilds run synchronously or in the background.
+   */
+
+  @Test
+  public void testQueriesEquivalentToOctTreeD()
+  {
+    final VolumeD container =
+      VolumeD.of(-512.0, 512.0, -512.0, 512.0, -512.0, 512.0);
+    final OctTreeConfigurationD c = configuration(container);
+
+    for (final Executor executor : new Executor[]{Runnable::run, ForkJoinPool.commonPool()}) {
+      final OctTreeDType<Integer> expected = OctTreeD.create(c);
+      final OctTreeDType<Integer> tree =
+        new BoundingVolumeHierarchySupplierD(executor).create(c);
+
+      final Generator<VolumeD> gen = new VolumeDContainedGenerator(container);
+      final Random random = new Random(0L);
+      final List<Integer> items = new ArrayList<>();
+      for (int index = 0; index < 2000; ++index) {
+        final Integer item = Integer.valueOf(index);
+        final VolumeD volume = gen.next();
+        items.add(item);
+        Assert.assertEquals(
+          Boolean.valueOf(expected.insert(item, volume)),
+          Boolean.valueOf(tree.insert(item, volume)));
+      }
+
+      checkStructure(tree);
+      checkQueries(expected, tree, gen, random);
+
+      for (int index = 0; index < 2000; ++index) {
+        final Integer item = items.get(random.nextInt(items.size()));
+        if (random.nextBoolean()) {
+          final VolumeD volume = gen.next();
+          Assert.assertEquals(
+            Boolean.valueOf(expected.insert(item, volume)),
+            Boolean.valueOf(tree.insert(item, volume)));
+        } else {
+          Assert.assertEquals(
+            Boolean.valueOf(expected.remove(item)),
+            Boolean.valueOf(tree.remove(item)));
+        }
+      }
+
+      checkStructure(tree);
+      checkQueries(expected, tree, gen, random);
+
+      tree.trim();
+      checkStructure(tree);
+      checkQueries(expected, tree, gen, random);
+
+      for (final Integer item : items) {
+        Assert.assertEquals(
+          Boolean.valueOf(expected.remove(item)),
+          Boolean.valueOf(tree.remove(item)));
+      }
+
+      Assert.assertEquals(0L, tree.size());
+      checkStructure(tree);
+      checkQueries(expected, tree, gen, random);
+    }
+  }
+
+  /**
+   * Bulk loading builds the hierarchy, and the hierarchy returns the same
+   * query results as the default implementation both before and after
+   * further updates.
+   */
+
+  @Test
+  public void testInsertAllQueriesEquivalentToOctTreeD()
+  {
+    final VolumeD container =
+      VolumeD.of(-512.0, 512.0, -512.0, 512.0, -512.0, 512.0);
+    final OctTreeConfigurationD c = configuration(container);
+    final Generator<VolumeD> gen = new VolumeDContainedGenerator(container);
+    final Random random = new Random(0L);
+
+    for (final int count : new int[]{0, 1, 3, 17, 300, 5000}) {
+      final Integer[] keys = new Integer[count];
+      final Map<Integer, VolumeD> items = new HashMap<>();
+      for (int index = 0; index < count; ++index) {
+        keys[index] = Integer.valueOf(index);
+        items.put(keys[index], gen.next());
+      }
+      items.put(Integer.valueOf(-1), VolumeD.of(0.0, 1024.0, 0.0, 1024.0, 0.0, 1024.0));
+
+      final OctTreeDType<Integer> expected = OctTreeD.create(c);
+      Assert.assertEquals((long) count, expected.insertAll(items));
+
+      final OctTreeDType<Integer> tree =
+        new BoundingVolumeHierarchySupplierD(Runnable::run).build(c, items);
+      Assert.assertFalse(tree.contains(Integer.valueOf(-1)));
+      Assert.assertTrue(checkStructure(tree) <= 8);
+      checkQueries(expected, tree, gen, random);
+
+      for (int index = 0; index < count / 2; ++index) {
+        final Integer item = keys[random.nextInt(count)];
+        final VolumeD volume = gen.next();
+        Assert.assertEquals(
+          Boolean.valueOf(expected.insert(item, volume)),
+          Boolean.valueOf(tree.insert(item, volume)));
+        final Integer removed = keys[random.nextInt(count)];
+        Assert.assertEquals(
+          Boolean.valueOf(expected.remove(removed)),
+          Boolean.valueOf(tree.remove(removed)));
+      }
+
+      checkStructure(tree);
+      checkQueries(expected, tree, gen, random);
+    }
+  }
+
+  /**
+   * A rebuild runs on the executor once the quality of the hierarchy
+   * degrades, and the hierarchy that it produces is brought up to date with
+   * the updates made while it was being built.
+   */
+
+  @Test
+  public void testRebuildDeferred()
+  {
+    final VolumeD container =
+      VolumeD.of(-512.0, 512.0, -512.0, 512.0, -512.0, 512.0);
+    final OctTreeConfigurationD c = configuration(container);
+    final Generator<VolumeD> gen = new VolumeDContainedGenerator(container);
+    final Random random = new Random(0L);
+
+    final List<Runnable> tasks = new ArrayList<>();
+    final OctTreeDType<Integer> expected = OctTreeD.create(c);
+    final OctTreeDType<Integer> tree =
+      BoundingVolumeHierarchyD.createWithExecutor(c, tasks::add);
+
+    final List<Integer> items = new ArrayList<>();
+    for (int index = 0; index < 200; ++index) {
+      final Integer item = Integer.valueOf(index);
+      final VolumeD volume = gen.next();
+      items.add(item);
+      Assert.assertTrue(expected.insert(item, volume));
+      Assert.assertTrue(tree.insert(item, volume));
+    }
+
+    /*
+     * Until the rebuild runs, every object is held by the root.
+     */
+
+    Assert.assertEquals(1L, (long) tasks.size());
+    Assert.assertEquals(200L, (long) checkStructure(tree));
+    checkQueries(expected, tree, gen, random);
+
+    for (int index = 0; index < 100; ++index) {
+      final Integer moved = items.get(random.nextInt(items.size()));
+      final VolumeD volume = gen.next();
+      Assert.assertTrue(expected.insert(moved, volume));
+      Assert.assertTrue(tree.insert(moved, volume));
+
+      final Integer removed = items.get(random.nextInt(items.size()));
+      Assert.assertEquals(
+        Boolean.valueOf(expected.remove(removed)),
+        Boolean.valueOf(tree.remove(removed)));
+
+      final Integer item = Integer.valueOf(1000 + index);
+      final VolumeD inserted = gen.next();
+      items.add(item);
+      Assert.assertTrue(expected.insert(item, inserted));
+      Assert.assertTrue(tree.insert(item, inserted));
+    }
+
+    tasks.remove(0).run();
+
+    /*
+     * Queries do not install the new hierarchy; the next update does.
+     */
+
+    Assert.assertEquals(tree.size(), (long) checkStructure(tree));
+    checkQueries(expected, tree, gen, random);
+
+    final Integer moved = items.get(0);
+    final VolumeD volume = gen.next();
+    Assert.assertEquals(
+      Boolean.valueOf(expected.insert(moved, volume)),
+      Boolean.valueOf(tree.insert(moved, volume)));
+    Assert.assertTrue(checkStructure(tree) < 200);
+    checkQueries(expected, tree, gen, random);
+  }
+
+  /**
+   * Queries running concurrently under the read lock of a concurrent tree
+   * return correct results while a rebuild of the underlying hierarchy is
+   * in progress and after it completes, and do not install the rebuilt
+   * hierarchy.
+   */
+
+  @Test
+  public void testQueriesConcurrentWithRebuild()
+    throws Exception
+  {
+    final VolumeD container =
+      VolumeD.of(-512.0, 512.0, -512.0, 512.0, -512.0, 512.0);
+    final OctTreeConfigurationD c = configuration(container);
+    final Generator<VolumeD> gen = new VolumeDContainedGenerator(container);
+
+    final List<Runnable> tasks = new ArrayList<>();
+    final OctTreeDType<Integer> expected = OctTreeD.create(c);
+    final OctTreeDType<Integer> tree =
+      OctTreeConcurrentD.create(new BoundingVolumeHierarchySupplierD(tasks::add), c);
+
+    for (int index = 0; index < 2000; ++index) {
+      final Integer item = Integer.valueOf(index);
+      final VolumeD volume = gen.next();
+      Assert.assertTrue(expected.insert(item, volume));
+      Assert.assertTrue(tree.insert(item, volume));
+    }
+
+    Assert.assertEquals(1L, (long) tasks.size());
+    final Runnable rebuild = tasks.remove(0);
+
+    final ExecutorService pool = Executors.newFixedThreadPool(5);
+    try {
+      final List<Future<?>> futures = new ArrayList<>();
+      for (int thread = 0; thread < 4; ++thread) {
+        final long seed = (long) thread;
+        futures.add(pool.submit(() -> {
+          final Random random = new Random(seed);
+          final Generator<VolumeD> queries = new VolumeDContainedGenerator(container);
+          for (int round = 0; round < 4; ++round) {
+            checkQueries(expected, tree, queries, random);
+          }
+        }));
+      }
+      futures.add(pool.submit(rebuild));
+
+      for (final Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      pool.shutdown();
+    }
+
+    Assert.assertEquals(tree.size(), (long) checkStructure(tree));
+    Assert.assertTrue(tree.remove(Integer.valueOf(0)));
+    Assert.assertTrue(expected.remove(Integer.valueOf(0)));
+    Assert.assertTrue(checkStructure(tree) < 2000);
+    checkQueries(expected, tree, gen, new Random(0L));
+  }
+}
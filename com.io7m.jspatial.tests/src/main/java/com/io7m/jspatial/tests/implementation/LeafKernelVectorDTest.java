@@ -0,0 +1,149 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jspatial.tests.implementation;
+
+import com.io7m.jspatial.implementation.LeafKernelDType;
+import com.io7m.jspatial.implementation.LeafKernelsD;
+import com.io7m.jspatial.vector.LeafKernelVectorD;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+
+public final class LeafKernelVectorDTest
+{
+  private static final int OBJECTS = 200;
+
+  /*
+   * Coordinates are drawn from a small grid so that objects frequently
+   * share edges with queries, and rays frequently start on, or run along,
+   * the edges of objects.
+   */
+
+  private static double coordinate(
+    final Random random)
+  {
+    return (double) (random.nextInt(17) - 8);
+  }
+
+  private static double direction(
+    final Random random)
+  {
+    return (double) (random.nextInt(5) - 2);
+  }
+
+  private static double[] boxes(
+    final Random random,
+    final int count,
+    final int stride)
+  {
+    final double[] boxes = new double[count * stride];
+    for (int index = 0; index < boxes.length; index += 2) {
+      final double a = coordinate(random);
+      final double b = coordinate(random);
+      boxes[index] = Math.min(a, b);
+      boxes[index + 1] = Math.max(a, b);
+    }
+    return boxes;
+  }
+
+  @Test
+  public void testCurrent()
+  {
+    Assert.assertTrue(LeafKernelsD.current() instanceof LeafKernelVectorD);
+  }
+
+  @Test
+  public void testOverlappingAreas()
+  {
+    final LeafKernelDType scalar = LeafKernelsD.scalar();
+    final LeafKernelDType vector = new LeafKernelVectorD();
+    final Random random = new Random(0L);
+
+    for (int query = 0; query < 1000; ++query) {
+      final double[] bounds = boxes(random, OBJECTS, 4);
+      final double[] area = boxes(random, 1, 4);
+      final int count = random.nextInt(LeafKernelDType.MAXIMUM_COUNT + 1);
+      final int index = random.nextInt(OBJECTS - count + 1);
+      Assert.assertEquals(
+        scalar.overlappingAreas(area, bounds, index, count),
+        vector.overlappingAreas(area, bounds, index, count));
+    }
+  }
+
+  @Test
+  public void testOverlappingVolumes()
+  {
+    final LeafKernelDType scalar = LeafKernelsD.scalar();
+    final LeafKernelDType vector = new LeafKernelVectorD();
+    final Random random = new Random(0L);
+
+    for (int query = 0; query < 1000; ++query) {
+      final double[] bounds = boxes(random, OBJECTS, 6);
+      final double[] volume = boxes(random, 1, 6);
+      final int count = random.nextInt(LeafKernelDType.MAXIMUM_COUNT + 1);
+      final int index = random.nextInt(OBJECTS - count + 1);
+      Assert.assertEquals(
+        scalar.overlappingVolumes(volume, bounds, index, count),
+        vector.overlappingVolumes(volume, bounds, index, count));
+    }
+  }
+
+  @Test
+  public void testIntersectingAreas()
+  {
+    final LeafKernelDType scalar = LeafKernelsD.scalar();
+    final LeafKernelDType vector = new LeafKernelVectorD();
+    final Random random = new Random(0L);
+
+    for (int query = 0; query < 1000; ++query) {
+      final double[] bounds = boxes(random, OBJECTS, 4);
+      final double ox = coordinate(random);
+      final double oy = coordinate(random);
+      final double dix = 1.0 / direction(random);
+      final double diy = 1.0 / direction(random);
+      final int count = random.nextInt(LeafKernelDType.MAXIMUM_COUNT + 1);
+      final int index = random.nextInt(OBJECTS - count + 1);
+      Assert.assertEquals(
+        scalar.intersectingAreas(ox, oy, dix, diy, bounds, index, count),
+        vector.intersectingAreas(ox, oy, dix, diy, bounds, index, count));
+    }
+  }
+
+  @Test
+  public void testIntersectingVolumes()
+  {
+    final LeafKernelDType scalar = LeafKernelsD.scalar();
+    final LeafKernelDType vector = new LeafKernelVectorD();
+    final Random random = new Random(0L);
+
+    for (int query = 0; query < 1000; ++query) {
+      final double[] bounds = boxes(random, OBJECTS, 6);
+      final double ox = coordinate(random);
+      final double oy = coordinate(random);
+      final double oz = coordinate(random);
+      final double dix = 1.0 / direction(random);
+      final double diy = 1.0 / direction(random);
+      final double diz = 1.0 / direction(random);
+      final int count = random.nextInt(LeafKernelDType.MAXIMUM_COUNT + 1);
+      final int index = random.nextInt(OBJECTS - count + 1);
+      Assert.assertEquals(
+        scalar.intersectingVolumes(ox, oy, oz, dix, diy, diz, bounds, index, count),
+        vector.intersectingVolumes(ox, oy, oz, dix, diy, diz, bounds, index, count));
+    }
+  }
+}
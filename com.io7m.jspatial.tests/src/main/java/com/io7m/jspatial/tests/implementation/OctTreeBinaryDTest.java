@@ -0,0 +1,261 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jspatial.tests.implementation;
+
+import com.io7m.jaffirm.core.PreconditionViolationException;
+import com.io7m.jregions.core.unparameterized.volumes.VolumeD;
+import com.io7m.jspatial.api.TreeVisitResult;
+import com.io7m.jspatial.api.octtrees.OctTreeConfigurationD;
+import com.io7m.jspatial.api.octtrees.OctTreeDType;
+import com.io7m.jspatial.api.octtrees.OctTreeReadableDType;
+import com.io7m.jspatial.implementation.OctTreeBinaryD;
+import com.io7m.jspatial.implementation.OctTreeD;
+import com.io7m.jspatial.implementation.OctTreeVersionedSupplierD;
+import com.io7m.jspatial.tests.api.VolumeDContainedGenerator;
+import net.java.quickcheck.Generator;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.LongFunction;
+import java.util.function.ToLongFunction;
+
+/**
+ * Tests for {@link OctTreeBinaryD}.
+ */
+
+public final class OctTreeBinaryDTest
+{
+  private static final VolumeD CONTAINER =
+    VolumeD.of(-512.0, 512.0, -512.0, 512.0, -512.0, 512.0);
+
+  @Rule public final ExpectedException expected = ExpectedException.none();
+
+  private static OctTreeConfigurationD configuration()
+  {
+    final OctTreeConfigurationD.Builder cb = OctTreeConfigurationD.builder();
+    cb.setVolume(CONTAINER);
+    cb.setMinimumOctantWidth(4.0);
+    cb.setMinimumOctantHeight(8.0);
+    cb.setMinimumOctantDepth(16.0);
+    cb.setMaximumItemsPerLeaf(4);
+    cb.setMaximumDepth(12);
+    cb.setTrimOnRemove(true);
+    return cb.build();
+  }
+
+  private static <T extends Comparable<T>> List<String> structure(
+    final OctTreeReadableDType<T> tree)
+  {
+    final List<String> out = new ArrayList<>();
+    tree.iterateOctants(out, (context, octant, depth) -> {
+      final Set<T> objects = new TreeSet<>(octant.objects().keySet());
+      context.add(depth + " " + octant.volume() + " " + objects);
+      return TreeVisitResult.RESULT_CONTINUE;
+    });
+    return out;
+  }
+
+  private static <T> byte[] write(
+    final OctTreeDType<T> tree,
+    final ToLongFunction<T> ids)
+    throws IOException
+  {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    OctTreeBinaryD.write(tree, ids, Channels.newChannel(out));
+    return out.toByteArray();
+  }
+
+  private static <T> OctTreeDType<T> read(
+    final byte[] data,
+    final LongFunction<T> items)
+    throws IOException
+  {
+    return OctTreeBinaryD.read(
+      Channels.newChannel(new ByteArrayInputStream(data)), items);
+  }
+
+  private static OctTreeDType<Integer> populated(
+    final List<Integer> items)
+  {
+    final Generator<VolumeD> gen = new VolumeDContainedGenerator(CONTAINER);
+    final OctTreeDType<Integer> tree = OctTreeD.create(configuration());
+    for (int index = 0; index < 5000; ++index) {
+      final Integer item = Integer.valueOf(index);
+      items.add(item);
+      tree.insert(item, gen.next());
+    }
+    for (int index = 0; index < 5000; index += 3) {
+      tree.remove(items.get(index));
+    }
+    return tree;
+  }
+
+  /**
+   * A tree read back has the same configuration, shape, and contents as
+   * the tree that was written. The tree is large enough that the format
+   * is written and read through several buffers.
+   */
+
+  @Test
+  public void testRoundTrip()
+    throws IOException
+  {
+    final List<Integer> items = new ArrayList<>();
+    final OctTreeDType<Integer> tree = populated(items);
+
+    final byte[] data = write(tree, Integer::longValue);
+    final OctTreeDType<Integer> loaded =
+      read(data, id -> items.get((int) id));
+
+    Assert.assertEquals(tree.size(), loaded.size());
+    Assert.assertEquals(tree.bounds(), loaded.bounds());
+    Assert.assertEquals(structure(tree), structure(loaded));
+    Assert.assertEquals(tree, loaded);
+
+    final Generator<VolumeD> gen = new VolumeDContainedGenerator(CONTAINER);
+    for (int query = 0; query < 100; ++query) {
+      final VolumeD volume = gen.next();
+      final Set<Integer> expected_items = new HashSet<>();
+      final Set<Integer> received_items = new HashSet<>();
+      tree.overlappedBy(volume, expected_items);
+      loaded.overlappedBy(volume, received_items);
+      Assert.assertEquals(expected_items, received_items);
+    }
+
+    /*
+     * The loaded tree uses the configuration of the original tree: objects
+     * are placed identically after further insertions and removals.
+     */
+
+    final Generator<VolumeD> more = new VolumeDContainedGenerator(CONTAINER);
+    for (int index = 0; index < 5000; index += 3) {
+      final VolumeD volume = more.next();
+      tree.insert(items.get(index), volume);
+      loaded.insert(items.get(index), volume);
+    }
+    for (int index = 1; index < 5000; index += 3) {
+      tree.remove(items.get(index));
+      loaded.remove(items.get(index));
+    }
+    Assert.assertEquals(structure(tree), structure(loaded));
+  }
+
+  /**
+   * Empty trees can be written and read.
+   */
+
+  @Test
+  public void testRoundTripEmpty()
+    throws IOException
+  {
+    final OctTreeDType<Integer> tree = OctTreeD.create(configuration());
+    final OctTreeDType<Integer> loaded =
+      read(write(tree, Integer::longValue), id -> Integer.valueOf((int) id));
+    Assert.assertEquals(0L, loaded.size());
+    Assert.assertEquals(structure(tree), structure(loaded));
+  }
+
+  /**
+   * Data that does not start with the magic number is rejected.
+   */
+
+  @Test
+  public void testUnrecognized()
+    throws IOException
+  {
+    this.expected.expect(IOException.class);
+    this.expected.expectMessage("magic number");
+    read(new byte[128], id -> Integer.valueOf((int) id));
+  }
+
+  /**
+   * Truncated data is rejected.
+   */
+
+  @Test
+  public void testTruncated()
+    throws IOException
+  {
+    final List<Integer> items = new ArrayList<>();
+    final byte[] data = write(populated(items), Integer::longValue);
+
+    this.expected.expect(EOFException.class);
+    read(Arrays.copyOf(data, data.length - 1), id -> items.get((int) id));
+  }
+
+  /**
+   * Data that places the same object in the tree twice is rejected.
+   */
+
+  @Test
+  public void testDuplicate()
+    throws IOException
+  {
+    final List<Integer> items = new ArrayList<>();
+    final byte[] data = write(populated(items), item -> 0L);
+
+    this.expected.expect(IOException.class);
+    this.expected.expectMessage("more than once");
+    read(data, id -> items.get((int) id));
+  }
+
+  /**
+   * Only trees created by {@link OctTreeD} can be written.
+   */
+
+  @Test
+  public void testWriteOtherImplementation()
+    throws IOException
+  {
+    final OctTreeDType<Integer> tree =
+      new OctTreeVersionedSupplierD().create(configuration());
+
+    this.expected.expect(PreconditionViolationException.class);
+    write(tree, Integer::longValue);
+  }
+
+  /**
+   * Data written in version 1 of the format is rejected.
+   */
+
+  @Test
+  public void testVersion1()
+    throws IOException
+  {
+    final List<Integer> items = new ArrayList<>();
+    final byte[] data = write(populated(items), Integer::longValue);
+    ByteBuffer.wrap(data).putInt(4, 1);
+
+    this.expected.expect(IOException.class);
+    this.expected.expectMessage("version 1");
+    read(data, id -> items.get((int) id));
+  }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.jspatial.tests.implementation;
+
+import com.io7m.jregions.core.unparameterized.volumes.VolumeL;
+import com.io7m.jspatial.api.Ray3D;
+import com.io7m.jspatial.api.TreeVisitResult;
+import com.io7m.jspatial.api.octtrees.OctTreeConfigurationL;
+import com.io7m.jspatial.api.octtrees.OctTreeLType;
+import com.io7m.jspatial.api.octtrees.OctTreeRaycastResultL;
+import com.io7m.jspatial.implementation.OctTreeFlatL;
+import com.io7m.jspatial.implementation.OctTreeFlatSupplierL;
+import com.io7m.jspatial.implementation.OctTreeL;
+import com.io7m.jspatial.tests.api.VolumeLContainedGenerator;
+import com.io7m.jspatial.tests.api.octtrees.OctTreeLContract;
+import com.io7m.jtensors.core.unparameterized.vectors.Vector3D;
+import net.java.quickcheck.Generator;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * Test for {@link OctTreeFlatL}
+ */
+
+public final class OctTreeFlatLTest extends OctTreeLContract
+{
+  private static List<String> structure(final OctTreeLType<Integer> tree)
+  {
+    final List<String> nodes = new ArrayList<>();
+    tree.iterateOctants(nodes, (context, octant, depth) -> {
+      context.add(depth + " " + octant.volume() + " " + new TreeSet<>(octant.objects().keySet()));
+      return TreeVisitResult.RESULT_CONTINUE;
+    });
+    return nodes;
+  }
+
+  @Override
+  protected <T> OctTreeLType<T> create(final OctTreeConfigurationL config)
+  {
+    return new OctTreeFlatSupplierL().create(config);
+  }
+
+  /**
+   * The flat tree has the same structure and query results as the default
+   * implementation after an arbitrary sequence of operations.
+   */
+
+  @Test
+  public void testEquivalentToOctTreeL()
+  {
+    final VolumeL container =
+      VolumeL.of(-512L, 512L, -512L, 512L, -512L, 512L);
+
+    for (final int capacity : new int[]{0, 4}) {
+      final OctTreeConfigurationL.Builder cb = OctTreeConfigurationL.builder();
+      cb.setVolume(container);
+      cb.setTrimOnRemove(true);
+      cb.setMaximumItemsPerLeaf(capacity);
+      final OctTreeConfigurationL c = cb.build();
+
+      final OctTreeLType<Integer> expected = OctTreeL.create(c);
+      final OctTreeLType<Integer> tree = this.create(c);
+
+      final Generator<VolumeL> gen = new VolumeLContainedGenerator(container);
+      final Random random = new Random(0L);
+      final List<Integer> items = new ArrayList<>();
+      for (int index = 0; index < 300; ++index) {
+        final Integer item = Integer.valueOf(index);
+        final VolumeL volume = gen.next();
+        items.add(item);
+        Assert.assertEquals(
+          Boolean.valueOf(expected.insert(item, volume)),
+          Boolean.valueOf(tree.insert(item, volume)));
+      }
+
+      for (int index = 0; index < 300; ++index) {
+        final Integer item = items.get(random.nextInt(items.size()));
+        if (random.nextBoolean()) {
+          final VolumeL volume = gen.next();
+          Assert.assertEquals(
+            Boolean.valueOf(expected.insert(item, volume)),
+            Boolean.valueOf(tree.insert(item, volume)));
+        } else {
+          Assert.assertEquals(
+            Boolean.valueOf(expected.remove(item)),
+            Boolean.valueOf(tree.remove(item)));
+        }
+      }
+
+      Assert.assertEquals(expected.size(), tree.size());
+      Assert.assertEquals(structure(expected), structure(tree));
+
+      for (int index = 0; index < 50; ++index) {
+        final VolumeL query = gen.next();
+
+        final Set<Integer> expected_overlapped = new HashSet<>();
+        final Set<Integer> overlapped = new HashSet<>();
+        expected.overlappedBy(query, expected_overlapped);
+        tree.overlappedBy(query, overlapped);
+        Assert.assertEquals(expected_overlapped, overlapped);
+
+        final Set<Integer> expected_contained = new HashSet<>();
+        final Set<Integer> contained = new HashSet<>();
+        expected.containedBy(query, expected_contained);
+        tree.containedBy(query, contained);
+        Assert.assertEquals(expected_contained, contained);
+
+        final Ray3D ray = Ray3D.of(
+          Vector3D.of(
+            (double) query.minimumX(),
+            (double) query.minimumY(),
+            (double) query.minimumZ()),
+          Vector3D.of(
+            random.nextDouble() - 0.5,
+            random.nextDouble() - 0.5,
+            random.nextDouble() - 0.5));
+
+        final SortedSet<OctTreeRaycastResultL<Integer>> expected_hits = new TreeSet<>();
+        final SortedSet<OctTreeRaycastResultL<Integer>> hits = new TreeSet<>();
+        expected.raycast(ray, expected_hits);
+        tree.raycast(ray, hits);
+        Assert.assertEquals(expected_hits, hits);
+      }
+
+      tree.trim();
+      expected.trim();
+      Assert.assertEquals(structure(expected), structure(tree));
+    }
+  }
+
+  /**
+   * Bulk insertion, through the supplier, produces the same structure as the
+   * default implementation.
+   */
+
+  @Test
+  public void testInsertAllEquivalentToOctTreeL()
+  {
+    final VolumeL container =
+      VolumeL.of(-512L, 512L, -512L, 512L, -512L, 512L);
+
+    for (final int capacity : new int[]{0, 4}) {
+      final OctTreeConfigurationL.Builder cb = OctTreeConfigurationL.builder();
+      cb.setVolume(container);
+      cb.setMaximumItemsPerLeaf(capacity);
+      final OctTreeConfigurationL c = cb.build();
+
+      final Generator<VolumeL> gen = new VolumeLContainedGenerator(container);
+      final Map<Integer, VolumeL> items = new HashMap<>();
+      for (int index = 0; index < 300; ++index) {
+        items.put(Integer.valueOf(index), gen.next());
+      }
+
+      final OctTreeLType<Integer> expected = OctTreeL.create(c);
+      Assert.assertEquals(300L, expected.insertAll(items));
+
+      final OctTreeLType<Integer> tree = new OctTreeFlatSupplierL().build(c, items);
+      Assert.assertEquals(300L, tree.size());
+      Assert.assertEquals(structure(expected), structure(tree));
+    }
+  }
+}
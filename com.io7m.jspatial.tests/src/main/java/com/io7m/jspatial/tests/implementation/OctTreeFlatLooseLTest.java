@@ -0,0 +1,269 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jspatial.tests.implementation;
+
+import com.io7m.jaffirm.core.PreconditionViolationException;
+import com.io7m.jregions.core.unparameterized.volumes.VolumeL;
+import com.io7m.jregions.core.unparameterized.volumes.VolumesL;
+import com.io7m.jspatial.api.Ray3D;
+import com.io7m.jspatial.api.TreeVisitResult;
+import com.io7m.jspatial.api.octtrees.OctTreeConfigurationL;
+import com.io7m.jspatial.api.octtrees.OctTreeLType;
+import com.io7m.jspatial.api.octtrees.OctTreeRaycastResultL;
+import com.io7m.jspatial.implementation.OctTreeFlatL;
+import com.io7m.jspatial.implementation.OctTreeFlatSupplierL;
+import com.io7m.jspatial.implementation.OctTreeL;
+import com.io7m.jspatial.tests.api.VolumeLContainedGenerator;
+import com.io7m.jtensors.core.unparameterized.vectors.Vector3D;
+import net.java.quickcheck.Generator;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * Test for loose {@link OctTreeFlatL} trees.
+ */
+
+public final class OctTreeFlatLooseLTest
+{
+  @Rule public final ExpectedException expected = ExpectedException.none();
+
+  private static void checkLoose(final OctTreeLType<Integer> tree)
+  {
+    tree.iterateOctants(tree, (context, octant, depth) -> {
+      octant.objects().forEach((item, volume) -> Assert.assertTrue(
+        VolumesL.contains(octant.volume(), volume)));
+      return TreeVisitResult.RESULT_CONTINUE;
+    });
+  }
+
+  private static void checkQueries(
+    final OctTreeLType<Integer> expected,
+    final OctTreeLType<Integer> tree,
+    final Generator<VolumeL> gen,
+    final Random random)
+  {
+    Assert.assertEquals(expected.size(), tree.size());
+
+    for (int index = 0; index < 50; ++index) {
+      final VolumeL query = gen.next();
+
+      final Set<Integer> expected_overlapped = new HashSet<>();
+      final Set<Integer> overlapped = new HashSet<>();
+      expected.overlappedBy(query, expected_overlapped);
+      tree.overlappedBy(query, overlapped);
+      Assert.assertEquals(expected_overlapped, overlapped);
+      Assert.assertEquals(
+        (long) overlapped.size(), tree.countOverlapping(query));
+
+      final Set<Integer> expected_contained = new HashSet<>();
+      final Set<Integer> contained = new HashSet<>();
+      expected.containedBy(query, expected_contained);
+      tree.containedBy(query, contained);
+      Assert.assertEquals(expected_contained, contained);
+      Assert.assertEquals(
+        (long) contained.size(), tree.countContainedBy(query));
+
+      final Ray3D ray = Ray3D.of(
+        Vector3D.of(
+          (double) query.minimumX(),
+          (double) query.minimumY(),
+          (double) query.minimumZ()),
+        Vector3D.of(
+          random.nextDouble() - 0.5,
+          random.nextDouble() - 0.5,
+          random.nextDouble() - 0.5));
+
+      final SortedSet<OctTreeRaycastResultL<Integer>> expected_hits = new TreeSet<>();
+      final SortedSet<OctTreeRaycastResultL<Integer>> hits = new TreeSet<>();
+      expected.raycast(ray, expected_hits);
+      tree.raycast(ray, hits);
+      Assert.assertEquals(expected_hits, hits);
+      Assert.assertEquals(
+        expected.raycastFirst(ray).map(OctTreeRaycastResultL::distance),
+        tree.raycastFirst(ray).map(OctTreeRaycastResultL::distance));
+
+      final List<Double> expected_nearest = new ArrayList<>();
+      final List<Double> nearest = new ArrayList<>();
+      expected.nearest(ray.origin(), 5, expected_nearest, (context, item, volume, distance) -> {
+        context.add(Double.valueOf(distance));
+        return TreeVisitResult.RESULT_CONTINUE;
+      });
+      tree.nearest(ray.origin(), 5, nearest, (context, item, volume, distance) -> {
+        context.add(Double.valueOf(distance));
+        return TreeVisitResult.RESULT_CONTINUE;
+      });
+      Assert.assertEquals(expected_nearest, nearest);
+    }
+  }
+
+  private static long depthOf(
+    final OctTreeLType<Integer> tree,
+    final Integer item)
+  {
+    final long[] result = {-1L};
+    tree.iterateOctants(result, (context, octant, depth) -> {
+      if (octant.objects().containsKey(item)) {
+        context[0] = depth;
+        return TreeVisitResult.RESULT_TERMINATE;
+      }
+      return TreeVisitResult.RESULT_CONTINUE;
+    });
+    return result[0];
+  }
+
+  /**
+   * A loose tree returns the same query results as the default
+   * implementation after an arbitrary sequence of operations, and every
+   * object lies within the loose bounds of the octant that holds it.
+   */
+
+  @Test
+  public void testQueriesEquivalentToOctTreeL()
+  {
+    final VolumeL container =
+      VolumeL.of(-512L, 512L, -512L, 512L, -512L, 512L);
+
+    for (final double looseness : new double[]{1.5, 2.0, 3.0}) {
+      for (final int capacity : new int[]{0, 4}) {
+        final OctTreeConfigurationL.Builder cb = OctTreeConfigurationL.builder();
+        cb.setVolume(container);
+        cb.setTrimOnRemove(true);
+        cb.setMaximumItemsPerLeaf(capacity);
+        final OctTreeConfigurationL c = cb.build();
+
+        final OctTreeLType<Integer> expected = OctTreeL.create(c);
+        final OctTreeLType<Integer> tree = OctTreeFlatL.createLoose(c, looseness);
+
+        final Generator<VolumeL> gen = new VolumeLContainedGenerator(container);
+        final Random random = new Random(0L);
+        final List<Integer> items = new ArrayList<>();
+        for (int index = 0; index < 300; ++index) {
+          final Integer item = Integer.valueOf(index);
+          final VolumeL volume = gen.next();
+          items.add(item);
+          Assert.assertEquals(
+            Boolean.valueOf(expected.insert(item, volume)),
+            Boolean.valueOf(tree.insert(item, volume)));
+        }
+
+        for (int index = 0; index < 300; ++index) {
+          final Integer item = items.get(random.nextInt(items.size()));
+          if (random.nextBoolean()) {
+            final VolumeL volume = gen.next();
+            Assert.assertEquals(
+              Boolean.valueOf(expected.insert(item, volume)),
+              Boolean.valueOf(tree.insert(item, volume)));
+          } else {
+            Assert.assertEquals(
+              Boolean.valueOf(expected.remove(item)),
+              Boolean.valueOf(tree.remove(item)));
+          }
+        }
+
+        checkLoose(tree);
+        checkQueries(expected, tree, gen, random);
+        tree.trim();
+        checkLoose(tree);
+        checkQueries(expected, tree, gen, random);
+      }
+    }
+  }
+
+  /**
+   * Bulk insertion into a loose tree, through the supplier, yields the same
+   * query results as the default implementation.
+   */
+
+  @Test
+  public void testInsertAllQueriesEquivalentToOctTreeL()
+  {
+    final VolumeL container =
+      VolumeL.of(-512L, 512L, -512L, 512L, -512L, 512L);
+
+    for (final int capacity : new int[]{0, 4}) {
+      final OctTreeConfigurationL.Builder cb = OctTreeConfigurationL.builder();
+      cb.setVolume(container);
+      cb.setMaximumItemsPerLeaf(capacity);
+      final OctTreeConfigurationL c = cb.build();
+
+      final Generator<VolumeL> gen = new VolumeLContainedGenerator(container);
+      final Map<Integer, VolumeL> items = new HashMap<>();
+      for (int index = 0; index < 300; ++index) {
+        items.put(Integer.valueOf(index), gen.next());
+      }
+
+      final OctTreeLType<Integer> expected = OctTreeL.create(c);
+      Assert.assertEquals(300L, expected.insertAll(items));
+
+      final OctTreeLType<Integer> tree = new OctTreeFlatSupplierL(2.0).build(c, items);
+      checkLoose(tree);
+      checkQueries(expected, tree, gen, new Random(0L));
+    }
+  }
+
+  /**
+   * A small object that straddles the split planes of the root is held at
+   * the root of an ordinary tree, but deeper in a loose tree.
+   */
+
+  @Test
+  public void testStraddlingObjectDescends()
+  {
+    final OctTreeConfigurationL.Builder cb = OctTreeConfigurationL.builder();
+    cb.setVolume(VolumeL.of(0L, 1024L, 0L, 1024L, 0L, 1024L));
+    cb.setMaximumItemsPerLeaf(0);
+    final OctTreeConfigurationL c = cb.build();
+
+    final Integer item = Integer.valueOf(0);
+    final VolumeL volume = VolumeL.of(508L, 516L, 508L, 516L, 508L, 516L);
+
+    final OctTreeLType<Integer> tight = OctTreeFlatL.create(c);
+    Assert.assertTrue(tight.insert(item, volume));
+    Assert.assertEquals(0L, depthOf(tight, item));
+
+    final OctTreeLType<Integer> loose = OctTreeFlatL.createLoose(c, 2.0);
+    Assert.assertTrue(loose.insert(item, volume));
+    Assert.assertEquals(7L, depthOf(loose, item));
+  }
+
+  /**
+   * A looseness factor below one is rejected.
+   */
+
+  @Test
+  public void testLoosenessInvalid()
+  {
+    final OctTreeConfigurationL.Builder cb = OctTreeConfigurationL.builder();
+    cb.setVolume(VolumeL.of(0L, 1024L, 0L, 1024L, 0L, 1024L));
+    final OctTreeConfigurationL c = cb.build();
+
+    this.expected.expect(PreconditionViolationException.class);
+    OctTreeFlatL.createLoose(c, 0.5);
+  }
+}
@@ -0,0 +1,296 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jspatial.tests.implementation;
+
+import com.io7m.jregions.core.unparameterized.volumes.VolumeL;
+import com.io7m.jregions.core.unparameterized.volumes.VolumesL;
+import com.io7m.jspatial.api.Ray3D;
+import com.io7m.jspatial.api.TreeVisitResult;
+import com.io7m.jspatial.api.octtrees.OctTreeConfigurationL;
+import com.io7m.jspatial.api.octtrees.OctTreeLType;
+import com.io7m.jspatial.api.octtrees.OctTreeRaycastBufferL;
+import com.io7m.jspatial.api.octtrees.OctTreeRaycastResultL;
+import com.io7m.jspatial.implementation.OctTreeGridL;
+import com.io7m.jspatial.implementation.OctTreeGridSupplierL;
+import com.io7m.jspatial.implementation.OctTreeL;
+import com.io7m.jspatial.tests.api.VolumeLContainedGenerator;
+import com.io7m.jtensors.core.unparameterized.vectors.Vector3D;
+import net.java.quickcheck.Generator;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * Test for {@link OctTreeGridL}
+ */
+
+public final class OctTreeGridLTest
+{
+  private static OctTreeConfigurationL configuration(
+    final VolumeL volume,
+    final long cell_size)
+  {
+    final OctTreeConfigurationL.Builder cb = OctTreeConfigurationL.builder();
+    cb.setVolume(volume);
+    cb.setMinimumOctantWidth(cell_size);
+    cb.setMinimumOctantHeight(cell_size);
+    cb.setMinimumOctantDepth(cell_size);
+    return cb.build();
+  }
+
+  /**
+   * A generator of small volumes spread evenly over a container.
+   */
+
+  private static Generator<VolumeL> small(
+    final VolumeL container,
+    final Random random)
+  {
+    return () -> {
+      final long x = container.minimumX() + (long) random.nextInt(
+        Math.toIntExact(container.sizeX() - 16L));
+      final long y = container.minimumY() + (long) random.nextInt(
+        Math.toIntExact(container.sizeY() - 16L));
+      final long z = container.minimumZ() + (long) random.nextInt(
+        Math.toIntExact(container.sizeZ() - 16L));
+      return VolumeL.of(
+        x,
+        x + (long) random.nextInt(17),
+        y,
+        y + (long) random.nextInt(17),
+        z,
+        z + (long) random.nextInt(17));
+    };
+  }
+
+  /**
+   * Check that every object lies within the volume of the octant that holds
+   * it, and that every object is held exactly once.
+   */
+
+  private static void checkStructure(final OctTreeLType<Integer> tree)
+  {
+    final Set<Integer> seen = new HashSet<>();
+    tree.iterateOctants(tree, (context, octant, depth) -> {
+      Assert.assertTrue(depth <= 1L);
+      octant.objects().forEach((item, volume) -> {
+        Assert.assertTrue(seen.add(item));
+        Assert.assertEquals(context.volumeFor(item), volume);
+        Assert.assertTrue(VolumesL.contains(octant.volume(), volume));
+      });
+      return TreeVisitResult.RESULT_CONTINUE;
+    });
+    Assert.assertEquals(tree.size(), (long) seen.size());
+  }
+
+  private static void checkQueries(
+    final OctTreeLType<Integer> expected,
+    final OctTreeLType<Integer> tree,
+    final Generator<VolumeL> gen,
+    final Random random)
+  {
+    Assert.assertEquals(expected.size(), tree.size());
+
+    for (int index = 0; index < 50; ++index) {
+      final VolumeL query = gen.next();
+
+      final Set<Integer> expected_overlapped = new HashSet<>();
+      final Set<Integer> overlapped = new HashSet<>();
+      expected.overlappedBy(query, expected_overlapped);
+      tree.overlappedBy(query, overlapped);
+      Assert.assertEquals(expected_overlapped, overlapped);
+      Assert.assertEquals(
+        (long) overlapped.size(), tree.countOverlapping(query));
+      Assert.assertEquals(
+        Boolean.valueOf(!overlapped.isEmpty()),
+        Boolean.valueOf(tree.anyOverlapping(query)));
+
+      final Set<Integer> expected_contained = new HashSet<>();
+      final Set<Integer> contained = new HashSet<>();
+      expected.containedBy(query, expected_contained);
+      tree.containedBy(query, contained);
+      Assert.assertEquals(expected_contained, contained);
+      Assert.assertEquals(
+        (long) contained.size(), tree.countContainedBy(query));
+
+      final Ray3D ray = Ray3D.of(
+        Vector3D.of(
+          (double) query.minimumX(),
+          (double) query.minimumY(),
+          (double) query.minimumZ()),
+        Vector3D.of(
+          random.nextDouble() - 0.5,
+          random.nextDouble() - 0.5,
+          random.nextDouble() - 0.5));
+
+      final SortedSet<OctTreeRaycastResultL<Integer>> expected_hits = new TreeSet<>();
+      final SortedSet<OctTreeRaycastResultL<Integer>> hits = new TreeSet<>();
+      expected.raycast(ray, expected_hits);
+      tree.raycast(ray, hits);
+      Assert.assertEquals(expected_hits, hits);
+      Assert.assertEquals(
+        expected.raycastFirst(ray).map(OctTreeRaycastResultL::distance),
+        tree.raycastFirst(ray).map(OctTreeRaycastResultL::distance));
+
+      final List<Double> expected_first = new ArrayList<>();
+      final List<Double> first = new ArrayList<>();
+      expected.raycastFirst(ray, 5, expected_first, (context, item, volume, distance) -> {
+        context.add(Double.valueOf(distance));
+        return TreeVisitResult.RESULT_CONTINUE;
+      });
+      tree.raycastFirst(ray, 5, first, (context, item, volume, distance) -> {
+        context.add(Double.valueOf(distance));
+        return TreeVisitResult.RESULT_CONTINUE;
+      });
+      Assert.assertEquals(expected_first, first);
+
+      final OctTreeRaycastBufferL<Integer> expected_buffer = OctTreeRaycastBufferL.create();
+      final OctTreeRaycastBufferL<Integer> buffer = OctTreeRaycastBufferL.create();
+      expected.raycast(ray, expected_buffer);
+      tree.raycast(ray, buffer);
+      Assert.assertEquals(expected_buffer.size(), buffer.size());
+
+      final List<Double> expected_nearest = new ArrayList<>();
+      final List<Double> nearest = new ArrayList<>();
+      expected.nearest(ray.origin(), 5, expected_nearest, (context, item, volume, distance) -> {
+        context.add(Double.valueOf(distance));
+        return TreeVisitResult.RESULT_CONTINUE;
+      });
+      tree.nearest(ray.origin(), 5, nearest, (context, item, volume, distance) -> {
+        context.add(Double.valueOf(distance));
+        return TreeVisitResult.RESULT_CONTINUE;
+      });
+      Assert.assertEquals(expected_nearest, nearest);
+    }
+  }
+
+  /**
+   * A grid returns the same query results as the default implementation
+   * after an arbitrary sequence of insertions, moves, and removals, for both
+   * small, evenly distributed objects and large ones.
+   */
+
+  @Test
+  public void testQueriesEquivalentToOctTreeL()
+  {
+    final VolumeL container =
+      VolumeL.of(-512L, 512L, -512L, 512L, -512L, 512L);
+
+    for (final long cell_size : new long[]{8L, 64L, 2048L}) {
+      final OctTreeConfigurationL c = configuration(container, cell_size);
+      final Random random = new Random(cell_size);
+      final List<Generator<VolumeL>> gens = List.of(
+        small(container, random), new VolumeLContainedGenerator(container));
+
+      for (final Generator<VolumeL> gen : gens) {
+        final OctTreeLType<Integer> expected = OctTreeL.create(c);
+        final OctTreeLType<Integer> tree = new OctTreeGridSupplierL().create(c);
+
+        final List<Integer> items = new ArrayList<>();
+        for (int index = 0; index < 1000; ++index) {
+          final Integer item = Integer.valueOf(index);
+          final VolumeL volume = gen.next();
+          items.add(item);
+          Assert.assertEquals(
+            Boolean.valueOf(expected.insert(item, volume)),
+            Boolean.valueOf(tree.insert(item, volume)));
+        }
+
+        checkStructure(tree);
+        checkQueries(expected, tree, gen, random);
+
+        for (int index = 0; index < 1000; ++index) {
+          final Integer item = items.get(random.nextInt(items.size()));
+          if (random.nextBoolean()) {
+            final VolumeL volume = gen.next();
+            Assert.assertEquals(
+              Boolean.valueOf(expected.insert(item, volume)),
+              Boolean.valueOf(tree.insert(item, volume)));
+          } else {
+            Assert.assertEquals(
+              Boolean.valueOf(expected.remove(item)),
+              Boolean.valueOf(tree.remove(item)));
+          }
+        }
+
+        Assert.assertFalse(tree.insert(items.get(0), VolumeL.of(0L, 1024L, 0L, 1L, 0L, 1L)));
+        Assert.assertFalse(tree.contains(items.get(0)));
+        expected.remove(items.get(0));
+
+        tree.trim();
+        checkStructure(tree);
+        checkQueries(expected, tree, gen, random);
+
+        for (final Integer item : items) {
+          Assert.assertEquals(
+            Boolean.valueOf(expected.remove(item)),
+            Boolean.valueOf(tree.remove(item)));
+        }
+
+        Assert.assertEquals(0L, tree.size());
+        checkStructure(tree);
+        checkQueries(expected, tree, gen, random);
+      }
+    }
+  }
+
+  /**
+   * Bulk insertion, through the supplier, holds the same objects as the
+   * default implementation, and the grid can be mapped.
+   */
+
+  @Test
+  public void testInsertAllEquivalentToOctTreeL()
+  {
+    final VolumeL container =
+      VolumeL.of(-512L, 512L, -512L, 512L, -512L, 512L);
+    final OctTreeConfigurationL c = configuration(container, 32L);
+    final Random random = new Random(0L);
+    final Generator<VolumeL> gen = small(container, random);
+
+    final Map<Integer, VolumeL> items = new HashMap<>();
+    for (int index = 0; index < 5000; ++index) {
+      items.put(Integer.valueOf(index), gen.next());
+    }
+    items.put(Integer.valueOf(-1), VolumeL.of(0L, 1024L, 0L, 1024L, 0L, 1024L));
+
+    final OctTreeLType<Integer> expected = OctTreeL.create(c);
+    Assert.assertEquals(5000L, expected.insertAll(items));
+
+    final OctTreeLType<Integer> tree = new OctTreeGridSupplierL().build(c, items);
+    Assert.assertEquals(5000L, tree.size());
+    Assert.assertFalse(tree.contains(Integer.valueOf(-1)));
+    checkStructure(tree);
+    checkQueries(expected, tree, gen, random);
+
+    final OctTreeLType<Integer> mapped = tree.map((item, volume) -> item);
+    Assert.assertEquals(tree, mapped);
+    Assert.assertEquals((long) tree.hashCode(), (long) mapped.hashCode());
+    tree.clear();
+    Assert.assertEquals(0L, tree.size());
+    Assert.assertNotEquals(tree, mapped);
+  }
+}
@@ -0,0 +1,359 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.jspatial.tests.implementation;
+
+import com.io7m.jregions.core.unparameterized.volumes.VolumeD;
+import com.io7m.jspatial.api.Ray3D;
+import com.io7m.jspatial.api.TreeVisitResult;
+import com.io7m.jspatial.api.octtrees.OctTreeConfigurationD;
+import com.io7m.jspatial.api.octtrees.OctTreeDType;
+import com.io7m.jspatial.api.octtrees.OctTreeRaycastResultD;
+import com.io7m.jspatial.api.octtrees.OctTreeReadableDType;
+import com.io7m.jspatial.implementation.OctTreeBinaryD;
+import com.io7m.jspatial.implementation.OctTreeD;
+import com.io7m.jspatial.implementation.OctTreeMappedD;
+import com.io7m.jspatial.tests.api.VolumeDContainedGenerator;
+import com.io7m.jtensors.core.unparameterized.vectors.Vector3D;
+import net.java.quickcheck.Generator;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.function.ToLongFunction;
+
+/**
+ * Tests for {@link OctTreeMappedD}.
+ */
+
+public final class OctTreeMappedDTest
+{
+  private static final VolumeD CONTAINER =
+    VolumeD.of(-512.0, 512.0, -512.0, 512.0, -512.0, 512.0);
+
+  /*
+   * The layout of the format, as documented by OctTreeBinaryD.
+   */
+
+  private static final int HEADER_SIZE = 8 + 9 * 8 + 8 + 1 + 8;
+  private static final int MAXIMUM_DEPTH = 8 + 9 * 8 + 4;
+  private static final int OCTANT_SIZE = 1 + 4 + 4 + 8 + 6 * 8;
+  private static final int OBJECT_SIZE = 8 + 6 * 8;
+
+  @Rule public final ExpectedException expected = ExpectedException.none();
+  @Rule public final TemporaryFolder folder = new TemporaryFolder();
+
+  private static OctTreeConfigurationD configuration()
+  {
+    final OctTreeConfigurationD.Builder cb = OctTreeConfigurationD.builder();
+    cb.setVolume(CONTAINER);
+    cb.setMinimumOctantWidth(4.0);
+    cb.setMinimumOctantHeight(8.0);
+    cb.setMinimumOctantDepth(16.0);
+    cb.setMaximumItemsPerLeaf(4);
+    cb.setMaximumDepth(12);
+    cb.setTrimOnRemove(true);
+    return cb.build();
+  }
+
+  private static <T extends Comparable<T>> List<String> structure(
+    final OctTreeReadableDType<T> tree)
+  {
+    final List<String> out = new ArrayList<>();
+    tree.iterateOctants(out, (context, octant, depth) -> {
+      final Set<T> objects = new TreeSet<>(octant.objects().keySet());
+      context.add(depth + " " + octant.volume() + " " + objects);
+      return TreeVisitResult.RESULT_CONTINUE;
+    });
+    return out;
+  }
+
+  private static OctTreeDType<Integer> populated(
+    final List<Integer> items)
+  {
+    final Generator<VolumeD> gen = new VolumeDContainedGenerator(CONTAINER);
+    final OctTreeDType<Integer> tree = OctTreeD.create(configuration());
+    for (int index = 0; index < 5000; ++index) {
+      final Integer item = Integer.valueOf(index);
+      items.add(item);
+      tree.insert(item, gen.next());
+    }
+    for (int index = 0; index < 5000; index += 3) {
+      tree.remove(items.get(index));
+    }
+    return tree;
+  }
+
+  private Path write(
+    final OctTreeDType<Integer> tree,
+    final ToLongFunction<Integer> ids)
+    throws IOException
+  {
+    final Path file = this.folder.newFile().toPath();
+    try (FileChannel channel =
+           FileChannel.open(file, StandardOpenOption.WRITE)) {
+      OctTreeBinaryD.write(tree, ids, channel);
+    }
+    return file;
+  }
+
+  private static OctTreeReadableDType<Integer> open(
+    final Path file,
+    final List<Integer> items)
+    throws IOException
+  {
+    try (FileChannel channel =
+           FileChannel.open(file, StandardOpenOption.READ)) {
+      return OctTreeMappedD.open(
+        channel, Integer::longValue, id -> items.get((int) id));
+    }
+  }
+
+  private static List<Double> nearest(
+    final OctTreeReadableDType<Integer> tree,
+    final Vector3D point)
+  {
+    final List<Double> out = new ArrayList<>();
+    tree.nearest(point, 5, out, (context, o, a, d) -> {
+      context.add(Double.valueOf(d));
+      return TreeVisitResult.RESULT_CONTINUE;
+    });
+    return out;
+  }
+
+  /**
+   * A mapped tree has the same shape and contents as the tree that was
+   * written, and gives the same results for every query. The mapped tree
+   * remains usable after its channel is closed.
+   */
+
+  @Test
+  public void testQueries()
+    throws IOException
+  {
+    final List<Integer> items = new ArrayList<>();
+    final OctTreeDType<Integer> tree = populated(items);
+    final OctTreeReadableDType<Integer> mapped =
+      open(this.write(tree, Integer::longValue), items);
+
+    Assert.assertEquals(tree.size(), mapped.size());
+    Assert.assertEquals(tree.bounds(), mapped.bounds());
+    Assert.assertEquals(structure(tree), structure(mapped));
+
+    for (final Integer item : items) {
+      Assert.assertEquals(tree.contains(item), mapped.contains(item));
+      if (tree.contains(item)) {
+        Assert.assertEquals(tree.volumeFor(item), mapped.volumeFor(item));
+      }
+    }
+
+    final Generator<VolumeD> gen = new VolumeDContainedGenerator(CONTAINER);
+    for (int query = 0; query < 100; ++query) {
+      final VolumeD volume = gen.next();
+
+      final Set<Integer> expected_items = new HashSet<>();
+      final Set<Integer> received_items = new HashSet<>();
+      tree.overlappedBy(volume, expected_items);
+      mapped.overlappedBy(volume, received_items);
+      Assert.assertEquals(expected_items, received_items);
+
+      expected_items.clear();
+      received_items.clear();
+      tree.containedBy(volume, expected_items);
+      mapped.containedBy(volume, received_items);
+      Assert.assertEquals(expected_items, received_items);
+
+      Assert.assertEquals(tree.countOverlapping(volume), mapped.countOverlapping(volume));
+      Assert.assertEquals(tree.countContainedBy(volume), mapped.countContainedBy(volume));
+      Assert.assertEquals(tree.anyOverlapping(volume), mapped.anyOverlapping(volume));
+
+      final Vector3D point = Vector3D.of(volume.minimumX(), volume.minimumY(), volume.minimumZ());
+      Assert.assertEquals(nearest(tree, point), nearest(mapped, point));
+
+      final Ray3D ray = Ray3D.of(point, Vector3D.of(1.0, 0.5, 0.25));
+      final SortedSet<OctTreeRaycastResultD<Integer>> expected_hits = new TreeSet<>();
+      final SortedSet<OctTreeRaycastResultD<Integer>> received_hits = new TreeSet<>();
+      tree.raycast(ray, expected_hits);
+      mapped.raycast(ray, received_hits);
+      Assert.assertEquals(expected_hits, received_hits);
+      Assert.assertEquals(
+        tree.raycastFirst(ray).map(r -> Double.valueOf(r.distance())),
+        mapped.raycastFirst(ray).map(r -> Double.valueOf(r.distance())));
+    }
+  }
+
+  /**
+   * Mapping a tree yields a tree with the same shape and contents.
+   */
+
+  @Test
+  public void testMap()
+    throws IOException
+  {
+    final List<Integer> items = new ArrayList<>();
+    final OctTreeDType<Integer> tree = populated(items);
+    final OctTreeReadableDType<Integer> mapped =
+      open(this.write(tree, Integer::longValue), items);
+
+    final OctTreeReadableDType<Integer> copy = mapped.map((item, volume) -> item);
+    Assert.assertEquals(tree, copy);
+    Assert.assertEquals(structure(tree), structure(copy));
+  }
+
+  /**
+   * Empty trees can be mapped.
+   */
+
+  @Test
+  public void testEmpty()
+    throws IOException
+  {
+    final OctTreeDType<Integer> tree = OctTreeD.create(configuration());
+    final OctTreeReadableDType<Integer> mapped =
+      open(this.write(tree, Integer::longValue), new ArrayList<>());
+
+    Assert.assertEquals(0L, mapped.size());
+    Assert.assertEquals(structure(tree), structure(mapped));
+    Assert.assertFalse(mapped.contains(Integer.valueOf(0)));
+    Assert.assertFalse(mapped.anyOverlapping(CONTAINER));
+  }
+
+  /**
+   * Asking for the volume of an object that is not in the tree fails.
+   */
+
+  @Test
+  public void testVolumeForMissing()
+    throws IOException
+  {
+    final List<Integer> items = new ArrayList<>();
+    final OctTreeReadableDType<Integer> mapped =
+      open(this.write(populated(items), Integer::longValue), items);
+
+    this.expected.expect(NoSuchElementException.class);
+    mapped.volumeFor(items.get(0));
+  }
+
+  /**
+   * Files that do not start with the magic number are rejected.
+   */
+
+  @Test
+  public void testUnrecognized()
+    throws IOException
+  {
+    final Path file = this.folder.newFile().toPath();
+    Files.write(file, new byte[128]);
+
+    this.expected.expect(IOException.class);
+    this.expected.expectMessage("magic number");
+    open(file, new ArrayList<>());
+  }
+
+  /**
+   * Truncated files are rejected.
+   */
+
+  @Test
+  public void testTruncated()
+    throws IOException
+  {
+    final List<Integer> items = new ArrayList<>();
+    final Path file = this.write(populated(items), Integer::longValue);
+    try (FileChannel channel =
+           FileChannel.open(file, StandardOpenOption.WRITE)) {
+      channel.truncate(channel.size() - 1L);
+    }
+
+    this.expected.expect(IOException.class);
+    this.expected.expectMessage("Malformed");
+    open(file, items);
+  }
+
+  /**
+   * Files that give the same identifier to several objects are rejected.
+   */
+
+  @Test
+  public void testDuplicate()
+    throws IOException
+  {
+    final List<Integer> items = new ArrayList<>();
+    final Path file = this.write(populated(items), item -> 0L);
+
+    this.expected.expect(IOException.class);
+    this.expected.expectMessage("more than once");
+    open(file, items);
+  }
+
+  /**
+   * Files that split a octant that the configuration does not allow to
+   * be split are rejected.
+   */
+
+  @Test
+  public void testUnsplittable()
+    throws IOException
+  {
+    final List<Integer> items = new ArrayList<>();
+    final Path file = this.write(populated(items), Integer::longValue);
+    final ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(file));
+    data.putInt(MAXIMUM_DEPTH, 0);
+    Files.write(file, data.array());
+
+    this.expected.expect(IOException.class);
+    this.expected.expectMessage("cannot be split");
+    open(file, items);
+  }
+
+  /**
+   * Files in which a child octant does not lie strictly after the
+   * previous octant are rejected.
+   */
+
+  @Test
+  public void testChildNotForward()
+    throws IOException
+  {
+    final List<Integer> items = new ArrayList<>();
+    final Path file = this.write(populated(items), Integer::longValue);
+    final ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(file));
+    final int child =
+      HEADER_SIZE + OCTANT_SIZE + data.getInt(HEADER_SIZE + 1) * OBJECT_SIZE;
+    data.putLong(child + 9, 0L);
+    Files.write(file, data.array());
+
+    this.expected.expect(IOException.class);
+    this.expected.expectMessage("Malformed");
+    open(file, items);
+  }
+}
@@ -0,0 +1,262 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jspatial.tests.implementation;
+
+import com.io7m.jregions.core.unparameterized.volumes.VolumeD;
+import com.io7m.jspatial.api.Ray3D;
+import com.io7m.jspatial.api.TreeVisitResult;
+import com.io7m.jspatial.api.octtrees.OctTreeConfigurationD;
+import com.io7m.jspatial.api.octtrees.OctTreeDType;
+import com.io7m.jspatial.api.octtrees.OctTreePersistentDType;
+import com.io7m.jspatial.api.octtrees.OctTreeReadableDType;
+import com.io7m.jspatial.implementation.OctTreeD;
+import com.io7m.jspatial.implementation.OctTreePersistentD;
+import com.io7m.jspatial.implementation.OctTreeVersionedD;
+import com.io7m.jspatial.implementation.OctTreeVersionedSupplierD;
+import com.io7m.jspatial.tests.api.VolumeDContainedGenerator;
+import com.io7m.jspatial.tests.api.octtrees.OctTreeDContract;
+import com.io7m.jtensors.core.unparameterized.vectors.Vector3D;
+import net.java.quickcheck.Generator;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Test for {@link OctTreeVersionedD} and {@link OctTreePersistentD}
+ */
+
+public final class OctTreeVersionedDTest extends OctTreeDContract
+{
+  private static final VolumeD CONTAINER =
+    VolumeD.of(-512.0, 512.0, -512.0, 512.0, -512.0, 512.0);
+
+  @Override
+  protected <T> OctTreeDType<T> create(final OctTreeConfigurationD config)
+  {
+    return new OctTreeVersionedSupplierD().create(config);
+  }
+
+  private static OctTreeConfigurationD configuration()
+  {
+    final OctTreeConfigurationD.Builder cb = OctTreeConfigurationD.builder();
+    cb.setVolume(CONTAINER);
+    cb.setMaximumItemsPerLeaf(4);
+    cb.setTrimOnRemove(true);
+    return cb.build();
+  }
+
+  private static <T extends Comparable<T>> List<String> structure(final OctTreeReadableDType<T> tree)
+  {
+    final List<String> out = new ArrayList<>();
+    tree.iterateOctants(out, (context, octant, depth) -> {
+      final Set<T> objects = new TreeSet<>(octant.objects().keySet());
+      context.add(depth + " " + octant.volume() + " " + objects);
+      return TreeVisitResult.RESULT_CONTINUE;
+    });
+    return out;
+  }
+
+  /**
+   * Earlier versions of a persistent tree are not affected by operations
+   * on later versions.
+   */
+
+  @Test
+  public void testPersistentVersionsUnchanged()
+  {
+    final Generator<VolumeD> gen = new VolumeDContainedGenerator(CONTAINER);
+    final List<Integer> items = new ArrayList<>();
+    final List<VolumeD> areas = new ArrayList<>();
+    final List<OctTreePersistentDType<Integer>> versions = new ArrayList<>();
+
+    OctTreePersistentDType<Integer> tree =
+      OctTreePersistentD.create(configuration());
+    versions.add(tree);
+
+    for (int index = 0; index < 200; ++index) {
+      final Integer item = Integer.valueOf(index);
+      final VolumeD volume = gen.next();
+      items.add(item);
+      areas.add(volume);
+      tree = tree.insert(item, volume);
+      versions.add(tree);
+    }
+
+    for (int index = 0; index < 100; ++index) {
+      tree = tree.remove(items.get(index));
+      versions.add(tree);
+    }
+
+    for (int version = 0; version <= 200; ++version) {
+      final OctTreePersistentDType<Integer> v = versions.get(version);
+      Assert.assertEquals((long) version, v.size());
+      for (int index = 0; index < 200; ++index) {
+        final Integer item = items.get(index);
+        Assert.assertEquals(Boolean.valueOf(index < version), Boolean.valueOf(v.contains(item)));
+        if (index < version) {
+          Assert.assertEquals(areas.get(index), v.volumeFor(item));
+        }
+      }
+      Assert.assertEquals((long) version, v.countContainedBy(CONTAINER));
+    }
+
+    for (int removed = 1; removed <= 100; ++removed) {
+      final OctTreePersistentDType<Integer> v = versions.get(200 + removed);
+      Assert.assertEquals(200L - (long) removed, v.size());
+      Assert.assertFalse(v.contains(items.get(removed - 1)));
+      Assert.assertTrue(v.contains(items.get(removed)));
+    }
+
+    Assert.assertSame(tree, tree.remove(items.get(0)));
+    Assert.assertEquals(0L, tree.clear().size());
+    Assert.assertEquals(100L, tree.size());
+  }
+
+  /**
+   * A persistent tree has the same structure, and gives the same query
+   * results, as a mutable tree given the same operations.
+   */
+
+  @Test
+  public void testPersistentMatchesMutable()
+  {
+    final OctTreeConfigurationD c = configuration();
+    final OctTreeDType<Integer> expected = OctTreeD.create(c);
+    OctTreePersistentDType<Integer> tree = OctTreePersistentD.create(c);
+
+    final Generator<VolumeD> gen = new VolumeDContainedGenerator(CONTAINER);
+    final List<Integer> items = new ArrayList<>();
+    for (int index = 0; index < 300; ++index) {
+      items.add(Integer.valueOf(index));
+    }
+
+    final Random random = new Random(0L);
+    for (int index = 0; index < 3000; ++index) {
+      final Integer item = items.get(random.nextInt(items.size()));
+      if (random.nextInt(3) == 0) {
+        expected.remove(item);
+        tree = tree.remove(item);
+      } else {
+        final VolumeD volume = gen.next();
+        expected.insert(item, volume);
+        tree = tree.insert(item, volume);
+      }
+
+      if (index % 100 == 0) {
+        Assert.assertEquals(structure(expected), structure(tree));
+      }
+    }
+
+    Assert.assertEquals(expected.size(), tree.size());
+    Assert.assertEquals(structure(expected), structure(tree));
+
+    for (int index = 0; index < 50; ++index) {
+      final VolumeD volume = gen.next();
+      final Set<Integer> expected_items = new HashSet<>();
+      final Set<Integer> received_items = new HashSet<>();
+      expected.overlappedBy(volume, expected_items);
+      tree.overlappedBy(volume, received_items);
+      Assert.assertEquals(expected_items, received_items);
+      Assert.assertEquals(expected.countOverlapping(volume), tree.countOverlapping(volume));
+      Assert.assertEquals(expected.countContainedBy(volume), tree.countContainedBy(volume));
+
+      final Vector3D point = Vector3D.of(volume.minimumX(), volume.minimumY(), volume.minimumZ());
+      final List<Double> expected_nearest = new ArrayList<>();
+      final List<Double> received_nearest = new ArrayList<>();
+      expected.nearest(point, 5, expected_nearest, (context, o, a, d) -> {
+        context.add(Double.valueOf(d));
+        return TreeVisitResult.RESULT_CONTINUE;
+      });
+      tree.nearest(point, 5, received_nearest, (context, o, a, d) -> {
+        context.add(Double.valueOf(d));
+        return TreeVisitResult.RESULT_CONTINUE;
+      });
+      Assert.assertEquals(expected_nearest, received_nearest);
+
+      final Ray3D ray = Ray3D.of(point, Vector3D.of(1.0, 0.5, 0.25));
+      Assert.assertEquals(
+        expected.raycastFirst(ray).map(r -> Double.valueOf(r.distance())),
+        tree.raycastFirst(ray).map(r -> Double.valueOf(r.distance())));
+    }
+
+    expected.clear();
+    Assert.assertEquals(structure(expected), structure(tree.clear()));
+  }
+
+  /**
+   * A snapshot of a versioned tree is not affected by later modifications,
+   * and is not copied.
+   */
+
+  @Test
+  public void testVersionedSnapshot()
+  {
+    final OctTreeDType<Integer> tree = OctTreeVersionedD.create(configuration());
+    final Generator<VolumeD> gen = new VolumeDContainedGenerator(CONTAINER);
+    final Integer item0 = Integer.valueOf(0);
+    final Integer item1 = Integer.valueOf(1);
+    final VolumeD volume0 = gen.next();
+
+    tree.insert(item0, volume0);
+    final OctTreeReadableDType<Integer> snapshot = tree.snapshot();
+    Assert.assertSame(snapshot, tree.snapshot());
+
+    tree.insert(item1, gen.next());
+    tree.insert(item0, gen.next());
+    Assert.assertNotSame(snapshot, tree.snapshot());
+    Assert.assertEquals(1L, snapshot.size());
+    Assert.assertEquals(volume0, snapshot.volumeFor(item0));
+    Assert.assertFalse(snapshot.contains(item1));
+
+    final Map<Integer, VolumeD> more = new HashMap<>();
+    for (int index = 2; index < 100; ++index) {
+      more.put(Integer.valueOf(index), gen.next());
+    }
+    Assert.assertEquals(98L, tree.insertAll(more));
+    Assert.assertEquals(100L, tree.size());
+    Assert.assertEquals(1L, snapshot.size());
+  }
+
+  /**
+   * The default snapshot of a mutable tree is a copy.
+   */
+
+  @Test
+  public void testDefaultSnapshot()
+  {
+    final OctTreeDType<Integer> tree = OctTreeD.create(configuration());
+    final Generator<VolumeD> gen = new VolumeDContainedGenerator(CONTAINER);
+    final Integer item0 = Integer.valueOf(0);
+    final VolumeD volume0 = gen.next();
+
+    tree.insert(item0, volume0);
+    final OctTreeReadableDType<Integer> snapshot = tree.snapshot();
+    tree.remove(item0);
+
+    Assert.assertEquals(1L, snapshot.size());
+    Assert.assertEquals(volume0, snapshot.volumeFor(item0));
+    Assert.assertEquals(0L, tree.size());
+  }
+}
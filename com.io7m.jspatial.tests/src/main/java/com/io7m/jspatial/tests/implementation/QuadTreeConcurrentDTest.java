@@ -0,0 +1,217 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.jspatial.tests.implementation;
+
+import com.io7m.jregions.core.unparameterized.areas.AreaD;
+import com.io7m.jspatial.api.TreeVisitResult;
+import com.io7m.jspatial.api.quadtrees.QuadTreeConfigurationD;
+import com.io7m.jspatial.api.quadtrees.QuadTreeDType;
+import com.io7m.jspatial.implementation.QuadTreeConcurrentD;
+import com.io7m.jspatial.implementation.QuadTreeConcurrentSupplierD;
+import com.io7m.jspatial.implementation.QuadTreeD;
+import com.io7m.jspatial.implementation.QuadTreeFlatSupplierD;
+import com.io7m.jspatial.tests.api.AreaDContainedGenerator;
+import com.io7m.jspatial.tests.api.quadtrees.QuadTreeDContract;
+import com.io7m.jtensors.core.unparameterized.vectors.Vector2D;
+import net.java.quickcheck.Generator;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Test for {@link QuadTreeConcurrentD}
+ */
+
+public final class QuadTreeConcurrentDTest extends QuadTreeDContract
+{
+  @Override
+  protected <T> QuadTreeDType<T> create(final QuadTreeConfigurationD config)
+  {
+    return new QuadTreeConcurrentSupplierD().create(config);
+  }
+
+  /**
+   * Queries running concurrently with modifications always observe the
+   * objects that are never modified, and the tree holds the same objects as
+   * a single-threaded tree given the same modifications.
+   */
+
+  @Test
+  public void testConcurrentQueriesAndModifications()
+    throws Exception
+  {
+    final AreaD container =
+      AreaD.of(-512.0, 512.0, -512.0, 512.0);
+
+    final QuadTreeConfigurationD.Builder cb = QuadTreeConfigurationD.builder();
+    cb.setArea(container);
+    cb.setTrimOnRemove(true);
+    final QuadTreeConfigurationD c = cb.build();
+
+    final QuadTreeDType<Integer> expected = QuadTreeD.create(c);
+    final QuadTreeDType<Integer> tree =
+      new QuadTreeConcurrentSupplierD(new QuadTreeFlatSupplierD()).create(c);
+
+    final Generator<AreaD> gen = new AreaDContainedGenerator(container);
+    final List<Integer> items = new ArrayList<>();
+    final List<AreaD> areas = new ArrayList<>();
+    for (int index = 0; index < 1000; ++index) {
+      final Integer item = Integer.valueOf(index);
+      final AreaD area = gen.next();
+      items.add(item);
+      areas.add(area);
+      expected.insert(item, area);
+      tree.insert(item, area);
+    }
+
+    final AtomicBoolean done = new AtomicBoolean(false);
+    final ExecutorService exec = Executors.newFixedThreadPool(5);
+    try {
+      final List<Future<?>> readers = new ArrayList<>();
+      for (int thread = 0; thread < 4; ++thread) {
+        final Random random = new Random((long) thread);
+        readers.add(exec.submit(() -> {
+          while (!done.get()) {
+            final int index = random.nextInt(500);
+            final Integer item = items.get(index);
+            Assert.assertTrue(tree.contains(item));
+            Assert.assertEquals(areas.get(index), tree.areaFor(item));
+
+            final long size = tree.size();
+            Assert.assertTrue(size >= 500L && size <= 1000L);
+
+            final Set<Integer> overlapped = new HashSet<>();
+            tree.overlappedBy(container, overlapped);
+            Assert.assertTrue(overlapped.containsAll(items.subList(0, 500)));
+            Assert.assertTrue(tree.countOverlapping(container) >= 500L);
+
+            final List<Integer> nearest = new ArrayList<>();
+            tree.nearest(Vector2D.of(0.0, 0.0), 5, nearest, (context, o, area, d) -> {
+              context.add(o);
+              return TreeVisitResult.RESULT_CONTINUE;
+            });
+            Assert.assertEquals(5L, (long) nearest.size());
+          }
+          return null;
+        }));
+      }
+
+      final Future<?> writer = exec.submit(() -> {
+        try {
+          final Random random = new Random(0L);
+          for (int index = 0; index < 20000; ++index) {
+            final Integer item = items.get(500 + random.nextInt(500));
+            if (random.nextInt(4) == 0) {
+              Assert.assertEquals(
+                Boolean.valueOf(expected.remove(item)),
+                Boolean.valueOf(tree.remove(item)));
+            } else {
+              final AreaD area = gen.next();
+              Assert.assertEquals(
+                Boolean.valueOf(expected.insert(item, area)),
+                Boolean.valueOf(tree.insert(item, area)));
+            }
+          }
+        } finally {
+          done.set(true);
+        }
+        return null;
+      });
+
+      writer.get();
+      for (final Future<?> reader : readers) {
+        reader.get();
+      }
+    } finally {
+      exec.shutdown();
+    }
+
+    Assert.assertEquals(expected.size(), tree.size());
+    for (final Integer item : items) {
+      Assert.assertEquals(
+        Boolean.valueOf(expected.contains(item)),
+        Boolean.valueOf(tree.contains(item)));
+      if (expected.contains(item)) {
+        Assert.assertEquals(expected.areaFor(item), tree.areaFor(item));
+      }
+    }
+  }
+
+  /**
+   * A query that is in progress does not prevent modifications, and only
+   * observes the version of the tree that was current when it started.
+   */
+
+  @Test
+  public void testQueriesDoNotBlockModifications()
+    throws Exception
+  {
+    final AreaD container =
+      AreaD.of(-512.0, 512.0, -512.0, 512.0);
+
+    final QuadTreeConfigurationD.Builder cb = QuadTreeConfigurationD.builder();
+    cb.setArea(container);
+    final QuadTreeDType<Integer> tree = QuadTreeConcurrentD.create(cb.build());
+
+    final AreaD area = AreaD.of(0.0, 8.0, 0.0, 8.0);
+    Assert.assertTrue(tree.insert(Integer.valueOf(0), area));
+
+    final CountDownLatch started = new CountDownLatch(1);
+    final CountDownLatch modified = new CountDownLatch(1);
+    final ExecutorService exec = Executors.newSingleThreadExecutor();
+    try {
+      final Future<List<Integer>> reader = exec.submit(() -> {
+        final List<Integer> found = new ArrayList<>();
+        tree.overlappedBy(container, found, (context, item, item_area) -> {
+          started.countDown();
+          try {
+            Assert.assertTrue(modified.await(10L, TimeUnit.SECONDS));
+          } catch (final InterruptedException e) {
+            throw new IllegalStateException(e);
+          }
+          context.add(item);
+          return TreeVisitResult.RESULT_CONTINUE;
+        });
+        return found;
+      });
+
+      Assert.assertTrue(started.await(10L, TimeUnit.SECONDS));
+      Assert.assertTrue(tree.insert(Integer.valueOf(1), area));
+      Assert.assertTrue(tree.remove(Integer.valueOf(0)));
+      modified.countDown();
+
+      Assert.assertEquals(List.of(Integer.valueOf(0)), reader.get());
+    } finally {
+      exec.shutdown();
+    }
+
+    Assert.assertFalse(tree.contains(Integer.valueOf(0)));
+    Assert.assertTrue(tree.contains(Integer.valueOf(1)));
+  }
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.jspatial.tests.implementation;
+
+import com.io7m.jregions.core.unparameterized.areas.AreaD;
+import com.io7m.jspatial.api.Ray2D;
+import com.io7m.jspatial.api.TreeVisitResult;
+import com.io7m.jspatial.api.quadtrees.QuadTreeConfigurationD;
+import com.io7m.jspatial.api.quadtrees.QuadTreeDType;
+import com.io7m.jspatial.api.quadtrees.QuadTreeRaycastResultD;
+import com.io7m.jspatial.implementation.QuadTreeFlatD;
+import com.io7m.jspatial.implementation.QuadTreeFlatSupplierD;
+import com.io7m.jspatial.implementation.QuadTreeD;
+import com.io7m.jspatial.tests.api.AreaDContainedGenerator;
+import com.io7m.jspatial.tests.api.quadtrees.QuadTreeDContract;
+import com.io7m.jtensors.core.unparameterized.vectors.Vector2D;
+import net.java.quickcheck.Generator;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * Test for {@link QuadTreeFlatD}
+ */
+
+public final class QuadTreeFlatDTest extends QuadTreeDContract
+{
+  private static List<String> structure(final QuadTreeDType<Integer> tree)
+  {
+    final List<String> nodes = new ArrayList<>();
+    tree.iterateQuadrants(nodes, (context, quadrant, depth) -> {
+      context.add(depth + " " + quadrant.area() + " " + new TreeSet<>(quadrant.objects().keySet()));
+      return TreeVisitResult.RESULT_CONTINUE;
+    });
+    return nodes;
+  }
+
+  @Override
+  protected <T> QuadTreeDType<T> create(final QuadTreeConfigurationD config)
+  {
+    return new QuadTreeFlatSupplierD().create(config);
+  }
+
+  /**
+   * The flat tree has the same structure and query results as the default
+   * implementation after an arbitrary sequence of operations.
+   */
+
+  @Test
+  public void testEquivalentToQuadTreeD()
+  {
+    final AreaD container =
+      AreaD.of(-512.0, 512.0, -512.0, 512.0);
+
+    for (final int capacity : new int[]{0, 4}) {
+      final QuadTreeConfigurationD.Builder cb = QuadTreeConfigurationD.builder();
+      cb.setArea(container);
+      cb.setTrimOnRemove(true);
+      cb.setMaximumItemsPerLeaf(capacity);
+      final QuadTreeConfigurationD c = cb.build();
+
+      final QuadTreeDType<Integer> expected = QuadTreeD.create(c);
+      final QuadTreeDType<Integer> tree = this.create(c);
+
+      final Generator<AreaD> gen = new AreaDContainedGenerator(container);
+      final Random random = new Random(0L);
+      final List<Integer> items = new ArrayList<>();
+      for (int index = 0; index < 300; ++index) {
+        final Integer item = Integer.valueOf(index);
+        final AreaD area = gen.next();
+        items.add(item);
+        Assert.assertEquals(
+          Boolean.valueOf(expected.insert(item, area)),
+          Boolean.valueOf(tree.insert(item, area)));
+      }
+
+      for (int index = 0; index < 300; ++index) {
+        final Integer item = items.get(random.nextInt(items.size()));
+        if (random.nextBoolean()) {
+          final AreaD area = gen.next();
+          Assert.assertEquals(
+            Boolean.valueOf(expected.insert(item, area)),
+            Boolean.valueOf(tree.insert(item, area)));
+        } else {
+          Assert.assertEquals(
+            Boolean.valueOf(expected.remove(item)),
+            Boolean.valueOf(tree.remove(item)));
+        }
+      }
+
+      Assert.assertEquals(expected.size(), tree.size());
+      Assert.assertEquals(structure(expected), structure(tree));
+
+      for (int index = 0; index < 50; ++index) {
+        final AreaD query = gen.next();
+
+        final Set<Integer> expected_overlapped = new HashSet<>();
+        final Set<Integer> overlapped = new HashSet<>();
+        expected.overlappedBy(query, expected_overlapped);
+        tree.overlappedBy(query, overlapped);
+        Assert.assertEquals(expected_overlapped, overlapped);
+
+        final Set<Integer> expected_contained = new HashSet<>();
+        final Set<Integer> contained = new HashSet<>();
+        expected.containedBy(query, expected_contained);
+        tree.containedBy(query, contained);
+        Assert.assertEquals(expected_contained, contained);
+
+        final Ray2D ray = Ray2D.of(
+          Vector2D.of(query.minimumX(), query.minimumY()),
+          Vector2D.of(random.nextDouble() - 0.5, random.nextDouble() - 0.5));
+
+        final SortedSet<QuadTreeRaycastResultD<Integer>> expected_hits = new TreeSet<>();
+        final SortedSet<QuadTreeRaycastResultD<Integer>> hits = new TreeSet<>();
+        expected.raycast(ray, expected_hits);
+        tree.raycast(ray, hits);
+        Assert.assertEquals(expected_hits, hits);
+      }
+
+      tree.trim();
+      expected.trim();
+      Assert.assertEquals(structure(expected), structure(tree));
+    }
+  }
+
+  /**
+   * Bulk insertion, through the supplier, produces the same structure as the
+   * default implementation.
+   */
+
+  @Test
+  public void testInsertAllEquivalentToQuadTreeD()
+  {
+    final AreaD container =
+      AreaD.of(-512.0, 512.0, -512.0, 512.0);
+
+    for (final int capacity : new int[]{0, 4}) {
+      final QuadTreeConfigurationD.Builder cb = QuadTreeConfigurationD.builder();
+      cb.setArea(container);
+      cb.setMaximumItemsPerLeaf(capacity);
+      final QuadTreeConfigurationD c = cb.build();
+
+      final Generator<AreaD> gen = new AreaDContainedGenerator(container);
+      final Map<Integer, AreaD> items = new HashMap<>();
+      for (int index = 0; index < 300; ++index) {
+        items.put(Integer.valueOf(index), gen.next());
+      }
+
+      final QuadTreeDType<Integer> expected = QuadTreeD.create(c);
+      Assert.assertEquals(300L, expected.insertAll(items));
+
+      final QuadTreeDType<Integer> tree = new QuadTreeFlatSupplierD().build(c, items);
+      Assert.assertEquals(300L, tree.size());
+      Assert.assertEquals(structure(expected), structure(tree));
+    }
+  }
+}
@@ -0,0 +1,267 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jspatial.tests.implementation;
+
+import com.io7m.jaffirm.core.PreconditionViolationException;
+import com.io7m.jregions.core.unparameterized.areas.AreaD;
+import com.io7m.jregions.core.unparameterized.areas.AreasD;
+import com.io7m.jspatial.api.Ray2D;
+import com.io7m.jspatial.api.TreeVisitResult;
+import com.io7m.jspatial.api.quadtrees.QuadTreeConfigurationD;
+import com.io7m.jspatial.api.quadtrees.QuadTreeDType;
+import com.io7m.jspatial.api.quadtrees.QuadTreeRaycastResultD;
+import com.io7m.jspatial.implementation.QuadTreeFlatD;
+import com.io7m.jspatial.implementation.QuadTreeFlatSupplierD;
+import com.io7m.jspatial.implementation.QuadTreeD;
+import com.io7m.jspatial.tests.api.AreaDContainedGenerator;
+import com.io7m.jtensors.core.unparameterized.vectors.Vector2D;
+import net.java.quickcheck.Generator;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * Test for loose {@link QuadTreeFlatD} trees.
+ */
+
+public final class QuadTreeFlatLooseDTest
+{
+  @Rule public final ExpectedException expected = ExpectedException.none();
+
+  private static void checkLoose(final QuadTreeDType<Integer> tree)
+  {
+    tree.iterateQuadrants(tree, (context, quadrant, depth) -> {
+      quadrant.objects().forEach((item, area) -> Assert.assertTrue(
+        AreasD.contains(quadrant.area(), area)));
+      return TreeVisitResult.RESULT_CONTINUE;
+    });
+  }
+
+  private static void checkQueries(
+    final QuadTreeDType<Integer> expected,
+    final QuadTreeDType<Integer> tree,
+    final Generator<AreaD> gen,
+    final Random random)
+  {
+    Assert.assertEquals(expected.size(), tree.size());
+
+    for (int index = 0; index < 50; ++index) {
+      final AreaD query = gen.next();
+
+      final Set<Integer> expected_overlapped = new HashSet<>();
+      final Set<Integer> overlapped = new HashSet<>();
+      expected.overlappedBy(query, expected_overlapped);
+      tree.overlappedBy(query, overlapped);
+      Assert.assertEquals(expected_overlapped, overlapped);
+      Assert.assertEquals(
+        (long) overlapped.size(), tree.countOverlapping(query));
+
+      final Set<Integer> expected_contained = new HashSet<>();
+      final Set<Integer> contained = new HashSet<>();
+      expected.containedBy(query, expected_contained);
+      tree.containedBy(query, contained);
+      Assert.assertEquals(expected_contained, contained);
+      Assert.assertEquals(
+        (long) contained.size(), tree.countContainedBy(query));
+
+      final Ray2D ray = Ray2D.of(
+        Vector2D.of(
+          query.minimumX(),
+          query.minimumY()),
+        Vector2D.of(
+          random.nextDouble() - 0.5,
+          random.nextDouble() - 0.5));
+
+      final SortedSet<QuadTreeRaycastResultD<Integer>> expected_hits = new TreeSet<>();
+      final SortedSet<QuadTreeRaycastResultD<Integer>> hits = new TreeSet<>();
+      expected.raycast(ray, expected_hits);
+      tree.raycast(ray, hits);
+      Assert.assertEquals(expected_hits, hits);
+      Assert.assertEquals(
+        expected.raycastFirst(ray).map(QuadTreeRaycastResultD::distance),
+        tree.raycastFirst(ray).map(QuadTreeRaycastResultD::distance));
+
+      final List<Double> expected_nearest = new ArrayList<>();
+      final List<Double> nearest = new ArrayList<>();
+      expected.nearest(ray.origin(), 5, expected_nearest, (context, item, area, distance) -> {
+        context.add(Double.valueOf(distance));
+        return TreeVisitResult.RESULT_CONTINUE;
+      });
+      tree.nearest(ray.origin(), 5, nearest, (context, item, area, distance) -> {
+        context.add(Double.valueOf(distance));
+        return TreeVisitResult.RESULT_CONTINUE;
+      });
+      Assert.assertEquals(expected_nearest, nearest);
+    }
+  }
+
+  private static long depthOf(
+    final QuadTreeDType<Integer> tree,
+    final Integer item)
+  {
+    final long[] result = {-1L};
+    tree.iterateQuadrants(result, (context, quadrant, depth) -> {
+      if (quadrant.objects().containsKey(item)) {
+        context[0] = depth;
+        return TreeVisitResult.RESULT_TERMINATE;
+      }
+      return TreeVisitResult.RESULT_CONTINUE;
+    });
+    return result[0];
+  }
+
+  /**
+   * A loose tree returns the same query results as the default
+   * implementation after an arbitrary sequence of operations, and every
+   * object lies within the loose bounds of the quadrant that holds it.
+   */
+
+  @Test
+  public void testQueriesEquivalentToQuadTreeD()
+  {
+    final AreaD container =
+      AreaD.of(-512.0, 512.0, -512.0, 512.0);
+
+    for (final double looseness : new double[]{1.5, 2.0, 3.0}) {
+      for (final int capacity : new int[]{0, 4}) {
+        final QuadTreeConfigurationD.Builder cb = QuadTreeConfigurationD.builder();
+        cb.setArea(container);
+        cb.setTrimOnRemove(true);
+        cb.setMaximumItemsPerLeaf(capacity);
+        final QuadTreeConfigurationD c = cb.build();
+
+        final QuadTreeDType<Integer> expected = QuadTreeD.create(c);
+        final QuadTreeDType<Integer> tree = QuadTreeFlatD.createLoose(c, looseness);
+
+        final Generator<AreaD> gen = new AreaDContainedGenerator(container);
+        final Random random = new Random(0L);
+        final List<Integer> items = new ArrayList<>();
+        for (int index = 0; index < 300; ++index) {
+          final Integer item = Integer.valueOf(index);
+          final AreaD area = gen.next();
+          items.add(item);
+          Assert.assertEquals(
+            Boolean.valueOf(expected.insert(item, area)),
+            Boolean.valueOf(tree.insert(item, area)));
+        }
+
+        for (int index = 0; index < 300; ++index) {
+          final Integer item = items.get(random.nextInt(items.size()));
+          if (random.nextBoolean()) {
+            final AreaD area = gen.next();
+            Assert.assertEquals(
+              Boolean.valueOf(expected.insert(item, area)),
+              Boolean.valueOf(tree.insert(item, area)));
+          } else {
+            Assert.assertEquals(
+              Boolean.valueOf(expected.remove(item)),
+              Boolean.valueOf(tree.remove(item)));
+          }
+        }
+
+        checkLoose(tree);
+        checkQueries(expected, tree, gen, random);
+        tree.trim();
+        checkLoose(tree);
+        checkQueries(expected, tree, gen, random);
+      }
+    }
+  }
+
+  /**
+   * Bulk insertion into a loose tree, through the supplier, yields the same
+   * query results as the default implementation.
+   */
+
+  @Test
+  public void testInsertAllQueriesEquivalentToQuadTreeD()
+  {
+    final AreaD container =
+      AreaD.of(-512.0, 512.0, -512.0, 512.0);
+
+    for (final int capacity : new int[]{0, 4}) {
+      final QuadTreeConfigurationD.Builder cb = QuadTreeConfigurationD.builder();
+      cb.setArea(container);
+      cb.setMaximumItemsPerLeaf(capacity);
+      final QuadTreeConfigurationD c = cb.build();
+
+      final Generator<AreaD> gen = new AreaDContainedGenerator(container);
+      final Map<Integer, AreaD> items = new HashMap<>();
+      for (int index = 0; index < 300; ++index) {
+        items.put(Integer.valueOf(index), gen.next());
+      }
+
+      final QuadTreeDType<Integer> expected = QuadTreeD.create(c);
+      Assert.assertEquals(300L, expected.insertAll(items));
+
+      final QuadTreeDType<Integer> tree = new QuadTreeFlatSupplierD(2.0).build(c, items);
+      checkLoose(tree);
+      checkQueries(expected, tree, gen, new Random(0L));
+    }
+  }
+
+  /**
+   * A small object that straddles the split planes of the root is held at
+   * the root of an ordinary tree, but deeper in a loose tree.
+   */
+
+  @Test
+  public void testStraddlingObjectDescends()
+  {
+    final QuadTreeConfigurationD.Builder cb = QuadTreeConfigurationD.builder();
+    cb.setArea(AreaD.of(0.0, 1024.0, 0.0, 1024.0));
+    cb.setMaximumItemsPerLeaf(0);
+    final QuadTreeConfigurationD c = cb.build();
+
+    final Integer item = Integer.valueOf(0);
+    final AreaD area = AreaD.of(508.0, 516.0, 508.0, 516.0);
+
+    final QuadTreeDType<Integer> tight = QuadTreeFlatD.create(c);
+    Assert.assertTrue(tight.insert(item, area));
+    Assert.assertEquals(0L, depthOf(tight, item));
+
+    final QuadTreeDType<Integer> loose = QuadTreeFlatD.createLoose(c, 2.0);
+    Assert.assertTrue(loose.insert(item, area));
+    Assert.assertEquals(7L, depthOf(loose, item));
+  }
+
+  /**
+   * A looseness factor below one is rejected.
+   */
+
+  @Test
+  public void testLoosenessInvalid()
+  {
+    final QuadTreeConfigurationD.Builder cb = QuadTreeConfigurationD.builder();
+    cb.setArea(AreaD.of(0.0, 1024.0, 0.0, 1024.0));
+    final QuadTreeConfigurationD c = cb.build();
+
+    this.expected.expect(PreconditionViolationException.class);
+    QuadTreeFlatD.createLoose(c, 0.5);
+  }
+}
@@ -0,0 +1,287 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jspatial.tests.implementation;
+
+import com.io7m.jregions.core.unparameterized.areas.AreaI;
+import com.io7m.jregions.core.unparameterized.areas.AreasI;
+import com.io7m.jspatial.api.Ray2D;
+import com.io7m.jspatial.api.TreeVisitResult;
+import com.io7m.jspatial.api.quadtrees.QuadTreeConfigurationI;
+import com.io7m.jspatial.api.quadtrees.QuadTreeIType;
+import com.io7m.jspatial.api.quadtrees.QuadTreeRaycastBufferI;
+import com.io7m.jspatial.api.quadtrees.QuadTreeRaycastResultI;
+import com.io7m.jspatial.implementation.QuadTreeGridI;
+import com.io7m.jspatial.implementation.QuadTreeGridSupplierI;
+import com.io7m.jspatial.implementation.QuadTreeI;
+import com.io7m.jspatial.tests.api.AreaIContainedGenerator;
+import com.io7m.jtensors.core.unparameterized.vectors.Vector2D;
+import net.java.quickcheck.Generator;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * Test for {@link QuadTreeGridI}
+ */
+
+public final class QuadTreeGridITest
+{
+  private static QuadTreeConfigurationI configuration(
+    final AreaI area,
+    final int cell_size)
+  {
+    final QuadTreeConfigurationI.Builder cb = QuadTreeConfigurationI.builder();
+    cb.setArea(area);
+    cb.setMinimumQuadrantWidth(cell_size);
+    cb.setMinimumQuadrantHeight(cell_size);
+    return cb.build();
+  }
+
+  /**
+   * A generator of small areas spread evenly over a container.
+   */
+
+  private static Generator<AreaI> small(
+    final AreaI container,
+    final Random random)
+  {
+    return () -> {
+      final int x = container.minimumX() + random.nextInt(container.sizeX() - 16);
+      final int y = container.minimumY() + random.nextInt(container.sizeY() - 16);
+      return AreaI.of(
+        x,
+        x + random.nextInt(17),
+        y,
+        y + random.nextInt(17));
+    };
+  }
+
+  /**
+   * Check that every object lies within the area of the quadrant that holds
+   * it, and that every object is held exactly once.
+   */
+
+  private static void checkStructure(final QuadTreeIType<Integer> tree)
+  {
+    final Set<Integer> seen = new HashSet<>();
+    tree.iterateQuadrants(tree, (context, quadrant, depth) -> {
+      Assert.assertTrue(depth <= 1L);
+      quadrant.objects().forEach((item, area) -> {
+        Assert.assertTrue(seen.add(item));
+        Assert.assertEquals(context.areaFor(item), area);
+        Assert.assertTrue(AreasI.contains(quadrant.area(), area));
+      });
+      return TreeVisitResult.RESULT_CONTINUE;
+    });
+    Assert.assertEquals(tree.size(), (long) seen.size());
+  }
+
+  private static void checkQueries(
+    final QuadTreeIType<Integer> expected,
+    final QuadTreeIType<Integer> tree,
+    final Generator<AreaI> gen,
+    final Random random)
+  {
+    Assert.assertEquals(expected.size(), tree.size());
+
+    for (int index = 0; index < 50; ++index) {
+      final AreaI query = gen.next();
+
+      final Set<Integer> expected_overlapped = new HashSet<>();
+      final Set<Integer> overlapped = new HashSet<>();
+      expected.overlappedBy(query, expected_overlapped);
+      tree.overlappedBy(query, overlapped);
+      Assert.assertEquals(expected_overlapped, overlapped);
+      Assert.assertEquals(
+        (long) overlapped.size(), tree.countOverlapping(query));
+      Assert.assertEquals(
+        Boolean.valueOf(!overlapped.isEmpty()),
+        Boolean.valueOf(tree.anyOverlapping(query)));
+
+      final Set<Integer> expected_contained = new HashSet<>();
+      final Set<Integer> contained = new HashSet<>();
+      expected.containedBy(query, expected_contained);
+      tree.containedBy(query, contained);
+      Assert.assertEquals(expected_contained, contained);
+      Assert.assertEquals(
+        (long) contained.size(), tree.countContainedBy(query));
+
+      final Ray2D ray = Ray2D.of(
+        Vector2D.of(
+          (double) query.minimumX(),
+          (double) query.minimumY()),
+        Vector2D.of(
+          random.nextDouble() - 0.5,
+          random.nextDouble() - 0.5));
+
+      final SortedSet<QuadTreeRaycastResultI<Integer>> expected_hits = new TreeSet<>();
+      final SortedSet<QuadTreeRaycastResultI<Integer>> hits = new TreeSet<>();
+      expected.raycast(ray, expected_hits);
+      tree.raycast(ray, hits);
+      Assert.assertEquals(expected_hits, hits);
+      Assert.assertEquals(
+        expected.raycastFirst(ray).map(QuadTreeRaycastResultI::distance),
+        tree.raycastFirst(ray).map(QuadTreeRaycastResultI::distance));
+
+      final List<Double> expected_first = new ArrayList<>();
+      final List<Double> first = new ArrayList<>();
+      expected.raycastFirst(ray, 5, expected_first, (context, item, area, distance) -> {
+        context.add(Double.valueOf(distance));
+        return TreeVisitResult.RESULT_CONTINUE;
+      });
+      tree.raycastFirst(ray, 5, first, (context, item, area, distance) -> {
+        context.add(Double.valueOf(distance));
+        return TreeVisitResult.RESULT_CONTINUE;
+      });
+      Assert.assertEquals(expected_first, first);
+
+      final QuadTreeRaycastBufferI<Integer> expected_buffer = QuadTreeRaycastBufferI.create();
+      final QuadTreeRaycastBufferI<Integer> buffer = QuadTreeRaycastBufferI.create();
+      expected.raycast(ray, expected_buffer);
+      tree.raycast(ray, buffer);
+      Assert.assertEquals(expected_buffer.size(), buffer.size());
+
+      final List<Double> expected_nearest = new ArrayList<>();
+      final List<Double> nearest = new ArrayList<>();
+      expected.nearest(ray.origin(), 5, expected_nearest, (context, item, area, distance) -> {
+        context.add(Double.valueOf(distance));
+        return TreeVisitResult.RESULT_CONTINUE;
+      });
+      tree.nearest(ray.origin(), 5, nearest, (context, item, area, distance) -> {
+        context.add(Double.valueOf(distance));
+        return TreeVisitResult.RESULT_CONTINUE;
+      });
+      Assert.assertEquals(expected_nearest, nearest);
+    }
+  }
+
+  /**
+   * A grid returns the same query results as the default implementation
+   * after an arbitrary sequence of insertions, moves, and removals, for both
+   * small, evenly distributed objects and large ones.
+   */
+
+  @Test
+  public void testQueriesEquivalentToQuadTreeI()
+  {
+    final AreaI container =
+      AreaI.of(-512, 512, -512, 512);
+
+    for (final int cell_size : new int[]{8, 64, 2048}) {
+      final QuadTreeConfigurationI c = configuration(container, cell_size);
+      final Random random = new Random((long) cell_size);
+      final List<Generator<AreaI>> gens = List.of(
+        small(container, random), new AreaIContainedGenerator(container));
+
+      for (final Generator<AreaI> gen : gens) {
+        final QuadTreeIType<Integer> expected = QuadTreeI.create(c);
+        final QuadTreeIType<Integer> tree = new QuadTreeGridSupplierI().create(c);
+
+        final List<Integer> items = new ArrayList<>();
+        for (int index = 0; index < 1000; ++index) {
+          final Integer item = Integer.valueOf(index);
+          final AreaI area = gen.next();
+          items.add(item);
+          Assert.assertEquals(
+            Boolean.valueOf(expected.insert(item, area)),
+            Boolean.valueOf(tree.insert(item, area)));
+        }
+
+        checkStructure(tree);
+        checkQueries(expected, tree, gen, random);
+
+        for (int index = 0; index < 1000; ++index) {
+          final Integer item = items.get(random.nextInt(items.size()));
+          if (random.nextBoolean()) {
+            final AreaI area = gen.next();
+            Assert.assertEquals(
+              Boolean.valueOf(expected.insert(item, area)),
+              Boolean.valueOf(tree.insert(item, area)));
+          } else {
+            Assert.assertEquals(
+              Boolean.valueOf(expected.remove(item)),
+              Boolean.valueOf(tree.remove(item)));
+          }
+        }
+
+        Assert.assertFalse(tree.insert(items.get(0), AreaI.of(0, 1024, 0, 1)));
+        Assert.assertFalse(tree.contains(items.get(0)));
+        expected.remove(items.get(0));
+
+        tree.trim();
+        checkStructure(tree);
+        checkQueries(expected, tree, gen, random);
+
+        for (final Integer item : items) {
+          Assert.assertEquals(
+            Boolean.valueOf(expected.remove(item)),
+            Boolean.valueOf(tree.remove(item)));
+        }
+
+        Assert.assertEquals(0L, tree.size());
+        checkStructure(tree);
+        checkQueries(expected, tree, gen, random);
+      }
+    }
+  }
+
+  /**
+   * Bulk insertion, through the supplier, holds the same objects as the
+   * default implementation, and the grid can be mapped.
+   */
+
+  @Test
+  public void testInsertAllEquivalentToQuadTreeI()
+  {
+    final AreaI container =
+      AreaI.of(-512, 512, -512, 512);
+    final QuadTreeConfigurationI c = configuration(container, 32);
+    final Random random = new Random(0L);
+    final Generator<AreaI> gen = small(container, random);
+
+    final Map<Integer, AreaI> items = new HashMap<>();
+    for (int index = 0; index < 5000; ++index) {
+      items.put(Integer.valueOf(index), gen.next());
+    }
+    items.put(Integer.valueOf(-1), AreaI.of(0, 1024, 0, 1024));
+
+    final QuadTreeIType<Integer> expected = QuadTreeI.create(c);
+    Assert.assertEquals(5000L, expected.insertAll(items));
+
+    final QuadTreeIType<Integer> tree = new QuadTreeGridSupplierI().build(c, items);
+    Assert.assertEquals(5000L, tree.size());
+    Assert.assertFalse(tree.contains(Integer.valueOf(-1)));
+    checkStructure(tree);
+    checkQueries(expected, tree, gen, random);
+
+    final QuadTreeIType<Integer> mapped = tree.map((item, area) -> item);
+    Assert.assertEquals(tree, mapped);
+    Assert.assertEquals((long) tree.hashCode(), (long) mapped.hashCode());
+    tree.clear();
+    Assert.assertEquals(0L, tree.size());
+    Assert.assertNotEquals(tree, mapped);
+  }
+}
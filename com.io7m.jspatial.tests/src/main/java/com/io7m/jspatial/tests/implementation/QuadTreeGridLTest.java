@@ -0,0 +1,289 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jspatial.tests.implementation;
+
+import com.io7m.jregions.core.unparameterized.areas.AreaL;
+import com.io7m.jregions.core.unparameterized.areas.AreasL;
+import com.io7m.jspatial.api.Ray2D;
+import com.io7m.jspatial.api.TreeVisitResult;
+import com.io7m.jspatial.api.quadtrees.QuadTreeConfigurationL;
+import com.io7m.jspatial.api.quadtrees.QuadTreeLType;
+import com.io7m.jspatial.api.quadtrees.QuadTreeRaycastBufferL;
+import com.io7m.jspatial.api.quadtrees.QuadTreeRaycastResultL;
+import com.io7m.jspatial.implementation.QuadTreeGridL;
+import com.io7m.jspatial.implementation.QuadTreeGridSupplierL;
+import com.io7m.jspatial.implementation.QuadTreeL;
+import com.io7m.jspatial.tests.api.AreaLContainedGenerator;
+import com.io7m.jtensors.core.unparameterized.vectors.Vector2D;
+import net.java.quickcheck.Generator;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * Test for {@link QuadTreeGridL}
+ */
+
+public final class QuadTreeGridLTest
+{
+  private static QuadTreeConfigurationL configuration(
+    final AreaL area,
+    final long cell_size)
+  {
+    final QuadTreeConfigurationL.Builder cb = QuadTreeConfigurationL.builder();
+    cb.setArea(area);
+    cb.setMinimumQuadrantWidth(cell_size);
+    cb.setMinimumQuadrantHeight(cell_size);
+    return cb.build();
+  }
+
+  /**
+   * A generator of small areas spread evenly over a container.
+   */
+
+  private static Generator<AreaL> small(
+    final AreaL container,
+    final Random random)
+  {
+    return () -> {
+      final long x = container.minimumX() + (long) random.nextInt(
+        Math.toIntExact(container.sizeX() - 16L));
+      final long y = container.minimumY() + (long) random.nextInt(
+        Math.toIntExact(container.sizeY() - 16L));
+      return AreaL.of(
+        x,
+        x + (long) random.nextInt(17),
+        y,
+        y + (long) random.nextInt(17));
+    };
+  }
+
+  /**
+   * Check that every object lies within the area of the quadrant that holds
+   * it, and that every object is held exactly once.
+   */
+
+  private static void checkStructure(final QuadTreeLType<Integer> tree)
+  {
+    final Set<Integer> seen = new HashSet<>();
+    tree.iterateQuadrants(tree, (context, quadrant, depth) -> {
+      Assert.assertTrue(depth <= 1L);
+      quadrant.objects().forEach((item, area) -> {
+        Assert.assertTrue(seen.add(item));
+        Assert.assertEquals(context.areaFor(item), area);
+        Assert.assertTrue(AreasL.contains(quadrant.area(), area));
+      });
+      return TreeVisitResult.RESULT_CONTINUE;
+    });
+    Assert.assertEquals(tree.size(), (long) seen.size());
+  }
+
+  private static void checkQueries(
+    final QuadTreeLType<Integer> expected,
+    final QuadTreeLType<Integer> tree,
+    final Generator<AreaL> gen,
+    final Random random)
+  {
+    Assert.assertEquals(expected.size(), tree.size());
+
+    for (int index = 0; index < 50; ++index) {
+      final AreaL query = gen.next();
+
+      final Set<Integer> expected_overlapped = new HashSet<>();
+      final Set<Integer> overlapped = new HashSet<>();
+      expected.overlappedBy(query, expected_overlapped);
+      tree.overlappedBy(query, overlapped);
+      Assert.assertEquals(expected_overlapped, overlapped);
+      Assert.assertEquals(
+        (long) overlapped.size(), tree.countOverlapping(query));
+      Assert.assertEquals(
+        Boolean.valueOf(!overlapped.isEmpty()),
+        Boolean.valueOf(tree.anyOverlapping(query)));
+
+      final Set<Integer> expected_contained = new HashSet<>();
+      final Set<Integer> contained = new HashSet<>();
+      expected.containedBy(query, expected_contained);
+      tree.containedBy(query, contained);
+      Assert.assertEquals(expected_contained, contained);
+      Assert.assertEquals(
+        (long) contained.size(), tree.countContainedBy(query));
+
+      final Ray2D ray = Ray2D.of(
+        Vector2D.of(
+          (double) query.minimumX(),
+          (double) query.minimumY()),
+        Vector2D.of(
+          random.nextDouble() - 0.5,
+          random.nextDouble() - 0.5));
+
+      final SortedSet<QuadTreeRaycastResultL<Integer>> expected_hits = new TreeSet<>();
+      final SortedSet<QuadTreeRaycastResultL<Integer>> hits = new TreeSet<>();
+      expected.raycast(ray, expected_hits);
+      tree.raycast(ray, hits);
+      Assert.assertEquals(expected_hits, hits);
+      Assert.assertEquals(
+        expected.raycastFirst(ray).map(QuadTreeRaycastResultL::distance),
+        tree.raycastFirst(ray).map(QuadTreeRaycastResultL::distance));
+
+      final List<Double> expected_first = new ArrayList<>();
+      final List<Double> first = new ArrayList<>();
+      expected.raycastFirst(ray, 5, expected_first, (context, item, area, distance) -> {
+        context.add(Double.valueOf(distance));
+        return TreeVisitResult.RESULT_CONTINUE;
+      });
+      tree.raycastFirst(ray, 5, first, (context, item, area, distance) -> {
+        context.add(Double.valueOf(distance));
+        return TreeVisitResult.RESULT_CONTINUE;
+      });
+      Assert.assertEquals(expected_first, first);
+
+      final QuadTreeRaycastBufferL<Integer> expected_buffer = QuadTreeRaycastBufferL.create();
+      final QuadTreeRaycastBufferL<Integer> buffer = QuadTreeRaycastBufferL.create();
+      expected.raycast(ray, expected_buffer);
+      tree.raycast(ray, buffer);
+      Assert.assertEquals(expected_buffer.size(), buffer.size());
+
+      final List<Double> expected_nearest = new ArrayList<>();
+      final List<Double> nearest = new ArrayList<>();
+      expected.nearest(ray.origin(), 5, expected_nearest, (context, item, area, distance) -> {
+        context.add(Double.valueOf(distance));
+        return TreeVisitResult.RESULT_CONTINUE;
+      });
+      tree.nearest(ray.origin(), 5, nearest, (context, item, area, distance) -> {
+        context.add(Double.valueOf(distance));
+        return TreeVisitResult.RESULT_CONTINUE;
+      });
+      Assert.assertEquals(expected_nearest, nearest);
+    }
+  }
+
+  /**
+   * A grid returns the same query results as the default implementation
+   * after an arbitrary sequence of insertions, moves, and removals, for both
+   * small, evenly distributed objects and large ones.
+   */
+
+  @Test
+  public void testQueriesEquivalentToQuadTreeL()
+  {
+    final AreaL container =
+      AreaL.of(-512L, 512L, -512L, 512L);
+
+    for (final long cell_size : new long[]{8L, 64L, 2048L}) {
+      final QuadTreeConfigurationL c = configuration(container, cell_size);
+      final Random random = new Random(cell_size);
+      final List<Generator<AreaL>> gens = List.of(
+        small(container, random), new AreaLContainedGenerator(container));
+
+      for (final Generator<AreaL> gen : gens) {
+        final QuadTreeLType<Integer> expected = QuadTreeL.create(c);
+        final QuadTreeLType<Integer> tree = new QuadTreeGridSupplierL().create(c);
+
+        final List<Integer> items = new ArrayList<>();
+        for (int index = 0; index < 1000; ++index) {
+          final Integer item = Integer.valueOf(index);
+          final AreaL area = gen.next();
+          items.add(item);
+          Assert.assertEquals(
+            Boolean.valueOf(expected.insert(item, area)),
+            Boolean.valueOf(tree.insert(item, area)));
+        }
+
+        checkStructure(tree);
+        checkQueries(expected, tree, gen, random);
+
+        for (int index = 0; index < 1000; ++index) {
+          final Integer item = items.get(random.nextInt(items.size()));
+          if (random.nextBoolean()) {
+            final AreaL area = gen.next();
+            Assert.assertEquals(
+              Boolean.valueOf(expected.insert(item, area)),
+              Boolean.valueOf(tree.insert(item, area)));
+          } else {
+            Assert.assertEquals(
+              Boolean.valueOf(expected.remove(item)),
+              Boolean.valueOf(tree.remove(item)));
+          }
+        }
+
+        Assert.assertFalse(tree.insert(items.get(0), AreaL.of(0L, 1024L, 0L, 1L)));
+        Assert.assertFalse(tree.contains(items.get(0)));
+        expected.remove(items.get(0));
+
+        tree.trim();
+        checkStructure(tree);
+        checkQueries(expected, tree, gen, random);
+
+        for (final Integer item : items) {
+          Assert.assertEquals(
+            Boolean.valueOf(expected.remove(item)),
+            Boolean.valueOf(tree.remove(item)));
+        }
+
+        Assert.assertEquals(0L, tree.size());
+        checkStructure(tree);
+        checkQueries(expected, tree, gen, random);
+      }
+    }
+  }
+
+  /**
+   * Bulk insertion, through the supplier, holds the same objects as the
+   * default implementation, and the grid can be mapped.
+   */
+
+  @Test
+  public void testInsertAllEquivalentToQuadTreeL()
+  {
+    final AreaL container =
+      AreaL.of(-512L, 512L, -512L, 512L);
+    final QuadTreeConfigurationL c = configuration(container, 32L);
+    final Random random = new Random(0L);
+    final Generator<AreaL> gen = small(container, random);
+
+    final Map<Integer, AreaL> items = new HashMap<>();
+    for (int index = 0; index < 5000; ++index) {
+      items.put(Integer.valueOf(index), gen.next());
+    }
+    items.put(Integer.valueOf(-1), AreaL.of(0L, 1024L, 0L, 1024L));
+
+    final QuadTreeLType<Integer> expected = QuadTreeL.create(c);
+    Assert.assertEquals(5000L, expected.insertAll(items));
+
+    final QuadTreeLType<Integer> tree = new QuadTreeGridSupplierL().build(c, items);
+    Assert.assertEquals(5000L, tree.size());
+    Assert.assertFalse(tree.contains(Integer.valueOf(-1)));
+    checkStructure(tree);
+    checkQueries(expected, tree, gen, random);
+
+    final QuadTreeLType<Integer> mapped = tree.map((item, area) -> item);
+    Assert.assertEquals(tree, mapped);
+    Assert.assertEquals((long) tree.hashCode(), (long) mapped.hashCode());
+    tree.clear();
+    Assert.assertEquals(0L, tree.size());
+    Assert.assertNotEquals(tree, mapped);
+  }
+}
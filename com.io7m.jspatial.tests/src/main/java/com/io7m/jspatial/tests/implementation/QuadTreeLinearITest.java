@@ -0,0 +1,181 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.jspatial.tests.implementation;
+
+import com.io7m.jregions.core.unparameterized.areas.AreaI;
+import com.io7m.jspatial.api.Ray2D;
+import com.io7m.jspatial.api.TreeVisitResult;
+import com.io7m.jspatial.api.quadtrees.QuadTreeConfigurationI;
+import com.io7m.jspatial.api.quadtrees.QuadTreeIType;
+import com.io7m.jspatial.api.quadtrees.QuadTreeRaycastResultI;
+import com.io7m.jspatial.implementation.QuadTreeLinearI;
+import com.io7m.jspatial.implementation.QuadTreeLinearSupplierI;
+import com.io7m.jspatial.implementation.QuadTreeI;
+import com.io7m.jspatial.tests.api.AreaIContainedGenerator;
+import com.io7m.jspatial.tests.api.quadtrees.QuadTreeIContract;
+import com.io7m.jtensors.core.unparameterized.vectors.Vector2D;
+import net.java.quickcheck.Generator;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * Test for {@link QuadTreeLinearI}
+ */
+
+public final class QuadTreeLinearITest extends QuadTreeIContract
+{
+  private static List<String> structure(final QuadTreeIType<Integer> tree)
+  {
+    final List<String> nodes = new ArrayList<>();
+    tree.iterateQuadrants(nodes, (context, quadrant, depth) -> {
+      context.add(depth + " " + quadrant.area() + " " + new TreeSet<>(quadrant.objects().keySet()));
+      return TreeVisitResult.RESULT_CONTINUE;
+    });
+    return nodes;
+  }
+
+  @Override
+  protected <T> QuadTreeIType<T> create(final QuadTreeConfigurationI config)
+  {
+    return new QuadTreeLinearSupplierI().create(config);
+  }
+
+  /**
+   * The linear tree has the same structure and query results as the default
+   * implementation after an arbitrary sequence of operations.
+   */
+
+  @Test
+  public void testEquivalentToQuadTreeI()
+  {
+    final AreaI container =
+      AreaI.of(-512, 512, -512, 512);
+
+    for (final int capacity : new int[]{0, 4}) {
+      final QuadTreeConfigurationI.Builder cb = QuadTreeConfigurationI.builder();
+      cb.setArea(container);
+      cb.setTrimOnRemove(true);
+      cb.setMaximumItemsPerLeaf(capacity);
+      final QuadTreeConfigurationI c = cb.build();
+
+      final QuadTreeIType<Integer> expected = QuadTreeI.create(c);
+      final QuadTreeIType<Integer> tree = this.create(c);
+
+      final Generator<AreaI> gen = new AreaIContainedGenerator(container);
+      final Random random = new Random(0L);
+      final List<Integer> items = new ArrayList<>();
+      for (int index = 0; index < 300; ++index) {
+        final Integer item = Integer.valueOf(index);
+        final AreaI area = gen.next();
+        items.add(item);
+        Assert.assertEquals(
+          Boolean.valueOf(expected.insert(item, area)),
+          Boolean.valueOf(tree.insert(item, area)));
+      }
+
+      for (int index = 0; index < 300; ++index) {
+        final Integer item = items.get(random.nextInt(items.size()));
+        if (random.nextBoolean()) {
+          final AreaI area = gen.next();
+          Assert.assertEquals(
+            Boolean.valueOf(expected.insert(item, area)),
+            Boolean.valueOf(tree.insert(item, area)));
+        } else {
+          Assert.assertEquals(
+            Boolean.valueOf(expected.remove(item)),
+            Boolean.valueOf(tree.remove(item)));
+        }
+      }
+
+      Assert.assertEquals(expected.size(), tree.size());
+      Assert.assertEquals(structure(expected), structure(tree));
+
+      for (int index = 0; index < 50; ++index) {
+        final AreaI query = gen.next();
+
+        final Set<Integer> expected_overlapped = new HashSet<>();
+        final Set<Integer> overlapped = new HashSet<>();
+        expected.overlappedBy(query, expected_overlapped);
+        tree.overlappedBy(query, overlapped);
+        Assert.assertEquals(expected_overlapped, overlapped);
+
+        final Set<Integer> expected_contained = new HashSet<>();
+        final Set<Integer> contained = new HashSet<>();
+        expected.containedBy(query, expected_contained);
+        tree.containedBy(query, contained);
+        Assert.assertEquals(expected_contained, contained);
+
+        final Ray2D ray = Ray2D.of(
+          Vector2D.of((double) query.minimumX(), (double) query.minimumY()),
+          Vector2D.of(random.nextDouble() - 0.5, random.nextDouble() - 0.5));
+
+        final SortedSet<QuadTreeRaycastResultI<Integer>> expected_hits = new TreeSet<>();
+        final SortedSet<QuadTreeRaycastResultI<Integer>> hits = new TreeSet<>();
+        expected.raycast(ray, expected_hits);
+        tree.raycast(ray, hits);
+        Assert.assertEquals(expected_hits, hits);
+      }
+
+      tree.trim();
+      expected.trim();
+      Assert.assertEquals(structure(expected), structure(tree));
+    }
+  }
+
+  /**
+   * Bulk insertion, through the supplier, produces the same structure as the
+   * default implementation.
+   */
+
+  @Test
+  public void testInsertAllEquivalentToQuadTreeI()
+  {
+    final AreaI container =
+      AreaI.of(-512, 512, -512, 512);
+
+    for (final int capacity : new int[]{0, 4}) {
+      final QuadTreeConfigurationI.Builder cb = QuadTreeConfigurationI.builder();
+      cb.setArea(container);
+      cb.setMaximumItemsPerLeaf(capacity);
+      final QuadTreeConfigurationI c = cb.build();
+
+      final Generator<AreaI> gen = new AreaIContainedGenerator(container);
+      final Map<Integer, AreaI> items = new HashMap<>();
+      for (int index = 0; index < 300; ++index) {
+        items.put(Integer.valueOf(index), gen.next());
+      }
+
+      final QuadTreeIType<Integer> expected = QuadTreeI.create(c);
+      Assert.assertEquals(300L, expected.insertAll(items));
+
+      final QuadTreeIType<Integer> tree = new QuadTreeLinearSupplierI().build(c, items);
+      Assert.assertEquals(300L, tree.size());
+      Assert.assertEquals(structure(expected), structure(tree));
+    }
+  }
+}
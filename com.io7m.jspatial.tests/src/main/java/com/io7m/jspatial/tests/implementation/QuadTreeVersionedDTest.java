@@ -0,0 +1,262 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jspatial.tests.implementation;
+
+import com.io7m.jregions.core.unparameterized.areas.AreaD;
+import com.io7m.jspatial.api.Ray2D;
+import com.io7m.jspatial.api.TreeVisitResult;
+import com.io7m.jspatial.api.quadtrees.QuadTreeConfigurationD;
+import com.io7m.jspatial.api.quadtrees.QuadTreeDType;
+import com.io7m.jspatial.api.quadtrees.QuadTreePersistentDType;
+import com.io7m.jspatial.api.quadtrees.QuadTreeReadableDType;
+import com.io7m.jspatial.implementation.QuadTreeD;
+import com.io7m.jspatial.implementation.QuadTreePersistentD;
+import com.io7m.jspatial.implementation.QuadTreeVersionedD;
+import com.io7m.jspatial.implementation.QuadTreeVersionedSupplierD;
+import com.io7m.jspatial.tests.api.AreaDContainedGenerator;
+import com.io7m.jspatial.tests.api.quadtrees.QuadTreeDContract;
+import com.io7m.jtensors.core.unparameterized.vectors.Vector2D;
+import net.java.quickcheck.Generator;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Test for {@link QuadTreeVersionedD} and {@link QuadTreePersistentD}
+ */
+
+public final class QuadTreeVersionedDTest extends QuadTreeDContract
+{
+  private static final AreaD CONTAINER =
+    AreaD.of(-512.0, 512.0, -512.0, 512.0);
+
+  @Override
+  protected <T> QuadTreeDType<T> create(final QuadTreeConfigurationD config)
+  {
+    return new QuadTreeVersionedSupplierD().create(config);
+  }
+
+  private static QuadTreeConfigurationD configuration()
+  {
+    final QuadTreeConfigurationD.Builder cb = QuadTreeConfigurationD.builder();
+    cb.setArea(CONTAINER);
+    cb.setMaximumItemsPerLeaf(4);
+    cb.setTrimOnRemove(true);
+    return cb.build();
+  }
+
+  private static <T extends Comparable<T>> List<String> structure(final QuadTreeReadableDType<T> tree)
+  {
+    final List<String> out = new ArrayList<>();
+    tree.iterateQuadrants(out, (context, quadrant, depth) -> {
+      final Set<T> objects = new TreeSet<>(quadrant.objects().keySet());
+      context.add(depth + " " + quadrant.area() + " " + objects);
+      return TreeVisitResult.RESULT_CONTINUE;
+    });
+    return out;
+  }
+
+  /**
+   * Earlier versions of a persistent tree are not affected by operations
+   * on later versions.
+   */
+
+  @Test
+  public void testPersistentVersionsUnchanged()
+  {
+    final Generator<AreaD> gen = new AreaDContainedGenerator(CONTAINER);
+    final List<Integer> items = new ArrayList<>();
+    final List<AreaD> areas = new ArrayList<>();
+    final List<QuadTreePersistentDType<Integer>> versions = new ArrayList<>();
+
+    QuadTreePersistentDType<Integer> tree =
+      QuadTreePersistentD.create(configuration());
+    versions.add(tree);
+
+    for (int index = 0; index < 200; ++index) {
+      final Integer item = Integer.valueOf(index);
+      final AreaD area = gen.next();
+      items.add(item);
+      areas.add(area);
+      tree = tree.insert(item, area);
+      versions.add(tree);
+    }
+
+    for (int index = 0; index < 100; ++index) {
+      tree = tree.remove(items.get(index));
+      versions.add(tree);
+    }
+
+    for (int version = 0; version <= 200; ++version) {
+      final QuadTreePersistentDType<Integer> v = versions.get(version);
+      Assert.assertEquals((long) version, v.size());
+      for (int index = 0; index < 200; ++index) {
+        final Integer item = items.get(index);
+        Assert.assertEquals(Boolean.valueOf(index < version), Boolean.valueOf(v.contains(item)));
+        if (index < version) {
+          Assert.assertEquals(areas.get(index), v.areaFor(item));
+        }
+      }
+      Assert.assertEquals((long) version, v.countContainedBy(CONTAINER));
+    }
+
+    for (int removed = 1; removed <= 100; ++removed) {
+      final QuadTreePersistentDType<Integer> v = versions.get(200 + removed);
+      Assert.assertEquals(200L - (long) removed, v.size());
+      Assert.assertFalse(v.contains(items.get(removed - 1)));
+      Assert.assertTrue(v.contains(items.get(removed)));
+    }
+
+    Assert.assertSame(tree, tree.remove(items.get(0)));
+    Assert.assertEquals(0L, tree.clear().size());
+    Assert.assertEquals(100L, tree.size());
+  }
+
+  /**
+   * A persistent tree has the same structure, and gives the same query
+   * results, as a mutable tree given the same operations.
+   */
+
+  @Test
+  public void testPersistentMatchesMutable()
+  {
+    final QuadTreeConfigurationD c = configuration();
+    final QuadTreeDType<Integer> expected = QuadTreeD.create(c);
+    QuadTreePersistentDType<Integer> tree = QuadTreePersistentD.create(c);
+
+    final Generator<AreaD> gen = new AreaDContainedGenerator(CONTAINER);
+    final List<Integer> items = new ArrayList<>();
+    for (int index = 0; index < 300; ++index) {
+      items.add(Integer.valueOf(index));
+    }
+
+    final Random random = new Random(0L);
+    for (int index = 0; index < 3000; ++index) {
+      final Integer item = items.get(random.nextInt(items.size()));
+      if (random.nextInt(3) == 0) {
+        expected.remove(item);
+        tree = tree.remove(item);
+      } else {
+        final AreaD area = gen.next();
+        expected.insert(item, area);
+        tree = tree.insert(item, area);
+      }
+
+      if (index % 100 == 0) {
+        Assert.assertEquals(structure(expected), structure(tree));
+      }
+    }
+
+    Assert.assertEquals(expected.size(), tree.size());
+    Assert.assertEquals(structure(expected), structure(tree));
+
+    for (int index = 0; index < 50; ++index) {
+      final AreaD area = gen.next();
+      final Set<Integer> expected_items = new HashSet<>();
+      final Set<Integer> received_items = new HashSet<>();
+      expected.overlappedBy(area, expected_items);
+      tree.overlappedBy(area, received_items);
+      Assert.assertEquals(expected_items, received_items);
+      Assert.assertEquals(expected.countOverlapping(area), tree.countOverlapping(area));
+      Assert.assertEquals(expected.countContainedBy(area), tree.countContainedBy(area));
+
+      final Vector2D point = Vector2D.of(area.minimumX(), area.minimumY());
+      final List<Double> expected_nearest = new ArrayList<>();
+      final List<Double> received_nearest = new ArrayList<>();
+      expected.nearest(point, 5, expected_nearest, (context, o, a, d) -> {
+        context.add(Double.valueOf(d));
+        return TreeVisitResult.RESULT_CONTINUE;
+      });
+      tree.nearest(point, 5, received_nearest, (context, o, a, d) -> {
+        context.add(Double.valueOf(d));
+        return TreeVisitResult.RESULT_CONTINUE;
+      });
+      Assert.assertEquals(expected_nearest, received_nearest);
+
+      final Ray2D ray = Ray2D.of(point, Vector2D.of(1.0, 0.5));
+      Assert.assertEquals(
+        expected.raycastFirst(ray).map(r -> Double.valueOf(r.distance())),
+        tree.raycastFirst(ray).map(r -> Double.valueOf(r.distance())));
+    }
+
+    expected.clear();
+    Assert.assertEquals(structure(expected), structure(tree.clear()));
+  }
+
+  /**
+   * A snapshot of a versioned tree is not affected by later modifications,
+   * and is not copied.
+   */
+
+  @Test
+  public void testVersionedSnapshot()
+  {
+    final QuadTreeDType<Integer> tree = QuadTreeVersionedD.create(configuration());
+    final Generator<AreaD> gen = new AreaDContainedGenerator(CONTAINER);
+    final Integer item0 = Integer.valueOf(0);
+    final Integer item1 = Integer.valueOf(1);
+    final AreaD area0 = gen.next();
+
+    tree.insert(item0, area0);
+    final QuadTreeReadableDType<Integer> snapshot = tree.snapshot();
+    Assert.assertSame(snapshot, tree.snapshot());
+
+    tree.insert(item1, gen.next());
+    tree.insert(item0, gen.next());
+    Assert.assertNotSame(snapshot, tree.snapshot());
+    Assert.assertEquals(1L, snapshot.size());
+    Assert.assertEquals(area0, snapshot.areaFor(item0));
+    Assert.assertFalse(snapshot.contains(item1));
+
+    final Map<Integer, AreaD> more = new HashMap<>();
+    for (int index = 2; index < 100; ++index) {
+      more.put(Integer.valueOf(index), gen.next());
+    }
+    Assert.assertEquals(98L, tree.insertAll(more));
+    Assert.assertEquals(100L, tree.size());
+    Assert.assertEquals(1L, snapshot.size());
+  }
+
+  /**
+   * The default snapshot of a mutable tree is a copy.
+   */
+
+  @Test
+  public void testDefaultSnapshot()
+  {
+    final QuadTreeDType<Integer> tree = QuadTreeD.create(configuration());
+    final Generator<AreaD> gen = new AreaDContainedGenerator(CONTAINER);
+    final Integer item0 = Integer.valueOf(0);
+    final AreaD area0 = gen.next();
+
+    tree.insert(item0, area0);
+    final QuadTreeReadableDType<Integer> snapshot = tree.snapshot();
+    tree.remove(item0);
+
+    Assert.assertEquals(1L, snapshot.size());
+    Assert.assertEquals(area0, snapshot.areaFor(item0));
+    Assert.assertEquals(0L, tree.size());
+  }
+}
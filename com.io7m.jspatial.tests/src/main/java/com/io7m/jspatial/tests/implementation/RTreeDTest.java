@@ -0,0 +1,329 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jspatial.tests.implementation;
+
+import com.io7m.jregions.core.unparameterized.areas.AreaD;
+import com.io7m.jregions.core.unparameterized.areas.AreasD;
+import com.io7m.jspatial.api.Ray2D;
+import com.io7m.jspatial.api.TreeVisitResult;
+import com.io7m.jspatial.api.quadtrees.QuadTreeConfigurationD;
+import com.io7m.jspatial.api.quadtrees.QuadTreeDType;
+import com.io7m.jspatial.api.quadtrees.QuadTreeRaycastBufferD;
+import com.io7m.jspatial.api.quadtrees.QuadTreeRaycastResultD;
+import com.io7m.jspatial.implementation.QuadTreeD;
+import com.io7m.jspatial.implementation.RTreeD;
+import com.io7m.jspatial.implementation.RTreeSupplierD;
+import com.io7m.jspatial.tests.api.AreaDContainedGenerator;
+import com.io7m.jtensors.core.unparameterized.vectors.Vector2D;
+import net.java.quickcheck.Generator;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * Test for {@link RTreeD}
+ */
+
+public final class RTreeDTest
+{
+  private static QuadTreeConfigurationD configuration(final AreaD area)
+  {
+    final QuadTreeConfigurationD.Builder cb = QuadTreeConfigurationD.builder();
+    cb.setArea(area);
+    return cb.build();
+  }
+
+  /**
+   * Check that every leaf is at the same depth, that only leaves hold
+   * objects, that every object lies within the area of the quadrant that
+   * holds it, and that every object is held exactly once.
+   */
+
+  private static void checkStructure(final QuadTreeDType<Integer> tree)
+  {
+    final Set<Long> leaf_depths = new HashSet<>();
+    final Set<Integer> seen = new HashSet<>();
+    tree.iterateQuadrants(tree, (context, quadrant, depth) -> {
+      final Map<Integer, AreaD> objects = quadrant.objects();
+      if (!objects.isEmpty()) {
+        leaf_depths.add(Long.valueOf(depth));
+      }
+      objects.forEach((item, area) -> {
+        Assert.assertTrue(seen.add(item));
+        Assert.assertEquals(context.areaFor(item), area);
+        Assert.assertTrue(AreasD.contains(quadrant.area(), area));
+      });
+      return TreeVisitResult.RESULT_CONTINUE;
+    });
+
+    Assert.assertEquals(tree.size(), (long) seen.size());
+    Assert.assertTrue(leaf_depths.size() <= 1);
+  }
+
+  private static void checkQueries(
+    final QuadTreeDType<Integer> expected,
+    final QuadTreeDType<Integer> tree,
+    final Generator<AreaD> gen,
+    final Random random)
+  {
+    Assert.assertEquals(expected.size(), tree.size());
+
+    for (int index = 0; index < 50; ++index) {
+      final AreaD query = gen.next();
+
+      final Set<Integer> expected_overlapped = new HashSet<>();
+      final Set<Integer> overlapped = new HashSet<>();
+      expected.overlappedBy(query, expected_overlapped);
+      tree.overlappedBy(query, overlapped);
+      Assert.assertEquals(expected_overlapped, overlapped);
+      Assert.assertEquals(
+        (long) overlapped.size(), tree.countOverlapping(query));
+      Assert.assertEquals(
+        Boolean.valueOf(!overlapped.isEmpty()),
+        Boolean.valueOf(tree.anyOverlapping(query)));
+
+      final Set<Integer> expected_contained = new HashSet<>();
+      final Set<Integer> contained = new HashSet<>();
+      expected.containedBy(query, expected_contained);
+      tree.containedBy(query, contained);
+      Assert.assertEquals(expected_contained, contained);
+      Assert.assertEquals(
+        (long) contained.size(), tree.countContainedBy(query));
+
+      final Ray2D ray = Ray2D.of(
+        Vector2D.of(query.minimumX(), query.minimumY()),
+        Vector2D.of(random.nextDouble() - 0.5, random.nextDouble() - 0.5));
+
+      final SortedSet<QuadTreeRaycastResultD<Integer>> expected_hits = new TreeSet<>();
+      final SortedSet<QuadTreeRaycastResultD<Integer>> hits = new TreeSet<>();
+      expected.raycast(ray, expected_hits);
+      tree.raycast(ray, hits);
+      Assert.assertEquals(expected_hits, hits);
+      Assert.assertEquals(
+        expected.raycastFirst(ray).map(QuadTreeRaycastResultD::distance),
+        tree.raycastFirst(ray).map(QuadTreeRaycastResultD::distance));
+
+      final QuadTreeRaycastBufferD<Integer> expected_buffer = QuadTreeRaycastBufferD.create();
+      final QuadTreeRaycastBufferD<Integer> buffer = QuadTreeRaycastBufferD.create();
+      expected.raycast(ray, expected_buffer);
+      tree.raycast(ray, buffer);
+      Assert.assertEquals(expected_buffer.size(), buffer.size());
+
+      final List<Double> expected_nearest = new ArrayList<>();
+      final List<Double> nearest = new ArrayList<>();
+      expected.nearest(ray.origin(), 5, expected_nearest, (context, item, area, distance) -> {
+        context.add(Double.valueOf(distance));
+        return TreeVisitResult.RESULT_CONTINUE;
+      });
+      tree.nearest(ray.origin(), 5, nearest, (context, item, area, distance) -> {
+        context.add(Double.valueOf(distance));
+        return TreeVisitResult.RESULT_CONTINUE;
+      });
+      Assert.assertEquals(expected_nearest, nearest);
+    }
+  }
+
+  /**
+   * An R-tree returns the same query results as the default implementation
+   * after an arbitrary sequence of insertions, moves, and removals.
+   */
+
+  @Test
+  public void testQueriesEquivalentToQuadTreeD()
+  {
+    final AreaD container =
+      AreaD.of(-512.0, 512.0, -512.0, 512.0);
+    final QuadTreeConfigurationD c = configuration(container);
+
+    final QuadTreeDType<Integer> expected = QuadTreeD.create(c);
+    final QuadTreeDType<Integer> tree = new RTreeSupplierD().create(c);
+
+    final Generator<AreaD> gen = new AreaDContainedGenerator(container);
+    final Random random = new Random(0L);
+    final List<Integer> items = new ArrayList<>();
+    for (int index = 0; index < 2000; ++index) {
+      final Integer item = Integer.valueOf(index);
+      final AreaD area = gen.next();
+      items.add(item);
+      Assert.assertEquals(
+        Boolean.valueOf(expected.insert(item, area)),
+        Boolean.valueOf(tree.insert(item, area)));
+    }
+
+    checkStructure(tree);
+    checkQueries(expected, tree, gen, random);
+
+    for (int index = 0; index < 2000; ++index) {
+      final Integer item = items.get(random.nextInt(items.size()));
+      if (random.nextBoolean()) {
+        final AreaD area = gen.next();
+        Assert.assertEquals(
+          Boolean.valueOf(expected.insert(item, area)),
+          Boolean.valueOf(tree.insert(item, area)));
+      } else {
+        Assert.assertEquals(
+          Boolean.valueOf(expected.remove(item)),
+          Boolean.valueOf(tree.remove(item)));
+      }
+    }
+
+    checkStructure(tree);
+    checkQueries(expected, tree, gen, random);
+
+    for (final Integer item : items) {
+      Assert.assertEquals(
+        Boolean.valueOf(expected.remove(item)),
+        Boolean.valueOf(tree.remove(item)));
+    }
+
+    Assert.assertEquals(0L, tree.size());
+    checkStructure(tree);
+    checkQueries(expected, tree, gen, random);
+  }
+
+  /**
+   * Bulk loading packs the tree, and the packed tree returns the same query
+   * results as the default implementation both before and after further
+   * updates.
+   */
+
+  @Test
+  public void testInsertAllQueriesEquivalentToQuadTreeD()
+  {
+    final AreaD container =
+      AreaD.of(-512.0, 512.0, -512.0, 512.0);
+    final QuadTreeConfigurationD c = configuration(container);
+    final Generator<AreaD> gen = new AreaDContainedGenerator(container);
+    final Random random = new Random(0L);
+
+    for (final int count : new int[]{0, 1, 16, 17, 300, 5000}) {
+      final Integer[] keys = new Integer[count];
+      final Map<Integer, AreaD> items = new HashMap<>();
+      for (int index = 0; index < count; ++index) {
+        keys[index] = Integer.valueOf(index);
+        items.put(keys[index], gen.next());
+      }
+      items.put(Integer.valueOf(-1), AreaD.of(0.0, 1024.0, 0.0, 1024.0));
+
+      final QuadTreeDType<Integer> expected = QuadTreeD.create(c);
+      Assert.assertEquals((long) count, expected.insertAll(items));
+
+      final QuadTreeDType<Integer> tree = new RTreeSupplierD().build(c, items);
+      Assert.assertFalse(tree.contains(Integer.valueOf(-1)));
+      checkStructure(tree);
+      checkQueries(expected, tree, gen, random);
+
+      for (int index = 0; index < count / 2; ++index) {
+        final Integer item = keys[random.nextInt(count)];
+        final AreaD area = gen.next();
+        Assert.assertEquals(
+          Boolean.valueOf(expected.insert(item, area)),
+          Boolean.valueOf(tree.insert(item, area)));
+        final Integer removed = keys[random.nextInt(count)];
+        Assert.assertEquals(
+          Boolean.valueOf(expected.remove(removed)),
+          Boolean.valueOf(tree.remove(removed)));
+      }
+
+      checkStructure(tree);
+      checkQueries(expected, tree, gen, random);
+    }
+  }
+
+  /**
+   * Many objects with identical bounds can be inserted and removed.
+   */
+
+  @Test
+  public void testIdenticalBounds()
+  {
+    final AreaD container =
+      AreaD.of(0.0, 128.0, 0.0, 128.0);
+    final QuadTreeConfigurationD c = configuration(container);
+    final QuadTreeDType<Integer> tree = RTreeD.create(c);
+
+    final AreaD area = AreaD.of(10.0, 20.0, 10.0, 20.0);
+    final Integer[] items = new Integer[1000];
+    for (int index = 0; index < items.length; ++index) {
+      items[index] = Integer.valueOf(index);
+      Assert.assertTrue(tree.insert(items[index], area));
+    }
+
+    checkStructure(tree);
+    Assert.assertEquals(1000L, tree.countContainedBy(area));
+    Assert.assertEquals(0L, tree.countOverlapping(AreaD.of(30.0, 40.0, 30.0, 40.0)));
+
+    for (int index = 0; index < items.length; index += 2) {
+      Assert.assertTrue(tree.remove(items[index]));
+    }
+
+    checkStructure(tree);
+    Assert.assertEquals(500L, tree.countOverlapping(area));
+  }
+
+  /**
+   * Removing objects one at a time from a bulk loaded tree keeps the
+   * subtree counts consistent with the objects that the tree holds, even
+   * when removals dissolve underfull nodes and reinsert their subtrees.
+   */
+
+  @Test
+  public void testRemoveAfterInsertAllCounts()
+  {
+    final AreaD container =
+      AreaD.of(-512.0, 512.0, -512.0, 512.0);
+    final QuadTreeConfigurationD c = configuration(container);
+    final Random random = new Random(13L);
+
+    final List<Integer> keys = new ArrayList<>();
+    final Map<Integer, AreaD> items = new HashMap<>();
+    for (int index = 0; index < 5000; ++index) {
+      final double x = random.nextDouble() * 1000.0 - 500.0;
+      final double y = random.nextDouble() * 1000.0 - 500.0;
+      final Integer item = Integer.valueOf(index);
+      keys.add(item);
+      items.put(item, AreaD.of(
+        x, x + random.nextDouble() * 12.0, y, y + random.nextDouble() * 12.0));
+    }
+
+    final QuadTreeDType<Integer> tree = RTreeD.create(c);
+    Assert.assertEquals((long) keys.size(), tree.insertAll(items));
+
+    Collections.shuffle(keys, random);
+    for (final Integer item : keys) {
+      Assert.assertTrue(tree.remove(item));
+
+      final Set<Integer> overlapped = new HashSet<>();
+      tree.overlappedBy(container, overlapped);
+      Assert.assertEquals(tree.size(), (long) overlapped.size());
+      Assert.assertEquals(tree.size(), tree.countOverlapping(container));
+      Assert.assertEquals(tree.size(), tree.countContainedBy(container));
+    }
+
+    checkStructure(tree);
+  }
+}
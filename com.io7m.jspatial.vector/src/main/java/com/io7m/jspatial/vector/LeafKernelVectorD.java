@@ -0,0 +1,423 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jspatial.vector;
+
+import com.io7m.jspatial.implementation.LeafKernelDType;
+import com.io7m.jspatial.implementation.LeafKernelsD;
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * <p>A {@link LeafKernelDType} that tests several objects per instruction
+ * using the {@code jdk.incubator.vector} API.</p>
+ *
+ * <p>The trees keep the bounds of each object together, so the kernel
+ * loads consecutive array elements into the lanes of a vector and tests
+ * every lane against the query value for the axis and extent that the lane
+ * holds. Objects are processed in blocks of four, and the per-lane results
+ * of a block are combined into a result per object with bitwise operations
+ * on the lane masks. Vector gathers, which would move the bounds of each
+ * object into a lane of its own, are deliberately avoided: some JDK 21
+ * releases generate incorrect code for gathers on AVX-512 hardware.</p>
+ *
+ * <p>The query values for each lane are built once per call by blending
+ * broadcast values under constant masks. The ray tests combine the
+ * distances for the axes of an object by loading the bounds again at the
+ * offsets of the other axes, rather than by moving values between lanes or
+ * through arrays, so that the kernel does not allocate once it has been
+ * compiled. The allocation rate can be checked with the {@code gc}
+ * profiler of the benchmarks.</p>
+ *
+ * <p>Objects that do not fill a block, and objects at the very end of the
+ * bounds array, are passed to the scalar kernel.</p>
+ *
+ * <p>The kernel is registered as a service, and is used by the trees when
+ * this module and the {@code jdk.incubator.vector} module are present.</p>
+ */
+
+public final class LeafKernelVectorD implements LeafKernelDType
+{
+  private static final VectorSpecies<Double> SPECIES =
+    DoubleVector.SPECIES_PREFERRED;
+  private static final int LANES = SPECIES.length();
+  private static final LeafKernelDType SCALAR = LeafKernelsD.scalar();
+
+  /*
+   * A block of four objects. For each block size, the mask has a bit set
+   * for the first element of each object within the block.
+   */
+
+  private static final int BLOCK_OBJECTS = 4;
+  private static final int AREA_STRIDE = 4;
+  private static final int AREA_BLOCK = AREA_STRIDE * BLOCK_OBJECTS;
+  private static final long AREA_STARTS = 0b0001_0001_0001_0001L;
+  private static final int VOLUME_STRIDE = 6;
+  private static final int VOLUME_BLOCK = VOLUME_STRIDE * BLOCK_OBJECTS;
+  private static final long VOLUME_STARTS = 0b000001_000001_000001_000001L;
+
+  private static final boolean USABLE =
+    LANES >= 4 && AREA_BLOCK % LANES == 0 && VOLUME_BLOCK % LANES == 0;
+
+  /*
+   * For each phase, the lanes of a vector that hold elements of the Y and
+   * Z axes of a packed area or volume, when the first lane holds element
+   * phase of an object. The lanes of a block only ever begin at the even
+   * phases, as the number of lanes is a multiple of four.
+   */
+
+  private static final VectorMask<Double> AREA_Y_0 = axis(AREA_STRIDE, 0, 1);
+  private static final VectorMask<Double> AREA_Y_2 = axis(AREA_STRIDE, 2, 1);
+  private static final VectorMask<Double> VOLUME_Y_0 = axis(VOLUME_STRIDE, 0, 1);
+  private static final VectorMask<Double> VOLUME_Z_0 = axis(VOLUME_STRIDE, 0, 2);
+  private static final VectorMask<Double> VOLUME_Y_2 = axis(VOLUME_STRIDE, 2, 1);
+  private static final VectorMask<Double> VOLUME_Z_2 = axis(VOLUME_STRIDE, 2, 2);
+  private static final VectorMask<Double> VOLUME_Y_4 = axis(VOLUME_STRIDE, 4, 1);
+  private static final VectorMask<Double> VOLUME_Z_4 = axis(VOLUME_STRIDE, 4, 2);
+
+  /**
+   * Construct a kernel.
+   */
+
+  public LeafKernelVectorD()
+  {
+
+  }
+
+  private static VectorMask<Double> axis(
+    final int stride,
+    final int phase,
+    final int axis)
+  {
+    long bits = 0L;
+    for (int lane = 0; lane < LANES; ++lane) {
+      if (((phase + lane) % stride) / 2 == axis) {
+        bits |= 1L << lane;
+      }
+    }
+    return VectorMask.fromLong(SPECIES, bits);
+  }
+
+  /*
+   * Create a vector in which each lane holds the query value for the axis
+   * of the element that the lane holds. The patterns are created once per
+   * query, outside of the loops over blocks.
+   */
+
+  private static DoubleVector pattern(
+    final double x,
+    final double y,
+    final VectorMask<Double> y_lanes)
+  {
+    return DoubleVector.broadcast(SPECIES, x).blend(y, y_lanes);
+  }
+
+  private static DoubleVector pattern(
+    final double x,
+    final double y,
+    final double z,
+    final VectorMask<Double> y_lanes,
+    final VectorMask<Double> z_lanes)
+  {
+    return pattern(x, y, y_lanes).blend(z, z_lanes);
+  }
+
+  private static DoubleVector load(
+    final double[] array,
+    final int offset)
+  {
+    return DoubleVector.fromArray(SPECIES, array, offset);
+  }
+
+  /*
+   * Determine, for each lane holding the minimum of an extent, whether the
+   * extent overlaps the query extent, treating empty extents as having a
+   * size of one. The bits for other lanes are meaningless.
+   */
+
+  private static long overlapsExtents(
+    final double[] bounds,
+    final int offset,
+    final DoubleVector minimums,
+    final DoubleVector maximums)
+  {
+    final DoubleVector b0 = load(bounds, offset);
+    final DoubleVector b1 = load(bounds, offset + 1);
+    final DoubleVector b1_size = b0.add(b1.sub(b0).max(1.0));
+    return b1_size.compare(VectorOperators.GT, minimums)
+      .and(b0.compare(VectorOperators.LT, maximums))
+      .toLong();
+  }
+
+  /*
+   * Calculate, for each lane, the distance along the ray at which the ray
+   * crosses the plane given by the element that the lane holds.
+   */
+
+  private static DoubleVector distances(
+    final double[] bounds,
+    final int offset,
+    final DoubleVector origin,
+    final DoubleVector inverse)
+  {
+    return load(bounds, offset).sub(origin).mul(inverse);
+  }
+
+  private static long entered(
+    final DoubleVector tmin,
+    final DoubleVector tmax)
+  {
+    final VectorMask<Double> entered =
+      tmax.compare(VectorOperators.GE, tmin.max(0.0))
+        .and(tmin.compare(VectorOperators.LT, Double.POSITIVE_INFINITY));
+    return entered.toLong();
+  }
+
+  @Override
+  public long overlappingAreas(
+    final double[] area,
+    final double[] bounds,
+    final int index,
+    final int count)
+  {
+    if (!USABLE) {
+      return SCALAR.overlappingAreas(area, bounds, index, count);
+    }
+
+    final double a_x0 = area[0];
+    final double a_x1 = a_x0 + Math.max(1.0, area[1] - a_x0);
+    final double a_y0 = area[2];
+    final double a_y1 = a_y0 + Math.max(1.0, area[3] - a_y0);
+    final DoubleVector minimums = pattern(a_x0, a_y0, AREA_Y_0);
+    final DoubleVector maximums = pattern(a_x1, a_y1, AREA_Y_0);
+
+    long result = 0L;
+    int item = 0;
+    for (; item + BLOCK_OBJECTS <= count; item += BLOCK_OBJECTS) {
+      final int o = (index + item) * AREA_STRIDE;
+      if (o + AREA_BLOCK >= bounds.length) {
+        break;
+      }
+
+      long lanes = 0L;
+      for (int e = 0; e < AREA_BLOCK; e += LANES) {
+        lanes |= overlapsExtents(bounds, o + e, minimums, maximums) << e;
+      }
+      result |= Long.compress(lanes & (lanes >>> 2), AREA_STARTS) << item;
+    }
+
+    if (item < count) {
+      result |= SCALAR.overlappingAreas(
+        area, bounds, index + item, count - item) << item;
+    }
+    return result;
+  }
+
+  @Override
+  public long overlappingVolumes(
+    final double[] volume,
+    final double[] bounds,
+    final int index,
+    final int count)
+  {
+    if (!USABLE) {
+      return SCALAR.overlappingVolumes(volume, bounds, index, count);
+    }
+
+    final double a_x0 = volume[0];
+    final double a_x1 = a_x0 + Math.max(1.0, volume[1] - a_x0);
+    final double a_y0 = volume[2];
+    final double a_y1 = a_y0 + Math.max(1.0, volume[3] - a_y0);
+    final double a_z0 = volume[4];
+    final double a_z1 = a_z0 + Math.max(1.0, volume[5] - a_z0);
+    final DoubleVector min_0 =
+      pattern(a_x0, a_y0, a_z0, VOLUME_Y_0, VOLUME_Z_0);
+    final DoubleVector max_0 =
+      pattern(a_x1, a_y1, a_z1, VOLUME_Y_0, VOLUME_Z_0);
+    final DoubleVector min_2 =
+      pattern(a_x0, a_y0, a_z0, VOLUME_Y_2, VOLUME_Z_2);
+    final DoubleVector max_2 =
+      pattern(a_x1, a_y1, a_z1, VOLUME_Y_2, VOLUME_Z_2);
+    final DoubleVector min_4 =
+      pattern(a_x0, a_y0, a_z0, VOLUME_Y_4, VOLUME_Z_4);
+    final DoubleVector max_4 =
+      pattern(a_x1, a_y1, a_z1, VOLUME_Y_4, VOLUME_Z_4);
+
+    long result = 0L;
+    int item = 0;
+    for (; item + BLOCK_OBJECTS <= count; item += BLOCK_OBJECTS) {
+      final int o = (index + item) * VOLUME_STRIDE;
+      if (o + VOLUME_BLOCK >= bounds.length) {
+        break;
+      }
+
+      long lanes = 0L;
+      for (int e = 0; e < VOLUME_BLOCK; e += LANES) {
+        final int phase = e % VOLUME_STRIDE;
+        final long bits;
+        if (phase == 0) {
+          bits = overlapsExtents(bounds, o + e, min_0, max_0);
+        } else if (phase == 2) {
+          bits = overlapsExtents(bounds, o + e, min_2, max_2);
+        } else {
+          bits = overlapsExtents(bounds, o + e, min_4, max_4);
+        }
+        lanes |= bits << e;
+      }
+      final long axes = lanes & (lanes >>> 2) & (lanes >>> 4);
+      result |= Long.compress(axes, VOLUME_STARTS) << item;
+    }
+
+    if (item < count) {
+      result |= SCALAR.overlappingVolumes(
+        volume, bounds, index + item, count - item) << item;
+    }
+    return result;
+  }
+
+  @Override
+  public long intersectingAreas(
+    final double ox,
+    final double oy,
+    final double dix,
+    final double diy,
+    final double[] bounds,
+    final int index,
+    final int count)
+  {
+    if (!USABLE) {
+      return SCALAR.intersectingAreas(ox, oy, dix, diy, bounds, index, count);
+    }
+
+    final DoubleVector origin_x = pattern(ox, oy, AREA_Y_0);
+    final DoubleVector inverse_x = pattern(dix, diy, AREA_Y_0);
+    final DoubleVector origin_y = pattern(ox, oy, AREA_Y_2);
+    final DoubleVector inverse_y = pattern(dix, diy, AREA_Y_2);
+
+    long result = 0L;
+    int item = 0;
+    for (; item + BLOCK_OBJECTS <= count; item += BLOCK_OBJECTS) {
+      final int o = (index + item) * AREA_STRIDE;
+      if (o + AREA_BLOCK + 2 >= bounds.length) {
+        break;
+      }
+
+      /*
+       * Each lane holding the minimum of an extent receives the entry and
+       * exit distances of the ray for that extent, combined with those for
+       * the extent two elements above it, which is the Y axis of the same
+       * object for a lane holding the X axis.
+       */
+
+      long lanes = 0L;
+      for (int e = 0; e < AREA_BLOCK; e += LANES) {
+        final int x = o + e;
+        final DoubleVector tx0 = distances(bounds, x, origin_x, inverse_x);
+        final DoubleVector tx1 = distances(bounds, x + 1, origin_x, inverse_x);
+        final DoubleVector ty0 = distances(bounds, x + 2, origin_y, inverse_y);
+        final DoubleVector ty1 = distances(bounds, x + 3, origin_y, inverse_y);
+        final DoubleVector tmin = tx0.min(tx1).max(ty0.min(ty1));
+        final DoubleVector tmax = tx0.max(tx1).min(ty0.max(ty1));
+        lanes |= entered(tmin, tmax) << e;
+      }
+      result |= Long.compress(lanes, AREA_STARTS) << item;
+    }
+
+    if (item < count) {
+      result |= SCALAR.intersectingAreas(
+        ox, oy, dix, diy, bounds, index + item, count - item) << item;
+    }
+    return result;
+  }
+
+  @Override
+  public long intersectingVolumes(
+    final double ox,
+    final double oy,
+    final double oz,
+    final double dix,
+    final double diy,
+    final double diz,
+    final double[] bounds,
+    final int index,
+    final int count)
+  {
+    if (!USABLE) {
+      return SCALAR.intersectingVolumes(
+        ox, oy, oz, dix, diy, diz, bounds, index, count);
+    }
+
+    final DoubleVector origin_0 =
+      pattern(ox, oy, oz, VOLUME_Y_0, VOLUME_Z_0);
+    final DoubleVector inverse_0 =
+      pattern(dix, diy, diz, VOLUME_Y_0, VOLUME_Z_0);
+    final DoubleVector origin_2 =
+      pattern(ox, oy, oz, VOLUME_Y_2, VOLUME_Z_2);
+    final DoubleVector inverse_2 =
+      pattern(dix, diy, diz, VOLUME_Y_2, VOLUME_Z_2);
+    final DoubleVector origin_4 =
+      pattern(ox, oy, oz, VOLUME_Y_4, VOLUME_Z_4);
+    final DoubleVector inverse_4 =
+      pattern(dix, diy, diz, VOLUME_Y_4, VOLUME_Z_4);
+
+    long result = 0L;
+    int item = 0;
+    for (; item + BLOCK_OBJECTS <= count; item += BLOCK_OBJECTS) {
+      final int o = (index + item) * VOLUME_STRIDE;
+      if (o + VOLUME_BLOCK + 4 >= bounds.length) {
+        break;
+      }
+
+      /*
+       * Each lane holding the minimum of an extent receives the entry and
+       * exit distances of the ray for that extent, combined with those for
+       * the extents two and four elements above it, which are the Y and Z
+       * axes of the same object for a lane holding the X axis. The three
+       * loads are made at whichever of those offsets begins at the phase of
+       * each pattern, so the patterns never change within the loop.
+       */
+
+      long lanes = 0L;
+      for (int e = 0; e < VOLUME_BLOCK; e += LANES) {
+        final int x = o + e;
+        final int phase = e % VOLUME_STRIDE;
+        final int x0 = x + (VOLUME_STRIDE - phase) % VOLUME_STRIDE;
+        final int x2 = x + (VOLUME_STRIDE + 2 - phase) % VOLUME_STRIDE;
+        final int x4 = x + (VOLUME_STRIDE + 4 - phase) % VOLUME_STRIDE;
+        final DoubleVector t00 = distances(bounds, x0, origin_0, inverse_0);
+        final DoubleVector t01 = distances(bounds, x0 + 1, origin_0, inverse_0);
+        final DoubleVector t20 = distances(bounds, x2, origin_2, inverse_2);
+        final DoubleVector t21 = distances(bounds, x2 + 1, origin_2, inverse_2);
+        final DoubleVector t40 = distances(bounds, x4, origin_4, inverse_4);
+        final DoubleVector t41 = distances(bounds, x4 + 1, origin_4, inverse_4);
+        final DoubleVector tmin =
+          t00.min(t01).max(t20.min(t21)).max(t40.min(t41));
+        final DoubleVector tmax =
+          t00.max(t01).min(t20.max(t21)).min(t40.max(t41));
+        lanes |= entered(tmin, tmax) << e;
+      }
+      result |= Long.compress(lanes, VOLUME_STARTS) << item;
+    }
+
+    if (item < count) {
+      result |= SCALAR.intersectingVolumes(
+        ox, oy, oz, dix, diy, diz, bounds, index + item, count - item) << item;
+    }
+    return result;
+  }
+}